@@ -37,6 +37,7 @@ import java.awt.geom.Rectangle2D;
 import java.awt.image.*;
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 
 /**
  * AreaAverageOp
@@ -81,17 +82,8 @@ public class AreaAverageOp implements BufferedImageOp, RasterOp {
     public BufferedImage filter(BufferedImage src, BufferedImage dest) {
         BufferedImage result = dest != null ? dest : createCompatibleDestImage(src, null);
 
-        // TODO: src and dest can't be the same
+        // TODO: IndexColorModel, average the colors, not the indexes
 
-        // TODO: Do some type checking here..
-        // Should work with
-        // * all BYTE types, unless sub-byte packed rasters/IndexColorModel
-        // * all INT types (even custom, as long as they use 8bit/componnet)
-        // * all USHORT types (even custom)
-
-        // TODO: Also check if the images are really compatible!?
-
-        long start = System.currentTimeMillis();
         // Straight-forward version
         //Image scaled = src.getScaledInstance(mWidth, mHeight, Image.SCALE_AREA_AVERAGING);
         //ImageUtil.drawOnto(result, scaled);
@@ -135,9 +127,6 @@ public class AreaAverageOp implements BufferedImageOp, RasterOp {
         // The real version
         filterImpl(src.getRaster(), result.getRaster());
 
-        long time = System.currentTimeMillis() - start;
-        System.out.println("time: " + time);
-
         return result;
     }
 
@@ -157,219 +146,216 @@ public class AreaAverageOp implements BufferedImageOp, RasterOp {
         return filterImpl(src, result);
     }
 
-    private WritableRaster filterImpl(Raster src, WritableRaster dest) {
-        //System.out.println("src: " + src);
-        //System.out.println("dest: " + dest);
+    private WritableRaster filterImpl(Raster src, final WritableRaster dest) {
         if (mSourceRegion != null) {
-            int cx = mSourceRegion.x;
-            int cy = mSourceRegion.y;
-            int cw = mSourceRegion.width;
-            int ch = mSourceRegion.height;
-
-            boolean same = src == dest;
-            dest = dest.createWritableChild(cx, cy, cw, ch, 0, 0, null);
-            src = same ? dest : src.createChild(cx, cy, cw, ch, 0, 0, null);
-            //System.out.println("src: " + src);
-            //System.out.println("dest: " + dest);
+            src = src.createChild(mSourceRegion.x, mSourceRegion.y, mSourceRegion.width, mSourceRegion.height, 0, 0, null);
         }
 
-        final int width = src.getWidth();
-        final int height = src.getHeight();
-
-        // TODO: This don't work too well..
-        // The thing is that the step length and the scan length will vary, for
-        // non-even (1/2, 1/4, 1/8 etc) resampling
-        int widthSteps = (width + mWidth - 1) / mWidth;
-        int heightSteps = (height + mHeight - 1) / mHeight;
-
-        final boolean oddX = width % mWidth != 0;
-        final boolean oddY = height % mHeight != 0;
+        final int dataType = src.getTransferType();
+        if (dataType == DataBuffer.TYPE_FLOAT || dataType == DataBuffer.TYPE_DOUBLE) {
+            throw new IllegalArgumentException("TransferType not supported: " + dataType);
+        }
 
-        final int dataElements = src.getNumDataElements();
         final int bands = src.getNumBands();
-        final int dataType = src.getTransferType();
+        if (dest.getNumBands() != bands) {
+            throw new IllegalArgumentException(String.format("Number of bands differ: %d != %d", bands, dest.getNumBands()));
+        }
 
-        Object data = null;
-        int scanW;
-        int scanH;
-
-        // TYPE_USHORT setup
-        int[] bitMasks = null;
-        int[] bitOffsets = null;
-        if (src.getTransferType() == DataBuffer.TYPE_USHORT) {
-            if (src.getSampleModel() instanceof SinglePixelPackedSampleModel) {
-                // DIRECT
-                SinglePixelPackedSampleModel sampleModel = (SinglePixelPackedSampleModel) src.getSampleModel();
-                bitMasks = sampleModel.getBitMasks();
-                bitOffsets = sampleModel.getBitOffsets();
-            }
-            else {
-                // GRAY
-                bitMasks = new int[]{0xffff};
-                bitOffsets = new int[]{0};
-            }
+        if (src.getDataBuffer() == dest.getDataBuffer()) {
+            // Filtering in place, we would overwrite samples we have not yet read
+            WritableRaster copy = src.createCompatibleWritableRaster();
+            copy.setRect(-src.getMinX(), -src.getMinY(), src);
+            src = copy;
         }
 
-        for (int y = 0; y < mHeight; y++) {
-            if (!oddY || y < mHeight) {
-                scanH = heightSteps;
-            }
-            else {
-                scanH = height - (y * heightSteps);
+        final Raster source = src;
+        final WritableRaster destination = dest.getWidth() == mWidth && dest.getHeight() == mHeight ? dest
+                : dest.createWritableChild(dest.getMinX(), dest.getMinY(), mWidth, mHeight, dest.getMinX(), dest.getMinY(), null);
+
+        final int width = source.getWidth();
+        final int height = source.getHeight();
+
+        // Separable box filter: Each source row is first reduced horizontally, then the reduced rows are summed
+        // vertically. Coordinates are scaled so that every weight is an integer, and each destination sample is
+        // the sum of its weighted source samples divided by the total weight width * height (exact, no rounding
+        // errors accumulate)
+        final Axis horizontal = new Axis(width, mWidth);
+        final Axis vertical = new Axis(height, mHeight);
+        final long area = (long) width * height;
+
+        TilingExecutor.inBands(mHeight, (height / mHeight + 1) * width * bands, new TilingExecutor.Band() {
+            public void run(final int pFrom, final int pTo) {
+                // Accumulator rows are reused for all rows in the band
+                long[] rowSums = new long[mWidth * bands];
+                long[] sums = new long[mWidth * bands];
+                int[] samples = new int[Math.max(width, mWidth) * bands];
+
+                for (int y = pFrom; y < pTo; y++) {
+                    Arrays.fill(sums, 0);
+
+                    for (int i = vertical.mOffsets[y]; i < vertical.mOffsets[y + 1]; i++) {
+                        Arrays.fill(rowSums, 0);
+                        sumRow(source, vertical.mFirst[y] + i - vertical.mOffsets[y], horizontal, samples, rowSums);
+
+                        long weight = vertical.mWeights[i];
+                        for (int s = 0; s < sums.length; s++) {
+                            sums[s] += rowSums[s] * weight;
+                        }
+                    }
+
+                    for (int s = 0; s < sums.length; s++) {
+                        samples[s] = (int) ((sums[s] + area / 2) / area);
+                    }
+
+                    writeRow(destination, y, samples);
+                }
             }
+        });
+
+        return dest;
+    }
 
-            for (int x = 0; x < mWidth; x++) {
-                if (!oddX || x < mWidth) {
-                    scanW = widthSteps;
+    /**
+     * Sums the samples of the given source row into {@code pSums}, one sum per destination column and band,
+     * weighted by the horizontal overlap.
+     *
+     * @param pRaster the source raster
+     * @param pY the row, relative to the raster's min y
+     * @param pAxis the horizontal weights
+     * @param pSamples scratch buffer, large enough to hold a source row
+     * @param pSums the sums
+     */
+    private static void sumRow(final Raster pRaster, final int pY, final Axis pAxis, final int[] pSamples, final long[] pSums) {
+        final int bands = pRaster.getNumBands();
+        final int length = pAxis.mFirst.length;
+        DataBuffer buffer = pRaster.getDataBuffer();
+        SampleModel sampleModel = pRaster.getSampleModel();
+
+        if (buffer instanceof DataBufferByte && buffer.getNumBanks() == 1 && sampleModel instanceof ComponentSampleModel) {
+            byte[] data = ((DataBufferByte) buffer).getData();
+            int[] bandOffsets = ((ComponentSampleModel) sampleModel).getBandOffsets();
+            int pixelStride = ((ComponentSampleModel) sampleModel).getPixelStride();
+            int offset = RGBRasterOp.offsetOf(pRaster, pY);
+
+            for (int x = 0; x < length; x++) {
+                int pixel = offset + pAxis.mFirst[x] * pixelStride;
+
+                for (int i = pAxis.mOffsets[x]; i < pAxis.mOffsets[x + 1]; i++, pixel += pixelStride) {
+                    long weight = pAxis.mWeights[i];
+
+                    for (int b = 0; b < bands; b++) {
+                        pSums[x * bands + b] += (data[pixel + bandOffsets[b]] & 0xff) * weight;
+                    }
                 }
-                else {
-                    scanW = width - (x * widthSteps);
+            }
+        }
+        else if (buffer instanceof DataBufferInt && sampleModel instanceof SinglePixelPackedSampleModel) {
+            int[] data = ((DataBufferInt) buffer).getData();
+            int[] masks = ((SinglePixelPackedSampleModel) sampleModel).getBitMasks();
+            int[] shifts = ((SinglePixelPackedSampleModel) sampleModel).getBitOffsets();
+            int offset = RGBRasterOp.offsetOf(pRaster, pY);
+
+            for (int x = 0; x < length; x++) {
+                int pixel = offset + pAxis.mFirst[x];
+
+                for (int i = pAxis.mOffsets[x]; i < pAxis.mOffsets[x + 1]; i++, pixel++) {
+                    long weight = pAxis.mWeights[i];
+                    int value = data[pixel];
+
+                    for (int b = 0; b < bands; b++) {
+                        pSums[x * bands + b] += ((value & masks[b]) >>> shifts[b]) * weight;
+                    }
                 }
-                final int pixelCount = scanW * scanH;
-                final int pixelLength = pixelCount * dataElements;
+            }
+        }
+        else {
+            pRaster.getPixels(pRaster.getMinX(), pRaster.getMinY() + pY, pRaster.getWidth(), 1, pSamples);
 
-                try {
-                    data = src.getDataElements(x * widthSteps, y * heightSteps, scanW, scanH, data);
-                }
-                catch (IndexOutOfBoundsException e) {
-                    // TODO: FixMe!
-                    // The bug is in the steps... 
-                    //System.err.println("x: " + x);
-                    //System.err.println("y: " + y);
-                    //System.err.println("widthSteps: " + widthSteps);
-                    //System.err.println("heightSteps: " + heightSteps);
-                    //System.err.println("scanW: " + scanW);
-                    //System.err.println("scanH: " + scanH);
-                    //
-                    //System.err.println("width: " + width);
-                    //System.err.println("height: " + height);
-                    //System.err.println("mWidth: " + mWidth);
-                    //System.err.println("mHeight: " + mHeight);
-                    //
-                    //e.printStackTrace();
-                    continue;
+            for (int x = 0; x < length; x++) {
+                int pixel = pAxis.mFirst[x] * bands;
+
+                for (int i = pAxis.mOffsets[x]; i < pAxis.mOffsets[x + 1]; i++) {
+                    long weight = pAxis.mWeights[i];
+
+                    for (int b = 0; b < bands; b++) {
+                        pSums[x * bands + b] += (pSamples[pixel++] & 0xffffffffL) * weight;
+                    }
                 }
+            }
+        }
+    }
 
-                // TODO: Might need more channels... Use an array?
-                // NOTE: These are not neccessarily ARGB..
-                double valueA = 0.0;
-                double valueR = 0.0;
-                double valueG = 0.0;
-                double valueB = 0.0;
-
-                switch (dataType) {
-                    case DataBuffer.TYPE_BYTE:
-                        // TODO: Doesn't hold for index color models...
-                        // For index color, the best bet is probably convert to
-                        // true color, then convert back to the same index color 
-                        // model
-                        byte[] bytePixels = (byte[]) data;
-                        for (int i = 0; i < pixelLength; i += dataElements) {
-                            valueA += bytePixels[i] & 0xff;
-                            if (bands > 1) {
-                                valueR += bytePixels[i + 1] & 0xff;
-                                valueG += bytePixels[i + 2] & 0xff;
-                                if (bands > 3) {
-                                    valueB += bytePixels[i + 3] & 0xff;
-                                }
-                            }
-                        }
+    private static void writeRow(final WritableRaster pRaster, final int pY, final int[] pSamples) {
+        final int bands = pRaster.getNumBands();
+        final int width = pRaster.getWidth();
+        DataBuffer buffer = pRaster.getDataBuffer();
+        SampleModel sampleModel = pRaster.getSampleModel();
 
-                        // Average
-                        valueA /= pixelCount;
-                        if (bands > 1) {
-                            valueR /= pixelCount;
-                            valueG /= pixelCount;
-                            if (bands > 3) {
-                                valueB /= pixelCount;
-                            }
-                        }
+        if (buffer instanceof DataBufferByte && buffer.getNumBanks() == 1 && sampleModel instanceof ComponentSampleModel) {
+            byte[] data = ((DataBufferByte) buffer).getData();
+            int[] bandOffsets = ((ComponentSampleModel) sampleModel).getBandOffsets();
+            int pixelStride = ((ComponentSampleModel) sampleModel).getPixelStride();
 
-                        //for (int i = 0; i < pixelLength; i += dataElements) {
-                        bytePixels[0] = (byte) clamp((int) valueA);
-                        if (bands > 1) {
-                            bytePixels[1] = (byte) clamp((int) valueR);
-                            bytePixels[2] = (byte) clamp((int) valueG);
-                            if (bands > 3) {
-                                bytePixels[3] = (byte) clamp((int) valueB);
-                            }
-                        }
-                        //}
-                        break;
-
-                    case DataBuffer.TYPE_INT:
-                        int[] intPixels = (int[]) data;
-                        // TODO: Rewrite to use bit offsets and masks from
-                        // color model (see TYPE_USHORT) in case of a non-
-                        // 888 or 8888 colormodel?
-                        for (int i = 0; i < pixelLength; i += dataElements) {
-                            valueA += (intPixels[i] & 0xff000000) >> 24;
-                            valueR += (intPixels[i] & 0xff0000) >> 16;
-                            valueG += (intPixels[i] & 0xff00) >> 8;
-                            valueB += (intPixels[i] & 0xff);
-                        }
+            for (int x = 0, pixel = RGBRasterOp.offsetOf(pRaster, pY); x < width; x++, pixel += pixelStride) {
+                for (int b = 0; b < bands; b++) {
+                    data[pixel + bandOffsets[b]] = (byte) pSamples[x * bands + b];
+                }
+            }
+        }
+        else if (buffer instanceof DataBufferInt && sampleModel instanceof SinglePixelPackedSampleModel) {
+            int[] data = ((DataBufferInt) buffer).getData();
+            int[] masks = ((SinglePixelPackedSampleModel) sampleModel).getBitMasks();
+            int[] shifts = ((SinglePixelPackedSampleModel) sampleModel).getBitOffsets();
 
-                        // Average
-                        valueA /= pixelCount;
-                        valueR /= pixelCount;
-                        valueG /= pixelCount;
-                        valueB /= pixelCount;
-
-                        //for (int i = 0; i < pixelLength; i += dataElements) {
-                        intPixels[0] = clamp((int) valueA) << 24;
-                        intPixels[0] |= clamp((int) valueR) << 16;
-                        intPixels[0] |= clamp((int) valueG) << 8;
-                        intPixels[0] |= clamp((int) valueB);
-                        //}
-                        break;
-
-                    case DataBuffer.TYPE_USHORT:
-                        if (bitMasks != null) {
-                            short[] shortPixels = (short[]) data;
-                            for (int i = 0; i < pixelLength; i += dataElements)
-                            {
-                                valueA += (shortPixels[i] & bitMasks[0]) >> bitOffsets[0];
-                                if (bitMasks.length > 1) {
-                                    valueR += (shortPixels[i] & bitMasks[1]) >> bitOffsets[1];
-                                    valueG += (shortPixels[i] & bitMasks[2]) >> bitOffsets[2];
-                                    if (bitMasks.length > 3) {
-                                        valueB += (shortPixels[i] & bitMasks[3]) >> bitOffsets[3];
-                                    }
-                                }
-                            }
-
-                            // Average
-                            valueA /= pixelCount;
-                            valueR /= pixelCount;
-                            valueG /= pixelCount;
-                            valueB /= pixelCount;
-
-                            //for (int i = 0; i < pixelLength; i += dataElements) {
-                            shortPixels[0] = (short) (((int) valueA << bitOffsets[0]) & bitMasks[0]);
-                            if (bitMasks.length > 1) {
-                                shortPixels[0] |= (short) (((int) valueR << bitOffsets[1]) & bitMasks[1]);
-                                shortPixels[0] |= (short) (((int) valueG << bitOffsets[2]) & bitMasks[2]);
-                                if (bitMasks.length > 3) {
-                                    shortPixels[0] |= (short) (((int) valueB << bitOffsets[3]) & bitMasks[3]);
-                                }
-                            }
-                            //}
-                            break;
-                        }
-                    default:
-                        throw new IllegalArgumentException("TransferType not supported: " + dataType);
+            for (int x = 0, pixel = RGBRasterOp.offsetOf(pRaster, pY); x < width; x++, pixel++) {
+                int value = 0;
 
+                for (int b = 0; b < bands; b++) {
+                    value |= (pSamples[x * bands + b] << shifts[b]) & masks[b];
                 }
 
-                dest.setDataElements(x, y, 1, 1, data);
+                data[pixel] = value;
             }
         }
-
-        return dest;
+        else {
+            pRaster.setPixels(pRaster.getMinX(), pRaster.getMinY() + pY, width, 1, pSamples);
+        }
     }
 
-    private static int clamp(final int pValue) {
-        return pValue > 255 ? 255 : pValue;
+    /**
+     * The integer weights of the source pixels covered by each destination pixel along one axis.
+     * <p/>
+     * In units where a source pixel has length {@code pDestLength} and a destination pixel has length
+     * {@code pSourceLength}, all overlaps are integers, and the weights of each destination pixel sum to
+     * {@code pSourceLength}.
+     */
+    private static final class Axis {
+        /** The first source pixel covered by each destination pixel */
+        final int[] mFirst;
+        /** Destination pixel {@code d} uses the weights in {@code [mOffsets[d], mOffsets[d + 1])} */
+        final int[] mOffsets;
+        final int[] mWeights;
+
+        Axis(final int pSourceLength, final int pDestLength) {
+            mFirst = new int[pDestLength];
+            mOffsets = new int[pDestLength + 1];
+            mWeights = new int[pSourceLength + pDestLength];
+
+            int count = 0;
+            for (int d = 0; d < pDestLength; d++) {
+                long start = (long) d * pSourceLength;
+                long end = start + pSourceLength;
+
+                mFirst[d] = (int) (start / pDestLength);
+                mOffsets[d] = count;
+
+                for (long s = mFirst[d]; s * pDestLength < end; s++) {
+                    mWeights[count++] = (int) (Math.min(end, (s + 1) * pDestLength) - Math.max(start, s * pDestLength));
+                }
+            }
+
+            mOffsets[pDestLength] = count;
+        }
     }
 
     public RenderingHints getRenderingHints() {
@@ -33,6 +33,7 @@ import java.awt.image.*;
 import java.util.*;
 import java.util.List;
 import java.lang.reflect.Array;
+import java.lang.reflect.Method;
 
 /**
  * A faster, lighter and easier way to convert an {@code Image} to a
@@ -44,8 +45,22 @@ import java.lang.reflect.Array;
  * {@link DataBuffer#TYPE_USHORT} transfer type, without converting to
  * 32 bit/TYPE_INT.
  * <p/>
- * NOTE: Does not support images with more than one {@code ColorModel} or
- * different types of pixel data. This is not very common.
+ * If the source {@code Image} is backed by a {@code BufferedImage} (ie. it
+ * is a {@code BufferedImage}, or a toolkit image that exposes its fully
+ * loaded backing image), the pixels are copied directly from the backing
+ * raster, and the new image has the same {@code ColorModel} and raster
+ * layout as the backing image.
+ * Otherwise, the pixels are delivered by the {@code ImageProducer}, and
+ * written directly into the data array of the new image. Producers that
+ * deliver the entire image in one call, like {@link MemoryImageSource},
+ * are copied in bulk.
+ * <p/>
+ * If the producer changes the {@code ColorModel} or type of pixel data
+ * after pixels are delivered, the pixels are converted to the default
+ * RGB color model.
+ * <p/>
+ * A factory is not meant to be shared between threads, but different
+ * factories may be used concurrently without blocking each other.
  *
  * @author <a href="mailto:harald.kuhr@gmail.com">Harald Kuhr</a>
  * @version $Id: //depot/branches/personal/haraldk/twelvemonkeys/release-2/twelvemonkeys-core/src/main/java/com/twelvemonkeys/image/BufferedImageFactory.java#1 $
@@ -54,9 +69,12 @@ public final class BufferedImageFactory {
     private List<ProgressListener> mListeners;
     private int mPercentageDone;
 
+    private static final Method sGetBufferedImage = getBufferedImageMethod();
+
+    private final Image mSourceImage;
     private ImageProducer mProducer;
     private boolean mError;
-    private boolean mFetching;
+    private volatile boolean mFetching;
     private boolean mReadColorModelOnly;
 
     private int mX = 0;
@@ -74,6 +92,7 @@ public final class BufferedImageFactory {
     private Hashtable mSourceProperties; // ImageConsumer API dictates Hashtable
 
     private Object mSourcePixels;
+    private boolean mConverted;
 
     private BufferedImage mBuffered;
     private ColorModel mColorModel;
@@ -86,7 +105,7 @@ public final class BufferedImageFactory {
      * @param pSource the source image
      */
     public BufferedImageFactory(Image pSource) {
-        this(pSource.getSource());
+        this(pSource, pSource.getSource());
     }
 
     /**
@@ -94,6 +113,11 @@ public final class BufferedImageFactory {
      * @param pSource the source image producer
      */
     public BufferedImageFactory(ImageProducer pSource) {
+        this(null, pSource);
+    }
+
+    private BufferedImageFactory(Image pImage, ImageProducer pSource) {
+        mSourceImage = pImage;
         mProducer = pSource;
     }
 
@@ -180,6 +204,22 @@ public final class BufferedImageFactory {
 
     private synchronized void doFetch(boolean pColorModelOnly) throws ImageConversionException {
         if (!mFetching && (!pColorModelOnly && mBuffered == null || mBuffered == null && mSourceColorModel == null)) {
+            // Fast path, copy directly from the backing image, if any
+            BufferedImage backing = getBackingImage(mSourceImage);
+            if (backing != null) {
+                if (pColorModelOnly) {
+                    mColorModel = backing.getColorModel();
+                }
+                else {
+                    mBuffered = copyRegion(backing);
+
+                    // Copied in one go, but listeners must still see the progress complete
+                    processProgress(100);
+                }
+
+                return;
+            }
+
             // NOTE: Subsampling is only applied if extracting full image
             if (!pColorModelOnly && (mXSub > 1 || mYSub > 1)) {
                 // If only sampling a region, the region must be scaled too
@@ -223,6 +263,99 @@ public final class BufferedImageFactory {
         }
     }
 
+    /**
+     * Copies the source region of the given image, subsampled the same way
+     * as the {@code SubsamplingFilter} would.
+     *
+     * @param pImage the image to copy
+     * @return a new image, or {@code null} if the source region is empty
+     */
+    private BufferedImage copyRegion(final BufferedImage pImage) {
+        int width = (pImage.getWidth() + mXSub - 1) / mXSub;
+        int height = (pImage.getHeight() + mYSub - 1) / mYSub;
+
+        int x = mX;
+        int y = mY;
+        int w = mWidth;
+        int h = mHeight;
+
+        // If only sampling a region, the region must be scaled too
+        if (w > 0 && h > 0) {
+            w = (w + mXSub - 1) / mXSub;
+            h = (h + mYSub - 1) / mYSub;
+            x = (x + mXSub - 1) / mXSub;
+            y = (y + mYSub - 1) / mYSub;
+        }
+        else {
+            w = width - x;
+            h = height - y;
+        }
+
+        if (w <= 0 || h <= 0) {
+            return null;
+        }
+
+        Raster source = pImage.getRaster();
+        WritableRaster raster = source.createCompatibleWritableRaster(w, h);
+
+        if (mXSub == 1 && mYSub == 1) {
+            raster.setRect(-x, -y, source);
+        }
+        else {
+            // Same sample positions as ReplicateScaleFilter
+            Object data = null;
+            for (int j = 0; j < h && y + j < height; j++) {
+                int sy = (2 * (y + j) * pImage.getHeight() + pImage.getHeight()) / (2 * height);
+
+                for (int i = 0; i < w && x + i < width; i++) {
+                    int sx = (2 * (x + i) * pImage.getWidth() + pImage.getWidth()) / (2 * width);
+                    data = source.getDataElements(sx, sy, data);
+                    raster.setDataElements(i, j, data);
+                }
+            }
+        }
+
+        ColorModel cm = pImage.getColorModel();
+        return new BufferedImage(cm, raster, cm.isAlphaPremultiplied(), null);
+    }
+
+    /**
+     * Returns the {@code BufferedImage} backing the given image, if it's
+     * available without producing the image.
+     *
+     * @param pImage the image, may be {@code null}
+     * @return the backing image, or {@code null}
+     */
+    static BufferedImage getBackingImage(final Image pImage) {
+        // NOTE: OffScreenImage is a BufferedImage
+        if (pImage instanceof BufferedImage) {
+            return (BufferedImage) pImage;
+        }
+
+        // Toolkit images expose the backing image, but only use it once fully loaded
+        if (pImage != null && sGetBufferedImage != null && sGetBufferedImage.getDeclaringClass().isInstance(pImage)
+                && (Toolkit.getDefaultToolkit().checkImage(pImage, -1, -1, null) & ImageObserver.ALLBITS) != 0) {
+            try {
+                return (BufferedImage) sGetBufferedImage.invoke(pImage);
+            }
+            catch (Exception ignore) {
+                // Not accessible, fall back to using the producer
+            }
+        }
+
+        return null;
+    }
+
+    private static Method getBufferedImageMethod() {
+        try {
+            return Class.forName("sun.awt.image.ToolkitImage").getMethod("getBufferedImage");
+        }
+        catch (Throwable ignore) {
+            // Not a Sun JRE
+            return null;
+        }
+    }
+
     private void createColorModel() {
         mColorModel = mSourceColorModel;
 
@@ -250,20 +383,23 @@ public final class BufferedImageFactory {
         mSourceColorModel = null;
         mSourcePixels = null;
         mSourceProperties = null;
+        mConverted = false;
     }
 
-    private void processProgress(int mScanline) {
+    private void processScanline(int pScanline) {
         if (mListeners != null) {
-            int percent = 100 * mScanline / mHeight;
-
-            //System.out.println("Progress: " + percent + "%");
+            processProgress(100 * pScanline / mHeight);
+        }
+    }
 
-            if (percent > mPercentageDone) {
-                mPercentageDone = percent;
+    private void processProgress(int pPercent) {
+        if (mListeners != null) {
+            if (pPercent > mPercentageDone) {
+                mPercentageDone = pPercent;
 
                 // TODO: Fix concurrent modification if a listener removes itself...
                 for (ProgressListener listener : mListeners) {
-                    listener.progress(this, percent);
+                    listener.progress(this, pPercent);
                 }
             }
         }
@@ -302,28 +438,6 @@ public final class BufferedImageFactory {
         }
     }
 
-    /**
-     * Converts an array of {@code int} pixles to an array of {@code short}
-     * pixels. The conversion is done, by masking out the
-     * <em>higher 16 bits</em> of the {@code int}.
-     *
-     * For eny given {@code int}, the {@code short} value is computed as
-     * follows:
-     * <blockquote>{@code
-     * short value = (short) (intValue & 0x0000ffff);
-     * }</blockquote>
-     *
-     * @param pPixels the pixel data to convert
-     * @return an array of {@code short}s, same lenght as {@code pPixels}
-     */
-    private static short[] toShortPixels(int[] pPixels) {
-        short[] pixels = new short[pPixels.length];
-        for (int i = 0; i < pixels.length; i++) {
-            pixels[i] = (short) (pPixels[i] & 0xffff);
-        }
-        return pixels;
-    }
-
     /**
      * This interface allows clients of a {@code BufferedImageFactory} to
      * receive notifications of decoding progress.
@@ -347,9 +461,8 @@ public final class BufferedImageFactory {
     private class Consumer implements ImageConsumer {
         /**
          * Implementation of all setPixels methods.
-         * Note that this implementation assumes that all invocations for one
-         * image uses the same color model, and that the pixel data has the
-         * same type.
+         * If the color model changes after pixels are delivered, the pixels
+         * are converted to the default RGB color model, see {@code convertToRGB}.
          *
          * @param pX x coordinate of pixel data region
          * @param pY y coordinate of pixel data region
@@ -363,30 +476,10 @@ public final class BufferedImageFactory {
         private void setPixelsImpl(int pX, int pY, int pWidth, int pHeight, ColorModel pModel, Object pPixels, int pOffset, int pScanSize) {
             setColorModelOnce(pModel);
 
-            if (pPixels == null) {
+            if (pPixels == null || !mFetching) {
                 return;
             }
 
-            //System.out.println("Setting " + pPixels.getClass().getComponentType() + " pixels: " + Array.getLength(pPixels));
-
-            // Allocate array if neccessary
-            if (mSourcePixels == null) {
-                /*
-                System.out.println("ColorModel: " + pModel);
-                System.out.println("Scansize: " + pScanSize + " TrasferType: " + ImageUtil.getTransferType(pModel));
-                System.out.println("Creating " + pPixels.getClass().getComponentType() + " array of length " + (mWidth * mHeight));
-                */
-                // Allocate a suitable source pixel array
-                // TODO: Should take pixel "width" into consideration, for byte packed rasters?!
-                // OR... Is anything but single-pixel models really supported by the API?
-                mSourcePixels = Array.newInstance(pPixels.getClass().getComponentType(), mWidth * mHeight);
-                mScanSize = mWidth;
-                mOffset = 0;
-            }
-            else if (mSourcePixels.getClass() != pPixels.getClass()) {
-                throw new IllegalStateException("Only one pixel type allowed");
-            }
-
             // AOI stuff
             if (pY < mY) {
                 int diff = mY - pY;
@@ -420,16 +513,98 @@ public final class BufferedImageFactory {
                 }
             }
 
+            // Allocate array if neccessary
+            if (mSourcePixels == null) {
+                // Allocate a suitable source pixel array, the pixels are written directly into the
+                // array that will back the raster of the new image
+                // NOTE: Pixels of USHORT color models are delivered as ints, due to limitations in the ImageConsumer API
+                // TODO: Should take pixel "width" into consideration, for byte packed rasters?!
+                // OR... Is anything but single-pixel models really supported by the API?
+                Class<?> type = pPixels instanceof int[] && ImageUtil.getTransferType(pModel) == DataBuffer.TYPE_USHORT
+                        ? short.class
+                        : pPixels.getClass().getComponentType();
+                mSourcePixels = Array.newInstance(type, mWidth * mHeight);
+                mScanSize = mWidth;
+                mOffset = 0;
+            }
+            else if (!mConverted && !isSourceModel(pModel, pPixels)) {
+                // Color model or pixel type changed, convert to default RGB
+                convertToRGB();
+            }
+
             int dstOffset = mOffset + (pY - mY) * mScanSize + (pX - mX);
 
-            // Do the pixel copying
-            for (int i = pHeight; i > 0; i--) {
-                System.arraycopy(pPixels, pOffset, mSourcePixels, dstOffset, pWidth);
-                pOffset += pScanSize;
-                dstOffset += mScanSize;
+            // Do the pixel copying, in one go if the rows are contiguous
+            if (pWidth == mScanSize && pScanSize == mScanSize) {
+                copyPixels(pModel, pPixels, pOffset, dstOffset, pWidth * pHeight);
+            }
+            else {
+                for (int i = pHeight; i > 0; i--) {
+                    copyPixels(pModel, pPixels, pOffset, dstOffset, pWidth);
+                    pOffset += pScanSize;
+                    dstOffset += mScanSize;
+                }
+            }
+
+            processScanline(pY + pHeight);
+        }
+
+        private boolean isSourceModel(final ColorModel pModel, final Object pPixels) {
+            if (mSourceColorModel != pModel && !mSourceColorModel.equals(pModel)) {
+                return false;
             }
 
-            processProgress(pY + pHeight);
+            return mSourcePixels.getClass() == pPixels.getClass() || mSourcePixels instanceof short[] && pPixels instanceof int[];
+        }
+
+        private void convertToRGB() {
+            ColorModel model = mSourceColorModel;
+            Object pixels = mSourcePixels;
+
+            mSourceColorModel = ColorModel.getRGBdefault();
+            mSourcePixels = new int[mWidth * mHeight];
+            mConverted = true;
+
+            toRGB(model, pixels, 0, (int[]) mSourcePixels, 0, mWidth * mHeight);
+        }
+
+        private void copyPixels(final ColorModel pModel, final Object pPixels, final int pOffset, final int pDestOffset, final int pLength) {
+            if (mConverted && pModel != mSourceColorModel) {
+                // See convertToRGB
+                toRGB(pModel, pPixels, pOffset, (int[]) mSourcePixels, pDestOffset, pLength);
+            }
+            else if (mSourcePixels instanceof short[] && pPixels instanceof int[]) {
+                short[] dest = (short[]) mSourcePixels;
+                int[] pixels = (int[]) pPixels;
+
+                for (int i = 0; i < pLength; i++) {
+                    dest[pDestOffset + i] = (short) pixels[pOffset + i];
+                }
+            }
+            else {
+                System.arraycopy(pPixels, pOffset, mSourcePixels, pDestOffset, pLength);
+            }
+        }
+
+        private void toRGB(final ColorModel pModel, final Object pPixels, final int pOffset, final int[] pRGB, final int pRGBOffset, final int pLength) {
+            if (pPixels instanceof byte[]) {
+                byte[] pixels = (byte[]) pPixels;
+                for (int i = 0; i < pLength; i++) {
+                    pRGB[pRGBOffset + i] = pModel.getRGB(pixels[pOffset + i] & 0xff);
+                }
+            }
+            else if (pPixels instanceof short[]) {
+                short[] pixels = (short[]) pPixels;
+                for (int i = 0; i < pLength; i++) {
+                    pRGB[pRGBOffset + i] = pModel.getRGB(pixels[pOffset + i] & 0xffff);
+                }
+            }
+            else {
+                int[] pixels = (int[]) pPixels;
+                for (int i = 0; i < pLength; i++) {
+                    pRGB[pRGBOffset + i] = pModel.getRGB(pixels[pOffset + i]);
+                }
+            }
         }
 
         /** {@code ImageConsumer} implementation, do not invoke directly */
@@ -443,37 +618,31 @@ public final class BufferedImageFactory {
             // later replaces it with the default RGB in the first setPixels call
             // (this is probably allowed according to the spec, but it's a waste of
             // time and space).
-            if (mSourceColorModel != pModel) {
-                if (/*mSourceColorModel == null ||*/ mSourcePixels == null) {
-                    mSourceColorModel = pModel;
-                }
-                else {
-                    throw new IllegalStateException("Change of ColorModel after pixel delivery not supported");
-                }
+            // NOTE: A change of color model after pixel delivery is handled in setPixelsImpl
+            if (mSourceColorModel != pModel && mSourcePixels == null) {
+                mSourceColorModel = pModel;
             }
 
             // If color model is all we ask for, stop now
-            if (mReadColorModelOnly) {
+            if (mReadColorModelOnly && mFetching) {
                 mConsumer.imageComplete(ImageConsumer.IMAGEABORTED);
             }
         }
 
         /** {@code ImageConsumer} implementation, do not invoke */
         public void imageComplete(int pStatus) {
-            mFetching = false;
-
             if (mProducer != null) {
                 mProducer.removeConsumer(this);
             }
 
-            switch (pStatus) {
-                case IMAGEERROR:
-                    new Error().printStackTrace();
+            // NOTE: The producer may call from any thread
+            synchronized (BufferedImageFactory.this) {
+                mFetching = false;
+
+                if (pStatus == IMAGEERROR) {
                     mError = true;
-                break;
-            }
+                }
 
-            synchronized (BufferedImageFactory.this) {
                 BufferedImageFactory.this.notifyAll();
             }
         }
@@ -525,14 +694,8 @@ public final class BufferedImageFactory {
 
         /** {@code ImageConsumer} implementation, do not invoke directly */
         public void setPixels(int pX, int pY, int pWeigth, int pHeight, ColorModel pModel, int[] pPixels, int pOffset, int pScanSize) {
-            if (ImageUtil.getTransferType(pModel) == DataBuffer.TYPE_USHORT) {
-                // NOTE: Workaround for limitation in ImageConsumer API
-                // Convert int[] to short[], to be compatible with the ColorModel
-                setPixelsImpl(pX, pY, pWeigth, pHeight, pModel, toShortPixels(pPixels), pOffset, pScanSize);
-            }
-            else {
-                setPixelsImpl(pX, pY, pWeigth, pHeight, pModel, pPixels, pOffset, pScanSize);
-            }
+            // NOTE: Pixels for USHORT color models are converted to short[] while copying, see setPixelsImpl
+            setPixelsImpl(pX, pY, pWeigth, pHeight, pModel, pPixels, pOffset, pScanSize);
         }
 
         /** {@code ImageConsumer} implementation, do not invoke directly */
@@ -540,4 +703,4 @@ public final class BufferedImageFactory {
             mSourceProperties = pProperties;
         }
     }
-}
\ No newline at end of file
+}
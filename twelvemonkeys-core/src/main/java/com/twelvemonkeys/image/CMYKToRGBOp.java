@@ -0,0 +1,400 @@
+/*
+ * Copyright (c) 2008, Harald Kuhr
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name "TwelveMonkeys" nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.twelvemonkeys.image;
+
+import java.awt.*;
+import java.awt.color.ColorSpace;
+import java.awt.color.ICC_ColorSpace;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.*;
+
+/**
+ * Converts CMYK images or rasters to RGB, using precalculated lookup tables.
+ * <p/>
+ * By default, the naive conversion {@code R = (1 - C) * (1 - K)} (and likewise
+ * for green and blue) is used. This is the same conversion as most CMYK
+ * color spaces without an ICC profile use.
+ * If a CMYK color space (typically an {@link ICC_ColorSpace}) is given, the
+ * color space is sampled in a regular grid of {@value #GRID_SIZE} points for
+ * each component, and pixels are converted using
+ * linear interpolation between the closest grid points.
+ * This is a lot faster than using {@link ColorConvertOp}, or the
+ * {@code getRGB} method of the {@code BufferedImage}, as no arrays are
+ * allocated per pixel, at the cost of a small interpolation error.
+ * Sampling the color space is relatively expensive, so instances should be
+ * reused.
+ * <p/>
+ * The source must have four (CMYK) or five (CMYK + alpha) bands, the
+ * destination three (RGB) or four (RGB + alpha) bands.
+ * Rows are converted in bands, in parallel, for large enough images.
+ *
+ * @author <a href="mailto:harald.kuhr@gmail.com">Harald Kuhr</a>
+ * @author last modified by $Author: haku $
+ * @version $Id: CMYKToRGBOp.java,v 1.0 Oct 19, 2026 6:12:45 AM haraldk Exp$
+ *
+ * @see java.awt.image.ColorConvertOp
+ */
+public class CMYKToRGBOp implements BufferedImageOp, RasterOp {
+    /** Number of grid points for each component, when sampling a color space */
+    static final int GRID_SIZE = 17;
+
+    private static short[] sProducts;
+
+    /** Naive conversion table, {@code (1 - a) * (1 - b)} for 8 bit values */
+    private final short[] mProducts;
+    /** Sampled color space, 16 bit RGB values for each grid point */
+    private final short[] mGrid;
+
+    /**
+     * Creates a {@code CMYKToRGBOp}, using the naive CMYK to RGB conversion.
+     */
+    public CMYKToRGBOp() {
+        mProducts = getProducts();
+        mGrid = null;
+    }
+
+    /**
+     * Creates a {@code CMYKToRGBOp}, sampling the given CMYK color space.
+     *
+     * @param pColorSpace the CMYK color space
+     *
+     * @throws IllegalArgumentException if {@code pColorSpace} is not a CMYK color space
+     */
+    public CMYKToRGBOp(final ColorSpace pColorSpace) {
+        if (pColorSpace == null || pColorSpace.getType() != ColorSpace.TYPE_CMYK) {
+            throw new IllegalArgumentException("Not a CMYK color space: " + pColorSpace);
+        }
+
+        mProducts = null;
+        mGrid = sample(pColorSpace);
+    }
+
+    private static synchronized short[] getProducts() {
+        if (sProducts == null) {
+            short[] products = new short[256 * 256];
+
+            for (int a = 0; a < 256; a++) {
+                for (int b = 0; b < 256; b++) {
+                    // NOTE: Same float computation and rounding as ColorModel.getRGB using the naive color space
+                    float value = (1 - a / 255f) * (1 - b / 255f);
+                    products[a * 256 + b] = (short) (int) (value * 255f + 0.5f);
+                }
+            }
+
+            sProducts = products;
+        }
+
+        return sProducts;
+    }
+
+    private static short[] sample(final ColorSpace pColorSpace) {
+        int points = GRID_SIZE * GRID_SIZE * GRID_SIZE * GRID_SIZE;
+        short[] grid = new short[points * 3];
+
+        // NOTE: Using toRGB gives the same result as ColorModel.getRGB, ColorConvertOp may use another rendering intent
+        int[] point = new int[4];
+        float[] cmyk = new float[4];
+        for (int i = 0; i < points; i++) {
+            gridPoint(i, point);
+            for (int c = 0; c < 4; c++) {
+                cmyk[c] = pColorSpace.getMinValue(c) + point[c] * (pColorSpace.getMaxValue(c) - pColorSpace.getMinValue(c)) / (GRID_SIZE - 1);
+            }
+
+            float[] rgb = pColorSpace.toRGB(cmyk);
+            for (int c = 0; c < 3; c++) {
+                grid[i * 3 + c] = (short) Math.round(Math.max(0f, Math.min(1f, rgb[c])) * 65535f);
+            }
+        }
+
+        return grid;
+    }
+
+    private static void gridPoint(final int pIndex, final int[] pPoint) {
+        // Grid index is ((c * GRID_SIZE + m) * GRID_SIZE + y) * GRID_SIZE + k
+        int index = pIndex;
+        for (int c = 3; c >= 0; c--) {
+            pPoint[c] = index % GRID_SIZE;
+            index /= GRID_SIZE;
+        }
+    }
+
+    /**
+     * Converts a row of normalized (16 bit) CMYK samples to packed ARGB values.
+     *
+     * @param pCMYK the CMYK samples, with {@code pBands} samples per pixel
+     * @param pBands the number of bands, 4 or 5 (with alpha)
+     * @param pARGB the destination
+     * @param pLength the number of pixels
+     * @param pEightBit {@code true} if the samples were 8 bit before normalizing
+     */
+    void toRGB(final int[] pCMYK, final int pBands, final int[] pARGB, final int pLength, final boolean pEightBit) {
+        boolean alpha = pBands > 4;
+
+        for (int x = 0, i = 0; x < pLength; x++, i += pBands) {
+            int a = alpha ? pCMYK[i + 4] >> 8 : 0xff;
+
+            if (mGrid == null && !pEightBit) {
+                int k = 65535 - pCMYK[i + 3];
+                pARGB[x] = a << 24 | product(pCMYK[i], k) << 16 | product(pCMYK[i + 1], k) << 8 | product(pCMYK[i + 2], k);
+            }
+            else if (mGrid == null) {
+                int k = (pCMYK[i + 3] >> 8) & 0xff;
+                pARGB[x] = a << 24
+                        | mProducts[(pCMYK[i] >> 8) << 8 | k] << 16
+                        | mProducts[(pCMYK[i + 1] >> 8) << 8 | k] << 8
+                        | mProducts[(pCMYK[i + 2] >> 8) << 8 | k];
+            }
+            else {
+                pARGB[x] = a << 24 | interpolate(pCMYK[i], pCMYK[i + 1], pCMYK[i + 2], pCMYK[i + 3]);
+            }
+        }
+    }
+
+    private static int product(final int pValue, final int pInverseK) {
+        long value = (long) (65535 - pValue) * pInverseK / 65535;
+        return (int) ((value * 255 + 32767) / 65535);
+    }
+
+    private int interpolate(final int pC, final int pM, final int pY, final int pK) {
+        final int max = GRID_SIZE - 1;
+
+        // Grid cell and 12 bit fraction for each component, 65535 maps to the last grid point
+        int c = toGrid(pC);
+        int m = toGrid(pM);
+        int y = toGrid(pY);
+        int k = toGrid(pK);
+        int fc = (c & 0xffff) >> 4;
+        int fm = (m & 0xffff) >> 4;
+        int fy = (y & 0xffff) >> 4;
+        int fk = (k & 0xffff) >> 4;
+        c >>= 16;
+        m >>= 16;
+        y >>= 16;
+        k >>= 16;
+
+        // NOTE: The last grid point has no next point, but then the fraction is always 0
+        int dc = c < max ? GRID_SIZE * GRID_SIZE * GRID_SIZE * 3 : 0;
+        int dm = m < max ? GRID_SIZE * GRID_SIZE * 3 : 0;
+        int dy = y < max ? GRID_SIZE * 3 : 0;
+        int dk = k < max ? 3 : 0;
+
+        int base = (((c * GRID_SIZE + m) * GRID_SIZE + y) * GRID_SIZE + k) * 3;
+        short[] grid = mGrid;
+        int rgb = 0;
+
+        for (int band = 0; band < 3; band++) {
+            int i = base + band;
+
+            // Trilinear interpolation in CMY, for the two closest K values, then linear in K
+            int v0 = trilinear(grid, i, dc, dm, dy, fc, fm, fy);
+            int v1 = trilinear(grid, i + dk, dc, dm, dy, fc, fm, fy);
+            int value = lerp(v0, v1, fk);
+
+            rgb = rgb << 8 | (value + 128) / 257;
+        }
+
+        return rgb;
+    }
+
+    private static int toGrid(final int pValue) {
+        // 16.16 fixed point grid position
+        return (int) (((long) pValue * (GRID_SIZE - 1) << 16) / 65535);
+    }
+
+    private static int trilinear(final short[] pGrid, final int pIndex, final int pDC, final int pDM, final int pDY,
+                                 final int pFC, final int pFM, final int pFY) {
+        int c00 = lerp(pGrid[pIndex] & 0xffff, pGrid[pIndex + pDC] & 0xffff, pFC);
+        int c01 = lerp(pGrid[pIndex + pDY] & 0xffff, pGrid[pIndex + pDC + pDY] & 0xffff, pFC);
+        int c10 = lerp(pGrid[pIndex + pDM] & 0xffff, pGrid[pIndex + pDC + pDM] & 0xffff, pFC);
+        int c11 = lerp(pGrid[pIndex + pDM + pDY] & 0xffff, pGrid[pIndex + pDC + pDM + pDY] & 0xffff, pFC);
+
+        return lerp(lerp(c00, c01, pFY), lerp(c10, c11, pFY), pFM);
+    }
+
+    private static int lerp(final int pFrom, final int pTo, final int pFraction) {
+        return pFrom + ((pTo - pFrom) * pFraction >> 12);
+    }
+
+    public BufferedImage filter(final BufferedImage pSource, final BufferedImage pDestination) {
+        if (pSource == null) {
+            throw new NullPointerException("source image is null");
+        }
+        if (pSource.getColorModel().getColorSpace().getType() != ColorSpace.TYPE_CMYK) {
+            throw new IllegalArgumentException("Not a CMYK image: " + pSource);
+        }
+
+        final BufferedImage destination = pDestination != null ? pDestination : createCompatibleDestImage(pSource, null);
+        final Raster source = checkSource(pSource.getRaster(), destination.getWidth(), destination.getHeight());
+
+        final int width = source.getWidth();
+        final boolean eightBit = isEightBit(source.getSampleModel());
+        TilingExecutor.inBands(source.getHeight(), width * 16, new TilingExecutor.Band() {
+            public void run(final int pFrom, final int pTo) {
+                int[] samples = new int[width * source.getNumBands()];
+                int[] row = new int[width];
+
+                for (int y = pFrom; y < pTo; y++) {
+                    readRow(source, y, samples);
+                    toRGB(samples, source.getNumBands(), row, width, eightBit);
+                    RGBRasterOp.writeRow(destination, y, row);
+                }
+            }
+        });
+
+        return destination;
+    }
+
+    public WritableRaster filter(final Raster pSource, final WritableRaster pDestination) {
+        if (pSource == null) {
+            throw new NullPointerException("source raster is null");
+        }
+
+        final WritableRaster destination = pDestination != null ? pDestination : createCompatibleDestRaster(pSource);
+        final Raster source = checkSource(pSource, destination.getWidth(), destination.getHeight());
+
+        final int bands = destination.getNumBands();
+        if (bands != 3 && bands != 4) {
+            throw new IllegalArgumentException("Destination must have 3 or 4 bands: " + bands);
+        }
+
+        final int width = source.getWidth();
+        final boolean eightBit = isEightBit(source.getSampleModel());
+        TilingExecutor.inBands(source.getHeight(), width * 16, new TilingExecutor.Band() {
+            public void run(final int pFrom, final int pTo) {
+                int[] samples = new int[width * source.getNumBands()];
+                int[] row = new int[width];
+                int[] rgb = new int[width * bands];
+
+                for (int y = pFrom; y < pTo; y++) {
+                    readRow(source, y, samples);
+                    toRGB(samples, source.getNumBands(), row, width, eightBit);
+
+                    for (int x = 0, i = 0; x < width; x++, i += bands) {
+                        int argb = row[x];
+                        rgb[i] = argb >> 16 & 0xff;
+                        rgb[i + 1] = argb >> 8 & 0xff;
+                        rgb[i + 2] = argb & 0xff;
+                        if (bands > 3) {
+                            rgb[i + 3] = argb >>> 24;
+                        }
+                    }
+
+                    scale(rgb, destination.getSampleModel(), 8, false);
+                    destination.setPixels(destination.getMinX(), destination.getMinY() + y, width, 1, rgb);
+                }
+            }
+        });
+
+        return destination;
+    }
+
+    private static Raster checkSource(final Raster pSource, final int pWidth, final int pHeight) {
+        int bands = pSource.getNumBands();
+        if (bands != 4 && bands != 5) {
+            throw new IllegalArgumentException("Source must have 4 or 5 bands: " + bands);
+        }
+        if (pSource.getWidth() != pWidth || pSource.getHeight() != pHeight) {
+            throw new IllegalArgumentException("source and destination must be the same size");
+        }
+
+        return pSource;
+    }
+
+    private static boolean isEightBit(final SampleModel pSampleModel) {
+        for (int size : pSampleModel.getSampleSize()) {
+            if (size != 8) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static void readRow(final Raster pSource, final int pY, final int[] pSamples) {
+        pSource.getPixels(pSource.getMinX(), pSource.getMinY() + pY, pSource.getWidth(), 1, pSamples);
+        scale(pSamples, pSource.getSampleModel(), 16, true);
+    }
+
+    /**
+     * Scales the samples between the sample size of the sample model and the given size.
+     */
+    private static void scale(final int[] pSamples, final SampleModel pSampleModel, final int pSize, final boolean pToSize) {
+        int bands = pSampleModel.getNumBands();
+
+        for (int b = 0; b < bands; b++) {
+            int sampleSize = pSampleModel.getSampleSize(b);
+            if (sampleSize == pSize) {
+                continue;
+            }
+
+            int from = pToSize ? (1 << sampleSize) - 1 : (1 << pSize) - 1;
+            int to = pToSize ? (1 << pSize) - 1 : (1 << sampleSize) - 1;
+
+            for (int i = b; i < pSamples.length; i += bands) {
+                pSamples[i] = (int) (((long) pSamples[i] * to + from / 2) / from);
+            }
+        }
+    }
+
+    public BufferedImage createCompatibleDestImage(final BufferedImage pSource, final ColorModel pDestinationColorModel) {
+        if (pDestinationColorModel == null) {
+            boolean alpha = pSource.getColorModel().hasAlpha();
+            return new BufferedImage(pSource.getWidth(), pSource.getHeight(), alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        }
+
+        return new BufferedImage(
+                pDestinationColorModel,
+                pDestinationColorModel.createCompatibleWritableRaster(pSource.getWidth(), pSource.getHeight()),
+                pDestinationColorModel.isAlphaPremultiplied(), null
+        );
+    }
+
+    public WritableRaster createCompatibleDestRaster(final Raster pSource) {
+        return Raster.createInterleavedRaster(DataBuffer.TYPE_BYTE, pSource.getWidth(), pSource.getHeight(), pSource.getNumBands() - 1, null);
+    }
+
+    public Rectangle2D getBounds2D(final BufferedImage pSource) {
+        return getBounds2D(pSource.getRaster());
+    }
+
+    public Rectangle2D getBounds2D(final Raster pSource) {
+        return pSource.getBounds();
+    }
+
+    public Point2D getPoint2D(final Point2D pSourcePoint, final Point2D pDestinationPoint) {
+        Point2D destination = pDestinationPoint != null ? pDestinationPoint : new Point2D.Double();
+        destination.setLocation(pSourcePoint);
+        return destination;
+    }
+
+    public RenderingHints getRenderingHints() {
+        return null;
+    }
+}
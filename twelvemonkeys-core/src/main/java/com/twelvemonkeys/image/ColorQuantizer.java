@@ -0,0 +1,443 @@
+/*
+ * Copyright (c) 2008, Harald Kuhr
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name "TwelveMonkeys" nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.twelvemonkeys.image;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.IndexColorModel;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.util.Arrays;
+
+/**
+ * Abstract base class for color quantizers, that is, algorithms that
+ * creates an adaptive palette for an image.
+ * <p/>
+ * The color information of the image is first collected in a
+ * {@link Histogram}, in a single pass over the image data.
+ * For the most common image types ({@code TYPE_INT_RGB}, {@code TYPE_INT_ARGB},
+ * {@code TYPE_3BYTE_BGR} and {@code TYPE_4BYTE_ABGR}), the pixel data is
+ * read directly from the {@code DataBuffer}, without creating any objects.
+ * If the image has no more distinct colors than the palette can hold, the
+ * exact colors are used as the palette. Otherwise, subclasses creates a
+ * palette from the histogram.
+ * <p/>
+ * For faster (but less accurate) palette creation, only every
+ * <em>n</em>th pixel may be sampled, see {@link #setSampleStride(int)}.
+ * <p/>
+ * Quantizers may keep work buffers between invocations, and are not
+ * thread safe.
+ *
+ * @author <a href="mailto:harald.kuhr@gmail.com">Harald Kuhr</a>
+ * @author last modified by $Author: haku $
+ * @version $Id: ColorQuantizer.java,v 1.0 Oct 18, 2026 8:31:20 PM haraldk Exp$
+ *
+ * @see MedianCutQuantizer
+ * @see WuQuantizer
+ * @see IndexImage
+ */
+public abstract class ColorQuantizer {
+    private static final int ALPHA_THRESHOLD = 0x80;
+
+    private int mSampleStride = 1;
+
+    /**
+     * Returns the current sample stride.
+     *
+     * @return the current sample stride
+     */
+    public int getSampleStride() {
+        return mSampleStride;
+    }
+
+    /**
+     * Sets the sample stride. A stride of 1 (the default) means every pixel
+     * is sampled, a stride of <em>n</em> means every <em>n</em>th pixel is
+     * sampled. The sampled pixels are staggered from row to row, to avoid
+     * sampling the same columns only.
+     *
+     * @param pStride the new sample stride
+     * @throws IllegalArgumentException if {@code pStride < 1}
+     */
+    public void setSampleStride(int pStride) {
+        if (pStride < 1) {
+            throw new IllegalArgumentException("stride must be positive: " + pStride);
+        }
+        mSampleStride = pStride;
+    }
+
+    /**
+     * Creates an {@code IndexColorModel} with an adaptive palette for the
+     * given image.
+     * <p/>
+     * If {@code pTransparent} is {@code true}, the last entry of the palette
+     * is a fully transparent color, and pixels with alpha values less than
+     * 50% are ignored when computing the other colors.
+     *
+     * @param pImage the image to create the palette from
+     * @param pNumberOfColors the maximum number of colors in the palette,
+     * including the transparent color
+     * @param pTransparent {@code true} if the palette should contain a
+     * transparent color
+     * @return a new {@code IndexColorModel}
+     *
+     * @throws IllegalArgumentException if {@code pNumberOfColors} is not in the
+     * range {@code [2...256]}
+     */
+    public IndexColorModel createIndexColorModel(BufferedImage pImage, int pNumberOfColors, boolean pTransparent) {
+        if (pNumberOfColors < 2 || pNumberOfColors > 256) {
+            throw new IllegalArgumentException("number of colors must be in the range [2...256]: " + pNumberOfColors);
+        }
+
+        Histogram histogram = createHistogram(pImage, pTransparent);
+        int maxColors = pTransparent ? pNumberOfColors - 1 : pNumberOfColors;
+
+        // Images with few colors are represented exactly, without binning
+        int[] palette = histogram.getExactColors(maxColors);
+        if (palette == null) {
+            palette = createPalette(histogram, maxColors);
+        }
+
+        // If we have transparency, the last color will be the transparent one
+        int count = Math.max(palette.length, 1);
+        int size = pTransparent ? count + 1 : count;
+
+        byte[] r = new byte[size];
+        byte[] g = new byte[size];
+        byte[] b = new byte[size];
+
+        for (int i = 0; i < palette.length; i++) {
+            int rgb = palette[i];
+            r[i] = (byte) ((rgb >> 16) & 0xFF);
+            g[i] = (byte) ((rgb >> 8) & 0xFF);
+            b[i] = (byte) (rgb & 0xFF);
+        }
+
+        // For some reason using less than 8 bits causes a bug in the dither
+        //  - transparency added to all totally black colors?
+        int numOfBits = 8;
+
+        if (pTransparent) {
+            return new InverseColorMapIndexColorModel(numOfBits, size, r, g, b, size - 1);
+        }
+
+        return new InverseColorMapIndexColorModel(numOfBits, size, r, g, b);
+    }
+
+    /**
+     * Creates a palette from the given histogram.
+     *
+     * @param pHistogram the histogram
+     * @param pMaxColors the maximum number of colors
+     * @return an array of packed RGB values, of length {@code <= pMaxColors}.
+     */
+    protected abstract int[] createPalette(Histogram pHistogram, int pMaxColors);
+
+    /**
+     * Creates a histogram for the given image, using the current sample
+     * stride.
+     *
+     * @param pImage the image
+     * @param pSkipTransparent {@code true} if pixels with alpha values less
+     * than 50% should not be counted
+     * @return a new histogram
+     */
+    protected Histogram createHistogram(final BufferedImage pImage, final boolean pSkipTransparent) {
+        Histogram histogram = new Histogram();
+
+        Raster raster = pImage.getRaster();
+        ColorModel cm = pImage.getColorModel();
+        SampleModel sm = raster.getSampleModel();
+        DataBuffer buffer = raster.getDataBuffer();
+
+        boolean skipTransparent = pSkipTransparent && cm.hasAlpha();
+
+        if (buffer instanceof DataBufferInt && buffer.getNumBanks() == 1
+                && sm instanceof SinglePixelPackedSampleModel && isDefaultRGB(cm)) {
+            addPackedInt(histogram, raster, (SinglePixelPackedSampleModel) sm, ((DataBufferInt) buffer).getData(), skipTransparent);
+        }
+        else if (buffer instanceof DataBufferByte && buffer.getNumBanks() == 1
+                && sm instanceof PixelInterleavedSampleModel && isInterleavedRGB(cm, sm)) {
+            addInterleavedByte(histogram, raster, (PixelInterleavedSampleModel) sm, ((DataBufferByte) buffer).getData(), skipTransparent);
+        }
+        else {
+            addRGB(histogram, pImage, skipTransparent);
+        }
+
+        return histogram;
+    }
+
+    private static boolean isDefaultRGB(final ColorModel pColorModel) {
+        if (!(pColorModel instanceof DirectColorModel) || pColorModel.isAlphaPremultiplied()) {
+            return false;
+        }
+
+        DirectColorModel cm = (DirectColorModel) pColorModel;
+        return cm.getRedMask() == 0x00FF0000 && cm.getGreenMask() == 0x0000FF00 && cm.getBlueMask() == 0x000000FF
+                && (cm.getAlphaMask() == 0 || cm.getAlphaMask() == 0xFF000000);
+    }
+
+    private static boolean isInterleavedRGB(final ColorModel pColorModel, final SampleModel pSampleModel) {
+        if (!(pColorModel instanceof ComponentColorModel) || pColorModel.isAlphaPremultiplied()
+                || !pColorModel.getColorSpace().isCS_sRGB()) {
+            return false;
+        }
+
+        int bands = pSampleModel.getNumBands();
+        return (bands == 3 || bands == 4) && pColorModel.getPixelSize() == bands * 8;
+    }
+
+    private void addPackedInt(final Histogram pHistogram, final Raster pRaster, final SinglePixelPackedSampleModel pSampleModel,
+                              final int[] pData, final boolean pSkipTransparent) {
+        final int width = pRaster.getWidth();
+        final int height = pRaster.getHeight();
+        final int scan = pSampleModel.getScanlineStride();
+        final int offset = pRaster.getDataBuffer().getOffset()
+                + pSampleModel.getOffset(pRaster.getMinX() - pRaster.getSampleModelTranslateX(),
+                                         pRaster.getMinY() - pRaster.getSampleModelTranslateY());
+        final int stride = mSampleStride;
+        final boolean hasAlpha = pSampleModel.getNumBands() == 4;
+
+        for (int y = 0; y < height; y++) {
+            int row = offset + y * scan;
+
+            for (int x = y % stride; x < width; x += stride) {
+                int argb = pData[row + x];
+
+                if (pSkipTransparent && hasAlpha && (argb >>> 24) < ALPHA_THRESHOLD) {
+                    continue;
+                }
+
+                pHistogram.add((argb >> 16) & 0xFF, (argb >> 8) & 0xFF, argb & 0xFF);
+            }
+        }
+    }
+
+    private void addInterleavedByte(final Histogram pHistogram, final Raster pRaster, final PixelInterleavedSampleModel pSampleModel,
+                                    final byte[] pData, final boolean pSkipTransparent) {
+        final int width = pRaster.getWidth();
+        final int height = pRaster.getHeight();
+        final int scan = pSampleModel.getScanlineStride();
+        final int pixelStride = pSampleModel.getPixelStride();
+        // NOTE: Can't use getOffset(x, y) here, as it includes the offset of the first band
+        final int offset = pRaster.getDataBuffer().getOffset()
+                + (pRaster.getMinY() - pRaster.getSampleModelTranslateY()) * scan
+                + (pRaster.getMinX() - pRaster.getSampleModelTranslateX()) * pixelStride;
+
+        final int[] bandOffsets = pSampleModel.getBandOffsets();
+        final int redOffset = bandOffsets[0];
+        final int greenOffset = bandOffsets[1];
+        final int blueOffset = bandOffsets[2];
+        final boolean hasAlpha = bandOffsets.length == 4;
+        final int alphaOffset = hasAlpha ? bandOffsets[3] : 0;
+
+        final int stride = mSampleStride;
+
+        for (int y = 0; y < height; y++) {
+            int row = offset + y * scan;
+
+            for (int x = y % stride; x < width; x += stride) {
+                int pixel = row + x * pixelStride;
+
+                if (pSkipTransparent && hasAlpha && (pData[pixel + alphaOffset] & 0xFF) < ALPHA_THRESHOLD) {
+                    continue;
+                }
+
+                pHistogram.add(pData[pixel + redOffset] & 0xFF, pData[pixel + greenOffset] & 0xFF, pData[pixel + blueOffset] & 0xFF);
+            }
+        }
+    }
+
+    private void addRGB(final Histogram pHistogram, final BufferedImage pImage, final boolean pSkipTransparent) {
+        final int width = pImage.getWidth();
+        final int height = pImage.getHeight();
+        final int stride = mSampleStride;
+
+        int[] row = new int[width];
+
+        for (int y = 0; y < height; y++) {
+            pImage.getRGB(0, y, width, 1, row, 0, width);
+
+            for (int x = y % stride; x < width; x += stride) {
+                int argb = row[x];
+
+                if (pSkipTransparent && (argb >>> 24) < ALPHA_THRESHOLD) {
+                    continue;
+                }
+
+                pHistogram.add((argb >> 16) & 0xFF, (argb >> 8) & 0xFF, argb & 0xFF);
+            }
+        }
+    }
+
+    /**
+     * A 3D color histogram, using the 5 most significant bits of each
+     * color component, giving {@code 32 x 32 x 32} bins.
+     * For each bin, the pixel count and the sums (and sum of squares) of the
+     * exact color components are kept, so that the average color of any
+     * set of bins can be computed exactly.
+     * <p/>
+     * A bin index is computed as {@code (r << 10) | (g << 5) | b}, where
+     * {@code r}, {@code g} and {@code b} are the 5 bit component values.
+     * <p/>
+     * In addition, the exact colors are tracked, until there are more than
+     * {@link #MAX_EXACT_COLORS} distinct colors.
+     */
+    protected static final class Histogram {
+        /** Number of significant bits used for each color component */
+        public static final int BITS = 5;
+        /** Number of levels for each color component */
+        public static final int LEVELS = 1 << BITS;
+        /** Total number of bins */
+        public static final int SIZE = LEVELS * LEVELS * LEVELS;
+
+        /** Maximum number of distinct exact colors tracked */
+        public static final int MAX_EXACT_COLORS = 256;
+
+        private static final int SHIFT = 8 - BITS;
+
+        // Open addressing hash set of exact RGB values, twice the maximum size
+        private static final int EXACT_BITS = 9;
+        private static final int EMPTY = -1;
+
+        final int[] mCounts = new int[SIZE];
+        final long[] mRedSums = new long[SIZE];
+        final long[] mGreenSums = new long[SIZE];
+        final long[] mBlueSums = new long[SIZE];
+        final long[] mSquareSums = new long[SIZE];
+        private long mTotal;
+
+        private int[] mExact = new int[1 << EXACT_BITS];
+        private int mExactCount;
+        private int mLastExact = EMPTY;
+
+        Histogram() {
+            Arrays.fill(mExact, EMPTY);
+        }
+
+        final void add(final int pRed, final int pGreen, final int pBlue) {
+            int index = ((pRed >> SHIFT) << (BITS * 2)) | ((pGreen >> SHIFT) << BITS) | (pBlue >> SHIFT);
+
+            if (mExact != null) {
+                addExact(pRed << 16 | pGreen << 8 | pBlue);
+            }
+
+            mCounts[index]++;
+            mRedSums[index] += pRed;
+            mGreenSums[index] += pGreen;
+            mBlueSums[index] += pBlue;
+            mSquareSums[index] += pRed * pRed + pGreen * pGreen + pBlue * pBlue;
+            mTotal++;
+        }
+
+        private void addExact(final int pRGB) {
+            // Neighbouring pixels are very often the same color
+            if (pRGB == mLastExact) {
+                return;
+            }
+            mLastExact = pRGB;
+
+            int slot = (pRGB * 0x9E3779B1) >>> (32 - EXACT_BITS);
+            while (mExact[slot] != EMPTY) {
+                if (mExact[slot] == pRGB) {
+                    return;
+                }
+                slot = (slot + 1) & ((1 << EXACT_BITS) - 1);
+            }
+
+            if (++mExactCount > MAX_EXACT_COLORS) {
+                // Too many colors, stop tracking
+                mExact = null;
+                return;
+            }
+
+            mExact[slot] = pRGB;
+        }
+
+        /**
+         * Returns the distinct colors counted, if there are no more than
+         * {@code pMaxColors} of them.
+         *
+         * @param pMaxColors the maximum number of colors
+         * @return the packed RGB values of the distinct colors, in ascending
+         * order, or {@code null} if there are more than {@code pMaxColors}
+         */
+        public int[] getExactColors(final int pMaxColors) {
+            if (mExact == null || mExactCount > pMaxColors) {
+                return null;
+            }
+
+            int[] colors = new int[mExactCount];
+            int count = 0;
+            for (int rgb : mExact) {
+                if (rgb != EMPTY) {
+                    colors[count++] = rgb;
+                }
+            }
+            Arrays.sort(colors);
+
+            return colors;
+        }
+
+        /**
+         * Returns the total number of pixels counted.
+         *
+         * @return the total number of pixels counted
+         */
+        public long getTotal() {
+            return mTotal;
+        }
+
+        public int getCount(final int pIndex) {
+            return mCounts[pIndex];
+        }
+
+        public long getRedSum(final int pIndex) {
+            return mRedSums[pIndex];
+        }
+
+        public long getGreenSum(final int pIndex) {
+            return mGreenSums[pIndex];
+        }
+
+        public long getBlueSum(final int pIndex) {
+            return mBlueSums[pIndex];
+        }
+
+        public long getSquareSum(final int pIndex) {
+            return mSquareSums[pIndex];
+        }
+    }
+}
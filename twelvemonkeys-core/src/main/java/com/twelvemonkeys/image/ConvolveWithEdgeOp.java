@@ -36,6 +36,14 @@ import java.awt.geom.Point2D;
 /**
  * This class implements a convolution from the source
  * to the destination.
+ * <p/>
+ * Unlike {@link ConvolveOp}, this class supports the edge conditions
+ * {@link #EDGE_REFLECT} and {@link #EDGE_WRAP}. These are handled by mapping
+ * the source indices outside the image, without creating a bordered copy of
+ * the image.
+ * Separable kernels (including all one-dimensional kernels) are applied in
+ * two one-dimensional passes, and large images are filtered in parallel,
+ * using bands of rows (see {@link TilingExecutor}).
  *
  * @author <a href="mailto:harald.kuhr@gmail.com">Harald Kuhr</a>
  * @author last modified by $Author: haku $
@@ -58,17 +66,11 @@ public class ConvolveWithEdgeOp implements BufferedImageOp, RasterOp {
     /**
      * Adds a border to the image while convolving. The border will reflect the
      * edges of the original image. This is usually a good default.
-     * Note that while this mode typically provides better quality than the
-     * standard modes {@code EDGE_ZERO_FILL} and {@code EDGE_NO_OP}, it does so
-     * at the expense of higher memory consumption and considerable more computation.
      */
     public static final int EDGE_REFLECT = 2; // as JAI BORDER_REFLECT
     /**
      * Adds a border to the image while convolving. The border will wrap the
      * edges of the original image. This is usually the best choice for tiles.
-     * Note that while this mode typically provides better quality than the
-     * standard modes {@code EDGE_ZERO_FILL} and {@code EDGE_NO_OP}, it does so
-     * at the expense of higher memory consumption and considerable more computation.
      * @see #EDGE_REFLECT
      */
     public static final int EDGE_WRAP = 3; // as JAI BORDER_WRAP
@@ -99,102 +101,12 @@ public class ConvolveWithEdgeOp implements BufferedImageOp, RasterOp {
         this(pKernel, EDGE_ZERO_FILL, null);
     }
 
-    public BufferedImage filter(BufferedImage pSource, BufferedImage pDestination) {
-        if (pSource == null) {
-            throw new NullPointerException("source image is null");
-        }
-        if (pSource == pDestination) {
-            throw new IllegalArgumentException("source image cannot be the same as the destination image");
-        }
-
-        int borderX = mKernel.getWidth() / 2;
-        int borderY = mKernel.getHeight() / 2;
-
-        BufferedImage original = addBorder(pSource, borderX, borderY);
-
-        // Workaround for what seems to be a Java2D bug:
-        // ConvolveOp needs explicit destination image type for some "uncommon"
-        // image types. However, TYPE_3BYTE_BGR is what javax.imageio.ImageIO
-        // normally returns for color JPEGs... :-/
-        BufferedImage destination = pDestination;
-        if (original.getType() == BufferedImage.TYPE_3BYTE_BGR) {
-            destination = ImageUtil.createBuffered(
-                    pSource.getWidth(), pSource.getHeight(),
-                    pSource.getType(), pSource.getColorModel().getTransparency(),
-                    null
-            );
-        }
-
-        // Do the filtering (if destination is null, a new image will be created)
-        destination = mConvolve.filter(original, destination);
-
-        if (pSource != original) {
-            // Remove the border
-            destination = destination.getSubimage(borderX, borderY, pSource.getWidth(), pSource.getHeight());
-        }
-
-        return destination;
-    }
-
-    private BufferedImage addBorder(final BufferedImage pOriginal, final int pBorderX, final int pBorderY) {
-        if ((mEdgeCondition & 2) == 0) {
-            return pOriginal;
-        }
-
-        // TODO: Might be faster if we could clone raster and stretch it...
-        int w = pOriginal.getWidth();
-        int h = pOriginal.getHeight();
-
-        ColorModel cm = pOriginal.getColorModel();
-        WritableRaster raster = cm.createCompatibleWritableRaster(w + 2 * pBorderX, h + 2 * pBorderY);
-        BufferedImage bordered = new BufferedImage(cm, raster, cm.isAlphaPremultiplied(), null);
-
-        Graphics2D g = bordered.createGraphics();
-        try {
-            g.setComposite(AlphaComposite.Src);
-            g.setRenderingHint(RenderingHints.KEY_DITHERING, RenderingHints.VALUE_DITHER_DISABLE);
-
-            // Draw original in center
-            g.drawImage(pOriginal, pBorderX, pBorderY, null);
-
-            // TODO: I guess we need the top/left etc, if the corner pixels are covered by the kernel
-            switch (mEdgeCondition) {
-                case EDGE_REFLECT:
-                    // Top/left (empty)
-                    g.drawImage(pOriginal, pBorderX, 0, pBorderX + w, pBorderY, 0, 0, w, 1, null); // Top/center
-                    // Top/right (empty)
-
-                    g.drawImage(pOriginal, -w + pBorderX, pBorderY, pBorderX, h + pBorderY, 0, 0, 1, h, null); // Center/left
-                    // Center/center (already drawn)
-                    g.drawImage(pOriginal, w + pBorderX, pBorderY, 2 * pBorderX + w, h + pBorderY, w - 1, 0, w, h, null); // Center/right
-
-                    // Bottom/left (empty)
-                    g.drawImage(pOriginal, pBorderX, pBorderY + h, pBorderX + w, 2 * pBorderY + h, 0, h - 1, w, h, null); // Bottom/center
-                    // Bottom/right (empty)
-                    break;
-                case EDGE_WRAP:
-                    g.drawImage(pOriginal, -w + pBorderX, -h + pBorderY, null); // Top/left
-                    g.drawImage(pOriginal, pBorderX, -h + pBorderY, null); // Top/center
-                    g.drawImage(pOriginal, w + pBorderX, -h + pBorderY, null); // Top/right
-
-                    g.drawImage(pOriginal, -w + pBorderX, pBorderY, null); // Center/left
-                    // Center/center (already drawn)
-                    g.drawImage(pOriginal, w + pBorderX, pBorderY, null); // Center/right
-
-                    g.drawImage(pOriginal, -w + pBorderX, h + pBorderY, null); // Bottom/left
-                    g.drawImage(pOriginal, pBorderX, h + pBorderY, null); // Bottom/center
-                    g.drawImage(pOriginal, w + pBorderX, h + pBorderY, null); // Bottom/right
-                    break;
-                default:
-                    throw new IllegalArgumentException("Illegal edge operation " + mEdgeCondition);
+    public BufferedImage filter(final BufferedImage pSource, final BufferedImage pDestination) {
+        return Convolver.filter(pSource, pDestination, new Convolver.Operation() {
+            public void filter(final Raster pSource, final WritableRaster pDestination, final int pAlphaBand) {
+                Convolver.convolve(pSource, pDestination, mKernel, mEdgeCondition, pAlphaBand);
             }
-
-        }
-        finally {
-            g.dispose();
-        }
-
-        return bordered;
+        });
     }
 
     /**
@@ -210,7 +122,14 @@ public class ConvolveWithEdgeOp implements BufferedImageOp, RasterOp {
     }
 
     public WritableRaster filter(final Raster pSource, final WritableRaster pDestination) {
-        return mConvolve.filter(pSource, pDestination);
+        if (pSource == null) {
+            throw new NullPointerException("source raster is null");
+        }
+
+        WritableRaster destination = pDestination != null ? pDestination : createCompatibleDestRaster(pSource);
+        Convolver.convolve(pSource, destination, mKernel, mEdgeCondition, -1);
+
+        return destination;
     }
 
     public BufferedImage createCompatibleDestImage(final BufferedImage pSource, final ColorModel pDesinationColorModel) {
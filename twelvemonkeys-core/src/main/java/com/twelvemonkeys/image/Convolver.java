@@ -0,0 +1,998 @@
+/*
+ * Copyright (c) 2008, Harald Kuhr
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name "TwelveMonkeys" nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.twelvemonkeys.image;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ConvolveOp;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.IndexColorModel;
+import java.awt.image.Kernel;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+
+/**
+ * A native Java convolution engine, used by {@link ConvolveWithEdgeOp} and
+ * {@link ImageUtil#blur(java.awt.image.BufferedImage, float)}.
+ * <p/>
+ * The edge conditions {@link ConvolveWithEdgeOp#EDGE_REFLECT EDGE_REFLECT} and
+ * {@link ConvolveWithEdgeOp#EDGE_WRAP EDGE_WRAP} are handled by mapping the
+ * source indices outside the raster, one row at a time, instead of
+ * convolving a bordered copy of the image.
+ * {@link ConvolveOp#EDGE_ZERO_FILL EDGE_ZERO_FILL} and
+ * {@link ConvolveOp#EDGE_NO_OP EDGE_NO_OP} have the same meaning as for {@link ConvolveOp}.
+ * <p/>
+ * Separable kernels are applied in two one-dimensional passes, and
+ * {@link #boxBlur(Raster, WritableRaster, int[], int, int) box blur} uses
+ * running sums, so its cost does not depend on the radius.
+ * Rows are streamed through ring buffers holding only the rows covered by
+ * the vertical kernel, so no float copy of the entire image is made.
+ * Samples for the most common layouts ({@code TYPE_INT_*} and interleaved
+ * byte rasters) are read and written directly from the {@code DataBuffer}.
+ * Rows are processed in bands, in parallel, for large enough rasters,
+ * using the {@link TilingExecutor}.
+ * Apart from the rounding of the box blur running sums, the result does not
+ * depend on the number of bands.
+ *
+ * @author <a href="mailto:harald.kuhr@gmail.com">Harald Kuhr</a>
+ * @author last modified by $Author: haku $
+ * @version $Id: Convolver.java,v 1.0 Oct 18, 2026 11:42:17 PM haraldk Exp$
+ */
+final class Convolver {
+    private Convolver() {
+    }
+
+    /**
+     * Filters {@code pSource} into {@code pDestination}, using the given operation.
+     * As for {@link ConvolveOp}, indexed images are converted to RGB before filtering,
+     * and color samples of images with non-premultiplied alpha are premultiplied
+     * while filtering.
+     *
+     * @param pSource the source image
+     * @param pDestination the destination image, or {@code null}
+     * @param pOperation the operation
+     * @return the destination image, or a new image if {@code pDestination} is {@code null}
+     */
+    static BufferedImage filter(final BufferedImage pSource, final BufferedImage pDestination, final Operation pOperation) {
+        if (pSource == null) {
+            throw new NullPointerException("source image is null");
+        }
+        if (pSource == pDestination) {
+            throw new IllegalArgumentException("source image cannot be the same as the destination image");
+        }
+
+        BufferedImage source = pSource;
+        ColorModel cm = source.getColorModel();
+
+        if (cm instanceof IndexColorModel) {
+            source = ((IndexColorModel) cm).convertToIntDiscrete(source.getRaster(), false);
+            cm = source.getColorModel();
+        }
+
+        BufferedImage destination = pDestination;
+        if (destination == null || !cm.equals(destination.getColorModel())
+                || destination.getWidth() != source.getWidth() || destination.getHeight() != source.getHeight()) {
+            // NOTE: Creating the raster from the source keeps the sample layout, and thus the image type
+            destination = new BufferedImage(cm, source.getRaster().createCompatibleWritableRaster(), cm.isAlphaPremultiplied(), null);
+        }
+
+        int alphaBand = cm.hasAlpha() && !cm.isAlphaPremultiplied() ? cm.getNumComponents() - 1 : -1;
+        pOperation.filter(source.getRaster(), destination.getRaster(), alphaBand);
+
+        if (pDestination != null && destination != pDestination) {
+            // Incompatible destination, convert
+            Graphics2D g = pDestination.createGraphics();
+            try {
+                g.setComposite(AlphaComposite.Src);
+                g.drawImage(destination, 0, 0, null);
+            }
+            finally {
+                g.dispose();
+            }
+
+            return pDestination;
+        }
+
+        return destination;
+    }
+
+    /**
+     * Convolves {@code pSource} into {@code pDestination}, using the given kernel.
+     * If the kernel is separable, the convolution is done in two one-dimensional passes.
+     *
+     * @param pSource the source raster
+     * @param pDestination the destination raster, must be the same size and have the same number of bands
+     * @param pKernel the kernel
+     * @param pEdgeCondition the edge condition
+     * @param pAlphaBand the index of a non-premultiplied alpha band, or {@code -1}
+     */
+    static void convolve(final Raster pSource, final WritableRaster pDestination, final Kernel pKernel,
+                         final int pEdgeCondition, final int pAlphaBand) {
+        float[][] separated = separate(pKernel);
+
+        if (separated != null) {
+            convolve(pSource, pDestination, separated[0], pKernel.getXOrigin(), separated[1], pKernel.getYOrigin(), pEdgeCondition, pAlphaBand);
+        }
+        else {
+            convolve2D(pSource, pDestination, pKernel, pEdgeCondition, pAlphaBand);
+        }
+    }
+
+    /**
+     * Convolves {@code pSource} into {@code pDestination}, using a horizontal pass followed by a vertical pass.
+     *
+     * @param pSource the source raster
+     * @param pDestination the destination raster, must be the same size and have the same number of bands
+     * @param pHorizontal the horizontal kernel
+     * @param pXOrigin the origin of the horizontal kernel
+     * @param pVertical the vertical kernel
+     * @param pYOrigin the origin of the vertical kernel
+     * @param pEdgeCondition the edge condition
+     * @param pAlphaBand the index of a non-premultiplied alpha band, or {@code -1}
+     */
+    static void convolve(final Raster pSource, final WritableRaster pDestination,
+                         final float[] pHorizontal, final int pXOrigin, final float[] pVertical, final int pYOrigin,
+                         final int pEdgeCondition, final int pAlphaBand) {
+        checkRasters(pSource, pDestination);
+
+        final Rows source = Rows.create(pSource, pAlphaBand);
+        final Rows destination = Rows.create(pDestination, pAlphaBand);
+        final int width = pSource.getWidth();
+        final int height = pSource.getHeight();
+        final int bands = pSource.getNumBands();
+
+        final Span columns = new Span(width, pHorizontal.length, pXOrigin, pEdgeCondition);
+        final Span rows = new Span(height, pVertical.length, pYOrigin, pEdgeCondition);
+
+        TilingExecutor.inBands(height, width * bands * (pHorizontal.length + pVertical.length), new TilingExecutor.Band() {
+            public void run(final int pFrom, final int pTo) {
+                final float[] row = new float[width * bands];
+                final float[] padded = columns.createPadded(bands);
+                float[] result = new float[width * bands];
+
+                // Horizontal pass, into a ring buffer holding the rows covered by the vertical kernel
+                RowRing ring = new RowRing(rows, width * bands) {
+                    void load(final int pY, final float[] pRow) {
+                        source.read(pY, row, true);
+                        columns.convolve(row, padded, pHorizontal, bands, pRow, false);
+                    }
+                };
+
+                // Vertical pass
+                for (int y = pFrom; y < pTo; y++) {
+                    if (rows.isInterior(y)) {
+                        ring.moveTo(y);
+                        Arrays.fill(result, 0);
+
+                        for (int j = 0; j < pVertical.length; j++) {
+                            float k = pVertical[j];
+                            if (k == 0f) {
+                                continue;
+                            }
+
+                            float[] kernelRow = ring.get(y + pYOrigin - j);
+                            for (int i = 0; i < result.length; i++) {
+                                result[i] += k * kernelRow[i];
+                            }
+                        }
+
+                        source.unpremultiply(result, columns.mInteriorFrom, columns.mInteriorTo);
+                        fillEdges(source, y, columns, bands, result, pEdgeCondition);
+                    }
+                    else {
+                        fillEdges(source, y, null, bands, result, pEdgeCondition);
+                    }
+
+                    destination.write(y, result);
+                }
+            }
+        });
+    }
+
+    private static void convolve2D(final Raster pSource, final WritableRaster pDestination, final Kernel pKernel,
+                                   final int pEdgeCondition, final int pAlphaBand) {
+        checkRasters(pSource, pDestination);
+
+        final Rows source = Rows.create(pSource, pAlphaBand);
+        final Rows destination = Rows.create(pDestination, pAlphaBand);
+        final int width = pSource.getWidth();
+        final int height = pSource.getHeight();
+        final int bands = pSource.getNumBands();
+
+        final int kernelWidth = pKernel.getWidth();
+        final int kernelHeight = pKernel.getHeight();
+        final int yOrigin = pKernel.getYOrigin();
+        final float[] kernel = pKernel.getKernelData(null);
+
+        final Span columns = new Span(width, kernelWidth, pKernel.getXOrigin(), pEdgeCondition);
+        final Span rows = new Span(height, kernelHeight, yOrigin, pEdgeCondition);
+
+        TilingExecutor.inBands(height, width * bands * kernelHeight, new TilingExecutor.Band() {
+            public void run(final int pFrom, final int pTo) {
+                float[] result = new float[width * bands];
+                float[] padded = columns.createPadded(bands);
+                float[] horizontal = new float[kernelWidth];
+
+                // Read (and premultiply) each row once, into a ring buffer holding the rows covered by the kernel
+                RowRing ring = new RowRing(rows, width * bands) {
+                    void load(final int pY, final float[] pRow) {
+                        source.read(pY, pRow, true);
+                    }
+                };
+
+                for (int y = pFrom; y < pTo; y++) {
+                    if (rows.isInterior(y)) {
+                        ring.moveTo(y);
+                        Arrays.fill(result, 0);
+
+                        for (int j = 0; j < kernelHeight; j++) {
+                            System.arraycopy(kernel, j * kernelWidth, horizontal, 0, kernelWidth);
+                            columns.convolve(ring.get(y + yOrigin - j), padded, horizontal, bands, result, true);
+                        }
+
+                        source.unpremultiply(result, columns.mInteriorFrom, columns.mInteriorTo);
+                        fillEdges(source, y, columns, bands, result, pEdgeCondition);
+                    }
+                    else {
+                        fillEdges(source, y, null, bands, result, pEdgeCondition);
+                    }
+
+                    destination.write(y, result);
+                }
+            }
+        });
+    }
+
+
+    /**
+     * Approximates a gaussian blur, using successive box blurs in each direction.
+     * Each box blur uses running sums, so the cost does not depend on the radius.
+     *
+     * @param pSource the source raster
+     * @param pDestination the destination raster, must be the same size and have the same number of bands
+     * @param pRadii the radius of each box blur
+     * @param pEdgeCondition the edge condition, must be {@code EDGE_REFLECT} or {@code EDGE_WRAP}
+     * @param pAlphaBand the index of a non-premultiplied alpha band, or {@code -1}
+     *
+     * @see #boxRadii(float, int)
+     */
+    static void boxBlur(final Raster pSource, final WritableRaster pDestination, final int[] pRadii,
+                        final int pEdgeCondition, final int pAlphaBand) {
+        checkRasters(pSource, pDestination);
+
+        if (!isMapped(pEdgeCondition)) {
+            throw new IllegalArgumentException("Illegal edge condition for box blur: " + pEdgeCondition);
+        }
+
+        final Rows source = Rows.create(pSource, pAlphaBand);
+        final Rows destination = Rows.create(pDestination, pAlphaBand);
+        final int width = pSource.getWidth();
+        final int height = pSource.getHeight();
+        final int bands = pSource.getNumBands();
+
+        int radii = 0;
+        for (int radius : pRadii) {
+            radii += radius;
+        }
+        final int totalRadius = radii;
+
+        TilingExecutor.inBands(height, width * bands * pRadii.length * 2, new TilingExecutor.Band() {
+            public void run(final int pFrom, final int pTo) {
+                final float[] temp = new float[width * bands];
+                final float[] sums = new float[bands];
+
+                // Horizontal passes, one source row at a time, starting far enough above the band for the vertical passes
+                RowStream stream = new RowStream() {
+                    int mY = pFrom - totalRadius;
+
+                    public void next(final float[] pRow) {
+                        source.read(map(mY++, height, pEdgeCondition), pRow, true);
+
+                        for (int radius : pRadii) {
+                            boxRow(pRow, temp, width, bands, radius, sums, pEdgeCondition);
+                            System.arraycopy(temp, 0, pRow, 0, pRow.length);
+                        }
+                    }
+                };
+
+                // Vertical passes, each keeping a running sum over a ring buffer of the rows in its box
+                for (int radius : pRadii) {
+                    stream = new BoxStream(stream, radius, width * bands);
+                }
+
+                float[] row = new float[width * bands];
+                for (int y = pFrom; y < pTo; y++) {
+                    stream.next(row);
+                    source.unpremultiply(row, 0, width);
+                    destination.write(y, row);
+                }
+            }
+        });
+    }
+
+
+    /**
+     * Computes the radii of {@code pCount} successive box blurs, approximating a
+     * gaussian blur with the given standard deviation.
+     *
+     * @param pSigma the standard deviation of the gaussian
+     * @param pCount the number of box blurs
+     * @return the radii of the box blurs
+     */
+    static int[] boxRadii(final float pSigma, final int pCount) {
+        // See: "Fast Almost-Gaussian Filtering", Peter Kovesi, 2010
+        double ideal = Math.sqrt(12.0 * pSigma * pSigma / pCount + 1);
+        int lower = (int) Math.floor(ideal);
+        if (lower % 2 == 0) {
+            lower--;
+        }
+        int upper = lower + 2;
+
+        double idealCount = (12.0 * pSigma * pSigma - pCount * lower * lower - 4.0 * pCount * lower - 3.0 * pCount) / (-4.0 * lower - 4);
+        int lowerCount = (int) Math.round(idealCount);
+
+        int[] radii = new int[pCount];
+        for (int i = 0; i < pCount; i++) {
+            radii[i] = ((i < lowerCount ? lower : upper) - 1) / 2;
+        }
+
+        return radii;
+    }
+
+    private static void boxRow(final float[] pRow, final float[] pResult, final int pWidth, final int pBands,
+                               final int pRadius, final float[] pSums, final int pEdgeCondition) {
+        float scale = 1f / (2 * pRadius + 1);
+
+        Arrays.fill(pSums, 0);
+        for (int x = -pRadius; x <= pRadius; x++) {
+            int src = map(x, pWidth, pEdgeCondition) * pBands;
+            for (int b = 0; b < pBands; b++) {
+                pSums[b] += pRow[src + b];
+            }
+        }
+
+        for (int x = 0; x < pWidth; x++) {
+            int dst = x * pBands;
+            int add = map(x + pRadius + 1, pWidth, pEdgeCondition) * pBands;
+            int remove = map(x - pRadius, pWidth, pEdgeCondition) * pBands;
+
+            for (int b = 0; b < pBands; b++) {
+                pResult[dst + b] = pSums[b] * scale;
+                pSums[b] += pRow[add + b] - pRow[remove + b];
+            }
+        }
+    }
+
+    /**
+     * Splits a kernel into a horizontal and a vertical kernel, if possible.
+     *
+     * @param pKernel the kernel
+     * @return an array containing the horizontal and vertical kernels, or {@code null} if the kernel is not separable
+     */
+    static float[][] separate(final Kernel pKernel) {
+        int width = pKernel.getWidth();
+        int height = pKernel.getHeight();
+        float[] data = pKernel.getKernelData(null);
+
+        if (height == 1) {
+            return new float[][] {data, {1f}};
+        }
+        if (width == 1) {
+            return new float[][] {{1f}, data};
+        }
+
+        // Use the row and column of the largest element as factors, and test if the kernel is their outer product
+        int pivot = 0;
+        for (int i = 1; i < data.length; i++) {
+            if (Math.abs(data[i]) > Math.abs(data[pivot])) {
+                pivot = i;
+            }
+        }
+
+        float max = Math.abs(data[pivot]);
+        if (max == 0f) {
+            return null;
+        }
+
+        int pivotX = pivot % width;
+        int pivotY = pivot / width;
+
+        float[] horizontal = new float[width];
+        System.arraycopy(data, pivotY * width, horizontal, 0, width);
+
+        float[] vertical = new float[height];
+        for (int y = 0; y < height; y++) {
+            vertical[y] = data[y * width + pivotX] / data[pivot];
+        }
+
+        float epsilon = max * 1e-6f;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if (Math.abs(data[y * width + x] - vertical[y] * horizontal[x]) > epsilon) {
+                    return null;
+                }
+            }
+        }
+
+        return new float[][] {horizontal, vertical};
+    }
+
+    private static void checkRasters(final Raster pSource, final WritableRaster pDestination) {
+        if (pSource == null) {
+            throw new NullPointerException("source raster is null");
+        }
+        if (pSource == pDestination) {
+            throw new IllegalArgumentException("source raster cannot be the same as the destination raster");
+        }
+        if (pSource.getWidth() != pDestination.getWidth() || pSource.getHeight() != pDestination.getHeight()) {
+            throw new IllegalArgumentException("source and destination rasters must have the same size");
+        }
+        if (pSource.getNumBands() != pDestination.getNumBands()) {
+            throw new IllegalArgumentException("source and destination rasters must have the same number of bands");
+        }
+    }
+
+    private static boolean isMapped(final int pEdgeCondition) {
+        switch (pEdgeCondition) {
+            case ConvolveWithEdgeOp.EDGE_REFLECT:
+            case ConvolveWithEdgeOp.EDGE_WRAP:
+                return true;
+            case ConvolveOp.EDGE_ZERO_FILL:
+            case ConvolveOp.EDGE_NO_OP:
+                return false;
+            default:
+                throw new IllegalArgumentException("Illegal edge condition " + pEdgeCondition);
+        }
+    }
+
+    /**
+     * Maps an index outside {@code [0, pLength)} back into the range, according to the edge condition.
+     *
+     * @param pIndex the index
+     * @param pLength the length of the range
+     * @param pEdgeCondition either {@code EDGE_REFLECT} or {@code EDGE_WRAP}
+     * @return the mapped index
+     */
+    static int map(final int pIndex, final int pLength, final int pEdgeCondition) {
+        if (pIndex >= 0 && pIndex < pLength) {
+            return pIndex;
+        }
+
+        if (pEdgeCondition == ConvolveWithEdgeOp.EDGE_WRAP) {
+            int index = pIndex % pLength;
+            return index < 0 ? index + pLength : index;
+        }
+
+        // Reflect, as JAI BORDER_REFLECT: -1 -> 0, -2 -> 1, length -> length - 1
+        int period = 2 * pLength;
+        int index = pIndex % period;
+        if (index < 0) {
+            index += period;
+        }
+
+        return index < pLength ? index : period - 1 - index;
+    }
+
+    /**
+     * Sets the edge pixels of a row, for the {@code EDGE_ZERO_FILL} and {@code EDGE_NO_OP} conditions.
+     *
+     * @param pSource the source rows
+     * @param pY the row
+     * @param pColumns the columns, or {@code null} if the entire row is edge
+     * @param pBands the number of bands
+     * @param pRow the row to fill
+     * @param pEdgeCondition the edge condition
+     */
+    private static void fillEdges(final Rows pSource, final int pY, final Span pColumns, final int pBands,
+                                  final float[] pRow, final int pEdgeCondition) {
+        int interiorFrom = pColumns != null ? pColumns.mInteriorFrom * pBands : pRow.length;
+        int interiorTo = pColumns != null ? pColumns.mInteriorTo * pBands : pRow.length;
+
+        if (interiorFrom == 0 && interiorTo == pRow.length) {
+            return;
+        }
+
+        if (pEdgeCondition == ConvolveOp.EDGE_NO_OP) {
+            // NOTE: The edges are copied from the source as is
+            float[] source = new float[pRow.length];
+            pSource.read(pY, source, false);
+            System.arraycopy(source, 0, pRow, 0, interiorFrom);
+            System.arraycopy(source, interiorTo, pRow, interiorTo, pRow.length - interiorTo);
+        }
+        else {
+            Arrays.fill(pRow, 0, interiorFrom, 0);
+            Arrays.fill(pRow, interiorTo, pRow.length, 0);
+        }
+    }
+
+    /**
+     * An operation filtering the samples of a raster.
+     */
+    interface Operation {
+        /**
+         * @param pSource the source raster
+         * @param pDestination the destination raster, same size and number of bands as the source
+         * @param pAlphaBand the index of a non-premultiplied alpha band, or {@code -1}
+         */
+        void filter(Raster pSource, WritableRaster pDestination, int pAlphaBand);
+    }
+
+    /**
+     * A one-dimensional kernel span over a row or column.
+     */
+    private static final class Span {
+        final int mLength;
+        final int mKernelLength;
+        final int mEdgeCondition;
+        final boolean mMapEdges;
+
+        // Samples needed before and after the row, to convolve the edges
+        final int mBefore;
+        final int mAfter;
+
+        // Range where the kernel is completely inside the row, or the entire row if edges are mapped
+        final int mInteriorFrom;
+        final int mInteriorTo;
+
+        Span(final int pLength, final int pKernelLength, final int pOrigin, final int pEdgeCondition) {
+            mLength = pLength;
+            mKernelLength = pKernelLength;
+            mEdgeCondition = pEdgeCondition;
+            mMapEdges = isMapped(pEdgeCondition);
+
+            // NOTE: The kernel is rotated 180 degrees, as for ConvolveOp: dst(x) = sum(k[i] * src(x + origin - i))
+            mBefore = pKernelLength - 1 - pOrigin;
+            mAfter = pOrigin;
+
+            if (mMapEdges) {
+                mInteriorFrom = 0;
+                mInteriorTo = pLength;
+            }
+            else {
+                mInteriorFrom = Math.min(mBefore, pLength);
+                mInteriorTo = Math.max(mInteriorFrom, pLength - mAfter);
+            }
+        }
+
+        boolean isInterior(final int pIndex) {
+            return pIndex >= mInteriorFrom && pIndex < mInteriorTo;
+        }
+
+        int map(final int pIndex) {
+            return mMapEdges ? Convolver.map(pIndex, mLength, mEdgeCondition) : pIndex;
+        }
+
+        float[] createPadded(final int pBands) {
+            return mMapEdges ? new float[(mBefore + mLength + mAfter) * pBands] : null;
+        }
+
+        /**
+         * Convolves the interior of a row into {@code pResult}.
+         *
+         * @param pRow the row
+         * @param pPadded a buffer from {@link #createPadded(int)}
+         * @param pKernel the kernel
+         * @param pBands the number of bands
+         * @param pResult the result
+         * @param pAdd if {@code true}, the result is added to the current values in {@code pResult}
+         */
+        void convolve(final float[] pRow, final float[] pPadded, final float[] pKernel, final int pBands,
+                      final float[] pResult, final boolean pAdd) {
+            final float[] source;
+            final int offset;
+
+            if (mMapEdges) {
+                pad(pRow, pPadded, pBands);
+                source = pPadded;
+                offset = 0;
+            }
+            else {
+                source = pRow;
+                offset = -mBefore * pBands;
+            }
+
+            final int from = mInteriorFrom * pBands;
+            final int to = mInteriorTo * pBands;
+
+            if (!pAdd) {
+                Arrays.fill(pResult, from, to, 0);
+            }
+
+            for (int k = 0; k < mKernelLength; k++) {
+                float value = pKernel[k];
+                if (value == 0f) {
+                    continue;
+                }
+
+                // source[i + shift] is the sample multiplied with k, for result[i]
+                int shift = offset + (mKernelLength - 1 - k) * pBands;
+                for (int i = from; i < to; i++) {
+                    pResult[i] += value * source[i + shift];
+                }
+            }
+        }
+
+        private void pad(final float[] pRow, final float[] pPadded, final int pBands) {
+            System.arraycopy(pRow, 0, pPadded, mBefore * pBands, mLength * pBands);
+
+            for (int i = 0; i < mBefore; i++) {
+                int x = Convolver.map(i - mBefore, mLength, mEdgeCondition);
+                System.arraycopy(pRow, x * pBands, pPadded, i * pBands, pBands);
+            }
+            for (int i = 0; i < mAfter; i++) {
+                int x = Convolver.map(mLength + i, mLength, mEdgeCondition);
+                System.arraycopy(pRow, x * pBands, pPadded, (mBefore + mLength + i) * pBands, pBands);
+            }
+        }
+    }
+
+    /**
+     * A ring buffer of rows, holding the rows covered by a vertical kernel.
+     * Rows are indexed by their unmapped row index, and each row is loaded only once, in order.
+     */
+    private static abstract class RowRing {
+        private final Span mRows;
+        private final float[][] mBuffer;
+        private int mNext = Integer.MIN_VALUE;
+
+        RowRing(final Span pRows, final int pLength) {
+            mRows = pRows;
+            mBuffer = new float[pRows.mKernelLength][pLength];
+        }
+
+        /**
+         * Loads the rows covered by the kernel for the given destination row, that are not already loaded.
+         *
+         * @param pY the destination row, must not be less than the previous row
+         */
+        final void moveTo(final int pY) {
+            mNext = Math.max(mNext, pY - mRows.mBefore);
+
+            for (int last = pY + mRows.mAfter; mNext <= last; mNext++) {
+                load(mRows.map(mNext), mBuffer[slot(mNext)]);
+            }
+        }
+
+        /**
+         * @param pIndex the unmapped row index, must be covered by the kernel for the current destination row
+         * @return the row
+         */
+        final float[] get(final int pIndex) {
+            return mBuffer[slot(pIndex)];
+        }
+
+        private int slot(final int pIndex) {
+            int slot = pIndex % mBuffer.length;
+            return slot < 0 ? slot + mBuffer.length : slot;
+        }
+
+        /**
+         * @param pY the source row, inside the raster
+         * @param pRow the row to load into
+         */
+        abstract void load(int pY, float[] pRow);
+    }
+
+    /**
+     * A stream of rows, produced in order.
+     */
+    private interface RowStream {
+        void next(float[] pRow);
+    }
+
+    /**
+     * A vertical box blur of a stream of rows, using a running sum over a ring buffer of {@code 2 * radius + 1} rows.
+     * The first row produced is the blur of the input row {@code radius} rows after the first input row.
+     */
+    private static final class BoxStream implements RowStream {
+        private final RowStream mInput;
+        private final float[][] mBuffer;
+        private final double[] mSums;
+        private final double mScale;
+        private int mOldest = -1;
+
+        BoxStream(final RowStream pInput, final int pRadius, final int pLength) {
+            mInput = pInput;
+            mBuffer = new float[2 * pRadius + 1][pLength];
+            mSums = new double[pLength];
+            mScale = 1.0 / mBuffer.length;
+        }
+
+        public void next(final float[] pRow) {
+            if (mOldest < 0) {
+                for (float[] row : mBuffer) {
+                    mInput.next(row);
+                    add(row, 1);
+                }
+
+                mOldest = 0;
+            }
+            else {
+                // Replace the oldest row with the next row
+                float[] row = mBuffer[mOldest];
+                add(row, -1);
+                mInput.next(row);
+                add(row, 1);
+
+                mOldest = (mOldest + 1) % mBuffer.length;
+            }
+
+            for (int i = 0; i < pRow.length; i++) {
+                pRow[i] = (float) (mSums[i] * mScale);
+            }
+        }
+
+        private void add(final float[] pRow, final int pSign) {
+            for (int i = 0; i < pRow.length; i++) {
+                mSums[i] += pSign * pRow[i];
+            }
+        }
+    }
+
+    /**
+     * Reads and writes rows of samples as {@code float}s.
+     */
+    private static abstract class Rows {
+        final Raster mRaster;
+        final int mWidth;
+        final int mBands;
+        final int mAlphaBand;
+        final float mAlphaMax;
+
+        // Max sample value for each band, or Float.MAX_VALUE for floating point data
+        final float[] mMax;
+        final boolean mIntegral;
+
+        Rows(final Raster pRaster, final int pAlphaBand) {
+            mRaster = pRaster;
+            mWidth = pRaster.getWidth();
+            mBands = pRaster.getNumBands();
+            mAlphaBand = pAlphaBand;
+
+            SampleModel sm = pRaster.getSampleModel();
+            int type = sm.getDataType();
+            mIntegral = type != DataBuffer.TYPE_FLOAT && type != DataBuffer.TYPE_DOUBLE;
+
+            mMax = new float[mBands];
+            for (int b = 0; b < mBands; b++) {
+                mMax[b] = mIntegral ? (float) ((1l << sm.getSampleSize(b)) - 1) : Float.MAX_VALUE;
+            }
+
+            mAlphaMax = pAlphaBand >= 0 ? (mIntegral ? mMax[pAlphaBand] : 1f) : 1f;
+        }
+
+        static Rows create(final Raster pRaster, final int pAlphaBand) {
+            SampleModel sm = pRaster.getSampleModel();
+            DataBuffer buffer = pRaster.getDataBuffer();
+
+            if (buffer instanceof DataBufferInt && buffer.getNumBanks() == 1 && sm instanceof SinglePixelPackedSampleModel) {
+                return new PackedIntRows(pRaster, pAlphaBand);
+            }
+            else if (buffer instanceof DataBufferByte && buffer.getNumBanks() == 1 && sm instanceof PixelInterleavedSampleModel) {
+                return new InterleavedByteRows(pRaster, pAlphaBand);
+            }
+
+            return new GenericRows(pRaster, pAlphaBand);
+        }
+
+        /**
+         * Reads a row of samples.
+         *
+         * @param pY the row, relative to the raster bounds
+         * @param pRow the samples
+         * @param pPremultiply if {@code true}, color samples are multiplied with alpha
+         */
+        final void read(final int pY, final float[] pRow, final boolean pPremultiply) {
+            readSamples(pY, pRow);
+
+            if (pPremultiply && mAlphaBand >= 0) {
+                for (int i = 0; i < pRow.length; i += mBands) {
+                    float alpha = pRow[i + mAlphaBand] / mAlphaMax;
+
+                    for (int b = 0; b < mBands; b++) {
+                        if (b != mAlphaBand) {
+                            pRow[i + b] *= alpha;
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * Divides color samples with alpha, for the pixels in the range {@code [pFrom, pTo)}.
+         *
+         * @param pRow the samples
+         * @param pFrom the first pixel
+         * @param pTo the last pixel, exclusive
+         */
+        final void unpremultiply(final float[] pRow, final int pFrom, final int pTo) {
+            if (mAlphaBand < 0) {
+                return;
+            }
+
+            for (int i = pFrom * mBands; i < pTo * mBands; i += mBands) {
+                float alpha = pRow[i + mAlphaBand];
+                float scale = alpha > 0 ? mAlphaMax / alpha : 0;
+
+                for (int b = 0; b < mBands; b++) {
+                    if (b != mAlphaBand) {
+                        pRow[i + b] *= scale;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Writes a row of samples, rounded and clamped to the legal range of each band.
+         *
+         * @param pY the row, relative to the raster bounds
+         * @param pRow the samples
+         */
+        final void write(final int pY, final float[] pRow) {
+            writeSamples(pY, pRow);
+        }
+
+        final int clamp(final float pValue, final int pBand) {
+            // NOTE: Rounding, rather than truncating as ConvolveOp does, avoids darkening the image
+            if (pValue <= 0) {
+                return 0;
+            }
+
+            float max = mMax[pBand];
+            return pValue >= max ? (int) max : (int) (pValue + 0.5f);
+        }
+
+        abstract void readSamples(int pY, float[] pRow);
+
+        abstract void writeSamples(int pY, float[] pRow);
+    }
+
+    private static final class PackedIntRows extends Rows {
+        private final int[] mData;
+        private final int mOffset;
+        private final int mScan;
+        private final int[] mMasks;
+        private final int[] mShifts;
+        private final int mAllMasks;
+
+        PackedIntRows(final Raster pRaster, final int pAlphaBand) {
+            super(pRaster, pAlphaBand);
+
+            SinglePixelPackedSampleModel sm = (SinglePixelPackedSampleModel) pRaster.getSampleModel();
+            mData = ((DataBufferInt) pRaster.getDataBuffer()).getData();
+            mScan = sm.getScanlineStride();
+            mOffset = pRaster.getDataBuffer().getOffset()
+                    + sm.getOffset(pRaster.getMinX() - pRaster.getSampleModelTranslateX(),
+                                   pRaster.getMinY() - pRaster.getSampleModelTranslateY());
+            mMasks = sm.getBitMasks();
+            mShifts = sm.getBitOffsets();
+
+            int all = 0;
+            for (int mask : mMasks) {
+                all |= mask;
+            }
+            mAllMasks = all;
+        }
+
+        void readSamples(final int pY, final float[] pRow) {
+            int offset = mOffset + pY * mScan;
+
+            for (int x = 0, i = 0; x < mWidth; x++) {
+                int pixel = mData[offset + x];
+
+                for (int b = 0; b < mBands; b++) {
+                    pRow[i++] = (pixel & mMasks[b]) >>> mShifts[b];
+                }
+            }
+        }
+
+        void writeSamples(final int pY, final float[] pRow) {
+            int offset = mOffset + pY * mScan;
+
+            for (int x = 0, i = 0; x < mWidth; x++) {
+                int pixel = mData[offset + x] & ~mAllMasks;
+
+                for (int b = 0; b < mBands; b++) {
+                    pixel |= clamp(pRow[i++], b) << mShifts[b];
+                }
+
+                mData[offset + x] = pixel;
+            }
+        }
+    }
+
+    private static final class InterleavedByteRows extends Rows {
+        private final byte[] mData;
+        private final int mOffset;
+        private final int mScan;
+        private final int mPixelStride;
+        private final int[] mBandOffsets;
+
+        InterleavedByteRows(final Raster pRaster, final int pAlphaBand) {
+            super(pRaster, pAlphaBand);
+
+            PixelInterleavedSampleModel sm = (PixelInterleavedSampleModel) pRaster.getSampleModel();
+            mData = ((DataBufferByte) pRaster.getDataBuffer()).getData();
+            mScan = sm.getScanlineStride();
+            mPixelStride = sm.getPixelStride();
+            // NOTE: Can't use getOffset(x, y) here, as it includes the offset of the first band
+            mOffset = pRaster.getDataBuffer().getOffset()
+                    + (pRaster.getMinY() - pRaster.getSampleModelTranslateY()) * mScan
+                    + (pRaster.getMinX() - pRaster.getSampleModelTranslateX()) * mPixelStride;
+            mBandOffsets = sm.getBandOffsets();
+        }
+
+        void readSamples(final int pY, final float[] pRow) {
+            int offset = mOffset + pY * mScan;
+
+            for (int x = 0, i = 0; x < mWidth; x++, offset += mPixelStride) {
+                for (int b = 0; b < mBands; b++) {
+                    pRow[i++] = mData[offset + mBandOffsets[b]] & 0xff;
+                }
+            }
+        }
+
+        void writeSamples(final int pY, final float[] pRow) {
+            int offset = mOffset + pY * mScan;
+
+            for (int x = 0, i = 0; x < mWidth; x++, offset += mPixelStride) {
+                for (int b = 0; b < mBands; b++) {
+                    mData[offset + mBandOffsets[b]] = (byte) clamp(pRow[i++], b);
+                }
+            }
+        }
+    }
+
+    private static final class GenericRows extends Rows {
+        GenericRows(final Raster pRaster, final int pAlphaBand) {
+            super(pRaster, pAlphaBand);
+        }
+
+        void readSamples(final int pY, final float[] pRow) {
+            mRaster.getPixels(mRaster.getMinX(), mRaster.getMinY() + pY, mWidth, 1, pRow);
+        }
+
+        void writeSamples(final int pY, final float[] pRow) {
+            if (mIntegral) {
+                for (int i = 0; i < pRow.length; i++) {
+                    pRow[i] = clamp(pRow[i], i % mBands);
+                }
+            }
+
+            ((WritableRaster) mRaster).setPixels(mRaster.getMinX(), mRaster.getMinY() + pY, mWidth, 1, pRow);
+        }
+    }
+}
@@ -11,6 +11,7 @@ import java.awt.image.IndexColorModel;
 import java.awt.image.Raster;
 import java.awt.image.RasterOp;
 import java.awt.image.WritableRaster;
+import java.util.Arrays;
 import java.util.Random;
 
 /**
@@ -32,6 +33,9 @@ import java.util.Random;
  * <P/>
  * See <A href="http://www.awprofessional.com/bookstore/product.asp?isbn=0201848406&rl=1">Computer Graphics (Foley et al.)</a>
  * for more information.
+ * <P/>
+ * The Atkinson and (three row) Sierra kernels are also supported, see
+ * {@link #KERNEL_ATKINSON} and {@link #KERNEL_SIERRA}.
  *
  * @author <a href="mailto:harald.kuhr@gmail.com">Harald Kuhr</a>
  * @author last modified by $Author: haku $
@@ -41,8 +45,47 @@ import java.util.Random;
  */
 public class DiffusionDither implements BufferedImageOp, RasterOp {
 
+    /**
+     * Floyd-Steinberg error diffusion kernel (default).
+     */
+    public final static int KERNEL_FLOYD_STEINBERG = 0;
+
+    /**
+     * Atkinson error diffusion kernel.
+     * Diffuses only 6/8 of the error, giving higher contrast and less noise,
+     * at the expense of detail in highlights and shadows.
+     */
+    public final static int KERNEL_ATKINSON = 1;
+
+    /**
+     * Sierra (three row) error diffusion kernel.
+     * Spreads the error over a larger area than Floyd-Steinberg, giving
+     * smoother results.
+     */
+    public final static int KERNEL_SIERRA = 2;
+
+    // Kernel taps, as triplets of (dx, dy, weight), for left-to-right scans
+    private static final int[] FLOYD_STEINBERG = {
+                             1, 0, 7,
+            -1, 1, 3, 0, 1, 5, 1, 1, 1
+    };
+    private static final int[] ATKINSON = {
+                                       1, 0, 1, 2, 0, 1,
+                    -1, 1, 1, 0, 1, 1, 1, 1, 1,
+                               0, 2, 1
+    };
+    private static final int[] SIERRA = {
+                                        1, 0, 5, 2, 0, 3,
+            -2, 1, 2, -1, 1, 4, 0, 1, 5, 1, 1, 4, 2, 1, 2,
+                        -1, 2, 2, 0, 2, 3, 1, 2, 2
+    };
+
+    // Padding of error rows, must be at least the max |dx| of any kernel
+    private static final int PAD = 2;
+
     protected IndexColorModel mIndexColorModel = null;
     private boolean mAlternateScans = true;
+    private int mKernel = KERNEL_FLOYD_STEINBERG;
     private static final int FS_SCALE = 1 << 8;
     private static final Random RANDOM = new Random();
 
@@ -66,6 +109,37 @@ public class DiffusionDither implements BufferedImageOp, RasterOp {
     public DiffusionDither() {
     }
 
+    /**
+     * Creates a {@code DiffusionDither}, using the given
+     * {@code IndexColorModel} for dithering into, and the given error
+     * diffusion kernel.
+     *
+     * @param pICM an IndexColorModel.
+     * @param pKernel the error diffusion kernel, one of
+     * {@link #KERNEL_FLOYD_STEINBERG}, {@link #KERNEL_ATKINSON} or
+     * {@link #KERNEL_SIERRA}.
+     *
+     * @throws IllegalArgumentException if {@code pKernel} is not a known kernel
+     */
+    public DiffusionDither(IndexColorModel pICM, int pKernel) {
+        this(pICM);
+        setKernel(pKernel);
+    }
+
+    /**
+     * Sets the error diffusion kernel.
+     *
+     * @param pKernel the error diffusion kernel, one of
+     * {@link #KERNEL_FLOYD_STEINBERG}, {@link #KERNEL_ATKINSON} or
+     * {@link #KERNEL_SIERRA}.
+     *
+     * @throws IllegalArgumentException if {@code pKernel} is not a known kernel
+     */
+    public void setKernel(int pKernel) {
+        getKernelTaps(pKernel); // Validate
+        mKernel = pKernel;
+    }
+
     /**
      * Sets the scan mode. If the parameter is true, error distribution for
      * every even line will be left-to-right, while odd lines will be
@@ -184,36 +258,8 @@ public class DiffusionDither implements BufferedImageOp, RasterOp {
     }
 
     /**
-     * Converts an int ARGB to int triplet.
-     */
-    private static int[] toRGBArray(int pARGB, int[] pBuffer) {
-        pBuffer[0] = ((pARGB & 0x00ff0000) >> 16);
-        pBuffer[1] = ((pARGB & 0x0000ff00) >> 8);
-        pBuffer[2] = ((pARGB & 0x000000ff));
-        //pBuffer[3] = ((pARGB & 0xff000000) >> 24); // alpha
-
-        return pBuffer;
-    }
-
-    /**
-     * Converts a int triplet to int ARGB.
-     */
-    private static int toIntARGB(int[] pRGB) {
-        return 0xff000000 // All opaque
-                | (pRGB[0] << 16)
-                | (pRGB[1] << 8)
-                | (pRGB[2]);
-        /*
-          | ((int) (pRGB[0] << 16) & 0x00ff0000)
-          | ((int) (pRGB[1] <<  8) & 0x0000ff00)
-          | ((int) (pRGB[2]      ) & 0x000000ff);
-        */
-    }
-
-
-    /**
-     * Performs a single-input/single-output dither operation, applying basic
-     * Floyd-Steinberg error-diffusion to the image.
+     * Performs a single-input/single-output dither operation, applying
+     * error-diffusion to the image, using the current kernel.
      *
      * @param pSource the source image
      * @param pDest the destiantion image
@@ -238,8 +284,8 @@ public class DiffusionDither implements BufferedImageOp, RasterOp {
     }
 
     /**
-     * Performs a single-input/single-output dither operation, applying basic
-     * Floyd-Steinberg error-diffusion to the image.
+     * Performs a single-input/single-output dither operation, applying
+     * error-diffusion to the image, using the current kernel.
      *
      * @param pSource
      * @param pDest
@@ -268,8 +314,13 @@ public class DiffusionDither implements BufferedImageOp, RasterOp {
 
 
     /**
-     * Performs a single-input/single-output dither operation, applying basic
-     * Floyd-Steinberg error-diffusion to the image.
+     * Performs a single-input/single-output dither operation, applying
+     * error-diffusion to the image, using the current kernel.
+     * <p/>
+     * The source is read, and the destination written, one row at a time.
+     * If {@code pColorModel} is an {@code InverseColorMapIndexColorModel},
+     * its inverse color map is used directly, otherwise a (cached) one is
+     * created for the palette.
      *
      * @param pSource
      * @param pDest
@@ -288,178 +339,133 @@ public class DiffusionDither implements BufferedImageOp, RasterOp {
             pDest = createCompatibleDestRaster(pSource, pColorModel);
         }
 
-        // Initialize Floyd-Steinberg error vectors.
-        // +2 to handle the previous pixel and next pixel case minimally
-        // When reference for column, add 1 to reference as this buffer is
-        // offset from actual column position by one to allow FS to not check
-        // left/right edge conditions
-        int[][] mCurrErr = new int[width + 2][3];
-        int[][] mNextErr = new int[width + 2][3];
+        // It is VERY important that we are using an IndexColorModel that
+        // support reverse color lookup for speed.
+        InverseColorMapIndexColorModel icm = InverseColorMapIndexColorModel.getInstance(pColorModel);
+        final int[] palette = icm.mRGBs;
+
+        final int[] taps = getKernelTaps(mKernel);
+        final int shift = getKernelShift(mKernel);
+        final int round = 1 << (shift - 1);
+
+        // Initialize error vectors, one for this row, one for each of the
+        // following rows the kernel reaches. Each row is a flat array of
+        // RGB triplets, padded with PAD pixels on each side, so the kernel
+        // does not need to check left/right edge conditions
+        final int rowLength = (width + PAD * 2) * 3;
+        int[][] errors = new int[getKernelRows(taps)][rowLength];
 
         // Random errors in [-1 .. 1] - for first row
-        for (int i = 0; i < width + 2; i++) {
-            // Note: This is broken for the strange cases where nextInt returns Integer.MIN_VALUE
-            /*
-            mCurrErr[i][0] = (Math.abs(RANDOM.nextInt()) % (FS_SCALE * 2)) - FS_SCALE;
-            mCurrErr[i][1] = (Math.abs(RANDOM.nextInt()) % (FS_SCALE * 2)) - FS_SCALE;
-            mCurrErr[i][2] = (Math.abs(RANDOM.nextInt()) % (FS_SCALE * 2)) - FS_SCALE;
-            */
-            mCurrErr[i][0] = RANDOM.nextInt(FS_SCALE * 2) - FS_SCALE;
-            mCurrErr[i][1] = RANDOM.nextInt(FS_SCALE * 2) - FS_SCALE;
-            mCurrErr[i][2] = RANDOM.nextInt(FS_SCALE * 2) - FS_SCALE;
+        int[] first = errors[0];
+        for (int i = 0; i < rowLength; i++) {
+            first[i] = ((RANDOM.nextInt(FS_SCALE * 2) - FS_SCALE) << shift) >> 4;
         }
 
-        // Temp buffers
-        final int[] diff = new int[3]; // No alpha
-        final int[] inRGB = new int[4];
-        final int[] outRGB = new int[4];
-        Object pixel = null;
+        // Row buffers
+        final int bands = pSource.getNumBands();
+        int[] samples = new int[width * bands];
+        int[] indexes = new int[width];
         boolean forward = true;
 
+        final int srcX = pSource.getMinX();
+        final int srcY = pSource.getMinY();
+        final int dstX = pDest.getMinX();
+        final int dstY = pDest.getMinY();
+
         // Loop through image data
         for (int y = 0; y < height; y++) {
-            // Clear out next error rows for colour errors
-            for (int i = mNextErr.length; --i >= 0;) {
-                mNextErr[i][0] = 0;
-                mNextErr[i][1] = 0;
-                mNextErr[i][2] = 0;
-            }
+            samples = pSource.getPixels(srcX, srcY + y, width, 1, samples);
+            int[] current = errors[0];
 
-            // Set up start column and limit
-            int x;
-            int limit;
-            if (forward) {
-                x = 0;
-                limit = width;
-            }
-            else {
-                x = width - 1;
-                limit = -1;
-            }
-
-            // TODO: Use getPixels instead of getPixel for better performance?            
+            int x = forward ? 0 : width - 1;
+            int dir = forward ? 1 : -1;
 
             // Loop over row
-            while (true) {
-                // Get RGB from original raster
-                // DON'T KNOW IF THIS WILL WORK FOR ALL TYPES.
-                pSource.getPixel(x, y, inRGB);
-
-                // Get error for this pixel & add error to rgb
-                for (int i = 0; i < 3; i++) {
-                    // Make a 28.4 FP number, add Error (with fraction),
-                    // rounding and truncate to int
-                    inRGB[i] = ((inRGB[i] << 4) + mCurrErr[x + 1][i] + 0x08) >> 4;
-
-                    // Clamp
-                    if (inRGB[i] > 255) {
-                        inRGB[i] = 255;
-                    }
-                    else if (inRGB[i] < 0) {
-                        inRGB[i] = 0;
-                    }
+            for (int n = 0; n < width; n++, x += dir) {
+                int s = x * bands;
+                int e = (x + PAD) * 3;
+
+                // Get RGB from source samples (gray is replicated),
+                // add error (with fraction), round and clamp
+                int red = clamp(((samples[s] << shift) + current[e] + round) >> shift);
+                int green = clamp(((samples[bands >= 3 ? s + 1 : s] << shift) + current[e + 1] + round) >> shift);
+                int blue = clamp(((samples[bands >= 3 ? s + 2 : s] << shift) + current[e + 2] + round) >> shift);
+
+                // Find closest match, and the error
+                int index = icm.getIndexNearest(red, green, blue);
+                indexes[x] = index;
+
+                int rgb = palette[index];
+                int diffRed = red - ((rgb >> 16) & 0xff);
+                int diffGreen = green - ((rgb >> 8) & 0xff);
+                int diffBlue = blue - (rgb & 0xff);
+
+                // Apply error diffusion, mirroring the kernel horizontally
+                // for right-to-left scans
+                for (int t = 0; t < taps.length; t += 3) {
+                    int[] err = errors[taps[t + 1]];
+                    int i = e + dir * taps[t] * 3;
+                    int weight = taps[t + 2];
+
+                    err[i] += diffRed * weight;
+                    err[i + 1] += diffGreen * weight;
+                    err[i + 2] += diffBlue * weight;
                 }
+            }
 
-                // Get pixel value...
-                // It is VERY important that we are using a IndexColorModel that
-                // support reverse color lookup for speed.
-                pixel = pColorModel.getDataElements(toIntARGB(inRGB), pixel);
-
-                // ...set it...
-                pDest.setDataElements(x, y, pixel);
-
-                // ..and get back the closet match
-                pDest.getPixel(x, y, outRGB);
-
-                // Convert the value to default sRGB
-                // Should work for all transfertypes supported by IndexColorModel
-                toRGBArray(pColorModel.getRGB(outRGB[0]), outRGB);
-
-                // Find diff
-                diff[0] = inRGB[0] - outRGB[0];
-                diff[1] = inRGB[1] - outRGB[1];
-                diff[2] = inRGB[2] - outRGB[2];
-
-                // Apply F-S error diffusion
-                // Serpentine scan: left-right
-                if (forward) {
-                    // Row 1 (y)
-                    // Update error in this pixel (x + 1)
-                    mCurrErr[x + 2][0] += diff[0] * 7;
-                    mCurrErr[x + 2][1] += diff[1] * 7;
-                    mCurrErr[x + 2][2] += diff[2] * 7;
-
-                    // Row 2 (y + 1)
-                    // Update error in this pixel (x - 1)
-                    mNextErr[x][0] += diff[0] * 3;
-                    mNextErr[x][1] += diff[1] * 3;
-                    mNextErr[x][2] += diff[2] * 3;
-                    // Update error in this pixel (x)
-                    mNextErr[x + 1][0] += diff[0] * 5;
-                    mNextErr[x + 1][1] += diff[1] * 5;
-                    mNextErr[x + 1][2] += diff[2] * 5;
-                    // Update error in this pixel (x + 1)
-                    // TODO: Consider calculating this using
-                    // error term = error - sum(error terms 1, 2 and 3)
-                    // See Computer Graphics (Foley et al.), p. 573
-                    mNextErr[x + 2][0] += diff[0]; // * 1;
-                    mNextErr[x + 2][1] += diff[1]; // * 1;
-                    mNextErr[x + 2][2] += diff[2]; // * 1;
-
-                    // Next
-                    x++;
-
-                    // Done?
-                    if (x >= limit) {
-                        break;
-                    }
+            // Write the entire row of indexes
+            pDest.setPixels(dstX, dstY + y, width, 1, indexes);
 
-                }
-                else {
-                    // Row 1 (y)
-                    // Update error in this pixel (x - 1)
-                    mCurrErr[x][0] += diff[0] * 7;
-                    mCurrErr[x][1] += diff[1] * 7;
-                    mCurrErr[x][2] += diff[2] * 7;
-
-                    // Row 2 (y + 1)
-                    // Update error in this pixel (x + 1)
-                    mNextErr[x + 2][0] += diff[0] * 3;
-                    mNextErr[x + 2][1] += diff[1] * 3;
-                    mNextErr[x + 2][2] += diff[2] * 3;
-                    // Update error in this pixel (x)
-                    mNextErr[x + 1][0] += diff[0] * 5;
-                    mNextErr[x + 1][1] += diff[1] * 5;
-                    mNextErr[x + 1][2] += diff[2] * 5;
-                    // Update error in this pixel (x - 1)
-                    // TODO: Consider calculating this using
-                    // error term = error - sum(error terms 1, 2 and 3)
-                    // See Computer Graphics (Foley et al.), p. 573
-                    mNextErr[x][0] += diff[0]; // * 1;
-                    mNextErr[x][1] += diff[1]; // * 1;
-                    mNextErr[x][2] += diff[2]; // * 1;
-
-                    // Previous
-                    x--;
-
-                    // Done?
-                    if (x <= limit) {
-                        break;
-                    }
-                }
+            // Make next error rows current for next iteration, and
+            // reuse (cleared) current row as the last row
+            for (int i = 1; i < errors.length; i++) {
+                errors[i - 1] = errors[i];
             }
-
-            // Make next error info current for next iteration
-            int[][] temperr;
-            temperr = mCurrErr;
-            mCurrErr = mNextErr;
-            mNextErr = temperr;
+            Arrays.fill(current, 0);
+            errors[errors.length - 1] = current;
 
             // Toggle direction
             if (mAlternateScans) {
                 forward = !forward;
             }
         }
+
         return pDest;
     }
-}
\ No newline at end of file
+
+    private static int clamp(final int pValue) {
+        return pValue > 255 ? 255 : pValue < 0 ? 0 : pValue;
+    }
+
+    private static int[] getKernelTaps(final int pKernel) {
+        switch (pKernel) {
+            case KERNEL_FLOYD_STEINBERG:
+                return FLOYD_STEINBERG;
+            case KERNEL_ATKINSON:
+                return ATKINSON;
+            case KERNEL_SIERRA:
+                return SIERRA;
+            default:
+                throw new IllegalArgumentException("Unknown kernel: " + pKernel);
+        }
+    }
+
+    private static int getKernelShift(final int pKernel) {
+        switch (pKernel) {
+            case KERNEL_ATKINSON:
+                return 3; // 1/8
+            case KERNEL_SIERRA:
+                return 5; // 1/32
+            default:
+                return 4; // 1/16
+        }
+    }
+
+    private static int getKernelRows(final int[] pTaps) {
+        int rows = 1;
+        for (int i = 1; i < pTaps.length; i += 3) {
+            rows = Math.max(rows, pTaps[i] + 1);
+        }
+        return rows;
+    }
+}
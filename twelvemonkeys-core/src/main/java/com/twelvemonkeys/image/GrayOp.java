@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2008, Harald Kuhr
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name "TwelveMonkeys" nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.twelvemonkeys.image;
+
+/**
+ * Converts a color image to grayscale.
+ * <p/>
+ * This is the {@code BufferedImageOp} version of {@link GrayFilter}, and
+ * gives the same result.
+ * The weighted color components and the dynamic range are precalculated
+ * lookup tables, see {@link RGBRasterOp} for details.
+ * Note that the destination has the same color model as the source, only the
+ * color values are gray.
+ *
+ * @author <a href="mailto:harald.kuhr@gmail.com">Harald Kuhr</a>
+ * @author last modified by $Author: haku $
+ * @version $Id: GrayOp.java,v 1.0 Oct 19, 2026 5:21:08 AM haraldk Exp$
+ *
+ * @see GrayFilter
+ */
+public class GrayOp extends RGBRasterOp {
+    // ITU standard weights, scaled by 1000
+    private static final int[] RED = new int[256];
+    private static final int[] GREEN = new int[256];
+    private static final int[] BLUE = new int[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            RED[i] = 222 * i;
+            GREEN[i] = 707 * i;
+            BLUE[i] = 71 * i;
+        }
+    }
+
+    private final int[] mLUT = new int[256];
+
+    /**
+     * Constructs a GrayOp using ITU color-conversion.
+     */
+    public GrayOp() {
+        this(new GrayFilter());
+    }
+
+    /**
+     * Constructs a GrayOp using ITU color-conversion, and a dynamic range between
+     * pLow and pHigh.
+     *
+     * @param pLow float in the range  0..1
+     * @param pHigh float in the range 0..1 and >= pLow
+     */
+    public GrayOp(final float pLow, final float pHigh) {
+        this(new GrayFilter(pLow, pHigh));
+    }
+
+    /**
+     * Constructs a GrayOp using ITU color-conversion, and a dynamic
+     * range between pLow and pHigh.
+     *
+     * @param pLow integer in the range 0..255
+     * @param pHigh integer in the range 0..255 and >= pLow
+     */
+    public GrayOp(final int pLow, final int pHigh) {
+        this(new GrayFilter(pLow, pHigh));
+    }
+
+    private GrayOp(final GrayFilter pFilter) {
+        // Use the same range as the filter, by filtering gray values
+        for (int i = 0; i < 256; i++) {
+            mLUT[i] = pFilter.filterRGB(0, 0, i << 16 | i << 8 | i) & 0xff;
+        }
+    }
+
+    void filterRGB(final int[] pARGB, final int pOffset, final int pLength) {
+        int[] lut = mLUT;
+
+        for (int i = pOffset; i < pOffset + pLength; i++) {
+            int argb = pARGB[i];
+            int gray = lut[(RED[argb >> 16 & 0xff] + GREEN[argb >> 8 & 0xff] + BLUE[argb & 0xff]) / 1000];
+            pARGB[i] = (argb & 0xff000000) | gray << 16 | gray << 8 | gray;
+        }
+    }
+}
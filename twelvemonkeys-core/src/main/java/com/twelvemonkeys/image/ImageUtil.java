@@ -68,18 +68,12 @@ public final class ImageUtil {
     /**
      * Adds a border to the image while convolving. The border will reflect the
      * edges of the original image. This is usually a good default.
-     * Note that while this mode typically provides better quality than the
-     * standard modes {@code EDGE_ZERO_FILL} and {@code EDGE_NO_OP}, it does so
-     * at the expense of higher memory consumption and considerable more computation.
      * @see #convolve(java.awt.image.BufferedImage, java.awt.image.Kernel, int)
      */
     public static final int EDGE_REFLECT = 2; // as JAI BORDER_REFLECT
     /**
      * Adds a border to the image while convolving. The border will wrap the
      * edges of the original image. This is usually the best choice for tiles.
-     * Note that while this mode typically provides better quality than the
-     * standard modes {@code EDGE_ZERO_FILL} and {@code EDGE_NO_OP}, it does so
-     * at the expense of higher memory consumption and considerable more computation.
      * @see #convolve(java.awt.image.BufferedImage, java.awt.image.Kernel, int)
      * @see #EDGE_REFLECT
      */
@@ -105,6 +99,21 @@ public final class ImageUtil {
      */
     public final static int DITHER_DIFFUSION_ALTSCANS = IndexImage.DITHER_DIFFUSION_ALTSCANS;
 
+    /**
+     * Error diffusion dither, using the Atkinson kernel
+     */
+    public final static int DITHER_DIFFUSION_ATKINSON = IndexImage.DITHER_DIFFUSION_ATKINSON;
+
+    /**
+     * Error diffusion dither, using the Sierra kernel
+     */
+    public final static int DITHER_DIFFUSION_SIERRA = IndexImage.DITHER_DIFFUSION_SIERRA;
+
+    /**
+     * Ordered (Bayer) dither
+     */
+    public final static int DITHER_ORDERED = IndexImage.DITHER_ORDERED;
+
     /**
      * Default color selection
      */
@@ -120,6 +129,16 @@ public final class ImageUtil {
      */
     public final static int COLOR_SELECTION_QUALITY = IndexImage.COLOR_SELECTION_QUALITY;
 
+    /**
+     * Median cut color selection (default)
+     */
+    public final static int COLOR_SELECTION_MEDIAN_CUT = IndexImage.COLOR_SELECTION_MEDIAN_CUT;
+
+    /**
+     * Wu's (variance minimizing) color selection
+     */
+    public final static int COLOR_SELECTION_WU = IndexImage.COLOR_SELECTION_WU;
+
     /**
      * Default transparency (none)
      */
@@ -167,6 +186,12 @@ public final class ImageUtil {
      */
     private static final Kernel SHARPEN_KERNEL = new Kernel(3, 3, SHARPEN_MATRIX);
 
+    /**
+     * Blur radius above which the gaussian blur is approximated, using
+     * successive box blurs, so that the cost does not increase with the radius.
+     */
+    private static final float BOX_BLUR_RADIUS = 8f;
+
     /**
      * Component that can be used with the MediaTracker etc.
      */
@@ -349,6 +374,21 @@ public final class ImageUtil {
         return toBuffered((RenderedImage) pOriginal, pType);
     }
 
+    /**
+     * Returns the given image, as it already is a {@code BufferedImage}.
+     * This overload avoids ambiguity between {@link #toBuffered(RenderedImage)}
+     * and {@link #toBuffered(Image)}.
+     *
+     * @param pOriginal the image
+     *
+     * @return {@code pOriginal}
+     *
+     * @throws IllegalArgumentException if {@code pOriginal == null}
+     */
+    public static BufferedImage toBuffered(BufferedImage pOriginal) {
+        return toBuffered((Image) pOriginal);
+    }
+
     /**
      * Converts the {@code Image} to a {@code BufferedImage}.
      * The new image will have the same {@code ColorModel}, {@code Raster} and
@@ -805,6 +845,29 @@ public final class ImageUtil {
      * @see Image#SCALE_SMOOTH
      */
     public static BufferedImage createScaled(Image pImage, int pWidth, int pHeight, int pHints) {
+        return createScaled(pImage, pWidth, pHeight, pHints, ResamplePolicy.DEFAULT);
+    }
+
+    /**
+     * Creates a scaled instance of the given {@code Image}, and converts it to
+     * a {@code BufferedImage} if needed.
+     * Large reductions are done in two steps, as decided by the given policy.
+     *
+     * @param pImage the {@code Image} to scale
+     * @param pWidth width in pixels
+     * @param pHeight height in pixels
+     * @param pHints scaling ints
+     * @param pPolicy the policy for large reductions
+     *
+     * @return a {@code BufferedImage}
+     *
+     * @throws NullPointerException if {@code pImage} is {@code null}.
+     * @throws IllegalArgumentException if {@code pPolicy} is {@code null}.
+     *
+     * @see #createScaled(java.awt.Image, int, int, int)
+     * @see ResamplePolicy
+     */
+    public static BufferedImage createScaled(Image pImage, int pWidth, int pHeight, int pHints, ResamplePolicy pPolicy) {
         ColorModel cm;
         int type = BI_TYPE_ANY;
         if (pImage instanceof RenderedImage) {
@@ -818,7 +881,7 @@ public final class ImageUtil {
             cm = factory.getColorModel();
         }
 
-        BufferedImage scaled = createResampled(pImage, pWidth, pHeight, pHints);
+        BufferedImage scaled = createResampled(pImage, pWidth, pHeight, pHints, pPolicy);
 
         // Convert if colormodels or type differ, to behave as documented
         if (type != scaled.getType() && type != BI_TYPE_ANY || !equals(scaled.getColorModel(), cm)) {
@@ -905,11 +968,34 @@ public final class ImageUtil {
      * @see ResampleOp
      */
     public static BufferedImage createResampled(Image pImage, int pWidth, int pHeight, int pHints) {
+        return createResampled(pImage, pWidth, pHeight, pHints, ResamplePolicy.DEFAULT);
+    }
+
+    /**
+     * Creates a scaled instance of the given {@code Image}, and converts it to
+     * a {@code BufferedImage} if needed.
+     * Large reductions are done in two steps, as decided by the given policy.
+     *
+     * @param pImage the {@code Image} to scale
+     * @param pWidth width in pixels
+     * @param pHeight height in pixels
+     * @param pHints scaling mHints
+     * @param pPolicy the policy for large reductions
+     *
+     * @return a {@code BufferedImage}
+     *
+     * @throws NullPointerException if {@code pImage} is {@code null}.
+     * @throws IllegalArgumentException if {@code pPolicy} is {@code null}.
+     *
+     * @see #createResampled(java.awt.Image, int, int, int)
+     * @see ResamplePolicy
+     */
+    public static BufferedImage createResampled(Image pImage, int pWidth, int pHeight, int pHints, ResamplePolicy pPolicy) {
         // NOTE: TYPE_4BYTE_ABGR or TYPE_3BYTE_BGR is more efficient when accelerated...
         BufferedImage image = pImage instanceof  BufferedImage
                 ? (BufferedImage) pImage
                 : toBuffered(pImage, BufferedImage.TYPE_4BYTE_ABGR);
-        return createResampled(image, pWidth, pHeight, pHints);
+        return createResampled(image, pWidth, pHeight, pHints, pPolicy);
     }
 
     /**
@@ -960,8 +1046,38 @@ public final class ImageUtil {
      * @see ResampleOp
      */
     public static BufferedImage createResampled(BufferedImage pImage, int pWidth, int pHeight, int pHints) {
+        return createResampled(pImage, pWidth, pHeight, pHints, ResamplePolicy.DEFAULT);
+    }
+
+    /**
+     * Creates a scaled instance of the given {@code BufferedImage}.
+     * Large reductions are done in two steps, as decided by the given policy:
+     * The image is first reduced by an integer factor using an area average
+     * filter, then resampled to the final size.
+     *
+     * @param pImage the {@code BufferedImage} to scale
+     * @param pWidth width in pixels
+     * @param pHeight height in pixels
+     * @param pHints scaling mHints
+     * @param pPolicy the policy for large reductions
+     *
+     * @return a {@code BufferedImage}
+     *
+     * @throws NullPointerException if {@code pImage} is {@code null}.
+     * @throws IllegalArgumentException if {@code pPolicy} is {@code null}.
+     *
+     * @see #createResampled(BufferedImage, int, int, int)
+     * @see ResamplePolicy
+     * @see AreaAverageOp
+     */
+    public static BufferedImage createResampled(BufferedImage pImage, int pWidth, int pHeight, int pHints, ResamplePolicy pPolicy) {
+        if (pPolicy == null) {
+            throw new IllegalArgumentException("policy == null");
+        }
+
         // Hints are converted between java.awt.Image hints and filter types
-        return new ResampleOp(pWidth, pHeight, convertAWTHints(pHints)).filter(pImage, null);
+        int filterType = convertAWTHints(pHints);
+        return new ResampleOp(pWidth, pHeight, filterType).filter(pPolicy.reduce(pImage, pWidth, pHeight, filterType), null);
     }
 
     private static int convertAWTHints(int pHints) {
@@ -995,6 +1111,8 @@ public final class ImageUtil {
      * @see #COLOR_SELECTION_DEFAULT
      * @see #COLOR_SELECTION_FAST
      * @see #COLOR_SELECTION_QUALITY
+     * @see #COLOR_SELECTION_MEDIAN_CUT
+     * @see #COLOR_SELECTION_WU
      * @see #TRANSPARENCY_DEFAULT
      * @see #TRANSPARENCY_OPAQUE
      * @see #TRANSPARENCY_BITMASK
@@ -1033,10 +1151,15 @@ public final class ImageUtil {
      * @see #COLOR_SELECTION_DEFAULT
      * @see #COLOR_SELECTION_FAST
      * @see #COLOR_SELECTION_QUALITY
+     * @see #COLOR_SELECTION_MEDIAN_CUT
+     * @see #COLOR_SELECTION_WU
      * @see #DITHER_NONE
      * @see #DITHER_DEFAULT
      * @see #DITHER_DIFFUSION
      * @see #DITHER_DIFFUSION_ALTSCANS
+     * @see #DITHER_DIFFUSION_ATKINSON
+     * @see #DITHER_DIFFUSION_SIERRA
+     * @see #DITHER_ORDERED
      * @see #TRANSPARENCY_DEFAULT
      * @see #TRANSPARENCY_OPAQUE
      * @see #TRANSPARENCY_BITMASK
@@ -1061,10 +1184,15 @@ public final class ImageUtil {
      * @see #COLOR_SELECTION_DEFAULT
      * @see #COLOR_SELECTION_FAST
      * @see #COLOR_SELECTION_QUALITY
+     * @see #COLOR_SELECTION_MEDIAN_CUT
+     * @see #COLOR_SELECTION_WU
      * @see #DITHER_NONE
      * @see #DITHER_DEFAULT
      * @see #DITHER_DIFFUSION
      * @see #DITHER_DIFFUSION_ALTSCANS
+     * @see #DITHER_DIFFUSION_ATKINSON
+     * @see #DITHER_DIFFUSION_SIERRA
+     * @see #DITHER_ORDERED
      * @see #TRANSPARENCY_DEFAULT
      * @see #TRANSPARENCY_OPAQUE
      * @see #TRANSPARENCY_BITMASK
@@ -1090,10 +1218,15 @@ public final class ImageUtil {
      * @see #COLOR_SELECTION_DEFAULT
      * @see #COLOR_SELECTION_FAST
      * @see #COLOR_SELECTION_QUALITY
+     * @see #COLOR_SELECTION_MEDIAN_CUT
+     * @see #COLOR_SELECTION_WU
      * @see #DITHER_NONE
      * @see #DITHER_DEFAULT
      * @see #DITHER_DIFFUSION
      * @see #DITHER_DIFFUSION_ALTSCANS
+     * @see #DITHER_DIFFUSION_ATKINSON
+     * @see #DITHER_DIFFUSION_SIERRA
+     * @see #DITHER_ORDERED
      * @see #TRANSPARENCY_DEFAULT
      * @see #TRANSPARENCY_OPAQUE
      * @see #TRANSPARENCY_BITMASK
@@ -1166,57 +1299,37 @@ public final class ImageUtil {
         return blur(pOriginal, 1.5f);
     }
 
-    // Some work to do... Is okay now, for range 0...1, anything above creates
-    // artifacts.
-    // The idea here is that the sum of all terms in the matrix must be 1.
-
     /**
      * Creates a blurred version of the given image.
+     * The blur is a gaussian blur, done in two one-dimensional passes.
+     * For radii larger than {@code 8}, the gaussian is approximated using
+     * three successive box blurs, to make the cost independent of the radius.
      *
      * @param pOriginal the original image
      * @param pRadius the ammount to blur
      *
      * @return a new {@code BufferedImage} with a blurred version of the given image
      */
-    public static BufferedImage blur(BufferedImage pOriginal, float pRadius) {
+    public static BufferedImage blur(BufferedImage pOriginal, final float pRadius) {
         if (pRadius <= 1f) {
             return pOriginal;
         }
 
-        // TODO: Re-implement using two-pass one-dimensional gaussion blur
-        // See: http://en.wikipedia.org/wiki/Gaussian_blur#Implementation
-        // Also see http://www.jhlabs.com/ip/blurring.html
-
-        // TODO: Rethink... Fixed ammount and scale matrix instead?
-//        pAmmount = 1f - pAmmount;
-//        float pAmmount = 1f - pRadius;
-//
-//        // Normalize ammount
-//        float normAmt = (1f - pAmmount) / 24;
-//
-//        // Create the convolution matrix
-//        float[] data = new float[] {
-//            normAmt / 2, normAmt, normAmt, normAmt, normAmt / 2,
-//            normAmt, normAmt, normAmt * 2, normAmt, normAmt,
-//            normAmt, normAmt * 2, pAmmount, normAmt * 2, normAmt,
-//            normAmt, normAmt, normAmt * 2, normAmt, normAmt,
-//            normAmt / 2, normAmt, normAmt, normAmt, normAmt / 2
-//        };
-//
-//        // Do the filtering
-//        return convolve(pOriginal, new Kernel(5, 5, data), EDGE_REFLECT);
-
-        Kernel horizontal = makeKernel(pRadius);
-        Kernel vertical = new Kernel(horizontal.getHeight(), horizontal.getWidth(), horizontal.getKernelData(null));
-
-        BufferedImage temp = addBorder(pOriginal, horizontal.getWidth() / 2, vertical.getHeight() / 2, EDGE_REFLECT);
-
-        temp = convolve(temp, horizontal, EDGE_NO_OP);
-        temp = convolve(temp, vertical, EDGE_NO_OP);
-
-        return temp.getSubimage(
-                horizontal.getWidth() / 2, vertical.getHeight() / 2, pOriginal.getWidth(), pOriginal.getHeight()
-        );
+        return Convolver.filter(pOriginal, null, new Convolver.Operation() {
+            public void filter(final Raster pSource, final WritableRaster pDestination, final int pAlphaBand) {
+                if (pRadius > BOX_BLUR_RADIUS) {
+                    // NOTE: makeKernel uses sigma = radius / 3
+                    Convolver.boxBlur(pSource, pDestination, Convolver.boxRadii(pRadius / 3f, 3), EDGE_REFLECT, pAlphaBand);
+                }
+                else {
+                    Kernel kernel = makeKernel(pRadius);
+                    float[] data = kernel.getKernelData(null);
+                    int origin = kernel.getXOrigin();
+
+                    Convolver.convolve(pSource, pDestination, data, origin, data, origin, EDGE_REFLECT, pAlphaBand);
+                }
+            }
+        });
     }
 
     /**
@@ -1266,103 +1379,7 @@ public final class ImageUtil {
      * @return a new BufferedImage, containing the sharpened image.
      */
     public static BufferedImage convolve(BufferedImage pOriginal, Kernel pKernel, int pEdgeOperation) {
-        // Allow for 2 more edge operations
-        BufferedImage original;
-        switch (pEdgeOperation) {
-            case EDGE_REFLECT:
-            case EDGE_WRAP:
-                original = addBorder(pOriginal, pKernel.getWidth() / 2, pKernel.getHeight() / 2, pEdgeOperation);
-                break;
-            default:
-                original = pOriginal;
-                break;
-        }
-
-        // Create convolution operation
-        ConvolveOp convolve = new ConvolveOp(pKernel, pEdgeOperation, null);
-
-        // Workaround for what seems to be a Java2D bug:
-        // ConvolveOp needs explicit destination image type for some "uncommon"
-        // image types. However, TYPE_3BYTE_BGR is what javax.imageio.ImageIO
-        // normally returns for color JPEGs... :-/
-        BufferedImage result = null;
-        if (original.getType() == BufferedImage.TYPE_3BYTE_BGR) {
-            result = createBuffered(
-                    pOriginal.getWidth(), pOriginal.getHeight(),
-                    pOriginal.getType(), pOriginal.getColorModel().getTransparency()
-            );
-        }
-
-        // Do the filtering (if result is null, a new image will be created)
-        BufferedImage image = convolve.filter(original, result);
-
-        if (pOriginal != original) {
-            // Remove the border
-            image = image.getSubimage(
-                    pKernel.getWidth() / 2, pKernel.getHeight() / 2, pOriginal.getWidth(), pOriginal.getHeight()
-            );
-        }
-
-        return image;
-    }
-
-    private static BufferedImage addBorder(final BufferedImage pOriginal, final int pBorderX, final int pBorderY, final int pEdgeOperation) {
-        // TODO: Might be faster if we could clone raster and strech it...
-        int w = pOriginal.getWidth();
-        int h = pOriginal.getHeight();
-
-        ColorModel cm = pOriginal.getColorModel();
-        WritableRaster raster = cm.createCompatibleWritableRaster(w + 2 * pBorderX, h + 2 * pBorderY);
-        BufferedImage bordered = new BufferedImage(cm, raster, cm.isAlphaPremultiplied(), null);
-
-        Graphics2D g = bordered.createGraphics();
-        try {
-            g.setComposite(AlphaComposite.Src);
-            g.setRenderingHint(RenderingHints.KEY_DITHERING, RenderingHints.VALUE_DITHER_DISABLE);
-
-            // Draw original in center
-            g.drawImage(pOriginal, pBorderX, pBorderY, null);
-
-            // TODO: I guess we need the top/left etc, if the corner pixels are covered by the kernel
-            switch (pEdgeOperation) {
-                case EDGE_REFLECT:
-                    // Top/left (empty)
-                    g.drawImage(pOriginal, pBorderX, 0, pBorderX + w, pBorderY, 0, 0, w, 1, null); // Top/center
-                    // Top/right (empty)
-
-                    g.drawImage(pOriginal, -w + pBorderX, pBorderY, pBorderX, h + pBorderY, 0, 0, 1, h, null); // Center/left
-                    // Center/center (already drawn)
-                    g.drawImage(pOriginal, w + pBorderX, pBorderY, 2 * pBorderX + w, h + pBorderY, w - 1, 0, w, h, null); // Center/right
-
-                    // Bottom/left (empty)
-                    g.drawImage(pOriginal, pBorderX, pBorderY + h, pBorderX + w, 2 * pBorderY + h, 0, h - 1, w, h, null); // Bottom/center
-                    // Bottom/right (empty)
-                    break;
-                case EDGE_WRAP:
-                    g.drawImage(pOriginal, -w + pBorderX, -h + pBorderY, null); // Top/left
-                    g.drawImage(pOriginal, pBorderX, -h + pBorderY, null); // Top/center
-                    g.drawImage(pOriginal, w + pBorderX, -h + pBorderY, null); // Top/right
-
-                    g.drawImage(pOriginal, -w + pBorderX, pBorderY, null); // Center/left
-                    // Center/center (already drawn)
-                    g.drawImage(pOriginal, w + pBorderX, pBorderY, null); // Center/right
-
-                    g.drawImage(pOriginal, -w + pBorderX, h + pBorderY, null); // Bottom/left
-                    g.drawImage(pOriginal, pBorderX, h + pBorderY, null); // Bottom/center
-                    g.drawImage(pOriginal, w + pBorderX, h + pBorderY, null); // Bottom/right
-                    break;
-                default:
-                    throw new IllegalArgumentException("Illegal edge operation " + pEdgeOperation);
-            }
-
-        }
-        finally {
-            g.dispose();
-        }
-
-        //ConvolveTester.showIt(bordered, "jaffe");
-
-        return bordered;
+        return new ConvolveWithEdgeOp(pKernel, pEdgeOperation, null).filter(pOriginal, null);
     }
 
     /**
@@ -1370,9 +1387,9 @@ public final class ImageUtil {
      *
      * @param pOriginal the BufferedImage to add contrast to
      *
-     * @return an {@code Image}, containing the contrasted image.
+     * @return a {@code BufferedImage}, containing the contrasted image.
      */
-    public static Image contrast(Image pOriginal) {
+    public static BufferedImage contrast(Image pOriginal) {
         return contrast(pOriginal, 0.3f);
     }
 
@@ -1382,19 +1399,18 @@ public final class ImageUtil {
      * @param pOriginal the {@code Image} to change
      * @param pAmmount the ammount of contrast in the range [-1.0..1.0].
      *
-     * @return an {@code Image}, containing the contrasted image.
+     * @return a {@code BufferedImage}, containing the contrasted image.
+     *
+     * @see BrightnessContrastOp
      */
-    public static Image contrast(Image pOriginal, float pAmmount) {
+    public static BufferedImage contrast(Image pOriginal, float pAmmount) {
         // No change, return original
         if (pAmmount == 0f) {
-            return pOriginal;
+            return toBuffered(pOriginal);
         }
 
-        // Create filter
-        RGBImageFilter filter = new BrightnessContrastFilter(0f, pAmmount);
-
         // Return contrast adjusted image
-        return filter(pOriginal, filter);
+        return new BrightnessContrastOp(0f, pAmmount).filter(toBuffered(pOriginal), null);
     }
 
 
@@ -1404,37 +1420,32 @@ public final class ImageUtil {
      * @param pOriginal the {@code Image} to change
      * @param pAmmount the ammount of brightness in the range [-2.0..2.0].
      *
-     * @return an {@code Image}
+     * @return a {@code BufferedImage}
+     *
+     * @see BrightnessContrastOp
      */
-    public static Image brightness(Image pOriginal, float pAmmount) {
+    public static BufferedImage brightness(Image pOriginal, float pAmmount) {
         // No change, return original
         if (pAmmount == 0f) {
-            return pOriginal;
+            return toBuffered(pOriginal);
         }
 
-        // Create filter
-        RGBImageFilter filter = new BrightnessContrastFilter(pAmmount, 0f);
-
         // Return brightness adjusted image
-        return filter(pOriginal, filter);
+        return new BrightnessContrastOp(pAmmount, 0f).filter(toBuffered(pOriginal), null);
     }
 
 
     /**
      * Converts an image to grayscale.
      *
-     * @see GrayFilter
-     * @see RGBImageFilter
+     * @see GrayOp
      *
      * @param pOriginal the image to convert.
-     * @return a new Image, containing the gray image data.
+     * @return a new {@code BufferedImage}, containing the gray image data.
      */
-    public static Image grayscale(Image pOriginal) {
-        // Create filter
-        RGBImageFilter filter = new GrayFilter();
-
+    public static BufferedImage grayscale(Image pOriginal) {
         // Convert to gray
-        return filter(pOriginal, filter);
+        return new GrayOp().filter(toBuffered(pOriginal), null);
     }
 
     /**
@@ -2033,4 +2044,4 @@ public final class ImageUtil {
             return pModel.createCompatibleSampleModel(1, 1).getDataType();
         }
     }
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -89,9 +89,6 @@ import java.awt.image.BufferedImage;
 import java.awt.image.ColorModel;
 import java.awt.image.IndexColorModel;
 import java.awt.image.RenderedImage;
-import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.List;
 
 /**
  * This class implements an adaptive pallete generator to reduce images
@@ -99,15 +96,21 @@ import java.util.List;
  * It can also render images into fixed color pallettes.
  * <p/>
  * Support for the default JVM (ordered/pattern) dither, Floyd-Steinberg like
- * error-diffusion and no dither, controlled by the hints
+ * error-diffusion, Atkinson or Sierra error-diffusion, ordered dither and
+ * no dither, controlled by the hints
  * {@link #DITHER_DIFFUSION},
+ * {@link #DITHER_DIFFUSION_ATKINSON},
+ * {@link #DITHER_DIFFUSION_SIERRA},
+ * {@link #DITHER_ORDERED},
  * {@link #DITHER_NONE} and
  * {@link #DITHER_DEFAULT}.
  * <p/>
  * Color selection speed/accuracy can be controlled using the hints
  * {@link #COLOR_SELECTION_FAST},
  * {@link #COLOR_SELECTION_QUALITY} and
- * {@link #COLOR_SELECTION_DEFAULT}.
+ * {@link #COLOR_SELECTION_DEFAULT}, combined with one of
+ * {@link #COLOR_SELECTION_MEDIAN_CUT} (default) or
+ * {@link #COLOR_SELECTION_WU} to select the color selection algorithm.
  * <p/>
  * Transparency support can be controlled using the hints
  * {@link #TRANSPARENCY_OPAQUE},
@@ -157,6 +160,21 @@ class IndexImage {
      */
     public final static int DITHER_DIFFUSION_ALTSCANS = 0x03;
 
+    /**
+     * Error diffusion dither, using the Atkinson kernel
+     */
+    public final static int DITHER_DIFFUSION_ATKINSON = 0x04;
+
+    /**
+     * Error diffusion dither, using the Sierra kernel
+     */
+    public final static int DITHER_DIFFUSION_SIERRA = 0x05;
+
+    /**
+     * Ordered (Bayer) dither
+     */
+    public final static int DITHER_ORDERED = 0x06;
+
     /**
      * Color Selection mask
      */
@@ -177,6 +195,33 @@ class IndexImage {
      */
     public final static int COLOR_SELECTION_QUALITY = 0x0200;
 
+    /**
+     * Color Selection speed/quality mask
+     */
+    protected final static int COLOR_SELECTION_SPEED_MASK = 0x0F00;
+
+    /**
+     * Color Selection algorithm mask
+     */
+    protected final static int COLOR_SELECTION_ALGORITHM_MASK = 0xF000;
+
+    /**
+     * Median cut color selection (default)
+     * @see MedianCutQuantizer
+     */
+    public final static int COLOR_SELECTION_MEDIAN_CUT = 0x0000;
+
+    /**
+     * Wu's (variance minimizing) color selection
+     * @see WuQuantizer
+     */
+    public final static int COLOR_SELECTION_WU = 0x1000;
+
+    /**
+     * Approximate number of pixels sampled in fast mode
+     */
+    private final static int FAST_SAMPLE_COUNT = 1 << 18; // 512x512px
+
     /**
      * Transparency mask
      */
@@ -202,366 +247,6 @@ class IndexImage {
      */
     protected final static int TRANSPARENCY_TRANSLUCENT = 0x030000;
 
-    /**
-     * Used to track a color and the number of pixels of that colors
-     */
-    private static class Counter {
-
-        /**
-         * Field val
-         */
-        public int val;
-
-        /**
-         * Field count
-         */
-        public int count = 1;
-
-        /**
-         * Constructor Counter
-         *
-         * @param val the initial value
-         */
-        public Counter(int val) {
-            this.val = val;
-        }
-
-        /**
-         * Method add
-         *
-         * @param val the new value
-         * @return {@code true} if the value was added, otherwise {@code false}
-         */
-        public boolean add(int val) {
-            // See if the value matches us...
-            if (this.val != val) {
-                return false;
-            }
-            count++;
-            return true;
-        }
-    }
-
-    /**
-     * Used to define a cube of the colorspace.  The cube can be split
-     * approximagely in half to generate two cubes.
-     */
-    private static class Cube {
-        int[] min = {0, 0, 0}, max = {255, 255, 255};
-        boolean done = false;
-        List[] colors = null;
-        int count = 0;
-        static final int RED = 0;
-        static final int GRN = 1;
-        static final int BLU = 2;
-
-        /**
-         * Define a new cube.
-         *
-         * @param colors contains the 3D color histogram to be subdivided
-         * @param count  the total number of pixels in the 3D histogram.
-         */
-        public Cube(List[] colors, int count) {
-            this.colors = colors;
-            this.count = count;
-        }
-
-        /**
-         * If this returns true then the cube can not be subdivided any
-         * further
-         *
-         * @return true if cube can not be subdivided any further
-         */
-        public boolean isDone() {
-            return done;
-        }
-
-        /**
-         * Splits the cube into two parts.  This cube is
-         * changed to be one half and the returned cube is the other half.
-         * This tries to pick the right channel to split on.
-         *
-         * @return the {@code Cube} containing the other half
-         */
-        public Cube split() {
-            int dr = max[0] - min[0] + 1;
-            int dg = max[1] - min[1] + 1;
-            int db = max[2] - min[2] + 1;
-            int c0, c1, splitChannel;
-
-            // Figure out which axis is the longest and split along
-            // that axis (this tries to keep cubes square-ish).
-            if (dr >= dg) {
-                c0 = GRN;
-                if (dr >= db) {
-                    splitChannel = RED;
-                    c1 = BLU;
-                }
-                else {
-                    splitChannel = BLU;
-                    c1 = RED;
-                }
-            }
-            else if (dg >= db) {
-                splitChannel = GRN;
-                c0 = RED;
-                c1 = BLU;
-            }
-            else {
-                splitChannel = BLU;
-                c0 = RED;
-                c1 = GRN;
-            }
-            Cube ret;
-
-            ret = splitChannel(splitChannel, c0, c1);
-            if (ret != null) {
-                return ret;
-            }
-            ret = splitChannel(c0, splitChannel, c1);
-            if (ret != null) {
-                return ret;
-            }
-            ret = splitChannel(c1, splitChannel, c0);
-            if (ret != null) {
-                return ret;
-            }
-            done = true;
-
-            return null;
-        }
-
-        /**
-         * Splits the image according to the parameters.  It tries
-         * to find a location where half the pixels are on one side
-         * and half the pixels are on the other.
-         *
-         * @param splitChannel split channel
-         * @param c0 channel 0
-         * @param c1 channel 1
-         * @return the {@code Cube} containing the other half
-         */
-        public Cube splitChannel(int splitChannel, int c0, int c1) {
-            if (min[splitChannel] == max[splitChannel]) {
-                return null;
-            }
-            int splitSh4 = (2 - splitChannel) * 4;
-            int c0Sh4 = (2 - c0) * 4;
-            int c1Sh4 = (2 - c1) * 4;
-
-            //            int splitSh8 = (2-splitChannel)*8;
-            //            int c0Sh8    = (2-c0)*8;
-            //            int c1Sh8    = (2-c1)*8;
-            //
-            int half = count / 2;
-
-            // Each entry is the number of pixels that have that value
-            // in the split channel within the cube (so pixels
-            // that have that value in the split channel aren't counted
-            // if they are outside the cube in the other color channels.
-            int counts[] = new int[256];
-            int tcount = 0;
-
-            // System.out.println("Cube: [" +
-            //                    min[0] + "-" + max[0] + "] [" +
-            //                    min[1] + "-" + max[1] + "] [" +
-            //                    min[2] + "-" + max[2] + "]");
-            int[] minIdx = {min[0] >> 4, min[1] >> 4, min[2] >> 4};
-            int[] maxIdx = {max[0] >> 4, max[1] >> 4, max[2] >> 4};
-            int minR = min[0], minG = min[1], minB = min[2];
-            int maxR = max[0], maxG = max[1], maxB = max[2];
-            int val;
-            int[] vals = {0, 0, 0};
-
-            for (int i = minIdx[splitChannel]; i <= maxIdx[splitChannel]; i++) {
-                int idx1 = i << splitSh4;
-
-                for (int j = minIdx[c0]; j <= maxIdx[c0]; j++) {
-                    int idx2 = idx1 | (j << c0Sh4);
-
-                    for (int k = minIdx[c1]; k <= maxIdx[c1]; k++) {
-                        int idx = idx2 | (k << c1Sh4);
-                        List v = colors[idx];
-
-                        if (v == null) {
-                            continue;
-                        }
-                        Iterator itr = v.iterator();
-                        Counter c;
-
-                        while (itr.hasNext()) {
-                            c = (Counter) itr.next();
-                            val = c.val;
-                            vals[0] = (val & 0xFF0000) >> 16;
-                            vals[1] = (val & 0xFF00) >> 8;
-                            vals[2] = (val & 0xFF);
-                            if (((vals[0] >= minR) && (vals[0] <= maxR)) && ((vals[1] >= minG) && (vals[1] <= maxG))
-                                    && ((vals[2] >= minB) && (vals[2] <= maxB))) {
-
-                                // The val lies within this cube so count it.
-                                counts[vals[splitChannel]] += c.count;
-                                tcount += c.count;
-                            }
-                        }
-                    }
-                }
-
-                // We've found the half way point.  Note that the
-                // rest of counts is not filled out.
-                if (tcount >= half) {
-                    break;
-                }
-            }
-            tcount = 0;
-            int lastAdd = -1;
-
-            // These indicate what the top value for the low cube and
-            // the low value of the high cube should be in the split channel
-            // (they may not be one off if there are 'dead' spots in the
-            // counts array.)
-            int splitLo = min[splitChannel], splitHi = max[splitChannel];
-
-            for (int i = min[splitChannel]; i <= max[splitChannel]; i++) {
-                int c = counts[i];
-
-                if (c == 0) {
-
-                    // No counts below this so move up bottom of cube.
-                    if ((tcount == 0) && (i < max[splitChannel])) {
-                        this.min[splitChannel] = i + 1;
-                    }
-                    continue;
-                }
-                if (tcount + c < half) {
-                    lastAdd = i;
-                    tcount += c;
-                    continue;
-                }
-                if ((half - tcount) <= ((tcount + c) - half)) {
-
-                    // Then lastAdd is a better top idx for this then i.
-                    if (lastAdd == -1) {
-
-                        // No lower place to break.
-                        if (c == this.count) {
-
-                            // All pixels are at this value so make min/max
-                            // reflect that.
-                            this.max[splitChannel] = i;
-                            return null;// no split to make.
-                        }
-                        else {
-
-                            // There are values about this one so
-                            // split above.
-                            splitLo = i;
-                            splitHi = i + 1;
-                            break;
-                        }
-                    }
-                    splitLo = lastAdd;
-                    splitHi = i;
-                }
-                else {
-                    if (i == this.max[splitChannel]) {
-                        if (c == this.count) {
-
-                            // would move min up but that should
-                            // have happened already.
-                            return null;// no split to make.
-                        }
-                        else {
-
-                            // Would like to break between i and i+1
-                            // but no i+1 so use lastAdd and i;
-                            splitLo = lastAdd;
-                            splitHi = i;
-                            break;
-                        }
-                    }
-
-                    // Include c in counts
-                    tcount += c;
-                    splitLo = i;
-                    splitHi = i + 1;
-                }
-                break;
-            }
-
-            // System.out.println("Split: " + splitChannel + "@"
-            //                    + splitLo + "-"+splitHi +
-            //                    " Count: " + tcount  + " of " + count +
-            //                    " LA: " + lastAdd);
-            // Create the new cube and update everyone's bounds & counts.
-            Cube ret = new Cube(colors, tcount);
-
-            this.count = this.count - tcount;
-            ret.min[splitChannel] = this.min[splitChannel];
-            ret.max[splitChannel] = splitLo;
-            this.min[splitChannel] = splitHi;
-            ret.min[c0] = this.min[c0];
-            ret.max[c0] = this.max[c0];
-            ret.min[c1] = this.min[c1];
-            ret.max[c1] = this.max[c1];
-            return ret;
-        }
-
-        /**
-         * Returns the average color for this cube
-         *
-         * @return the average
-         */
-        public int averageColor() {
-            if (this.count == 0) {
-                return 0;
-            }
-            float red = 0, grn = 0, blu = 0;
-            int minR = min[0], minG = min[1], minB = min[2];
-            int maxR = max[0], maxG = max[1], maxB = max[2];
-            int[] minIdx = {minR >> 4, minG >> 4, minB >> 4};
-            int[] maxIdx = {maxR >> 4, maxG >> 4, maxB >> 4};
-            int val, ired, igrn, iblu;
-            float weight;
-
-            for (int i = minIdx[0]; i <= maxIdx[0]; i++) {
-                int idx1 = i << 8;
-
-                for (int j = minIdx[1]; j <= maxIdx[1]; j++) {
-                    int idx2 = idx1 | (j << 4);
-
-                    for (int k = minIdx[2]; k <= maxIdx[2]; k++) {
-                        int idx = idx2 | k;
-                        List v = colors[idx];
-
-                        if (v == null) {
-                            continue;
-                        }
-                        Iterator itr = v.iterator();
-                        Counter c;
-
-                        while (itr.hasNext()) {
-                            c = (Counter) itr.next();
-                            val = c.val;
-                            ired = (val & 0xFF0000) >> 16;
-                            igrn = (val & 0x00FF00) >> 8;
-                            iblu = (val & 0x0000FF);
-                            if (((ired >= minR) && (ired <= maxR)) && ((igrn >= minG) && (igrn <= maxG)) && ((iblu >= minB) && (iblu <= maxB))) {
-                                weight = (c.count / (float) this.count);
-                                red += ((float) ired) * weight;
-                                grn += ((float) igrn) * weight;
-                                blu += ((float) iblu) * weight;
-                            }
-                        }
-                    }
-                }
-            }
-
-            // System.out.println("RGB: [" + red + ", " +
-            //                    grn + ", " + blu + "]");
-            return (((int) (red + 0.5f)) << 16 | ((int) (grn + 0.5f)) << 8 | ((int) (blu + 0.5f)));
-        }
-    }// end Cube
-
     /**
      * You cannot create this
      */
@@ -640,9 +325,9 @@ class IndexImage {
             //System.out.println("IndexColorModel created from colors.");
         }
         else if (!(icm instanceof InverseColorMapIndexColorModel)) {
-            // If possible, use faster code
+            // If possible, use faster code (cached, as the same palette is likely to be reused)
             //System.out.println("Wrappimg IndexColorModel in InverseColorMapIndexColorModel");
-            icm = new InverseColorMapIndexColorModel(icm);
+            icm = InverseColorMapIndexColorModel.getInstance(icm);
         }
         //else {
         //System.out.println("Allredy InverseColorMapIndexColorModel");
@@ -665,156 +350,30 @@ class IndexImage {
         // -- haraldK, 20021024, experimental, try to use one transparent pixel
         boolean useTransparency = isTransparent(pHints);
 
-        if (useTransparency) {
-            pNumberOfColors--;
-        }
-
-        //System.out.println("Transp: " + useTransparency + " colors: " + pNumberOfColors);
-        int width = pImage.getWidth();
-        int height = pImage.getHeight();
-
-        // Using 4 bits from R, G & B.
-        List[] colors = new List[1 << 12];// [4096]
+        ColorQuantizer quantizer = createQuantizer(pHints);
 
         // Speedup, doesn't decrease image quality much
-        int step = 1;
-
         if (isFast(pHints)) {
-            step += (width * height / 16384);// 128x128px
+            quantizer.setSampleStride(1 + (int) ((long) pImage.getWidth() * pImage.getHeight() / FAST_SAMPLE_COUNT));
         }
-        int sampleCount = 0;
-        int rgb;
-
-        //for (int x = 0; x < width; x++) {
-        //for (int y = 0; y < height; y++) {
-        for (int x = 0; x < width; x++) {
-            for (int y = x % step; y < height; y += step) {
-                // Count the number of color samples
-                sampleCount++;
-
-                // Get ARGB pixel from image
-                rgb = (pImage.getRGB(x, y) & 0xFFFFFF);
-
-                // Get index from high four bits of each component.
-                int index = (((rgb & 0xF00000) >>> 12) | ((rgb & 0x00F000) >>> 8) | ((rgb & 0x0000F0) >>> 4));
-
-                // Get the 'hash vector' for that key.
-                List<Counter> v = colors[index];
-
-                if (v == null) {
-                    // No colors in this bin yet so create vector and
-                    // add color.
-                    v = new ArrayList<Counter>();
-                    v.add(new Counter(rgb));
-                    colors[index] = v;
-                }
-                else {
-                    // Find our color in the bin or create a counter for it.
-                    Iterator i = v.iterator();
-
-                    while (true) {
-                        if (i.hasNext()) {
-                            // try adding our color to each counter...
-                            if (((Counter) i.next()).add(rgb)) {
-                                break;
-                            }
-                        }
-                        else {
-                            v.add(new Counter(rgb));
-                            break;
-                        }
-                    }
-                }
-            }
-        }
-
-        // All colours found, reduce to pNumberOfColors
-        int numberOfCubes = 1;
-        int fCube = 0;
-        Cube[] cubes = new Cube[pNumberOfColors];
 
-        cubes[0] = new Cube(colors, sampleCount);
-
-        //cubes[0] = new Cube(colors, width * height);
-        while (numberOfCubes < pNumberOfColors) {
-            while (cubes[fCube].isDone()) {
-                fCube++;
-                if (fCube == numberOfCubes) {
-                    break;
-                }
-            }
-            if (fCube == numberOfCubes) {
-                break;
-            }
-            Cube cube = cubes[fCube];
-            Cube newCube = cube.split();
-
-            if (newCube != null) {
-                if (newCube.count > cube.count) {
-                    Cube tmp = cube;
-
-                    cube = newCube;
-                    newCube = tmp;
-                }
-                int j = fCube;
-                int count = cube.count;
-
-                for (int i = fCube + 1; i < numberOfCubes; i++) {
-                    if (cubes[i].count < count) {
-                        break;
-                    }
-                    cubes[j++] = cubes[i];
-                }
-                cubes[j++] = cube;
-                count = newCube.count;
-                while (j < numberOfCubes) {
-                    if (cubes[j].count < count) {
-                        break;
-                    }
-                    j++;
-                }
-                for (int i = numberOfCubes; i > j; i--) {
-                    cubes[i] = cubes[i - 1];
-                }
-                cubes[j/*++*/] = newCube;
-                numberOfCubes++;
-            }
-        }
-
-        // Create RGB arrays with correct number of colors
-        // If we have transparency, the last color will be the transparent one
-        byte[] r = new byte[useTransparency ? numberOfCubes + 1 : numberOfCubes];
-        byte[] g = new byte[useTransparency ? numberOfCubes + 1 : numberOfCubes];
-        byte[] b = new byte[useTransparency ? numberOfCubes + 1 : numberOfCubes];
-
-        for (int i = 0; i < numberOfCubes; i++) {
-            int val = cubes[i].averageColor();
-
-            r[i] = (byte) ((val >> 16) & 0xFF);
-            g[i] = (byte) ((val >> 8) & 0xFF);
-            b[i] = (byte) ((val) & 0xFF);
-
-            //System.out.println("Color [" + i + "]: #" +
-            //                   (((val>>16)<16)?"0":"") +
-            //                   Integer.toHexString(val));
-        }
-
-        // For some reason using less than 8 bits causes a bug in the dither
-        //  - transparency added to all totally black colors?
-        int numOfBits = 8;
+        return quantizer.createIndexColorModel(pImage, pNumberOfColors, useTransparency);
+    }
 
-        // -- haraldK, 20021024, as suggested by Thomas E Deweese
-        // plus adding a transparent pixel
-        IndexColorModel icm;
-        if (useTransparency) {
-            //icm = new IndexColorModel(numOfBits, r.length, r, g, b, r.length - 1);
-            icm = new InverseColorMapIndexColorModel(numOfBits, r.length, r, g, b, r.length - 1);
-        }
-        else {
-            //icm = new IndexColorModel(numOfBits, r.length, r, g, b);
-            icm = new InverseColorMapIndexColorModel(numOfBits, r.length, r, g, b);
+    /**
+     * Creates a color quantizer, according to the color selection hints.
+     *
+     * @param pHints hints
+     * @return a new {@code ColorQuantizer}
+     */
+    private static ColorQuantizer createQuantizer(int pHints) {
+        switch (pHints & COLOR_SELECTION_ALGORITHM_MASK) {
+            case COLOR_SELECTION_WU:
+                return new WuQuantizer();
+            case COLOR_SELECTION_MEDIAN_CUT:
+            default:
+                return new MedianCutQuantizer();
         }
-        return icm;
     }
 
     /**
@@ -845,7 +404,7 @@ class IndexImage {
      *         is <EM>not</EM> set.
      */
     private static boolean isFast(int pHints) {
-        return (pHints & COLOR_SELECTION_MASK) != COLOR_SELECTION_QUALITY;
+        return (pHints & COLOR_SELECTION_SPEED_MASK) != COLOR_SELECTION_QUALITY;
     }
 
     /**
@@ -882,9 +441,14 @@ class IndexImage {
      * @throws ImageConversionException if an exception occurred during color
      *                                  model extraction.
      * @see #DITHER_DIFFUSION
+     * @see #DITHER_DIFFUSION_ATKINSON
+     * @see #DITHER_DIFFUSION_SIERRA
+     * @see #DITHER_ORDERED
      * @see #DITHER_NONE
      * @see #COLOR_SELECTION_FAST
      * @see #COLOR_SELECTION_QUALITY
+     * @see #COLOR_SELECTION_MEDIAN_CUT
+     * @see #COLOR_SELECTION_WU
      * @see #TRANSPARENCY_OPAQUE
      * @see #TRANSPARENCY_BITMASK
      * @see BufferedImage#TYPE_BYTE_INDEXED
@@ -915,9 +479,14 @@ class IndexImage {
      *         {@code BufferedImage.TYPE_BYTE_BINARY}, and use an
      *         {@code IndexColorModel}.
      * @see #DITHER_DIFFUSION
+     * @see #DITHER_DIFFUSION_ATKINSON
+     * @see #DITHER_DIFFUSION_SIERRA
+     * @see #DITHER_ORDERED
      * @see #DITHER_NONE
      * @see #COLOR_SELECTION_FAST
      * @see #COLOR_SELECTION_QUALITY
+     * @see #COLOR_SELECTION_MEDIAN_CUT
+     * @see #COLOR_SELECTION_WU
      * @see #TRANSPARENCY_OPAQUE
      * @see #TRANSPARENCY_BITMASK
      * @see BufferedImage#TYPE_BYTE_INDEXED
@@ -963,9 +532,14 @@ class IndexImage {
      *         {@code BufferedImage.TYPE_BYTE_BINARY}, and use an
      *         {@code IndexColorModel}.
      * @see #DITHER_DIFFUSION
+     * @see #DITHER_DIFFUSION_ATKINSON
+     * @see #DITHER_DIFFUSION_SIERRA
+     * @see #DITHER_ORDERED
      * @see #DITHER_NONE
      * @see #COLOR_SELECTION_FAST
      * @see #COLOR_SELECTION_QUALITY
+     * @see #COLOR_SELECTION_MEDIAN_CUT
+     * @see #COLOR_SELECTION_WU
      * @see #TRANSPARENCY_OPAQUE
      * @see #TRANSPARENCY_BITMASK
      * @see BufferedImage#TYPE_BYTE_INDEXED
@@ -1009,15 +583,28 @@ class IndexImage {
         switch (pHints & DITHER_MASK) {
             case DITHER_DIFFUSION:
             case DITHER_DIFFUSION_ALTSCANS:
+            case DITHER_DIFFUSION_ATKINSON:
+            case DITHER_DIFFUSION_SIERRA:
                 // Create a DiffusionDither to apply dither to indexed
                 DiffusionDither dither = new DiffusionDither(pColors);
 
                 if ((pHints & DITHER_MASK) == DITHER_DIFFUSION_ALTSCANS) {
                     dither.setAlternateScans(true);
                 }
+                else if ((pHints & DITHER_MASK) == DITHER_DIFFUSION_ATKINSON) {
+                    dither.setKernel(DiffusionDither.KERNEL_ATKINSON);
+                }
+                else if ((pHints & DITHER_MASK) == DITHER_DIFFUSION_SIERRA) {
+                    dither.setKernel(DiffusionDither.KERNEL_SIERRA);
+                }
 
                 dither.filter(solid, indexed);
 
+                break;
+            case DITHER_ORDERED:
+                OrderedDither ordered = new OrderedDither(pColors);
+                ordered.filter(solid, indexed);
+
                 break;
             case DITHER_NONE:
                 // Just copy pixels, without dither
@@ -1076,9 +663,14 @@ class IndexImage {
      *         {@code BufferedImage.TYPE_BYTE_BINARY}, and use an
      *         {@code IndexColorModel}.
      * @see #DITHER_DIFFUSION
+     * @see #DITHER_DIFFUSION_ATKINSON
+     * @see #DITHER_DIFFUSION_SIERRA
+     * @see #DITHER_ORDERED
      * @see #DITHER_NONE
      * @see #COLOR_SELECTION_FAST
      * @see #COLOR_SELECTION_QUALITY
+     * @see #COLOR_SELECTION_MEDIAN_CUT
+     * @see #COLOR_SELECTION_WU
      * @see #TRANSPARENCY_OPAQUE
      * @see #TRANSPARENCY_BITMASK
      * @see BufferedImage#TYPE_BYTE_INDEXED
@@ -1106,9 +698,14 @@ class IndexImage {
      *         {@code BufferedImage.TYPE_BYTE_BINARY}, and use an
      *         {@code IndexColorModel}.
      * @see #DITHER_DIFFUSION
+     * @see #DITHER_DIFFUSION_ATKINSON
+     * @see #DITHER_DIFFUSION_SIERRA
+     * @see #DITHER_ORDERED
      * @see #DITHER_NONE
      * @see #COLOR_SELECTION_FAST
      * @see #COLOR_SELECTION_QUALITY
+     * @see #COLOR_SELECTION_MEDIAN_CUT
+     * @see #COLOR_SELECTION_WU
      * @see #TRANSPARENCY_OPAQUE
      * @see #TRANSPARENCY_BITMASK
      * @see BufferedImage#TYPE_BYTE_INDEXED
@@ -1137,9 +734,14 @@ class IndexImage {
      *         {@code BufferedImage.TYPE_BYTE_BINARY}, and use an
      *         {@code IndexColorModel}.
      * @see #DITHER_DIFFUSION
+     * @see #DITHER_DIFFUSION_ATKINSON
+     * @see #DITHER_DIFFUSION_SIERRA
+     * @see #DITHER_ORDERED
      * @see #DITHER_NONE
      * @see #COLOR_SELECTION_FAST
      * @see #COLOR_SELECTION_QUALITY
+     * @see #COLOR_SELECTION_MEDIAN_CUT
+     * @see #COLOR_SELECTION_WU
      * @see #TRANSPARENCY_OPAQUE
      * @see #TRANSPARENCY_BITMASK
      * @see BufferedImage#TYPE_BYTE_INDEXED
@@ -1527,4 +1129,4 @@ class IndexImage {
             // END SPEED TESTING
         }
     }
-}
\ No newline at end of file
+}
\ No newline at end of file
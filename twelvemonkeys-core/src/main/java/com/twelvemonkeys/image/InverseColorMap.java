@@ -28,6 +28,10 @@
 
 package com.twelvemonkeys.image;
 
+import com.twelvemonkeys.util.LRUHashMap;
+
+import java.util.Arrays;
+
 /**
  * Inverse Colormap to provide efficient lookup of any given input color
  * to the closest match to the given color map.
@@ -47,30 +51,52 @@ class InverseColorMap {
      */
     final static int QUANTBITS = 5;
 
+    /**
+     * Number of high bits of each color channel to use for high precision lookup
+     */
+    final static int QUANTBITS_HIGH = 6;
+
+    /**
+     * Maximum number of cached inverse color maps
+     */
+    private final static int CACHE_SIZE = 32;
+
+    /**
+     * Cache of inverse color maps, keyed by palette content
+     */
+    private final static LRUHashMap<PaletteKey, InverseColorMap> CACHE = new LRUHashMap<PaletteKey, InverseColorMap>(CACHE_SIZE);
+
+    private final static int RGB_MASK = 0x00FFFFFF;
+
+    /**
+     * Number of high bits of each color channel to use to lookup near match
+     */
+    final int mQuantBits;
+
     /**
      * Truncated bits of each color channel
      */
-    final static int TRUNCBITS = 8 - QUANTBITS;
+    final int mTruncBits;
 
     /**
      * BITMASK representing the bits for blue in the color lookup
      */
-    final static int QUANTMASK_BLUE = (1 << 5) - 1;
+    final int mQuantMaskBlue;
 
     /**
      * BITMASK representing the bits for green in the color lookup
      */
-    final static int QUANTMASK_GREEN = (QUANTMASK_BLUE << QUANTBITS);
+    final int mQuantMaskGreen;
 
     /**
      * BITMASK representing the bits for red in the color lookup
      */
-    final static int QUANTMASK_RED = (QUANTMASK_GREEN << QUANTBITS);
+    final int mQuantMaskRed;
 
     /**
      * Maximum value a quantised color channel can have
      */
-    final static int MAXQUANTVAL = 1 << 5;
+    final int mMaxQuantVal;
 
     byte[] mRGBMapByte;
     int[] mRGBMapInt;
@@ -99,12 +125,12 @@ class InverseColorMap {
      * @param pTransparent the index of the transparent pixel in the map
      */
     InverseColorMap(byte[] pRGBColorMap, int pTransparent) {
+        this(QUANTBITS);
         mRGBMapByte = pRGBColorMap;
         mNumColors = mRGBMapByte.length / 4;
         mTransparentIndex = pTransparent;
 
-        mInverseRGB = new byte[MAXQUANTVAL * MAXQUANTVAL * MAXQUANTVAL];
-        initIRGB(new int[MAXQUANTVAL * MAXQUANTVAL * MAXQUANTVAL]);
+        initIRGB(new int[mInverseRGB.length]);
     }
 
     /**
@@ -112,22 +138,94 @@ class InverseColorMap {
      * @param pTransparent the index of the transparent pixel in the map
      */
     InverseColorMap(int[] pRGBColorMap, int pTransparent) {
+        this(pRGBColorMap, pTransparent, QUANTBITS);
+    }
+
+    /**
+     * @param pRGBColorMap the rgb color map to create inverse color map for.
+     * @param pTransparent the index of the transparent pixel in the map
+     * @param pQuantBits the number of high bits of each color channel to use
+     * for lookup, in the range {@code [4...7]}.
+     * The inverse color map will use {@code 2^(3 * pQuantBits)} bytes.
+     */
+    InverseColorMap(int[] pRGBColorMap, int pTransparent, int pQuantBits) {
+        this(pQuantBits);
         mRGBMapInt = pRGBColorMap;
         mNumColors = mRGBMapInt.length;
         mTransparentIndex = pTransparent;
 
-        mInverseRGB = new byte[MAXQUANTVAL * MAXQUANTVAL * MAXQUANTVAL];
-        initIRGB(new int[MAXQUANTVAL * MAXQUANTVAL * MAXQUANTVAL]);
+        initIRGB(new int[mInverseRGB.length]);
+    }
+
+    private InverseColorMap(int pQuantBits) {
+        if (pQuantBits < 4 || pQuantBits > 7) {
+            throw new IllegalArgumentException("quant bits must be in the range [4...7]: " + pQuantBits);
+        }
+
+        mQuantBits = pQuantBits;
+        mTruncBits = 8 - pQuantBits;
+        mQuantMaskBlue = (1 << pQuantBits) - 1;
+        mQuantMaskGreen = mQuantMaskBlue << pQuantBits;
+        mQuantMaskRed = mQuantMaskGreen << pQuantBits;
+        mMaxQuantVal = 1 << pQuantBits;
+
+        mInverseRGB = new byte[mMaxQuantVal * mMaxQuantVal * mMaxQuantVal];
+    }
+
+    /**
+     * Gets an inverse color map for the given color map, using the default
+     * precision. Inverse color maps are cached and shared, based on the
+     * content of the color map. The color map must not be modified after
+     * this method is invoked.
+     *
+     * @param pRGBColorMap the rgb color map to get inverse color map for.
+     * @param pTransparent the index of the transparent pixel in the map
+     * @return an inverse color map for the given color map
+     */
+    static InverseColorMap getInstance(int[] pRGBColorMap, int pTransparent) {
+        return getInstance(pRGBColorMap, pTransparent, QUANTBITS);
     }
 
+    /**
+     * Gets an inverse color map for the given color map.
+     * Inverse color maps are cached and shared, based on the content of the
+     * color map. The color map must not be modified after this method is
+     * invoked.
+     *
+     * @param pRGBColorMap the rgb color map to get inverse color map for.
+     * @param pTransparent the index of the transparent pixel in the map
+     * @param pQuantBits the number of high bits of each color channel to use
+     * for lookup, in the range {@code [4...7]}.
+     * @return an inverse color map for the given color map
+     */
+    static InverseColorMap getInstance(int[] pRGBColorMap, int pTransparent, int pQuantBits) {
+        PaletteKey key = new PaletteKey(pRGBColorMap, RGB_MASK, pTransparent, pQuantBits);
+
+        InverseColorMap map;
+        synchronized (CACHE) {
+            map = CACHE.get(key);
+        }
+
+        if (map == null) {
+            // NOTE: Created outside the lock, to allow concurrent creation
+            // of different maps. Worst case, the same map is created twice.
+            map = new InverseColorMap(pRGBColorMap, pTransparent, pQuantBits);
+
+            synchronized (CACHE) {
+                CACHE.put(key, map);
+            }
+        }
+
+        return map;
+    }
 
     /**
      * Simple inverse color table creation method.
      * @param pTemp temp array
      */
     void initIRGB(int[] pTemp) {
-        final int x = (1 << TRUNCBITS);        // 8 the size of 1 Dimension of each quantized cell
-        final int xsqr = 1 << (TRUNCBITS * 2); // 64 - twice the smallest step size vale of quantized colors
+        final int x = (1 << mTruncBits);        // 8 the size of 1 Dimension of each quantized cell
+        final int xsqr = 1 << (mTruncBits * 2); // 64 - twice the smallest step size vale of quantized colors
         final int xsqr2 = xsqr + xsqr;
 
         for (int i = 0; i < mNumColors; ++i) {
@@ -160,14 +258,15 @@ class InverseColorMap {
             bdist = blue - x / 2;  // blue
             rdist = rdist * rdist + gdist * gdist + bdist * bdist;
 
-            rinc = 2 * (xsqr - (red << TRUNCBITS));
-            ginc = 2 * (xsqr - (green << TRUNCBITS));
-            binc = 2 * (xsqr - (blue << TRUNCBITS));
+            rinc = 2 * (xsqr - (red << mTruncBits));
+            ginc = 2 * (xsqr - (green << mTruncBits));
+            binc = 2 * (xsqr - (blue << mTruncBits));
 
+            final int max = mMaxQuantVal;
             int rgbI = 0;
-            for (r = 0, rxx = rinc; r < MAXQUANTVAL; rdist += rxx, ++r, rxx += xsqr2) {
-                for (g = 0, gdist = rdist, gxx = ginc; g < MAXQUANTVAL; gdist += gxx, ++g, gxx += xsqr2) {
-                    for (b = 0, bdist = gdist, bxx = binc; b < MAXQUANTVAL; bdist += bxx, ++b, ++rgbI, bxx += xsqr2) {
+            for (r = 0, rxx = rinc; r < max; rdist += rxx, ++r, rxx += xsqr2) {
+                for (g = 0, gdist = rdist, gxx = ginc; g < max; gdist += gxx, ++g, gxx += xsqr2) {
+                    for (b = 0, bdist = gdist, bxx = binc; b < max; bdist += bxx, ++b, ++rgbI, bxx += xsqr2) {
                         if (i == 0 || pTemp[rgbI] > bdist) {
                             pTemp[rgbI] = bdist;
                             mInverseRGB[rgbI] = (byte) i;
@@ -187,9 +286,9 @@ class InverseColorMap {
      *         created inverse color map.
      */
     public final int getIndexNearest(int pColor) {
-        return mInverseRGB[((pColor >> (3 * TRUNCBITS)) & QUANTMASK_RED) +
-                ((pColor >> (2 * TRUNCBITS)) & QUANTMASK_GREEN) +
-                ((pColor >> (/* 1 * */ TRUNCBITS)) & QUANTMASK_BLUE)] & 0xFF;
+        return mInverseRGB[((pColor >> (3 * mTruncBits)) & mQuantMaskRed) +
+                ((pColor >> (2 * mTruncBits)) & mQuantMaskGreen) +
+                ((pColor >> (/* 1 * */ mTruncBits)) & mQuantMaskBlue)] & 0xFF;
     }
 
     /**
@@ -203,9 +302,65 @@ class InverseColorMap {
      */
     public final int getIndexNearest(int pRed, int pGreen, int pBlue) {
         // NOTE: the third line in expression for blue is shifting DOWN not UP.
-        return mInverseRGB[((pRed << (2 * QUANTBITS - TRUNCBITS)) & QUANTMASK_RED) +
-                ((pGreen << (/* 1 * */ QUANTBITS - TRUNCBITS)) & QUANTMASK_GREEN) +
-                ((pBlue >> (TRUNCBITS)) & QUANTMASK_BLUE)] & 0xFF;
+        return mInverseRGB[((pRed << (2 * mQuantBits - mTruncBits)) & mQuantMaskRed) +
+                ((pGreen << (/* 1 * */ mQuantBits - mTruncBits)) & mQuantMaskGreen) +
+                ((pBlue >> (mTruncBits)) & mQuantMaskBlue)] & 0xFF;
     }
-}
 
+    /**
+     * Cache key, based on the content of a color map, and the parameters
+     * used to create an object from it.
+     */
+    static final class PaletteKey {
+        private final int[] mRGBs;
+        private final int mMask;
+        private final int[] mParams;
+        private final int mHash;
+
+        /**
+         * @param pRGBs the color map
+         * @param pMask mask applied to each entry of the color map before comparing
+         * @param pParams any additional parameters
+         */
+        PaletteKey(final int[] pRGBs, final int pMask, final int... pParams) {
+            mRGBs = pRGBs;
+            mMask = pMask;
+            mParams = pParams;
+
+            int hash = Arrays.hashCode(pParams);
+            for (int rgb : pRGBs) {
+                hash = 31 * hash + (rgb & pMask);
+            }
+            mHash = 31 * hash + pRGBs.length;
+        }
+
+        @Override
+        public int hashCode() {
+            return mHash;
+        }
+
+        @Override
+        public boolean equals(final Object pOther) {
+            if (pOther == this) {
+                return true;
+            }
+            if (!(pOther instanceof PaletteKey)) {
+                return false;
+            }
+
+            PaletteKey other = (PaletteKey) pOther;
+            if (mHash != other.mHash || mMask != other.mMask
+                    || mRGBs.length != other.mRGBs.length || !Arrays.equals(mParams, other.mParams)) {
+                return false;
+            }
+
+            for (int i = 0; i < mRGBs.length; i++) {
+                if ((mRGBs[i] & mMask) != (other.mRGBs[i] & mMask)) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+    }
+}
@@ -30,6 +30,7 @@
 package com.twelvemonkeys.image;
 
 import com.twelvemonkeys.lang.StringUtil;
+import com.twelvemonkeys.util.LRUHashMap;
 
 import java.awt.*;
 import java.awt.image.DataBuffer;
@@ -56,6 +57,29 @@ public class InverseColorMapIndexColorModel extends IndexColorModel {
     private final static int WHITE = 0x00FFFFFF;
     private final static int RGB_MASK = 0x00FFFFFF;
 
+    /**
+     * Default precision of the inverse color map, in bits per channel
+     */
+    public final static int PRECISION_DEFAULT = InverseColorMap.QUANTBITS;
+
+    /**
+     * High precision of the inverse color map, in bits per channel.
+     * Gives more accurate color lookups, at the expense of a larger
+     * inverse color map, that takes longer to create.
+     */
+    public final static int PRECISION_HIGH = InverseColorMap.QUANTBITS_HIGH;
+
+    /**
+     * Maximum number of cached color models
+     */
+    private final static int CACHE_SIZE = 32;
+
+    /**
+     * Cache of color models, keyed by palette content
+     */
+    private final static LRUHashMap<InverseColorMap.PaletteKey, InverseColorMapIndexColorModel> CACHE =
+            new LRUHashMap<InverseColorMap.PaletteKey, InverseColorMapIndexColorModel>(CACHE_SIZE);
+
     /**
      * Creates an {@code InverseColorMapIndexColorModel} from an existing
      * {@code IndexColorModel}.
@@ -63,12 +87,12 @@ public class InverseColorMapIndexColorModel extends IndexColorModel {
      * @param pColorModel the colormodel to create from
      */
     public InverseColorMapIndexColorModel(IndexColorModel pColorModel) {
-        this(pColorModel, getRGBs(pColorModel));
+        this(pColorModel, getRGBs(pColorModel), PRECISION_DEFAULT);
     }
 
     // NOTE: The pRGBs parameter is used to get around invoking getRGBs two
     // times. What is wrong with protected?!
-    private InverseColorMapIndexColorModel(IndexColorModel pColorModel, int[] pRGBs) {
+    private InverseColorMapIndexColorModel(IndexColorModel pColorModel, int[] pRGBs, int pPrecision) {
         super(pColorModel.getComponentSize()[0], pColorModel.getMapSize(),
               pRGBs, 0,
               ImageUtil.getTransferType(pColorModel),
@@ -77,10 +101,77 @@ public class InverseColorMapIndexColorModel extends IndexColorModel {
         mRGBs = pRGBs;
         mMapSize = mRGBs.length;
 
-        mInverseMap = new InverseColorMap(mRGBs);
+        mInverseMap = InverseColorMap.getInstance(mRGBs, -1, pPrecision);
         mWhiteIndex = getWhiteIndex();
     }
 
+    /**
+     * Gets an {@code InverseColorMapIndexColorModel} for the given
+     * {@code IndexColorModel}, using the default precision.
+     * <p/>
+     * Color models are cached and shared, based on the content of the
+     * palette, so that converting many images using the same palette
+     * creates the inverse color map only once.
+     *
+     * @param pColorModel the colormodel to create from
+     * @return {@code pColorModel} if it is already an
+     * {@code InverseColorMapIndexColorModel}, otherwise a new or cached
+     * {@code InverseColorMapIndexColorModel} with the same palette.
+     */
+    public static InverseColorMapIndexColorModel getInstance(IndexColorModel pColorModel) {
+        if (pColorModel instanceof InverseColorMapIndexColorModel) {
+            return (InverseColorMapIndexColorModel) pColorModel;
+        }
+
+        return getInstance(pColorModel, PRECISION_DEFAULT);
+    }
+
+    /**
+     * Gets an {@code InverseColorMapIndexColorModel} for the given
+     * {@code IndexColorModel}, using the given precision.
+     * <p/>
+     * Color models are cached and shared, based on the content of the
+     * palette, so that converting many images using the same palette
+     * creates the inverse color map only once.
+     *
+     * @param pColorModel the colormodel to create from
+     * @param pPrecision the precision of the inverse color map, in bits per
+     * channel, typically {@link #PRECISION_DEFAULT} or {@link #PRECISION_HIGH}.
+     * @return a new or cached {@code InverseColorMapIndexColorModel} with the
+     * same palette as {@code pColorModel}.
+     *
+     * @throws IllegalArgumentException if {@code pPrecision} is not in the
+     * range {@code [4...7]}.
+     */
+    public static InverseColorMapIndexColorModel getInstance(IndexColorModel pColorModel, int pPrecision) {
+        int[] rgbs = getRGBs(pColorModel);
+
+        if (!pColorModel.isValid()) {
+            // Can't be keyed by palette only, don't cache
+            return new InverseColorMapIndexColorModel(pColorModel, rgbs, pPrecision);
+        }
+
+        InverseColorMap.PaletteKey key = new InverseColorMap.PaletteKey(
+                rgbs, 0xFFFFFFFF,
+                pColorModel.getPixelSize(), ImageUtil.getTransferType(pColorModel), pPrecision
+        );
+
+        InverseColorMapIndexColorModel cm;
+        synchronized (CACHE) {
+            cm = CACHE.get(key);
+        }
+
+        if (cm == null) {
+            cm = new InverseColorMapIndexColorModel(pColorModel, rgbs, pPrecision);
+
+            synchronized (CACHE) {
+                CACHE.put(key, cm);
+            }
+        }
+
+        return cm;
+    }
+
     /**
      * Creates a defensive copy of the RGB colormap in the given
      * {@code IndexColorModel}.
@@ -118,7 +209,7 @@ public class InverseColorMapIndexColorModel extends IndexColorModel {
         mRGBs = getRGBs(this);
         mMapSize = mRGBs.length;
 
-        mInverseMap = new InverseColorMap(mRGBs, pTransparentIndex);
+        mInverseMap = InverseColorMap.getInstance(mRGBs, pTransparentIndex);
         mWhiteIndex = getWhiteIndex();
     }
 
@@ -145,7 +236,7 @@ public class InverseColorMapIndexColorModel extends IndexColorModel {
         mRGBs = getRGBs(this);
         mMapSize = mRGBs.length;
 
-        mInverseMap = new InverseColorMap(mRGBs, pTransparentIndex);
+        mInverseMap = InverseColorMap.getInstance(mRGBs, pTransparentIndex);
         mWhiteIndex = getWhiteIndex();
     }
 
@@ -170,7 +261,7 @@ public class InverseColorMapIndexColorModel extends IndexColorModel {
         mRGBs = getRGBs(this);
         mMapSize = mRGBs.length;
 
-        mInverseMap = new InverseColorMap(mRGBs);
+        mInverseMap = InverseColorMap.getInstance(mRGBs, -1);
         mWhiteIndex = getWhiteIndex();
     }
 
@@ -197,15 +288,7 @@ public class InverseColorMapIndexColorModel extends IndexColorModel {
         // TODO: Inline and deprecate IndexImage.getIndexColorModel!?
         IndexColorModel icm = IndexImage.getIndexColorModel(pImage, pNumCols, pFlags);
 
-        InverseColorMapIndexColorModel cm;
-        if (icm instanceof InverseColorMapIndexColorModel) {
-            cm = (InverseColorMapIndexColorModel) icm;
-        }
-        else {
-            cm = new InverseColorMapIndexColorModel(icm);
-        }
-
-        return cm;
+        return getInstance(icm);
     }
 
     /**
@@ -264,6 +347,24 @@ public class InverseColorMapIndexColorModel extends IndexColorModel {
         return installpixel(pixel, pix);
     }
 
+    /**
+     * Gets the index of the nearest (opaque) color in this color model.
+     * This is the same lookup as {@link #getDataElements(int, Object)} does,
+     * without creating or filling a pixel array.
+     *
+     * @param pRed red component, in the range {@code [0...255]}
+     * @param pGreen green component, in the range {@code [0...255]}
+     * @param pBlue blue component, in the range {@code [0...255]}
+     * @return the index of the nearest color
+     */
+    final int getIndexNearest(final int pRed, final int pGreen, final int pBlue) {
+        if (mWhiteIndex != -1 && pRed == 0xFF && pGreen == 0xFF && pBlue == 0xFF) {
+            return mWhiteIndex;
+        }
+
+        return mInverseMap.getIndexNearest(pRed, pGreen, pBlue);
+    }
+
     private Object installpixel(Object pixel, int pix) {
         switch (transferType) {
             case DataBuffer.TYPE_INT:
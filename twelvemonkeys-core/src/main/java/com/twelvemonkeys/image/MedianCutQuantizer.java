@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) 2008, Harald Kuhr
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name "TwelveMonkeys" nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.twelvemonkeys.image;
+
+/**
+ * A median cut color quantizer.
+ * <p/>
+ * The color space is recursively split into boxes, always splitting the box
+ * with the largest number of pixels, along its longest axis, so that each
+ * half contains approximately the same number of pixels.
+ * The palette consists of the average colors of each box.
+ * <p/>
+ * This is the algorithm used by {@link IndexImage} by default.
+ *
+ * @author <a href="mailto:harald.kuhr@gmail.com">Harald Kuhr</a>
+ * @author last modified by $Author: haku $
+ * @version $Id: MedianCutQuantizer.java,v 1.0 Oct 18, 2026 8:47:02 PM haraldk Exp$
+ *
+ * @see <a href="http://en.wikipedia.org/wiki/Median_cut">Median cut (Wikipedia)</a>
+ */
+public class MedianCutQuantizer extends ColorQuantizer {
+    private static final int LEVELS = Histogram.LEVELS;
+    private static final int BITS = Histogram.BITS;
+
+    protected int[] createPalette(final Histogram pHistogram, final int pMaxColors) {
+        int[] counts = pHistogram.mCounts;
+
+        // Boxes are stored as [rmin, rmax, gmin, gmax, bmin, bmax], inclusive
+        int[][] boxes = new int[pMaxColors][];
+        int[] boxCounts = new int[pMaxColors];
+        boolean[] done = new boolean[pMaxColors];
+
+        boxes[0] = new int[] {0, LEVELS - 1, 0, LEVELS - 1, 0, LEVELS - 1};
+        boxCounts[0] = shrink(counts, boxes[0]);
+        int numberOfBoxes = boxCounts[0] > 0 ? 1 : 0;
+
+        // Projection of counts along the split axis
+        int[] projection = new int[LEVELS];
+
+        while (numberOfBoxes < pMaxColors) {
+            // Find the most populated box that can be split
+            int index = -1;
+            for (int i = 0; i < numberOfBoxes; i++) {
+                if (!done[i] && (index < 0 || boxCounts[i] > boxCounts[index])) {
+                    index = i;
+                }
+            }
+
+            if (index < 0) {
+                break; // No more boxes to split
+            }
+
+            int[] box = boxes[index];
+            int axis = longestAxis(box);
+
+            if (axis < 0) {
+                // A single bin can't be split
+                done[index] = true;
+                continue;
+            }
+
+            // Find median along axis
+            project(counts, box, axis, projection);
+
+            int min = box[axis * 2];
+            int max = box[axis * 2 + 1];
+            int half = boxCounts[index] / 2;
+            int sum = 0;
+            int split = min;
+
+            for (int i = min; i < max; i++) {
+                sum += projection[i];
+                split = i;
+
+                if (sum >= half) {
+                    break;
+                }
+            }
+
+            // Split into [min...split] and [split + 1...max]
+            int[] other = box.clone();
+            box[axis * 2 + 1] = split;
+            other[axis * 2] = split + 1;
+
+            boxCounts[index] = shrink(counts, box);
+            boxes[numberOfBoxes] = other;
+            boxCounts[numberOfBoxes] = shrink(counts, other);
+            numberOfBoxes++;
+        }
+
+        int[] palette = new int[numberOfBoxes];
+        for (int i = 0; i < numberOfBoxes; i++) {
+            palette[i] = averageColor(pHistogram, boxes[i], boxCounts[i]);
+        }
+
+        return palette;
+    }
+
+    private static int index(final int pRed, final int pGreen, final int pBlue) {
+        return (pRed << (BITS * 2)) | (pGreen << BITS) | pBlue;
+    }
+
+    private static int longestAxis(final int[] pBox) {
+        int axis = -1;
+        int longest = 0;
+
+        for (int i = 0; i < 3; i++) {
+            int length = pBox[i * 2 + 1] - pBox[i * 2];
+            if (length > longest) {
+                longest = length;
+                axis = i;
+            }
+        }
+
+        return axis;
+    }
+
+    private static void project(final int[] pCounts, final int[] pBox, final int pAxis, final int[] pProjection) {
+        for (int i = pBox[pAxis * 2]; i <= pBox[pAxis * 2 + 1]; i++) {
+            pProjection[i] = 0;
+        }
+
+        for (int r = pBox[0]; r <= pBox[1]; r++) {
+            for (int g = pBox[2]; g <= pBox[3]; g++) {
+                for (int b = pBox[4]; b <= pBox[5]; b++) {
+                    int count = pCounts[index(r, g, b)];
+
+                    if (count != 0) {
+                        pProjection[pAxis == 0 ? r : pAxis == 1 ? g : b] += count;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Shrinks the box to the bounds of its non-empty bins.
+     *
+     * @param pCounts the histogram counts
+     * @param pBox the box
+     * @return the number of pixels in the box
+     */
+    private static int shrink(final int[] pCounts, final int[] pBox) {
+        int rmin = LEVELS, rmax = -1, gmin = LEVELS, gmax = -1, bmin = LEVELS, bmax = -1;
+        int total = 0;
+
+        for (int r = pBox[0]; r <= pBox[1]; r++) {
+            for (int g = pBox[2]; g <= pBox[3]; g++) {
+                for (int b = pBox[4]; b <= pBox[5]; b++) {
+                    int count = pCounts[index(r, g, b)];
+
+                    if (count != 0) {
+                        total += count;
+
+                        if (r < rmin) rmin = r;
+                        if (r > rmax) rmax = r;
+                        if (g < gmin) gmin = g;
+                        if (g > gmax) gmax = g;
+                        if (b < bmin) bmin = b;
+                        if (b > bmax) bmax = b;
+                    }
+                }
+            }
+        }
+
+        if (total > 0) {
+            pBox[0] = rmin;
+            pBox[1] = rmax;
+            pBox[2] = gmin;
+            pBox[3] = gmax;
+            pBox[4] = bmin;
+            pBox[5] = bmax;
+        }
+
+        return total;
+    }
+
+    private static int averageColor(final Histogram pHistogram, final int[] pBox, final int pCount) {
+        if (pCount == 0) {
+            return 0;
+        }
+
+        long red = 0, green = 0, blue = 0;
+
+        for (int r = pBox[0]; r <= pBox[1]; r++) {
+            for (int g = pBox[2]; g <= pBox[3]; g++) {
+                for (int b = pBox[4]; b <= pBox[5]; b++) {
+                    int index = index(r, g, b);
+
+                    red += pHistogram.mRedSums[index];
+                    green += pHistogram.mGreenSums[index];
+                    blue += pHistogram.mBlueSums[index];
+                }
+            }
+        }
+
+        return (int) ((red + pCount / 2) / pCount) << 16
+                | (int) ((green + pCount / 2) / pCount) << 8
+                | (int) ((blue + pCount / 2) / pCount);
+    }
+}
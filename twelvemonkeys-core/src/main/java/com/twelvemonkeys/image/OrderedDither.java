@@ -0,0 +1,334 @@
+/*
+ * Copyright (c) 2008, Harald Kuhr
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name "TwelveMonkeys" nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.twelvemonkeys.image;
+
+import java.awt.*;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.BufferedImageOp;
+import java.awt.image.ColorModel;
+import java.awt.image.IndexColorModel;
+import java.awt.image.Raster;
+import java.awt.image.RasterOp;
+import java.awt.image.WritableRaster;
+
+/**
+ * This {@code BufferedImageOp/RasterOp} implements ordered dithering,
+ * using an 8x8 Bayer threshold matrix.
+ * <p/>
+ * Unlike error-diffusion, ordered dither has no dependencies between pixels,
+ * and the pattern is stable across frames and image regions. This makes it
+ * fast, and well suited for GIF/PNG8 output of flat graphics.
+ *
+ * @author <a href="mailto:harald.kuhr@gmail.com">Harald Kuhr</a>
+ * @author last modified by $Author: haku $
+ *
+ * @version $Id: OrderedDither.java,v 1.0 Oct 18, 2026 7:30:12 PM haraldk Exp$
+ *
+ * @see DiffusionDither
+ */
+public class OrderedDither implements BufferedImageOp, RasterOp {
+
+    // 8x8 Bayer matrix, values in the range [0...63]
+    private static final int[] BAYER_8X8 = {
+             0, 32,  8, 40,  2, 34, 10, 42,
+            48, 16, 56, 24, 50, 18, 58, 26,
+            12, 44,  4, 36, 14, 46,  6, 38,
+            60, 28, 52, 20, 62, 30, 54, 22,
+             3, 35, 11, 43,  1, 33,  9, 41,
+            51, 19, 59, 27, 49, 17, 57, 25,
+            15, 47,  7, 39, 13, 45,  5, 37,
+            63, 31, 55, 23, 61, 29, 53, 21
+    };
+
+    protected IndexColorModel mIndexColorModel = null;
+    private int mSpread = -1;
+
+    /**
+     * Creates an {@code OrderedDither}, using the given
+     * {@code IndexColorModel} for dithering into.
+     *
+     * @param pICM an IndexColorModel.
+     */
+    public OrderedDither(IndexColorModel pICM) {
+        // Store colormodel
+        mIndexColorModel = pICM;
+    }
+
+    /**
+     * Creates an {@code OrderedDither}, with no fixed
+     * {@code IndexColorModel}. The colormodel will be generated for each
+     * filtering, unless the dest image allready has an
+     * {@code IndexColorModel}.
+     */
+    public OrderedDither() {
+    }
+
+    /**
+     * Sets the spread of the dither pattern, that is the maximum difference
+     * between the darkest and lightest threshold applied to a color
+     * component. By default, the spread is computed from the size of the
+     * palette, as the average distance between the palette levels of each
+     * component.
+     *
+     * @param pSpread the spread, in the range {@code [0...255]}, or
+     * {@code -1} for default.
+     */
+    public void setSpread(int pSpread) {
+        if (pSpread < -1 || pSpread > 255) {
+            throw new IllegalArgumentException("spread must be in the range [0...255], or -1: " + pSpread);
+        }
+        mSpread = pSpread;
+    }
+
+    /**
+     * Creates a compatible {@code BufferedImage} to dither into.
+     * Only {@code IndexColorModel} allowed.
+     *
+     * @return a compatible {@code BufferedImage}
+     *
+     * @throws ImageFilterException if {@code pDestCM} is not {@code null} or
+     * an instance of {@code IndexColorModel}.
+     */
+    public final BufferedImage createCompatibleDestImage(BufferedImage pSource,
+                                                         ColorModel pDestCM) {
+        if (pDestCM == null) {
+            return new BufferedImage(pSource.getWidth(), pSource.getHeight(),
+                                     BufferedImage.TYPE_BYTE_INDEXED,
+                                     getICM(pSource));
+        }
+        else if (pDestCM instanceof IndexColorModel) {
+            return new BufferedImage(pSource.getWidth(), pSource.getHeight(),
+                                     BufferedImage.TYPE_BYTE_INDEXED,
+                                     (IndexColorModel) pDestCM);
+        }
+        else {
+            throw new ImageFilterException("Only IndexColorModel allowed.");
+        }
+    }
+
+    /**
+     * Creates a compatible {@code Raster} to dither into.
+     * Only {@code IndexColorModel} allowed.
+     *
+     * @param pSrc
+     *
+     * @return a {@code WritableRaster}
+     */
+    public final WritableRaster createCompatibleDestRaster(Raster pSrc) {
+        return createCompatibleDestRaster(pSrc, getICM(pSrc));
+    }
+
+    public final WritableRaster createCompatibleDestRaster(Raster pSrc,
+                                                           IndexColorModel pIndexColorModel) {
+        return pIndexColorModel.createCompatibleWritableRaster(pSrc.getWidth(), pSrc.getHeight());
+    }
+
+    /**
+     * Returns the bounding box of the filtered destination image.  Since
+     * this is not a geometric operation, the bounding box does not
+     * change.
+     * @param pSrc the {@code BufferedImage} to be filtered
+     * @return the bounds of the filtered definition image.
+     */
+    public final Rectangle2D getBounds2D(BufferedImage pSrc) {
+        return getBounds2D(pSrc.getRaster());
+    }
+
+    /**
+     * Returns the bounding box of the filtered destination Raster.  Since
+     * this is not a geometric operation, the bounding box does not
+     * change.
+     * @param pSrc the {@code Raster} to be filtered
+     * @return the bounds of the filtered definition {@code Raster}.
+     */
+    public final Rectangle2D getBounds2D(Raster pSrc) {
+        return pSrc.getBounds();
+    }
+
+    /**
+     * Returns the location of the destination point given a
+     * point in the source.  If {@code dstPt} is not
+     * {@code null}, it will be used to hold the return value.
+     * Since this is not a geometric operation, the {@code srcPt}
+     * will equal the {@code dstPt}.
+     * @param pSrcPt a {@code Point2D} that represents a point
+     *        in the source image
+     * @param pDstPt a {@code Point2D}that represents the location
+     *        in the destination
+     * @return the {@code Point2D} in the destination that
+     *         corresponds to the specified point in the source.
+     */
+    public final Point2D getPoint2D(Point2D pSrcPt, Point2D pDstPt) {
+        // Create new Point, if needed
+        if (pDstPt == null) {
+            pDstPt = new Point2D.Float();
+        }
+
+        // Copy location
+        pDstPt.setLocation(pSrcPt.getX(), pSrcPt.getY());
+
+        // Return dest
+        return pDstPt;
+    }
+
+    /**
+     * Returns the rendering mHints for this op.
+     * @return the {@code RenderingHints} object associated
+     *         with this op.
+     */
+    public final RenderingHints getRenderingHints() {
+        return null;
+    }
+
+    /**
+     * Performs a single-input/single-output ordered dither operation.
+     *
+     * @param pSource the source image
+     * @param pDest the destiantion image
+     *
+     * @return the destination image, or a new image, if {@code pDest} was
+     * {@code null}.
+     */
+    public final BufferedImage filter(BufferedImage pSource,
+                                      BufferedImage pDest) {
+        // Create destination image, if none provided
+        if (pDest == null) {
+            pDest = createCompatibleDestImage(pSource, getICM(pSource));
+        }
+        else if (!(pDest.getColorModel() instanceof IndexColorModel)) {
+            throw new ImageFilterException("Only IndexColorModel allowed.");
+        }
+
+        // Filter rasters
+        filter(pSource.getRaster(), pDest.getRaster(), (IndexColorModel) pDest.getColorModel());
+
+        return pDest;
+    }
+
+    /**
+     * Performs a single-input/single-output ordered dither operation.
+     *
+     * @param pSource
+     * @param pDest
+     *
+     * @return the destination raster, or a new raster, if {@code pDest} was
+     * {@code null}.
+     */
+    public final WritableRaster filter(final Raster pSource, WritableRaster pDest) {
+        return filter(pSource, pDest, getICM(pSource));
+    }
+
+    private IndexColorModel getICM(BufferedImage pSource) {
+        return (mIndexColorModel != null ? mIndexColorModel : IndexImage.getIndexColorModel(pSource, 256, IndexImage.TRANSPARENCY_BITMASK));
+    }
+    private IndexColorModel getICM(Raster pSource) {
+        return (mIndexColorModel != null ? mIndexColorModel : createIndexColorModel(pSource));
+    }
+
+    private IndexColorModel createIndexColorModel(Raster pSource) {
+        BufferedImage image = new BufferedImage(pSource.getWidth(), pSource.getHeight(),
+                                                BufferedImage.TYPE_INT_ARGB);
+        image.setData(pSource);
+        return IndexImage.getIndexColorModel(image, 256, IndexImage.TRANSPARENCY_BITMASK);
+    }
+
+    /**
+     * Performs a single-input/single-output ordered dither operation.
+     *
+     * @param pSource
+     * @param pDest
+     * @param pColorModel
+     *
+     * @return the destination raster, or a new raster, if {@code pDest} was
+     * {@code null}.
+     */
+    public final WritableRaster filter(final Raster pSource, WritableRaster pDest,
+                                       IndexColorModel pColorModel) {
+        int width = pSource.getWidth();
+        int height = pSource.getHeight();
+
+        // Create destination raster if needed
+        if (pDest == null) {
+            pDest = createCompatibleDestRaster(pSource, pColorModel);
+        }
+
+        InverseColorMapIndexColorModel icm = InverseColorMapIndexColorModel.getInstance(pColorModel);
+
+        // Precompute the threshold offsets, in the range [-spread/2...spread/2)
+        int spread = mSpread >= 0 ? mSpread : getDefaultSpread(icm.getMapSize());
+        int[] thresholds = new int[BAYER_8X8.length];
+        for (int i = 0; i < thresholds.length; i++) {
+            thresholds[i] = ((BAYER_8X8[i] * 2 - 63) * spread) / 128;
+        }
+
+        // Row buffers
+        final int bands = pSource.getNumBands();
+        int[] samples = new int[width * bands];
+        int[] indexes = new int[width];
+
+        final int srcX = pSource.getMinX();
+        final int srcY = pSource.getMinY();
+        final int dstX = pDest.getMinX();
+        final int dstY = pDest.getMinY();
+
+        // Loop through image data
+        for (int y = 0; y < height; y++) {
+            samples = pSource.getPixels(srcX, srcY + y, width, 1, samples);
+            int row = (y & 7) << 3;
+
+            for (int x = 0; x < width; x++) {
+                int s = x * bands;
+                int threshold = thresholds[row + (x & 7)];
+
+                // Gray is replicated
+                int red = clamp(samples[s] + threshold);
+                int green = clamp(samples[bands >= 3 ? s + 1 : s] + threshold);
+                int blue = clamp(samples[bands >= 3 ? s + 2 : s] + threshold);
+
+                indexes[x] = icm.getIndexNearest(red, green, blue);
+            }
+
+            // Write the entire row of indexes
+            pDest.setPixels(dstX, dstY + y, width, 1, indexes);
+        }
+
+        return pDest;
+    }
+
+    private static int getDefaultSpread(final int pMapSize) {
+        // Number of levels per component, for a palette evenly distributed in RGB space
+        int levels = Math.max(2, (int) Math.round(Math.cbrt(pMapSize)));
+        return 255 / (levels - 1);
+    }
+
+    private static int clamp(final int pValue) {
+        return pValue > 255 ? 255 : pValue < 0 ? 0 : pValue;
+    }
+}
@@ -120,26 +120,24 @@ public class PixelizeOp implements BufferedImageOp, RasterOp {
             //System.out.println("dest: " + dest);
         }
 
+        final Raster source = src;
+        final WritableRaster destination = dest;
+
         final int width = src.getWidth();
         final int height = src.getHeight();
-        int w = (width + mPixelSizeX - 1) / mPixelSizeX;
-        int h = (height + mPixelSizeY - 1) / mPixelSizeY;
+        final int w = (width + mPixelSizeX - 1) / mPixelSizeX;
+        final int h = (height + mPixelSizeY - 1) / mPixelSizeY;
 
-        final boolean oddX = width % w != 0;
-        final boolean oddY = height % h != 0;
+        final boolean oddX = width % mPixelSizeX != 0;
+        final boolean oddY = height % mPixelSizeY != 0;
 
         final int dataElements = src.getNumDataElements();
         final int bands = src.getNumBands();
         final int dataType = src.getTransferType();
 
-        Object data = null;
-        int scanW;
-        int scanH;
-
-
         // TYPE_USHORT setup
-        int[] bitMasks = null;
-        int[] bitOffsets = null;
+        final int[] bitMasks;
+        final int[] bitOffsets;
         if (src.getTransferType() == DataBuffer.TYPE_USHORT) {
             if (src.getSampleModel() instanceof SinglePixelPackedSampleModel) {
                 // DIRECT
@@ -153,133 +151,146 @@ public class PixelizeOp implements BufferedImageOp, RasterOp {
                 bitOffsets = new int[] {0};
             }
         }
+        else {
+            bitMasks = null;
+            bitOffsets = null;
+        }
 
-        for (int y = 0; y < h; y++) {
-            if (!oddY || y + 1 < h) {
-                scanH = mPixelSizeY;
-            }
-            else {
-                scanH = height - (y * mPixelSizeY);
-            }
-
-            for (int x = 0; x < w; x++) {
-                if (!oddX || x + 1 < w) {
-                    scanW = mPixelSizeX;
-                }
-                else {
-                    scanW = width - (x * mPixelSizeX);
-                }
-                final int pixelCount = scanW * scanH;
-                final int pixelLength = pixelCount * dataElements;
-
-                data = src.getDataElements(x * mPixelSizeX, y * mPixelSizeY, scanW, scanH, data);
-
-                // NOTE: These are not neccessarily ARGB..
-                double valueA = 0.0;
-                double valueR = 0.0;
-                double valueG = 0.0;
-                double valueB = 0.0;
-
-                switch (dataType) {
-                    case DataBuffer.TYPE_BYTE:
-                        // TODO: Doesn't hold for index color models...
-                        byte[] bytePixels = (byte[]) data;
-                        for (int i = 0; i < pixelLength; i += dataElements) {
-                            valueA += bytePixels[i] & 0xff;
-                            if (bands > 1) {
-                                valueR += bytePixels[i + 1] & 0xff;
-                                valueG += bytePixels[i + 2] & 0xff;
-                                if (bands > 3) {
-                                    valueB += bytePixels[i + 3] & 0xff;
-                                }
-                            }
+        // Rows of blocks are independent, and are filtered in parallel bands
+        TilingExecutor.inBands(h, mPixelSizeY * width * bands, new TilingExecutor.Band() {
+            public void run(final int pFrom, final int pTo) {
+                Object data = null;
+                int scanW;
+                int scanH;
+
+                for (int y = pFrom; y < pTo; y++) {
+                    if (!oddY || y + 1 < h) {
+                        scanH = mPixelSizeY;
+                    }
+                    else {
+                        scanH = height - (y * mPixelSizeY);
+                    }
+
+                    for (int x = 0; x < w; x++) {
+                        if (!oddX || x + 1 < w) {
+                            scanW = mPixelSizeX;
                         }
-
-                        // Average
-                        valueA /= pixelCount;
-                        if (bands > 1) {
-                            valueR /= pixelCount;
-                            valueG /= pixelCount;
-                            if (bands > 3) {
-                                valueB /= pixelCount;
-                            }
+                        else {
+                            scanW = width - (x * mPixelSizeX);
                         }
+                        final int pixelCount = scanW * scanH;
+                        final int pixelLength = pixelCount * dataElements;
+
+                        data = source.getDataElements(x * mPixelSizeX, y * mPixelSizeY, scanW, scanH, data);
+
+                        // NOTE: These are not neccessarily ARGB..
+                        double valueA = 0.0;
+                        double valueR = 0.0;
+                        double valueG = 0.0;
+                        double valueB = 0.0;
+
+                        switch (dataType) {
+                            case DataBuffer.TYPE_BYTE:
+                                // TODO: Doesn't hold for index color models...
+                                byte[] bytePixels = (byte[]) data;
+                                for (int i = 0; i < pixelLength; i += dataElements) {
+                                    valueA += bytePixels[i] & 0xff;
+                                    if (bands > 1) {
+                                        valueR += bytePixels[i + 1] & 0xff;
+                                        valueG += bytePixels[i + 2] & 0xff;
+                                        if (bands > 3) {
+                                            valueB += bytePixels[i + 3] & 0xff;
+                                        }
+                                    }
+                                }
 
-                        for (int i = 0; i < pixelLength; i += dataElements) {
-                            bytePixels[i] = (byte) clamp((int) valueA);
-                            if (bands > 1) {
-                                bytePixels[i + 1] = (byte) clamp((int) valueR);
-                                bytePixels[i + 2] = (byte) clamp((int) valueG);
-                                if (bands > 3) {
-                                    bytePixels[i + 3] = (byte) clamp((int) valueB);
+                                // Average
+                                valueA /= pixelCount;
+                                if (bands > 1) {
+                                    valueR /= pixelCount;
+                                    valueG /= pixelCount;
+                                    if (bands > 3) {
+                                        valueB /= pixelCount;
+                                    }
                                 }
-                            }
-                        }
-                        break;
-
-                    case DataBuffer.TYPE_INT:
-                        int[] intPixels = (int[]) data;
-                        for (int i = 0; i < pixelLength; i += dataElements) {
-                            valueA += (intPixels[i] & 0xff000000) >> 24;
-                            valueR += (intPixels[i] & 0xff0000) >> 16;
-                            valueG += (intPixels[i] & 0xff00) >> 8;
-                            valueB += (intPixels[i] & 0xff);
-                        }
 
-                        // Average
-                        valueA /= pixelCount;
-                        valueR /= pixelCount;
-                        valueG /= pixelCount;
-                        valueB /= pixelCount;
-
-                        for (int i = 0; i < pixelLength; i += dataElements) {
-                            intPixels[i] = clamp((int) valueA) << 24;
-                            intPixels[i] |= clamp((int) valueR) << 16;
-                            intPixels[i] |= clamp((int) valueG) << 8;
-                            intPixels[i] |= clamp((int) valueB);
-                        }
-                        break;
-
-                    case DataBuffer.TYPE_USHORT:
-                        if (bitMasks != null) {
-                            short[] shortPixels = (short[]) data;
-                            for (int i = 0; i < pixelLength; i += dataElements) {
-                                valueA += (shortPixels[i] & bitMasks[0]) >> bitOffsets[0];
-                                if (bitMasks.length > 1) {
-                                    valueR += (shortPixels[i] & bitMasks[1]) >> bitOffsets[1];
-                                    valueG += (shortPixels[i] & bitMasks[2]) >> bitOffsets[2];
-                                    if (bitMasks.length > 3) {
-                                        valueB += (shortPixels[i] & bitMasks[3]) >> bitOffsets[3];
+                                for (int i = 0; i < pixelLength; i += dataElements) {
+                                    bytePixels[i] = (byte) clamp((int) valueA);
+                                    if (bands > 1) {
+                                        bytePixels[i + 1] = (byte) clamp((int) valueR);
+                                        bytePixels[i + 2] = (byte) clamp((int) valueG);
+                                        if (bands > 3) {
+                                            bytePixels[i + 3] = (byte) clamp((int) valueB);
+                                        }
                                     }
                                 }
-                            }
-
-                            // Average
-                            valueA /= pixelCount;
-                            valueR /= pixelCount;
-                            valueG /= pixelCount;
-                            valueB /= pixelCount;
-
-                            for (int i = 0; i < pixelLength; i += dataElements) {
-                                shortPixels[i] = (short) (((int) valueA << bitOffsets[0]) & bitMasks[0]);
-                                if (bitMasks.length > 1) {
-                                    shortPixels[i] |= (short) (((int) valueR << bitOffsets[1]) & bitMasks[1]);
-                                    shortPixels[i] |= (short) (((int) valueG << bitOffsets[2]) & bitMasks[2]);
-                                    if (bitMasks.length > 3) {
-                                        shortPixels[i] |= (short) (((int) valueB << bitOffsets[3]) & bitMasks[3]);
+                                break;
+
+                            case DataBuffer.TYPE_INT:
+                                int[] intPixels = (int[]) data;
+                                for (int i = 0; i < pixelLength; i += dataElements) {
+                                    valueA += (intPixels[i] & 0xff000000) >> 24;
+                                    valueR += (intPixels[i] & 0xff0000) >> 16;
+                                    valueG += (intPixels[i] & 0xff00) >> 8;
+                                    valueB += (intPixels[i] & 0xff);
+                                }
+
+                                // Average
+                                valueA /= pixelCount;
+                                valueR /= pixelCount;
+                                valueG /= pixelCount;
+                                valueB /= pixelCount;
+
+                                for (int i = 0; i < pixelLength; i += dataElements) {
+                                    intPixels[i] = clamp((int) valueA) << 24;
+                                    intPixels[i] |= clamp((int) valueR) << 16;
+                                    intPixels[i] |= clamp((int) valueG) << 8;
+                                    intPixels[i] |= clamp((int) valueB);
+                                }
+                                break;
+
+                            case DataBuffer.TYPE_USHORT:
+                                if (bitMasks != null) {
+                                    short[] shortPixels = (short[]) data;
+                                    for (int i = 0; i < pixelLength; i += dataElements) {
+                                        valueA += (shortPixels[i] & bitMasks[0]) >> bitOffsets[0];
+                                        if (bitMasks.length > 1) {
+                                            valueR += (shortPixels[i] & bitMasks[1]) >> bitOffsets[1];
+                                            valueG += (shortPixels[i] & bitMasks[2]) >> bitOffsets[2];
+                                            if (bitMasks.length > 3) {
+                                                valueB += (shortPixels[i] & bitMasks[3]) >> bitOffsets[3];
+                                            }
+                                        }
+                                    }
+
+                                    // Average
+                                    valueA /= pixelCount;
+                                    valueR /= pixelCount;
+                                    valueG /= pixelCount;
+                                    valueB /= pixelCount;
+
+                                    for (int i = 0; i < pixelLength; i += dataElements) {
+                                        shortPixels[i] = (short) (((int) valueA << bitOffsets[0]) & bitMasks[0]);
+                                        if (bitMasks.length > 1) {
+                                            shortPixels[i] |= (short) (((int) valueR << bitOffsets[1]) & bitMasks[1]);
+                                            shortPixels[i] |= (short) (((int) valueG << bitOffsets[2]) & bitMasks[2]);
+                                            if (bitMasks.length > 3) {
+                                                shortPixels[i] |= (short) (((int) valueB << bitOffsets[3]) & bitMasks[3]);
+                                            }
+                                        }
                                     }
+                                    break;
                                 }
-                            }
-                            break;
+                            default:
+                                throw new IllegalArgumentException("TransferType not supported: " + dataType);
+
                         }
-                    default:
-                        throw new IllegalArgumentException("TransferType not supported: " + dataType);
 
+                        destination.setDataElements(x * mPixelSizeX, y * mPixelSizeY, scanW, scanH, data);
+                    }
                 }
-
-                dest.setDataElements(x * mPixelSizeX, y * mPixelSizeY, scanW, scanH, data);
             }
-        }
+        });
         /*/
         // This is a very naive way of pixelizing (but it works)...
         // Thanks to the awsome speed of AffineTransformOp, it's also fast
@@ -0,0 +1,304 @@
+/*
+ * Copyright (c) 2008, Harald Kuhr
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name "TwelveMonkeys" nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.twelvemonkeys.image;
+
+import java.awt.*;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.*;
+
+/**
+ * Abstract base class for operations that change the color of each pixel
+ * independently, like {@link BrightnessContrastOp} and {@link GrayOp}.
+ * <p/>
+ * Pixels are filtered one row at a time, as packed ARGB values in the default
+ * color space, and alpha is left as is. For {@code TYPE_INT_RGB},
+ * {@code TYPE_INT_ARGB}, {@code TYPE_3BYTE_BGR} and {@code TYPE_4BYTE_ABGR}
+ * images, rows are read and written directly from the {@code DataBuffer},
+ * other images are converted using their color model.
+ * For images with an {@link IndexColorModel}, only the palette is filtered.
+ * Large images are filtered in parallel, using bands of rows.
+ *
+ * @author <a href="mailto:harald.kuhr@gmail.com">Harald Kuhr</a>
+ * @author last modified by $Author: haku $
+ * @version $Id: RGBRasterOp.java,v 1.0 Oct 19, 2026 5:02:11 AM haraldk Exp$
+ */
+abstract class RGBRasterOp implements BufferedImageOp, RasterOp {
+
+    /**
+     * Filters a row of pixels, in place.
+     * The alpha component of each pixel must be left as is.
+     *
+     * @param pARGB pixel values in the default color space
+     * @param pOffset the offset of the first pixel
+     * @param pLength the number of pixels
+     */
+    abstract void filterRGB(int[] pARGB, int pOffset, int pLength);
+
+    public BufferedImage filter(final BufferedImage pSource, final BufferedImage pDestination) {
+        if (pSource == null) {
+            throw new NullPointerException("source image is null");
+        }
+
+        ColorModel cm = pSource.getColorModel();
+        if (pDestination == null && cm instanceof IndexColorModel) {
+            return filterIndexed(pSource, (IndexColorModel) cm);
+        }
+
+        final BufferedImage destination = pDestination != null ? pDestination : createCompatibleDestImage(pSource, null);
+        if (destination.getWidth() != pSource.getWidth() || destination.getHeight() != pSource.getHeight()) {
+            throw new IllegalArgumentException("source and destination images must be the same size");
+        }
+
+        final int width = pSource.getWidth();
+        TilingExecutor.inBands(pSource.getHeight(), width * 4, new TilingExecutor.Band() {
+            public void run(final int pFrom, final int pTo) {
+                int[] row = new int[width];
+
+                for (int y = pFrom; y < pTo; y++) {
+                    readRow(pSource, y, row);
+                    filterRGB(row, 0, width);
+                    writeRow(destination, y, row);
+                }
+            }
+        });
+
+        return destination;
+    }
+
+    private BufferedImage filterIndexed(final BufferedImage pSource, final IndexColorModel pColorModel) {
+        int size = pColorModel.getMapSize();
+        int[] rgbs = new int[size];
+        pColorModel.getRGBs(rgbs);
+
+        filterRGB(rgbs, 0, size);
+
+        IndexColorModel cm = new IndexColorModel(
+                pColorModel.getPixelSize(), size, rgbs, 0, pColorModel.hasAlpha(),
+                pColorModel.getTransparentPixel(), pColorModel.getTransferType()
+        );
+
+        return new BufferedImage(cm, pSource.copyData(null), false, null);
+    }
+
+    private static void readRow(final BufferedImage pImage, final int pY, final int[] pRow) {
+        WritableRaster raster = pImage.getRaster();
+        int width = pRow.length;
+
+        switch (pImage.getType()) {
+            case BufferedImage.TYPE_INT_RGB:
+            case BufferedImage.TYPE_INT_ARGB: {
+                int[] data = ((DataBufferInt) raster.getDataBuffer()).getData();
+                System.arraycopy(data, offsetOf(raster, pY), pRow, 0, width);
+
+                if (pImage.getType() == BufferedImage.TYPE_INT_RGB) {
+                    for (int x = 0; x < width; x++) {
+                        pRow[x] |= 0xff000000;
+                    }
+                }
+                break;
+            }
+            case BufferedImage.TYPE_3BYTE_BGR:
+            case BufferedImage.TYPE_4BYTE_ABGR: {
+                byte[] data = ((DataBufferByte) raster.getDataBuffer()).getData();
+                int[] offsets = ((ComponentSampleModel) raster.getSampleModel()).getBandOffsets();
+                boolean alpha = offsets.length > 3;
+                int pixelStride = ((ComponentSampleModel) raster.getSampleModel()).getPixelStride();
+
+                for (int x = 0, i = offsetOf(raster, pY); x < width; x++, i += pixelStride) {
+                    pRow[x] = (alpha ? (data[i + offsets[3]] & 0xff) << 24 : 0xff000000)
+                            | (data[i + offsets[0]] & 0xff) << 16
+                            | (data[i + offsets[1]] & 0xff) << 8
+                            | (data[i + offsets[2]] & 0xff);
+                }
+                break;
+            }
+            default:
+                pImage.getRGB(0, pY, width, 1, pRow, 0, width);
+        }
+    }
+
+    static void writeRow(final BufferedImage pImage, final int pY, final int[] pRow) {
+        WritableRaster raster = pImage.getRaster();
+        int width = pRow.length;
+
+        switch (pImage.getType()) {
+            case BufferedImage.TYPE_INT_RGB:
+            case BufferedImage.TYPE_INT_ARGB: {
+                int[] data = ((DataBufferInt) raster.getDataBuffer()).getData();
+                int offset = offsetOf(raster, pY);
+                System.arraycopy(pRow, 0, data, offset, width);
+
+                if (pImage.getType() == BufferedImage.TYPE_INT_RGB) {
+                    for (int x = offset; x < offset + width; x++) {
+                        data[x] &= 0xffffff;
+                    }
+                }
+                break;
+            }
+            case BufferedImage.TYPE_3BYTE_BGR:
+            case BufferedImage.TYPE_4BYTE_ABGR: {
+                byte[] data = ((DataBufferByte) raster.getDataBuffer()).getData();
+                int[] offsets = ((ComponentSampleModel) raster.getSampleModel()).getBandOffsets();
+                boolean alpha = offsets.length > 3;
+                int pixelStride = ((ComponentSampleModel) raster.getSampleModel()).getPixelStride();
+
+                for (int x = 0, i = offsetOf(raster, pY); x < width; x++, i += pixelStride) {
+                    int argb = pRow[x];
+                    data[i + offsets[0]] = (byte) (argb >> 16);
+                    data[i + offsets[1]] = (byte) (argb >> 8);
+                    data[i + offsets[2]] = (byte) argb;
+                    if (alpha) {
+                        data[i + offsets[3]] = (byte) (argb >>> 24);
+                    }
+                }
+                break;
+            }
+            default:
+                pImage.setRGB(0, pY, width, 1, pRow, 0, width);
+        }
+    }
+
+    static int offsetOf(final Raster pRaster, final int pY) {
+        int x = pRaster.getMinX() - pRaster.getSampleModelTranslateX();
+        int y = pRaster.getMinY() + pY - pRaster.getSampleModelTranslateY();
+        SampleModel sampleModel = pRaster.getSampleModel();
+
+        // NOTE: Band offsets are added by the caller
+        int offset;
+        if (sampleModel instanceof SinglePixelPackedSampleModel) {
+            offset = y * ((SinglePixelPackedSampleModel) sampleModel).getScanlineStride() + x;
+        }
+        else {
+            ComponentSampleModel componentSampleModel = (ComponentSampleModel) sampleModel;
+            offset = y * componentSampleModel.getScanlineStride() + x * componentSampleModel.getPixelStride();
+        }
+
+        return offset + pRaster.getDataBuffer().getOffset();
+    }
+
+    /**
+     * Filters the raster.
+     * Samples are assumed to be 8 bit. For rasters with three or four bands,
+     * the bands are red, green, blue and (optional) alpha, for rasters
+     * with one or two bands, the bands are gray and (optional) alpha.
+     *
+     * @param pSource the source raster
+     * @param pDestination the destination raster, or {@code null}
+     * @return the destination raster, or a new raster if {@code pDestination} is {@code null}
+     */
+    public WritableRaster filter(final Raster pSource, final WritableRaster pDestination) {
+        if (pSource == null) {
+            throw new NullPointerException("source raster is null");
+        }
+
+        final WritableRaster destination = pDestination != null ? pDestination : createCompatibleDestRaster(pSource);
+        if (destination.getWidth() != pSource.getWidth() || destination.getHeight() != pSource.getHeight()) {
+            throw new IllegalArgumentException("source and destination rasters must be the same size");
+        }
+
+        final int bands = pSource.getNumBands();
+        if (bands > 4 || destination.getNumBands() != bands) {
+            throw new IllegalArgumentException("Unsupported number of bands: " + bands + "/" + destination.getNumBands());
+        }
+
+        final int width = pSource.getWidth();
+        TilingExecutor.inBands(pSource.getHeight(), width * bands, new TilingExecutor.Band() {
+            public void run(final int pFrom, final int pTo) {
+                int[] samples = new int[width * bands];
+                int[] row = new int[width];
+                boolean gray = bands < 3;
+                boolean alpha = bands == 2 || bands == 4;
+
+                for (int y = pFrom; y < pTo; y++) {
+                    pSource.getPixels(pSource.getMinX(), pSource.getMinY() + y, width, 1, samples);
+
+                    for (int x = 0, i = 0; x < width; x++, i += bands) {
+                        int r = samples[i];
+                        int g = gray ? r : samples[i + 1];
+                        int b = gray ? r : samples[i + 2];
+                        int a = alpha ? samples[i + bands - 1] : 0xff;
+                        row[x] = a << 24 | r << 16 | g << 8 | b;
+                    }
+
+                    filterRGB(row, 0, width);
+
+                    for (int x = 0, i = 0; x < width; x++, i += bands) {
+                        int argb = row[x];
+                        samples[i] = argb >> 16 & 0xff;
+                        if (!gray) {
+                            samples[i + 1] = argb >> 8 & 0xff;
+                            samples[i + 2] = argb & 0xff;
+                        }
+                    }
+
+                    destination.setPixels(destination.getMinX(), destination.getMinY() + y, width, 1, samples);
+                }
+            }
+        });
+
+        return destination;
+    }
+
+    public BufferedImage createCompatibleDestImage(final BufferedImage pSource, final ColorModel pDestinationColorModel) {
+        if (pDestinationColorModel == null) {
+            ColorModel cm = pSource.getColorModel();
+            // NOTE: Creating the raster from the source keeps the sample layout, and thus the image type
+            return new BufferedImage(cm, pSource.getRaster().createCompatibleWritableRaster(), cm.isAlphaPremultiplied(), null);
+        }
+
+        return new BufferedImage(
+                pDestinationColorModel,
+                pDestinationColorModel.createCompatibleWritableRaster(pSource.getWidth(), pSource.getHeight()),
+                pDestinationColorModel.isAlphaPremultiplied(), null
+        );
+    }
+
+    public WritableRaster createCompatibleDestRaster(final Raster pSource) {
+        return pSource.createCompatibleWritableRaster();
+    }
+
+    public Rectangle2D getBounds2D(final BufferedImage pSource) {
+        return getBounds2D(pSource.getRaster());
+    }
+
+    public Rectangle2D getBounds2D(final Raster pSource) {
+        return pSource.getBounds();
+    }
+
+    public Point2D getPoint2D(final Point2D pSourcePoint, final Point2D pDestinationPoint) {
+        Point2D destination = pDestinationPoint != null ? pDestinationPoint : new Point2D.Double();
+        destination.setLocation(pSourcePoint);
+        return destination;
+    }
+
+    public RenderingHints getRenderingHints() {
+        return null;
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2008, Harald Kuhr
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name "TwelveMonkeys" nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.twelvemonkeys.image;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.IndexColorModel;
+
+/**
+ * Decides how large reductions are split into a cheap pre-reduction step and
+ * a final, high quality {@link ResampleOp} pass.
+ * <p/>
+ * The cost of a resampling filter grows with the reduction, as the filter
+ * support spans more source pixels per destination pixel. For large
+ * reductions, it is much cheaper (and gives practically the same result) to
+ * first reduce the image by an integer factor using an area average (box)
+ * filter, and then resample the much smaller image to the final size.
+ * <p/>
+ * A policy has two parameters:
+ * <ul>
+ *  <li>The <em>threshold</em>, the minimum reduction (source size divided by
+ *      destination size) along an axis, before the axis is pre-reduced.</li>
+ *  <li>The <em>headroom</em>, the reduction left for the final pass.
+ *      A larger headroom gives the final filter more source pixels to work
+ *      with, which means higher quality at a higher cost.</li>
+ * </ul>
+ * The integer factor used for an axis is {@code floor(reduction / headroom)},
+ * so the final pass always reduces by at least {@code headroom}.
+ * <p/>
+ * Readers that support subsampling may use
+ * {@link #getReductionFactor(int, int)} to decide the subsampling factor
+ * at decode time.
+ *
+ * @author <a href="mailto:harald.kuhr@gmail.com">Harald Kuhr</a>
+ * @author last modified by $Author: haku $
+ * @version $Id: ResamplePolicy.java,v 1.0 Oct 19, 2026 7:02:18 AM haraldk Exp$
+ *
+ * @see ImageUtil#createResampled(BufferedImage, int, int, int, ResamplePolicy)
+ * @see ImageUtil#createScaled(java.awt.Image, int, int, int, ResamplePolicy)
+ */
+public final class ResamplePolicy {
+    /**
+     * The default policy, pre-reduces axes reduced by a factor 4 or more,
+     * and leaves a reduction of 2 to 3 for the final pass.
+     */
+    public static final ResamplePolicy DEFAULT = new ResamplePolicy(4, 2);
+
+    /**
+     * A policy that never pre-reduces, the image is always resampled in a
+     * single pass.
+     */
+    public static final ResamplePolicy NONE = new ResamplePolicy(Double.POSITIVE_INFINITY, 1);
+
+    private final double mThreshold;
+    private final double mHeadroom;
+
+    /**
+     * Creates a {@code ResamplePolicy}.
+     *
+     * @param pThreshold the minimum reduction along an axis, for the axis to be pre-reduced
+     * @param pHeadroom the minimum reduction left for the final pass
+     *
+     * @throws IllegalArgumentException if {@code pHeadroom < 1}, or {@code pThreshold < pHeadroom}
+     */
+    public ResamplePolicy(final double pThreshold, final double pHeadroom) {
+        if (!(pHeadroom >= 1)) {
+            throw new IllegalArgumentException("headroom < 1: " + pHeadroom);
+        }
+        if (!(pThreshold >= pHeadroom)) {
+            throw new IllegalArgumentException("threshold < headroom: " + pThreshold);
+        }
+
+        mThreshold = pThreshold;
+        mHeadroom = pHeadroom;
+    }
+
+    public double getThreshold() {
+        return mThreshold;
+    }
+
+    public double getHeadroom() {
+        return mHeadroom;
+    }
+
+    /**
+     * Returns the integer factor an axis of the given length should be
+     * pre-reduced by, before it's resampled to the destination length.
+     *
+     * @param pSourceLength the source width or height
+     * @param pDestLength the destination width or height
+     * @return the reduction factor, {@code 1} means no pre-reduction
+     */
+    public int getReductionFactor(final int pSourceLength, final int pDestLength) {
+        if (pDestLength <= 0) {
+            throw new IllegalArgumentException("dest length <= 0: " + pDestLength);
+        }
+
+        double reduction = pSourceLength / (double) pDestLength;
+        if (reduction < mThreshold) {
+            return 1;
+        }
+
+        return Math.max(1, (int) (reduction / mHeadroom));
+    }
+
+    /**
+     * Pre-reduces the given image, according to this policy.
+     *
+     * @param pImage the image
+     * @param pWidth the final width
+     * @param pHeight the final height
+     * @param pFilterType the {@code ResampleOp} filter type of the final pass
+     * @return the reduced image, or {@code pImage} if no reduction is needed
+     */
+    BufferedImage reduce(final BufferedImage pImage, final int pWidth, final int pHeight, final int pFilterType) {
+        // Point sampling costs the same regardless of the reduction, and
+        // area averaging the indexes of an IndexColorModel makes no sense
+        if (pFilterType == ResampleOp.FILTER_POINT || pImage.getColorModel() instanceof IndexColorModel) {
+            return pImage;
+        }
+
+        int transferType = pImage.getRaster().getTransferType();
+        if (transferType == DataBuffer.TYPE_FLOAT || transferType == DataBuffer.TYPE_DOUBLE) {
+            return pImage;
+        }
+
+        int factorX = getReductionFactor(pImage.getWidth(), pWidth);
+        int factorY = getReductionFactor(pImage.getHeight(), pHeight);
+
+        if (factorX == 1 && factorY == 1) {
+            return pImage;
+        }
+
+        // NOTE: Round up, to keep at least the headroom for the final pass
+        int width = (pImage.getWidth() + factorX - 1) / factorX;
+        int height = (pImage.getHeight() + factorY - 1) / factorY;
+
+        return new AreaAverageOp(width, height).filter(pImage, null);
+    }
+
+    @Override
+    public boolean equals(final Object pOther) {
+        if (this == pOther) {
+            return true;
+        }
+        if (!(pOther instanceof ResamplePolicy)) {
+            return false;
+        }
+
+        ResamplePolicy other = (ResamplePolicy) pOther;
+        return Double.compare(mThreshold, other.mThreshold) == 0 && Double.compare(mHeadroom, other.mHeadroom) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        long bits = Double.doubleToLongBits(mThreshold) * 31 + Double.doubleToLongBits(mHeadroom);
+        return (int) (bits ^ (bits >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[threshold: " + mThreshold + ", headroom: " + mHeadroom + "]";
+    }
+}
@@ -0,0 +1,344 @@
+/*
+ * Copyright (c) 2008, Harald Kuhr
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name "TwelveMonkeys" nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.twelvemonkeys.image;
+
+import java.awt.Rectangle;
+import java.awt.image.Raster;
+import java.awt.image.RasterOp;
+import java.awt.image.WritableRaster;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Splits raster operations into row bands or tiles, and runs them in
+ * parallel on a shared, bounded pool of worker threads (one per processor).
+ * <p/>
+ * Work is only split if there is enough of it to be worth the overhead,
+ * and the calling thread always processes one of the bands itself.
+ * Calls made from a worker thread (ie. nested calls) are run in the calling
+ * thread, so the pool can never deadlock waiting for itself.
+ * <p/>
+ * Tiles may overlap the neighbouring tiles in the source, typically by the
+ * radius of a convolution kernel, so that each tile can be filtered
+ * independently, with a result identical to filtering the entire raster at
+ * once.
+ *
+ * @author <a href="mailto:harald.kuhr@gmail.com">Harald Kuhr</a>
+ * @author last modified by $Author: haku $
+ * @version $Id: TilingExecutor.java,v 1.0 Oct 19, 2026 9:05:33 AM haraldk Exp$
+ *
+ * @see ConvolveWithEdgeOp
+ * @see PixelizeOp
+ */
+public final class TilingExecutor {
+    /** Minimum number of samples in each band, for parallel processing to be worth the overhead */
+    static final int MIN_BAND_SAMPLES = 1 << 16;
+
+    private static final int PROCESSORS = Runtime.getRuntime().availableProcessors();
+
+    private static ExecutorService sExecutor;
+
+    private TilingExecutor() {
+    }
+
+    /**
+     * Runs the given band task, possibly splitting it into several bands run in parallel.
+     *
+     * @param pCount the number of rows (or columns, or any other item)
+     * @param pSamplesPerItem the approximate cost of each item, in samples
+     * @param pBand the task
+     *
+     * @throws ImageFilterException if interrupted while waiting for the bands to finish,
+     * thrown after the bands already running have finished (bands not yet started are skipped)
+     * @throws RuntimeException if a band throws an exception, after the bands already
+     * running have finished (bands not yet started are skipped)
+     */
+    public static void inBands(final int pCount, final int pSamplesPerItem, final Band pBand) {
+        int bands = Thread.currentThread() instanceof Worker
+                ? 1
+                : (int) Math.min(Math.min(PROCESSORS, pCount), (long) pCount * pSamplesPerItem / MIN_BAND_SAMPLES);
+
+        if (bands <= 1) {
+            pBand.run(0, pCount);
+            return;
+        }
+
+        ExecutorService executor = getExecutor();
+        List<Future<?>> futures = new ArrayList<Future<?>>(bands - 1);
+        final AtomicBoolean failed = new AtomicBoolean();
+
+        // Run the last band in the calling thread
+        for (int i = 0; i < bands - 1; i++) {
+            final int from = (int) ((long) pCount * i / bands);
+            final int to = (int) ((long) pCount * (i + 1) / bands);
+
+            futures.add(executor.submit(new Runnable() {
+                public void run() {
+                    if (!failed.get()) {
+                        pBand.run(from, to);
+                    }
+                }
+            }));
+        }
+
+        boolean completed = false;
+        try {
+            pBand.run((int) ((long) pCount * (bands - 1) / bands), pCount);
+            completed = true;
+        }
+        finally {
+            if (!completed) {
+                // Skip the bands not yet started, and let the running ones finish before the exception propagates
+                failed.set(true);
+                awaitQuietly(futures);
+            }
+        }
+
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            }
+            catch (InterruptedException e) {
+                // The bands may still write to the destination, let the running ones finish before returning
+                failed.set(true);
+                awaitQuietly(futures);
+                Thread.currentThread().interrupt();
+
+                throw new ImageFilterException("Interrupted while filtering", e);
+            }
+            catch (ExecutionException e) {
+                failed.set(true);
+                awaitQuietly(futures);
+
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+
+                throw new ImageFilterException(cause);
+            }
+        }
+    }
+
+    /**
+     * Waits for all the given futures to complete, ignoring their results and exceptions.
+     * If interrupted, keeps waiting, and restores the interrupted status before returning.
+     *
+     * @param pFutures the futures
+     */
+    private static void awaitQuietly(final List<Future<?>> pFutures) {
+        boolean interrupted = false;
+
+        for (Future<?> future : pFutures) {
+            while (true) {
+                try {
+                    future.get();
+                    break;
+                }
+                catch (InterruptedException e) {
+                    interrupted = true;
+                }
+                catch (ExecutionException ignore) {
+                    // Already failing, the first exception wins
+                    break;
+                }
+            }
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Splits the destination into tiles, and runs the given tile task for
+     * each tile, possibly in parallel.
+     * <p/>
+     * For each tile, the task is passed a child of the destination raster,
+     * and a child of the source raster covering the same area, grown by the
+     * given overlap on all sides (but never outside the source raster).
+     * Both children use the coordinate system of the destination raster,
+     * so the source child's bounds tell how much of the overlap is available.
+     *
+     * @param pSource the source raster
+     * @param pDestination the destination raster, same size as the source
+     * @param pTileWidth the tile width
+     * @param pTileHeight the tile height
+     * @param pOverlapX the horizontal overlap, typically the horizontal kernel radius
+     * @param pOverlapY the vertical overlap, typically the vertical kernel radius
+     * @param pTile the task
+     *
+     * @throws IllegalArgumentException if the rasters differ in size, or tile size or overlap is illegal
+     */
+    public static void inTiles(final Raster pSource, final WritableRaster pDestination,
+                               final int pTileWidth, final int pTileHeight, final int pOverlapX, final int pOverlapY,
+                               final Tile pTile) {
+        if (pSource.getWidth() != pDestination.getWidth() || pSource.getHeight() != pDestination.getHeight()) {
+            throw new IllegalArgumentException("Source and destination rasters must have same size");
+        }
+        if (pTileWidth <= 0 || pTileHeight <= 0) {
+            throw new IllegalArgumentException(String.format("Illegal tile size: %dx%d", pTileWidth, pTileHeight));
+        }
+        if (pOverlapX < 0 || pOverlapY < 0) {
+            throw new IllegalArgumentException(String.format("Illegal overlap: %d, %d", pOverlapX, pOverlapY));
+        }
+
+        final int width = pDestination.getWidth();
+        final int height = pDestination.getHeight();
+        final int columns = (width + pTileWidth - 1) / pTileWidth;
+        final int rows = (height + pTileHeight - 1) / pTileHeight;
+
+        final int dx = pDestination.getMinX();
+        final int dy = pDestination.getMinY();
+        final int sx = pSource.getMinX();
+        final int sy = pSource.getMinY();
+
+        int samplesPerTile = (pTileWidth + 2 * pOverlapX) * (pTileHeight + 2 * pOverlapY) * pSource.getNumBands();
+
+        inBands(columns * rows, samplesPerTile, new Band() {
+            public void run(final int pFrom, final int pTo) {
+                for (int i = pFrom; i < pTo; i++) {
+                    Rectangle tile = new Rectangle((i % columns) * pTileWidth, (i / columns) * pTileHeight, pTileWidth, pTileHeight);
+                    tile = tile.intersection(new Rectangle(width, height));
+
+                    Rectangle grown = new Rectangle(tile);
+                    grown.grow(pOverlapX, pOverlapY);
+                    grown = grown.intersection(new Rectangle(width, height));
+
+                    WritableRaster destination = pDestination.createWritableChild(
+                            dx + tile.x, dy + tile.y, tile.width, tile.height, dx + tile.x, dy + tile.y, null
+                    );
+                    Raster source = pSource.createChild(
+                            sx + grown.x, sy + grown.y, grown.width, grown.height, dx + grown.x, dy + grown.y, null
+                    );
+
+                    pTile.filter(source, destination);
+                }
+            }
+        });
+    }
+
+    /**
+     * Filters the source into the destination, using the given operation,
+     * one tile at a time, possibly in parallel.
+     * <p/>
+     * Each tile is filtered with its overlap into a temporary raster, and
+     * the part of the result inside the tile is copied to the destination.
+     * If the overlap is at least the radius of the operation (the distance
+     * from a destination pixel to the source pixels it depends on), and the
+     * operation does not depend on the raster position, the result is
+     * identical to filtering the entire raster at once.
+     * <p/>
+     * The operation must be thread safe.
+     *
+     * @param pOperation the operation
+     * @param pSource the source raster
+     * @param pDestination the destination raster, or {@code null}
+     * @param pOverlapX the horizontal radius of the operation
+     * @param pOverlapY the vertical radius of the operation
+     * @return the destination raster, or a new raster if {@code pDestination} is {@code null}
+     */
+    public static WritableRaster filter(final RasterOp pOperation, final Raster pSource, final WritableRaster pDestination,
+                                        final int pOverlapX, final int pOverlapY) {
+        WritableRaster destination = pDestination != null ? pDestination : pOperation.createCompatibleDestRaster(pSource);
+
+        int width = pSource.getWidth();
+        int height = pSource.getHeight();
+
+        // Full width bands of rows, enough for each processor to get a few
+        int tileHeight = Math.max(Math.max(1, 4 * pOverlapY), (height + 4 * PROCESSORS - 1) / (4 * PROCESSORS));
+
+        inTiles(pSource, destination, width, tileHeight, pOverlapX, pOverlapY, new Tile() {
+            public void filter(final Raster pSource, final WritableRaster pDestination) {
+                Raster source = pSource.createChild(
+                        pSource.getMinX(), pSource.getMinY(), pSource.getWidth(), pSource.getHeight(), 0, 0, null
+                );
+                WritableRaster result = pOperation.filter(source, null);
+
+                int x = pDestination.getMinX() - pSource.getMinX();
+                int y = pDestination.getMinY() - pSource.getMinY();
+                pDestination.setRect(
+                        pSource.getMinX(), pSource.getMinY(),
+                        result.createChild(x, y, pDestination.getWidth(), pDestination.getHeight(), x, y, null)
+                );
+            }
+        });
+
+        return destination;
+    }
+
+    private static synchronized ExecutorService getExecutor() {
+        if (sExecutor == null) {
+            sExecutor = Executors.newFixedThreadPool(PROCESSORS, new ThreadFactory() {
+                private final AtomicInteger mCount = new AtomicInteger();
+
+                public Thread newThread(final Runnable pRunnable) {
+                    return new Worker(pRunnable, "TilingExecutor-" + mCount.incrementAndGet());
+                }
+            });
+        }
+
+        return sExecutor;
+    }
+
+    /**
+     * A task processing the items (rows, columns or tiles) in the range {@code [pFrom, pTo)}.
+     */
+    public interface Band {
+        void run(int pFrom, int pTo);
+    }
+
+    /**
+     * A task filtering one tile.
+     */
+    public interface Tile {
+        /**
+         * @param pSource the source tile, including the available overlap
+         * @param pDestination the destination tile
+         */
+        void filter(Raster pSource, WritableRaster pDestination);
+    }
+
+    private static final class Worker extends Thread {
+        Worker(final Runnable pRunnable, final String pName) {
+            super(pRunnable, pName);
+            setDaemon(true);
+        }
+    }
+}
@@ -0,0 +1,405 @@
+/*
+ * Copyright (c) 2008, Harald Kuhr
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name "TwelveMonkeys" nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.twelvemonkeys.image;
+
+/**
+ * Xiaolin Wu's color quantizer.
+ * <p/>
+ * The color space is recursively split into boxes, always splitting the box
+ * with the largest variance, at the position that minimizes the sum of the
+ * variances of the two halves. This generally gives better quality palettes
+ * than median cut, especially for images with few, distinct colors.
+ * <p/>
+ * Based on "Efficient Statistical Computations for Optimal Color
+ * Quantization" by Xiaolin Wu, in "Graphics Gems Volume II".
+ *
+ * @author <a href="mailto:harald.kuhr@gmail.com">Harald Kuhr</a>
+ * @author Xiaolin Wu (original c version).
+ * @author last modified by $Author: haku $
+ * @version $Id: WuQuantizer.java,v 1.0 Oct 18, 2026 9:05:44 PM haraldk Exp$
+ */
+public class WuQuantizer extends ColorQuantizer {
+    // The moments are indexed [1...LEVELS], index 0 is always 0
+    private static final int SIZE = Histogram.LEVELS + 1;
+    private static final int BITS = Histogram.BITS;
+
+    private static final int RED = 0;
+    private static final int GREEN = 1;
+    private static final int BLUE = 2;
+
+    /**
+     * Box in moment space, bounds are (r0, r1], (g0, g1], (b0, b1].
+     */
+    private static final class Box {
+        int r0, r1, g0, g1, b0, b1;
+        int volume;
+    }
+
+    /**
+     * Cumulative moments of the histogram.
+     */
+    private static final class Moments {
+        final long[] weights = new long[SIZE * SIZE * SIZE];
+        final long[] reds = new long[SIZE * SIZE * SIZE];
+        final long[] greens = new long[SIZE * SIZE * SIZE];
+        final long[] blues = new long[SIZE * SIZE * SIZE];
+        final double[] squares = new double[SIZE * SIZE * SIZE];
+    }
+
+    // Reused between invocations, as the moments take up about 1.2 MB
+    private Moments mMoments;
+
+    protected int[] createPalette(final Histogram pHistogram, final int pMaxColors) {
+        if (mMoments == null) {
+            mMoments = new Moments();
+        }
+
+        Moments moments = computeMoments(pHistogram, mMoments);
+
+        Box[] boxes = new Box[pMaxColors];
+        double[] variances = new double[pMaxColors];
+
+        boxes[0] = new Box();
+        boxes[0].r1 = boxes[0].g1 = boxes[0].b1 = SIZE - 1;
+
+        int numberOfBoxes = pMaxColors;
+        int next = 0;
+
+        for (int i = 1; i < pMaxColors; i++) {
+            boxes[i] = new Box();
+
+            if (cut(moments, boxes[next], boxes[i])) {
+                // Volume test ensures we won't try to cut one-cell box
+                variances[next] = boxes[next].volume > 1 ? variance(moments, boxes[next]) : 0.0;
+                variances[i] = boxes[i].volume > 1 ? variance(moments, boxes[i]) : 0.0;
+            }
+            else {
+                // Don't try to split this box again
+                variances[next] = 0.0;
+                i--;
+            }
+
+            next = 0;
+            double temp = variances[0];
+            for (int k = 1; k <= i; k++) {
+                if (variances[k] > temp) {
+                    temp = variances[k];
+                    next = k;
+                }
+            }
+
+            if (temp <= 0.0) {
+                numberOfBoxes = i + 1;
+                break;
+            }
+        }
+
+        int[] palette = new int[numberOfBoxes];
+        int colors = 0;
+
+        for (int i = 0; i < numberOfBoxes; i++) {
+            long weight = volume(boxes[i], moments.weights);
+
+            if (weight > 0) {
+                int red = (int) ((volume(boxes[i], moments.reds) + weight / 2) / weight);
+                int green = (int) ((volume(boxes[i], moments.greens) + weight / 2) / weight);
+                int blue = (int) ((volume(boxes[i], moments.blues) + weight / 2) / weight);
+
+                palette[colors++] = red << 16 | green << 8 | blue;
+            }
+        }
+
+        if (colors < palette.length) {
+            int[] trimmed = new int[colors];
+            System.arraycopy(palette, 0, trimmed, 0, colors);
+            return trimmed;
+        }
+
+        return palette;
+    }
+
+    private static int index(final int pRed, final int pGreen, final int pBlue) {
+        return (pRed * SIZE + pGreen) * SIZE + pBlue;
+    }
+
+    /**
+     * Computes the cumulative moments of the histogram. All entries with
+     * non-zero indexes are overwritten, so the moments may be reused.
+     */
+    private static Moments computeMoments(final Histogram pHistogram, final Moments pMoments) {
+        long[] weights = pMoments.weights;
+        long[] reds = pMoments.reds;
+        long[] greens = pMoments.greens;
+        long[] blues = pMoments.blues;
+        double[] squares = pMoments.squares;
+
+        long[] area = new long[SIZE];
+        long[] areaRed = new long[SIZE];
+        long[] areaGreen = new long[SIZE];
+        long[] areaBlue = new long[SIZE];
+        double[] areaSquare = new double[SIZE];
+
+        for (int r = 1; r < SIZE; r++) {
+            for (int i = 0; i < SIZE; i++) {
+                area[i] = areaRed[i] = areaGreen[i] = areaBlue[i] = 0;
+                areaSquare[i] = 0.0;
+            }
+
+            for (int g = 1; g < SIZE; g++) {
+                long line = 0, lineRed = 0, lineGreen = 0, lineBlue = 0;
+                double lineSquare = 0.0;
+
+                for (int b = 1; b < SIZE; b++) {
+                    int bin = ((r - 1) << (BITS * 2)) | ((g - 1) << BITS) | (b - 1);
+
+                    line += pHistogram.mCounts[bin];
+                    lineRed += pHistogram.mRedSums[bin];
+                    lineGreen += pHistogram.mGreenSums[bin];
+                    lineBlue += pHistogram.mBlueSums[bin];
+                    lineSquare += pHistogram.mSquareSums[bin];
+
+                    area[b] += line;
+                    areaRed[b] += lineRed;
+                    areaGreen[b] += lineGreen;
+                    areaBlue[b] += lineBlue;
+                    areaSquare[b] += lineSquare;
+
+                    int index = index(r, g, b);
+                    int previous = index(r - 1, g, b);
+
+                    weights[index] = weights[previous] + area[b];
+                    reds[index] = reds[previous] + areaRed[b];
+                    greens[index] = greens[previous] + areaGreen[b];
+                    blues[index] = blues[previous] + areaBlue[b];
+                    squares[index] = squares[previous] + areaSquare[b];
+                }
+            }
+        }
+
+        return pMoments;
+    }
+
+    private static long volume(final Box pBox, final long[] pMoment) {
+        return pMoment[index(pBox.r1, pBox.g1, pBox.b1)]
+                - pMoment[index(pBox.r1, pBox.g1, pBox.b0)]
+                - pMoment[index(pBox.r1, pBox.g0, pBox.b1)]
+                + pMoment[index(pBox.r1, pBox.g0, pBox.b0)]
+                - pMoment[index(pBox.r0, pBox.g1, pBox.b1)]
+                + pMoment[index(pBox.r0, pBox.g1, pBox.b0)]
+                + pMoment[index(pBox.r0, pBox.g0, pBox.b1)]
+                - pMoment[index(pBox.r0, pBox.g0, pBox.b0)];
+    }
+
+    private static double volume(final Box pBox, final double[] pMoment) {
+        return pMoment[index(pBox.r1, pBox.g1, pBox.b1)]
+                - pMoment[index(pBox.r1, pBox.g1, pBox.b0)]
+                - pMoment[index(pBox.r1, pBox.g0, pBox.b1)]
+                + pMoment[index(pBox.r1, pBox.g0, pBox.b0)]
+                - pMoment[index(pBox.r0, pBox.g1, pBox.b1)]
+                + pMoment[index(pBox.r0, pBox.g1, pBox.b0)]
+                + pMoment[index(pBox.r0, pBox.g0, pBox.b1)]
+                - pMoment[index(pBox.r0, pBox.g0, pBox.b0)];
+    }
+
+    /**
+     * Computes the part of the volume that does not depend on the position
+     * of the cut along the given axis.
+     */
+    private static long bottom(final Box pBox, final int pAxis, final long[] pMoment) {
+        switch (pAxis) {
+            case RED:
+                return -pMoment[index(pBox.r0, pBox.g1, pBox.b1)]
+                        + pMoment[index(pBox.r0, pBox.g1, pBox.b0)]
+                        + pMoment[index(pBox.r0, pBox.g0, pBox.b1)]
+                        - pMoment[index(pBox.r0, pBox.g0, pBox.b0)];
+            case GREEN:
+                return -pMoment[index(pBox.r1, pBox.g0, pBox.b1)]
+                        + pMoment[index(pBox.r1, pBox.g0, pBox.b0)]
+                        + pMoment[index(pBox.r0, pBox.g0, pBox.b1)]
+                        - pMoment[index(pBox.r0, pBox.g0, pBox.b0)];
+            case BLUE:
+                return -pMoment[index(pBox.r1, pBox.g1, pBox.b0)]
+                        + pMoment[index(pBox.r1, pBox.g0, pBox.b0)]
+                        + pMoment[index(pBox.r0, pBox.g1, pBox.b0)]
+                        - pMoment[index(pBox.r0, pBox.g0, pBox.b0)];
+            default:
+                throw new IllegalArgumentException("axis: " + pAxis);
+        }
+    }
+
+    /**
+     * Computes the part of the volume that depends on the position of the
+     * cut along the given axis.
+     */
+    private static long top(final Box pBox, final int pAxis, final int pPosition, final long[] pMoment) {
+        switch (pAxis) {
+            case RED:
+                return pMoment[index(pPosition, pBox.g1, pBox.b1)]
+                        - pMoment[index(pPosition, pBox.g1, pBox.b0)]
+                        - pMoment[index(pPosition, pBox.g0, pBox.b1)]
+                        + pMoment[index(pPosition, pBox.g0, pBox.b0)];
+            case GREEN:
+                return pMoment[index(pBox.r1, pPosition, pBox.b1)]
+                        - pMoment[index(pBox.r1, pPosition, pBox.b0)]
+                        - pMoment[index(pBox.r0, pPosition, pBox.b1)]
+                        + pMoment[index(pBox.r0, pPosition, pBox.b0)];
+            case BLUE:
+                return pMoment[index(pBox.r1, pBox.g1, pPosition)]
+                        - pMoment[index(pBox.r1, pBox.g0, pPosition)]
+                        - pMoment[index(pBox.r0, pBox.g1, pPosition)]
+                        + pMoment[index(pBox.r0, pBox.g0, pPosition)];
+            default:
+                throw new IllegalArgumentException("axis: " + pAxis);
+        }
+    }
+
+    /**
+     * Computes the weighted variance of a box.
+     * NOTE: As with the raw statistics, this is really the variance times
+     * the pixel count.
+     */
+    private static double variance(final Moments pMoments, final Box pBox) {
+        double red = volume(pBox, pMoments.reds);
+        double green = volume(pBox, pMoments.greens);
+        double blue = volume(pBox, pMoments.blues);
+        double squares = volume(pBox, pMoments.squares);
+
+        return squares - (red * red + green * green + blue * blue) / volume(pBox, pMoments.weights);
+    }
+
+    /**
+     * Finds the cut position along the given axis, that minimizes the sum of
+     * the variances of the two halves (or rather, maximizes the sum of
+     * squared means, which is equivalent).
+     *
+     * @return the maximized value, the cut position is returned in
+     * {@code pCut[0]}, or {@code -1} if no cut is possible
+     */
+    private static double maximize(final Moments pMoments, final Box pBox, final int pAxis, final int pFirst, final int pLast,
+                                   final int[] pCut, final long pWholeRed, final long pWholeGreen, final long pWholeBlue, final long pWholeWeight) {
+        long baseRed = bottom(pBox, pAxis, pMoments.reds);
+        long baseGreen = bottom(pBox, pAxis, pMoments.greens);
+        long baseBlue = bottom(pBox, pAxis, pMoments.blues);
+        long baseWeight = bottom(pBox, pAxis, pMoments.weights);
+
+        double max = 0.0;
+        pCut[0] = -1;
+
+        for (int i = pFirst; i < pLast; i++) {
+            double halfRed = baseRed + top(pBox, pAxis, i, pMoments.reds);
+            double halfGreen = baseGreen + top(pBox, pAxis, i, pMoments.greens);
+            double halfBlue = baseBlue + top(pBox, pAxis, i, pMoments.blues);
+            long halfWeight = baseWeight + top(pBox, pAxis, i, pMoments.weights);
+
+            // Now half is sum over lower half of box, if split at i
+            if (halfWeight == 0) {
+                // Subbox could be empty of pixels, never split into an empty box
+                continue;
+            }
+
+            double temp = (halfRed * halfRed + halfGreen * halfGreen + halfBlue * halfBlue) / halfWeight;
+
+            halfRed = pWholeRed - halfRed;
+            halfGreen = pWholeGreen - halfGreen;
+            halfBlue = pWholeBlue - halfBlue;
+            halfWeight = pWholeWeight - halfWeight;
+
+            if (halfWeight == 0) {
+                // Subbox could be empty of pixels, never split into an empty box
+                continue;
+            }
+
+            temp += (halfRed * halfRed + halfGreen * halfGreen + halfBlue * halfBlue) / halfWeight;
+
+            if (temp > max) {
+                max = temp;
+                pCut[0] = i;
+            }
+        }
+
+        return max;
+    }
+
+    private static boolean cut(final Moments pMoments, final Box pFirst, final Box pSecond) {
+        long wholeRed = volume(pFirst, pMoments.reds);
+        long wholeGreen = volume(pFirst, pMoments.greens);
+        long wholeBlue = volume(pFirst, pMoments.blues);
+        long wholeWeight = volume(pFirst, pMoments.weights);
+
+        int[] cutRed = new int[1];
+        int[] cutGreen = new int[1];
+        int[] cutBlue = new int[1];
+
+        double maxRed = maximize(pMoments, pFirst, RED, pFirst.r0 + 1, pFirst.r1, cutRed, wholeRed, wholeGreen, wholeBlue, wholeWeight);
+        double maxGreen = maximize(pMoments, pFirst, GREEN, pFirst.g0 + 1, pFirst.g1, cutGreen, wholeRed, wholeGreen, wholeBlue, wholeWeight);
+        double maxBlue = maximize(pMoments, pFirst, BLUE, pFirst.b0 + 1, pFirst.b1, cutBlue, wholeRed, wholeGreen, wholeBlue, wholeWeight);
+
+        int axis;
+        if (maxRed >= maxGreen && maxRed >= maxBlue) {
+            axis = RED;
+
+            if (cutRed[0] < 0) {
+                // Can't split the box
+                return false;
+            }
+        }
+        else if (maxGreen >= maxRed && maxGreen >= maxBlue) {
+            axis = GREEN;
+        }
+        else {
+            axis = BLUE;
+        }
+
+        pSecond.r1 = pFirst.r1;
+        pSecond.g1 = pFirst.g1;
+        pSecond.b1 = pFirst.b1;
+
+        switch (axis) {
+            case RED:
+                pSecond.r0 = pFirst.r1 = cutRed[0];
+                pSecond.g0 = pFirst.g0;
+                pSecond.b0 = pFirst.b0;
+                break;
+            case GREEN:
+                pSecond.g0 = pFirst.g1 = cutGreen[0];
+                pSecond.r0 = pFirst.r0;
+                pSecond.b0 = pFirst.b0;
+                break;
+            case BLUE:
+                pSecond.b0 = pFirst.b1 = cutBlue[0];
+                pSecond.r0 = pFirst.r0;
+                pSecond.g0 = pFirst.g0;
+                break;
+        }
+
+        pFirst.volume = (pFirst.r1 - pFirst.r0) * (pFirst.g1 - pFirst.g0) * (pFirst.b1 - pFirst.b0);
+        pSecond.volume = (pSecond.r1 - pSecond.r0) * (pSecond.g1 - pSecond.g0) * (pSecond.b1 - pSecond.b0);
+
+        return true;
+    }
+}
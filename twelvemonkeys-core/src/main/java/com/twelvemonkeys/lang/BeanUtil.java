@@ -31,12 +31,17 @@ package com.twelvemonkeys.lang;
 import com.twelvemonkeys.util.convert.ConversionException;
 import com.twelvemonkeys.util.convert.Converter;
 
+import java.lang.ref.SoftReference;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
-import java.util.Map;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * A utility class with some useful bean-related functions.
@@ -51,10 +56,31 @@ import java.util.Arrays;
  */
 public final class BeanUtil {
 
+    /**
+     * The resolved accessors for each class.
+     * The values are softly referenced, as the methods refer strongly to their
+     * class (the key), and would otherwise prevent the class from being unloaded.
+     */
+    private static final Map<Class, SoftReference<ClassAccessors>> sAccessors = new WeakHashMap<Class, SoftReference<ClassAccessors>>();
+
     // Disallow creating objects of this type
     private BeanUtil() {
     }
 
+    private static ClassAccessors getAccessors(final Class pClass) {
+        synchronized (sAccessors) {
+            SoftReference<ClassAccessors> reference = sAccessors.get(pClass);
+            ClassAccessors accessors = reference != null ? reference.get() : null;
+
+            if (accessors == null) {
+                accessors = new ClassAccessors(pClass);
+                sAccessors.put(pClass, new SoftReference<ClassAccessors>(accessors));
+            }
+
+            return accessors;
+        }
+    }
+
     /**
      * Gets a property value from the given object, using reflection.
      * Now supports getting values from properties of properties
@@ -101,72 +127,16 @@ public final class BeanUtil {
                 begIdx = -1;
             }
 
-            // Check for "[" and "]"
-            Object[] param = null;
-            Class[] paramClass = new Class[0];
-
-            int begBracket;
-            if ((begBracket = subProp.indexOf("[")) > 0) {
-                // An error if there is no matching bracket
-                if (!subProp.endsWith("]")) {
-                    return null;
-                }
-
-                String between = subProp.substring(begBracket + 1,
-                                                   subProp.length() - 1);
-                subProp = subProp.substring(0, begBracket);
+            // Resolve the read method (and parameter) for the property, once per class
+            Getter getter = getAccessors(objClass).getGetter(subProp);
 
-                // If brackets exist, check type of argument between brackets
-                param = new Object[1];
-                paramClass = new Class[1];
-
-                //try {
-                // TODO: isNumber returns true, even if too big for integer...
-                if (StringUtil.isNumber(between)) {
-                    // We have a number
-                    // Integer -> array subscript -> getXXX(int i)
-                    try {
-                        // Insert param and it's Class
-                        param[0] = Integer.valueOf(between);
-                        paramClass[0] = Integer.TYPE; // int.class
-                    }
-                    catch (NumberFormatException e) {
-                        // ??
-                        // Probably too small or too large value..
-                    }
-                }
-                else {
-                    //catch (NumberFormatException e) {
-                    // Not a number... Try String
-                    // String -> Hashtable key -> getXXX(String str)
-                    // Insert param and it's Class
-                    param[0] = between.toLowerCase();
-                    paramClass[0] = String.class;
-                }
-            }
-
-            Method method;
-            String methodName = "get" + StringUtil.capitalize(subProp);
-            try {
-                // Try to get the "get" method for the given property
-                method = objClass.getMethod(methodName, paramClass);
-            }
-            catch (NoSuchMethodException e) {
-                System.err.print("No method named \"" + methodName + "()\"");
-                // The array might be of size 0...
-                if (paramClass != null && paramClass.length > 0) {
-                    System.err.print(" with the parameter "
-                            + paramClass[0].getName());
-                }
-
-                System.err.println(" in class " + objClass.getName() + "!");
+            // If no method found, give up
+            if (getter == null) {
                 return null;
             }
 
-            // If method for some reason should be null, give up
-            if (method == null) {
-                return null;
-            }
+            Method method = getter.mMethod;
+            Object[] param = getter.mParams;
 
             try {
                 // We have a method, try to invoke it
@@ -189,7 +159,7 @@ public final class BeanUtil {
             }
             catch (NullPointerException e) {
                 System.err.println(objClass.getName() + "." + method.getName()
-                        + "(" + ((paramClass != null && paramClass.length > 0) ? paramClass[0].getName() : "") + ")");
+                        + "(" + (method.getParameterTypes().length > 0 ? method.getParameterTypes()[0].getName() : "") + ")");
                 e.printStackTrace();
                 return null;
             }
@@ -248,93 +218,237 @@ public final class BeanUtil {
 
         // Find method
         Object[] params = {pValue};
-        Method method = getMethodMayModifyParams(obj, "set" + StringUtil.capitalize(property),
-                                                 new Class[] {paramType}, params);
+        Method method = getAccessors(obj.getClass()).getSetter("set" + StringUtil.capitalize(property), paramType)
+                .getMethodMayModifyParams(params);
 
         // Invoke it
         method.invoke(obj, params);
     }
 
-    private static Method getMethodMayModifyParams(Object pObject, String pName, Class[] pParams, Object[] pValues) throws NoSuchMethodException {
-        // NOTE: This method assumes pParams.length == 1 && pValues.length == 1
+    /**
+     * The resolved read and write methods of a class.
+     * Both found and missing methods are cached, keyed by the (sub) property
+     * expression for read methods, and by name and argument type for write methods.
+     */
+    private static final class ClassAccessors {
+        private static final Getter NO_GETTER = new Getter(null, null);
 
-        Method method = null;
-        Class paramType = pParams[0];
+        private final Class<?> mClass;
+        private final Map<String, Getter> mGetters = new ConcurrentHashMap<String, Getter>();
+        private final Map<String, Setter> mSetters = new ConcurrentHashMap<String, Setter>();
 
-        try {
-            method = pObject.getClass().getMethod(pName, pParams);
+        ClassAccessors(final Class<?> pClass) {
+            mClass = pClass;
         }
-        catch (NoSuchMethodException e) {
-            // No direct match
 
-            // 1: If primitive wrapper, try unwrap conversion first
-            /*if (paramType.isPrimitive()) { // NOTE: Can't be primitive type
-                params[0] = ReflectUtil.wrapType(paramType);
+        /**
+         * Gets the read method for a single property, like {@code "foo"},
+         * {@code "foo[2]"} or {@code "foo[bar]"}.
+         *
+         * @param pProperty the property
+         * @return the read method, or {@code null} if there is none
+         */
+        Getter getGetter(final String pProperty) {
+            Getter getter = mGetters.get(pProperty);
+
+            if (getter == null) {
+                getter = resolveGetter(pProperty);
+                mGetters.put(pProperty, getter != null ? getter : NO_GETTER);
+            }
+
+            return getter != NO_GETTER ? getter : null;
+        }
+
+        private Getter resolveGetter(final String pProperty) {
+            String subProp = pProperty;
+
+            // Check for "[" and "]"
+            Object[] param = null;
+            Class[] paramClass = new Class[0];
+
+            int begBracket;
+            if ((begBracket = subProp.indexOf("[")) > 0) {
+                // An error if there is no matching bracket
+                if (!subProp.endsWith("]")) {
+                    return null;
+                }
+
+                String between = subProp.substring(begBracket + 1,
+                                                   subProp.length() - 1);
+                subProp = subProp.substring(0, begBracket);
+
+                // If brackets exist, check type of argument between brackets
+                param = new Object[1];
+                paramClass = new Class[1];
+
+                // TODO: isNumber returns true, even if too big for integer...
+                if (StringUtil.isNumber(between)) {
+                    // We have a number
+                    // Integer -> array subscript -> getXXX(int i)
+                    try {
+                        // Insert param and it's Class
+                        param[0] = Integer.valueOf(between);
+                        paramClass[0] = Integer.TYPE; // int.class
+                    }
+                    catch (NumberFormatException e) {
+                        // Probably too small or too large value..
+                        return null;
+                    }
+                }
+                else {
+                    // Not a number... Try String
+                    // String -> Hashtable key -> getXXX(String str)
+                    // Insert param and it's Class
+                    param[0] = between.toLowerCase();
+                    paramClass[0] = String.class;
+                }
+            }
+
+            String methodName = "get" + StringUtil.capitalize(subProp);
+            try {
+                // Try to get the "get" method for the given property
+                return new Getter(mClass.getMethod(methodName, paramClass), param);
+            }
+            catch (NoSuchMethodException e) {
+                System.err.print("No method named \"" + methodName + "()\"");
+                // The array might be of size 0...
+                if (paramClass.length > 0) {
+                    System.err.print(" with the parameter "
+                            + paramClass[0].getName());
+                }
+
+                System.err.println(" in class " + mClass.getName() + "!");
+                return null;
             }
-            else*/ if (ReflectUtil.isPrimitiveWrapper(paramType)) {
-                pParams[0] = ReflectUtil.unwrapType(paramType);
+        }
+
+        /**
+         * Gets the write method(s) with the given name, for an argument of the given type.
+         *
+         * @param pName the method name
+         * @param pParamType the argument type
+         * @return the setter, never {@code null}
+         */
+        Setter getSetter(final String pName, final Class pParamType) {
+            String key = pName + "(" + pParamType.getName() + ")";
+            Setter setter = mSetters.get(key);
+
+            if (setter == null) {
+                setter = resolveSetter(pName, pParamType);
+                mSetters.put(key, setter);
             }
 
+            return setter;
+        }
+
+        private Setter resolveSetter(final String pName, final Class pParamType) {
+            Class paramType = pParamType;
+
             try {
-                // If this does not throw an excption, it works
-                method = pObject.getClass().getMethod(pName, pParams);
+                return new Setter(mClass.getMethod(pName, paramType));
             }
-            catch (Throwable t) {
-                // Ignore
+            catch (NoSuchMethodException e) {
+                // No direct match
             }
 
-            // 2: Try any supertypes of paramType, to see if we have a match
-            if (method == null) {
-                while ((paramType = paramType.getSuperclass()) != null) {
-                    pParams[0] = paramType;
-                    try {
-                        // If this does not throw an excption, it works
-                        method = pObject.getClass().getMethod(pName, pParams);
-                    }
-                    catch (Throwable t) {
-                        // Ignore/Continue
-                        continue;
-                    }
+            // 1: If primitive wrapper, try unwrap conversion first
+            if (ReflectUtil.isPrimitiveWrapper(paramType)) {
+                try {
+                    return new Setter(mClass.getMethod(pName, ReflectUtil.unwrapType(paramType)));
+                }
+                catch (NoSuchMethodException ignore) {
+                    // Ignore
+                }
+            }
 
-                    break;
+            // 2: Try any supertypes of paramType, to see if we have a match
+            while ((paramType = paramType.getSuperclass()) != null) {
+                try {
+                    return new Setter(mClass.getMethod(pName, paramType));
+                }
+                catch (NoSuchMethodException ignore) {
+                    // Ignore/Continue
                 }
             }
 
-            // 3: Try to find a different method with the same name, that has
-            // a parameter type we can convert to...
+            // 3: Find the methods with the same name, that has a parameter type
+            // we might be able to convert to. As this depends on the value, the
+            // conversion is tried for each invocation.
             // NOTE: There's no ordering here..
             // TODO: Should we try to do that? What would the ordering be?
-            if (method == null) {
-                Method[] methods = pObject.getClass().getMethods();
-                for (Method candidate : methods) {
-                    if (Modifier.isPublic(candidate.getModifiers())
-                            && candidate.getName().equals(pName)
-                            && candidate.getReturnType() == Void.TYPE
-                            && candidate.getParameterTypes().length == 1) {
-                        // NOTE: Assumes paramTypes.length == 1
-
-                        Class type = candidate.getParameterTypes()[0];
-
-                        try {
-                            pValues[0] = convertValueToType(pValues[0], type);
-                        }
-                        catch (Throwable t) {
-                            continue;
-                        }
-
-                        // We were able to convert the parameter, let's try
-                        method = candidate;
-                        break;
-                    }
+            List<Method> candidates = new ArrayList<Method>();
+            for (Method candidate : mClass.getMethods()) {
+                if (Modifier.isPublic(candidate.getModifiers())
+                        && candidate.getName().equals(pName)
+                        && candidate.getReturnType() == Void.TYPE
+                        && candidate.getParameterTypes().length == 1) {
+                    candidates.add(candidate);
                 }
             }
 
-            // Give up...
-            if (method == null) {
-                throw e;
+            return new Setter(mClass.getName() + "." + pName + "(" + pParamType.getName() + ")",
+                              candidates.toArray(new Method[candidates.size()]));
+        }
+    }
+
+    /**
+     * A resolved read method, with its (constant) parameters.
+     */
+    private static final class Getter {
+        final Method mMethod;
+        final Object[] mParams;
+
+        Getter(final Method pMethod, final Object[] pParams) {
+            mMethod = pMethod;
+            mParams = pParams;
+        }
+    }
+
+    /**
+     * A resolved write method, or a list of candidate methods if the
+     * argument must be converted.
+     */
+    private static final class Setter {
+        private final Method mMethod;
+        private final String mSignature;
+        private final Method[] mCandidates;
+
+        Setter(final Method pMethod) {
+            mMethod = pMethod;
+            mSignature = null;
+            mCandidates = null;
+        }
+
+        Setter(final String pSignature, final Method[] pCandidates) {
+            mMethod = null;
+            mSignature = pSignature;
+            mCandidates = pCandidates;
+        }
+
+        Method getMethodMayModifyParams(final Object[] pValues) throws NoSuchMethodException {
+            // NOTE: This method assumes pValues.length == 1
+            if (mMethod != null) {
+                return mMethod;
+            }
+
+            for (Method candidate : mCandidates) {
+                // NOTE: Assumes paramTypes.length == 1
+                Class type = candidate.getParameterTypes()[0];
+
+                try {
+                    pValues[0] = convertValueToType(pValues[0], type);
+                }
+                catch (Throwable t) {
+                    continue;
+                }
+
+                // We were able to convert the parameter, let's try
+                return candidate;
             }
+
+            // Give up...
+            throw new NoSuchMethodException(mSignature);
         }
-        return method;
     }
 
     private static Object convertValueToType(Object pValue, Class pType) throws ConversionException {
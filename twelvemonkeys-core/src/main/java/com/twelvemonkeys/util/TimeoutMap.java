@@ -28,6 +28,8 @@
 
 package com.twelvemonkeys.util;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.*;
 
@@ -47,16 +49,20 @@ import java.util.*;
  *      and {@code Iterator.next()} or {@code Iterator.remove()},
  *      when iterating the collection views).</li>
  * </ul>
+ * <P/>
+ * As all mappings have the same time to live, the mappings are kept in a
+ * linked list in expiry order (the order they were last put), in addition to
+ * the backing map. Removing expired mappings only need to look at the head
+ * of this list, and takes time proportional to the number of expired
+ * mappings, not the number of mappings in the map.
  *
  * @author <a href="mailto:harald.kuhr@gmail.com">Harald Kuhr</a>
  * @version $Id: //depot/branches/personal/haraldk/twelvemonkeys/release-2/twelvemonkeys-core/src/main/java/com/twelvemonkeys/util/TimeoutMap.java#2 $
  *
- * @todo Consider have this Map extend LinkedMap.. That way the removeExpired
- * method only have to run from the first element, until it finds an element
- * that should not expire, as elements are in insertion order.
- * and next expiry time would be the time of the first element.
  * @todo Consider running the removeExpiredEntries method in a separate (deamon) thread
  * @todo - or document why it is not such a good idea.
+ *       (Put/remove is not synchronized, so a sweeper thread would race with
+ *       clients, and lazy expiry is now cheap)
  */
 public class TimeoutMap<K, V> extends AbstractDecoratedMap<K, V> implements ExpiringMap<K, V>, Serializable, Cloneable {
     /**
@@ -65,9 +71,15 @@ public class TimeoutMap<K, V> extends AbstractDecoratedMap<K, V> implements Expi
     protected long mExpiryTime = 60000L;  // 1 minute
 
     //////////////////////
-    private volatile long mNextExpiryTime;
+    private transient volatile long mNextExpiryTime;
     //////////////////////
 
+    /**
+     * Sentinel of the list of entries, in expiry order.
+     * Not serialized, the list is rebuilt from the entry timestamps.
+     */
+    transient TimedEntry<K, V> mHead;
+
     /**
      * Creates a {@code TimeoutMap} with the default expiry time of 1 minute.
      * This {@code TimeoutMap} will be backed by a new {@code HashMap} instance.
@@ -211,6 +223,7 @@ public class TimeoutMap<K, V> extends AbstractDecoratedMap<K, V> implements Expi
         else if (entry.isExpired()) {
             //noinspection SuspiciousMethodCalls
             mEntries.remove(pKey);
+            entry.unlink();
             processRemoved(entry);
             return null;
         }
@@ -240,10 +253,11 @@ public class TimeoutMap<K, V> extends AbstractDecoratedMap<K, V> implements Expi
             entry = createEntry(pKey, pValue);
 
             mEntries.put(pKey, entry);
+            entry.link();
         }
         else {
             oldValue = entry.mValue;
-            entry.setValue(pValue);
+            entry.setValue(pValue); // Moves entry to end of expiry list
             entry.recordAccess(this);
         }
 
@@ -268,7 +282,12 @@ public class TimeoutMap<K, V> extends AbstractDecoratedMap<K, V> implements Expi
      */
     public V remove(Object pKey) {
         TimedEntry<K, V> entry = (TimedEntry<K, V>) mEntries.remove(pKey);
-        return (entry != null) ? entry.getValue() : null;
+        if (entry == null) {
+            return null;
+        }
+
+        entry.unlink();
+        return entry.getValue();
     }
 
     /**
@@ -279,6 +298,12 @@ public class TimeoutMap<K, V> extends AbstractDecoratedMap<K, V> implements Expi
         init();
     }
 
+    protected void init() {
+        mHead = new TimedEntry<K, V>(null, null);
+        mHead.mPrevious = mHead.mNext = mHead;
+        mNextExpiryTime = Long.MAX_VALUE;
+    }
+
     /*protected*/ TimedEntry<K, V> createEntry(K pKey, V pValue) {
         return new TimedEntry<K, V>(pKey, pValue);
     }
@@ -297,6 +322,8 @@ public class TimeoutMap<K, V> extends AbstractDecoratedMap<K, V> implements Expi
 
     /**
      * Okay, I guess this do resemble DCL...
+     * Only visits the expired entries, and the first non-expired entry, as
+     * the entries are linked in expiry order.
      *
      * @todo Write some exhausting multi-threaded unit-tests.
      *
@@ -304,20 +331,19 @@ public class TimeoutMap<K, V> extends AbstractDecoratedMap<K, V> implements Expi
      */
     private synchronized void removeExpiredEntriesSynced(long pTime) {
         if (pTime > mNextExpiryTime) {
-            ////
-            long next = Long.MAX_VALUE;
-            mNextExpiryTime = next; // Avoid multiple runs...
-            for (Iterator<Entry<K, V>> iterator = new EntryIterator(); iterator.hasNext();) {
-                TimedEntry<K, V> entry = (TimedEntry<K, V>) iterator.next();
-                ////
-                long expires = entry.expires();
-                if (expires < next) {
-                    next = expires;
-                }
-                ////
+            TimedEntry<K, V> entry = mHead.mNext;
+
+            while (entry != mHead && entry.isExpiredBy(pTime)) {
+                TimedEntry<K, V> next = entry.mNext;
+
+                mEntries.remove(entry.mKey);
+                entry.unlink();
+                processRemoved(entry);
+
+                entry = next;
             }
-            ////
-            mNextExpiryTime = next;
+
+            mNextExpiryTime = entry != mHead ? entry.expires() : Long.MAX_VALUE;
         }
     }
 
@@ -352,17 +378,58 @@ public class TimeoutMap<K, V> extends AbstractDecoratedMap<K, V> implements Expi
     public void processRemoved(Entry pRemoved) {
     }
 
+    /**
+     * Relinks the deserialized entries in expiry order.
+     * <p/>
+     * The expiry list is transient, so that serializing a large map does not
+     * walk the list recursively. Each entry is serialized (by the backing map)
+     * as its key, value and timestamp only.
+     *
+     * @param pInput the stream to read from
+     * @throws IOException if an I/O error occurs
+     * @throws ClassNotFoundException if the class of a serialized object could not be found
+     */
+    private void readObject(final ObjectInputStream pInput) throws IOException, ClassNotFoundException {
+        pInput.defaultReadObject();
+
+        init();
+
+        List<TimedEntry<K, V>> entries = new ArrayList<TimedEntry<K, V>>(mEntries.size());
+        for (Entry<K, V> entry : mEntries.values()) {
+            entries.add((TimedEntry<K, V>) entry);
+        }
+
+        Collections.sort(entries, new Comparator<TimedEntry<K, V>>() {
+            public int compare(final TimedEntry<K, V> pLeft, final TimedEntry<K, V> pRight) {
+                return pLeft.mTimestamp < pRight.mTimestamp ? -1 : pLeft.mTimestamp == pRight.mTimestamp ? 0 : 1;
+            }
+        });
+
+        for (TimedEntry<K, V> entry : entries) {
+            entry.link();
+        }
+    }
+
     /**
      * Note: Iterating through this iterator will remove any expired values.
      */
     private abstract class TimeoutMapIterator<E> implements Iterator<E> {
         Iterator<Entry<K, Entry<K, V>>> mIterator = mEntries.entrySet().iterator();
-        BasicEntry<K, V> mNext;
+        TimedEntry<K, V> mNext;
+        TimedEntry<K, V> mLastReturned;
         long mNow = System.currentTimeMillis();
 
         public void remove() {
+            // NOTE: If hasNext() was invoked after next(), the backing iterator has moved on to mNext
+            TimedEntry<K, V> removed = mNext != null ? mNext : mLastReturned;
+
             mNext = null; // advance
             mIterator.remove();
+
+            if (removed != null) {
+                removed.unlink();
+            }
+            mLastReturned = null;
         }
 
         public boolean hasNext() {
@@ -377,6 +444,7 @@ public class TimeoutMap<K, V> extends AbstractDecoratedMap<K, V> implements Expi
                 if (timed.isExpiredBy(mNow)) {
                     // Remove from map, and continue
                     mIterator.remove();
+                    timed.unlink();
                     processRemoved(timed);
                 }
                 else {
@@ -394,7 +462,8 @@ public class TimeoutMap<K, V> extends AbstractDecoratedMap<K, V> implements Expi
                 throw new NoSuchElementException();
             }
 
-            BasicEntry<K, V> entry = mNext;
+            TimedEntry<K, V> entry = mNext;
+            mLastReturned = entry;
             mNext = null; // advance
             return entry;
         }
@@ -419,11 +488,14 @@ public class TimeoutMap<K, V> extends AbstractDecoratedMap<K, V> implements Expi
     }
 
     /**
-     * Keeps track of timed objects
+     * Keeps track of timed objects, linked in expiry order
      */
     private class TimedEntry<K, V> extends BasicEntry<K, V> {
         private long mTimestamp;
 
+        transient TimedEntry<K, V> mPrevious;
+        transient TimedEntry<K, V> mNext;
+
         TimedEntry(K pKey, V pValue) {
             super(pKey, pValue);
             mTimestamp = System.currentTimeMillis();
@@ -431,9 +503,45 @@ public class TimeoutMap<K, V> extends AbstractDecoratedMap<K, V> implements Expi
 
         public V setValue(V pValue) {
             mTimestamp = System.currentTimeMillis();
+
+            // Now expires last, move to end of list (unless removed from map)
+            if (mNext != null) {
+                unlink();
+                link();
+            }
+
             return super.setValue(pValue);
         }
 
+        /**
+         * Adds this entry to the end of the expiry list.
+         */
+        @SuppressWarnings({"unchecked"})
+        final void link() {
+            TimedEntry<K, V> head = (TimedEntry<K, V>) mHead;
+
+            mNext = head;
+            mPrevious = head.mPrevious;
+            mPrevious.mNext = this;
+            mNext.mPrevious = this;
+
+            if (mPrevious == head && expires() < mNextExpiryTime) {
+                // First entry, no need to look for expired entries before this one expires
+                mNextExpiryTime = expires();
+            }
+        }
+
+        /**
+         * Removes this entry from the expiry list.
+         */
+        final void unlink() {
+            if (mNext != null) {
+                mPrevious.mNext = mNext;
+                mNext.mPrevious = mPrevious;
+                mPrevious = mNext = null;
+            }
+        }
+
         final boolean isExpired() {
             return isExpiredBy(System.currentTimeMillis());
         }
@@ -33,6 +33,7 @@ import com.twelvemonkeys.util.Time;
 import java.util.Date;
 import java.util.Hashtable;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * The converter (singleton). Converts strings to objects and back. 
@@ -64,6 +65,16 @@ public abstract class Converter implements PropertyConverter {
     /** The conveters Map */
     protected Map mConverters = new Hashtable();
 
+    /** Memoizes that no converter was found for a type */
+    private static final PropertyConverter NO_CONVERTER = new DefaultConverter();
+
+    /**
+     * The converters resolved for a given type, including the converters
+     * found for a supertype. Read without locking, and replaced by an empty
+     * map whenever a converter is (un)registered.
+     */
+    private volatile Map<Class, PropertyConverter> mResolvedConverters = new ConcurrentHashMap<Class, PropertyConverter>();
+
     // Register our predefined converters
     static {
         PropertyConverter defaultConverter = new DefaultConverter();
@@ -115,7 +126,10 @@ public abstract class Converter implements PropertyConverter {
      * @see #unregisterConverter(Class)
      */
     public static void registerConverter(Class pType, PropertyConverter pConverter) {
-        getInstance().mConverters.put(pType, pConverter);
+        Converter instance = getInstance();
+
+        instance.mConverters.put(pType, pConverter);
+        instance.mResolvedConverters = new ConcurrentHashMap<Class, PropertyConverter>();
     }
 
     /**
@@ -128,7 +142,48 @@ public abstract class Converter implements PropertyConverter {
      * @see #registerConverter(Class,PropertyConverter)
      */
     public static void unregisterConverter(Class pType) {
-        getInstance().mConverters.remove(pType);
+        Converter instance = getInstance();
+
+        instance.mConverters.remove(pType);
+        instance.mResolvedConverters = new ConcurrentHashMap<Class, PropertyConverter>();
+    }
+
+    /**
+     * Gets the converter registered for the given type, or its closest
+     * supertype with a registered converter.
+     *
+     * @param pType the type to convert to
+     * @return an instance of a {@code PropertyConverter} or {@code null}
+     */
+    final PropertyConverter resolveConverter(Class pType) {
+        // NOTE: The map is read before the converters, so a converter resolved
+        // before an (un)register, is only memoized in the discarded map
+        Map<Class, PropertyConverter> resolvedConverters = mResolvedConverters;
+
+        PropertyConverter resolved = resolvedConverters.get(pType);
+        if (resolved == null) {
+            resolved = resolveConverterImpl(pType);
+            resolvedConverters.put(pType, resolved != null ? resolved : NO_CONVERTER);
+        }
+
+        return resolved != NO_CONVERTER ? resolved : null;
+    }
+
+    private PropertyConverter resolveConverterImpl(Class pType) {
+        Class cl = pType;
+
+        // Loop until we find a suitable converter
+        do {
+            PropertyConverter converter = (PropertyConverter) mConverters.get(cl);
+
+            if (converter != null) {
+                return converter;
+            }
+        }
+        while ((cl = cl.getSuperclass()) != null);
+
+        // No converter found, return null
+        return null;
     }
     
     /**
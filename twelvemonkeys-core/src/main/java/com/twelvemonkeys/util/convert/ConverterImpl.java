@@ -53,21 +53,7 @@ class ConverterImpl extends Converter {
      * @return an instance of a {@code PropertyConverter} or {@code null}
      */
     private PropertyConverter getConverterForType(Class pType) {
-        Object converter;
-        Class cl = pType;
-
-        // Loop until we find a suitable converter
-        do {
-            // Have a match, return converter
-            if ((converter = getInstance().mConverters.get(cl)) != null) {
-                return (PropertyConverter) converter;
-            }
-
-        }
-        while ((cl = cl.getSuperclass()) != null);
-
-        // No converter found, return null
-        return null;
+        return getInstance().resolveConverter(pType);
     }
 
     /**
@@ -0,0 +1,152 @@
+package com.twelvemonkeys.image;
+
+import junit.framework.TestCase;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+
+/**
+ * AreaAverageOpTestCase
+ *
+ * @author <a href="mailto:harald.kuhr@gmail.com">Harald Kuhr</a>
+ * @author last modified by $Author: haku $
+ * @version $Id: AreaAverageOpTestCase.java,v 1.0 Oct 19, 2026 6:12:40 AM haraldk Exp$
+ */
+public class AreaAverageOpTestCase extends TestCase {
+    private static final int[] TYPES = {
+            BufferedImage.TYPE_INT_RGB,
+            BufferedImage.TYPE_INT_ARGB,
+            BufferedImage.TYPE_INT_BGR,
+            BufferedImage.TYPE_3BYTE_BGR,
+            BufferedImage.TYPE_4BYTE_ABGR,
+            BufferedImage.TYPE_BYTE_GRAY,
+            BufferedImage.TYPE_USHORT_GRAY,
+            BufferedImage.TYPE_USHORT_565_RGB,
+    };
+
+    public void testFilterBlocks() {
+        BufferedImage image = new BufferedImage(8, 6, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < 6; y++) {
+            for (int x = 0; x < 8; x++) {
+                image.setRGB(x, y, x < 4 ? (y < 3 ? 0x000000 : 0xff0000) : (y < 3 ? 0x00ff00 : (x + y) % 2 == 0 ? 0xffffff : 0));
+            }
+        }
+
+        BufferedImage result = new AreaAverageOp(2, 2).filter(image, null);
+
+        assertEquals(BufferedImage.TYPE_INT_RGB, result.getType());
+        assertEquals(2, result.getWidth());
+        assertEquals(2, result.getHeight());
+        assertEquals(0x000000, result.getRGB(0, 0) & 0xffffff);
+        assertEquals(0x00ff00, result.getRGB(1, 0) & 0xffffff);
+        assertEquals(0xff0000, result.getRGB(0, 1) & 0xffffff);
+        assertEquals(0x808080, result.getRGB(1, 1) & 0xffffff);
+    }
+
+    public void testFilterTypes() {
+        for (int type : TYPES) {
+            BufferedImage image = ImageTestUtil.createRandomImage(type, 97, 53);
+            BufferedImage result = new AreaAverageOp(10, 7).filter(image, null);
+
+            assertEquals(type, result.getType());
+            assertAreaAverage(image.getRaster(), result.getRaster());
+        }
+    }
+
+    public void testFilterUpscale() {
+        BufferedImage image = ImageTestUtil.createRandomImage(BufferedImage.TYPE_3BYTE_BGR, 3, 2);
+        BufferedImage result = new AreaAverageOp(6, 4).filter(image, null);
+
+        for (int y = 0; y < 4; y++) {
+            for (int x = 0; x < 6; x++) {
+                assertEquals(image.getRGB(x / 2, y / 2), result.getRGB(x, y));
+            }
+        }
+    }
+
+    public void testFilterRasterLarge() {
+        // Large enough to be filtered in parallel bands
+        BufferedImage image = ImageTestUtil.createRandomImage(BufferedImage.TYPE_4BYTE_ABGR, 1033, 761);
+        WritableRaster result = new AreaAverageOp(41, 29).filter(image.getRaster(), null);
+
+        assertEquals(41, result.getWidth());
+        assertEquals(29, result.getHeight());
+        assertAreaAverage(image.getRaster(), result);
+    }
+
+    public void testFilterSourceRegion() {
+        for (int type : TYPES) {
+            BufferedImage image = ImageTestUtil.createRandomImage(type, 97, 53);
+
+            AreaAverageOp op = new AreaAverageOp(11, 5);
+            op.setSourceRegion(new Rectangle(13, 7, 61, 31));
+            BufferedImage result = op.filter(image, null);
+
+            BufferedImage expected = new AreaAverageOp(11, 5).filter(image.getSubimage(13, 7, 61, 31), null);
+            ImageTestUtil.assertEqualRasters(expected.getRaster(), result.getRaster());
+            assertAreaAverage(image.getRaster().createChild(13, 7, 61, 31, 0, 0, null), result.getRaster());
+        }
+    }
+
+    public void testFilterSubimage() {
+        for (int type : TYPES) {
+            BufferedImage image = ImageTestUtil.createRandomImage(type, 97, 53).getSubimage(5, 3, 80, 40);
+            BufferedImage destination = ImageTestUtil.createRandomImage(type, 20, 10).getSubimage(3, 2, 12, 7);
+
+            assertSame(destination, new AreaAverageOp(12, 7).filter(image, destination));
+            assertAreaAverage(image.getRaster(), destination.getRaster());
+        }
+    }
+
+    public void testFilterInPlace() {
+        BufferedImage image = ImageTestUtil.createRandomImage(BufferedImage.TYPE_INT_ARGB, 40, 30);
+        Raster copy = image.copyData(null);
+
+        new AreaAverageOp(20, 15).filter(image, image);
+
+        assertAreaAverage(copy, image.getRaster().createChild(0, 0, 20, 15, 0, 0, null));
+    }
+
+    public void testFilterBandsDiffer() {
+        BufferedImage image = ImageTestUtil.createRandomImage(BufferedImage.TYPE_INT_ARGB, 40, 30);
+
+        try {
+            new AreaAverageOp(20, 15).filter(image.getRaster(), new BufferedImage(20, 15, BufferedImage.TYPE_BYTE_GRAY).getRaster());
+            fail("Expected IllegalArgumentException");
+        }
+        catch (IllegalArgumentException expected) {
+        }
+    }
+
+    /**
+     * Asserts that each destination sample is the (rounded) average of the source samples covered by the
+     * destination pixel, weighted by the covered area.
+     */
+    private static void assertAreaAverage(final Raster pSource, final Raster pResult) {
+        double scaleX = pSource.getWidth() / (double) pResult.getWidth();
+        double scaleY = pSource.getHeight() / (double) pResult.getHeight();
+
+        for (int y = 0; y < pResult.getHeight(); y++) {
+            for (int x = 0; x < pResult.getWidth(); x++) {
+                for (int b = 0; b < pResult.getNumBands(); b++) {
+                    double sum = 0;
+
+                    for (int sy = (int) (y * scaleY); sy < Math.min(pSource.getHeight(), Math.ceil((y + 1) * scaleY)); sy++) {
+                        double weightY = Math.min((y + 1) * scaleY, sy + 1) - Math.max(y * scaleY, sy);
+
+                        for (int sx = (int) (x * scaleX); sx < Math.min(pSource.getWidth(), Math.ceil((x + 1) * scaleX)); sx++) {
+                            double weightX = Math.min((x + 1) * scaleX, sx + 1) - Math.max(x * scaleX, sx);
+                            sum += pSource.getSample(pSource.getMinX() + sx, pSource.getMinY() + sy, b) * weightX * weightY;
+                        }
+                    }
+
+                    int expected = (int) Math.round(sum / (scaleX * scaleY));
+                    int actual = pResult.getSample(pResult.getMinX() + x, pResult.getMinY() + y, b);
+                    assertTrue(String.format("[%d, %d, %d] expected: %d, actual: %d", x, y, b, expected, actual), Math.abs(expected - actual) <= 1);
+                }
+            }
+        }
+    }
+}
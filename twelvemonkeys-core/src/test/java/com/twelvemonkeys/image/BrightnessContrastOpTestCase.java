@@ -0,0 +1,88 @@
+package com.twelvemonkeys.image;
+
+import junit.framework.TestCase;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.awt.image.WritableRaster;
+
+/**
+ * BrightnessContrastOpTestCase
+ *
+ * @author <a href="mailto:harald.kuhr@gmail.com">Harald Kuhr</a>
+ * @author last modified by $Author: haku $
+ * @version $Id: BrightnessContrastOpTestCase.java,v 1.0 Oct 19, 2026 5:34:52 AM haraldk Exp$
+ */
+public class BrightnessContrastOpTestCase extends TestCase {
+    public void testSameAsFilter() {
+        float[][] values = {{0f, 0.3f}, {0.4f, 0f}, {-0.9f, 0f}, {2f, 0f}, {0f, 1f}, {0f, -0.5f}, {0.3f, 0.3f}};
+
+        for (float[] value : values) {
+            ImageTestUtil.assertSameAsFilter(new BrightnessContrastOp(value[0], value[1]), new BrightnessContrastFilter(value[0], value[1]));
+        }
+    }
+
+    public void testFilterLargeImage() {
+        // Large enough to be filtered in bands, in parallel
+        BufferedImage image = ImageTestUtil.createRandomImage(BufferedImage.TYPE_INT_ARGB, 1024, 512);
+        ImageTestUtil.assertSameAsFilter(image, new BrightnessContrastOp(), new BrightnessContrastFilter());
+    }
+
+    public void testFilterInPlace() {
+        BufferedImage image = ImageTestUtil.createRandomImage(BufferedImage.TYPE_3BYTE_BGR, 31, 17);
+        BufferedImage expected = new BrightnessContrastOp().filter(image, null);
+
+        assertSame(image, new BrightnessContrastOp().filter(image, image));
+        ImageTestUtil.assertEqualPixels(expected, image);
+    }
+
+    public void testFilterSubimage() {
+        BufferedImage image = ImageTestUtil.createRandomImage(BufferedImage.TYPE_INT_RGB, 40, 40);
+        BufferedImage subimage = image.getSubimage(5, 7, 20, 11);
+
+        ImageTestUtil.assertSameAsFilter(subimage, new BrightnessContrastOp(), new BrightnessContrastFilter());
+    }
+
+    public void testFilterToOtherType() {
+        BufferedImage image = ImageTestUtil.createRandomImage(BufferedImage.TYPE_4BYTE_ABGR, 23, 19);
+        BufferedImage destination = new BufferedImage(23, 19, BufferedImage.TYPE_INT_ARGB);
+
+        assertSame(destination, new BrightnessContrastOp(0.5f, 0.5f).filter(image, destination));
+        ImageTestUtil.assertFiltered(image, destination, new BrightnessContrastFilter(0.5f, 0.5f));
+    }
+
+    public void testFilterIndexedKeepsPalette() {
+        BufferedImage image = ImageTestUtil.createRandomImage(BufferedImage.TYPE_BYTE_INDEXED, 16, 16);
+        BufferedImage result = new BrightnessContrastOp().filter(image, null);
+
+        assertTrue(result.getColorModel() instanceof IndexColorModel);
+        ImageTestUtil.assertEqualRasters(image.getRaster(), result.getRaster());
+    }
+
+    public void testFilterIllegalSize() {
+        try {
+            new BrightnessContrastOp().filter(new BufferedImage(10, 10, BufferedImage.TYPE_INT_RGB), new BufferedImage(10, 11, BufferedImage.TYPE_INT_RGB));
+            fail("Expected IllegalArgumentException");
+        }
+        catch (IllegalArgumentException expected) {
+        }
+    }
+
+    public void testFilterRaster() {
+        BufferedImage image = ImageTestUtil.createRandomImage(BufferedImage.TYPE_4BYTE_ABGR, 29, 13);
+        BrightnessContrastFilter filter = new BrightnessContrastFilter(0.2f, 0.6f);
+
+        // Raster bands are R, G, B, A
+        WritableRaster result = new BrightnessContrastOp(0.2f, 0.6f).filter(image.getRaster(), null);
+
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                int argb = filter.filterRGB(x, y, image.getRGB(x, y));
+                assertEquals((argb >> 16) & 0xff, result.getSample(x, y, 0));
+                assertEquals((argb >> 8) & 0xff, result.getSample(x, y, 1));
+                assertEquals(argb & 0xff, result.getSample(x, y, 2));
+                assertEquals(argb >>> 24, result.getSample(x, y, 3));
+            }
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.twelvemonkeys.image;
+
+import junit.framework.TestCase;
+
+import java.awt.*;
+import java.awt.image.*;
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * BufferedImageFactoryTestCase
+ *
+ * @author <a href="mailto:harald.kuhr@gmail.com">Harald Kuhr</a>
+ * @author last modified by $Author: haku $
+ * @version $Id: BufferedImageFactoryTestCase.java,v 1.0 Oct 19, 2026 8:24:07 AM haraldk Exp$
+ */
+public class BufferedImageFactoryTestCase extends TestCase {
+    public void testMemoryImageSourceInt() {
+        BufferedImage image = ImageTestUtil.createRandomImage(BufferedImage.TYPE_INT_ARGB, 37, 23);
+        int[] pixels = image.getRGB(0, 0, 37, 23, null, 0, 37);
+
+        BufferedImage result = new BufferedImageFactory(new MemoryImageSource(37, 23, pixels, 0, 37)).getBufferedImage();
+
+        assertEquals(BufferedImage.TYPE_INT_ARGB, result.getType());
+        ImageTestUtil.assertEqualPixels(image, result);
+    }
+
+    public void testMemoryImageSourceIndexed() {
+        IndexColorModel icm = new IndexColorModel(8, 4, new byte[] {0, -1, 0, 0}, new byte[] {0, 0, -1, 0}, new byte[] {0, 0, 0, -1});
+        byte[] pixels = new byte[31 * 17];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = (byte) (i % 4);
+        }
+
+        BufferedImageFactory factory = new BufferedImageFactory(new MemoryImageSource(31, 17, icm, pixels, 0, 31));
+        assertSame(icm, factory.getColorModel());
+
+        BufferedImage result = factory.getBufferedImage();
+        assertSame(icm, result.getColorModel());
+        for (int y = 0; y < 17; y++) {
+            for (int x = 0; x < 31; x++) {
+                assertEquals(icm.getRGB(pixels[y * 31 + x]), result.getRGB(x, y));
+            }
+        }
+    }
+
+    public void testMemoryImageSourceUShort() {
+        DirectColorModel cm = new DirectColorModel(16, 0xf800, 0x07e0, 0x001f);
+        assertEquals(DataBuffer.TYPE_USHORT, cm.getTransferType());
+
+        int[] pixels = new int[19 * 11];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = (i * 997) & 0xffff;
+        }
+
+        BufferedImage result = new BufferedImageFactory(new MemoryImageSource(19, 11, cm, pixels, 0, 19)).getBufferedImage();
+
+        assertTrue(result.getRaster().getDataBuffer() instanceof DataBufferUShort);
+        for (int y = 0; y < 11; y++) {
+            for (int x = 0; x < 19; x++) {
+                assertEquals(cm.getRGB(pixels[y * 19 + x]), result.getRGB(x, y));
+            }
+        }
+    }
+
+    public void testBufferedImageKeepsLayout() {
+        BufferedImage image = ImageTestUtil.createRandomImage(BufferedImage.TYPE_3BYTE_BGR, 29, 13);
+        BufferedImage result = new BufferedImageFactory(image).getBufferedImage();
+
+        assertNotSame(image, result);
+        assertNotSame(image.getRaster().getDataBuffer(), result.getRaster().getDataBuffer());
+        assertEquals(BufferedImage.TYPE_3BYTE_BGR, result.getType());
+        ImageTestUtil.assertEqualPixels(image, result);
+    }
+
+    public void testBufferedImageProgress() {
+        BufferedImageFactory factory = new BufferedImageFactory(ImageTestUtil.createRandomImage(BufferedImage.TYPE_INT_RGB, 29, 13));
+
+        final List<Float> progress = new ArrayList<Float>();
+        factory.addProgressListener(new BufferedImageFactory.ProgressListener() {
+            public void progress(BufferedImageFactory pFactory, float pPercentage) {
+                progress.add(pPercentage);
+            }
+        });
+
+        assertNotNull(factory.getBufferedImage());
+        assertEquals(1, progress.size());
+        assertEquals(100f, progress.get(0));
+    }
+
+    public void testSourceRegionSubsampling() {
+        BufferedImage image = ImageTestUtil.createRandomImage(BufferedImage.TYPE_INT_RGB, 53, 41);
+
+        Rectangle[] regions = {null, new Rectangle(5, 7, 31, 19), new Rectangle(40, 30, 20, 20)};
+        int[][] subsamplings = {{1, 1}, {2, 3}, {4, 1}};
+
+        for (Rectangle region : regions) {
+            for (int[] subsampling : subsamplings) {
+                // The fast path (backing image) should give the same result as the producer
+                BufferedImageFactory fast = new BufferedImageFactory(image);
+                BufferedImageFactory producer = new BufferedImageFactory(image.getSource());
+
+                for (BufferedImageFactory factory : new BufferedImageFactory[] {fast, producer}) {
+                    if (region != null) {
+                        factory.setSourceRegion(region);
+                    }
+                    factory.setSourceSubsampling(subsampling[0], subsampling[1]);
+                }
+
+                BufferedImage expected = producer.getBufferedImage();
+                BufferedImage actual = fast.getBufferedImage();
+
+                assertEquals(expected.getWidth(), actual.getWidth());
+                assertEquals(expected.getHeight(), actual.getHeight());
+                ImageTestUtil.assertEqualPixels(expected, actual);
+            }
+        }
+    }
+
+    public void testChangeOfColorModel() {
+        final IndexColorModel icm = new IndexColorModel(8, 2, new byte[] {0, -1}, new byte[] {0, 0}, new byte[] {0, -1});
+        final int width = 7;
+        final int height = 6;
+
+        // Delivers the first half as indexed bytes, the second half as default RGB ints
+        ImageProducer producer = new ImageProducer() {
+            public void addConsumer(ImageConsumer pConsumer) {
+            }
+
+            public boolean isConsumer(ImageConsumer pConsumer) {
+                return false;
+            }
+
+            public void removeConsumer(ImageConsumer pConsumer) {
+            }
+
+            public void startProduction(ImageConsumer pConsumer) {
+                pConsumer.setDimensions(width, height);
+                pConsumer.setProperties(new Hashtable());
+                pConsumer.setColorModel(icm);
+
+                for (int y = 0; y < height / 2; y++) {
+                    byte[] row = new byte[width];
+                    for (int x = 0; x < width; x++) {
+                        row[x] = (byte) ((x + y) % 2);
+                    }
+                    pConsumer.setPixels(0, y, width, 1, icm, row, 0, width);
+                }
+
+                int[] rows = new int[width * (height - height / 2)];
+                for (int i = 0; i < rows.length; i++) {
+                    rows[i] = 0xff00ff00;
+                }
+                pConsumer.setPixels(0, height / 2, width, height - height / 2, ColorModel.getRGBdefault(), rows, 0, width);
+
+                pConsumer.imageComplete(ImageConsumer.STATICIMAGEDONE);
+            }
+
+            public void requestTopDownLeftRightResend(ImageConsumer pConsumer) {
+            }
+        };
+
+        BufferedImage result = new BufferedImageFactory(producer).getBufferedImage();
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                assertEquals(y < height / 2 ? icm.getRGB((x + y) % 2) : 0xff00ff00, result.getRGB(x, y));
+            }
+        }
+    }
+
+    public void testToolkitImage() {
+        BufferedImage image = ImageTestUtil.createRandomImage(BufferedImage.TYPE_INT_RGB, 23, 17);
+        int[] pixels = image.getRGB(0, 0, 23, 17, null, 0, 23);
+
+        Image toolkitImage = Toolkit.getDefaultToolkit().createImage(new MemoryImageSource(23, 17, pixels, 0, 23));
+        BufferedImage result = ImageUtil.toBuffered(toolkitImage);
+
+        ImageTestUtil.assertEqualPixels(image, result);
+    }
+
+    public void testConcurrent() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        try {
+            List<Future<?>> futures = new ArrayList<Future<?>>();
+
+            for (int i = 0; i < 16; i++) {
+                final BufferedImage image = ImageTestUtil.createRandomImage(BufferedImage.TYPE_INT_ARGB, 100 + i, 50 + i);
+                final int[] pixels = image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+
+                futures.add(executor.submit(new Callable<Object>() {
+                    public Object call() throws Exception {
+                        MemoryImageSource source = new MemoryImageSource(image.getWidth(), image.getHeight(), pixels, 0, image.getWidth());
+                        ImageTestUtil.assertEqualPixels(image, new BufferedImageFactory(source).getBufferedImage());
+                        return null;
+                    }
+                }));
+            }
+
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.twelvemonkeys.image;
+
+import junit.framework.TestCase;
+
+import java.awt.*;
+import java.awt.color.ColorSpace;
+import java.awt.image.*;
+
+/**
+ * CMYKToRGBOpTestCase
+ *
+ * @author <a href="mailto:harald.kuhr@gmail.com">Harald Kuhr</a>
+ * @author last modified by $Author: haku $
+ * @version $Id: CMYKToRGBOpTestCase.java,v 1.0 Oct 19, 2026 6:40:19 AM haraldk Exp$
+ */
+public class CMYKToRGBOpTestCase extends TestCase {
+    private static final ColorSpace CMYK = new NaiveCMYKColorSpace();
+
+    public void testCreateNonCMYK() {
+        try {
+            new CMYKToRGBOp(ColorSpace.getInstance(ColorSpace.CS_sRGB));
+            fail("Expected IllegalArgumentException");
+        }
+        catch (IllegalArgumentException expected) {
+        }
+    }
+
+    public void testNaiveSameAsColorModel() {
+        BufferedImage cmyk = createRandomImage(DataBuffer.TYPE_BYTE, false, 37, 29);
+        BufferedImage rgb = new CMYKToRGBOp().filter(cmyk, null);
+
+        assertEquals(BufferedImage.TYPE_INT_RGB, rgb.getType());
+        assertEqualPixels(cmyk, rgb, 0);
+    }
+
+    public void testNaiveAlpha() {
+        BufferedImage cmyk = createRandomImage(DataBuffer.TYPE_BYTE, true, 37, 29);
+        BufferedImage rgb = new CMYKToRGBOp().filter(cmyk, null);
+
+        assertEquals(BufferedImage.TYPE_INT_ARGB, rgb.getType());
+        assertEqualPixels(cmyk, rgb, 0);
+    }
+
+    public void testNaive16Bit() {
+        BufferedImage cmyk = createRandomImage(DataBuffer.TYPE_USHORT, false, 37, 29);
+        assertEqualPixels(cmyk, new CMYKToRGBOp().filter(cmyk, null), 1);
+    }
+
+    public void testSampledColorSpace() {
+        // Sampled and interpolated, within a small error
+        BufferedImage cmyk = createRandomImage(DataBuffer.TYPE_BYTE, false, 37, 29);
+        assertEqualPixels(cmyk, new CMYKToRGBOp(CMYK).filter(cmyk, null), 2);
+    }
+
+    public void testSampledGridPointsExact() {
+        BufferedImage cmyk = createImage(DataBuffer.TYPE_BYTE, false, 4, 1);
+        cmyk.getRaster().setPixel(0, 0, new int[] {0, 0, 0, 0});
+        cmyk.getRaster().setPixel(1, 0, new int[] {255, 255, 255, 255});
+        cmyk.getRaster().setPixel(2, 0, new int[] {255, 0, 0, 0});
+        cmyk.getRaster().setPixel(3, 0, new int[] {0, 0, 0, 255});
+
+        BufferedImage rgb = new CMYKToRGBOp(CMYK).filter(cmyk, null);
+        assertEquals(0xffffff, rgb.getRGB(0, 0) & 0xffffff);
+        assertEquals(0x000000, rgb.getRGB(1, 0) & 0xffffff);
+        assertEquals(0x00ffff, rgb.getRGB(2, 0) & 0xffffff);
+        assertEquals(0x000000, rgb.getRGB(3, 0) & 0xffffff);
+    }
+
+    public void testFilterToDestination() {
+        BufferedImage cmyk = createRandomImage(DataBuffer.TYPE_BYTE, false, 37, 29);
+        BufferedImage destination = new BufferedImage(37, 29, BufferedImage.TYPE_3BYTE_BGR);
+
+        assertSame(destination, new CMYKToRGBOp().filter(cmyk, destination));
+        assertEqualPixels(cmyk, destination, 0);
+    }
+
+    public void testFilterLargeImage() {
+        // Large enough to be converted in bands, in parallel
+        BufferedImage cmyk = createRandomImage(DataBuffer.TYPE_BYTE, true, 512, 256);
+        assertEqualPixels(cmyk, new CMYKToRGBOp().filter(cmyk, null), 0);
+    }
+
+    public void testFilterRaster() {
+        BufferedImage cmyk = createRandomImage(DataBuffer.TYPE_BYTE, true, 31, 7);
+        WritableRaster rgb = new CMYKToRGBOp().filter(cmyk.getRaster(), null);
+
+        assertEquals(4, rgb.getNumBands());
+        for (int y = 0; y < 7; y++) {
+            for (int x = 0; x < 31; x++) {
+                int argb = cmyk.getRGB(x, y);
+                assertEquals((argb >> 16) & 0xff, rgb.getSample(x, y, 0));
+                assertEquals((argb >> 8) & 0xff, rgb.getSample(x, y, 1));
+                assertEquals(argb & 0xff, rgb.getSample(x, y, 2));
+                assertEquals(argb >>> 24, rgb.getSample(x, y, 3));
+            }
+        }
+    }
+
+    public void testFilterNonCMYK() {
+        try {
+            new CMYKToRGBOp().filter(new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB), null);
+            fail("Expected IllegalArgumentException");
+        }
+        catch (IllegalArgumentException expected) {
+        }
+    }
+
+    private static void assertEqualPixels(final BufferedImage pCMYK, final BufferedImage pRGB, final int pTolerance) {
+        for (int y = 0; y < pCMYK.getHeight(); y++) {
+            for (int x = 0; x < pCMYK.getWidth(); x++) {
+                int expected = pCMYK.getRGB(x, y);
+                int actual = pRGB.getRGB(x, y);
+
+                for (int shift = 0; shift < 32; shift += 8) {
+                    int diff = Math.abs((expected >>> shift & 0xff) - (actual >>> shift & 0xff));
+                    if (diff > pTolerance) {
+                        assertEquals(x + ", " + y, Integer.toHexString(expected), Integer.toHexString(actual));
+                    }
+                }
+            }
+        }
+    }
+
+    private static ColorModel createColorModel(final int pDataType, final boolean pAlpha) {
+        return new ComponentColorModel(CMYK, pAlpha, false, pAlpha ? Transparency.TRANSLUCENT : Transparency.OPAQUE, pDataType);
+    }
+
+    private static BufferedImage createImage(final int pDataType, final boolean pAlpha, final int pWidth, final int pHeight) {
+        ColorModel cm = createColorModel(pDataType, pAlpha);
+        return new BufferedImage(cm, cm.createCompatibleWritableRaster(pWidth, pHeight), false, null);
+    }
+
+    private static BufferedImage createRandomImage(final int pDataType, final boolean pAlpha, final int pWidth, final int pHeight) {
+        return ImageTestUtil.createRandomImage(createColorModel(pDataType, pAlpha), pWidth, pHeight, pDataType);
+    }
+
+    private static final class NaiveCMYKColorSpace extends ColorSpace {
+        private final ColorSpace mRGB = getInstance(CS_sRGB);
+
+        NaiveCMYKColorSpace() {
+            super(TYPE_CMYK, 4);
+        }
+
+        public float[] toRGB(final float[] pValue) {
+            return new float[] {
+                    (1 - pValue[0]) * (1 - pValue[3]),
+                    (1 - pValue[1]) * (1 - pValue[3]),
+                    (1 - pValue[2]) * (1 - pValue[3])
+            };
+        }
+
+        public float[] fromRGB(final float[] pValue) {
+            throw new UnsupportedOperationException();
+        }
+
+        public float[] toCIEXYZ(final float[] pValue) {
+            return mRGB.toCIEXYZ(toRGB(pValue));
+        }
+
+        public float[] fromCIEXYZ(final float[] pValue) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
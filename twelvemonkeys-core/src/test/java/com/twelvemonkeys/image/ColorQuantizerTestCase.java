@@ -0,0 +1,187 @@
+package com.twelvemonkeys.image;
+
+import junit.framework.TestCase;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.util.Arrays;
+
+/**
+ * ColorQuantizerTestCase
+ *
+ * @author <a href="mailto:harald.kuhr@gmail.com">Harald Kuhr</a>
+ * @author last modified by $Author: haku $
+ * @version $Id: ColorQuantizerTestCase.java,v 1.0 Oct 18, 2026 9:24:10 PM haraldk Exp$
+ */
+public class ColorQuantizerTestCase extends TestCase {
+    private static final int[] COLORS = {0xff0000, 0x00ff00, 0x0000ff, 0xffffff};
+
+    protected BufferedImage createImage(final int pType) {
+        BufferedImage image = new BufferedImage(40, 40, pType);
+        Graphics2D g = image.createGraphics();
+        try {
+            for (int i = 0; i < COLORS.length; i++) {
+                g.setColor(new Color(COLORS[i]));
+                g.fillRect(i * 10, 0, 10, 40);
+            }
+        }
+        finally {
+            g.dispose();
+        }
+
+        return image;
+    }
+
+    private static int[] getRGBs(final IndexColorModel pColorModel, final int pCount) {
+        int[] rgbs = new int[pColorModel.getMapSize()];
+        pColorModel.getRGBs(rgbs);
+
+        int[] result = new int[pCount];
+        for (int i = 0; i < pCount; i++) {
+            result[i] = rgbs[i] & 0xffffff;
+        }
+        Arrays.sort(result);
+
+        return result;
+    }
+
+    private static int[] sorted(final int[] pColors) {
+        int[] sorted = pColors.clone();
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    private void assertExactColors(final ColorQuantizer pQuantizer, final int pType) {
+        IndexColorModel icm = pQuantizer.createIndexColorModel(createImage(pType), 256, false);
+
+        assertEquals(COLORS.length, icm.getMapSize());
+        assertTrue(Arrays.equals(sorted(COLORS), getRGBs(icm, COLORS.length)));
+    }
+
+    public void testMedianCutExactColors() {
+        assertExactColors(new MedianCutQuantizer(), BufferedImage.TYPE_INT_RGB);
+        assertExactColors(new MedianCutQuantizer(), BufferedImage.TYPE_INT_ARGB);
+        assertExactColors(new MedianCutQuantizer(), BufferedImage.TYPE_3BYTE_BGR);
+        assertExactColors(new MedianCutQuantizer(), BufferedImage.TYPE_4BYTE_ABGR);
+        assertExactColors(new MedianCutQuantizer(), BufferedImage.TYPE_INT_BGR);
+    }
+
+    public void testWuExactColors() {
+        assertExactColors(new WuQuantizer(), BufferedImage.TYPE_INT_RGB);
+        assertExactColors(new WuQuantizer(), BufferedImage.TYPE_INT_ARGB);
+        assertExactColors(new WuQuantizer(), BufferedImage.TYPE_3BYTE_BGR);
+        assertExactColors(new WuQuantizer(), BufferedImage.TYPE_4BYTE_ABGR);
+        assertExactColors(new WuQuantizer(), BufferedImage.TYPE_INT_BGR);
+    }
+
+    public void testExactColorsSameBin() {
+        // All colors fall into the same 5 bit histogram bin
+        int[] colors = {0x000000, 0x010101, 0x020202, 0x030303, 0x040404, 0x050505, 0x060606, 0x070707};
+
+        BufferedImage image = new BufferedImage(colors.length, 3, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < image.getHeight(); y++) {
+            image.setRGB(0, y, colors.length, 1, colors, 0, colors.length);
+        }
+
+        ColorQuantizer[] quantizers = {new MedianCutQuantizer(), new WuQuantizer()};
+
+        for (ColorQuantizer quantizer : quantizers) {
+            IndexColorModel icm = quantizer.createIndexColorModel(image, 256, false);
+
+            assertEquals(colors.length, icm.getMapSize());
+            assertTrue(Arrays.equals(colors, getRGBs(icm, colors.length)));
+        }
+    }
+
+    public void testMoreColorsThanPalette() {
+        BufferedImage image = ImageTestUtil.createRandomImage(BufferedImage.TYPE_INT_RGB, 40, 40);
+
+        ColorQuantizer[] quantizers = {new MedianCutQuantizer(), new WuQuantizer()};
+
+        for (ColorQuantizer quantizer : quantizers) {
+            assertTrue(quantizer.createIndexColorModel(image, 256, false).getMapSize() <= 256);
+            assertEquals(16, quantizer.createIndexColorModel(image, 16, false).getMapSize());
+        }
+    }
+
+    public void testReuseQuantizer() {
+        BufferedImage random = ImageTestUtil.createRandomImage(BufferedImage.TYPE_INT_RGB, 40, 40);
+        BufferedImage photo = ImageTestUtil.createPhotoLikeImage(80, 60);
+
+        WuQuantizer quantizer = new WuQuantizer();
+        quantizer.createIndexColorModel(random, 64, false);
+
+        // Work buffers left from the first invocation, must not affect the result
+        int[] expected = getRGBs(new WuQuantizer().createIndexColorModel(photo, 64, false), 64);
+        int[] actual = getRGBs(quantizer.createIndexColorModel(photo, 64, false), 64);
+        assertTrue(Arrays.equals(expected, actual));
+    }
+
+    public void testReduceColors() {
+        ColorQuantizer[] quantizers = {new MedianCutQuantizer(), new WuQuantizer()};
+
+        for (ColorQuantizer quantizer : quantizers) {
+            IndexColorModel icm = quantizer.createIndexColorModel(createImage(BufferedImage.TYPE_INT_RGB), 2, false);
+            assertEquals(2, icm.getMapSize());
+        }
+    }
+
+    public void testTransparent() {
+        BufferedImage image = createImage(BufferedImage.TYPE_INT_ARGB);
+        // Make the white part transparent
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 30; x < 40; x++) {
+                image.setRGB(x, y, 0x00ffffff);
+            }
+        }
+
+        ColorQuantizer[] quantizers = {new MedianCutQuantizer(), new WuQuantizer()};
+
+        for (ColorQuantizer quantizer : quantizers) {
+            IndexColorModel icm = quantizer.createIndexColorModel(image, 256, true);
+
+            assertEquals(4, icm.getMapSize());
+            assertEquals(3, icm.getTransparentPixel());
+            assertTrue(Arrays.equals(sorted(new int[] {0xff0000, 0x00ff00, 0x0000ff}), getRGBs(icm, 3)));
+        }
+    }
+
+    public void testSubimage() {
+        int[] types = {BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_3BYTE_BGR};
+
+        for (int type : types) {
+            // Green and blue stripes only
+            BufferedImage image = createImage(type).getSubimage(12, 5, 16, 30);
+            IndexColorModel icm = new MedianCutQuantizer().createIndexColorModel(image, 256, false);
+
+            assertEquals(2, icm.getMapSize());
+            assertTrue(Arrays.equals(sorted(new int[] {0x00ff00, 0x0000ff}), getRGBs(icm, 2)));
+        }
+    }
+
+    public void testSampleStride() {
+        ColorQuantizer quantizer = new MedianCutQuantizer();
+        assertEquals(1, quantizer.getSampleStride());
+
+        quantizer.setSampleStride(7);
+        assertEquals(7, quantizer.getSampleStride());
+        assertExactColors(quantizer, BufferedImage.TYPE_INT_RGB);
+
+        try {
+            quantizer.setSampleStride(0);
+            fail("Expected IllegalArgumentException");
+        }
+        catch (IllegalArgumentException expected) {
+        }
+    }
+
+    public void testIllegalNumberOfColors() {
+        try {
+            new WuQuantizer().createIndexColorModel(createImage(BufferedImage.TYPE_INT_RGB), 257, false);
+            fail("Expected IllegalArgumentException");
+        }
+        catch (IllegalArgumentException expected) {
+        }
+    }
+}
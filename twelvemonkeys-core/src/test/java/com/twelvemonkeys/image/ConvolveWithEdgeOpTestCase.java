@@ -0,0 +1,298 @@
+package com.twelvemonkeys.image;
+
+import junit.framework.TestCase;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ConvolveOp;
+import java.awt.image.Kernel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+
+/**
+ * ConvolveWithEdgeOpTestCase
+ *
+ * @author <a href="mailto:harald.kuhr@gmail.com">Harald Kuhr</a>
+ * @author last modified by $Author: haku $
+ * @version $Id: ConvolveWithEdgeOpTestCase.java,v 1.0 Oct 18, 2026 11:58:40 PM haraldk Exp$
+ */
+public class ConvolveWithEdgeOpTestCase extends TestCase {
+    private static final int[] TYPES = {
+            BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_INT_BGR, BufferedImage.TYPE_3BYTE_BGR,
+            BufferedImage.TYPE_BYTE_GRAY, BufferedImage.TYPE_USHORT_GRAY
+    };
+
+    // Not separable, and not symmetric
+    private static final Kernel KERNEL_2D = new Kernel(3, 3, new float[] {
+            0.0f, 0.1f, 0.05f,
+            0.2f, 0.3f, 0.0f,
+            0.1f, 0.15f, 0.1f
+    });
+
+    // Separable, outer product of {1, 2, 1} / 4 and {1, 4, 6, 4, 1} / 16
+    private static final Kernel KERNEL_SEPARABLE = new Kernel(3, 5, new float[] {
+            1 / 64f, 2 / 64f, 1 / 64f,
+            4 / 64f, 8 / 64f, 4 / 64f,
+            6 / 64f, 12 / 64f, 6 / 64f,
+            4 / 64f, 8 / 64f, 4 / 64f,
+            1 / 64f, 2 / 64f, 1 / 64f
+    });
+
+    public void testSeparate() {
+        assertNull(Convolver.separate(KERNEL_2D));
+
+        float[][] separated = Convolver.separate(KERNEL_SEPARABLE);
+        assertNotNull(separated);
+        assertEquals(3, separated[0].length);
+        assertEquals(5, separated[1].length);
+
+        float[][] horizontal = Convolver.separate(new Kernel(3, 1, new float[] {0.25f, 0.5f, 0.25f}));
+        assertNotNull(horizontal);
+        assertEquals(1, horizontal[1].length);
+    }
+
+    public void testMap() {
+        // Reflect, as JAI: -1 -> 0, -2 -> 1, length -> length - 1
+        assertEquals(0, Convolver.map(-1, 5, ConvolveWithEdgeOp.EDGE_REFLECT));
+        assertEquals(1, Convolver.map(-2, 5, ConvolveWithEdgeOp.EDGE_REFLECT));
+        assertEquals(4, Convolver.map(5, 5, ConvolveWithEdgeOp.EDGE_REFLECT));
+        assertEquals(3, Convolver.map(6, 5, ConvolveWithEdgeOp.EDGE_REFLECT));
+        assertEquals(1, Convolver.map(-3, 2, ConvolveWithEdgeOp.EDGE_REFLECT));
+
+        assertEquals(4, Convolver.map(-1, 5, ConvolveWithEdgeOp.EDGE_WRAP));
+        assertEquals(0, Convolver.map(5, 5, ConvolveWithEdgeOp.EDGE_WRAP));
+        assertEquals(2, Convolver.map(12, 5, ConvolveWithEdgeOp.EDGE_WRAP));
+    }
+
+    public void testZeroFillSameAsConvolveOp() {
+        assertSameAsConvolveOp(KERNEL_2D, ConvolveOp.EDGE_ZERO_FILL);
+        assertSameAsConvolveOp(KERNEL_SEPARABLE, ConvolveOp.EDGE_ZERO_FILL);
+    }
+
+    public void testNoOpSameAsConvolveOp() {
+        assertSameAsConvolveOp(KERNEL_2D, ConvolveOp.EDGE_NO_OP);
+        assertSameAsConvolveOp(KERNEL_SEPARABLE, ConvolveOp.EDGE_NO_OP);
+    }
+
+    private void assertSameAsConvolveOp(final Kernel pKernel, final int pEdgeCondition) {
+        for (int type : TYPES) {
+            if (type == BufferedImage.TYPE_USHORT_GRAY) {
+                // ConvolveOp (the native code) produces garbage for 16 bit samples, compared with reference instead
+                continue;
+            }
+
+            BufferedImage image = ImageTestUtil.createRandomImage(type, 37, 23);
+
+            BufferedImage expected = new ConvolveOp(pKernel, pEdgeCondition, null).filter(image, null);
+            BufferedImage actual = new ConvolveWithEdgeOp(pKernel, pEdgeCondition, null).filter(image, null);
+
+            assertEquals("type: " + type, image.getType(), actual.getType());
+
+            // NOTE: ConvolveOp truncates, we round
+            assertEquals("type: " + type, expected.getRaster(), actual.getRaster(), 1);
+        }
+    }
+
+    public void testReflect() {
+        assertSameAsReference(KERNEL_2D, ConvolveWithEdgeOp.EDGE_REFLECT);
+        assertSameAsReference(KERNEL_SEPARABLE, ConvolveWithEdgeOp.EDGE_REFLECT);
+    }
+
+    public void testWrap() {
+        assertSameAsReference(KERNEL_2D, ConvolveWithEdgeOp.EDGE_WRAP);
+        assertSameAsReference(KERNEL_SEPARABLE, ConvolveWithEdgeOp.EDGE_WRAP);
+    }
+
+    public void testWrapLargeKernel() {
+        // Kernel larger than the image
+        float[] data = new float[9 * 9];
+        java.util.Arrays.fill(data, 1 / 81f);
+        Kernel kernel = new Kernel(9, 9, data);
+
+        BufferedImage image = ImageTestUtil.createRandomImage(BufferedImage.TYPE_INT_RGB, 4, 3);
+        assertEquals(reference(image.getRaster(), kernel, ConvolveWithEdgeOp.EDGE_WRAP),
+                new ConvolveWithEdgeOp(kernel, ConvolveWithEdgeOp.EDGE_WRAP, null).filter(image, null).getRaster(), 1);
+    }
+
+    public void testParallelSameAsReference() {
+        // Large enough to be filtered in several bands, if there are several processors
+        BufferedImage image = ImageTestUtil.createRandomImage(BufferedImage.TYPE_INT_RGB, 600, 400);
+
+        assertEquals(reference(image.getRaster(), KERNEL_2D, ConvolveWithEdgeOp.EDGE_REFLECT),
+                new ConvolveWithEdgeOp(KERNEL_2D, ConvolveWithEdgeOp.EDGE_REFLECT, null).filter(image, null).getRaster(), 1);
+        assertEquals(reference(image.getRaster(), KERNEL_SEPARABLE, ConvolveWithEdgeOp.EDGE_WRAP),
+                new ConvolveWithEdgeOp(KERNEL_SEPARABLE, ConvolveWithEdgeOp.EDGE_WRAP, null).filter(image, null).getRaster(), 1);
+    }
+
+    public void testFilterRaster() {
+        BufferedImage image = ImageTestUtil.createRandomImage(BufferedImage.TYPE_3BYTE_BGR, 31, 17);
+
+        // Child raster, with offset
+        Raster child = image.getRaster().createChild(5, 3, 20, 10, 0, 0, null);
+        WritableRaster result = new ConvolveWithEdgeOp(KERNEL_2D, ConvolveWithEdgeOp.EDGE_REFLECT, null).filter(child, null);
+
+        assertEquals(reference(child, KERNEL_2D, ConvolveWithEdgeOp.EDGE_REFLECT), result, 1);
+    }
+
+    public void testAlphaIsPremultiplied() {
+        BufferedImage image = new BufferedImage(3, 1, BufferedImage.TYPE_INT_ARGB);
+        image.setRGB(0, 0, 0x00ff0000); // Transparent red
+        image.setRGB(1, 0, 0xff0000ff);
+        image.setRGB(2, 0, 0xff0000ff);
+
+        Kernel kernel = new Kernel(3, 1, new float[] {1 / 3f, 1 / 3f, 1 / 3f});
+        BufferedImage result = new ConvolveWithEdgeOp(kernel, ConvolveWithEdgeOp.EDGE_NO_OP, null).filter(image, null);
+
+        // The color of the transparent pixel should not bleed
+        assertEquals(0xaa0000ff, result.getRGB(1, 0));
+    }
+
+    public void testIndexed() {
+        BufferedImage image = new BufferedImage(10, 10, BufferedImage.TYPE_BYTE_INDEXED);
+        image.setRGB(5, 5, 0xffffffff);
+
+        BufferedImage result = new ConvolveWithEdgeOp(KERNEL_SEPARABLE, ConvolveWithEdgeOp.EDGE_REFLECT, null).filter(image, null);
+
+        // Colors, not indexes, are convolved
+        assertFalse(result.getColorModel() instanceof java.awt.image.IndexColorModel);
+        assertEquals(0xff000000, result.getRGB(0, 0));
+        assertTrue((result.getRGB(5, 5) & 0xff) > 0);
+        assertTrue((result.getRGB(5, 5) & 0xff) < 0xff);
+    }
+
+    public void testSameSourceAndDestination() {
+        BufferedImage image = ImageTestUtil.createRandomImage(BufferedImage.TYPE_INT_RGB, 10, 10);
+
+        try {
+            new ConvolveWithEdgeOp(KERNEL_2D).filter(image, image);
+            fail("Expected IllegalArgumentException");
+        }
+        catch (IllegalArgumentException expected) {
+        }
+    }
+
+    public void testBoxBlurUniform() {
+        BufferedImage image = new BufferedImage(50, 30, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                image.setRGB(x, y, 0x336699);
+            }
+        }
+
+        BufferedImage blurred = ImageUtil.blur(image, 30f);
+
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                assertEquals(0x336699, blurred.getRGB(x, y) & 0xffffff);
+            }
+        }
+    }
+
+    public void testBoxBlurSameAsReference() {
+        int[] radii = {2, 3, 1};
+
+        // Successive box blurs are the same as a single convolution with the convolution of the boxes
+        float[] boxes = {1f};
+        for (int radius : radii) {
+            float[] convolved = new float[boxes.length + 2 * radius];
+            for (int i = 0; i < boxes.length; i++) {
+                for (int j = 0; j <= 2 * radius; j++) {
+                    convolved[i + j] += boxes[i] / (2 * radius + 1);
+                }
+            }
+            boxes = convolved;
+        }
+
+        float[] data = new float[boxes.length * boxes.length];
+        for (int y = 0; y < boxes.length; y++) {
+            for (int x = 0; x < boxes.length; x++) {
+                data[y * boxes.length + x] = boxes[x] * boxes[y];
+            }
+        }
+        Kernel kernel = new Kernel(boxes.length, boxes.length, data);
+
+        // The larger image is blurred in several bands, if there are several processors
+        for (BufferedImage image : new BufferedImage[] {ImageTestUtil.createRandomImage(BufferedImage.TYPE_3BYTE_BGR, 37, 5), ImageTestUtil.createRandomImage(BufferedImage.TYPE_INT_RGB, 300, 200)}) {
+            for (int edgeCondition : new int[] {ConvolveWithEdgeOp.EDGE_REFLECT, ConvolveWithEdgeOp.EDGE_WRAP}) {
+                WritableRaster result = image.getRaster().createCompatibleWritableRaster();
+                Convolver.boxBlur(image.getRaster(), result, radii, edgeCondition, -1);
+
+                assertEquals("edge: " + edgeCondition, reference(image.getRaster(), kernel, edgeCondition), result, 1);
+            }
+        }
+    }
+
+    public void testBoxRadii() {
+        // Sum of the variances of the boxes should approximate the variance of the gaussian
+        float sigma = 10f;
+        int[] radii = Convolver.boxRadii(sigma, 3);
+
+        double variance = 0;
+        for (int radius : radii) {
+            int size = 2 * radius + 1;
+            variance += (size * size - 1) / 12.0;
+        }
+
+        assertEquals(sigma * sigma, variance, sigma);
+    }
+
+    private static WritableRaster reference(final Raster pSource, final Kernel pKernel, final int pEdgeCondition) {
+        int width = pSource.getWidth();
+        int height = pSource.getHeight();
+        int bands = pSource.getNumBands();
+        float[] data = pKernel.getKernelData(null);
+
+        WritableRaster result = pSource.createCompatibleWritableRaster(width, height);
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                for (int b = 0; b < bands; b++) {
+                    float sum = 0;
+
+                    for (int j = 0; j < pKernel.getHeight(); j++) {
+                        for (int i = 0; i < pKernel.getWidth(); i++) {
+                            int sx = Convolver.map(x + pKernel.getXOrigin() - i, width, pEdgeCondition);
+                            int sy = Convolver.map(y + pKernel.getYOrigin() - j, height, pEdgeCondition);
+                            sum += data[j * pKernel.getWidth() + i] * pSource.getSample(pSource.getMinX() + sx, pSource.getMinY() + sy, b);
+                        }
+                    }
+
+                    result.setSample(x, y, b, Math.round(sum));
+                }
+            }
+        }
+
+        return result;
+    }
+
+    private void assertSameAsReference(final Kernel pKernel, final int pEdgeCondition) {
+        for (int type : TYPES) {
+            BufferedImage image = ImageTestUtil.createRandomImage(type, 37, 23);
+            BufferedImage actual = new ConvolveWithEdgeOp(pKernel, pEdgeCondition, null).filter(image, null);
+
+            assertEquals("type: " + type, reference(image.getRaster(), pKernel, pEdgeCondition), actual.getRaster(), 1);
+        }
+    }
+
+    private static void assertEquals(final Raster pExpected, final Raster pActual, final int pTolerance) {
+        assertEquals("", pExpected, pActual, pTolerance);
+    }
+
+    private static void assertEquals(final String pMessage, final Raster pExpected, final Raster pActual, final int pTolerance) {
+        assertEquals(pExpected.getWidth(), pActual.getWidth());
+        assertEquals(pExpected.getHeight(), pActual.getHeight());
+        assertEquals(pExpected.getNumBands(), pActual.getNumBands());
+
+        for (int y = 0; y < pExpected.getHeight(); y++) {
+            for (int x = 0; x < pExpected.getWidth(); x++) {
+                for (int b = 0; b < pExpected.getNumBands(); b++) {
+                    int expected = pExpected.getSample(pExpected.getMinX() + x, pExpected.getMinY() + y, b);
+                    int actual = pActual.getSample(pActual.getMinX() + x, pActual.getMinY() + y, b);
+
+                    if (Math.abs(expected - actual) > pTolerance) {
+                        fail(String.format("%s (%d, %d), band %d: expected %d, but was %d", pMessage, x, y, b, expected, actual));
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.twelvemonkeys.image;
+
+import junit.framework.TestCase;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.BufferedImageOp;
+import java.awt.image.IndexColorModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+
+/**
+ * DiffusionDitherTestCase
+ *
+ * @author <a href="mailto:harald.kuhr@gmail.com">Harald Kuhr</a>
+ * @author last modified by $Author: haku $
+ * @version $Id: DiffusionDitherTestCase.java,v 1.0 Oct 18, 2026 7:45:03 PM haraldk Exp$
+ */
+public class DiffusionDitherTestCase extends TestCase {
+    private static final IndexColorModel BLACK_WHITE = new IndexColorModel(
+            8, 2, new byte[] {0, (byte) 0xff}, new byte[] {0, (byte) 0xff}, new byte[] {0, (byte) 0xff}
+    );
+
+    protected BufferedImage createGray(final int pWidth, final int pHeight, final int pGray) {
+        BufferedImage image = new BufferedImage(pWidth, pHeight, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        try {
+            g.setColor(new Color(pGray, pGray, pGray));
+            g.fillRect(0, 0, pWidth, pHeight);
+        }
+        finally {
+            g.dispose();
+        }
+
+        return image;
+    }
+
+    private static int countWhite(final Raster pRaster) {
+        int[] indexes = pRaster.getPixels(pRaster.getMinX(), pRaster.getMinY(), pRaster.getWidth(), pRaster.getHeight(), (int[]) null);
+
+        int count = 0;
+        for (int index : indexes) {
+            assertTrue("Index out of range: " + index, index == 0 || index == 1);
+            count += index;
+        }
+
+        return count;
+    }
+
+    private void assertHalfWhite(final BufferedImageOp pDither) {
+        BufferedImage result = pDither.filter(createGray(64, 64, 128), null);
+
+        assertNotNull(result);
+        assertEquals(64, result.getWidth());
+        assertEquals(64, result.getHeight());
+
+        // 50% gray should give roughly 50% white pixels
+        int white = countWhite(result.getRaster());
+        assertTrue("Too few white pixels: " + white, white > 64 * 64 * 40 / 100);
+        assertTrue("Too many white pixels: " + white, white < 64 * 64 * 60 / 100);
+    }
+
+    public void testFloydSteinberg() {
+        assertHalfWhite(new DiffusionDither(BLACK_WHITE));
+    }
+
+    public void testAtkinson() {
+        assertHalfWhite(new DiffusionDither(BLACK_WHITE, DiffusionDither.KERNEL_ATKINSON));
+    }
+
+    public void testSierra() {
+        assertHalfWhite(new DiffusionDither(BLACK_WHITE, DiffusionDither.KERNEL_SIERRA));
+    }
+
+    public void testOrdered() {
+        assertHalfWhite(new OrderedDither(BLACK_WHITE));
+    }
+
+    public void testIllegalKernel() {
+        try {
+            new DiffusionDither(BLACK_WHITE, -1);
+            fail("Expected IllegalArgumentException");
+        }
+        catch (IllegalArgumentException expected) {
+        }
+    }
+
+    public void testSolidColorsUnchanged() {
+        BufferedImage black = createGray(16, 16, 0);
+        BufferedImage white = createGray(16, 16, 255);
+
+        for (int kernel = DiffusionDither.KERNEL_FLOYD_STEINBERG; kernel <= DiffusionDither.KERNEL_SIERRA; kernel++) {
+            DiffusionDither dither = new DiffusionDither(BLACK_WHITE, kernel);
+
+            assertEquals(0, countWhite(dither.filter(black, null).getRaster()));
+            assertEquals(16 * 16, countWhite(dither.filter(white, null).getRaster()));
+        }
+    }
+
+    public void testFilterRasterWithOffset() {
+        Raster source = createGray(32, 32, 128).getRaster().createChild(8, 8, 16, 16, 8, 8, null);
+        WritableRaster dest = BLACK_WHITE.createCompatibleWritableRaster(32, 32).createWritableChild(4, 4, 16, 16, 4, 4, null);
+
+        DiffusionDither dither = new DiffusionDither(BLACK_WHITE);
+        assertSame(dest, dither.filter(source, dest, BLACK_WHITE));
+
+        int white = countWhite(dest);
+        assertTrue("Unexpected number of white pixels: " + white, white > 0 && white < 16 * 16);
+    }
+}
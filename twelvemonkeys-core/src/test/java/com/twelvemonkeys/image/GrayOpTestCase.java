@@ -0,0 +1,48 @@
+package com.twelvemonkeys.image;
+
+import junit.framework.TestCase;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+
+/**
+ * GrayOpTestCase
+ *
+ * @author <a href="mailto:harald.kuhr@gmail.com">Harald Kuhr</a>
+ * @author last modified by $Author: haku $
+ * @version $Id: GrayOpTestCase.java,v 1.0 Oct 19, 2026 5:47:26 AM haraldk Exp$
+ */
+public class GrayOpTestCase extends TestCase {
+    public void testSameAsFilter() {
+        ImageTestUtil.assertSameAsFilter(new GrayOp(), new GrayFilter());
+    }
+
+    public void testSameAsFilterRange() {
+        ImageTestUtil.assertSameAsFilter(new GrayOp(0.2f, 0.7f), new GrayFilter(0.2f, 0.7f));
+        ImageTestUtil.assertSameAsFilter(new GrayOp(10, 200), new GrayFilter(10, 200));
+        ImageTestUtil.assertSameAsFilter(new GrayOp(0.8f, 0.2f), new GrayFilter(0.8f, 0.2f));
+    }
+
+    public void testFilterGrayRaster() {
+        BufferedImage image = ImageTestUtil.createRandomImage(BufferedImage.TYPE_BYTE_GRAY, 19, 7);
+
+        // Gray is already gray
+        WritableRaster result = new GrayOp().filter(image.getRaster(), null);
+        ImageTestUtil.assertEqualRasters(image.getRaster(), result);
+    }
+
+    public void testGrayscale() {
+        BufferedImage image = ImageTestUtil.createRandomImage(BufferedImage.TYPE_INT_ARGB, 33, 17);
+        BufferedImage gray = ImageUtil.grayscale(image);
+
+        assertEquals(BufferedImage.TYPE_INT_ARGB, gray.getType());
+        for (int y = 0; y < gray.getHeight(); y++) {
+            for (int x = 0; x < gray.getWidth(); x++) {
+                int argb = gray.getRGB(x, y);
+                assertEquals(image.getRGB(x, y) >>> 24, argb >>> 24);
+                assertEquals(argb & 0xff, (argb >> 8) & 0xff);
+                assertEquals(argb & 0xff, (argb >> 16) & 0xff);
+            }
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package com.twelvemonkeys.image;
+
+import junit.framework.Assert;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.RGBImageFilter;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.util.Random;
+
+/**
+ * Image fixtures and assertions, shared by the tests in this package.
+ *
+ * @author <a href="mailto:harald.kuhr@gmail.com">Harald Kuhr</a>
+ * @author last modified by $Author: haku $
+ * @version $Id: ImageTestUtil.java,v 1.0 Oct 19, 2026 10:12:31 AM haraldk Exp$
+ */
+final class ImageTestUtil {
+    /** Image types {@code RGBRasterOp}s are tested with */
+    static final int[] RGB_TYPES = {
+            BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_INT_ARGB_PRE,
+            BufferedImage.TYPE_INT_BGR, BufferedImage.TYPE_3BYTE_BGR, BufferedImage.TYPE_4BYTE_ABGR,
+            BufferedImage.TYPE_USHORT_565_RGB, BufferedImage.TYPE_BYTE_GRAY, BufferedImage.TYPE_BYTE_INDEXED
+    };
+
+    private ImageTestUtil() {
+    }
+
+    /**
+     * Creates an image of the given type, filled with random ARGB values.
+     * The values are seeded by the type, so the same type always gives the same image.
+     *
+     * @param pType the image type
+     * @param pWidth the width
+     * @param pHeight the height
+     * @return a new image
+     */
+    static BufferedImage createRandomImage(final int pType, final int pWidth, final int pHeight) {
+        BufferedImage image = new BufferedImage(pWidth, pHeight, pType);
+        Random random = new Random(pType);
+
+        for (int y = 0; y < pHeight; y++) {
+            for (int x = 0; x < pWidth; x++) {
+                image.setRGB(x, y, random.nextInt());
+            }
+        }
+
+        return image;
+    }
+
+    /**
+     * Creates an image with the given color model, filled with random samples.
+     * Unlike {@link #createRandomImage(int, int, int)}, the samples are set
+     * directly in the raster, without any color conversion.
+     *
+     * @param pModel the color model
+     * @param pWidth the width
+     * @param pHeight the height
+     * @param pSeed the seed for the random samples
+     * @return a new image
+     */
+    static BufferedImage createRandomImage(final ColorModel pModel, final int pWidth, final int pHeight, final long pSeed) {
+        WritableRaster raster = pModel.createCompatibleWritableRaster(pWidth, pHeight);
+        Random random = new Random(pSeed);
+
+        for (int y = 0; y < pHeight; y++) {
+            for (int x = 0; x < pWidth; x++) {
+                for (int b = 0; b < raster.getNumBands(); b++) {
+                    raster.setSample(x, y, b, random.nextInt(1 << raster.getSampleModel().getSampleSize(b)));
+                }
+            }
+        }
+
+        return new BufferedImage(pModel, raster, pModel.isAlphaPremultiplied(), null);
+    }
+
+    static void assertEqualPixels(final BufferedImage pExpected, final BufferedImage pActual) {
+        for (int y = 0; y < pExpected.getHeight(); y++) {
+            for (int x = 0; x < pExpected.getWidth(); x++) {
+                Assert.assertEquals(x + ", " + y, pExpected.getRGB(x, y), pActual.getRGB(x, y));
+            }
+        }
+    }
+
+    static void assertEqualRasters(final Raster pExpected, final Raster pActual) {
+        for (int y = 0; y < pExpected.getHeight(); y++) {
+            for (int x = 0; x < pExpected.getWidth(); x++) {
+                for (int b = 0; b < pExpected.getNumBands(); b++) {
+                    Assert.assertEquals(pExpected.getSample(x, y, b), pActual.getSample(x, y, b));
+                }
+            }
+        }
+    }
+
+    /**
+     * Asserts that the op gives the same result as the filter, for random images of all {@link #RGB_TYPES}.
+     *
+     * @param pOp the op
+     * @param pFilter the filter
+     */
+    static void assertSameAsFilter(final RGBRasterOp pOp, final RGBImageFilter pFilter) {
+        for (int type : RGB_TYPES) {
+            assertSameAsFilter(createRandomImage(type, 37, 21), pOp, pFilter);
+        }
+    }
+
+    static void assertSameAsFilter(final BufferedImage pImage, final RGBRasterOp pOp, final RGBImageFilter pFilter) {
+        BufferedImage result = pOp.filter(pImage, null);
+
+        Assert.assertEquals(pImage.getWidth(), result.getWidth());
+        Assert.assertEquals(pImage.getHeight(), result.getHeight());
+        Assert.assertEquals(pImage.getColorModel().getClass(), result.getColorModel().getClass());
+
+        assertFiltered(pImage, result, pFilter);
+    }
+
+    static void assertFiltered(final BufferedImage pImage, final BufferedImage pResult, final RGBImageFilter pFilter) {
+        // The filter gives the expected value in the default color space, convert to the result's color model
+        BufferedImage expected = new BufferedImage(pResult.getColorModel(), pResult.getRaster().createCompatibleWritableRaster(), pResult.isAlphaPremultiplied(), null);
+
+        for (int y = 0; y < pImage.getHeight(); y++) {
+            for (int x = 0; x < pImage.getWidth(); x++) {
+                expected.setRGB(x, y, pFilter.filterRGB(x, y, pImage.getRGB(x, y)));
+            }
+        }
+
+        assertEqualPixels(expected, pResult);
+    }
+
+    /**
+     * Creates an image with smooth gradients, edges, fine (aliasing prone) detail and noise.
+     */
+    static BufferedImage createPhotoLikeImage(final int pWidth, final int pHeight) {
+        BufferedImage image = new BufferedImage(pWidth, pHeight, BufferedImage.TYPE_3BYTE_BGR);
+        Random random = new Random(pWidth * 31 + pHeight);
+
+        for (int y = 0; y < pHeight; y++) {
+            for (int x = 0; x < pWidth; x++) {
+                double u = x / (double) pWidth;
+                double v = y / (double) pHeight;
+
+                double r = 128 + 80 * Math.sin(u * 7) * Math.cos(v * 5);
+                double g = 40 + 150 * v + (u > 0.5 && v < 0.5 ? 50 : 0);
+                double b = 128 + 60 * Math.sin((x * x + y * y) / (double) (pWidth * 4));
+
+                int noise = random.nextInt(21) - 10;
+                image.setRGB(x, y, clamp(r + noise) << 16 | clamp(g + noise) << 8 | clamp(b + noise));
+            }
+        }
+
+        return image;
+    }
+
+    private static int clamp(final double pValue) {
+        return (int) Math.max(0, Math.min(255, Math.round(pValue)));
+    }
+
+    /**
+     * Peak signal to noise ratio, over the R, G and B channels.
+     */
+    static double psnr(final BufferedImage pExpected, final BufferedImage pActual) {
+        double sum = 0;
+
+        for (int y = 0; y < pExpected.getHeight(); y++) {
+            for (int x = 0; x < pExpected.getWidth(); x++) {
+                int expected = pExpected.getRGB(x, y);
+                int actual = pActual.getRGB(x, y);
+
+                for (int shift = 0; shift < 24; shift += 8) {
+                    int diff = ((expected >> shift) & 0xff) - ((actual >> shift) & 0xff);
+                    sum += diff * diff;
+                }
+            }
+        }
+
+        double mse = sum / (pExpected.getWidth() * pExpected.getHeight() * 3);
+        return mse == 0 ? Double.POSITIVE_INFINITY : 10 * Math.log10(255 * 255 / mse);
+    }
+
+    /**
+     * Mean structural similarity of the luminance, over 8 x 8 windows.
+     */
+    static double ssim(final BufferedImage pExpected, final BufferedImage pActual) {
+        final double c1 = (0.01 * 255) * (0.01 * 255);
+        final double c2 = (0.03 * 255) * (0.03 * 255);
+
+        double sum = 0;
+        int windows = 0;
+
+        for (int wy = 0; wy + 8 <= pExpected.getHeight(); wy += 4) {
+            for (int wx = 0; wx + 8 <= pExpected.getWidth(); wx += 4) {
+                double sumA = 0, sumB = 0, sumAA = 0, sumBB = 0, sumAB = 0;
+
+                for (int y = wy; y < wy + 8; y++) {
+                    for (int x = wx; x < wx + 8; x++) {
+                        double a = luminance(pExpected.getRGB(x, y));
+                        double b = luminance(pActual.getRGB(x, y));
+
+                        sumA += a;
+                        sumB += b;
+                        sumAA += a * a;
+                        sumBB += b * b;
+                        sumAB += a * b;
+                    }
+                }
+
+                double meanA = sumA / 64;
+                double meanB = sumB / 64;
+                double varA = sumAA / 64 - meanA * meanA;
+                double varB = sumBB / 64 - meanB * meanB;
+                double cov = sumAB / 64 - meanA * meanB;
+
+                sum += ((2 * meanA * meanB + c1) * (2 * cov + c2)) / ((meanA * meanA + meanB * meanB + c1) * (varA + varB + c2));
+                windows++;
+            }
+        }
+
+        return sum / windows;
+    }
+
+    private static double luminance(final int pRGB) {
+        return 0.299 * ((pRGB >> 16) & 0xff) + 0.587 * ((pRGB >> 8) & 0xff) + 0.114 * (pRGB & 0xff);
+    }
+}
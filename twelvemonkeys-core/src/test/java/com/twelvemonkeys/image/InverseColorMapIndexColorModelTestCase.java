@@ -0,0 +1,101 @@
+package com.twelvemonkeys.image;
+
+import junit.framework.TestCase;
+
+import java.awt.image.IndexColorModel;
+import java.util.Random;
+
+/**
+ * InverseColorMapIndexColorModelTestCase
+ *
+ * @author <a href="mailto:harald.kuhr@gmail.com">Harald Kuhr</a>
+ * @author last modified by $Author: haku $
+ * @version $Id: InverseColorMapIndexColorModelTestCase.java,v 1.0 Oct 18, 2026 8:12:41 PM haraldk Exp$
+ */
+public class InverseColorMapIndexColorModelTestCase extends TestCase {
+
+    private static IndexColorModel createWebSafe() {
+        byte[] r = new byte[216];
+        byte[] g = new byte[216];
+        byte[] b = new byte[216];
+
+        int i = 0;
+        for (int red = 0; red < 6; red++) {
+            for (int green = 0; green < 6; green++) {
+                for (int blue = 0; blue < 6; blue++) {
+                    r[i] = (byte) (red * 51);
+                    g[i] = (byte) (green * 51);
+                    b[i] = (byte) (blue * 51);
+                    i++;
+                }
+            }
+        }
+
+        return new IndexColorModel(8, 216, r, g, b);
+    }
+
+    private static int distance(final int pRGB, final int pRed, final int pGreen, final int pBlue) {
+        int dr = ((pRGB >> 16) & 0xff) - pRed;
+        int dg = ((pRGB >> 8) & 0xff) - pGreen;
+        int db = (pRGB & 0xff) - pBlue;
+        return dr * dr + dg * dg + db * db;
+    }
+
+    public void testGetInstanceCached() {
+        IndexColorModel first = createWebSafe();
+        IndexColorModel second = createWebSafe();
+        assertNotSame(first, second);
+
+        InverseColorMapIndexColorModel cm = InverseColorMapIndexColorModel.getInstance(first);
+        assertSame(cm, InverseColorMapIndexColorModel.getInstance(second));
+        assertSame(cm, InverseColorMapIndexColorModel.getInstance(cm));
+    }
+
+    public void testGetInstancePrecision() {
+        IndexColorModel palette = createWebSafe();
+
+        InverseColorMapIndexColorModel normal = InverseColorMapIndexColorModel.getInstance(palette);
+        InverseColorMapIndexColorModel high = InverseColorMapIndexColorModel.getInstance(palette, InverseColorMapIndexColorModel.PRECISION_HIGH);
+
+        assertNotSame(normal, high);
+        assertSame(high, InverseColorMapIndexColorModel.getInstance(createWebSafe(), InverseColorMapIndexColorModel.PRECISION_HIGH));
+    }
+
+    public void testGetInstanceIllegalPrecision() {
+        try {
+            InverseColorMapIndexColorModel.getInstance(createWebSafe(), 8);
+            fail("Expected IllegalArgumentException");
+        }
+        catch (IllegalArgumentException expected) {
+        }
+    }
+
+    public void testHighPrecisionMoreAccurate() {
+        IndexColorModel palette = createWebSafe();
+        int[] rgbs = new int[palette.getMapSize()];
+        palette.getRGBs(rgbs);
+
+        InverseColorMapIndexColorModel normal = InverseColorMapIndexColorModel.getInstance(palette);
+        InverseColorMapIndexColorModel high = InverseColorMapIndexColorModel.getInstance(palette, InverseColorMapIndexColorModel.PRECISION_HIGH);
+
+        Random random = new Random(4242);
+        long normalError = 0;
+        long highError = 0;
+
+        for (int i = 0; i < 10000; i++) {
+            int red = random.nextInt(256);
+            int green = random.nextInt(256);
+            int blue = random.nextInt(256);
+
+            int best = Integer.MAX_VALUE;
+            for (int rgb : rgbs) {
+                best = Math.min(best, distance(rgb, red, green, blue));
+            }
+
+            normalError += distance(rgbs[normal.getIndexNearest(red, green, blue)], red, green, blue) - best;
+            highError += distance(rgbs[high.getIndexNearest(red, green, blue)], red, green, blue) - best;
+        }
+
+        assertTrue("High precision (" + highError + ") should be more accurate than normal (" + normalError + ")", highError < normalError);
+    }
+}
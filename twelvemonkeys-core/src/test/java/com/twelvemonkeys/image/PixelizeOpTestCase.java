@@ -0,0 +1,98 @@
+package com.twelvemonkeys.image;
+
+import junit.framework.TestCase;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+
+/**
+ * PixelizeOpTestCase
+ *
+ * @author <a href="mailto:harald.kuhr@gmail.com">Harald Kuhr</a>
+ * @author last modified by $Author: haku $
+ * @version $Id: PixelizeOpTestCase.java,v 1.0 Oct 19, 2026 9:41:12 AM haraldk Exp$
+ */
+public class PixelizeOpTestCase extends TestCase {
+    private static final int[] TYPES = {
+            BufferedImage.TYPE_INT_RGB,
+            BufferedImage.TYPE_3BYTE_BGR,
+            BufferedImage.TYPE_BYTE_GRAY,
+            BufferedImage.TYPE_USHORT_GRAY
+    };
+
+    public void testFilter() {
+        for (int type : TYPES) {
+            BufferedImage image = ImageTestUtil.createRandomImage(type, 36, 20);
+            BufferedImage result = new PixelizeOp(4).filter(image, null);
+
+            assertPixelized(image.getRaster(), result.getRaster(), 4, 4);
+        }
+    }
+
+    public void testFilterUneven() {
+        for (int type : TYPES) {
+            BufferedImage image = ImageTestUtil.createRandomImage(type, 9, 7);
+            BufferedImage result = new PixelizeOp(4, 3).filter(image, null);
+
+            assertPixelized(image.getRaster(), result.getRaster(), 4, 3);
+        }
+    }
+
+    public void testFilterLarge() {
+        // Large enough to be filtered in parallel bands
+        BufferedImage image = ImageTestUtil.createRandomImage(BufferedImage.TYPE_3BYTE_BGR, 1001, 767);
+        BufferedImage result = new PixelizeOp(10, 7).filter(image, null);
+
+        assertPixelized(image.getRaster(), result.getRaster(), 10, 7);
+    }
+
+    public void testFilterInPlace() {
+        BufferedImage image = ImageTestUtil.createRandomImage(BufferedImage.TYPE_INT_RGB, 503, 401);
+        Raster original = image.copyData(null);
+
+        assertSame(image, new PixelizeOp(5).filter(image, image));
+
+        assertPixelized(original, image.getRaster(), 5, 5);
+    }
+
+    public void testFilterSourceRegion() {
+        BufferedImage image = ImageTestUtil.createRandomImage(BufferedImage.TYPE_3BYTE_BGR, 300, 200);
+        Raster original = image.copyData(null);
+
+        PixelizeOp op = new PixelizeOp(6);
+        op.setSourceRegion(new Rectangle(20, 30, 200, 100));
+        op.filter(image, image);
+
+        assertPixelized(original.createChild(20, 30, 200, 100, 0, 0, null), image.getRaster().createChild(20, 30, 200, 100, 0, 0, null), 6, 6);
+
+        // Outside the region is untouched
+        assertEquals(original.getSample(19, 30, 0), image.getRaster().getSample(19, 30, 0));
+        assertEquals(original.getSample(220, 130, 1), image.getRaster().getSample(220, 130, 1));
+    }
+
+    private static void assertPixelized(final Raster pSource, final Raster pResult, final int pSizeX, final int pSizeY) {
+        for (int by = 0; by < pSource.getHeight(); by += pSizeY) {
+            for (int bx = 0; bx < pSource.getWidth(); bx += pSizeX) {
+                int w = Math.min(pSizeX, pSource.getWidth() - bx);
+                int h = Math.min(pSizeY, pSource.getHeight() - by);
+
+                for (int b = 0; b < pSource.getNumBands(); b++) {
+                    long sum = 0;
+                    for (int y = by; y < by + h; y++) {
+                        for (int x = bx; x < bx + w; x++) {
+                            sum += pSource.getSample(x, y, b);
+                        }
+                    }
+
+                    int expected = (int) (sum / (w * h));
+                    for (int y = by; y < by + h; y++) {
+                        for (int x = bx; x < bx + w; x++) {
+                            assertEquals(String.format("[%d, %d, %d]", x, y, b), expected, pResult.getSample(x, y, b));
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.twelvemonkeys.image;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Prints a report comparing single pass and two step resampling, for typical thumbnail reductions.
+ * Not a unit test, run from the command line.
+ *
+ * @author <a href="mailto:harald.kuhr@gmail.com">Harald Kuhr</a>
+ * @author last modified by $Author: haku $
+ * @version $Id: ResamplePolicyBenchmark.java,v 1.0 Oct 19, 2026 10:41:18 AM haraldk Exp$
+ */
+public final class ResamplePolicyBenchmark {
+    private ResamplePolicyBenchmark() {
+    }
+
+    public static void main(final String[] pArgs) {
+        BufferedImage image = ImageTestUtil.createPhotoLikeImage(4000, 3000);
+        int[][] sizes = {{1000, 750}, {400, 300}, {200, 150}, {80, 60}};
+
+        // PSNR and SSIM are measured against the exact area average, and between the direct and two step results
+        System.out.println("size\thints\tdirect ms\ttwo step ms\tdirect PSNR\ttwo step PSNR\tdirect SSIM\ttwo step SSIM\tPSNR\tSSIM");
+
+        for (int[] size : sizes) {
+            BufferedImage reference = new AreaAverageOp(size[0], size[1]).filter(image, null);
+
+            for (int hints : ResamplePolicyTestCase.HINTS) {
+                BufferedImage direct = null;
+                BufferedImage reduced = null;
+                long directTime = Long.MAX_VALUE;
+                long reducedTime = Long.MAX_VALUE;
+
+                for (int i = 0; i < 3; i++) {
+                    long start = System.nanoTime();
+                    direct = ImageUtil.createResampled(image, size[0], size[1], hints, ResamplePolicy.NONE);
+                    directTime = Math.min(directTime, System.nanoTime() - start);
+
+                    start = System.nanoTime();
+                    reduced = ImageUtil.createResampled(image, size[0], size[1], hints, ResamplePolicy.DEFAULT);
+                    reducedTime = Math.min(reducedTime, System.nanoTime() - start);
+                }
+
+                System.out.printf(
+                        "%dx%d\t%d\t%d\t%d\t%.2f\t%.2f\t%.4f\t%.4f\t%.2f\t%.4f%n",
+                        size[0], size[1], hints, directTime / 1000000, reducedTime / 1000000,
+                        ImageTestUtil.psnr(reference, direct), ImageTestUtil.psnr(reference, reduced),
+                        ImageTestUtil.ssim(reference, direct), ImageTestUtil.ssim(reference, reduced),
+                        ImageTestUtil.psnr(direct, reduced), ImageTestUtil.ssim(direct, reduced)
+                );
+            }
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.twelvemonkeys.image;
+
+import junit.framework.TestCase;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+
+/**
+ * ResamplePolicyTestCase
+ *
+ * @author <a href="mailto:harald.kuhr@gmail.com">Harald Kuhr</a>
+ * @author last modified by $Author: haku $
+ * @version $Id: ResamplePolicyTestCase.java,v 1.0 Oct 19, 2026 7:31:54 AM haraldk Exp$
+ */
+public class ResamplePolicyTestCase extends TestCase {
+    static final int[] HINTS = {Image.SCALE_DEFAULT, Image.SCALE_AREA_AVERAGING, Image.SCALE_SMOOTH};
+
+    private static final double MIN_PSNR = 30;
+    private static final double MIN_SSIM = 0.97;
+
+    public void testCreateIllegal() {
+        try {
+            new ResamplePolicy(4, 0.5);
+            fail("Expected IllegalArgumentException");
+        }
+        catch (IllegalArgumentException expected) {
+        }
+
+        try {
+            new ResamplePolicy(2, 3);
+            fail("Expected IllegalArgumentException");
+        }
+        catch (IllegalArgumentException expected) {
+        }
+
+        try {
+            new ResamplePolicy(Double.NaN, 2);
+            fail("Expected IllegalArgumentException");
+        }
+        catch (IllegalArgumentException expected) {
+        }
+    }
+
+    public void testReductionFactor() {
+        assertEquals(25, ResamplePolicy.DEFAULT.getReductionFactor(6000, 120));
+        assertEquals(2, ResamplePolicy.DEFAULT.getReductionFactor(480, 120));
+        assertEquals(2, ResamplePolicy.DEFAULT.getReductionFactor(719, 120));
+        assertEquals(3, ResamplePolicy.DEFAULT.getReductionFactor(720, 120));
+        assertEquals(1, ResamplePolicy.DEFAULT.getReductionFactor(479, 120));
+        assertEquals(1, ResamplePolicy.DEFAULT.getReductionFactor(120, 480));
+
+        assertEquals(1, ResamplePolicy.NONE.getReductionFactor(6000, 120));
+
+        assertEquals(8, new ResamplePolicy(8, 3).getReductionFactor(6000, 240));
+        assertEquals(1, new ResamplePolicy(8, 3).getReductionFactor(1900, 240));
+    }
+
+    public void testReduce() {
+        BufferedImage image = ImageTestUtil.createRandomImage(BufferedImage.TYPE_INT_RGB, 1000, 300);
+
+        BufferedImage reduced = ResamplePolicy.DEFAULT.reduce(image, 40, 100, ResampleOp.FILTER_LANCZOS);
+        assertEquals(BufferedImage.TYPE_INT_RGB, reduced.getType());
+        assertEquals(84, reduced.getWidth()); // 1000 / 12, rounded up
+        assertEquals(300, reduced.getHeight());
+
+        assertSame(image, ResamplePolicy.NONE.reduce(image, 40, 100, ResampleOp.FILTER_LANCZOS));
+        assertSame(image, ResamplePolicy.DEFAULT.reduce(image, 400, 100, ResampleOp.FILTER_LANCZOS));
+        assertSame(image, ResamplePolicy.DEFAULT.reduce(image, 40, 100, ResampleOp.FILTER_POINT));
+
+        BufferedImage indexed = new BufferedImage(1000, 300, BufferedImage.TYPE_BYTE_INDEXED);
+        assertSame(indexed, ResamplePolicy.DEFAULT.reduce(indexed, 40, 100, ResampleOp.FILTER_LANCZOS));
+    }
+
+    public void testCreateResampledNullPolicy() {
+        try {
+            ImageUtil.createResampled(new BufferedImage(10, 10, BufferedImage.TYPE_INT_RGB), 5, 5, Image.SCALE_DEFAULT, null);
+            fail("Expected IllegalArgumentException");
+        }
+        catch (IllegalArgumentException expected) {
+        }
+    }
+
+    public void testCreateResampledSmallReductionUnchanged() {
+        BufferedImage image = ImageTestUtil.createPhotoLikeImage(300, 200);
+
+        for (int hints : HINTS) {
+            ImageTestUtil.assertEqualPixels(
+                    ImageUtil.createResampled(image, 100, 67, hints, ResamplePolicy.NONE),
+                    ImageUtil.createResampled(image, 100, 67, hints)
+            );
+        }
+    }
+
+    public void testCreateResampledQuality() {
+        BufferedImage image = ImageTestUtil.createPhotoLikeImage(1600, 1200);
+
+        for (int hints : HINTS) {
+            BufferedImage direct = ImageUtil.createResampled(image, 64, 48, hints, ResamplePolicy.NONE);
+            BufferedImage reduced = ImageUtil.createResampled(image, 64, 48, hints);
+
+            assertEquals(64, reduced.getWidth());
+            assertEquals(48, reduced.getHeight());
+            assertEquals(direct.getType(), reduced.getType());
+
+            // The two step result should be visually the same as the single pass result for the same filter
+            double psnr = ImageTestUtil.psnr(direct, reduced);
+            double ssim = ImageTestUtil.ssim(direct, reduced);
+            assertTrue(String.format("PSNR %.2f < %.2f (hints: %d)", psnr, MIN_PSNR, hints), psnr >= MIN_PSNR);
+            assertTrue(String.format("SSIM %.4f < %.4f (hints: %d)", ssim, MIN_SSIM, hints), ssim >= MIN_SSIM);
+        }
+    }
+
+    public void testCreateScaledIndexed() {
+        BufferedImage image = ImageUtil.toBuffered(ImageTestUtil.createPhotoLikeImage(800, 600), BufferedImage.TYPE_BYTE_INDEXED);
+        BufferedImage scaled = ImageUtil.createScaled(image, 40, 30, Image.SCALE_SMOOTH);
+
+        assertEquals(BufferedImage.TYPE_BYTE_INDEXED, scaled.getType());
+        assertTrue(scaled.getColorModel() instanceof IndexColorModel);
+        assertEquals(40, scaled.getWidth());
+        assertEquals(30, scaled.getHeight());
+    }
+}
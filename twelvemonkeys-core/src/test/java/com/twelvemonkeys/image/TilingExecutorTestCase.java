@@ -0,0 +1,249 @@
+package com.twelvemonkeys.image;
+
+import junit.framework.TestCase;
+
+import java.awt.*;
+import java.awt.image.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * TilingExecutorTestCase
+ *
+ * @author <a href="mailto:harald.kuhr@gmail.com">Harald Kuhr</a>
+ * @author last modified by $Author: haku $
+ * @version $Id: TilingExecutorTestCase.java,v 1.0 Oct 19, 2026 9:23:48 AM haraldk Exp$
+ */
+public class TilingExecutorTestCase extends TestCase {
+    public void testInBands() {
+        final AtomicIntegerArray counts = new AtomicIntegerArray(1000);
+
+        TilingExecutor.inBands(counts.length(), TilingExecutor.MIN_BAND_SAMPLES, new TilingExecutor.Band() {
+            public void run(final int pFrom, final int pTo) {
+                for (int i = pFrom; i < pTo; i++) {
+                    counts.incrementAndGet(i);
+                }
+            }
+        });
+
+        for (int i = 0; i < counts.length(); i++) {
+            assertEquals(1, counts.get(i));
+        }
+    }
+
+    public void testInBandsNested() {
+        final AtomicIntegerArray counts = new AtomicIntegerArray(100 * 100);
+
+        TilingExecutor.inBands(100, 100 * TilingExecutor.MIN_BAND_SAMPLES, new TilingExecutor.Band() {
+            public void run(final int pFrom, final int pTo) {
+                for (int i = pFrom; i < pTo; i++) {
+                    final int row = i;
+
+                    TilingExecutor.inBands(100, TilingExecutor.MIN_BAND_SAMPLES, new TilingExecutor.Band() {
+                        public void run(final int pFrom, final int pTo) {
+                            for (int j = pFrom; j < pTo; j++) {
+                                counts.incrementAndGet(row * 100 + j);
+                            }
+                        }
+                    });
+                }
+            }
+        });
+
+        for (int i = 0; i < counts.length(); i++) {
+            assertEquals(1, counts.get(i));
+        }
+    }
+
+    public void testInBandsException() {
+        try {
+            TilingExecutor.inBands(1000, TilingExecutor.MIN_BAND_SAMPLES, new TilingExecutor.Band() {
+                public void run(final int pFrom, final int pTo) {
+                    if (pFrom == 0) {
+                        throw new IllegalStateException("foo");
+                    }
+                }
+            });
+            fail("Expected IllegalStateException");
+        }
+        catch (IllegalStateException expected) {
+            assertEquals("foo", expected.getMessage());
+        }
+    }
+
+    public void testInBandsExceptionInCallingThread() {
+        final AtomicInteger running = new AtomicInteger();
+
+        try {
+            TilingExecutor.inBands(1000, TilingExecutor.MIN_BAND_SAMPLES, new TilingExecutor.Band() {
+                public void run(final int pFrom, final int pTo) {
+                    // The last band is run in the calling thread
+                    if (pTo == 1000) {
+                        throw new IllegalStateException("foo");
+                    }
+
+                    running.incrementAndGet();
+                    try {
+                        Thread.sleep(50);
+                    }
+                    catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    finally {
+                        running.decrementAndGet();
+                    }
+                }
+            });
+            fail("Expected IllegalStateException");
+        }
+        catch (IllegalStateException expected) {
+            assertEquals("foo", expected.getMessage());
+        }
+
+        // No band may still be running once the exception has propagated
+        assertEquals(0, running.get());
+    }
+
+    public void testInBandsInterrupted() {
+        final AtomicInteger running = new AtomicInteger();
+
+        try {
+            TilingExecutor.inBands(1000, TilingExecutor.MIN_BAND_SAMPLES, new TilingExecutor.Band() {
+                public void run(final int pFrom, final int pTo) {
+                    // The last band is run in the calling thread
+                    if (pTo == 1000) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+
+                    running.incrementAndGet();
+                    try {
+                        Thread.sleep(50);
+                    }
+                    catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    finally {
+                        running.decrementAndGet();
+                    }
+                }
+            });
+
+            // Single band, run in the calling thread only
+            assertEquals(1, Runtime.getRuntime().availableProcessors());
+        }
+        catch (ImageFilterException expected) {
+            // No band may still be running once the exception has propagated
+            assertEquals(0, running.get());
+        }
+        finally {
+            // The interrupted status is restored, clear it
+            assertTrue(Thread.interrupted());
+        }
+    }
+
+    public void testInTiles() {
+        WritableRaster source = Raster.createBandedRaster(DataBuffer.TYPE_BYTE, 1000, 700, 1, new Point(-10, 20));
+        WritableRaster destination = Raster.createBandedRaster(DataBuffer.TYPE_BYTE, 1000, 700, 1, new Point(5, 7));
+
+        final List<Rectangle[]> tiles = Collections.synchronizedList(new ArrayList<Rectangle[]>());
+
+        TilingExecutor.inTiles(source, destination, 300, 200, 3, 2, new TilingExecutor.Tile() {
+            public void filter(final Raster pSource, final WritableRaster pDestination) {
+                tiles.add(new Rectangle[] {pSource.getBounds(), pDestination.getBounds()});
+
+                for (int y = pDestination.getMinY(); y < pDestination.getMinY() + pDestination.getHeight(); y++) {
+                    for (int x = pDestination.getMinX(); x < pDestination.getMinX() + pDestination.getWidth(); x++) {
+                        pDestination.setSample(x, y, 0, pDestination.getSample(x, y, 0) + 1);
+                    }
+                }
+            }
+        });
+
+        assertEquals(4 * 4, tiles.size());
+
+        // Source is the destination tile, grown by the overlap, but never outside the raster
+        for (Rectangle[] tile : tiles) {
+            Rectangle expected = new Rectangle(tile[1]);
+            expected.grow(3, 2);
+            assertEquals(expected.intersection(destination.getBounds()), tile[0]);
+        }
+
+        // Each destination pixel is filtered exactly once
+        for (int y = 0; y < 700; y++) {
+            for (int x = 0; x < 1000; x++) {
+                assertEquals(1, destination.getSample(x + 5, y + 7, 0));
+            }
+        }
+    }
+
+    public void testInTilesIllegal() {
+        WritableRaster raster = Raster.createBandedRaster(DataBuffer.TYPE_BYTE, 10, 10, 1, null);
+
+        try {
+            TilingExecutor.inTiles(raster, raster.createCompatibleWritableRaster(10, 9), 5, 5, 0, 0, null);
+            fail("Expected IllegalArgumentException");
+        }
+        catch (IllegalArgumentException expected) {
+        }
+
+        try {
+            TilingExecutor.inTiles(raster, raster, 0, 5, 0, 0, null);
+            fail("Expected IllegalArgumentException");
+        }
+        catch (IllegalArgumentException expected) {
+        }
+
+        try {
+            TilingExecutor.inTiles(raster, raster, 5, 5, -1, 0, null);
+            fail("Expected IllegalArgumentException");
+        }
+        catch (IllegalArgumentException expected) {
+        }
+    }
+
+    public void testFilterConvolveOp() {
+        Raster source = ImageTestUtil.createRandomImage(BufferedImage.TYPE_BYTE_GRAY, 800, 600).getRaster();
+        float[] data = new float[7 * 5];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (i + 1) / (float) (data.length * (data.length + 1) / 2);
+        }
+
+        for (int edge : new int[] {ConvolveOp.EDGE_ZERO_FILL, ConvolveOp.EDGE_NO_OP}) {
+            ConvolveOp op = new ConvolveOp(new Kernel(7, 5, data), edge, null);
+
+            WritableRaster expected = op.filter(source, null);
+            WritableRaster result = TilingExecutor.filter(op, source, null, 3, 2);
+
+            ImageTestUtil.assertEqualRasters(expected, result);
+        }
+    }
+
+    public void testFilterConvolveWithEdgeOp() {
+        Raster source = ImageTestUtil.createRandomImage(BufferedImage.TYPE_4BYTE_ABGR, 700, 500).getRaster();
+        Kernel kernel = new Kernel(5, 3, new float[] {
+                0.01f, 0.02f, 0.04f, 0.02f, 0.01f,
+                0.05f, 0.10f, 0.30f, 0.10f, 0.05f,
+                0.01f, 0.02f, 0.04f, 0.02f, 0.01f
+        });
+
+        for (int edge : new int[] {ConvolveWithEdgeOp.EDGE_REFLECT, ConvolveWithEdgeOp.EDGE_WRAP}) {
+            ConvolveWithEdgeOp op = new ConvolveWithEdgeOp(kernel, edge, null);
+
+            WritableRaster expected = op.filter(source, null);
+            WritableRaster result = TilingExecutor.filter(op, source, null, 2, 1);
+
+            if (edge == ConvolveWithEdgeOp.EDGE_REFLECT) {
+                ImageTestUtil.assertEqualRasters(expected, result);
+            }
+            else {
+                // Wrapping depends on the opposite edge, and so differs for tiles not touching both edges
+                Raster interior = expected.createChild(2, 1, 696, 498, 0, 0, null);
+                ImageTestUtil.assertEqualRasters(interior, result.createChild(2, 1, 696, 498, 0, 0, null));
+            }
+        }
+    }
+}
@@ -174,6 +174,80 @@ public class BeanUtilTestCase extends TestCase {
                    value, bean.getAmbigious());
     }
 
+    public void testConfigureConvertCached() {
+        TestBean bean = new TestBean();
+
+        // The conversion is done for each value, even if the method is cached
+        for (int i = 0; i < 3; i++) {
+            Map<String, String> map = new HashMap<String, String>();
+            map.put("intValue", String.valueOf(i));
+
+            try {
+                BeanUtil.configure(bean, map);
+            }
+            catch (InvocationTargetException e) {
+                fail(e.getMessage());
+            }
+
+            assertEquals(i, bean.getIntValue());
+        }
+
+        Map<String, String> map = new HashMap<String, String>();
+        map.put("intValue", "not a number");
+
+        try {
+            BeanUtil.configure(bean, map);
+        }
+        catch (InvocationTargetException e) {
+            fail(e.getMessage());
+        }
+
+        assertEquals(2, bean.getIntValue());
+    }
+
+    public void testGetPropertyValue() {
+        TestBean bean = new TestBean();
+        bean.setStringValue("foo");
+        bean.setChild(new TestBean());
+        bean.getChild().setIntValue(42);
+
+        // Repeated, to make sure cached accessors work the same way
+        for (int i = 0; i < 2; i++) {
+            assertEquals("foo", BeanUtil.getPropertyValue(bean, "stringValue"));
+            assertEquals(42, BeanUtil.getPropertyValue(bean, "child.intValue"));
+            assertNull(BeanUtil.getPropertyValue(bean, "child.stringValue"));
+        }
+    }
+
+    public void testGetPropertyValueNoMethod() {
+        TestBean bean = new TestBean();
+        bean.setChild(new TestBean());
+
+        for (int i = 0; i < 2; i++) {
+            assertNull(BeanUtil.getPropertyValue(bean, "noSuchMethod"));
+            assertNull(BeanUtil.getPropertyValue(bean, "child.noSuchMethod"));
+            assertNull(BeanUtil.getPropertyValue(bean, "child[1]"));
+        }
+    }
+
+    public void testSetPropertyValueNested() throws Exception {
+        TestBean bean = new TestBean();
+        bean.setChild(new TestBean());
+
+        BeanUtil.setPropertyValue(bean, "child.stringValue", "bar");
+        BeanUtil.setPropertyValue(bean, "child.intValue", 7);
+
+        assertEquals("bar", bean.getChild().getStringValue());
+        assertEquals(7, bean.getChild().getIntValue());
+
+        try {
+            BeanUtil.setPropertyValue(bean, "noSuchMethod", "foo");
+            fail("Expected NoSuchMethodException");
+        }
+        catch (NoSuchMethodException expected) {
+        }
+    }
+
     static class TestBean {
         private String mString;
         private int mInt;
@@ -181,6 +255,8 @@ public class BeanUtilTestCase extends TestCase {
 
         private Object mAmbigious;
 
+        private TestBean mChild;
+
         public Double getDoubleValue() {
             return mDouble;
         }
@@ -224,5 +300,13 @@ public class BeanUtilTestCase extends TestCase {
         public Object getAmbigious() {
             return mAmbigious;
         }
+
+        public TestBean getChild() {
+            return mChild;
+        }
+
+        public void setChild(TestBean pChild) {
+            mChild = pChild;
+        }
     }
 }
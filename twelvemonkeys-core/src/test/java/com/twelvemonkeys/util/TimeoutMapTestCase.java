@@ -19,6 +19,7 @@ package com.twelvemonkeys.util;
 import junit.framework.Test;
 import junit.framework.TestSuite;
 
+import java.io.*;
 import java.util.*;
 
 
@@ -628,5 +629,114 @@ public class TimeoutMapTestCase extends MapAbstractTestCase {
         assertTrue("Wrong entry removed, keySet().iterator() is broken.", !map.containsKey(removedKey));
         assertTrue("Wrong entry removed, keySet().iterator() is broken.", map.containsKey(otherKey));
     }
-}
 
+    public void testProcessRemovedOnExpiry() {
+        final List<Map.Entry> removed = new ArrayList<Map.Entry>();
+        TimeoutMap map = new TimeoutMap(50L) {
+            public void processRemoved(Entry pRemoved) {
+                removed.add(pRemoved);
+            }
+        };
+
+        map.put("key-1", "value-1");
+        map.put("key-2", "value-2");
+
+        synchronized (this) {
+            try {
+                Thread.sleep(60L);
+            }
+            catch (InterruptedException e) {
+                // Continue, but might break the timeout thing below...
+            }
+        }
+
+        map.put("key-3", "value-3"); // Expires the others
+
+        assertEquals(2, removed.size());
+        assertEquals("key-1", removed.get(0).getKey());
+        assertEquals("value-1", removed.get(0).getValue());
+        assertEquals("key-2", removed.get(1).getKey());
+        assertEquals(1, map.size());
+        assertEquals(2, removed.size());
+    }
+
+    public void testPutRenewsExpiry() {
+        TimeoutMap map = new TimeoutMap(100L);
+
+        map.put("key-1", "value-1");
+        map.put("key-2", "value-2");
+
+        synchronized (this) {
+            try {
+                Thread.sleep(60L);
+            }
+            catch (InterruptedException e) {
+                // Continue, but might break the timeout thing below...
+            }
+        }
+
+        map.put("key-1", "value-1b"); // Now expires after key-2
+
+        synchronized (this) {
+            try {
+                Thread.sleep(60L);
+            }
+            catch (InterruptedException e) {
+                // Continue, but might break the timeout thing below...
+            }
+        }
+
+        assertNull(map.get("key-2"));
+        assertEquals("value-1b", map.get("key-1"));
+        assertEquals(1, map.size());
+    }
+
+    public void testRemovedEntriesDoNotExpire() {
+        final List<Map.Entry> removed = new ArrayList<Map.Entry>();
+        TimeoutMap map = new TimeoutMap(50L) {
+            public void processRemoved(Entry pRemoved) {
+                removed.add(pRemoved);
+            }
+        };
+
+        for (int i = 0; i < 100; i++) {
+            map.put("key-" + i, "value-" + i);
+        }
+        for (int i = 0; i < 100; i += 2) {
+            map.remove("key-" + i);
+        }
+        map.clear();
+        map.put("key-0", "value-0");
+
+        synchronized (this) {
+            try {
+                Thread.sleep(60L);
+            }
+            catch (InterruptedException e) {
+                // Continue, but might break the timeout thing below...
+            }
+        }
+
+        assertTrue(map.isEmpty());
+        assertEquals(1, removed.size());
+        assertEquals("key-0", removed.get(0).getKey());
+    }
+
+    public void testSerializeLarge() throws IOException, ClassNotFoundException {
+        TimeoutMap<String, Integer> map = new TimeoutMap<String, Integer>(60 * 60 * 1000);
+        for (int i = 0; i < 100000; i++) {
+            map.put("key-" + i, i);
+        }
+
+        TimeoutMap<String, Integer> copy = (TimeoutMap<String, Integer>) readExternalFormFromBytes(writeExternalFormToBytes(map));
+
+        assertEquals(100000, copy.size());
+        assertEquals(map, copy);
+        assertEquals(60 * 60 * 1000, copy.getExpiryTime());
+
+        // The expiry list is rebuilt, so entries still expire and can be removed
+        assertEquals(Integer.valueOf(42), copy.remove("key-42"));
+        copy.setExpiryTime(-1);
+        assertTrue(copy.isEmpty());
+    }
+}
@@ -2,6 +2,8 @@ package com.twelvemonkeys.util.convert;
 
 import junit.framework.TestCase;
 
+import java.util.concurrent.atomic.AtomicBoolean;
+
 /**
  * ConverterTestCase
  * <p/>
@@ -15,4 +17,97 @@ public class ConverterTestCase extends TestCase {
     public void testMe() {
         // TODO: Implement tests
     }
+
+    public void testRegisterConverterReplacesResolved() throws ConversionException {
+        Converter converter = Converter.getInstance();
+
+        // Resolved using the Number converter
+        assertEquals(1, converter.toObject("1", Integer.class));
+
+        PropertyConverter integerConverter = new PropertyConverter() {
+            public Object toObject(String pString, Class pType, String pFormat) {
+                return 42;
+            }
+
+            public String toString(Object pObject, String pFormat) {
+                return "42";
+            }
+        };
+
+        Converter.registerConverter(Integer.class, integerConverter);
+        try {
+            assertEquals(42, converter.toObject("1", Integer.class));
+            assertEquals("42", converter.toString(1));
+        }
+        finally {
+            Converter.unregisterConverter(Integer.class);
+        }
+
+        assertEquals(1, converter.toObject("1", Integer.class));
+        assertEquals("1", converter.toString(1));
+    }
+
+    public void testUnregisterConverterConcurrentLookup() throws Exception {
+        final Converter converter = Converter.getInstance();
+        final PropertyConverter integerConverter = new PropertyConverter() {
+            public Object toObject(String pString, Class pType, String pFormat) {
+                return 42;
+            }
+
+            public String toString(Object pObject, String pFormat) {
+                return "42";
+            }
+        };
+
+        final AtomicBoolean done = new AtomicBoolean();
+        final Exception[] failure = new Exception[1];
+        Thread lookup = new Thread() {
+            public void run() {
+                try {
+                    while (!done.get()) {
+                        converter.toObject("1", Integer.class);
+                    }
+                }
+                catch (ConversionException e) {
+                    failure[0] = e;
+                }
+            }
+        };
+        lookup.start();
+
+        try {
+            for (int i = 0; i < 1000; i++) {
+                Converter.registerConverter(Integer.class, integerConverter);
+                Converter.unregisterConverter(Integer.class);
+            }
+        }
+        finally {
+            done.set(true);
+            lookup.join();
+        }
+
+        assertNull(failure[0]);
+
+        // A converter resolved while unregistering must not be memoized
+        assertEquals(1, converter.toObject("1", Integer.class));
+    }
+
+    public void testResolveNoConverterReplacedOnRegister() {
+        Converter converter = Converter.getInstance();
+
+        // Interfaces have no supertype with a converter, the miss is memoized
+        assertNull(converter.resolveConverter(Runnable.class));
+        assertNull(converter.resolveConverter(Runnable.class));
+
+        PropertyConverter runnableConverter = new DefaultConverter();
+        Converter.registerConverter(Runnable.class, runnableConverter);
+        try {
+            assertSame(runnableConverter, converter.resolveConverter(Runnable.class));
+        }
+        finally {
+            Converter.unregisterConverter(Runnable.class);
+        }
+
+        assertNull(converter.resolveConverter(Runnable.class));
+    }
 }
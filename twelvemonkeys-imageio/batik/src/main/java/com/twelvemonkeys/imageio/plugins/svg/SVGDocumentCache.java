@@ -0,0 +1,254 @@
+/*
+ * Copyright (c) 2008, Harald Kuhr
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name "TwelveMonkeys" nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.twelvemonkeys.imageio.plugins.svg;
+
+import org.apache.batik.bridge.BridgeContext;
+import org.apache.batik.dom.svg.SVGOMDocument;
+import org.apache.batik.gvt.GraphicsNode;
+import org.apache.batik.transcoder.TranscoderException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A cache of parsed SVG documents, and their GVT trees, keyed by the SVG
+ * source and base URI.
+ * <p/>
+ * The size of parsed documents can't easily be measured, so the cache is
+ * bounded by the total length of the SVG sources of the cached documents.
+ * When full, the least recently used documents are evicted.
+ *
+ * @author <a href="mailto:harald.kuhr@gmail.com">Harald Kuhr</a>
+ * @author last modified by $Author: haraldk$
+ * @version $Id: SVGDocumentCache.java,v 1.0 Oct 19, 2026 1:02:17 AM haraldk Exp$
+ */
+final class SVGDocumentCache {
+    private final long mMaxSize;
+    private final Map<Key, Entry> mEntries = new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+    private long mSize;
+
+    /**
+     * Creates an {@code SVGDocumentCache}.
+     *
+     * @param pMaxSize the maximum total length of the sources of the cached documents
+     */
+    SVGDocumentCache(final long pMaxSize) {
+        if (pMaxSize < 0) {
+            throw new IllegalArgumentException("max size < 0");
+        }
+
+        mMaxSize = pMaxSize;
+    }
+
+    synchronized Entry get(final Key pKey) {
+        return mEntries.get(pKey);
+    }
+
+    /**
+     * Caches the given entry.
+     * Evicted entries are {@link Entry#dispose() disposed}.
+     *
+     * @param pKey the key
+     * @param pEntry the entry
+     * @return {@code true} if the entry was cached, {@code false} if its source is larger than the cache
+     */
+    boolean put(final Key pKey, final Entry pEntry) {
+        if (pKey.mSource.length > mMaxSize) {
+            return false;
+        }
+
+        List<Entry> evicted = new ArrayList<Entry>();
+
+        synchronized (this) {
+            Entry old = mEntries.put(pKey, pEntry);
+            mSize += pKey.mSource.length;
+
+            if (old != null) {
+                // Replaced, the key (and size) is the same
+                mSize -= pKey.mSource.length;
+
+                if (old != pEntry) {
+                    evicted.add(old);
+                }
+            }
+
+            Iterator<Map.Entry<Key, Entry>> iterator = mEntries.entrySet().iterator();
+            while (mSize > mMaxSize && iterator.hasNext()) {
+                Map.Entry<Key, Entry> eldest = iterator.next();
+                mSize -= eldest.getKey().mSource.length;
+                evicted.add(eldest.getValue());
+                iterator.remove();
+            }
+        }
+
+        // NOTE: Dispose outside the cache lock, as it may wait for an ongoing render
+        for (Entry entry : evicted) {
+            entry.dispose();
+        }
+
+        return true;
+    }
+
+    synchronized int size() {
+        return mEntries.size();
+    }
+
+    synchronized long getSize() {
+        return mSize;
+    }
+
+    /**
+     * Identifies a document by its source, and base URI, as relative
+     * references are resolved against the base URI.
+     */
+    static final class Key {
+        private final byte[] mSource;
+        private final String mURI;
+        private final int mHash;
+
+        Key(final byte[] pSource, final String pURI) {
+            if (pSource == null) {
+                throw new IllegalArgumentException("source == null");
+            }
+
+            mSource = pSource;
+            mURI = pURI;
+            mHash = 31 * Arrays.hashCode(pSource) + (pURI != null ? pURI.hashCode() : 0);
+        }
+
+        @Override
+        public boolean equals(final Object pOther) {
+            if (this == pOther) {
+                return true;
+            }
+            if (!(pOther instanceof Key)) {
+                return false;
+            }
+
+            Key other = (Key) pOther;
+            return mHash == other.mHash
+                    && (mURI != null ? mURI.equals(other.mURI) : other.mURI == null)
+                    && Arrays.equals(mSource, other.mSource);
+        }
+
+        @Override
+        public int hashCode() {
+            return mHash;
+        }
+    }
+
+    /**
+     * A parsed SVG document, and its GVT tree, that may be rendered any number of times.
+     * <p/>
+     * Rendering modifies the tree (the viewing transform of the canvas node),
+     * so renderers must hold the lock of the entry while rendering.
+     */
+    static final class Entry {
+        private final SVGOMDocument mDocument;
+        private final String mURI;
+        private final GraphicsNode mRoot;
+        private final float mDefaultWidth;
+        private final float mDefaultHeight;
+        private final TranscoderException mException;
+        private BridgeContext mContext;
+
+        /**
+         * Creates an {@code Entry}.
+         *
+         * @param pDocument the parsed document
+         * @param pURI the base URI used when building the tree
+         * @param pRoot the root of the GVT tree, or {@code null} if building the tree failed
+         * @param pContext the bridge context used when building the tree
+         * @param pDefaultWidth the width of the document
+         * @param pDefaultHeight the height of the document
+         * @param pException the exception, if building the tree failed, otherwise {@code null}
+         */
+        Entry(final SVGOMDocument pDocument, final String pURI, final GraphicsNode pRoot, final BridgeContext pContext,
+              final float pDefaultWidth, final float pDefaultHeight, final TranscoderException pException) {
+            mDocument = pDocument;
+            mURI = pURI;
+            mRoot = pRoot;
+            mContext = pContext;
+            mDefaultWidth = pDefaultWidth;
+            mDefaultHeight = pDefaultHeight;
+            mException = pException;
+        }
+
+        SVGOMDocument getDocument() {
+            return mDocument;
+        }
+
+        String getURI() {
+            return mURI;
+        }
+
+        GraphicsNode getRoot() {
+            return mRoot;
+        }
+
+        synchronized BridgeContext getContext() {
+            return mContext;
+        }
+
+        float getDefaultWidth() {
+            return mDefaultWidth;
+        }
+
+        float getDefaultHeight() {
+            return mDefaultHeight;
+        }
+
+        TranscoderException getException() {
+            return mException;
+        }
+
+        /**
+         * Tests if the document is dynamic (scripted). Dynamic documents are modified when rendered, and can't be cached.
+         *
+         * @return {@code true} if the document is dynamic
+         */
+        synchronized boolean isDynamic() {
+            return mContext != null && mContext.isDynamic();
+        }
+
+        /**
+         * Disposes the bridge context. Waits for any ongoing render of this entry.
+         */
+        synchronized void dispose() {
+            if (mContext != null) {
+                mContext.dispose();
+                mContext = null;
+            }
+        }
+    }
+}
@@ -31,6 +31,7 @@ package com.twelvemonkeys.imageio.plugins.svg;
 import com.twelvemonkeys.image.ImageUtil;
 import com.twelvemonkeys.imageio.ImageReaderBase;
 import com.twelvemonkeys.imageio.util.IIOUtil;
+import com.twelvemonkeys.io.FileUtil;
 import org.apache.batik.bridge.*;
 import org.apache.batik.dom.svg.SVGDOMImplementation;
 import org.apache.batik.dom.svg.SVGOMDocument;
@@ -57,6 +58,7 @@ import java.awt.geom.AffineTransform;
 import java.awt.geom.Dimension2D;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
@@ -67,6 +69,10 @@ import java.util.Map;
 /**
  * Image reader for SVG document fragments.
  * <p/>
+ * Parsed documents and their GVT trees are cached, keyed by the SVG source
+ * and base URI, so rendering the same document at different sizes or AOIs,
+ * using the same or different readers, only parses the document once.
+ * Dynamic (scripted) documents are not cached.
  *
  * @author Harald Kuhr
  * @author Inpspired by code from the Batik Team
@@ -74,6 +80,14 @@ import java.util.Map;
  * @see <A href="http://www.mail-archive.com/batik-dev@xml.apache.org/msg00992.html">batik-dev</A>
  */
 public class SVGImageReader extends ImageReaderBase {
+    /**
+     * Maximum total length of the sources of the cached documents, 1 MB.
+     * The parsed documents and trees are typically many times larger.
+     */
+    private static final long DOCUMENT_CACHE_SIZE = 1L << 20;
+
+    private static final SVGDocumentCache sDocumentCache = new SVGDocumentCache(DOCUMENT_CACHE_SIZE);
+
     private Rasterizer mRasterizer = new Rasterizer();
 
     /**
@@ -86,6 +100,9 @@ public class SVGImageReader extends ImageReaderBase {
     }
 
     protected void resetMembers() {
+        if (mRasterizer != null) {
+            mRasterizer.reset();
+        }
     }
 
     @Override
@@ -94,30 +111,19 @@ public class SVGImageReader extends ImageReaderBase {
         mRasterizer = null;
     }
 
-    @Override
-    public void setInput(Object pInput, boolean pSeekForwardOnly, boolean pIgnoreMetadata) {
-        super.setInput(pInput, pSeekForwardOnly, pIgnoreMetadata);
-
-        if (mImageInput != null) {
-            TranscoderInput input = new TranscoderInput(IIOUtil.createStreamAdapter(mImageInput));
-            mRasterizer.setInput(input);
-        }
-    }
-
     public BufferedImage read(int pIndex, ImageReadParam pParam) throws IOException {
         checkBounds(pIndex);
 
-        String baseURI = null;
+        // Get the base URI (not a hint)
+        mRasterizer.setURI(pParam instanceof SVGReadParam ? ((SVGReadParam) pParam).getBaseURI() : null);
 
         if (pParam instanceof SVGReadParam) {
             SVGReadParam svgParam = (SVGReadParam) pParam;
+
             // Set IIOParams as hints
             // Note: The cast to Map invokes a different method that preserves
             // unset defaults, DO NOT REMOVE!
             mRasterizer.setTranscodingHints((Map) paramsToHints(svgParam));
-
-            // Get the base URI (not a hint)
-            baseURI = svgParam.getBaseURI();
         }
 
         Dimension size;
@@ -134,8 +140,11 @@ public class SVGImageReader extends ImageReaderBase {
         try {
             processImageStarted(pIndex);
 
-            mRasterizer.mTranscoderInput.setURI(baseURI);
-            BufferedImage image = mRasterizer.getImage();
+            BufferedImage image = mRasterizer.readImage();
+            if (image == null) {
+                // Aborted
+                return destination;
+            }
 
             Graphics2D g = destination.createGraphics();
             try {
@@ -244,24 +253,18 @@ public class SVGImageReader extends ImageReaderBase {
         return Collections.singleton(ImageTypeSpecifier.createFromRenderedImage(mRasterizer.createImage(1, 1))).iterator();
     }
 
+
     /**
-     * An image transcoder that stores the resulting image.
+     * An image transcoder that renders the (possibly cached) GVT tree of the document.
      * <p/>
      * NOTE: This class includes a lot of copy and paste code from the Batik classes
      * and needs major refactoring!
      */
     private class Rasterizer extends SVGAbstractTranscoder /*ImageTranscoder*/ {
-
-        BufferedImage mImage = null;
-        private TranscoderInput mTranscoderInput;
-        private float mDefaultWidth;
-        private float mDefaultHeight;
-        private boolean mInit = false;
-        private SVGOMDocument mDocument;
+        private byte[] mSource;
         private String mURI;
-        private GraphicsNode mGVTRoot;
-        private TranscoderException mException;
-        private BridgeContext mContext;
+        private SVGDocumentCache.Entry mTree;
+        private boolean mCached;
 
         public BufferedImage createImage(int w, int h) {
             return ImageUtil.createTransparent(w, h);//, BufferedImage.TYPE_INT_ARGB);
@@ -305,6 +308,7 @@ public class SVGImageReader extends ImageReaderBase {
 
             // Modified code below:
             GraphicsNode root = null;
+            TranscoderException exception = null;
             try {
                 root = builder.build(ctx, svgDoc);
             }
@@ -312,65 +316,104 @@ public class SVGImageReader extends ImageReaderBase {
                 // Note: This might fail, but we STILL have the dimensions we need
                 // However, we need to reparse later...
                 //throw new TranscoderException(ex);
-                mException = new TranscoderException(ex);
+                exception = new TranscoderException(ex);
             }
 
             // ----
 
             // get the 'width' and 'height' attributes of the SVG document
+            float defaultWidth = 200;
+            float defaultHeight = 200;
             Dimension2D docSize = ctx.getDocumentSize();
             if (docSize != null)  {
-                mDefaultWidth = (float) docSize.getWidth();
-                mDefaultHeight = (float) docSize.getHeight();
-            }
-            else {
-                mDefaultWidth = 200;
-                mDefaultHeight = 200;
+                defaultWidth = (float) docSize.getWidth();
+                defaultHeight = (float) docSize.getHeight();
             }
 
-            // Hack to work around exception above
-            if (root != null) {
-                mGVTRoot = root;
-            }
-            mDocument = svgDoc;
-            mURI = uri;
+            mTree = new SVGDocumentCache.Entry(svgDoc, uri, root, ctx, defaultWidth, defaultHeight, exception);
+            mCached = false;
 
-            //ctx.dispose();
             // Hack to avoid the transcode method wacking my context...
-            mContext = ctx;
             ctx = null;
         }
 
-        private BufferedImage readImage() throws TranscoderException {
-            init();
+        /**
+         * Returns the document and tree for the current input, from the cache if possible.
+         * If the tree could not be built without a base URI, the tree is rebuilt
+         * when a base URI is known.
+         *
+         * @param pRender {@code true} if the tree is needed for rendering
+         * @return the document and tree
+         * @throws TranscoderException if the document could not be parsed, or, if {@code pRender},
+         * the tree could not be built
+         */
+        private synchronized SVGDocumentCache.Entry getTree(final boolean pRender) throws TranscoderException {
+            if (mTree == null) {
+                SVGDocumentCache.Key key = new SVGDocumentCache.Key(getSource(), mURI);
+                SVGDocumentCache.Entry tree = sDocumentCache.get(key);
+
+                if (tree != null) {
+                    mTree = tree;
+                    mCached = true;
+                }
+                else {
+                    TranscoderInput input = new TranscoderInput(new ByteArrayInputStream(mSource));
+                    input.setURI(mURI);
+                    super.transcode(input, null);
 
-            if (abortRequested()) {
-                processReadAborted();
-                return null;
+                    cache(key);
+                }
             }
-            processImageProgress(10f);
+            else if (pRender && mTree.getRoot() == null && mURI != null && !mURI.equals(mTree.getURI())) {
+                // Hacky workaround: Try to rebuild, if we had no URI last time...
+                try {
+                    SVGOMDocument document = mTree.getDocument();
+                    discardTree();
+                    document.setURLObject(new URL(mURI));
+                    transcode(document, mURI, null);
 
+                    cache(new SVGDocumentCache.Key(mSource, mURI));
+                }
+                catch (MalformedURLException ignore) {
+                    // Ignored
+                }
+            }
 
-            // Hacky workaround below...
-            if (mGVTRoot == null) {
-                // Try to reparse, if we had no URI last time...
-                if (mURI != mTranscoderInput.getURI()) {
-                    try {
-                        mContext.dispose();
-                        mDocument.setURLObject(new URL(mTranscoderInput.getURI()));
-                        transcode(mDocument, mTranscoderInput.getURI(), null);
-                    }
-                    catch (MalformedURLException ignore) {
-                        // Ignored
-                    }
+            if (pRender && mTree.getRoot() == null) {
+                throw mTree.getException();
+            }
+
+            return mTree;
+        }
+
+        private void cache(final SVGDocumentCache.Key pKey) {
+            // Only complete, static trees can be shared
+            if (mTree.getRoot() != null && !mTree.isDynamic()) {
+                mCached = sDocumentCache.put(pKey, mTree);
+            }
+        }
+
+        private byte[] getSource() throws TranscoderException {
+            if (mSource == null) {
+                if (mImageInput == null) {
+                    throw new IllegalStateException("input == null");
                 }
 
-                if (mGVTRoot == null) {
-                    throw mException;
+                // Read the entire document, it is needed as cache key anyway
+                try {
+                    mSource = FileUtil.read(IIOUtil.createStreamAdapter(mImageInput));
+                }
+                catch (IOException e) {
+                    throw new TranscoderException(e);
                 }
             }
-            ctx = mContext;
-            // /Hacky
+
+            return mSource;
+        }
+
+        private BufferedImage readImage() throws TranscoderException {
+            SVGDocumentCache.Entry tree = getTree(true);
+
             if (abortRequested()) {
                 processReadAborted();
                 return null;
@@ -378,12 +421,12 @@ public class SVGImageReader extends ImageReaderBase {
             processImageProgress(20f);
 
             // -- --
-            SVGSVGElement root = mDocument.getRootElement();
+            SVGSVGElement root = tree.getDocument().getRootElement();
             // ----
 
 
             // ----
-            setImageSize(mDefaultWidth, mDefaultHeight);
+            setImageSize(tree.getDefaultWidth(), tree.getDefaultHeight());
 
             if (abortRequested()) {
                 processReadAborted();
@@ -393,7 +436,7 @@ public class SVGImageReader extends ImageReaderBase {
 
             // compute the preserveAspectRatio matrix
             AffineTransform Px;
-            String ref = new ParsedURL(mURI).getRef();
+            String ref = new ParsedURL(tree.getURI()).getRef();
 
             try {
                 Px = ViewBox.getViewTransform(ref, root, width, height);
@@ -403,12 +446,12 @@ public class SVGImageReader extends ImageReaderBase {
                 throw new TranscoderException(ex);
             }
 
-            if (Px.isIdentity() && (width != mDefaultWidth || height != mDefaultHeight)) {
+            if (Px.isIdentity() && (width != tree.getDefaultWidth() || height != tree.getDefaultHeight())) {
                 // The document has no viewBox, we need to resize it by hand.
                 // we want to keep the document size ratio
                 float xscale, yscale;
-                xscale = width / mDefaultWidth;
-                yscale = height / mDefaultHeight;
+                xscale = width / tree.getDefaultWidth();
+                yscale = height / tree.getDefaultHeight();
                 float scale = Math.min(xscale, yscale);
                 Px = AffineTransform.getScaleInstance(scale, scale);
             }
@@ -439,66 +482,72 @@ public class SVGImageReader extends ImageReaderBase {
             }
             processImageProgress(50f);
 
-            CanvasGraphicsNode cgn = getCanvasGraphicsNode(mGVTRoot);
-            if (cgn != null) {
-                cgn.setViewingTransform(Px);
-                curTxf = new AffineTransform();
-            }
-            else {
-                curTxf = Px;
-            }
+            // prepare the image to be painted
+            int w = (int) (width + 0.5);
+            int h = (int) (height + 0.5);
+            BufferedImage rend;
+
+            // NOTE: The tree may be shared with other readers, and rendering modifies it (the viewing transform),
+            // so only one thread may render a given tree at any time
+            synchronized (tree) {
+                CanvasGraphicsNode cgn = getCanvasGraphicsNode(tree.getRoot());
+                if (cgn != null) {
+                    cgn.setViewingTransform(Px);
+                    curTxf = new AffineTransform();
+                }
+                else {
+                    curTxf = Px;
+                }
 
-            try {
-                // dispatch an 'onload' event if needed
-                if (ctx.isDynamic()) {
-                    BaseScriptingEnvironment se;
-                    se = new BaseScriptingEnvironment(ctx);
-                    se.loadScripts();
-                    se.dispatchSVGLoadEvent();
+                try {
+                    // dispatch an 'onload' event if needed
+                    if (tree.isDynamic()) {
+                        BaseScriptingEnvironment se;
+                        se = new BaseScriptingEnvironment(tree.getContext());
+                        se.loadScripts();
+                        se.dispatchSVGLoadEvent();
+                    }
+                }
+                catch (BridgeException ex) {
+                    throw new TranscoderException(ex);
                 }
-            }
-            catch (BridgeException ex) {
-                throw new TranscoderException(ex);
-            }
 
-            this.root = mGVTRoot;
-            // ----
+                // ----
 
-            // NOTE: The code below is copied and pasted from the Batik
-            // ImageTranscoder class' transcode() method:
+                // NOTE: The code below is copied and pasted from the Batik
+                // ImageTranscoder class' transcode() method:
 
-            // prepare the image to be painted
-            int w = (int) (width + 0.5);
-            int h = (int) (height + 0.5);
+                // paint the SVG document using the bridge package
+                // create the appropriate renderer
+                ImageRendererFactory rendFactory = new ConcreteImageRendererFactory();
+                // ImageRenderer renderer = rendFactory.createDynamicImageRenderer();
+                ImageRenderer renderer = rendFactory.createStaticImageRenderer();
+                renderer.updateOffScreen(w, h);
+                renderer.setTransform(curTxf);
+                renderer.setTree(tree.getRoot());
 
-            // paint the SVG document using the bridge package
-            // create the appropriate renderer
-            ImageRendererFactory rendFactory = new ConcreteImageRendererFactory();
-            // ImageRenderer renderer = rendFactory.createDynamicImageRenderer();
-            ImageRenderer renderer = rendFactory.createStaticImageRenderer();
-            renderer.updateOffScreen(w, h);
-            renderer.setTransform(curTxf);
-            renderer.setTree(this.root);
-            this.root = null; // We're done with it...
+                if (abortRequested()) {
+                    processReadAborted();
+                    return null;
+                }
+                processImageProgress(75f);
 
-            if (abortRequested()) {
-                processReadAborted();
-                return null;
+                try {
+                    // now we are sure that the aoi is the image size
+                    Shape raoi = new Rectangle2D.Float(0, 0, width, height);
+                    // Warning: the renderer's AOI must be in user space
+                    renderer.repaint(curTxf.createInverse().
+                            createTransformedShape(raoi));
+                    // NOTE: repaint above cause nullpointer exception with fonts..???
+
+                    rend = renderer.getOffScreen();
+                }
+                catch (Exception ex) {
+                    throw new TranscoderException(ex.getMessage(), ex);
+                }
             }
-            processImageProgress(75f);
 
             try {
-                // now we are sure that the aoi is the image size
-                Shape raoi = new Rectangle2D.Float(0, 0, width, height);
-                // Warning: the renderer's AOI must be in user space
-                renderer.repaint(curTxf.createInverse().
-                        createTransformedShape(raoi));
-                // NOTE: repaint above cause nullpointer exception with fonts..???
-
-
-                BufferedImage rend = renderer.getOffScreen();
-                renderer = null; // We're done with it...
-
                 BufferedImage dest = createImage(w, h);
 
                 Graphics2D g2d = GraphicsUtil.createGraphics(dest);
@@ -531,44 +580,34 @@ public class SVGImageReader extends ImageReaderBase {
             catch (Exception ex) {
                 throw new TranscoderException(ex.getMessage(), ex);
             }
-            finally {
-                if (mContext != null) {
-                    mContext.dispose();
-                }
-            }
         }
 
-        private synchronized void init() throws TranscoderException {
-            if (!mInit) {
-                if (mTranscoderInput == null) {
-                    throw new IllegalStateException("input == null");
-                }
-
-                mInit = true;
-
-                super.transcode(mTranscoderInput, null);
-            }
+        protected int getDefaultWidth() throws TranscoderException {
+            return (int) (getTree(false).getDefaultWidth() + 0.5);
         }
 
-        private BufferedImage getImage() throws TranscoderException {
-            if (mImage == null) {
-                mImage = readImage();
-            }
-            return mImage;
+        protected int getDefaultHeight() throws TranscoderException {
+            return (int) (getTree(false).getDefaultHeight() + 0.5);
         }
 
-        protected int getDefaultWidth() throws TranscoderException {
-            init();
-            return (int) (mDefaultWidth + 0.5);
+        public synchronized void setURI(final String pURI) {
+            mURI = pURI;
         }
 
-        protected int getDefaultHeight() throws TranscoderException {
-            init();
-            return (int) (mDefaultHeight + 0.5);
+        private void discardTree() {
+            // Cached trees are disposed by the cache, when evicted
+            if (mTree != null && !mCached) {
+                mTree.dispose();
+            }
+
+            mTree = null;
+            mCached = false;
         }
 
-        public void setInput(TranscoderInput pInput) {
-            mTranscoderInput = pInput;
+        public synchronized void reset() {
+            discardTree();
+            mSource = null;
+            mURI = null;
         }
     }
 }
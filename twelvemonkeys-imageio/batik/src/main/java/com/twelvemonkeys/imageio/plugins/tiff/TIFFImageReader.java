@@ -109,11 +109,8 @@ public class TIFFImageReader extends ImageReaderBase {
             RenderedImage image = mDecoder.decodeAsRenderedImage(pIndex);
 
             // Subsample and apply AOI
-            if (pParam.getSourceRegion() != null) {
-                image = fakeAOI(ImageUtil.toBuffered(image), pParam);
-            }
-            if (pParam.getSourceXSubsampling() > 1 || pParam.getSourceYSubsampling() > 1) {
-                image = ImageUtil.toBuffered(fakeSubsampling(ImageUtil.toBuffered(image), pParam));
+            if (pParam.getSourceRegion() != null || pParam.getSourceXSubsampling() > 1 || pParam.getSourceYSubsampling() > 1) {
+                image = subsample(ImageUtil.toBuffered(image), pParam);
             }
 
             processImageComplete();
@@ -105,8 +105,7 @@ public class TIFFImageWriter extends ImageWriterBase {
             image = ImageUtil.toBuffered(renderedImage);
         }
 
-        image = fakeAOI(image, pParam);
-        image = ImageUtil.toBuffered(fakeSubsampling(image, pParam));
+        image = subsample(image, pParam);
 
         /*
         System.out.println("Image: " + pImage);
@@ -0,0 +1,92 @@
+package com.twelvemonkeys.imageio.plugins.svg;
+
+import junit.framework.TestCase;
+
+/**
+ * SVGDocumentCacheTestCase
+ *
+ * @author <a href="mailto:harald.kuhr@gmail.com">Harald Kuhr</a>
+ * @author last modified by $Author: haraldk$
+ * @version $Id: SVGDocumentCacheTestCase.java,v 1.0 Oct 19, 2026 1:31:44 AM haraldk Exp$
+ */
+public class SVGDocumentCacheTestCase extends TestCase {
+    private static SVGDocumentCache.Entry createEntry() {
+        return new SVGDocumentCache.Entry(null, null, null, null, 100, 100, null);
+    }
+
+    public void testKey() {
+        SVGDocumentCache.Key key = new SVGDocumentCache.Key(new byte[] {1, 2, 3}, null);
+
+        assertEquals(key, new SVGDocumentCache.Key(new byte[] {1, 2, 3}, null));
+        assertEquals(key.hashCode(), new SVGDocumentCache.Key(new byte[] {1, 2, 3}, null).hashCode());
+        assertFalse(key.equals(new SVGDocumentCache.Key(new byte[] {1, 2, 4}, null)));
+        assertFalse(key.equals(new SVGDocumentCache.Key(new byte[] {1, 2, 3}, "http://example.com/")));
+        assertEquals(
+                new SVGDocumentCache.Key(new byte[] {1, 2, 3}, "http://example.com/"),
+                new SVGDocumentCache.Key(new byte[] {1, 2, 3}, "http://example.com/")
+        );
+    }
+
+    public void testGet() {
+        SVGDocumentCache cache = new SVGDocumentCache(100);
+        SVGDocumentCache.Entry entry = createEntry();
+
+        assertTrue(cache.put(new SVGDocumentCache.Key(new byte[10], null), entry));
+
+        assertSame(entry, cache.get(new SVGDocumentCache.Key(new byte[10], null)));
+        assertNull(cache.get(new SVGDocumentCache.Key(new byte[11], null)));
+        assertEquals(10, cache.getSize());
+    }
+
+    public void testEvictLeastRecentlyUsed() {
+        SVGDocumentCache cache = new SVGDocumentCache(100);
+
+        SVGDocumentCache.Key a = new SVGDocumentCache.Key(new byte[40], "a");
+        SVGDocumentCache.Key b = new SVGDocumentCache.Key(new byte[40], "b");
+        SVGDocumentCache.Key c = new SVGDocumentCache.Key(new byte[40], "c");
+
+        cache.put(a, createEntry());
+        cache.put(b, createEntry());
+        assertNotNull(cache.get(a)); // b is now least recently used
+        cache.put(c, createEntry());
+
+        assertEquals(2, cache.size());
+        assertEquals(80, cache.getSize());
+        assertNotNull(cache.get(a));
+        assertNull(cache.get(b));
+        assertNotNull(cache.get(c));
+    }
+
+    public void testPutSameEntry() {
+        SVGDocumentCache cache = new SVGDocumentCache(100);
+        SVGDocumentCache.Key key = new SVGDocumentCache.Key(new byte[40], null);
+        SVGDocumentCache.Entry entry = createEntry();
+
+        cache.put(key, entry);
+        cache.put(key, entry);
+
+        assertEquals(1, cache.size());
+        assertEquals(40, cache.getSize());
+        assertSame(entry, cache.get(key));
+    }
+
+    public void testReplace() {
+        SVGDocumentCache cache = new SVGDocumentCache(100);
+        SVGDocumentCache.Key key = new SVGDocumentCache.Key(new byte[40], null);
+        SVGDocumentCache.Entry entry = createEntry();
+
+        cache.put(key, createEntry());
+        cache.put(new SVGDocumentCache.Key(new byte[40], null), entry);
+
+        assertEquals(1, cache.size());
+        assertEquals(40, cache.getSize());
+        assertSame(entry, cache.get(key));
+    }
+
+    public void testTooLargeIsNotCached() {
+        SVGDocumentCache cache = new SVGDocumentCache(10);
+
+        assertFalse(cache.put(new SVGDocumentCache.Key(new byte[11], null), createEntry()));
+        assertEquals(0, cache.size());
+    }
+}
@@ -32,6 +32,8 @@ import com.twelvemonkeys.imageio.util.ImageReaderAbstractTestCase;
 
 import javax.imageio.spi.ImageReaderSpi;
 import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
 
@@ -75,4 +77,46 @@ public class SVGImageReaderTestCase extends ImageReaderAbstractTestCase<SVGImage
     protected List<String> getMIMETypes() {
         return Arrays.asList("image/svg+xml");
     }
-}
\ No newline at end of file
+
+    public void testReadDifferentSizes() throws IOException {
+        SVGImageReader reader = createReader();
+        TestData data = getTestData().get(0);
+        reader.setInput(data.getInputStream());
+
+        SVGReadParam param = new SVGReadParam();
+        param.setSourceRenderSize(new Dimension(45, 50));
+        BufferedImage small = reader.read(0, param);
+        assertEquals(45, small.getWidth());
+        assertEquals(50, small.getHeight());
+
+        param.setSourceRenderSize(new Dimension(90, 100));
+        BufferedImage large = reader.read(0, param);
+        assertEquals(90, large.getWidth());
+        assertEquals(100, large.getHeight());
+
+        reader.dispose();
+    }
+
+    public void testReadSameDocumentDifferentReaders() throws IOException {
+        TestData data = getTestData().get(0);
+
+        SVGImageReader reader = createReader();
+        reader.setInput(data.getInputStream());
+        BufferedImage first = reader.read(0);
+        reader.dispose();
+
+        // The document and tree is now cached, and should render the same
+        SVGImageReader other = createReader();
+        other.setInput(data.getInputStream());
+        BufferedImage second = other.read(0);
+        other.dispose();
+
+        assertEquals(first.getWidth(), second.getWidth());
+        assertEquals(first.getHeight(), second.getHeight());
+        for (int y = 0; y < first.getHeight(); y += 10) {
+            for (int x = 0; x < first.getWidth(); x += 10) {
+                assertEquals(first.getRGB(x, y), second.getRGB(x, y));
+            }
+        }
+    }
+}
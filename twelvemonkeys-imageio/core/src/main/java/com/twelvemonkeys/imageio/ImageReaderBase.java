@@ -30,6 +30,7 @@ package com.twelvemonkeys.imageio;
 
 import com.twelvemonkeys.image.BufferedImageIcon;
 import com.twelvemonkeys.imageio.util.IIOUtil;
+import com.twelvemonkeys.imageio.util.SubsamplingRowFilter;
 
 import javax.imageio.*;
 import javax.imageio.metadata.IIOMetadata;
@@ -42,6 +43,8 @@ import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.image.BufferedImage;
 import java.awt.image.IndexColorModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
 import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
@@ -299,11 +302,77 @@ public abstract class ImageReaderBase extends ImageReader {
      * @return an {@code Image} containing the subsampled image, or the
      * original image, if no subsampling was specified, or
      * {@code pParam} was {@code null}
+     *
+     * @deprecated Use {@link #subsample(BufferedImage, ImageReadParam)} instead.
      */
     protected static Image fakeSubsampling(Image pImage, ImageReadParam pParam) {
         return IIOUtil.fakeSubsampling(pImage, pParam);
     }
 
+    /**
+     * Utility method for getting the subsampled area of interest (AOI) of an image.
+     * The AOI and subsampling is defined by the
+     * {@link javax.imageio.IIOParam#setSourceRegion(java.awt.Rectangle)} and
+     * {@link javax.imageio.IIOParam#setSourceSubsampling(int, int, int, int)}
+     * methods, including the subsampling offsets.
+     * <p/>
+     * Note: If it is possible for the reader to read the AOI and subsample
+     * directly, such a method should be used instead, for efficiency.
+     * See {@link SubsamplingRowFilter}.
+     *
+     * @param pImage the image to get the subsampled AOI from
+     * @param pParam the param optionally specifying the AOI and subsampling
+     *
+     * @return a {@code BufferedImage} containing the subsampled AOI, or the
+     * original image, if no AOI or subsampling was specified, or
+     * {@code pParam} was {@code null}
+     *
+     * @see IIOUtil#subsample(BufferedImage, javax.imageio.IIOParam)
+     */
+    protected static BufferedImage subsample(BufferedImage pImage, ImageReadParam pParam) {
+        return IIOUtil.subsample(pImage, pParam);
+    }
+
+    /**
+     * Utility method for copying the subsampled area of interest (AOI) of a
+     * fully decoded raster into the destination image.
+     * Honors the source region, subsampling and subsampling offsets, source
+     * and destination bands, and destination offset of {@code pParam}.
+     *
+     * @param pSource the decoded raster, with the same bounds as the source image
+     * @param pParam the param, may be {@code null}
+     * @param pDestination the destination image
+     *
+     * @throws IllegalArgumentException if the source and destination bands
+     * specified by {@code pParam} are illegal
+     */
+    protected static void subsample(final Raster pSource, final ImageReadParam pParam, final BufferedImage pDestination) {
+        int width = pSource.getWidth();
+        int height = pSource.getHeight();
+
+        Rectangle srcRegion = new Rectangle();
+        Rectangle destRegion = new Rectangle();
+        computeRegions(pParam, width, height, pDestination, srcRegion, destRegion);
+        srcRegion.translate(pSource.getMinX(), pSource.getMinY());
+
+        int[] srcBands = pParam != null ? pParam.getSourceBands() : null;
+        int[] destBands = pParam != null ? pParam.getDestinationBands() : null;
+        checkReadParamBandSettings(pParam, pSource.getNumBands(), pDestination.getSampleModel().getNumBands());
+
+        Raster source = srcBands == null ? pSource :
+                pSource.createChild(pSource.getMinX(), pSource.getMinY(), width, height, pSource.getMinX(), pSource.getMinY(), srcBands);
+        WritableRaster destination = destBands == null ? pDestination.getRaster() :
+                pDestination.getRaster().createWritableChild(0, 0, pDestination.getWidth(), pDestination.getHeight(), 0, 0, destBands);
+
+        SubsamplingRowFilter filter = new SubsamplingRowFilter(
+                srcRegion,
+                pParam != null ? pParam.getSourceXSubsampling() : 1,
+                pParam != null ? pParam.getSourceYSubsampling() : 1
+        );
+
+        IIOUtil.subsample(source, filter, destination, destRegion.x, destRegion.y);
+    }
+
     public static void main(String[] pArgs) throws IOException {
         BufferedImage image = ImageIO.read(new File(pArgs[0]));
         if (image == null) {
@@ -157,8 +157,30 @@ public abstract class ImageWriterBase extends ImageWriter {
      * @return an {@code Image} containing the subsampled image, or the
      * original image, if no subsampling was specified, or
      * {@code pParam} was {@code null}
+     *
+     * @deprecated Use {@link #subsample(BufferedImage, ImageWriteParam)} instead.
      */
     protected static Image fakeSubsampling(final Image pImage, final ImageWriteParam pParam) {
         return IIOUtil.fakeSubsampling(pImage, pParam);
     }
+
+    /**
+     * Utility method for getting the subsampled area of interest (AOI) of an image.
+     * The AOI and subsampling is defined by the
+     * {@link javax.imageio.IIOParam#setSourceRegion(java.awt.Rectangle)} and
+     * {@link javax.imageio.IIOParam#setSourceSubsampling(int, int, int, int)}
+     * methods, including the subsampling offsets.
+     *
+     * @param pImage the image to get the subsampled AOI from
+     * @param pParam the param optionally specifying the AOI and subsampling
+     *
+     * @return a {@code BufferedImage} containing the subsampled AOI, or the
+     * original image, if no AOI or subsampling was specified, or
+     * {@code pParam} was {@code null}
+     *
+     * @see IIOUtil#subsample(BufferedImage, javax.imageio.IIOParam)
+     */
+    protected static BufferedImage subsample(final BufferedImage pImage, final ImageWriteParam pParam) {
+        return IIOUtil.subsample(pImage, pParam);
+    }
 }
\ No newline at end of file
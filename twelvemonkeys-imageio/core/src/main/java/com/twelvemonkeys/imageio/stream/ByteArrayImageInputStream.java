@@ -14,34 +14,57 @@ import java.io.IOException;
  */
 public final class ByteArrayImageInputStream extends ImageInputStreamImpl {
     private final byte[] mData;
+    private final int mDataOffset;
+    private final int mDataLength;
 
     public ByteArrayImageInputStream(final byte[] pData) {
+        this(pData, 0, pData != null ? pData.length : 0);
+    }
+
+    /**
+     * Creates a {@code ByteArrayImageInputStream} reading from a part of the given array.
+     * Stream position {@code 0} corresponds to {@code pData[pOffset]}.
+     *
+     * @param pData the data
+     * @param pOffset the offset into {@code pData}
+     * @param pLength the number of bytes available to the stream
+     *
+     * @throws IllegalArgumentException if {@code pData} is {@code null}, or the offset and length
+     * are outside the bounds of {@code pData}
+     */
+    public ByteArrayImageInputStream(final byte[] pData, final int pOffset, final int pLength) {
         Validate.notNull(pData, "data");
+        if (pOffset < 0 || pLength < 0 || pOffset > pData.length - pLength) {
+            throw new IllegalArgumentException("offset/length out of bounds");
+        }
+
         mData = pData;
+        mDataOffset = pOffset;
+        mDataLength = pLength;
     }
 
     public int read() throws IOException {
-        if (streamPos >= mData.length) {
+        if (streamPos >= mDataLength) {
             return -1;
         }
         bitOffset = 0;
-        return mData[((int) streamPos++)] & 0xff;
+        return mData[mDataOffset + (int) streamPos++] & 0xff;
     }
 
     public int read(byte[] pBuffer, int pOffset, int pLength) throws IOException {
-        if (streamPos >= mData.length) {
+        if (streamPos >= mDataLength) {
             return -1;
         }
-        int length = (int) Math.min(mData.length - streamPos, pLength);
+        int length = (int) Math.min(mDataLength - streamPos, pLength);
         bitOffset = 0;
-        System.arraycopy(mData, (int) streamPos, pBuffer, pOffset, length);
+        System.arraycopy(mData, mDataOffset + (int) streamPos, pBuffer, pOffset, length);
         streamPos += length;
         return length;
     }
 
     @Override
     public long length() {
-        return mData.length;
+        return mDataLength;
     }
 
     @Override
@@ -9,11 +9,12 @@ import javax.imageio.spi.ServiceRegistry;
 import javax.imageio.stream.ImageInputStream;
 import javax.imageio.stream.ImageOutputStream;
 import java.awt.*;
-import java.awt.image.BufferedImage;
+import java.awt.image.*;
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Arrays;
 
 /**
  * IIOUtil
@@ -62,6 +63,19 @@ public final class IIOUtil {
         return new BufferedOutputStream(new IIOOutputStreamAdapter(pStream));
     }
 
+    /**
+     * Subsamples an image, using the AWT {@code ImageProducer} pipeline.
+     * <p/>
+     * NOTE: This method does not take the subsampling offsets into
+     * consideration, and the pixels used are not exactly the ones at the
+     * subsampling positions.
+     *
+     * @param pImage the image to subsample
+     * @param pParam the param optionally specifying subsampling
+     * @return the subsampled image, or {@code pImage} if no subsampling was specified
+     *
+     * @deprecated Use {@link #subsample(BufferedImage, IIOParam)} instead.
+     */
     public static Image fakeSubsampling(final Image pImage, final IIOParam pParam) {
         if (pImage == null) {
             return null;
@@ -121,6 +135,118 @@ public final class IIOUtil {
         return pImage;
     }
 
+    /**
+     * Extracts the area of interest (AOI) of an image, and subsamples it, as
+     * specified by the source region, subsampling and subsampling offsets of
+     * {@code pParam}.
+     * <p/>
+     * If no subsampling is specified, the AOI is returned as a sub image,
+     * sharing data with {@code pImage}. Otherwise, the pixels at the
+     * subsampling positions are copied, one row at a time, into a new image
+     * with the same color model and sample model layout as {@code pImage}.
+     *
+     * @param pImage the image to subsample
+     * @param pParam the param optionally specifying the AOI and subsampling, may be {@code null}
+     * @return the subsampled AOI, or {@code pImage} if neither AOI nor subsampling was specified
+     */
+    public static BufferedImage subsample(final BufferedImage pImage, final IIOParam pParam) {
+        if (pImage == null) {
+            return null;
+        }
+
+        SubsamplingRowFilter filter = new SubsamplingRowFilter(pParam, pImage.getWidth(), pImage.getHeight());
+
+        if (!filter.isSubsampling()) {
+            return fakeAOI(pImage, filter.getSourceRegion());
+        }
+
+        WritableRaster raster = pImage.getRaster().createCompatibleWritableRaster(filter.getWidth(), filter.getHeight());
+        subsample(pImage.getRaster(), filter, raster, 0, 0);
+
+        return new BufferedImage(pImage.getColorModel(), raster, pImage.isAlphaPremultiplied(), null);
+    }
+
+    /**
+     * Copies the subsampled area of interest (AOI) of a raster, into another raster.
+     * Only the source rows accepted by the filter are read, and the
+     * destination is clipped to its bounds.
+     * <p/>
+     * If the rasters have compatible sample models, the data elements are
+     * copied directly. Otherwise, the samples are copied.
+     * Use {@code Raster.createChild} to select source or destination bands.
+     *
+     * @param pSource the source raster
+     * @param pFilter the filter describing the AOI (in source raster coordinates) and subsampling
+     * @param pDestination the destination raster
+     * @param pDestX the x coordinate of the first destination pixel
+     * @param pDestY the y coordinate of the first destination pixel
+     *
+     * @throws IllegalArgumentException if the rasters have different number of bands
+     */
+    public static void subsample(final Raster pSource, final SubsamplingRowFilter pFilter,
+                                 final WritableRaster pDestination, final int pDestX, final int pDestY) {
+        if (pSource.getNumBands() != pDestination.getNumBands()) {
+            throw new IllegalArgumentException(
+                    String.format("Source and destination have different number of bands: %d != %d",
+                            pSource.getNumBands(), pDestination.getNumBands())
+            );
+        }
+
+        // Clip to destination bounds
+        int firstCol = Math.max(0, pDestination.getMinX() - pDestX);
+        int firstRow = Math.max(0, pDestination.getMinY() - pDestY);
+        int cols = Math.min(pFilter.getWidth(), pDestination.getMinX() + pDestination.getWidth() - pDestX) - firstCol;
+        int rows = Math.min(pFilter.getHeight(), pDestination.getMinY() + pDestination.getHeight() - pDestY) - firstRow;
+
+        if (cols <= 0 || rows <= 0) {
+            return;
+        }
+
+        int srcX = pFilter.getSourceColumn(firstCol);
+        int span = (cols - 1) * pFilter.getXSubsampling() + 1;
+
+        boolean sameTransfer = isSameTransferLayout(pSource.getSampleModel(), pDestination.getSampleModel());
+        int elements = sameTransfer ? pSource.getNumDataElements() : pSource.getNumBands();
+
+        Object row = null;
+        for (int y = firstRow; y < firstRow + rows; y++) {
+            int srcY = pFilter.getSourceRow(y);
+
+            if (sameTransfer) {
+                row = pSource.getDataElements(srcX, srcY, span, 1, row);
+                pFilter.decimate(row, elements, cols);
+                pDestination.setDataElements(pDestX + firstCol, pDestY + y, cols, 1, row);
+            }
+            else {
+                row = pSource.getPixels(srcX, srcY, span, 1, (int[]) row);
+                pFilter.decimate(row, elements, cols);
+                pDestination.setPixels(pDestX + firstCol, pDestY + y, cols, 1, (int[]) row);
+            }
+        }
+    }
+
+    private static boolean isSameTransferLayout(final SampleModel pSource, final SampleModel pDestination) {
+        if (pSource.getTransferType() != pDestination.getTransferType()
+                || pSource.getNumDataElements() != pDestination.getNumDataElements()) {
+            return false;
+        }
+
+        // Component sample models store one band per data element, in band order, regardless of offsets
+        if (pSource instanceof ComponentSampleModel && pDestination instanceof ComponentSampleModel) {
+            return true;
+        }
+        if (pSource instanceof SinglePixelPackedSampleModel && pDestination instanceof SinglePixelPackedSampleModel) {
+            return Arrays.equals(((SinglePixelPackedSampleModel) pSource).getBitMasks(),
+                    ((SinglePixelPackedSampleModel) pDestination).getBitMasks());
+        }
+        if (pSource instanceof MultiPixelPackedSampleModel && pDestination instanceof MultiPixelPackedSampleModel) {
+            return ((MultiPixelPackedSampleModel) pSource).getPixelBitStride()
+                    == ((MultiPixelPackedSampleModel) pDestination).getPixelBitStride();
+        }
+
+        return false;
+    }
+
     /**
      * Creates a {@link ProviderInfo} instance for the given service provider.
      *
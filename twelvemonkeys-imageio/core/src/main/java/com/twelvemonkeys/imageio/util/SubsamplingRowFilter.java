@@ -0,0 +1,280 @@
+/*
+ * Copyright (c) 2008, Harald Kuhr
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name "TwelveMonkeys" nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.twelvemonkeys.imageio.util;
+
+import javax.imageio.IIOParam;
+import java.awt.*;
+
+/**
+ * Maps rows and columns of a source image to the rows and columns of a
+ * subsampled area of interest (AOI), as specified by an {@link IIOParam}.
+ * <p/>
+ * Readers may use this class to decode only the source rows that are
+ * {@link #accepts(int) accepted}, and skip all others, and to
+ * {@link #decimate(Object, int) decimate} the columns of each decoded row.
+ *
+ * @author <a href="mailto:harald.kuhr@gmail.com">Harald Kuhr</a>
+ * @author last modified by $Author: haraldk$
+ * @version $Id: SubsamplingRowFilter.java,v 1.0 Oct 18, 2026 10:24:51 PM haraldk Exp$
+ *
+ * @see IIOUtil#subsample(java.awt.image.Raster, SubsamplingRowFilter, java.awt.image.WritableRaster, int, int)
+ */
+public final class SubsamplingRowFilter {
+    private final Rectangle mSourceRegion;
+    private final int mXSubsampling;
+    private final int mYSubsampling;
+    private final int mWidth;
+    private final int mHeight;
+
+    /**
+     * Creates a {@code SubsamplingRowFilter} for the given param and source image size.
+     * The source region is computed as by {@link IIOUtil#getSourceRegion(IIOParam, int, int)},
+     * and thus includes the subsampling offsets.
+     *
+     * @param pParam the param, may be {@code null}
+     * @param pSourceWidth the width of the source image
+     * @param pSourceHeight the height of the source image
+     */
+    public SubsamplingRowFilter(final IIOParam pParam, final int pSourceWidth, final int pSourceHeight) {
+        this(
+                IIOUtil.getSourceRegion(pParam, pSourceWidth, pSourceHeight),
+                pParam != null ? pParam.getSourceXSubsampling() : 1,
+                pParam != null ? pParam.getSourceYSubsampling() : 1
+        );
+    }
+
+    /**
+     * Creates a {@code SubsamplingRowFilter}.
+     *
+     * @param pSourceRegion the source region, including any subsampling offsets
+     * @param pXSubsampling the horizontal subsampling factor
+     * @param pYSubsampling the vertical subsampling factor
+     *
+     * @throws IllegalArgumentException if {@code pSourceRegion} is {@code null},
+     * or either subsampling factor is less than {@code 1}
+     */
+    public SubsamplingRowFilter(final Rectangle pSourceRegion, final int pXSubsampling, final int pYSubsampling) {
+        if (pSourceRegion == null) {
+            throw new IllegalArgumentException("source region == null");
+        }
+        if (pXSubsampling < 1 || pYSubsampling < 1) {
+            throw new IllegalArgumentException("subsampling < 1");
+        }
+
+        mSourceRegion = new Rectangle(pSourceRegion);
+        mXSubsampling = pXSubsampling;
+        mYSubsampling = pYSubsampling;
+
+        mWidth = Math.max(0, (mSourceRegion.width + mXSubsampling - 1) / mXSubsampling);
+        mHeight = Math.max(0, (mSourceRegion.height + mYSubsampling - 1) / mYSubsampling);
+    }
+
+    /**
+     * Returns the source region, including any subsampling offsets.
+     *
+     * @return a copy of the source region
+     */
+    public Rectangle getSourceRegion() {
+        return new Rectangle(mSourceRegion);
+    }
+
+    public int getXSubsampling() {
+        return mXSubsampling;
+    }
+
+    public int getYSubsampling() {
+        return mYSubsampling;
+    }
+
+    /**
+     * Returns {@code true} if either subsampling factor is greater than {@code 1}.
+     *
+     * @return {@code true} if this filter subsamples
+     */
+    public boolean isSubsampling() {
+        return mXSubsampling > 1 || mYSubsampling > 1;
+    }
+
+    /**
+     * Returns the width of the subsampled AOI.
+     *
+     * @return the destination width
+     */
+    public int getWidth() {
+        return mWidth;
+    }
+
+    /**
+     * Returns the height of the subsampled AOI.
+     *
+     * @return the destination height
+     */
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * Tests if the given source row is part of the subsampled AOI.
+     *
+     * @param pSourceRow the source row
+     * @return {@code true} if the row is needed, {@code false} if it can be skipped
+     */
+    public boolean accepts(final int pSourceRow) {
+        int row = pSourceRow - mSourceRegion.y;
+        return row >= 0 && row < mSourceRegion.height && row % mYSubsampling == 0;
+    }
+
+    /**
+     * Returns the destination row for an {@link #accepts(int) accepted} source row.
+     *
+     * @param pSourceRow the source row
+     * @return the destination row
+     */
+    public int getDestinationRow(final int pSourceRow) {
+        return (pSourceRow - mSourceRegion.y) / mYSubsampling;
+    }
+
+    /**
+     * Returns the source row for the given destination row.
+     *
+     * @param pDestinationRow the destination row
+     * @return the source row
+     */
+    public int getSourceRow(final int pDestinationRow) {
+        return mSourceRegion.y + pDestinationRow * mYSubsampling;
+    }
+
+    /**
+     * Returns the source column for the given destination column.
+     *
+     * @param pDestinationColumn the destination column
+     * @return the source column
+     */
+    public int getSourceColumn(final int pDestinationColumn) {
+        return mSourceRegion.x + pDestinationColumn * mXSubsampling;
+    }
+
+    /**
+     * Returns the number of source columns that must be read, starting at
+     * {@code getSourceRegion().x}, to get all columns of a destination row.
+     *
+     * @return the source span
+     */
+    public int getSourceSpan() {
+        return mWidth > 0 ? (mWidth - 1) * mXSubsampling + 1 : 0;
+    }
+
+    /**
+     * Decimates a row of pixels in place, keeping only the pixels at the
+     * subsampling positions.
+     * On input, the array holds {@code (pLength - 1) * xSubsampling + 1}
+     * pixels, with the first pixel being a subsampling position.
+     * On output, the first {@code pLength} pixels of the array are the decimated row.
+     *
+     * @param pRow a {@code byte}, {@code short}, {@code int}, {@code float} or
+     * {@code double} array, as returned from {@code Raster.getDataElements} or
+     * {@code Raster.getPixels}
+     * @param pElementsPerPixel number of array elements per pixel
+     * @param pLength number of pixels in the decimated row
+     * @return {@code pRow}
+     */
+    public Object decimate(final Object pRow, final int pElementsPerPixel, final int pLength) {
+        if (mXSubsampling == 1) {
+            return pRow;
+        }
+
+        int step = mXSubsampling * pElementsPerPixel;
+
+        // NOTE: As destination index <= source index, in place copy from the left is safe
+        if (pRow instanceof byte[]) {
+            byte[] row = (byte[]) pRow;
+            for (int x = 0, src = 0, dst = 0; x < pLength; x++, src += step) {
+                for (int i = 0; i < pElementsPerPixel; i++) {
+                    row[dst++] = row[src + i];
+                }
+            }
+        }
+        else if (pRow instanceof short[]) {
+            short[] row = (short[]) pRow;
+            for (int x = 0, src = 0, dst = 0; x < pLength; x++, src += step) {
+                for (int i = 0; i < pElementsPerPixel; i++) {
+                    row[dst++] = row[src + i];
+                }
+            }
+        }
+        else if (pRow instanceof int[]) {
+            int[] row = (int[]) pRow;
+            for (int x = 0, src = 0, dst = 0; x < pLength; x++, src += step) {
+                for (int i = 0; i < pElementsPerPixel; i++) {
+                    row[dst++] = row[src + i];
+                }
+            }
+        }
+        else if (pRow instanceof float[]) {
+            float[] row = (float[]) pRow;
+            for (int x = 0, src = 0, dst = 0; x < pLength; x++, src += step) {
+                for (int i = 0; i < pElementsPerPixel; i++) {
+                    row[dst++] = row[src + i];
+                }
+            }
+        }
+        else if (pRow instanceof double[]) {
+            double[] row = (double[]) pRow;
+            for (int x = 0, src = 0, dst = 0; x < pLength; x++, src += step) {
+                for (int i = 0; i < pElementsPerPixel; i++) {
+                    row[dst++] = row[src + i];
+                }
+            }
+        }
+        else {
+            throw new IllegalArgumentException("Unsupported row type: " + (pRow != null ? pRow.getClass() : null));
+        }
+
+        return pRow;
+    }
+
+    /**
+     * Decimates a full row of the subsampled AOI in place.
+     *
+     * @param pRow the row, holding {@link #getSourceSpan()} pixels
+     * @param pElementsPerPixel number of array elements per pixel
+     * @return {@code pRow}
+     *
+     * @see #decimate(Object, int, int)
+     */
+    public Object decimate(final Object pRow, final int pElementsPerPixel) {
+        return decimate(pRow, pElementsPerPixel, mWidth);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[source region: " + mSourceRegion
+                + ", subsampling: " + mXSubsampling + "x" + mYSubsampling + "]";
+    }
+}
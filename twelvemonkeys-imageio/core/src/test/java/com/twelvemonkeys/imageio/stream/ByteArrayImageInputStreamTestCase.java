@@ -34,6 +34,41 @@ public class ByteArrayImageInputStreamTestCase extends TestCase {
         }
     }
 
+    public void testCreateOffsetOutOfBounds() {
+        try {
+            new ByteArrayImageInputStream(new byte[10], 5, 6);
+            fail("Expected IllegalArgumentException");
+        }
+        catch (IllegalArgumentException expected) {
+        }
+
+        try {
+            new ByteArrayImageInputStream(new byte[10], -1, 2);
+            fail("Expected IllegalArgumentException");
+        }
+        catch (IllegalArgumentException expected) {
+        }
+    }
+
+    public void testReadOffset() throws IOException {
+        byte[] data = new byte[1024];
+        mRandom.nextBytes(data);
+
+        ByteArrayImageInputStream stream = new ByteArrayImageInputStream(data, 17, 512);
+
+        assertEquals("Stream length should be same as length", 512, stream.length());
+
+        for (int i = 0; i < 512; i++) {
+            assertEquals("Wrong data read", data[17 + i] & 0xff, stream.read());
+        }
+        assertEquals(-1, stream.read());
+
+        stream.seek(500);
+        byte[] result = new byte[20];
+        assertEquals(12, stream.read(result, 0, result.length));
+        assertTrue("Wrong data read", rangeEquals(data, 517, result, 0, 12));
+    }
+
     public void testRead() throws IOException {
         byte[] data = new byte[1024 * 1024];
         mRandom.nextBytes(data);
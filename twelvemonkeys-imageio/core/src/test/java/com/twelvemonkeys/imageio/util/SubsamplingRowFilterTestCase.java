@@ -0,0 +1,163 @@
+package com.twelvemonkeys.imageio.util;
+
+import junit.framework.TestCase;
+
+import javax.imageio.ImageReadParam;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+import java.util.Random;
+
+/**
+ * SubsamplingRowFilterTestCase
+ *
+ * @author <a href="mailto:harald.kuhr@gmail.com">Harald Kuhr</a>
+ * @author last modified by $Author: haraldk$
+ * @version $Id: SubsamplingRowFilterTestCase.java,v 1.0 Oct 18, 2026 10:58:13 PM haraldk Exp$
+ */
+public class SubsamplingRowFilterTestCase extends TestCase {
+
+    public void testCreateIllegalSubsampling() {
+        try {
+            new SubsamplingRowFilter(new Rectangle(10, 10), 0, 1);
+            fail("Expected IllegalArgumentException");
+        }
+        catch (IllegalArgumentException expected) {
+        }
+    }
+
+    public void testNullParam() {
+        SubsamplingRowFilter filter = new SubsamplingRowFilter((ImageReadParam) null, 17, 11);
+
+        assertEquals(new Rectangle(17, 11), filter.getSourceRegion());
+        assertFalse(filter.isSubsampling());
+        assertEquals(17, filter.getWidth());
+        assertEquals(11, filter.getHeight());
+        for (int y = 0; y < 11; y++) {
+            assertTrue(filter.accepts(y));
+            assertEquals(y, filter.getDestinationRow(y));
+        }
+        assertFalse(filter.accepts(-1));
+        assertFalse(filter.accepts(11));
+    }
+
+    public void testRows() {
+        ImageReadParam param = new ImageReadParam();
+        param.setSourceRegion(new Rectangle(2, 3, 10, 10));
+        param.setSourceSubsampling(3, 4, 1, 2);
+
+        SubsamplingRowFilter filter = new SubsamplingRowFilter(param, 100, 100);
+
+        // Region is (3, 5, 9, 8), as offsets are included
+        assertEquals(new Rectangle(3, 5, 9, 8), filter.getSourceRegion());
+        assertEquals(3, filter.getWidth());
+        assertEquals(2, filter.getHeight());
+        assertEquals(7, filter.getSourceSpan());
+
+        for (int y = 0; y < 20; y++) {
+            assertEquals("row " + y, y == 5 || y == 9, filter.accepts(y));
+        }
+        assertEquals(0, filter.getDestinationRow(5));
+        assertEquals(1, filter.getDestinationRow(9));
+        assertEquals(9, filter.getSourceRow(1));
+        assertEquals(9, filter.getSourceColumn(2));
+    }
+
+    public void testDecimate() {
+        SubsamplingRowFilter filter = new SubsamplingRowFilter(new Rectangle(7, 1), 3, 1);
+
+        byte[] row = {1, 2, 3, 4, 5, 6, 7};
+        filter.decimate(row, 1);
+        assertEquals(1, row[0]);
+        assertEquals(4, row[1]);
+        assertEquals(7, row[2]);
+
+        int[] pixels = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14};
+        filter.decimate(pixels, 2);
+        assertEquals(1, pixels[0]);
+        assertEquals(2, pixels[1]);
+        assertEquals(7, pixels[2]);
+        assertEquals(8, pixels[3]);
+        assertEquals(13, pixels[4]);
+        assertEquals(14, pixels[5]);
+    }
+
+    public void testSubsampleImage() {
+        int[] types = {
+                BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_3BYTE_BGR,
+                BufferedImage.TYPE_4BYTE_ABGR, BufferedImage.TYPE_USHORT_GRAY, BufferedImage.TYPE_BYTE_BINARY
+        };
+
+        ImageReadParam param = new ImageReadParam();
+        param.setSourceRegion(new Rectangle(5, 7, 60, 41));
+        param.setSourceSubsampling(3, 2, 2, 1);
+
+        for (int type : types) {
+            BufferedImage image = createRandomImage(type, 97, 71);
+            BufferedImage subsampled = IIOUtil.subsample(image, param);
+
+            assertEquals(image.getType(), subsampled.getType());
+            assertEquals(20, subsampled.getWidth()); // (60 - 2) / 3, rounded up
+            assertEquals(20, subsampled.getHeight()); // (41 - 1) / 2
+
+            for (int y = 0; y < subsampled.getHeight(); y++) {
+                for (int x = 0; x < subsampled.getWidth(); x++) {
+                    assertEquals("type " + type + ", " + x + ", " + y,
+                            image.getRGB(7 + x * 3, 8 + y * 2), subsampled.getRGB(x, y));
+                }
+            }
+        }
+    }
+
+    public void testSubsampleImageNoSubsampling() {
+        BufferedImage image = createRandomImage(BufferedImage.TYPE_INT_RGB, 10, 10);
+
+        assertSame(image, IIOUtil.subsample(image, null));
+        assertSame(image, IIOUtil.subsample(image, new ImageReadParam()));
+    }
+
+    public void testSubsampleRasterOffsetAndBands() {
+        BufferedImage image = createRandomImage(BufferedImage.TYPE_3BYTE_BGR, 40, 40);
+        BufferedImage destination = new BufferedImage(30, 30, BufferedImage.TYPE_INT_RGB);
+
+        SubsamplingRowFilter filter = new SubsamplingRowFilter(new Rectangle(0, 0, 40, 40), 2, 2);
+
+        // Copy only the red band, to the green band of the destination
+        IIOUtil.subsample(
+                image.getRaster().createChild(0, 0, 40, 40, 0, 0, new int[] {0}),
+                filter,
+                destination.getRaster().createWritableChild(0, 0, 30, 30, 0, 0, new int[] {1}),
+                15, 5
+        );
+
+        for (int y = 0; y < 30; y++) {
+            for (int x = 0; x < 30; x++) {
+                int rgb = destination.getRGB(x, y);
+
+                if (x < 15 || y < 5 || y >= 25) {
+                    assertEquals(0, rgb & 0xffffff);
+                }
+                else {
+                    int red = (image.getRGB((x - 15) * 2, (y - 5) * 2) >> 16) & 0xff;
+                    assertEquals(red << 8, rgb & 0xffffff);
+                }
+            }
+        }
+    }
+
+    private static BufferedImage createRandomImage(final int pType, final int pWidth, final int pHeight) {
+        BufferedImage image = new BufferedImage(pWidth, pHeight, pType);
+        WritableRaster raster = image.getRaster();
+        Random random = new Random(pType);
+
+        for (int y = 0; y < pHeight; y++) {
+            for (int x = 0; x < pWidth; x++) {
+                for (int b = 0; b < raster.getNumBands(); b++) {
+                    raster.setSample(x, y, b, random.nextInt(1 << raster.getSampleModel().getSampleSize(b)));
+                }
+            }
+        }
+
+        return image;
+    }
+}
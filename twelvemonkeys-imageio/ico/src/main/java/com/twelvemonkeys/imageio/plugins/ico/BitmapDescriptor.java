@@ -28,8 +28,10 @@
 
 package com.twelvemonkeys.imageio.plugins.ico;
 
+import com.twelvemonkeys.imageio.util.SubsamplingRowFilter;
 import com.twelvemonkeys.lang.Validate;
 
+import java.awt.*;
 import java.awt.image.BufferedImage;
 
 /**
@@ -41,24 +43,47 @@ import java.awt.image.BufferedImage;
 abstract class BitmapDescriptor {
     protected final DirectoryEntry mEntry;
     protected final DIBHeader mHeader;
+    protected final SubsamplingRowFilter mFilter;
 
     protected BufferedImage mImage;
 
     public BitmapDescriptor(final DirectoryEntry pEntry, final DIBHeader pHeader) {
+        this(pEntry, pHeader, null);
+    }
+
+    /**
+     * Creates a descriptor for the subsampled area of interest described by {@code pFilter}.
+     * The {@link #getWidth() width} and {@link #getHeight() height} of the descriptor will be
+     * the size of the subsampled AOI, while the source width and height is the size of the entry.
+     *
+     * @param pEntry the directory entry
+     * @param pHeader the DIB header
+     * @param pFilter the filter, or {@code null} for the full bitmap
+     */
+    public BitmapDescriptor(final DirectoryEntry pEntry, final DIBHeader pHeader, final SubsamplingRowFilter pFilter) {
         Validate.notNull(pEntry, "entry");
         Validate.notNull(pHeader, "header");
         
         mEntry = pEntry;
         mHeader = pHeader;
+        mFilter = pFilter != null ? pFilter : new SubsamplingRowFilter(new Rectangle(pEntry.getWidth(), pEntry.getHeight()), 1, 1);
     }
 
     abstract public BufferedImage getImage();
 
     public final int getWidth() {
-        return mEntry.getWidth();
+        return mFilter.getWidth();
     }
 
     public final int getHeight() {
+        return mFilter.getHeight();
+    }
+
+    protected final int getSourceWidth() {
+        return mEntry.getWidth();
+    }
+
+    protected final int getSourceHeight() {
         return mEntry.getHeight();
     }
 
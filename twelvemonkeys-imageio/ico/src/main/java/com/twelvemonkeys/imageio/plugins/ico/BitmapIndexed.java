@@ -29,6 +29,7 @@
 package com.twelvemonkeys.imageio.plugins.ico;
 
 import com.twelvemonkeys.image.InverseColorMapIndexColorModel;
+import com.twelvemonkeys.imageio.util.SubsamplingRowFilter;
 
 import java.awt.image.BufferedImage;
 import java.awt.image.DataBuffer;
@@ -49,7 +50,11 @@ class BitmapIndexed extends BitmapDescriptor {
     private BitmapMask mMask;
 
     public BitmapIndexed(final DirectoryEntry pEntry, final DIBHeader pHeader) {
-        super(pEntry, pHeader);
+        this(pEntry, pHeader, null);
+    }
+
+    public BitmapIndexed(final DirectoryEntry pEntry, final DIBHeader pHeader, final SubsamplingRowFilter pFilter) {
+        super(pEntry, pHeader, pFilter);
         mBits = new int[getWidth() * getHeight()];
 
         // NOTE: We're adding space for one extra color, for transparency
@@ -79,12 +84,12 @@ class BitmapIndexed extends BitmapDescriptor {
         WritableRaster raster = image.getRaster();
 
         // Make pixels transparant according to mask
+        // NOTE: The mask is decoded with the same filter as the bits, so this is a single pass over the AOI
         final int trans = icm.getTransparentPixel();
-        for (int y = 0; y < getHeight(); y++) {
-            for (int x = 0; x < getWidth(); x++) {
-                if (mMask.isTransparent(x, y)) {
-                    mBits[x + getWidth() * y] = trans;
-                }
+        final int[] mask = mMask.mMask.mBits;
+        for (int i = 0; i < mBits.length; i++) {
+            if (mask[i] != 0) {
+                mBits[i] = trans;
             }
         }
 
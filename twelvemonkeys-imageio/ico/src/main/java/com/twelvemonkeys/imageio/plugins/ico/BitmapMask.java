@@ -28,6 +28,8 @@
 
 package com.twelvemonkeys.imageio.plugins.ico;
 
+import com.twelvemonkeys.imageio.util.SubsamplingRowFilter;
+
 import java.awt.image.BufferedImage;
 
 
@@ -41,8 +43,12 @@ class BitmapMask extends BitmapDescriptor {
     protected final BitmapIndexed mMask;
 
     public BitmapMask(final DirectoryEntry pParent, final DIBHeader pHeader) {
-        super(pParent, pHeader);
-        mMask = new BitmapIndexed(pParent, pHeader);
+        this(pParent, pHeader, null);
+    }
+
+    public BitmapMask(final DirectoryEntry pParent, final DIBHeader pHeader, final SubsamplingRowFilter pFilter) {
+        super(pParent, pHeader, pFilter);
+        mMask = new BitmapIndexed(pParent, pHeader, pFilter);
     }
 
     boolean isTransparent(final int pX, final int pY) {
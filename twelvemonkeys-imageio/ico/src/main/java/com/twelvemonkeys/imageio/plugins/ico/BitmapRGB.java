@@ -28,6 +28,8 @@
 
 package com.twelvemonkeys.imageio.plugins.ico;
 
+import com.twelvemonkeys.imageio.util.SubsamplingRowFilter;
+
 import java.awt.image.BufferedImage;
 
 /**
@@ -42,6 +44,10 @@ class BitmapRGB extends BitmapDescriptor {
         super(pEntry, pHeader);
     }
 
+    public BitmapRGB(final DirectoryEntry pEntry, final DIBHeader pHeader, final SubsamplingRowFilter pFilter) {
+        super(pEntry, pHeader, pFilter);
+    }
+
     public BufferedImage getImage() {
         return mImage;
     }
@@ -28,10 +28,10 @@
 
 package com.twelvemonkeys.imageio.plugins.ico;
 
-import com.twelvemonkeys.image.ImageUtil;
 import com.twelvemonkeys.imageio.ImageReaderBase;
 import com.twelvemonkeys.imageio.util.IIOUtil;
 import com.twelvemonkeys.imageio.util.IndexedImageTypeSpecifier;
+import com.twelvemonkeys.imageio.util.SubsamplingRowFilter;
 import com.twelvemonkeys.util.WeakWeakMap;
 
 import javax.imageio.*;
@@ -190,13 +190,8 @@ public class ICOImageReader extends ImageReaderBase {
                     getDestination(pParam, getImageTypes(pImageIndex), getWidth(pImageIndex), getHeight(pImageIndex)) :
                     null;
 
-            BufferedImage image = readBitmap(entry);
-
-            // TODO: Handle AOI and subsampling inline, probably not of big importance...
-            if (pParam != null) {
-                image = fakeAOI(image, pParam);
-                image = ImageUtil.toBuffered(fakeSubsampling(image, pParam));
-            }
+            // NOTE: AOI and subsampling is handled while decoding
+            BufferedImage image = readBitmap(entry, pParam);
 
             if (destination == null) {
                 // This is okay, as long as the client did not request explicit destination image/type
@@ -206,7 +201,8 @@ public class ICOImageReader extends ImageReaderBase {
                 Graphics2D g = destination.createGraphics();
                 try {
                     g.setComposite(AlphaComposite.Src);
-                    g.drawImage(image, 0, 0, null);
+                    Point offset = pParam.getDestinationOffset();
+                    g.drawImage(image, offset.x, offset.y, null);
                 }
                 finally {
                     g.dispose();
@@ -221,7 +217,13 @@ public class ICOImageReader extends ImageReaderBase {
     }
 
     private boolean hasExplicitDestination(final ImageReadParam pParam) {
-        return (pParam != null && (pParam.getDestination() != null || pParam.getDestinationType() != null || pParam.getDestinationOffset() != null));
+        if (pParam == null) {
+            return false;
+        }
+
+        // NOTE: The destination offset is never null, but defaults to (0, 0)
+        Point offset = pParam.getDestinationOffset();
+        return pParam.getDestination() != null || pParam.getDestinationType() != null || offset.x != 0 || offset.y != 0;
     }
 
     private boolean isPNG(final DirectoryEntry pEntry) throws IOException {
@@ -291,11 +293,17 @@ public class ICOImageReader extends ImageReaderBase {
         return mHeaders.get(pEntry);
     }
 
-    private BufferedImage readBitmap(final DirectoryEntry pEntry) throws IOException {
+    private BufferedImage readBitmap(final DirectoryEntry pEntry, final ImageReadParam pParam) throws IOException {
+        SubsamplingRowFilter filter = new SubsamplingRowFilter(pParam, pEntry.getWidth(), pEntry.getHeight());
+
+        // Only the full image is cached, any AOI or subsampling is decoded from the stream
+        boolean fullImage = !filter.isSubsampling()
+                && filter.getSourceRegion().equals(new Rectangle(pEntry.getWidth(), pEntry.getHeight()));
+
         // TODO: Get rid of the caching, as the images are mutable
-        BitmapDescriptor descriptor = mDescriptors.get(pEntry);
+        BitmapDescriptor descriptor = fullImage ? mDescriptors.get(pEntry) : null;
 
-        if (descriptor == null || !mDescriptors.containsKey(pEntry)) {
+        if (descriptor == null) {
             DIBHeader header = getHeader(pEntry);
 
             int offset = pEntry.getOffset() + header.getSize();
@@ -315,20 +323,20 @@ public class ICOImageReader extends ImageReaderBase {
                     case 1:
                     case 4:
                     case 8:
-                        descriptor = new BitmapIndexed(pEntry, header);
+                        descriptor = new BitmapIndexed(pEntry, header, filter);
                         readBitmapIndexed((BitmapIndexed) descriptor);
                         break;
                     // RGB style
                     case 16:
-                        descriptor = new BitmapRGB(pEntry, header);
+                        descriptor = new BitmapRGB(pEntry, header, filter);
                         readBitmap16(descriptor);
                         break;
                     case 24:
-                        descriptor = new BitmapRGB(pEntry, header);
+                        descriptor = new BitmapRGB(pEntry, header, filter);
                         readBitmap24(descriptor);
                         break;
                     case 32:
-                        descriptor = new BitmapRGB(pEntry, header);
+                        descriptor = new BitmapRGB(pEntry, header, filter);
                         readBitmap32(descriptor);
                         break;
 
@@ -337,7 +345,9 @@ public class ICOImageReader extends ImageReaderBase {
                 }
             }
 
-            mDescriptors.put(pEntry, descriptor);
+            if (fullImage) {
+                mDescriptors.put(pEntry, descriptor);
+            }
         }
 
         return descriptor.getImage();
@@ -346,20 +356,15 @@ public class ICOImageReader extends ImageReaderBase {
     private void readBitmapIndexed(final BitmapIndexed pBitmap) throws IOException {
         readColorMap(pBitmap);
 
-        switch (pBitmap.getBitCount()) {
-            case 1:
-                readBitmapIndexed1(pBitmap, false);
-                break;
-            case 4:
-                readBitmapIndexed4(pBitmap);
-                break;
-            case 8:
-                readBitmapIndexed8(pBitmap);
-                break;
-        }
+        // NOTE: The AND mask follows the XOR bitmap, we read both using the same filter
+        long start = mImageInput.getStreamPosition();
+        int bitCount = pBitmap.getBitCount();
+
+        readBitmapIndexed(pBitmap, bitCount, start, false);
 
-        BitmapMask mask = new BitmapMask(pBitmap.mEntry, pBitmap.mHeader);
-        readBitmapIndexed1(mask.mMask, true);
+        BitmapMask mask = new BitmapMask(pBitmap.mEntry, pBitmap.mHeader, pBitmap.mFilter);
+        long maskStart = start + pBitmap.getSourceHeight() * (long) getStride(pBitmap.getSourceWidth(), bitCount);
+        readBitmapIndexed(mask.mMask, 1, maskStart, true);
         pBitmap.setMask(mask);
     }
 
@@ -372,26 +377,34 @@ public class ICOImageReader extends ImageReaderBase {
         }
     }
 
-    private void readBitmapIndexed1(final BitmapIndexed pBitmap, final boolean pAsMask) throws IOException {
-        int width = adjustToPadding(pBitmap.getWidth() >> 3);
-        byte[] row = new byte[width];
+    private void readBitmapIndexed(final BitmapIndexed pBitmap, final int pBitCount, final long pStart, final boolean pAsMask) throws IOException {
+        SubsamplingRowFilter filter = pBitmap.mFilter;
+        int width = pBitmap.getWidth();
+        int height = pBitmap.getHeight();
+        int sourceHeight = pBitmap.getSourceHeight();
+        int stride = getStride(pBitmap.getSourceWidth(), pBitCount);
 
-        for (int y = 0; y < pBitmap.getHeight(); y++) {
-            mImageInput.readFully(row, 0, width);
-            int rowPos = 0;
-            int xOrVal = 0x80;
-            int pos = (pBitmap.getHeight() - y - 1) * pBitmap.getWidth();
+        // Read only the bytes spanning the AOI columns, and unpack only the subsampled columns
+        int firstBit = filter.getSourceRegion().x * pBitCount;
+        int firstByte = firstBit >> 3;
+        int length = ((firstBit + filter.getSourceSpan() * pBitCount + 7) >> 3) - firstByte;
+        int step = filter.getXSubsampling() * pBitCount;
+        int mask = (1 << pBitCount) - 1;
 
-            for (int x = 0; x < pBitmap.getWidth(); x++) {
-                pBitmap.mBits[pos++] = ((row[rowPos] & xOrVal) / xOrVal) & 0xFF;
+        byte[] row = new byte[length];
 
-                if (xOrVal == 1) {
-                    xOrVal = 0x80;
-                    rowPos++;
-                }
-                else {
-                    xOrVal >>= 1;
-                }
+        for (int y = sourceHeight - 1, rows = 0; y >= 0; y--) {
+            if (!filter.accepts(y)) {
+                continue;
+            }
+
+            seekToRow(pStart, stride, sourceHeight, y, firstByte);
+            mImageInput.readFully(row, 0, length);
+
+            int pos = filter.getDestinationRow(y) * width;
+
+            for (int x = 0, bit = firstBit & 0x07; x < width; x++, bit += step) {
+                pBitmap.mBits[pos++] = (row[bit >> 3] >> (8 - pBitCount - (bit & 0x07))) & mask;
             }
 
             // NOTE: If we are reading the mask, we don't abort or progress
@@ -401,66 +414,18 @@ public class ICOImageReader extends ImageReaderBase {
                     break;
                 }
 
-                processImageProgress(100 * y / (float) pBitmap.getHeight());
+                processImageProgress(100 * rows++ / (float) height);
             }
         }
     }
 
-    private void readBitmapIndexed4(final BitmapIndexed pBitmap) throws IOException {
-        int width = adjustToPadding(pBitmap.getWidth() >> 1);
-        byte[] row = new byte[width];
-
-        for (int y = 0; y < pBitmap.getHeight(); y++) {
-            mImageInput.readFully(row, 0, width);
-            int rowPos = 0;
-            boolean high4 = true;
-            int pos = (pBitmap.getHeight() - y - 1) * pBitmap.getWidth();
-
-            for (int x = 0; x < pBitmap.getWidth(); x++) {
-                int value;
-
-                if (high4) {
-                    value = (row[rowPos] & 0xF0) >> 4;
-                }
-                else {
-                    value = row[rowPos] & 0x0F;
-                    rowPos++;
-                }
-
-                pBitmap.mBits[pos++] = value & 0xFF;
-                high4 = !high4;
-            }
-
-            if (abortRequested()) {
-                processReadAborted();
-                break;
-            }
-
-            processImageProgress(100 * y / (float) pBitmap.getHeight());
-        }
-    }
-
-    private void readBitmapIndexed8(final BitmapIndexed pBitmap) throws IOException {
-        int width = adjustToPadding(pBitmap.getWidth());
-
-        byte[] row = new byte[width];
-
-        for (int y = 0; y < pBitmap.getHeight(); y++) {
-            mImageInput.readFully(row, 0, width);
-            int rowPos = 0;
-            int pos = (pBitmap.getHeight() - y - 1) * pBitmap.getWidth();
-
-            for (int x = 0; x < pBitmap.getWidth(); x++) {
-                pBitmap.mBits[pos++] = row[rowPos++] & 0xFF;
-            }
-
-            if (abortRequested()) {
-                processReadAborted();
-                break;
-            }
-
-            processImageProgress(100 * y / (float) pBitmap.getHeight());
-        }
+    /**
+     * @param pWidth width in pixels
+     * @param pBitCount bits per pixel
+     * @return bytes per scan line, padded to 32 bit boundary
+     */
+    private static int getStride(final int pWidth, final int pBitCount) {
+        return adjustToPadding((pWidth * pBitCount + 7) >> 3);
     }
 
     /**
@@ -474,6 +439,15 @@ public class ICOImageReader extends ImageReaderBase {
         return pWidth;
     }
 
+    private void seekToRow(final long pStart, final int pStride, final int pSourceHeight, final int pRow, final int pOffset) throws IOException {
+        // NOTE: DIB rows are fixed stride, and stored bottom-up
+        long position = pStart + (pSourceHeight - 1 - pRow) * (long) pStride + pOffset;
+
+        if (position != mImageInput.getStreamPosition()) {
+            mImageInput.seek(position);
+        }
+    }
+
     private void readBitmap16(final BitmapDescriptor pBitmap) throws IOException {
         // TODO: No idea if this actually works..
         short[] pixels = new short[pBitmap.getWidth() * pBitmap.getHeight()];
@@ -486,22 +460,27 @@ public class ICOImageReader extends ImageReaderBase {
         );
         pBitmap.mImage = new BufferedImage(cm, raster, cm.isAlphaPremultiplied(), null);       
 
-        for (int y = 0; y < pBitmap.getHeight(); y++) {
-            int offset = (pBitmap.getHeight() - y - 1) * pBitmap.getWidth();
-            mImageInput.readFully(pixels, offset, pBitmap.getWidth());
-
+        SubsamplingRowFilter filter = pBitmap.mFilter;
+        long start = mImageInput.getStreamPosition();
+        int stride = getStride(pBitmap.getSourceWidth(), 16);
+        short[] row = new short[filter.getSourceSpan()];
 
-            // Skip to 32 bit boundary
-            if (pBitmap.getWidth() % 2 != 0) {
-                mImageInput.readShort();
+        for (int y = pBitmap.getSourceHeight() - 1, rows = 0; y >= 0; y--) {
+            if (!filter.accepts(y)) {
+                continue;
             }
 
+            seekToRow(start, stride, pBitmap.getSourceHeight(), y, filter.getSourceRegion().x * 2);
+            mImageInput.readFully(row, 0, row.length);
+            filter.decimate(row, 1);
+            System.arraycopy(row, 0, pixels, filter.getDestinationRow(y) * pBitmap.getWidth(), pBitmap.getWidth());
+
             if (abortRequested()) {
                 processReadAborted();
                 break;
             }
 
-            processImageProgress(100 * y / (float) pBitmap.getHeight());
+            processImageProgress(100 * rows++ / (float) pBitmap.getHeight());
         }
     }
 
@@ -518,22 +497,31 @@ public class ICOImageReader extends ImageReaderBase {
         );
 
         WritableRaster raster = Raster.createInterleavedRaster(
-                buffer, pBitmap.getWidth(), pBitmap.getHeight(), pBitmap.getWidth(), 3, bOffs, null
+                buffer, pBitmap.getWidth(), pBitmap.getHeight(), pBitmap.getWidth() * 3, 3, bOffs, null
         );
         pBitmap.mImage = new BufferedImage(cm, raster, cm.isAlphaPremultiplied(), null);
-        
-        for (int y = 0; y < pBitmap.getHeight(); y++) {
-            int offset = (pBitmap.getHeight() - y - 1) * pBitmap.getWidth();
-            mImageInput.readFully(pixels, offset, pBitmap.getWidth() * 3);
 
-            // TODO: Possibly read padding byte here!
+        SubsamplingRowFilter filter = pBitmap.mFilter;
+        long start = mImageInput.getStreamPosition();
+        int stride = getStride(pBitmap.getSourceWidth(), 24);
+        byte[] row = new byte[filter.getSourceSpan() * 3];
+
+        for (int y = pBitmap.getSourceHeight() - 1, rows = 0; y >= 0; y--) {
+            if (!filter.accepts(y)) {
+                continue;
+            }
+
+            seekToRow(start, stride, pBitmap.getSourceHeight(), y, filter.getSourceRegion().x * 3);
+            mImageInput.readFully(row, 0, row.length);
+            filter.decimate(row, 3);
+            System.arraycopy(row, 0, pixels, filter.getDestinationRow(y) * pBitmap.getWidth() * 3, pBitmap.getWidth() * 3);
 
             if (abortRequested()) {
                 processReadAborted();
                 break;
             }
 
-            processImageProgress(100 * y / (float) pBitmap.getHeight());
+            processImageProgress(100 * rows++ / (float) pBitmap.getHeight());
         }
     }
 
@@ -548,15 +536,27 @@ public class ICOImageReader extends ImageReaderBase {
         );
         pBitmap.mImage = new BufferedImage(cm, raster, cm.isAlphaPremultiplied(), null);
 
-        for (int y = 0; y < pBitmap.getHeight(); y++) {
-            int offset = (pBitmap.getHeight() - y - 1) * pBitmap.getWidth();
-            mImageInput.readFully(pixels, offset, pBitmap.getWidth());
+        SubsamplingRowFilter filter = pBitmap.mFilter;
+        long start = mImageInput.getStreamPosition();
+        int stride = getStride(pBitmap.getSourceWidth(), 32);
+        int[] row = new int[filter.getSourceSpan()];
+
+        for (int y = pBitmap.getSourceHeight() - 1, rows = 0; y >= 0; y--) {
+            if (!filter.accepts(y)) {
+                continue;
+            }
+
+            seekToRow(start, stride, pBitmap.getSourceHeight(), y, filter.getSourceRegion().x * 4);
+            mImageInput.readFully(row, 0, row.length);
+            filter.decimate(row, 1);
+            System.arraycopy(row, 0, pixels, filter.getDestinationRow(y) * pBitmap.getWidth(), pBitmap.getWidth());
 
             if (abortRequested()) {
                 processReadAborted();
                 break;
-            }            
-            processImageProgress(100 * y / (float) pBitmap.getHeight());
+            }
+
+            processImageProgress(100 * rows++ / (float) pBitmap.getHeight());
         }
     }
 
@@ -2,8 +2,11 @@ package com.twelvemonkeys.imageio.plugins.ico;
 
 import com.twelvemonkeys.imageio.util.ImageReaderAbstractTestCase;
 
+import javax.imageio.ImageReadParam;
 import javax.imageio.spi.ImageReaderSpi;
 import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
 
@@ -63,4 +66,40 @@ public class ICOImageReaderTestCase extends ImageReaderAbstractTestCase<ICOImage
     protected List<String> getMIMETypes() {
         return Arrays.asList("image/vnd.microsoft.icon", "image/ico", "image/x-icon");
     }
+
+    public void testReadSubsampledSameAsFullRead() throws IOException {
+        ICOImageReader reader = createReader();
+
+        for (TestData data : getTestData()) {
+            reader.setInput(data.getInputStream());
+
+            for (int i = 0; i < reader.getNumImages(true); i++) {
+                BufferedImage full = reader.read(i, null);
+
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceRegion(new Rectangle(3, 1, full.getWidth() - 4, full.getHeight() - 2));
+                param.setSourceSubsampling(3, 2, 1, 1);
+
+                BufferedImage subsampled = reader.read(i, param);
+
+                assertEquals((full.getWidth() - 5 + 2) / 3, subsampled.getWidth());
+                assertEquals((full.getHeight() - 3 + 1) / 2, subsampled.getHeight());
+
+                for (int y = 0; y < subsampled.getHeight(); y++) {
+                    for (int x = 0; x < subsampled.getWidth(); x++) {
+                        int expected = full.getRGB(4 + x * 3, 2 + y * 2);
+                        int actual = subsampled.getRGB(x, y);
+
+                        // NOTE: The color of the transparent palette entry depends on the colors used in the AOI
+                        if ((expected >>> 24) == 0) {
+                            assertEquals(0, actual >>> 24);
+                            continue;
+                        }
+
+                        assertEquals(String.format("%s, image %d, %d, %d", data.getInput(), i, x, y), expected, actual);
+                    }
+                }
+            }
+        }
+    }
 }
\ No newline at end of file
@@ -84,8 +84,7 @@ abstract class JMagickWriter extends ImageWriterBase {
         MagickImage image = null;
         try {
             // AOI & subsampling
-            BufferedImage buffered = fakeAOI(ImageUtil.toBuffered(pImage.getRenderedImage()), pParam);
-            buffered = ImageUtil.toBuffered(fakeSubsampling(buffered, pParam));
+            BufferedImage buffered = subsample(ImageUtil.toBuffered(pImage.getRenderedImage()), pParam);
 
             // Convert to MagickImage
             image = MagickUtil.toMagick(buffered);
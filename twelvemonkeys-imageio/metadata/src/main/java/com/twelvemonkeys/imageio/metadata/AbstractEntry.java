@@ -69,21 +69,25 @@ public abstract class AbstractEntry implements Entry {
     }
 
     public String getValueAsString() {
-        return String.valueOf(mValue);
+        return String.valueOf(getValue());
     }
 
     public String getTypeName() {
-        if (mValue == null) {
+        Object value = getValue();
+
+        if (value == null) {
             return null;
         }
 
-        return mValue.getClass().getSimpleName();
+        return value.getClass().getSimpleName();
     }
 
     public int valueCount() {
         // TODO: Collection support?
-        if (mValue != null && mValue.getClass().isArray()) {
-            return Array.getLength(mValue);
+        Object value = getValue();
+
+        if (value != null && value.getClass().isArray()) {
+            return Array.getLength(value);
         }
 
         return 1;
@@ -95,7 +99,8 @@ public abstract class AbstractEntry implements Entry {
 
     @Override
     public int hashCode() {
-        return mIdentifier.hashCode() + 31 * mValue.hashCode();
+        Object value = getValue();
+        return mIdentifier.hashCode() + (value != null ? 31 * value.hashCode() : 0);
     }
 
     @Override
@@ -108,9 +113,12 @@ public abstract class AbstractEntry implements Entry {
         }
 
         AbstractEntry other = (AbstractEntry) pOther;
-        
+        Object value = getValue();
+        Object otherValue = other.getValue();
+
+        // NOTE: Use accessors, as subclasses may read values lazily
         return mIdentifier.equals(other.mIdentifier) && (
-                mValue == null && other.mValue == null || mValue != null && mValue.equals(other.mValue)
+                value == null && otherValue == null || value != null && value.equals(otherValue)
         );
     }
 
@@ -0,0 +1,459 @@
+/*
+ * Copyright (c) 2009, Harald Kuhr
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name "TwelveMonkeys" nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package com.twelvemonkeys.imageio.metadata;
+
+import com.twelvemonkeys.imageio.metadata.exif.EXIFReader;
+import com.twelvemonkeys.imageio.metadata.exif.TIFF;
+import com.twelvemonkeys.imageio.metadata.iptc.IPTCReader;
+import com.twelvemonkeys.imageio.metadata.xmp.XMPReader;
+import com.twelvemonkeys.imageio.stream.ByteArrayImageInputStream;
+import com.twelvemonkeys.imageio.stream.SubImageInputStream;
+
+import javax.imageio.IIOException;
+import javax.imageio.ImageIO;
+import javax.imageio.stream.ImageInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Extracts EXIF, IPTC and XMP metadata from JPEG, PSD and TIFF files,
+ * without decoding, or even reading, the image data.
+ * <p/>
+ * Only the structures needed to locate the metadata are parsed:
+ * <ul>
+ * <li>JPEG: The APP1 (EXIF and XMP) and APP13 (Photoshop image resources) segments,
+ * up to the first SOS marker.</li>
+ * <li>PSD: The IPTC-NAA ({@code 0x0404}), EXIF data 1 ({@code 0x0422}) and XMP ({@code 0x0424})
+ * image resources. Other resources, like thumbnails, are skipped.</li>
+ * <li>TIFF: The IFD tags, including the XMP ({@code 700}) and IPTC-NAA ({@code 33723}) tags.
+ * The strip and tile offsets and byte counts are skipped.</li>
+ * </ul>
+ * <p/>
+ * Instances are not thread safe, but may be reused. To extract metadata from a batch of files,
+ * reuse a single instance, as the buffers for the metadata segments are then reused.
+ *
+ * @author <a href="mailto:harald.kuhr@gmail.com">Harald Kuhr</a>
+ * @author last modified by $Author: haraldk$
+ * @version $Id: MetadataExtractor.java,v 1.0 Oct 19, 2026 3:41:16 AM haraldk Exp$
+ */
+public final class MetadataExtractor {
+    static final int PSD_SIGNATURE = ('8' << 24) + ('B' << 16) + ('P' << 8) + 'S';
+    static final int PSD_RESOURCE_TYPE = ('8' << 24) + ('B' << 16) + ('I' << 8) + 'M';
+    static final int PSD_RES_IPTC_NAA = 0x0404;
+    static final int PSD_RES_EXIF_DATA_1 = 0x0422;
+    static final int PSD_RES_XMP_DATA = 0x0424;
+
+    static final int JPEG_SOI = 0xFFD8;
+    static final int JPEG_APP1 = 0xFFE1;
+    static final int JPEG_APP13 = 0xFFED;
+    static final int JPEG_SOS = 0xFFDA;
+    static final int JPEG_EOI = 0xFFD9;
+
+    static final int TIFF_TAG_XMP = 700;
+    static final int TIFF_TAG_IPTC = 33723;
+
+    static final byte[] JPEG_EXIF_ID = {'E', 'x', 'i', 'f', 0};
+    static final byte[] JPEG_XMP_ID = "http://ns.adobe.com/xap/1.0/\0".getBytes();
+    static final byte[] JPEG_PHOTOSHOP_ID = "Photoshop 3.0\0".getBytes();
+
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+    /** Maximum size of an image resource read into memory, larger resources are considered corrupt */
+    private static final int MAX_RESOURCE_SIZE = 64 * 1024 * 1024;
+
+    /** Skips the (potentially very large) strip and tile tables, they locate the image data only */
+    private static final TagFilter METADATA_TAGS = new TagFilter() {
+        public boolean accept(final Object pIdentifier) {
+            switch ((Integer) pIdentifier) {
+                case TIFF.TAG_STRIP_OFFSETS:
+                case TIFF.TAG_STRIP_BYTE_COUNTS:
+                case TIFF.TAG_TILE_OFFSETS:
+                case TIFF.TAG_TILE_BYTE_COUNTS:
+                    return false;
+                default:
+                    return true;
+            }
+        }
+    };
+
+    private final EXIFReader mEXIFReader = new EXIFReader();
+    private final XMPReader mXMPReader = new XMPReader();
+
+    private byte[] mBuffer;
+
+    /**
+     * Extracts the metadata from the given input.
+     *
+     * @param pInput the input, any object that can be passed to {@link ImageIO#createImageInputStream(Object)},
+     * typically a {@link java.io.File}
+     * @return the metadata
+     *
+     * @throws IOException if an I/O exception occurs during reading
+     * @throws IllegalArgumentException if no stream can be created from {@code pInput}
+     */
+    public Metadata extract(final Object pInput) throws IOException {
+        if (pInput instanceof ImageInputStream) {
+            return extract((ImageInputStream) pInput);
+        }
+
+        ImageInputStream stream = ImageIO.createImageInputStream(pInput);
+        if (stream == null) {
+            throw new IllegalArgumentException("Unsupported input: " + pInput);
+        }
+
+        try {
+            return extract(stream);
+        }
+        finally {
+            stream.close();
+        }
+    }
+
+    /**
+     * Extracts the metadata from the given stream.
+     * The stream must be positioned at the start of the file.
+     * The byte order of the stream is restored before this method returns.
+     *
+     * @param pInput the input
+     * @return the metadata, with no directories if the file format is not recognized
+     *
+     * @throws IOException if an I/O exception occurs during reading
+     */
+    public Metadata extract(final ImageInputStream pInput) throws IOException {
+        Metadata metadata = new Metadata();
+
+        ByteOrder order = pInput.getByteOrder();
+        long start = pInput.getStreamPosition();
+
+        try {
+            pInput.setByteOrder(ByteOrder.BIG_ENDIAN);
+            int magic = pInput.readInt();
+            pInput.seek(start);
+
+            if (magic >>> 16 == JPEG_SOI) {
+                readJPEG(pInput, metadata);
+            }
+            else if (magic == PSD_SIGNATURE) {
+                readPSD(pInput, metadata);
+            }
+            else if (magic == 0x49492A00 || magic == 0x4D4D002A) {
+                // TIFF offsets are relative to the header
+                readTIFF(start == 0 ? pInput : new SubImageInputStream(pInput, Long.MAX_VALUE), metadata);
+            }
+        }
+        finally {
+            pInput.setByteOrder(order);
+        }
+
+        return metadata;
+    }
+
+    private void readJPEG(final ImageInputStream pInput, final Metadata pMetadata) throws IOException {
+        pInput.skipBytes(2); // SOI
+
+        while (true) {
+            int marker = pInput.readUnsignedShort();
+
+            // Skip fill bytes
+            while (marker == 0xFFFF) {
+                marker = (marker << 8 | pInput.readUnsignedByte()) & 0xFFFF;
+            }
+
+            if ((marker & 0xFF00) != 0xFF00) {
+                throw new IIOException(String.format("Expected JPEG marker: %04x", marker));
+            }
+
+            if (marker == JPEG_SOS || marker == JPEG_EOI) {
+                // Image data follows, no more metadata of interest
+                return;
+            }
+            if (marker >= 0xFFD0 && marker <= 0xFFD7 || marker == 0xFF01) {
+                // Stand-alone markers, with no length
+                continue;
+            }
+
+            int length = pInput.readUnsignedShort() - 2;
+            if (length < 0) {
+                throw new IIOException(String.format("Invalid JPEG segment length for marker %04x: %d", marker, length + 2));
+            }
+
+            if (marker == JPEG_APP1 || marker == JPEG_APP13) {
+                readSegment(pInput, length);
+
+                if (marker == JPEG_APP1 && pMetadata.mEXIF == null && startsWith(length, JPEG_EXIF_ID)) {
+                    // There's a pad byte after the identifier
+                    int offset = JPEG_EXIF_ID.length + 1;
+                    pMetadata.mEXIF = mEXIFReader.read(slice("Exif", offset, length));
+                }
+                else if (marker == JPEG_APP1 && pMetadata.mXMP == null && startsWith(length, JPEG_XMP_ID)) {
+                    pMetadata.mXMP = mXMPReader.read(slice("XMP", JPEG_XMP_ID.length, length));
+                }
+                else if (marker == JPEG_APP13 && startsWith(length, JPEG_PHOTOSHOP_ID)) {
+                    int offset = JPEG_PHOTOSHOP_ID.length;
+                    readResources(slice("Photoshop", offset, length), length - offset, true, pMetadata);
+                }
+            }
+            else {
+                pInput.skipBytes(length);
+            }
+        }
+    }
+
+    private void readPSD(final ImageInputStream pInput, final Metadata pMetadata) throws IOException {
+        // Signature, version, reserved, channels, height, width, bits and mode
+        pInput.skipBytes(26);
+
+        // Color mode data
+        long colorDataLength = pInput.readUnsignedInt();
+        pInput.seek(pInput.getStreamPosition() + colorDataLength);
+
+        long resourcesLength = pInput.readUnsignedInt();
+        readResources(pInput, resourcesLength, false, pMetadata);
+
+        // NOTE: Layer and mask info and image data are never read
+    }
+
+    /**
+     * Reads the Photoshop image resources of interest.
+     *
+     * @param pInput the input, positioned at the first resource
+     * @param pLength the total length of the resources
+     * @param pInMemory {@code true} if {@code pInput} is backed by the segment buffer
+     * @param pMetadata the metadata to update
+     *
+     * @throws IIOException if a resource is larger than the remaining resources, or unreasonably large
+     */
+    private void readResources(final ImageInputStream pInput, final long pLength, final boolean pInMemory, final Metadata pMetadata) throws IOException {
+        long end = pInput.getStreamPosition() + pLength;
+
+        while (pInput.getStreamPosition() + 12 <= end) {
+            if (pInput.readInt() != PSD_RESOURCE_TYPE) {
+                // Not an image resource, give up
+                return;
+            }
+
+            int id = pInput.readUnsignedShort();
+
+            // Pascal string name, padded to even length
+            int nameLength = pInput.readUnsignedByte();
+            pInput.skipBytes(nameLength + (nameLength + 1) % 2);
+
+            long size = pInput.readUnsignedInt();
+            long remaining = end - pInput.getStreamPosition();
+            if (size > remaining) {
+                throw new IIOException(String.format("Illegal size for image resource 0x%04x: %d (%d bytes remaining)", id, size, remaining));
+            }
+
+            long next = pInput.getStreamPosition() + size + size % 2;
+
+            if (id == PSD_RES_IPTC_NAA && pMetadata.mIPTC == null
+                    || id == PSD_RES_EXIF_DATA_1 && pMetadata.mEXIF == null
+                    || id == PSD_RES_XMP_DATA && pMetadata.mXMP == null) {
+                ImageInputStream data;
+
+                if (pInMemory) {
+                    data = new SubImageInputStream(pInput, size);
+                }
+                else {
+                    if (size > MAX_RESOURCE_SIZE) {
+                        throw new IIOException(String.format("Image resource 0x%04x too large: %d bytes", id, size));
+                    }
+
+                    readSegment(pInput, (int) size);
+                    data = slice(0, (int) size);
+                }
+
+                switch (id) {
+                    case PSD_RES_IPTC_NAA:
+                        // NOTE: IPTCReader is stateful, so we need a new instance each time
+                        pMetadata.mIPTC = new IPTCReader().read(data);
+                        break;
+                    case PSD_RES_EXIF_DATA_1:
+                        pMetadata.mEXIF = mEXIFReader.read(data);
+                        break;
+                    case PSD_RES_XMP_DATA:
+                        pMetadata.mXMP = mXMPReader.read(data);
+                        break;
+                }
+            }
+
+            pInput.seek(next);
+        }
+    }
+
+    private void readTIFF(final ImageInputStream pInput, final Metadata pMetadata) throws IOException {
+        // Only the IFD structures are read here, values are read as needed
+        Directory directory = mEXIFReader.read(pInput, METADATA_TAGS);
+        pMetadata.mEXIF = directory;
+
+        Entry xmp = directory.getEntryById(TIFF_TAG_XMP);
+        byte[] xmpData = xmp != null ? toBytes(getValue(xmp), pInput.getByteOrder()) : null;
+        if (xmpData != null) {
+            pMetadata.mXMP = mXMPReader.read(new ByteArrayImageInputStream(xmpData));
+        }
+
+        Entry iptc = directory.getEntryById(TIFF_TAG_IPTC);
+        byte[] iptcData = iptc != null ? toBytes(getValue(iptc), pInput.getByteOrder()) : null;
+        if (iptcData != null) {
+            pMetadata.mIPTC = new IPTCReader().read(new ByteArrayImageInputStream(iptcData));
+        }
+
+        // The stream may be closed after extraction, so the remaining values must be read now
+        readValues(directory);
+    }
+
+    private static void readValues(final Directory pDirectory) throws IOException {
+        for (Entry entry : pDirectory) {
+            Object value = getValue(entry);
+
+            if (value instanceof Directory) {
+                readValues((Directory) value);
+            }
+        }
+    }
+
+    private static Object getValue(final Entry pEntry) throws IOException {
+        try {
+            return pEntry.getValue();
+        }
+        catch (IllegalStateException e) {
+            // Lazy entries wrap the exception from reading the value
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+
+            throw e;
+        }
+    }
+
+    private static byte[] toBytes(final Object pValue, final ByteOrder pOrder) {
+        if (pValue instanceof byte[]) {
+            return (byte[]) pValue;
+        }
+        else if (pValue instanceof int[]) {
+            // IPTC-NAA is often stored as LONG values, we want the original bytes
+            int[] ints = (int[]) pValue;
+            ByteBuffer buffer = ByteBuffer.allocate(ints.length * 4).order(pOrder);
+            buffer.asIntBuffer().put(ints);
+
+            return buffer.array();
+        }
+
+        return null;
+    }
+
+    private void readSegment(final ImageInputStream pInput, final int pLength) throws IOException {
+        if (mBuffer == null || mBuffer.length < pLength) {
+            mBuffer = new byte[Math.max(pLength, INITIAL_BUFFER_SIZE)];
+        }
+
+        pInput.readFully(mBuffer, 0, pLength);
+    }
+
+    private ImageInputStream slice(final int pOffset, final int pLength) {
+        return new ByteArrayImageInputStream(mBuffer, pOffset, pLength);
+    }
+
+    /**
+     * Slices the data following the identifier of a segment.
+     *
+     * @param pSegment the segment name, for error reporting
+     * @param pOffset the offset of the data, after the identifier
+     * @param pLength the length of the segment
+     * @return the data
+     * @throws IIOException if the segment has no data following the identifier
+     */
+    private ImageInputStream slice(final String pSegment, final int pOffset, final int pLength) throws IIOException {
+        if (pLength <= pOffset) {
+            throw new IIOException(String.format("Truncated %s segment, length: %d", pSegment, pLength));
+        }
+
+        return slice(pOffset, pLength - pOffset);
+    }
+
+    private boolean startsWith(final int pLength, final byte[] pIdentifier) {
+        if (pLength < pIdentifier.length) {
+            return false;
+        }
+
+        for (int i = 0; i < pIdentifier.length; i++) {
+            if (mBuffer[i] != pIdentifier[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * The metadata extracted from a file.
+     * All directories are fully read, and do not depend on the input.
+     */
+    public static final class Metadata {
+        private Directory mEXIF;
+        private Directory mIPTC;
+        private Directory mXMP;
+
+        Metadata() {
+        }
+
+        /**
+         * Returns the EXIF directory. For TIFF files, this is the TIFF IFD structure.
+         *
+         * @return the EXIF directory, or {@code null} if none
+         */
+        public Directory getEXIF() {
+            return mEXIF;
+        }
+
+        /**
+         * Returns the IPTC directory.
+         *
+         * @return the IPTC directory, or {@code null} if none
+         */
+        public Directory getIPTC() {
+            return mIPTC;
+        }
+
+        /**
+         * Returns the XMP directory.
+         *
+         * @return the XMP directory, or {@code null} if none
+         */
+        public Directory getXMP() {
+            return mXMP;
+        }
+
+        @Override
+        public String toString() {
+            return getClass().getSimpleName() + "[EXIF: " + mEXIF + ", IPTC: " + mIPTC + ", XMP: " + mXMP + "]";
+        }
+    }
+}
@@ -30,6 +30,8 @@ package com.twelvemonkeys.imageio.metadata;
 
 import javax.imageio.stream.ImageInputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * MetadataReader
@@ -40,4 +42,33 @@ import java.io.IOException;
  */
 public abstract class MetadataReader {
     public abstract Directory read(ImageInputStream pInput) throws IOException;
+
+    /**
+     * Reads only the entries accepted by the given filter.
+     * <p/>
+     * This implementation reads all entries, and filters the result.
+     * Subclasses should override this method, to skip the entries not accepted
+     * while reading.
+     *
+     * @param pInput the input
+     * @param pFilter the filter, or {@code null} to read all entries
+     * @return the directory
+     * @throws IOException if an I/O exception occurs during reading
+     */
+    public Directory read(final ImageInputStream pInput, final TagFilter pFilter) throws IOException {
+        Directory directory = read(pInput);
+
+        if (pFilter == null) {
+            return directory;
+        }
+
+        List<Entry> entries = new ArrayList<Entry>();
+        for (Entry entry : directory) {
+            if (pFilter.accept(entry.getIdentifier())) {
+                entries.add(entry);
+            }
+        }
+
+        return new AbstractDirectory(entries) {};
+    }
 }
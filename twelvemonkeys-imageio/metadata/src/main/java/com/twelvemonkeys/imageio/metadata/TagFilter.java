@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2009, Harald Kuhr
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name "TwelveMonkeys" nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.twelvemonkeys.imageio.metadata;
+
+/**
+ * A filter that decides which entries a {@link MetadataReader} should read.
+ * <p/>
+ * For formats with nested directories, like EXIF, the filter is also asked
+ * about the entries pointing to sub directories (for EXIF, the EXIF, GPS and
+ * Interoperability IFD tags). If such an entry is not accepted, the entire
+ * sub directory is skipped.
+ * So, to read {@code DateTimeOriginal}, a filter must accept both the
+ * {@code DateTimeOriginal} tag, and the EXIF IFD tag.
+ *
+ * @author <a href="mailto:harald.kuhr@gmail.com">Harald Kuhr</a>
+ * @author last modified by $Author: haraldk$
+ * @version $Id: TagFilter.java,v 1.0 Oct 19, 2026 1:48:12 AM haraldk Exp$
+ *
+ * @see MetadataReader#read(javax.imageio.stream.ImageInputStream, TagFilter)
+ */
+public interface TagFilter {
+    /**
+     * Tests if the entry with the given identifier should be read.
+     *
+     * @param pIdentifier the identifier of the entry, as returned by {@link Entry#getIdentifier()}
+     * @return {@code true} if the entry should be read
+     */
+    boolean accept(Object pIdentifier);
+}
@@ -30,6 +30,10 @@ package com.twelvemonkeys.imageio.metadata.exif;
 
 import com.twelvemonkeys.imageio.metadata.AbstractEntry;
 
+import javax.imageio.stream.ImageInputStream;
+import java.io.IOException;
+import java.nio.ByteOrder;
+
 /**
  * EXIFEntry
  *
@@ -40,6 +44,13 @@ import com.twelvemonkeys.imageio.metadata.AbstractEntry;
 final class EXIFEntry extends AbstractEntry {
     final private short mType;
 
+    // Lazy value support
+    private final int mCount;
+    private final long mOffset;
+    private final ByteOrder mByteOrder;
+    private ImageInputStream mInput;
+    private Object mValue;
+
     EXIFEntry(final int pIdentifier, final Object pValue, final short pType) {
         super(pIdentifier, pValue);
 
@@ -48,6 +59,66 @@ final class EXIFEntry extends AbstractEntry {
         }
         
         mType = pType;
+        mCount = -1;
+        mOffset = -1;
+        mByteOrder = null;
+    }
+
+    /**
+     * Creates an entry, that reads its value from the stream on first access.
+     * The stream must not be closed, until the value is read.
+     *
+     * @param pIdentifier the tag
+     * @param pType the EXIF type
+     * @param pCount the number of values
+     * @param pInput the stream to read the value from
+     * @param pByteOrder the byte order of the value, regardless of the stream byte order at read time
+     * @param pOffset the stream offset of the value
+     */
+    EXIFEntry(final int pIdentifier, final short pType, final int pCount, final ImageInputStream pInput, final ByteOrder pByteOrder, final long pOffset) {
+        super(pIdentifier, null);
+
+        if (pType < 1 || pType > TIFF.TYPE_NAMES.length) {
+            throw new IllegalArgumentException(String.format("Illegal EXIF type: %s", pType));
+        }
+
+        mType = pType;
+        mCount = pCount;
+        mInput = pInput;
+        mByteOrder = pByteOrder;
+        mOffset = pOffset;
+    }
+
+    @Override
+    public Object getValue() {
+        if (mCount < 0) {
+            return super.getValue();
+        }
+
+        synchronized (this) {
+            if (mInput != null) {
+                try {
+                    mValue = EXIFReader.readValue(mInput, mOffset, mType, mCount, mByteOrder);
+                }
+                catch (IOException e) {
+                    throw new IllegalStateException(String.format("Could not read value for EXIF tag %s", getIdentifier()), e);
+                }
+
+                // Release the stream, the value is read only once
+                mInput = null;
+            }
+
+            return mValue;
+        }
+    }
+
+    /**
+     * Tests if the value of this entry is read.
+     *
+     * @return {@code false} if the value is yet to be read from the stream
+     */
+    synchronized boolean isValueRead() {
+        return mInput == null;
     }
 
     @Override
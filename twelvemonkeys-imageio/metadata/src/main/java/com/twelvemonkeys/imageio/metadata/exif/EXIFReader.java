@@ -31,11 +31,13 @@ package com.twelvemonkeys.imageio.metadata.exif;
 import com.twelvemonkeys.imageio.metadata.Directory;
 import com.twelvemonkeys.imageio.metadata.Entry;
 import com.twelvemonkeys.imageio.metadata.MetadataReader;
+import com.twelvemonkeys.imageio.metadata.TagFilter;
 import com.twelvemonkeys.lang.StringUtil;
 
 import javax.imageio.IIOException;
 import javax.imageio.stream.ImageInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.ArrayList;
 import java.util.List;
@@ -48,9 +50,44 @@ import java.util.List;
  * @version $Id: EXIFReader.java,v 1.0 Nov 13, 2009 5:42:51 PM haraldk Exp$
  */
 public final class EXIFReader extends MetadataReader {
-
+    /** Length of an IFD entry: tag (2), type (2), count (4) and value/offset (4). */
+    private static final int ENTRY_LENGTH = 12;
+
+    /**
+     * Reads the EXIF (TIFF) structure, including all values.
+     * <p/>
+     * After this method returns, the directory no longer depends on the stream.
+     *
+     * @param pInput the input
+     * @return the directory
+     * @throws IOException if an I/O exception occurs during reading
+     */
     @Override
     public Directory read(final ImageInputStream pInput) throws IOException {
+        return read(pInput, null, false);
+    }
+
+    /**
+     * Reads the EXIF (TIFF) structure, but only the entries accepted by the filter.
+     * Sub IFDs that are not accepted are skipped entirely.
+     * <p/>
+     * The returned directory is lazy, only the IFD structure is read by this method.
+     * Each value is read from the stream on first access, so the stream must not
+     * be closed (or otherwise invalidated) before all values of interest are read.
+     * Values are read in the byte order of the EXIF structure, and reading a value
+     * does not change the stream position or byte order.
+     *
+     * @param pInput the input
+     * @param pFilter the filter, or {@code null} to read all entries
+     * @return the directory
+     * @throws IOException if an I/O exception occurs during reading
+     */
+    @Override
+    public Directory read(final ImageInputStream pInput, final TagFilter pFilter) throws IOException {
+        return read(pInput, pFilter, true);
+    }
+
+    private Directory read(final ImageInputStream pInput, final TagFilter pFilter, final boolean pLazy) throws IOException {
         byte[] bom = new byte[2];
         pInput.readFully(bom);
         if (bom[0] == 'I' && bom[1] == 'I') {
@@ -67,23 +104,68 @@ public final class EXIFReader extends MetadataReader {
 
         long directoryOffset = pInput.readUnsignedInt();
 
-        return readDirectory(pInput, directoryOffset);
+        return readDirectory(pInput, directoryOffset, pFilter, pLazy);
     }
 
-    private EXIFDirectory readDirectory(final ImageInputStream pInput, final long pOffset) throws IOException {
+    private EXIFDirectory readDirectory(final ImageInputStream pInput, final long pOffset, final TagFilter pFilter, final boolean pLazy) throws IOException {
         List<Entry> entries = new ArrayList<Entry>();
 
         pInput.seek(pOffset);
         int entryCount = pInput.readUnsignedShort();
 
+        // Read the entire IFD, including the next IFD offset, in one go
+        byte[] data = new byte[entryCount * ENTRY_LENGTH + 4];
+        pInput.readFully(data);
+        ByteBuffer ifd = ByteBuffer.wrap(data).order(pInput.getByteOrder());
+
         for (int i = 0; i < entryCount; i++) {
-            entries.add(readEntry(pInput));
+            int entryOffset = i * ENTRY_LENGTH;
+
+            int tagId = ifd.getShort(entryOffset) & 0xffff;
+            if (pFilter != null && !pFilter.accept(tagId)) {
+                continue;
+            }
+
+            short type = ifd.getShort(entryOffset + 2);
+            int count = ifd.getInt(entryOffset + 4); // Number of values
+
+            if (tagId == TIFF.IFD_EXIF || tagId == TIFF.IFD_GPS || tagId == TIFF.IFD_INTEROP) {
+                // Parse sub IFDs
+                long offset = ifd.getInt(entryOffset + 8) & 0xffffffffL;
+                entries.add(new EXIFEntry(tagId, readDirectory(pInput, offset, pFilter, pLazy), type));
+            }
+            else {
+                long valueLength = getValueLength(type, count);
+                if (valueLength < 0) {
+                    throw new IIOException(String.format("Unknown EXIF type '%s'", type));
+                }
+                if (count < 0 || valueLength > Integer.MAX_VALUE) {
+                    // The count is unsigned, but no value this large can be read into an array
+                    throw new IIOException(String.format("Invalid count for EXIF tag %s: %s", tagId, count & 0xffffffffL));
+                }
+
+                long valueOffset;
+                if (valueLength <= 4) {
+                    // The value is stored in line, in place of the offset
+                    valueOffset = pOffset + 2 + entryOffset + 8;
+                }
+                else {
+                    valueOffset = ifd.getInt(entryOffset + 8) & 0xffffffffL;
+                }
+
+                if (pLazy) {
+                    entries.add(new EXIFEntry(tagId, type, count, pInput, pInput.getByteOrder(), valueOffset));
+                }
+                else {
+                    entries.add(new EXIFEntry(tagId, readValue(pInput, valueOffset, type, count, pInput.getByteOrder()), type));
+                }
+            }
         }
 
-        long nextOffset = pInput.readUnsignedInt();
+        long nextOffset = ifd.getInt(entryCount * ENTRY_LENGTH) & 0xffffffffL;
 
         if (nextOffset != 0) {
-            EXIFDirectory next = readDirectory(pInput, nextOffset);
+            EXIFDirectory next = readDirectory(pInput, nextOffset, pFilter, pLazy);
 
             for (Entry entry : next) {
                 entries.add(entry);
@@ -93,55 +175,34 @@ public final class EXIFReader extends MetadataReader {
         return new EXIFDirectory(entries);
     }
 
-    private EXIFEntry readEntry(final ImageInputStream pInput) throws IOException {
-        int tagId = pInput.readUnsignedShort();
-
-        short type = pInput.readShort();
-        int count = pInput.readInt(); // Number of values
-
-        Object value;
-
-        if (tagId == TIFF.IFD_EXIF || tagId == TIFF.IFD_GPS || tagId == TIFF.IFD_INTEROP) {
-            // Parse sub IFDs
-            long offset = pInput.readUnsignedInt();
-            pInput.mark();
+    /**
+     * Reads a value from the given stream offset, using the given byte order.
+     * The stream position and byte order are restored before this method returns.
+     *
+     * @param pInput the input
+     * @param pOffset the stream offset of the value
+     * @param pType the EXIF type
+     * @param pCount the number of values
+     * @param pByteOrder the byte order of the EXIF structure
+     * @return the value
+     * @throws IOException if an I/O exception occurs during reading
+     */
+    static Object readValue(final ImageInputStream pInput, final long pOffset, final short pType, final int pCount, final ByteOrder pByteOrder) throws IOException {
+        // NOTE: Lazy entries of the same directory share the stream
+        synchronized (pInput) {
+            long pos = pInput.getStreamPosition();
+            ByteOrder order = pInput.getByteOrder();
 
             try {
-                value = readDirectory(pInput, offset);
+                pInput.setByteOrder(pByteOrder);
+                pInput.seek(pOffset);
+                return readValueDirect(pInput, pType, pCount);
             }
             finally {
-                pInput.reset();
-            }
-        }
-        else {
-            int valueLength = getValueLength(type, count);
-
-            if (valueLength > 0 && valueLength <= 4) {
-                value = readValueInLine(pInput, type, count);
-                pInput.skipBytes(4 - valueLength);
-            }
-            else {
-                long valueOffset = pInput.readUnsignedInt(); // This is the *value* iff the value size is <= 4 bytes
-                value = readValue(pInput, valueOffset, type, count);
+                pInput.seek(pos);
+                pInput.setByteOrder(order);
             }
         }
-
-        return new EXIFEntry(tagId, value, type);
-    }
-
-    private Object readValue(final ImageInputStream pInput, final long pOffset, final short pType, final int pCount) throws IOException {
-        long pos = pInput.getStreamPosition();
-        try {
-            pInput.seek(pOffset);
-            return readValueInLine(pInput, pType, pCount);
-        }
-        finally {
-            pInput.seek(pos);
-        }
-    }
-
-    private Object readValueInLine(final ImageInputStream pInput, final short pType, final int pCount) throws IOException {
-        return readValueDirect(pInput, pType, pCount);
     }
 
     private static Object readValueDirect(final ImageInputStream pInput, final short pType, final int pCount) throws IOException {
@@ -232,9 +293,9 @@ public final class EXIFReader extends MetadataReader {
         }
     }
 
-    private int getValueLength(final int pType, final int pCount) {
+    private static long getValueLength(final int pType, final int pCount) {
         if (pType > 0 && pType <= TIFF.TYPE_LENGTHS.length) {
-            return TIFF.TYPE_LENGTHS[pType - 1] * pCount;
+            return TIFF.TYPE_LENGTHS[pType - 1] * (pCount & 0xffffffffL);
         }
 
         return -1;
@@ -96,6 +96,8 @@ public interface TIFF {
     int TAG_STRIP_BYTE_COUNTS = 279;
     int TAG_JPEG_INTERCHANGE_FORMAT = 513;
     int TAG_JPEG_INTERCHANGE_FORMAT_LENGTH = 514;
+    int TAG_TILE_OFFSETS = 324;
+    int TAG_TILE_BYTE_COUNTS = 325;
 
     /// C. Tags relating to image data characteristics
 
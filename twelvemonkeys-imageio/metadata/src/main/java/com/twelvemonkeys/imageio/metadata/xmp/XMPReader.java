@@ -30,65 +30,70 @@ package com.twelvemonkeys.imageio.metadata.xmp;
 
 import com.twelvemonkeys.imageio.metadata.*;
 import com.twelvemonkeys.imageio.util.IIOUtil;
-import org.w3c.dom.Document;
-import org.w3c.dom.NamedNodeMap;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
+import org.xml.sax.Attributes;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
 
 import javax.imageio.IIOException;
 import javax.imageio.stream.ImageInputStream;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
-import java.io.BufferedReader;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.nio.charset.Charset;
 import java.util.*;
 
 /**
  * XMPReader
+ * <p/>
+ * The XMP packet is parsed in a single, streaming pass, without building a DOM.
+ * Namespaces (schemas) not accepted by the {@link TagFilter} passed to
+ * {@link #read(ImageInputStream, TagFilter)} are skipped while parsing.
  *
  * @author <a href="mailto:harald.kuhr@gmail.com">Harald Kuhr</a>
  * @author last modified by $Author: haraldk$
  * @version $Id: XMPReader.java,v 1.0 Nov 14, 2009 11:04:30 PM haraldk Exp$
  */
 public final class XMPReader extends MetadataReader {
-    @Override
-    public Directory read(final ImageInputStream pInput) throws IOException {
-        pInput.mark();
-
-        BufferedReader reader = new BufferedReader(new InputStreamReader(IIOUtil.createStreamAdapter(pInput), Charset.forName("UTF-8")));
-        String line;
-        while ((line = reader.readLine()) != null) {
-            System.out.println(line);
-        }
-
-        pInput.reset();
+    // NOTE: The factory is not guaranteed to be thread safe, all access must be synchronized on it
+    private static final SAXParserFactory sParserFactory = createParserFactory();
 
-        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+    private static SAXParserFactory createParserFactory() {
+        SAXParserFactory factory = SAXParserFactory.newInstance();
         factory.setNamespaceAware(true);
+        return factory;
+    }
 
-        try {
-            // TODO: Consider parsing using SAX?
-            // TODO: Determine encoding and parse using a Reader...
-            // TODO: Refactor scanner to return inputstream?
-            DocumentBuilder builder = factory.newDocumentBuilder();
-            Document document = builder.parse(new InputSource(IIOUtil.createStreamAdapter(pInput)));
-
-//            XMLSerializer serializer = new XMLSerializer(System.err, System.getProperty("file.encoding"));
-//            serializer.serialize(document);
-
+    private static SAXParser createParser() throws ParserConfigurationException, SAXException {
+        synchronized (sParserFactory) {
+            return sParserFactory.newSAXParser();
+        }
+    }
 
-            // Each rdf:Description is a Directory (but we can't really rely on that structure.. it's only convention)
-            //  - Each element inside the rdf:Desc is an Entry
+    @Override
+    public Directory read(final ImageInputStream pInput) throws IOException {
+        return read(pInput, null);
+    }
 
-            Node rdfRoot = document.getElementsByTagNameNS(XMP.NS_RDF, "RDF").item(0);
-            NodeList descriptions = document.getElementsByTagNameNS(XMP.NS_RDF, "Description");
+    /**
+     * Reads the XMP packet, but only the namespaces (schemas) accepted by the filter.
+     * <p/>
+     * The filter is invoked with the namespace URI, which is also the
+     * identifier of the entries of the returned directory.
+     *
+     * @param pInput the input
+     * @param pFilter the filter, or {@code null} to read all namespaces
+     * @return the directory
+     * @throws IOException if an I/O exception occurs during reading
+     */
+    @Override
+    public Directory read(final ImageInputStream pInput, final TagFilter pFilter) throws IOException {
+        // TODO: Determine encoding and parse using a Reader...
+        // TODO: Refactor scanner to return inputstream?
+        XMPHandler handler = new XMPHandler(pFilter);
 
-            return parseDirectories(rdfRoot, descriptions);
+        try {
+            createParser().parse(new InputSource(IIOUtil.createStreamAdapter(pInput)), handler);
         }
         catch (SAXException e) {
             throw new IIOException(e.getMessage(), e);
@@ -96,125 +101,200 @@ public final class XMPReader extends MetadataReader {
         catch (ParserConfigurationException e) {
             throw new RuntimeException(e); // TODO: Or IOException?
         }
+
+        return handler.getDirectory();
     }
 
-    private XMPDirectory parseDirectories(final Node pParentNode, NodeList pNodes) {
-        Map<String, List<Entry>> subdirs = new LinkedHashMap<String, List<Entry>>();
+    /**
+     * Builds the directory structure, as the document is parsed.
+     * <p/>
+     * Each rdf:Description (that is a direct child of the rdf:RDF element) contributes
+     * entries, and each element inside the rdf:Description is an entry.
+     * Entries are grouped in one sub directory per namespace.
+     * We can't really rely on that structure.. it's only convention.
+     */
+    private static final class XMPHandler extends DefaultHandler {
+        private static final int RDF_DEPTH = 0;
+        private static final int DESCRIPTION_DEPTH = 1;
+        private static final int ENTRY_DEPTH = 2;
+        private static final int RESOURCE_ENTRY_DEPTH = 3;
+
+        private final TagFilter mFilter;
+        private final Map<String, List<Entry>> mSubdirs = new LinkedHashMap<String, List<Entry>>();
+        private final Map<String, Boolean> mAccepted = new HashMap<String, Boolean>();
+
+        // Depth relative to the rdf:RDF element, -1 means outside
+        private int mDepth = -1;
+        private boolean mRDFSeen;
+
+        // Depth of the skipped (not accepted) element, or -1 if not skipping
+        private int mSkipDepth = -1;
+
+        // Current entry
+        private String mNamespace;
+        private String mLocalName;
+        private List<Entry> mResourceEntries;
+
+        // Current text value
+        private StringBuilder mText;
+        private boolean mTextDone;
+        private String mChildNamespace;
+        private String mChildLocalName;
+
+        XMPHandler(final TagFilter pFilter) {
+            mFilter = pFilter;
+        }
+
+        XMPDirectory getDirectory() {
+            // TODO: Consider flattening the somewhat artificial directory structure
+            List<Entry> entries = new ArrayList<Entry>();
 
-        for (Node desc : asIterable(pNodes)) {
-            if (desc.getParentNode() != pParentNode) {
-                continue;
+            for (Map.Entry<String, List<Entry>> entry : mSubdirs.entrySet()) {
+                entries.add(new XMPEntry(entry.getKey(), new XMPDirectory(entry.getValue())));
             }
 
-            for (Node node : asIterable(desc.getChildNodes())) {
-                if (node.getNodeType() != Node.ELEMENT_NODE) {
-                    continue;
-                }
+            return new XMPDirectory(entries);
+        }
 
-                // Lookup
-                List<Entry> dir = subdirs.get(node.getNamespaceURI());
-                if (dir == null) {
-                    dir = new ArrayList<Entry>();
-                    subdirs.put(node.getNamespaceURI(), dir);
+        private boolean isAccepted(final String pNamespace) {
+            if (mFilter == null) {
+                return true;
+            }
+
+            Boolean accepted = mAccepted.get(pNamespace);
+            if (accepted == null) {
+                accepted = mFilter.accept(pNamespace);
+                mAccepted.put(pNamespace, accepted);
+            }
+
+            return accepted;
+        }
+
+        @Override
+        public void startElement(final String pURI, final String pLocalName, final String pQName, final Attributes pAttributes) {
+            if (mDepth < 0) {
+                // Only the first rdf:RDF element is parsed
+                if (!mRDFSeen && XMP.NS_RDF.equals(pURI) && "RDF".equals(pLocalName)) {
+                    mRDFSeen = true;
+                    mDepth = RDF_DEPTH;
                 }
 
-                Object value;
+                return;
+            }
 
-                Node parseType = node.getAttributes().getNamedItemNS(XMP.NS_RDF, "parseType");
-                if (parseType != null && "Resource".equals(parseType.getNodeValue())) {
-                    List<Entry> entries = new ArrayList<Entry>();
+            mDepth++;
 
-                    for (Node child : asIterable(node.getChildNodes())) {
-                        if (child.getNodeType() != Node.ELEMENT_NODE) {
-                            continue;
-                        }
+            if (mSkipDepth >= 0) {
+                return;
+            }
 
-                        entries.add(new XMPEntry(child.getNamespaceURI() + child.getLocalName(), child.getLocalName(), getChildTextValue(child)));
+            switch (mDepth) {
+                case DESCRIPTION_DEPTH:
+                    if (!(XMP.NS_RDF.equals(pURI) && "Description".equals(pLocalName))) {
+                        mSkipDepth = mDepth;
                     }
-                    value = new XMPDirectory(entries);
-                }
-                else {
                     // TODO: Support alternative RDF syntax (short-form), using attributes on desc
-//                    NamedNodeMap attributes = node.getAttributes();
-//
-//                    for (Node attr : asIterable(attributes)) {
-//                        System.out.println("attr.getNodeName(): " + attr.getNodeName());
-//                        System.out.println("attr.getNodeValue(): " + attr.getNodeValue());
-//                    }
-
-                    value = getChildTextValue(node);
-                }
-
-                XMPEntry entry = new XMPEntry(node.getNamespaceURI() + node.getLocalName(), node.getLocalName(), value);
-                dir.add(entry);
-            }
-        }
+                    break;
 
-        // TODO: Consider flattening the somewhat artificial directory structure
-        List<Entry> entries = new ArrayList<Entry>();
+                case ENTRY_DEPTH:
+                    if (!isAccepted(pURI)) {
+                        mSkipDepth = mDepth;
+                        break;
+                    }
 
-        for (Map.Entry<String, List<Entry>> entry : subdirs.entrySet()) {
-            entries.add(new XMPEntry(entry.getKey(), new XMPDirectory(entry.getValue())));
-        }
+                    mNamespace = pURI;
+                    mLocalName = pLocalName;
 
-        return new XMPDirectory(entries);
-    }
+                    if ("Resource".equals(pAttributes.getValue(XMP.NS_RDF, "parseType"))) {
+                        mResourceEntries = new ArrayList<Entry>();
+                    }
+                    else {
+                        startText();
+                    }
+                    break;
 
-    private Object getChildTextValue(Node node) {
-        Object value;
-        Node child = node.getFirstChild();
+                case RESOURCE_ENTRY_DEPTH:
+                    if (mResourceEntries != null) {
+                        mChildNamespace = pURI;
+                        mChildLocalName = pLocalName;
+                        startText();
+                    }
+                    else {
+                        // The value is the text before the first child element
+                        mTextDone = true;
+                    }
+                    break;
 
-        String strVal = null;
-        if (child != null) {
-            strVal = child.getNodeValue();
+                default:
+                    mTextDone = true;
+            }
         }
 
-        value = strVal != null ? strVal.trim() : "";
-        return value;
-    }
+        @Override
+        public void endElement(final String pURI, final String pLocalName, final String pQName) {
+            if (mDepth < 0) {
+                return;
+            }
 
-    private Iterable<? extends Node> asIterable(final NamedNodeMap pNodeList) {
-        return new Iterable<Node>() {
-            public Iterator<Node> iterator() {
-                return new Iterator<Node>() {
-                    private int mIndex;
+            if (mSkipDepth >= 0) {
+                if (mSkipDepth == mDepth) {
+                    mSkipDepth = -1;
+                }
+            }
+            else if (mDepth == ENTRY_DEPTH) {
+                Object value;
 
-                    public boolean hasNext() {
-                        return pNodeList != null && pNodeList.getLength() > mIndex;
-                    }
+                if (mResourceEntries != null) {
+                    value = new XMPDirectory(mResourceEntries);
+                    mResourceEntries = null;
+                }
+                else {
+                    value = endText();
+                }
 
-                    public Node next() {
-                        return pNodeList.item(mIndex++);
-                    }
+                List<Entry> dir = mSubdirs.get(mNamespace);
+                if (dir == null) {
+                    dir = new ArrayList<Entry>();
+                    mSubdirs.put(mNamespace, dir);
+                }
 
-                    public void remove() {
-                        throw new UnsupportedOperationException("Method remove not supported");
-                    }
-                };
+                dir.add(new XMPEntry(mNamespace + mLocalName, mLocalName, value));
+            }
+            else if (mDepth == RESOURCE_ENTRY_DEPTH && mResourceEntries != null) {
+                mResourceEntries.add(new XMPEntry(mChildNamespace + mChildLocalName, mChildLocalName, endText()));
             }
-        };
-    }
 
-    private Iterable<? extends Node> asIterable(final NodeList pNodeList) {
-        return new Iterable<Node>() {
-            public Iterator<Node> iterator() {
-                return new Iterator<Node>() {
-                    private int mIndex;
+            mDepth--;
+        }
 
-                    public boolean hasNext() {
-                        return pNodeList != null && pNodeList.getLength() > mIndex;
-                    }
+        private void startText() {
+            mText = null;
+            mTextDone = false;
+        }
 
-                    public Node next() {
-                        return pNodeList.item(mIndex++);
-                    }
+        private String endText() {
+            String value = mText != null ? mText.toString().trim() : "";
+            mText = null;
+            mTextDone = true;
 
-                    public void remove() {
-                        throw new UnsupportedOperationException("Method remove not supported");
-                    }
-                };
+            return value;
+        }
+
+        @Override
+        public void characters(final char[] pChars, final int pStart, final int pLength) {
+            // Only text directly inside the current (not skipped) entry, before any child element, is kept
+            if (mSkipDepth >= 0 || mTextDone || mDepth < ENTRY_DEPTH) {
+                return;
+            }
+            if (mDepth == ENTRY_DEPTH && mResourceEntries != null) {
+                return;
             }
-        };
-    }
 
+            if (mText == null) {
+                mText = new StringBuilder(pLength);
+            }
+
+            mText.append(pChars, pStart, pLength);
+        }
+    }
 }
@@ -28,13 +28,14 @@
 
 package com.twelvemonkeys.imageio.metadata.xmp;
 
-import com.twelvemonkeys.imageio.stream.BufferedImageInputStream;
 import com.twelvemonkeys.imageio.util.IIOUtil;
 
 import javax.imageio.ImageIO;
 import javax.imageio.stream.ImageInputStream;
 import java.io.*;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * XMPScanner
@@ -75,6 +76,11 @@ public final class XMPScanner {
             0x65, 0x6E, 0x64, 0x3D
     };
 
+    private static final SequenceScanner XMP_PACKET_BEGIN_SCANNER = new SequenceScanner(XMP_PACKET_BEGIN);
+    private static final SequenceScanner XMP_PACKET_END_SCANNER = new SequenceScanner(XMP_PACKET_END);
+
+    private static final int BUFFER_SIZE = 8192;
+
     /**
      * Scans the given input for an XML metadata packet.
      * The scanning process involves reading every byte in the file, while searching for an XMP packet.
@@ -97,16 +103,31 @@ public final class XMPScanner {
      * @see ImageIO#createImageInputStream(Object)
      */
     static public Reader scanForXMPPacket(final Object pInput) throws IOException {
-        ImageInputStream stream = pInput instanceof ImageInputStream ? (ImageInputStream) pInput : ImageIO.createImageInputStream(pInput);
+        return scanForXMPPacket(pInput, -1);
+    }
 
-        // TODO: Consider if BufferedIIS is a good idea
-        if (!(stream instanceof BufferedImageInputStream)) {
-            stream = new BufferedImageInputStream(stream);
-        }
+    /**
+     * Scans the given input for an XML metadata packet, but gives up after
+     * scanning the given number of bytes.
+     *
+     * @param pInput the input to scan, see {@link #scanForXMPPacket(Object)}
+     * @param pMaxBytes the maximum number of bytes to scan, from the current stream position,
+     * or {@code -1} to scan until the end of the input
+     *
+     * @return a character Reader, or {@code null} if no XMP packet was found
+     *
+     * @throws java.nio.charset.UnsupportedCharsetException if the encoding specified within the BOM is not supported
+     *         by the JRE.
+     * @throws IOException if an I/O exception occurs reading from {@code pInput}.
+     * @see #scanForXMPPacket(Object)
+     */
+    static public Reader scanForXMPPacket(final Object pInput, final long pMaxBytes) throws IOException {
+        ImageInputStream stream = pInput instanceof ImageInputStream ? (ImageInputStream) pInput : ImageIO.createImageInputStream(pInput);
+        byte[] buffer = new byte[BUFFER_SIZE];
 
         // TODO: Might be more than one XMP block per file (it's possible to re-start for now)..
         long pos;
-        pos = scanForSequence(stream, XMP_PACKET_BEGIN);
+        pos = XMP_PACKET_BEGIN_SCANNER.scan(stream, pMaxBytes, buffer, null);
 
         if (pos >= 0) {
             // Skip ' OR " (plus possible nulls for 16/32 bit)
@@ -149,11 +170,15 @@ public final class XMPScanner {
 
                 if (cs != null) {
                     // Read all bytes until <?xpacket end= up-front or filter stream
-                    stream.mark();
-                    long end = scanForSequence(stream, XMP_PACKET_END);
-                    stream.reset();
+                    long start = stream.getStreamPosition();
+                    long end = XMP_PACKET_END_SCANNER.scan(stream, -1, buffer, null);
+                    stream.seek(start);
 
-                    long length = end - stream.getStreamPosition();
+                    // NOTE: For big endian, the end marker is found at the least significant byte,
+                    // so make sure we don't include the first byte of the '<' character
+                    int charSize = cs.name().startsWith("UTF-32") ? 4 : cs.name().startsWith("UTF-16") ? 2 : 1;
+                    long length = end - start;
+                    length -= length % charSize;
                     Reader reader = new InputStreamReader(IIOUtil.createStreamAdapter(stream, length), cs);
 
                     // Skip until ?>
@@ -171,53 +196,168 @@ public final class XMPScanner {
     }
 
     /**
-     * Scans for a given ASCII sequence.
+     * Scans the given input for all XML metadata packets, in a single pass.
+     * The returned offsets are the stream positions of the
+     * {@code &lt;?xpacket begin=} markers, in any of the supported encodings.
+     * For 16 and 32 bit big-endian encodings, the offset is that of the
+     * least significant byte of the {@code '&lt;'} character.
+     * <p/>
+     * <em>NOTE: The XMP Specification says this method of reading an XMP packet
+     * should be considered a last resort.</em>
      *
-     * @param pStream the stream to scan
-     * @param pSequence the byte sequence to search for
+     * @param pInput the input to scan, see {@link #scanForXMPPacket(Object)}
+     * @param pMaxBytes the maximum number of bytes to scan, from the current stream position,
+     * or {@code -1} to scan until the end of the input
      *
-     * @return the start position of the given sequence.
+     * @return the offsets of all XMP packets found, possibly empty
      *
-     * @throws IOException if an I/O exception occurs during scanning
+     * @throws IOException if an I/O exception occurs reading from {@code pInput}.
+     */
+    static public long[] scanForXMPPacketOffsets(final Object pInput, final long pMaxBytes) throws IOException {
+        ImageInputStream stream = pInput instanceof ImageInputStream ? (ImageInputStream) pInput : ImageIO.createImageInputStream(pInput);
+
+        List<Long> offsets = new ArrayList<Long>();
+        XMP_PACKET_BEGIN_SCANNER.scan(stream, pMaxBytes, new byte[BUFFER_SIZE], offsets);
+
+        long[] result = new long[offsets.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = offsets.get(i);
+        }
+
+        return result;
+    }
+
+    /**
+     * Scans for an ASCII sequence, in 8, 16 or 32 bit encoding.
+     * <p/>
+     * The input is read into a buffer, and searched using a Boyer-Moore-Horspool style
+     * search, for all encodings at once. The shift for each position is the smallest
+     * shift allowed by any of the encoded sequences.
      */
-    private static long scanForSequence(final ImageInputStream pStream, final byte[] pSequence) throws IOException {
-        long start = -1l;
+    private static final class SequenceScanner {
+        private final byte[][] mSequences;
+        private final int mMinLength;
+        private final int mMaxLength;
+        private final int[] mShifts = new int[256];
+
+        SequenceScanner(final byte[] pSequence) {
+            // Inside the sequence, there might be 1 or 3 null bytes, depending on 16/32 byte encoding
+            mSequences = new byte[][] {pSequence, encode(pSequence, 1), encode(pSequence, 3)};
+            mMinLength = pSequence.length;
+            mMaxLength = pSequence.length * 4;
+
+            for (int i = 0; i < mShifts.length; i++) {
+                mShifts[i] = mMinLength;
+            }
 
-        int index = 0;
-        int nullBytes = 0;
+            // Only the first mMinLength bytes of each sequence can be used for shifting
+            for (byte[] sequence : mSequences) {
+                for (int i = 0; i < mMinLength - 1; i++) {
+                    int shift = mMinLength - 1 - i;
+                    int value = sequence[i] & 0xff;
 
-        for (int read; (read = pStream.read()) >= 0;) {
-            if (pSequence[index] == (byte) read) {
-                // If this is the first byte in the sequence, store position
-                if (start == -1) {
-                    start = pStream.getStreamPosition() - 1;
+                    if (shift < mShifts[value]) {
+                        mShifts[value] = shift;
+                    }
                 }
+            }
+        }
+
+        private static byte[] encode(final byte[] pSequence, final int pNullBytes) {
+            byte[] encoded = new byte[pSequence.length * (pNullBytes + 1)];
+
+            for (int i = 0; i < pSequence.length; i++) {
+                encoded[i * (pNullBytes + 1)] = pSequence[i];
+            }
+
+            return encoded;
+        }
+
+        /**
+         * Scans for the sequence, from the current stream position.
+         *
+         * @param pStream the stream to scan
+         * @param pMaxBytes the maximum number of bytes to scan, or {@code -1} for no limit
+         * @param pBuffer the buffer to use, must be larger than 4 times the sequence length
+         * @param pMatches if {@code null}, the scan stops at the first match, and the stream is positioned
+         * after the matched sequence. Otherwise, the start positions of all matches are added.
+         *
+         * @return the start position of the first match, or {@code -1} if not found
+         *
+         * @throws IOException if an I/O exception occurs during scanning
+         */
+        long scan(final ImageInputStream pStream, final long pMaxBytes, final byte[] pBuffer, final List<Long> pMatches) throws IOException {
+            long first = -1;
+
+            long bufferPos = pStream.getStreamPosition();
+            long limit = pMaxBytes < 0 ? Long.MAX_VALUE : bufferPos + pMaxBytes;
+
+            int length = 0;
+            int pos = 0;
+            boolean eof = false;
+
+            while (true) {
+                // Make sure a window for the longest sequence is buffered, unless we are at the end
+                if (length - pos < mMaxLength && !eof) {
+                    System.arraycopy(pBuffer, pos, pBuffer, 0, length - pos);
+                    bufferPos += pos;
+                    length -= pos;
+                    pos = 0;
+
+                    while (length < pBuffer.length) {
+                        long remaining = limit - (bufferPos + length);
+                        int read = remaining > 0 ? pStream.read(pBuffer, length, (int) Math.min(pBuffer.length - length, remaining)) : -1;
+
+                        if (read < 0) {
+                            eof = true;
+                            break;
+                        }
 
-                // Inside the sequence, there might be 1 or 3 null bytes, depending on 16/32 byte encoding
-                if (nullBytes == 1 || nullBytes == 3) {
-                    pStream.skipBytes(nullBytes);
+                        length += read;
+                    }
+                }
+
+                if (length - pos < mMinLength) {
+                    break;
                 }
 
-                index++;
+                for (byte[] sequence : mSequences) {
+                    if (matches(pBuffer, pos, length, sequence)) {
+                        long start = bufferPos + pos;
+
+                        if (pMatches == null) {
+                            pStream.seek(start + sequence.length);
+                            return start;
+                        }
 
-                // If we found the entire sequence, we're done, return start position
-                if (index == pSequence.length) {
-                    return start;
+                        if (first < 0) {
+                            first = start;
+                        }
+                        pMatches.add(start);
+
+                        break;
+                    }
                 }
+
+                pos += mShifts[pBuffer[pos + mMinLength - 1] & 0xff];
             }
-            else if (index == 1 && read == 0 && nullBytes < 3) {
-                // Skip 1 or 3 null bytes for 16/32 bit encoding
-                nullBytes++;
+
+            return first;
+        }
+
+        private static boolean matches(final byte[] pBuffer, final int pPos, final int pLength, final byte[] pSequence) {
+            if (pLength - pPos < pSequence.length) {
+                return false;
             }
-            else if (index != 0) {
-                // Start over
-                index = 0;
-                start = -1;
-                nullBytes = 0;
+
+            for (int i = pSequence.length - 1; i >= 0; i--) {
+                if (pBuffer[pPos + i] != pSequence[i]) {
+                    return false;
+                }
             }
-        }
 
-        return -1l;
+            return true;
+        }
     }
 
     //static public XMPDirectory parse(input);
@@ -0,0 +1,262 @@
+package com.twelvemonkeys.imageio.metadata;
+
+import com.twelvemonkeys.imageio.metadata.exif.TIFF;
+import com.twelvemonkeys.imageio.metadata.iptc.IPTC;
+import com.twelvemonkeys.imageio.metadata.xmp.XMP;
+import com.twelvemonkeys.imageio.stream.ByteArrayImageInputStream;
+import junit.framework.TestCase;
+
+import javax.imageio.IIOException;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteOrder;
+
+/**
+ * MetadataExtractorTestCase
+ *
+ * @author <a href="mailto:harald.kuhr@gmail.com">Harald Kuhr</a>
+ * @author last modified by $Author: haraldk$
+ * @version $Id: MetadataExtractorTestCase.java,v 1.0 Oct 19, 2026 4:27:52 AM haraldk Exp$
+ */
+public class MetadataExtractorTestCase extends TestCase {
+    private static final String XMP_DATA =
+            "<x:xmpmeta xmlns:x=\"adobe:ns:meta/\">" +
+                    "<rdf:RDF xmlns:rdf=\"http://www.w3.org/1999/02/22-rdf-syntax-ns#\">" +
+                    "<rdf:Description rdf:about=\"\" xmlns:dc=\"http://purl.org/dc/elements/1.1/\">" +
+                    "<dc:format>image/jpeg</dc:format>" +
+                    "</rdf:Description>" +
+                    "</rdf:RDF>" +
+                    "</x:xmpmeta>";
+
+    // IPTC Application record (2), Object name (5) = "Title"
+    private static final byte[] IPTC_DATA = {0x1c, 0x02, 0x05, 0x00, 0x05, 'T', 'i', 't', 'l', 'e'};
+
+    /**
+     * Creates a TIFF structure with one IFD, holding Make ("Test", in line),
+     * and optionally XMP and IPTC as {@code UNDEFINED} values.
+     */
+    private static byte[] createTIFF(final boolean pExtra) throws IOException {
+        byte[] xmp = XMP_DATA.getBytes("UTF-8");
+        int entries = pExtra ? 3 : 1;
+        int dataOffset = 8 + 2 + entries * 12 + 4;
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(bytes);
+        data.writeBytes("MM");
+        data.writeShort(TIFF.TIFF_MAGIC);
+        data.writeInt(8);
+
+        data.writeShort(entries);
+        data.writeShort(TIFF.TAG_MAKE);
+        data.writeShort(2);
+        data.writeInt(4);
+        data.writeBytes("Test");
+
+        if (pExtra) {
+            data.writeShort(700);
+            data.writeShort(7);
+            data.writeInt(xmp.length);
+            data.writeInt(dataOffset);
+
+            data.writeShort(33723);
+            data.writeShort(7);
+            data.writeInt(IPTC_DATA.length);
+            data.writeInt(dataOffset + xmp.length);
+        }
+
+        data.writeInt(0);
+
+        if (pExtra) {
+            data.write(xmp);
+            data.write(IPTC_DATA);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    private static void writeResource(final DataOutputStream pData, final int pId, final byte[] pResource) throws IOException {
+        pData.writeBytes("8BIM");
+        pData.writeShort(pId);
+        pData.writeShort(0); // Empty name, padded
+        pData.writeInt(pResource.length);
+        pData.write(pResource);
+
+        if (pResource.length % 2 != 0) {
+            pData.write(0);
+        }
+    }
+
+    private static void writeSegment(final DataOutputStream pData, final int pMarker, final byte[] pIdentifier, final byte[] pSegment) throws IOException {
+        pData.writeShort(pMarker);
+        pData.writeShort(2 + pIdentifier.length + pSegment.length);
+        pData.write(pIdentifier);
+        pData.write(pSegment);
+    }
+
+    private static byte[] createJPEG() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(bytes);
+
+        data.writeShort(MetadataExtractor.JPEG_SOI);
+
+        writeSegment(data, 0xFFE0, "JFIF\0".getBytes(), new byte[9]);
+        writeSegment(data, MetadataExtractor.JPEG_APP1, "Exif\0\0".getBytes(), createTIFF(false));
+        writeSegment(data, MetadataExtractor.JPEG_APP1, MetadataExtractor.JPEG_XMP_ID, XMP_DATA.getBytes("UTF-8"));
+
+        ByteArrayOutputStream resources = new ByteArrayOutputStream();
+        writeResource(new DataOutputStream(resources), 0x0404, IPTC_DATA);
+        writeSegment(data, MetadataExtractor.JPEG_APP13, MetadataExtractor.JPEG_PHOTOSHOP_ID, resources.toByteArray());
+
+        // NOTE: Truncated after SOS, reading any image data would fail
+        data.writeShort(MetadataExtractor.JPEG_SOS);
+
+        return bytes.toByteArray();
+    }
+
+    private static byte[] createPSD() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(bytes);
+
+        data.writeBytes("8BPS");
+        data.writeShort(1);
+        data.write(new byte[6]);
+        data.writeShort(3);
+        data.writeInt(100);
+        data.writeInt(100);
+        data.writeShort(8);
+        data.writeShort(3);
+
+        data.writeInt(0); // Color mode data
+
+        ByteArrayOutputStream resources = new ByteArrayOutputStream();
+        DataOutputStream resourceData = new DataOutputStream(resources);
+        writeResource(resourceData, 0x040C, new byte[1001]); // Thumbnail, skipped
+        writeResource(resourceData, 0x0404, IPTC_DATA);
+        writeResource(resourceData, 0x0422, createTIFF(false));
+        writeResource(resourceData, 0x0424, XMP_DATA.getBytes("UTF-8"));
+
+        data.writeInt(resources.size());
+        data.write(resources.toByteArray());
+
+        // NOTE: Truncated after image resources, reading any layer or image data would fail
+
+        return bytes.toByteArray();
+    }
+
+    private static void assertMetadata(final MetadataExtractor.Metadata pMetadata) {
+        assertNotNull(pMetadata.getEXIF());
+        assertEquals("Test", pMetadata.getEXIF().getEntryById(TIFF.TAG_MAKE).getValue());
+
+        assertNotNull(pMetadata.getIPTC());
+        assertEquals("Title", pMetadata.getIPTC().getEntryById(IPTC.TAG_OBJECT_NAME).getValue());
+
+        assertNotNull(pMetadata.getXMP());
+        Directory dc = (Directory) pMetadata.getXMP().getEntryById(XMP.NS_DC).getValue();
+        assertEquals("image/jpeg", dc.getEntryById(XMP.NS_DC + "format").getValue());
+    }
+
+    public void testExtractJPEG() throws IOException {
+        assertMetadata(new MetadataExtractor().extract(new ByteArrayImageInputStream(createJPEG())));
+    }
+
+    public void testExtractPSD() throws IOException {
+        assertMetadata(new MetadataExtractor().extract(new ByteArrayImageInputStream(createPSD())));
+    }
+
+    public void testExtractTIFF() throws IOException {
+        assertMetadata(new MetadataExtractor().extract(new ByteArrayImageInputStream(createTIFF(true))));
+    }
+
+    public void testExtractUnknown() throws IOException {
+        MetadataExtractor.Metadata metadata = new MetadataExtractor().extract(new ByteArrayImageInputStream(new byte[] {'G', 'I', 'F', '8', '9', 'a'}));
+
+        assertNull(metadata.getEXIF());
+        assertNull(metadata.getIPTC());
+        assertNull(metadata.getXMP());
+    }
+
+    public void testExtractBatch() throws IOException {
+        MetadataExtractor extractor = new MetadataExtractor();
+
+        MetadataExtractor.Metadata jpeg = extractor.extract(new ByteArrayImageInputStream(createJPEG()));
+        MetadataExtractor.Metadata psd = extractor.extract(new ByteArrayImageInputStream(createPSD()));
+        MetadataExtractor.Metadata tiff = extractor.extract(new ByteArrayImageInputStream(createTIFF(true)));
+
+        // Results must not be affected by the reuse of buffers
+        assertMetadata(jpeg);
+        assertMetadata(psd);
+        assertMetadata(tiff);
+    }
+
+    public void testExtractPSDIllegalResourceSize() throws IOException {
+        byte[] psd = createPSD();
+
+        // Size of the first (thumbnail) resource, claim more than the entire resource section
+        int sizeOffset = 26 + 4 + 4 + 4 + 2 + 2;
+        psd[sizeOffset] = (byte) 0xff;
+        psd[sizeOffset + 1] = (byte) 0xff;
+
+        try {
+            new MetadataExtractor().extract(new ByteArrayImageInputStream(psd));
+            fail("Expected IIOException");
+        }
+        catch (IIOException expected) {
+        }
+    }
+
+    private static byte[] createJPEG(final int pMarker, final byte[] pIdentifier) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(bytes);
+
+        data.writeShort(MetadataExtractor.JPEG_SOI);
+        writeSegment(data, pMarker, pIdentifier, new byte[0]);
+        data.writeShort(MetadataExtractor.JPEG_EOI);
+
+        return bytes.toByteArray();
+    }
+
+    private static void assertTruncated(final byte[] pJPEG) throws IOException {
+        try {
+            new MetadataExtractor().extract(new ByteArrayImageInputStream(pJPEG));
+            fail("Expected IIOException");
+        }
+        catch (IIOException expected) {
+        }
+    }
+
+    public void testExtractJPEGTruncatedSegment() throws IOException {
+        // Identifiers only, no data
+        assertTruncated(createJPEG(MetadataExtractor.JPEG_APP1, MetadataExtractor.JPEG_EXIF_ID));
+        assertTruncated(createJPEG(MetadataExtractor.JPEG_APP1, "Exif\0\0".getBytes()));
+        assertTruncated(createJPEG(MetadataExtractor.JPEG_APP1, MetadataExtractor.JPEG_XMP_ID));
+        assertTruncated(createJPEG(MetadataExtractor.JPEG_APP13, MetadataExtractor.JPEG_PHOTOSHOP_ID));
+    }
+
+    public void testExtractJPEGIllegalSegmentLength() throws IOException {
+        byte[] jpeg = createJPEG(MetadataExtractor.JPEG_APP1, MetadataExtractor.JPEG_EXIF_ID);
+        // Length of the segment, less than the length field itself
+        jpeg[4] = 0;
+        jpeg[5] = 1;
+
+        assertTruncated(jpeg);
+    }
+
+    public void testExtractTIFFClosedStream() throws IOException {
+        ByteArrayImageInputStream stream = new ByteArrayImageInputStream(createTIFF(true));
+        MetadataExtractor.Metadata metadata = new MetadataExtractor().extract(stream);
+        stream.close();
+
+        // All values must be read before extract returns
+        assertMetadata(metadata);
+    }
+
+    public void testExtractRestoresByteOrder() throws IOException {
+        ByteArrayImageInputStream stream = new ByteArrayImageInputStream(createTIFF(true));
+        stream.setByteOrder(ByteOrder.LITTLE_ENDIAN);
+
+        new MetadataExtractor().extract(stream);
+
+        assertEquals(ByteOrder.LITTLE_ENDIAN, stream.getByteOrder());
+    }
+}
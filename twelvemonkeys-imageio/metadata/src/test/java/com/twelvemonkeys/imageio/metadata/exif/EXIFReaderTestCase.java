@@ -0,0 +1,208 @@
+package com.twelvemonkeys.imageio.metadata.exif;
+
+import com.twelvemonkeys.imageio.metadata.Directory;
+import com.twelvemonkeys.imageio.metadata.Entry;
+import com.twelvemonkeys.imageio.metadata.TagFilter;
+import junit.framework.TestCase;
+
+import javax.imageio.IIOException;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * EXIFReaderTestCase
+ *
+ * @author <a href="mailto:harald.kuhr@gmail.com">Harald Kuhr</a>
+ * @author last modified by $Author: haraldk$
+ * @version $Id: EXIFReaderTestCase.java,v 1.0 Oct 19, 2026 2:21:40 AM haraldk Exp$
+ */
+public class EXIFReaderTestCase extends TestCase {
+    private static final int TAG_DATE_TIME_ORIGINAL = 36867;
+
+    private static final String MAKE = "Maker";
+    private static final String DATE_TIME_ORIGINAL = "2009:11:13 17:42:51";
+
+    /**
+     * Creates a minimal TIFF structure, with IFD0 holding ImageWidth (in line),
+     * Make (at an offset) and the EXIF IFD pointer, and the EXIF IFD holding DateTimeOriginal.
+     * ASCII values are not NUL-terminated, as the reader keeps the terminator in the value.
+     */
+    private static byte[] createEXIF(final ByteOrder pOrder) {
+        ByteBuffer buffer = ByteBuffer.allocate(128).order(pOrder);
+
+        buffer.put(pOrder == ByteOrder.BIG_ENDIAN ? (byte) 'M' : (byte) 'I');
+        buffer.put(buffer.get(0));
+        buffer.putShort((short) TIFF.TIFF_MAGIC);
+        buffer.putInt(8);
+
+        // IFD0 @ 8, 3 entries: 2 + 3 * 12 + 4 = 42 bytes
+        buffer.putShort((short) 3);
+        putEntry(buffer, TIFF.TAG_IMAGE_WIDTH, 3, 1, 0);
+        buffer.putShort(buffer.position() - 4, (short) 4711);
+        putEntry(buffer, TIFF.TAG_MAKE, 2, MAKE.length(), 50);
+        putEntry(buffer, TIFF.IFD_EXIF, 4, 1, 56);
+        buffer.putInt(0);
+
+        // Make @ 50
+        buffer.position(50);
+        buffer.put(MAKE.getBytes());
+
+        // EXIF IFD @ 56, 1 entry: 2 + 12 + 4 = 18 bytes
+        buffer.position(56);
+        buffer.putShort((short) 1);
+        putEntry(buffer, TAG_DATE_TIME_ORIGINAL, 2, DATE_TIME_ORIGINAL.length(), 74);
+        buffer.putInt(0);
+
+        // DateTimeOriginal @ 74
+        buffer.put(DATE_TIME_ORIGINAL.getBytes());
+
+        byte[] data = new byte[buffer.position()];
+        System.arraycopy(buffer.array(), 0, data, 0, data.length);
+
+        return data;
+    }
+
+    private static void putEntry(final ByteBuffer pBuffer, final int pTag, final int pType, final int pCount, final int pValue) {
+        pBuffer.putShort((short) pTag);
+        pBuffer.putShort((short) pType);
+        pBuffer.putInt(pCount);
+        pBuffer.putInt(pValue);
+    }
+
+    private static ImageInputStream createStream(final ByteOrder pOrder) {
+        return new MemoryCacheImageInputStream(new ByteArrayInputStream(createEXIF(pOrder)));
+    }
+
+    public void testRead() throws IOException {
+        for (ByteOrder order : new ByteOrder[] {ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN}) {
+            Directory directory = new EXIFReader().read(createStream(order));
+
+            assertEquals(3, directory.size());
+            assertEquals(4711, directory.getEntryById(TIFF.TAG_IMAGE_WIDTH).getValue());
+            assertEquals(MAKE, directory.getEntryById(TIFF.TAG_MAKE).getValue());
+
+            Directory exif = (Directory) directory.getEntryById(TIFF.IFD_EXIF).getValue();
+            assertEquals(1, exif.size());
+            assertEquals(DATE_TIME_ORIGINAL, exif.getEntryById(TAG_DATE_TIME_ORIGINAL).getValue());
+        }
+    }
+
+    public void testReadIsEager() throws IOException {
+        ImageInputStream input = createStream(ByteOrder.BIG_ENDIAN);
+        Directory directory = new EXIFReader().read(input);
+        input.close();
+
+        // Values must be available, even after the stream is closed
+        assertEquals(MAKE, directory.getEntryById(TIFF.TAG_MAKE).getValue());
+        Directory exif = (Directory) directory.getEntryById(TIFF.IFD_EXIF).getValue();
+        assertEquals(DATE_TIME_ORIGINAL, exif.getEntryById(TAG_DATE_TIME_ORIGINAL).getValue());
+    }
+
+    public void testReadFilteredIsLazy() throws IOException {
+        Directory directory = new EXIFReader().read(createStream(ByteOrder.BIG_ENDIAN), (TagFilter) null);
+
+        EXIFEntry make = (EXIFEntry) directory.getEntryById(TIFF.TAG_MAKE);
+        assertFalse(make.isValueRead());
+        assertEquals(MAKE, make.getValue());
+        assertTrue(make.isValueRead());
+    }
+
+    public void testReadFilteredEqualsEager() throws IOException {
+        Directory eager = new EXIFReader().read(createStream(ByteOrder.LITTLE_ENDIAN));
+        Directory lazy = new EXIFReader().read(createStream(ByteOrder.LITTLE_ENDIAN), (TagFilter) null);
+
+        assertEquals(eager, lazy);
+    }
+
+    public void testReadFilterSkipsSubIFD() throws IOException {
+        Directory directory = new EXIFReader().read(createStream(ByteOrder.BIG_ENDIAN), new TagFilter() {
+            public boolean accept(Object pIdentifier) {
+                return pIdentifier.equals(TIFF.TAG_MAKE);
+            }
+        });
+
+        assertEquals(1, directory.size());
+        assertNull(directory.getEntryById(TIFF.IFD_EXIF));
+        assertEquals(MAKE, directory.getEntryById(TIFF.TAG_MAKE).getValue());
+    }
+
+    public void testReadFilterSubIFDEntry() throws IOException {
+        Directory directory = new EXIFReader().read(createStream(ByteOrder.BIG_ENDIAN), new TagFilter() {
+            public boolean accept(Object pIdentifier) {
+                return pIdentifier.equals(TIFF.IFD_EXIF) || pIdentifier.equals(TAG_DATE_TIME_ORIGINAL);
+            }
+        });
+
+        assertEquals(1, directory.size());
+        Directory exif = (Directory) directory.getEntryById(TIFF.IFD_EXIF).getValue();
+        assertEquals(1, exif.size());
+        assertEquals(DATE_TIME_ORIGINAL, exif.getEntryById(TAG_DATE_TIME_ORIGINAL).getValue());
+    }
+
+    public void testReadValueFromClosedStream() throws IOException {
+        ImageInputStream input = createStream(ByteOrder.BIG_ENDIAN);
+        Directory directory = new EXIFReader().read(input, (TagFilter) null);
+        input.close();
+
+        Entry make = directory.getEntryById(TIFF.TAG_MAKE);
+        try {
+            make.getValue();
+            fail("Expected IllegalStateException");
+        }
+        catch (IllegalStateException expected) {
+        }
+    }
+
+    public void testReadValueIgnoresStreamByteOrder() throws IOException {
+        ImageInputStream input = createStream(ByteOrder.LITTLE_ENDIAN);
+        Directory directory = new EXIFReader().read(input, (TagFilter) null);
+
+        // Another reader of the same stream changes the byte order
+        input.setByteOrder(ByteOrder.BIG_ENDIAN);
+
+        assertEquals(4711, directory.getEntryById(TIFF.TAG_IMAGE_WIDTH).getValue());
+        assertEquals(ByteOrder.BIG_ENDIAN, input.getByteOrder());
+    }
+
+    public void testReadValueRestoresStreamPosition() throws IOException {
+        ImageInputStream input = createStream(ByteOrder.BIG_ENDIAN);
+        Directory directory = new EXIFReader().read(input, (TagFilter) null);
+
+        input.seek(3);
+        assertEquals(MAKE, directory.getEntryById(TIFF.TAG_MAKE).getValue());
+        assertEquals(3, input.getStreamPosition());
+    }
+
+    public void testReadTruncated() {
+        byte[] data = createEXIF(ByteOrder.BIG_ENDIAN);
+        byte[] truncated = new byte[data.length - 10];
+        System.arraycopy(data, 0, truncated, 0, truncated.length);
+        ImageInputStream input = new MemoryCacheImageInputStream(new ByteArrayInputStream(truncated));
+
+        try {
+            new EXIFReader().read(input);
+            fail("Expected IOException");
+        }
+        catch (IOException expected) {
+        }
+    }
+
+    public void testReadIllegalCount() throws IOException {
+        // ImageWidth as 2^30 LONGs, the length of the value overflows an int
+        ByteBuffer buffer = ByteBuffer.wrap(createEXIF(ByteOrder.BIG_ENDIAN));
+        buffer.putShort(12, (short) 4);
+        buffer.putInt(14, 0x40000000);
+
+        try {
+            new EXIFReader().read(new MemoryCacheImageInputStream(new ByteArrayInputStream(buffer.array())));
+            fail("Expected IIOException");
+        }
+        catch (IIOException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().startsWith("Invalid count"));
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.twelvemonkeys.imageio.metadata.xmp;
+
+import com.twelvemonkeys.imageio.metadata.Directory;
+import com.twelvemonkeys.imageio.metadata.TagFilter;
+import junit.framework.TestCase;
+
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+
+/**
+ * XMPReaderTestCase
+ *
+ * @author <a href="mailto:harald.kuhr@gmail.com">Harald Kuhr</a>
+ * @author last modified by $Author: haraldk$
+ * @version $Id: XMPReaderTestCase.java,v 1.0 Oct 19, 2026 2:58:07 AM haraldk Exp$
+ */
+public class XMPReaderTestCase extends TestCase {
+    static final String XMP_DATA =
+            "<?xpacket begin=\"\uFEFF\" id=\"W5M0MpCehiHzreSzNTczkc9d\"?>" +
+                    "<x:xmpmeta xmlns:x=\"adobe:ns:meta/\" x:xmptk=\"Adobe XMP Core 4.1-c036 46.276720, Fri Nov 13 2009 15:59:43        \">\n"+
+                    "   <rdf:RDF xmlns:rdf=\"http://www.w3.org/1999/02/22-rdf-syntax-ns#\">\n"+
+                    "      <rdf:Description rdf:about=\"\"\n"+
+                    "            xmlns:photoshop=\"http://ns.adobe.com/photoshop/1.0/\">\n"+
+                    "         <photoshop:Source>twelvemonkeys.com</photoshop:Source>\n"+
+                    "         <photoshop:ColorMode>3</photoshop:ColorMode>\n"+
+                    "      </rdf:Description>\n"+
+                    "      <rdf:Description rdf:about=\"\"\n"+
+                    "            xmlns:dc=\"http://purl.org/dc/elements/1.1/\">\n"+
+                    "         <dc:format>application/vnd.adobe.photoshop</dc:format>\n"+
+                    "         <dc:creator>\n"+
+                    "            <rdf:Seq>\n"+
+                    "               <rdf:li>Harald Kuhr</rdf:li>\n"+
+                    "            </rdf:Seq>\n"+
+                    "         </dc:creator>\n"+
+                    "      </rdf:Description>\n"+
+                    "      <rdf:Description rdf:about=\"\"\n"+
+                    "            xmlns:xapMM=\"http://ns.adobe.com/xap/1.0/mm/\"\n"+
+                    "            xmlns:stRef=\"http://ns.adobe.com/xap/1.0/sType/ResourceRef#\">\n"+
+                    "         <xapMM:DerivedFrom rdf:parseType=\"Resource\">\n"+
+                    "            <stRef:instanceID>uuid:3B52F3610F49DE11BD75C4F3B5A6F80B</stRef:instanceID>\n"+
+                    "            <stRef:documentID> uuid:3A52F3610F49DE11BD75C4F3B5A6F80B </stRef:documentID>\n"+
+                    "         </xapMM:DerivedFrom>\n"+
+                    "      </rdf:Description>\n"+
+                    "   </rdf:RDF>\n"+
+                    "</x:xmpmeta>" +
+                    "<?xpacket end=\"w\"?>";
+
+    private static ImageInputStream createStream(final String pXMP) throws UnsupportedEncodingException {
+        return new MemoryCacheImageInputStream(new ByteArrayInputStream(pXMP.getBytes("UTF-8")));
+    }
+
+    public void testRead() throws IOException {
+        Directory directory = new XMPReader().read(createStream(XMP_DATA));
+
+        assertEquals(3, directory.size());
+
+        Directory photoshop = (Directory) directory.getEntryById(XMP.NS_PHOTOSHOP).getValue();
+        assertEquals(2, photoshop.size());
+        assertEquals("twelvemonkeys.com", photoshop.getEntryById(XMP.NS_PHOTOSHOP + "Source").getValue());
+        assertEquals("Source", photoshop.getEntryById(XMP.NS_PHOTOSHOP + "Source").getFieldName());
+        assertEquals("3", photoshop.getEntryById(XMP.NS_PHOTOSHOP + "ColorMode").getValue());
+
+        Directory dc = (Directory) directory.getEntryById(XMP.NS_DC).getValue();
+        assertEquals(2, dc.size());
+        assertEquals("application/vnd.adobe.photoshop", dc.getEntryById(XMP.NS_DC + "format").getValue());
+        // Structured values are not (yet) supported, only the leading text is kept
+        assertEquals("", dc.getEntryById(XMP.NS_DC + "creator").getValue());
+    }
+
+    public void testReadParseTypeResource() throws IOException {
+        Directory directory = new XMPReader().read(createStream(XMP_DATA));
+
+        Directory mm = (Directory) directory.getEntryById(XMP.NS_XAP_MM).getValue();
+        assertEquals(1, mm.size());
+
+        Directory derivedFrom = (Directory) mm.getEntryById(XMP.NS_XAP_MM + "DerivedFrom").getValue();
+        assertEquals(2, derivedFrom.size());
+        assertEquals("uuid:3B52F3610F49DE11BD75C4F3B5A6F80B", derivedFrom.getEntryById(XMP.NS_ST_REF + "instanceID").getValue());
+        assertEquals("uuid:3A52F3610F49DE11BD75C4F3B5A6F80B", derivedFrom.getEntryById(XMP.NS_ST_REF + "documentID").getValue());
+    }
+
+    public void testReadFiltered() throws IOException {
+        Directory directory = new XMPReader().read(createStream(XMP_DATA), new TagFilter() {
+            public boolean accept(Object pIdentifier) {
+                return XMP.NS_DC.equals(pIdentifier);
+            }
+        });
+
+        assertEquals(1, directory.size());
+        assertNull(directory.getEntryById(XMP.NS_PHOTOSHOP));
+        assertNull(directory.getEntryById(XMP.NS_XAP_MM));
+
+        Directory dc = (Directory) directory.getEntryById(XMP.NS_DC).getValue();
+        assertEquals(2, dc.size());
+        assertEquals("application/vnd.adobe.photoshop", dc.getEntryById(XMP.NS_DC + "format").getValue());
+    }
+
+    public void testReadFilteredEqualsUnfiltered() throws IOException {
+        Directory directory = new XMPReader().read(createStream(XMP_DATA));
+        Directory filtered = new XMPReader().read(createStream(XMP_DATA), new TagFilter() {
+            public boolean accept(Object pIdentifier) {
+                return true;
+            }
+        });
+
+        assertEquals(directory, filtered);
+    }
+
+    public void testReadIgnoresNestedDescriptions() throws IOException {
+        String xmp = "<rdf:RDF xmlns:rdf=\"http://www.w3.org/1999/02/22-rdf-syntax-ns#\">" +
+                "<rdf:Description xmlns:dc=\"http://purl.org/dc/elements/1.1/\">" +
+                "<dc:relation><rdf:Description><dc:title>nested</dc:title></rdf:Description></dc:relation>" +
+                "</rdf:Description>" +
+                "</rdf:RDF>";
+
+        Directory directory = new XMPReader().read(createStream(xmp));
+        assertEquals(1, directory.size());
+
+        Directory dc = (Directory) directory.getEntryById(XMP.NS_DC).getValue();
+        assertEquals(1, dc.size());
+        assertNull(dc.getEntryById(XMP.NS_DC + "title"));
+    }
+}
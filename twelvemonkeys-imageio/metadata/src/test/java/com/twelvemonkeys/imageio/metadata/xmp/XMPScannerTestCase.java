@@ -108,6 +108,64 @@ public class XMPScannerTestCase extends TestCase {
         assertNotNull(reader);
     }
 
+    public void testScanForXMPPacketContent() throws IOException {
+        for (String charset : new String[] {"UTF-8", "UTF-16BE", "UTF-16LE"}) {
+            Reader reader = XMPScanner.scanForXMPPacket(createXMPStream(XMP, charset));
+            assertNotNull(charset, reader);
+
+            StringBuilder content = new StringBuilder();
+            for (int c; (c = reader.read()) >= 0;) {
+                content.append((char) c);
+            }
+
+            String expected = XMP.substring(XMP.indexOf("?>") + 2, XMP.lastIndexOf("<?xpacket end="));
+            assertEquals(charset, expected, content.toString().replace("\u0000", ""));
+        }
+    }
+
+    public void testScanForXMPPacketNotFound() throws IOException {
+        assertNull(XMPScanner.scanForXMPPacket(createRandomStream(65536)));
+    }
+
+    public void testScanForXMPPacketMaxBytes() throws IOException {
+        // The packet starts at offset 79, and must be entirely within the budget
+        assertNull(XMPScanner.scanForXMPPacket(createXMPStream(XMP, "UTF-8"), 79 + 15));
+        assertNotNull(XMPScanner.scanForXMPPacket(createXMPStream(XMP, "UTF-8"), 79 + 16));
+    }
+
+    public void testScanForXMPPacketOffsets() throws IOException {
+        byte[] utf8 = XMP.getBytes("UTF-8");
+        byte[] utf16 = XMP.getBytes("UTF-16LE");
+        byte[] utf16be = XMP.getBytes("UTF-16BE");
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bytes.write(new byte[100]);
+        bytes.write(utf8);
+        bytes.write(new byte[10001]);
+        bytes.write(utf16);
+        bytes.write(new byte[33]);
+        bytes.write(utf16be);
+        bytes.write(new byte[7]);
+
+        long[] offsets = XMPScanner.scanForXMPPacketOffsets(new ByteArrayInputStream(bytes.toByteArray()), -1);
+
+        assertEquals(3, offsets.length);
+        assertEquals(100, offsets[0]);
+        assertEquals(100 + utf8.length + 10001, offsets[1]);
+        // Big endian offset is that of the least significant byte of '<'
+        assertEquals(100 + utf8.length + 10001 + utf16.length + 33 + 1, offsets[2]);
+
+        // With a budget, only the first packet is found
+        offsets = XMPScanner.scanForXMPPacketOffsets(new ByteArrayInputStream(bytes.toByteArray()), 10000);
+        assertEquals(1, offsets.length);
+        assertEquals(100, offsets[0]);
+    }
+
+    public void testScanForXMPPacketOffsetsNotFound() throws IOException {
+        assertEquals(0, XMPScanner.scanForXMPPacketOffsets(createRandomStream(65536), -1).length);
+        assertEquals(0, XMPScanner.scanForXMPPacketOffsets(new ByteArrayInputStream(new byte[0]), -1).length);
+    }
+
     // TODO: Default Java installation on OS X don't seem to have UTF-32 installed. Hmmm..
 //    public void testUTF32BE() throws IOException {
 //        InputStream stream = createXMPStream("UTF-32BE");
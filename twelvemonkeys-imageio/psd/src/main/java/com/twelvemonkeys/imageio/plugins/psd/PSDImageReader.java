@@ -28,6 +28,7 @@
 
 package com.twelvemonkeys.imageio.plugins.psd;
 
+import com.twelvemonkeys.image.CMYKToRGBOp;
 import com.twelvemonkeys.image.ImageUtil;
 import com.twelvemonkeys.imageio.ImageReaderBase;
 import com.twelvemonkeys.imageio.util.IndexedImageTypeSpecifier;
@@ -76,6 +77,7 @@ public class PSDImageReader extends ImageReaderBase {
 //    private PSDGlobalLayerMask mGlobalLayerMask;
 //    private List<PSDLayerInfo> mLayerInfo;
     private ICC_ColorSpace mColorSpace;
+    private CMYKToRGBOp mCMYKConverter;
     protected PSDMetadata mMetadata;
 
     protected PSDImageReader(final ImageReaderSpi pOriginatingProvider) {
@@ -88,6 +90,7 @@ public class PSDImageReader extends ImageReaderBase {
 //        mImageResources = null;
         mMetadata = null;
         mColorSpace = null;
+        mCMYKConverter = null;
     }
 
     public int getWidth(final int pIndex) throws IOException {
@@ -235,8 +238,7 @@ public class PSDImageReader extends ImageReaderBase {
                 break;
             case PSD.COLOR_MODE_CMYK:
                 // Prefer interleaved versions as they are much faster to display
-                // TODO: We should convert these to their RGB equivalents while reading for the common-case,
-                // as Java2D is extremely slow displaying custom images.
+                // TODO: Consider making the RGB type the default, as Java2D is extremely slow displaying custom images.
                 // Converting to RGB is also correct behaviour, according to the docs.
                 if (mHeader.mChannels == 4 &&  mHeader.mBits == 8) {
                     types.add(ImageTypeSpecifier.createInterleaved(cs, new int[] {3, 2, 1, 0}, DataBuffer.TYPE_BYTE, false, false));
@@ -250,6 +252,11 @@ public class PSDImageReader extends ImageReaderBase {
                 else if (mHeader.mChannels == 5 &&  mHeader.mBits == 16) {
                     types.add(ImageTypeSpecifier.createInterleaved(cs, new int[] {4, 3, 2, 1, 0}, DataBuffer.TYPE_USHORT, true, false));
                 }
+
+                // RGB, converted while reading
+                types.add(ImageTypeSpecifier.createFromBufferedImageType(
+                        mHeader.mChannels == 5 ? BufferedImage.TYPE_4BYTE_ABGR : BufferedImage.TYPE_3BYTE_BGR
+                ));
                 break;
             default:
                 // Just stick to the raw type
@@ -291,12 +298,19 @@ public class PSDImageReader extends ImageReaderBase {
 
         BufferedImage image = getDestination(pParam, getImageTypes(pIndex), mHeader.mWidth, mHeader.mHeight);
         ImageTypeSpecifier rawType = getRawImageType(pIndex);
-        checkReadParamBandSettings(pParam, rawType.getNumBands(), image.getSampleModel().getNumBands());
+
+        // CMYK data read into a non-CMYK destination, is read into a CMYK image and converted
+        final boolean convertCMYK = rawType.getColorModel().getColorSpace().getType() == ColorSpace.TYPE_CMYK
+                && image.getColorModel().getColorSpace().getType() != ColorSpace.TYPE_CMYK;
+        checkReadParamBandSettings(pParam, rawType.getNumBands(), convertCMYK ? rawType.getNumBands() : image.getSampleModel().getNumBands());
 
         final Rectangle source = new Rectangle();
         final Rectangle dest = new Rectangle();
         computeRegions(pParam, mHeader.mWidth, mHeader.mHeight, image, source, dest);
 
+        // NOTE: The channels are stored one after another, so the entire CMYK image is needed before converting
+        final BufferedImage cmyk = convertCMYK ? getImageTypes(pIndex).next().createBufferedImage(dest.width, dest.height) : null;
+
         /*
         NOTE: It seems safe to just leave this out for now. The only thing we need is to support sub sampling.
         Sun's readers does not support arbitrary destination formats.
@@ -366,7 +380,16 @@ public class PSDImageReader extends ImageReaderBase {
         }
 
         // What we read here is the "composite layer" of the PSD file
-        readImageData(image, rawType.getColorModel(), source, dest, xSub, ySub, byteCounts, compression);
+        if (convertCMYK) {
+            readImageData(cmyk, rawType.getColorModel(), source, dest, xSub, ySub, byteCounts, compression);
+
+            if (!abortRequested()) {
+                getCMYKConverter(rawType.getColorModel().getColorSpace()).filter(cmyk, image.getSubimage(dest.x, dest.y, dest.width, dest.height));
+            }
+        }
+        else {
+            readImageData(image, rawType.getColorModel(), source, dest, xSub, ySub, byteCounts, compression);
+        }
 
         if (abortRequested()) {
             processReadAborted();
@@ -378,6 +401,15 @@ public class PSDImageReader extends ImageReaderBase {
         return image;
     }
 
+    private CMYKToRGBOp getCMYKConverter(final ColorSpace pColorSpace) {
+        if (mCMYKConverter == null) {
+            // Sample the embedded profile, or use the same conversion as the CMYKColorSpace
+            mCMYKConverter = pColorSpace instanceof ICC_ColorSpace ? new CMYKToRGBOp(pColorSpace) : new CMYKToRGBOp();
+        }
+
+        return mCMYKConverter;
+    }
+
     private void readImageData(final BufferedImage pImage,
                                final ColorModel pSourceCM, final Rectangle pSource, final Rectangle pDest,
                                final int pXSub, final int pYSub,
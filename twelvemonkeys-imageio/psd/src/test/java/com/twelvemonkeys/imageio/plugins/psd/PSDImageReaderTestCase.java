@@ -4,10 +4,13 @@ import com.twelvemonkeys.imageio.util.ImageReaderAbstractTestCase;
 import com.twelvemonkeys.imageio.util.ProgressListenerBase;
 
 import javax.imageio.spi.ImageReaderSpi;
+import javax.imageio.ImageReadParam;
 import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
 import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
 import java.util.ArrayList;
 import java.io.IOException;
@@ -212,4 +215,60 @@ public class PSDImageReaderTestCase extends ImageReaderAbstractTestCase<PSDImage
         assertEquals("started", sequnce.get(0));
         assertEquals("complete", sequnce.get(1));
     }
-}
\ No newline at end of file
+
+    public void testReadCMYKAsRGB() throws IOException {
+        assertReadCMYKAsRGB("/psd/cmyk_8bits.psd", null);
+        assertReadCMYKAsRGB("/psd/cmyk_16bits.psd", null);
+        // 5 channels, CMYK + alpha
+        assertReadCMYKAsRGB("/psd/escenic-liquid-logo.psd", null);
+    }
+
+    public void testReadCMYKAsRGBSourceRegion() throws IOException {
+        ImageReadParam param = new ImageReadParam();
+        param.setSourceRegion(new Rectangle(10, 20, 300, 100));
+        param.setSourceSubsampling(3, 2, 0, 0);
+
+        assertReadCMYKAsRGB("/psd/cmyk_8bits.psd", param);
+    }
+
+    private void assertReadCMYKAsRGB(final String pResource, final ImageReadParam pParam) throws IOException {
+        PSDImageReader imageReader = createReader();
+        imageReader.setInput(new TestData(getClassLoaderResource(pResource), new Dimension()).getInputStream());
+
+        ImageTypeSpecifier rgbType = null;
+        for (Iterator<ImageTypeSpecifier> types = imageReader.getImageTypes(0); types.hasNext();) {
+            ImageTypeSpecifier type = types.next();
+            if (type.getColorModel().getColorSpace().isCS_sRGB()) {
+                rgbType = type;
+            }
+        }
+        assertNotNull("No RGB type for " + pResource, rgbType);
+
+        ImageReadParam param = pParam != null ? pParam : new ImageReadParam();
+        param.setDestinationType(rgbType);
+        BufferedImage rgb = imageReader.read(0, param);
+
+        imageReader = createReader();
+        imageReader.setInput(new TestData(getClassLoaderResource(pResource), new Dimension()).getInputStream());
+        param.setDestinationType(null);
+        BufferedImage cmyk = imageReader.read(0, param);
+
+        assertTrue(rgb.getColorModel().getColorSpace().isCS_sRGB());
+        assertEquals(cmyk.getWidth(), rgb.getWidth());
+        assertEquals(cmyk.getHeight(), rgb.getHeight());
+
+        // Embedded profiles are sampled and interpolated, allow a small error
+        for (int y = 0; y < cmyk.getHeight(); y++) {
+            for (int x = 0; x < cmyk.getWidth(); x++) {
+                int expected = cmyk.getRGB(x, y);
+                int actual = rgb.getRGB(x, y);
+
+                for (int shift = 0; shift < 32; shift += 8) {
+                    if (Math.abs((expected >>> shift & 0xff) - (actual >>> shift & 0xff)) > 4) {
+                        assertEquals(pResource + " " + x + ", " + y, Integer.toHexString(expected), Integer.toHexString(actual));
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,269 @@
+/*
+ * Copyright (c) 2008, Harald Kuhr
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name "TwelveMonkeys" nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.twelvemonkeys.imageio.plugins.thumbsdb;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A cache of decoded thumbnails, bounded by the number of bytes used by
+ * the image data of the thumbnails.
+ * <p/>
+ * The cache may be shared between any number of {@link ThumbsDBImageReader}s,
+ * see {@link ThumbsDBImageReader#setThumbnailCache(ThumbnailCache)}.
+ * Thumbnails are keyed by the identity and last modification time of the
+ * {@code Thumbs.db} file, and the name of the thumbnail in the catalog.
+ * <p/>
+ * As {@code BufferedImage}s are mutable, the cache never hands out the
+ * images it holds, only copies.
+ * When the cache is full, the least recently used thumbnails are evicted.
+ *
+ * @author <a href="mailto:harald.kuhr@gmail.com">Harald Kuhr</a>
+ * @author last modified by $Author: haraldk$
+ * @version $Id: ThumbnailCache.java,v 1.0 Oct 19, 2026 12:14:36 AM haraldk Exp$
+ */
+public final class ThumbnailCache {
+    /** The default maximum size of the shared instance, 4 MB. */
+    static final long DEFAULT_MAX_SIZE = 4L << 20;
+
+    private static ThumbnailCache sSharedInstance;
+
+    private final long mMaxSize;
+    private final Map<Key, BufferedImage> mCache = new LinkedHashMap<Key, BufferedImage>(64, 0.75f, true);
+    private long mSize;
+
+    private long mHits;
+    private long mMisses;
+
+    /**
+     * Creates a {@code ThumbnailCache}.
+     *
+     * @param pMaxSize the maximum number of bytes of image data to keep in the cache
+     *
+     * @throws IllegalArgumentException if {@code pMaxSize} is negative
+     */
+    public ThumbnailCache(final long pMaxSize) {
+        if (pMaxSize < 0) {
+            throw new IllegalArgumentException("max size < 0");
+        }
+
+        mMaxSize = pMaxSize;
+    }
+
+    /**
+     * Returns the process-wide, shared {@code ThumbnailCache}.
+     * The shared instance is created on first invocation, with a maximum size of 4 MB.
+     *
+     * @return the shared {@code ThumbnailCache}
+     */
+    public static synchronized ThumbnailCache getSharedInstance() {
+        if (sSharedInstance == null) {
+            sSharedInstance = new ThumbnailCache(DEFAULT_MAX_SIZE);
+        }
+
+        return sSharedInstance;
+    }
+
+    /**
+     * Returns the maximum number of bytes of image data in this cache.
+     *
+     * @return the maximum size of this cache
+     */
+    public long getMaxSize() {
+        return mMaxSize;
+    }
+
+    /**
+     * Returns the number of bytes of image data currently in this cache.
+     *
+     * @return the current size of this cache
+     */
+    public synchronized long getSize() {
+        return mSize;
+    }
+
+    public synchronized long getHitCount() {
+        return mHits;
+    }
+
+    public synchronized long getMissCount() {
+        return mMisses;
+    }
+
+    /**
+     * Removes all thumbnails from this cache.
+     */
+    public synchronized void clear() {
+        mCache.clear();
+        mSize = 0;
+    }
+
+    /**
+     * Returns a copy of the cached thumbnail for the given key.
+     *
+     * @param pKey the key
+     * @return a copy of the cached thumbnail, or {@code null} if not cached
+     */
+    BufferedImage get(final Key pKey) {
+        BufferedImage image;
+
+        synchronized (this) {
+            image = mCache.get(pKey);
+
+            if (image != null) {
+                mHits++;
+            }
+            else {
+                mMisses++;
+            }
+        }
+
+        return image != null ? copy(image) : null;
+    }
+
+    /**
+     * Returns the cached thumbnail for the given key, without affecting the statistics.
+     * The image must not be modified, or handed out.
+     *
+     * @param pKey the key
+     * @return the cached thumbnail, or {@code null} if not cached
+     */
+    synchronized BufferedImage peek(final Key pKey) {
+        return mCache.get(pKey);
+    }
+
+    /**
+     * Caches the given thumbnail.
+     * If cached, the cache takes ownership of {@code pImage}, so it must not be modified after this call.
+     *
+     * @param pKey the key
+     * @param pImage the thumbnail
+     * @return {@code true} if the thumbnail was cached, {@code false} if it is larger than the cache
+     */
+    synchronized boolean put(final Key pKey, final BufferedImage pImage) {
+        long size = sizeOf(pImage);
+        if (size > mMaxSize) {
+            return false;
+        }
+
+        BufferedImage old = mCache.put(pKey, pImage);
+        mSize += size;
+
+        if (old != null) {
+            mSize -= sizeOf(old);
+        }
+
+        // Evict least recently used
+        Iterator<BufferedImage> iterator = mCache.values().iterator();
+        while (mSize > mMaxSize && iterator.hasNext()) {
+            mSize -= sizeOf(iterator.next());
+            iterator.remove();
+        }
+
+        return true;
+    }
+
+    static long sizeOf(final BufferedImage pImage) {
+        DataBuffer buffer = pImage.getRaster().getDataBuffer();
+        return (long) buffer.getSize() * buffer.getNumBanks() * DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+    }
+
+    static BufferedImage copy(final BufferedImage pImage) {
+        // NOTE: copyData creates a raster compatible with the original, so the image type is kept
+        ColorModel cm = pImage.getColorModel();
+        return new BufferedImage(cm, pImage.copyData(null), cm.isAlphaPremultiplied(), null);
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "%s[size: %d/%d bytes, thumbnails: %d, hits: %d, misses: %d]",
+                getClass().getSimpleName(), getSize(), mMaxSize, mCache.size(), getHitCount(), getMissCount()
+        );
+    }
+
+    /**
+     * Cache key, identifying a thumbnail in a given version of a {@code Thumbs.db} document.
+     */
+    static final class Key {
+        private final Object mDocument;
+        private final long mLastModified;
+        private final String mName;
+
+        /**
+         * Creates a {@code Key}.
+         *
+         * @param pDocument the identity of the document, typically the absolute path of the file
+         * @param pLastModified the last modification time of the document
+         * @param pName the name of the thumbnail in the catalog
+         */
+        Key(final Object pDocument, final long pLastModified, final String pName) {
+            if (pDocument == null) {
+                throw new IllegalArgumentException("document == null");
+            }
+            if (pName == null) {
+                throw new IllegalArgumentException("name == null");
+            }
+
+            mDocument = pDocument;
+            mLastModified = pLastModified;
+            mName = pName;
+        }
+
+        @Override
+        public boolean equals(final Object pOther) {
+            if (this == pOther) {
+                return true;
+            }
+            if (!(pOther instanceof Key)) {
+                return false;
+            }
+
+            Key other = (Key) pOther;
+            return mLastModified == other.mLastModified && mName.equals(other.mName) && mDocument.equals(other.mDocument);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = mDocument.hashCode();
+            result = 31 * result + (int) (mLastModified ^ (mLastModified >>> 32));
+            result = 31 * result + mName.hashCode();
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return mDocument + "!" + mName + "@" + mLastModified;
+        }
+    }
+}
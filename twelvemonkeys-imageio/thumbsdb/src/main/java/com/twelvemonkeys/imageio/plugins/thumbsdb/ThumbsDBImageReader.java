@@ -29,6 +29,7 @@
 package com.twelvemonkeys.imageio.plugins.thumbsdb;
 
 import com.twelvemonkeys.imageio.ImageReaderBase;
+import com.twelvemonkeys.imageio.stream.ByteArrayImageInputStream;
 import com.twelvemonkeys.imageio.util.ProgressListenerBase;
 import com.twelvemonkeys.io.FileUtil;
 import com.twelvemonkeys.io.ole2.CompoundDocument;
@@ -39,19 +40,19 @@ import javax.imageio.ImageIO;
 import javax.imageio.ImageReadParam;
 import javax.imageio.ImageReader;
 import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.stream.FileImageInputStream;
 import javax.imageio.stream.ImageInputStream;
-import javax.imageio.stream.MemoryCacheImageInputStream;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.awt.image.BufferedImage;
+import java.io.DataInputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.nio.ByteOrder;
 import java.util.Iterator;
-import java.util.SortedSet;
 
 /**
  * ThumbsDBImageReader
@@ -64,10 +65,19 @@ import java.util.SortedSet;
  */
 public class ThumbsDBImageReader extends ImageReaderBase {
     private static final int THUMBNAIL_OFFSET = 12;
+
+    /** Size of the per reader cache, used if there is no shared cache, or the input is not a file, 1 MB. */
+    private static final long PRIVATE_CACHE_SIZE = 1L << 20;
+
     private Entry mRoot;
     private Catalog mCatalog;
 
-    private BufferedImage[] mThumbnails;
+    private File mFile;
+    private long mLastModified;
+
+    private ThumbnailCache mCache;
+    private ThumbnailCache mPrivateCache;
+
     private final ImageReader mReader;
     private int mCurrentImage = -1;
 
@@ -86,7 +96,22 @@ public class ThumbsDBImageReader extends ImageReaderBase {
     protected void resetMembers() {
         mRoot = null;
         mCatalog = null;
-        mThumbnails = null;
+        mPrivateCache = null;
+        mCurrentImage = -1;
+
+        if (mFile != null) {
+            // We opened the stream, so we close it
+            if (mImageInput != null) {
+                try {
+                    mImageInput.close();
+                }
+                catch (IOException ignore) {
+                }
+            }
+
+            mImageInput = null;
+            mFile = null;
+        }
     }
 
     private static ImageReader createJPEGReader(final ThumbsDBImageReaderSpi pProvider) {
@@ -116,6 +141,26 @@ public class ThumbsDBImageReader extends ImageReaderBase {
         mLoadEagerly = pLoadEagerly;
     }
 
+    public ThumbnailCache getThumbnailCache() {
+        return mCache;
+    }
+
+    /**
+     * Sets a cache of decoded thumbnails, that may be shared between readers,
+     * like the {@link ThumbnailCache#getSharedInstance() shared instance}.
+     * <p/>
+     * The cache is only used if the input of this reader is a {@code File},
+     * as the cache is keyed by the path and last modification time of the file.
+     * For other inputs, or if no cache is set, decoded thumbnails are cached
+     * in a small cache private to this reader, that is cleared whenever
+     * the input changes.
+     *
+     * @param pCache the cache, or {@code null}
+     */
+    public void setThumbnailCache(final ThumbnailCache pCache) {
+        mCache = pCache;
+    }
+
     /**
      * Reads the image data from the given input stream, and returns it as a
      * {@code BufferedImage}.
@@ -133,10 +178,15 @@ public class ThumbsDBImageReader extends ImageReaderBase {
         init();
         checkBounds(pIndex);
 
-        // Quick look-up
+        // Only full reads are cached, and only those may be read from cache
+        ThumbnailCache cache = null;
+        ThumbnailCache.Key key = null;
         BufferedImage image = null;
-        if (pIndex < mThumbnails.length) {
-            image = mThumbnails[pIndex];
+
+        if (isDefault(pParam)) {
+            cache = getCache();
+            key = createKey(pIndex);
+            image = cache.get(key);
         }
 
         if (image == null) {
@@ -146,8 +196,9 @@ public class ThumbsDBImageReader extends ImageReaderBase {
             image = mReader.read(0, pParam);
             mReader.reset();
 
-            if (pParam == null) {
-                mThumbnails[pIndex] = image; // TODO: Caching is not kosher, as images are mutable!!
+            if (cache != null && cache.put(key, image)) {
+                // The cache now owns the image, hand out a copy
+                image = ThumbnailCache.copy(image);
             }
         }
         else {
@@ -157,24 +208,39 @@ public class ThumbsDBImageReader extends ImageReaderBase {
             processImageComplete();
         }
 
-        // Fake destination support
-        if (pParam != null && (pParam.getDestination() != null && pParam.getDestination() != image ||
-                pParam.getDestinationType() != null && pParam.getDestinationType().getBufferedImageType() != image.getType())) {
-            BufferedImage destination = getDestination(pParam, getImageTypes(pIndex), getWidth(pIndex), getHeight(pIndex));
+        return image;
+    }
 
-            Graphics2D g = destination.createGraphics();
-            try {
-                g.setComposite(AlphaComposite.Src);
-                g.drawImage(image, 0, 0, null);
-            }
-            finally {
-                g.dispose();
-            }
+    private static boolean isDefault(final ImageReadParam pParam) {
+        return pParam == null || pParam.getSourceRegion() == null
+                && pParam.getSourceXSubsampling() == 1 && pParam.getSourceYSubsampling() == 1
+                && pParam.getSubsamplingXOffset() == 0 && pParam.getSubsamplingYOffset() == 0
+                && pParam.getSourceBands() == null && pParam.getDestinationBands() == null
+                && pParam.getDestination() == null && pParam.getDestinationType() == null
+                && (pParam.getDestinationOffset() == null || pParam.getDestinationOffset().x == 0 && pParam.getDestinationOffset().y == 0);
+    }
 
-            image = destination;
+    private ThumbnailCache getCache() {
+        if (mFile != null && mCache != null) {
+            return mCache;
         }
 
-        return image;
+        if (mPrivateCache == null) {
+            mPrivateCache = new ThumbnailCache(PRIVATE_CACHE_SIZE);
+        }
+
+        return mPrivateCache;
+    }
+
+    private ThumbnailCache.Key createKey(final int pIndex) {
+        String name = mCatalog.getItem(pIndex).getName();
+
+        if (mFile != null) {
+            return new ThumbnailCache.Key(mFile.getAbsolutePath(), mLastModified, name);
+        }
+
+        // Only used with the private cache, that is cleared whenever the input changes
+        return new ThumbnailCache.Key(mImageInput, 0, name);
     }
 
     /**
@@ -191,7 +257,7 @@ public class ThumbsDBImageReader extends ImageReaderBase {
      * @throws java.io.IOException           if an error occurs during reading
      */
     public BufferedImage read(final String pName, final ImageReadParam pParam) throws IOException {
-        initCatalog();
+        init();
 
         int index = mCatalog.getIndex(pName);
         if (index < 0) {
@@ -206,10 +272,31 @@ public class ThumbsDBImageReader extends ImageReaderBase {
         mReader.abort();
     }
 
+    /**
+     * Sets the input source to use.
+     * <p/>
+     * In addition to {@code ImageInputStream}, this reader accepts a
+     * {@code File} as input, in which case the reader opens (and closes)
+     * the stream, and the {@link #setThumbnailCache(ThumbnailCache) thumbnail cache}
+     * may be used.
+     *
+     * @param pInput the {@code ImageInputStream} or {@code File} to use for future decoding.
+     * @param pSeekForwardOnly if {@code true}, images and metadata
+     * may only be read in ascending order from this input source.
+     * @param pIgnoreMetadata if {@code true}, metadata
+     * may be ignored during reads.
+     */
     @Override
     public void setInput(Object pInput, boolean pSeekForwardOnly, boolean pIgnoreMetadata) {
         super.setInput(pInput, pSeekForwardOnly, pIgnoreMetadata);
-        if (mImageInput != null) {
+
+        if (pInput instanceof File) {
+            // NOTE: The stream is opened lazily, in init()
+            mFile = (File) pInput;
+            mLastModified = mFile.lastModified();
+            mImageInput = null;
+        }
+        else if (mImageInput != null) {
             mImageInput.setByteOrder(ByteOrder.LITTLE_ENDIAN);
         }
     }
@@ -227,10 +314,19 @@ public class ThumbsDBImageReader extends ImageReaderBase {
     private void initReader(final int pIndex) throws IOException {
         String name = mCatalog.getStreamName(pIndex);
         Entry entry = mRoot.getChildEntry(name);
-        // TODO: It might be possible to speed this up, with less wrapping...
-        // Use in-memory input stream for max speed, images are small
-        ImageInputStream input = new MemoryCacheImageInputStream(entry.getInputStream());
-        input.skipBytes(THUMBNAIL_OFFSET);
+
+        // Read the sector data once, into an exactly sized array, and let the JPEG reader read directly from it
+        byte[] data = new byte[(int) entry.length()];
+        DataInputStream stream = new DataInputStream(entry.getInputStream());
+        try {
+            stream.readFully(data);
+        }
+        finally {
+            stream.close();
+        }
+
+        ImageInputStream input = new ByteArrayImageInputStream(data);
+        input.seek(THUMBNAIL_OFFSET);
         mReader.setInput(input);
     }
 
@@ -262,24 +358,32 @@ public class ThumbsDBImageReader extends ImageReaderBase {
 
     private void init() throws IOException {
         assertInput();
+
+        if (mImageInput == null && mFile != null) {
+            mImageInput = new FileImageInputStream(mFile);
+            mImageInput.setByteOrder(ByteOrder.LITTLE_ENDIAN);
+        }
+
         if (mRoot == null) {
             mRoot = new CompoundDocument(mImageInput).getRootEntry();
-            SortedSet children = mRoot.getChildEntries();
-
-            mThumbnails = new BufferedImage[children.size() - 1];
 
             initCatalog();
 
             // NOTE: This is usually slower, unless you need all images
             // TODO: Use as many threads as there are CPU cores? :-)
             if (mLoadEagerly) {
-                for (int i = 0; i < mThumbnails.length; i++) {
-                    initReader(i);
-                    ImageReader reader = mReader;
-                    // TODO: If stream was detached, we could probably create a
-                    // new reader, then fire this off in a separate thread...
-                    mThumbnails[i] = reader.read(0, null);
+                ThumbnailCache cache = getCache();
+
+                for (int i = 0; i < mCatalog.getThumbnailCount(); i++) {
+                    ThumbnailCache.Key key = createKey(i);
+
+                    if (cache.peek(key) == null) {
+                        initReader(i);
+                        cache.put(key, mReader.read(0, null));
+                    }
                 }
+
+                mReader.reset();
             }
         }
     }
@@ -305,22 +409,33 @@ public class ThumbsDBImageReader extends ImageReaderBase {
     }
 
     public int getWidth(int pIndex) throws IOException {
-        init(pIndex);
+        init();
+        checkBounds(pIndex);
+
+        BufferedImage image = getCache().peek(createKey(pIndex));
+        if (image != null) {
+            return image.getWidth();
+        }
 
-        BufferedImage image = mThumbnails[pIndex];
-        return image != null ? image.getWidth() : mReader.getWidth(0);
+        init(pIndex);
+        return mReader.getWidth(0);
     }
 
     public int getHeight(int pIndex) throws IOException {
-        init(pIndex);
+        init();
+        checkBounds(pIndex);
 
-        BufferedImage image = mThumbnails[pIndex];
-        return image != null ? image.getHeight() : mReader.getHeight(0);
+        BufferedImage image = getCache().peek(createKey(pIndex));
+        if (image != null) {
+            return image.getHeight();
+        }
+
+        init(pIndex);
+        return mReader.getHeight(0);
     }
 
     public Iterator<ImageTypeSpecifier> getImageTypes(int pIndex) throws IOException {
         init(pIndex);
-        initReader(pIndex);
         return mReader.getImageTypes(0);
     }
 
@@ -36,7 +36,9 @@ import javax.imageio.ImageReader;
 import javax.imageio.spi.IIORegistry;
 import javax.imageio.spi.ImageReaderSpi;
 import javax.imageio.spi.ServiceRegistry;
+import javax.imageio.stream.FileImageInputStream;
 import javax.imageio.stream.ImageInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.util.Iterator;
 import java.util.Locale;
@@ -66,7 +68,7 @@ public class ThumbsDBImageReaderSpi extends ImageReaderSpi {
                 new String[]{"db"},
                 new String[]{"image/x-thumbs-db", "application/octet-stream"}, // TODO: Check IANA et al...
                 ThumbsDBImageReader.class.getName(),
-                STANDARD_INPUT_TYPE,
+                new Class[] {ImageInputStream.class, File.class}, // File allows the reader to use a shared cache
                 null,
                 true, null, null, null, null,
                 true, null, null, null, null
@@ -74,6 +76,21 @@ public class ThumbsDBImageReaderSpi extends ImageReaderSpi {
     }
 
     public boolean canDecodeInput(Object source) throws IOException {
+        if (source instanceof File) {
+            File file = (File) source;
+            if (!file.isFile() || !file.canRead()) {
+                return false;
+            }
+
+            ImageInputStream input = new FileImageInputStream(file);
+            try {
+                return canDecode(input);
+            }
+            finally {
+                input.close();
+            }
+        }
+
         return source instanceof ImageInputStream && canDecode((ImageInputStream) source);
     }
 
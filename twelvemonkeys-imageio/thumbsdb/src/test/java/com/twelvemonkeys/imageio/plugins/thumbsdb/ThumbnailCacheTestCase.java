@@ -0,0 +1,106 @@
+package com.twelvemonkeys.imageio.plugins.thumbsdb;
+
+import junit.framework.TestCase;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * ThumbnailCacheTestCase
+ *
+ * @author <a href="mailto:harald.kuhr@gmail.com">Harald Kuhr</a>
+ * @author last modified by $Author: haraldk$
+ * @version $Id: ThumbnailCacheTestCase.java,v 1.0 Oct 19, 2026 12:41:02 AM haraldk Exp$
+ */
+public class ThumbnailCacheTestCase extends TestCase {
+    public void testCreateNegativeSize() {
+        try {
+            new ThumbnailCache(-1);
+            fail("Expected IllegalArgumentException");
+        }
+        catch (IllegalArgumentException expected) {
+        }
+    }
+
+    public void testSharedInstance() {
+        assertNotNull(ThumbnailCache.getSharedInstance());
+        assertSame(ThumbnailCache.getSharedInstance(), ThumbnailCache.getSharedInstance());
+        assertEquals(ThumbnailCache.DEFAULT_MAX_SIZE, ThumbnailCache.getSharedInstance().getMaxSize());
+    }
+
+    public void testSizeOf() {
+        assertEquals(10 * 10 * 4, ThumbnailCache.sizeOf(new BufferedImage(10, 10, BufferedImage.TYPE_INT_RGB)));
+        assertEquals(10 * 10 * 3, ThumbnailCache.sizeOf(new BufferedImage(10, 10, BufferedImage.TYPE_3BYTE_BGR)));
+        assertEquals(10 * 10 * 2, ThumbnailCache.sizeOf(new BufferedImage(10, 10, BufferedImage.TYPE_USHORT_GRAY)));
+    }
+
+    public void testGetReturnsCopy() {
+        ThumbnailCache cache = new ThumbnailCache(1000);
+        ThumbnailCache.Key key = new ThumbnailCache.Key("Thumbs.db", 42, "foo.jpg");
+
+        BufferedImage image = new BufferedImage(10, 10, BufferedImage.TYPE_3BYTE_BGR);
+        image.setRGB(1, 1, 0xff00ff);
+        assertTrue(cache.put(key, image));
+
+        BufferedImage copy = cache.get(new ThumbnailCache.Key("Thumbs.db", 42, "foo.jpg"));
+        assertNotNull(copy);
+        assertNotSame(image, copy);
+        assertEquals(image.getType(), copy.getType());
+        assertEquals(0xff00ff, copy.getRGB(1, 1) & 0xffffff);
+
+        copy.setRGB(1, 1, 0);
+        assertEquals(0xff00ff, cache.get(key).getRGB(1, 1) & 0xffffff);
+
+        assertEquals(2, cache.getHitCount());
+        assertEquals(0, cache.getMissCount());
+    }
+
+    public void testKey() {
+        ThumbnailCache cache = new ThumbnailCache(1000);
+        cache.put(new ThumbnailCache.Key("Thumbs.db", 42, "foo.jpg"), new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB));
+
+        assertNotNull(cache.get(new ThumbnailCache.Key("Thumbs.db", 42, "foo.jpg")));
+        assertNull(cache.get(new ThumbnailCache.Key("Thumbs.db", 43, "foo.jpg"))); // Modified
+        assertNull(cache.get(new ThumbnailCache.Key("Other.db", 42, "foo.jpg")));
+        assertNull(cache.get(new ThumbnailCache.Key("Thumbs.db", 42, "bar.jpg")));
+        assertEquals(3, cache.getMissCount());
+    }
+
+    public void testEvictLeastRecentlyUsed() {
+        ThumbnailCache cache = new ThumbnailCache(1000);
+
+        ThumbnailCache.Key a = new ThumbnailCache.Key("Thumbs.db", 0, "a");
+        ThumbnailCache.Key b = new ThumbnailCache.Key("Thumbs.db", 0, "b");
+        ThumbnailCache.Key c = new ThumbnailCache.Key("Thumbs.db", 0, "c");
+
+        cache.put(a, new BufferedImage(10, 10, BufferedImage.TYPE_INT_RGB)); // 400 bytes
+        cache.put(b, new BufferedImage(10, 10, BufferedImage.TYPE_INT_RGB));
+        assertNotNull(cache.get(a)); // b is now least recently used
+
+        cache.put(c, new BufferedImage(10, 10, BufferedImage.TYPE_INT_RGB));
+
+        assertEquals(800, cache.getSize());
+        assertNotNull(cache.peek(a));
+        assertNull(cache.peek(b));
+        assertNotNull(cache.peek(c));
+    }
+
+    public void testTooLargeIsNotCached() {
+        ThumbnailCache cache = new ThumbnailCache(100);
+        ThumbnailCache.Key key = new ThumbnailCache.Key("Thumbs.db", 0, "a");
+
+        assertFalse(cache.put(key, new BufferedImage(10, 10, BufferedImage.TYPE_INT_RGB)));
+        assertNull(cache.get(key));
+        assertEquals(0, cache.getSize());
+    }
+
+    public void testClear() {
+        ThumbnailCache cache = new ThumbnailCache(1000);
+        ThumbnailCache.Key key = new ThumbnailCache.Key("Thumbs.db", 0, "a");
+        cache.put(key, new BufferedImage(10, 10, BufferedImage.TYPE_INT_RGB));
+
+        cache.clear();
+
+        assertEquals(0, cache.getSize());
+        assertNull(cache.peek(key));
+    }
+}
@@ -34,11 +34,16 @@ import com.twelvemonkeys.io.ole2.CompoundDocument;
 import com.twelvemonkeys.io.ole2.Entry;
 import com.twelvemonkeys.lang.SystemUtil;
 
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
 import javax.imageio.spi.ImageReaderSpi;
 import javax.imageio.stream.ImageInputStream;
 import javax.imageio.stream.MemoryCacheImageInputStream;
 import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
 import java.io.IOException;
+import java.net.URISyntaxException;
 import java.nio.ByteOrder;
 import java.util.Arrays;
 import java.util.List;
@@ -136,4 +141,102 @@ public class ThumbsDBImageReaderTestCase extends ImageReaderAbstractTestCase<Thu
             System.err.println("WARNING: Test skipped due to known bug in Java 1.5, please test again with Java 6 or later");
         }
     }
-}
\ No newline at end of file
+
+    public void testReadReturnsCopy() throws IOException {
+        ThumbsDBImageReader reader = createReader();
+        reader.setInput(ImageIO.createImageInputStream(getClassLoaderResource("/thumbsdb/Thumbs.db")));
+
+        BufferedImage first = reader.read(0);
+        int rgb = first.getRGB(10, 10);
+        first.setRGB(10, 10, ~rgb);
+
+        BufferedImage second = reader.read(0);
+        assertNotSame(first, second);
+        assertEquals(rgb, second.getRGB(10, 10));
+
+        reader.dispose();
+    }
+
+    public void testReadSubsampledNotFromCache() throws IOException {
+        ThumbsDBImageReader reader = createReader();
+        reader.setInput(ImageIO.createImageInputStream(getClassLoaderResource("/thumbsdb/Thumbs.db")));
+
+        assertEquals(96, reader.read(0).getWidth());
+
+        ImageReadParam param = reader.getDefaultReadParam();
+        param.setSourceSubsampling(2, 2, 0, 0);
+        BufferedImage image = reader.read(0, param);
+        assertEquals(48, image.getWidth());
+        assertEquals(48, image.getHeight());
+
+        reader.dispose();
+    }
+
+    public void testSharedCache() throws IOException, URISyntaxException {
+        File file = new File(getClassLoaderResource("/thumbsdb/Thumbs.db").toURI());
+        ThumbnailCache cache = new ThumbnailCache(1 << 20);
+
+        ThumbsDBImageReader reader = createReader();
+        reader.setThumbnailCache(cache);
+        reader.setInput(file);
+
+        BufferedImage image = reader.read(1);
+        assertEquals(0, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertTrue(cache.getSize() > 0);
+        reader.dispose();
+
+        // Another reader, for the same file, should read from the cache
+        ThumbsDBImageReader other = createReader();
+        other.setThumbnailCache(cache);
+        other.setInput(file);
+
+        assertEquals(96, other.getWidth(1));
+        BufferedImage cached = other.read(1);
+        assertEquals(1, cache.getHitCount());
+        assertNotSame(image, cached);
+        assertEquals(image.getWidth(), cached.getWidth());
+        assertEquals(image.getRGB(20, 20), cached.getRGB(20, 20));
+
+        other.dispose();
+    }
+
+    public void testCanDecodeFile() throws IOException, URISyntaxException {
+        assertTrue(mProvider.canDecodeInput(new File(getClassLoaderResource("/thumbsdb/Thumbs.db").toURI())));
+
+        File other = File.createTempFile("thumbs", ".db");
+        try {
+            assertFalse(mProvider.canDecodeInput(other));
+            assertFalse(mProvider.canDecodeInput(other.getParentFile()));
+        }
+        finally {
+            other.delete();
+        }
+    }
+
+    public void testSharedCacheNotUsedForStream() throws IOException {
+        ThumbnailCache cache = new ThumbnailCache(1 << 20);
+
+        ThumbsDBImageReader reader = createReader();
+        reader.setThumbnailCache(cache);
+        reader.setInput(ImageIO.createImageInputStream(getClassLoaderResource("/thumbsdb/Thumbs.db")));
+        reader.read(0);
+
+        assertEquals(0, cache.getSize());
+        assertEquals(0, cache.getMissCount());
+
+        reader.dispose();
+    }
+
+    public void testLoadEagerly() throws IOException {
+        ThumbsDBImageReader reader = createReader();
+        reader.setLoadEagerly(true);
+        reader.setInput(ImageIO.createImageInputStream(getClassLoaderResource("/thumbsdb/Thumbs-camera.db")));
+
+        for (int i = reader.getNumImages(true) - 1; i >= 0; i--) {
+            assertNotNull(reader.read(i));
+        }
+
+        reader.dispose();
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright (c) 2008, Harald Kuhr
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name "TwelveMonkeys" nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.twelvemonkeys.servlet;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Admission control for a number of concurrent requests, with an optional
+ * bounded FIFO queue of waiting requests.
+ * <p/>
+ * Permits are handed out by a fair {@link Semaphore}, so admission is a
+ * single atomic operation when there's capacity, and waiting requests are
+ * admitted in arrival order. A request is rejected at once if the queue is
+ * full, or after waiting for the queue timeout.
+ * <p/>
+ * In adaptive mode, the limit is adjusted from the observed latency, using
+ * additive increase/multiplicative decrease (AIMD): The limit grows by one
+ * for each limit requests completed within the target latency, and shrinks
+ * by a fixed factor when a request exceeds the target latency, at most once
+ * per limit requests. The limit is kept within the minimum and the maximum
+ * limit.
+ *
+ * @author <a href="mailto:harald.kuhr@gmail.com">Harald Kuhr</a>
+ * @author last modified by $Author: haku $
+ * @version $Id: AdmissionController.java,v 1.0 Oct 19, 2026 4:02:36 AM haraldk Exp$
+ */
+final class AdmissionController {
+    /** Factor for multiplicative decrease */
+    static final double DECREASE_FACTOR = 0.9;
+
+    private final ResizableSemaphore mPermits;
+    private final int mMaxLimit;
+    private final int mMinLimit;
+    private final int mMaxQueueLength;
+    private final long mQueueTimeout;
+    private final long mTargetLatency;
+
+    private final AtomicInteger mQueued = new AtomicInteger();
+    private final AtomicInteger mSinceIncrease = new AtomicInteger();
+    private final AtomicInteger mSinceDecrease = new AtomicInteger();
+    private volatile int mLimit;
+
+    /**
+     * Creates an {@code AdmissionController}.
+     *
+     * @param pLimit the (maximum) number of concurrent requests
+     * @param pMaxQueueLength the maximum number of waiting requests, {@code 0} for no queueing
+     * @param pQueueTimeout the maximum time a request may wait, in milliseconds
+     * @param pTargetLatency the target latency in milliseconds for adaptive mode, or {@code 0} for a fixed limit
+     * @param pMinLimit the minimum limit in adaptive mode
+     *
+     * @throws IllegalArgumentException if {@code pLimit < 1}, or any other argument is out of range
+     */
+    AdmissionController(final int pLimit, final int pMaxQueueLength, final long pQueueTimeout,
+                        final long pTargetLatency, final int pMinLimit) {
+        if (pLimit < 1) {
+            throw new IllegalArgumentException("limit < 1");
+        }
+        if (pMaxQueueLength < 0) {
+            throw new IllegalArgumentException("max queue length < 0");
+        }
+        if (pQueueTimeout < 0) {
+            throw new IllegalArgumentException("queue timeout < 0");
+        }
+        if (pTargetLatency < 0) {
+            throw new IllegalArgumentException("target latency < 0");
+        }
+        if (pMinLimit < 1 || pMinLimit > pLimit) {
+            throw new IllegalArgumentException("min limit must be in range 1.." + pLimit);
+        }
+
+        mPermits = new ResizableSemaphore(pLimit);
+        mLimit = pLimit;
+        mMaxLimit = pLimit;
+        mMinLimit = pMinLimit;
+        mMaxQueueLength = pMaxQueueLength;
+        mQueueTimeout = pQueueTimeout;
+        mTargetLatency = TimeUnit.MILLISECONDS.toNanos(pTargetLatency);
+    }
+
+    /**
+     * Tries to admit a request, waiting in the queue if allowed.
+     * If this method returns {@code true}, {@link #release(long)} must be
+     * invoked when the request is done.
+     *
+     * @return {@code true} if the request is admitted, {@code false} if rejected
+     * @throws InterruptedException if interrupted while waiting
+     */
+    boolean acquire() throws InterruptedException {
+        // NOTE: Unlike tryAcquire(), this respects the fairness setting, and won't barge ahead of waiting requests
+        if (mPermits.tryAcquire(0, TimeUnit.MILLISECONDS)) {
+            return true;
+        }
+
+        if (mMaxQueueLength == 0 || mQueueTimeout == 0) {
+            return false;
+        }
+
+        if (mQueued.incrementAndGet() > mMaxQueueLength) {
+            mQueued.decrementAndGet();
+            return false;
+        }
+
+        try {
+            return mPermits.tryAcquire(mQueueTimeout, TimeUnit.MILLISECONDS);
+        }
+        finally {
+            mQueued.decrementAndGet();
+        }
+    }
+
+    /**
+     * Marks the end of an admitted request.
+     *
+     * @param pLatency the time spent processing the request, in nanoseconds
+     */
+    void release(final long pLatency) {
+        mPermits.release();
+
+        if (mTargetLatency > 0) {
+            adapt(pLatency);
+        }
+    }
+
+    private void adapt(final long pLatency) {
+        int limit = mLimit;
+        int sinceDecrease = mSinceDecrease.incrementAndGet();
+
+        if (pLatency > mTargetLatency) {
+            // Decrease at most once per window, to let the effect of the previous decrease show
+            if (sinceDecrease >= limit && limit > mMinLimit && mSinceDecrease.compareAndSet(sinceDecrease, 0)) {
+                mSinceIncrease.set(0);
+                setLimit(Math.max(mMinLimit, (int) (limit * DECREASE_FACTOR)));
+            }
+        }
+        else if (mSinceIncrease.incrementAndGet() >= limit && limit < mMaxLimit) {
+            mSinceIncrease.set(0);
+            setLimit(limit + 1);
+        }
+    }
+
+    private synchronized void setLimit(final int pLimit) {
+        int delta = Math.min(mMaxLimit, Math.max(mMinLimit, pLimit)) - mLimit;
+
+        if (delta > 0) {
+            mPermits.release(delta);
+        }
+        else if (delta < 0) {
+            mPermits.reducePermits(-delta);
+        }
+
+        mLimit += delta;
+    }
+
+    /**
+     * Returns the current limit.
+     *
+     * @return the current number of concurrent requests allowed
+     */
+    int getLimit() {
+        return mLimit;
+    }
+
+    int getQueueLength() {
+        return mQueued.get();
+    }
+
+    /**
+     * Returns the number of requests currently admitted.
+     * In adaptive mode, this may briefly exceed the current limit, after a decrease.
+     *
+     * @return the number of requests currently admitted
+     */
+    int getRunning() {
+        return Math.max(0, mLimit - mPermits.availablePermits());
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[limit: " + mLimit + ", running: " + getRunning() + ", queued: " + getQueueLength() + "]";
+    }
+
+    /**
+     * A fair semaphore, that exposes {@link #reducePermits(int)}.
+     */
+    private static final class ResizableSemaphore extends Semaphore {
+        ResizableSemaphore(final int pPermits) {
+            super(pPermits, true);
+        }
+
+        @Override
+        protected void reducePermits(final int pReduction) {
+            super.reducePermits(pReduction);
+        }
+    }
+}
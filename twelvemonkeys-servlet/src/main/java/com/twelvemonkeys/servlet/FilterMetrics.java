@@ -0,0 +1,328 @@
+/*
+ * Copyright (c) 2008, Harald Kuhr
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name "TwelveMonkeys" nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.twelvemonkeys.servlet;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletRequest;
+import javax.servlet.http.HttpServletRequest;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Latency metrics for a filter, kept in {@link LatencyHistogram}s per
+ * processing phase and URI pattern.
+ * <p/>
+ * URI patterns use the same syntax as the {@code url-pattern} element of the
+ * web descriptor ({@code "/path/*"}, {@code "*.ext"} or an exact path), and
+ * are matched against the request URI, relative to the context path,
+ * in the order given. Requests not matching any pattern are counted for
+ * the pattern {@code "/*"}. As both patterns and phases are fixed, so is
+ * the memory used.
+ * <p/>
+ * When {@link #register(ServletContext) registered}, the metrics are
+ * available to the {@link MetricsServlet} of the web application, and each
+ * histogram is exposed as an MBean on the platform MBean server, named
+ * {@code com.twelvemonkeys.servlet:type=FilterMetrics,context=<context>,filter=<filter>,phase=<phase>,pattern=<pattern>}.
+ *
+ * @author <a href="mailto:harald.kuhr@gmail.com">Harald Kuhr</a>
+ * @author last modified by $Author: haku $
+ * @version $Id: FilterMetrics.java,v 1.0 Oct 19, 2026 2:40:17 AM haraldk Exp$
+ *
+ * @see GenericFilter#getMetrics()
+ */
+public final class FilterMetrics {
+    /** Phase for the total time spent in the filter, including the rest of the chain */
+    public static final String PHASE_TOTAL = "total";
+    /** Phase for decoding the image, in image filters */
+    public static final String PHASE_DECODE = "decode";
+    /** Phase for filtering the image, in image filters */
+    public static final String PHASE_FILTER = "filter";
+    /** Phase for encoding the image, in image filters */
+    public static final String PHASE_ENCODE = "encode";
+
+    /** The pattern for requests not matching any other pattern */
+    public static final String DEFAULT_PATTERN = "/*";
+
+    static final String ATTRIB_METRICS = FilterMetrics.class.getName();
+
+    private static final String JMX_DOMAIN = "com.twelvemonkeys.servlet";
+
+    private final String mName;
+    private final String[] mPatterns;
+    private final ConcurrentMap<String, ConcurrentMap<String, LatencyHistogram>> mHistograms =
+            new ConcurrentHashMap<String, ConcurrentMap<String, LatencyHistogram>>();
+
+    private final List<ObjectName> mRegisteredNames = new ArrayList<ObjectName>();
+    private volatile String mContextName;
+
+    /**
+     * Creates a {@code FilterMetrics}.
+     *
+     * @param pName the name of the filter
+     * @param pPatterns the URI patterns, may be {@code null}
+     *
+     * @throws IllegalArgumentException if {@code pName} is {@code null}
+     */
+    public FilterMetrics(final String pName, final String[] pPatterns) {
+        if (pName == null) {
+            throw new IllegalArgumentException("name == null");
+        }
+
+        mName = pName;
+        mPatterns = pPatterns != null ? pPatterns.clone() : new String[0];
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * Records the latency of a phase, for the URI pattern matching the request.
+     *
+     * @param pPhase the phase
+     * @param pRequest the request
+     * @param pNanos the latency in nanoseconds
+     */
+    public void record(final String pPhase, final ServletRequest pRequest, final long pNanos) {
+        getHistogram(pPhase, getPattern(pRequest)).record(pNanos);
+    }
+
+    /**
+     * Returns the histogram for the given phase and pattern, creating it if needed.
+     *
+     * @param pPhase the phase
+     * @param pPattern the URI pattern
+     * @return the histogram, never {@code null}
+     */
+    public LatencyHistogram getHistogram(final String pPhase, final String pPattern) {
+        ConcurrentMap<String, LatencyHistogram> histograms = mHistograms.get(pPhase);
+        if (histograms == null) {
+            ConcurrentMap<String, LatencyHistogram> created = new ConcurrentHashMap<String, LatencyHistogram>();
+            histograms = mHistograms.putIfAbsent(pPhase, created);
+            if (histograms == null) {
+                histograms = created;
+            }
+        }
+
+        LatencyHistogram histogram = histograms.get(pPattern);
+        if (histogram == null) {
+            LatencyHistogram created = new LatencyHistogram();
+            histogram = histograms.putIfAbsent(pPattern, created);
+
+            if (histogram == null) {
+                histogram = created;
+                registerMBean(pPhase, pPattern, created);
+            }
+        }
+
+        return histogram;
+    }
+
+    /**
+     * Returns the histograms of this filter, keyed by phase and URI pattern.
+     *
+     * @return a sorted map of phases to sorted maps of patterns to histograms
+     */
+    public SortedMap<String, SortedMap<String, LatencyHistogram>> getHistograms() {
+        SortedMap<String, SortedMap<String, LatencyHistogram>> histograms = new TreeMap<String, SortedMap<String, LatencyHistogram>>();
+
+        for (Map.Entry<String, ConcurrentMap<String, LatencyHistogram>> entry : mHistograms.entrySet()) {
+            histograms.put(entry.getKey(), new TreeMap<String, LatencyHistogram>(entry.getValue()));
+        }
+
+        return histograms;
+    }
+
+    /**
+     * Returns the first URI pattern matching the request.
+     *
+     * @param pRequest the request
+     * @return the matching pattern, or {@link #DEFAULT_PATTERN} if none match
+     */
+    String getPattern(final ServletRequest pRequest) {
+        if (mPatterns.length == 0 || !(pRequest instanceof HttpServletRequest)) {
+            return DEFAULT_PATTERN;
+        }
+
+        String path = getPath((HttpServletRequest) pRequest);
+
+        for (String pattern : mPatterns) {
+            if (matches(pattern, path)) {
+                return pattern;
+            }
+        }
+
+        return DEFAULT_PATTERN;
+    }
+
+    /**
+     * Returns the URI of the request (or included resource), relative to the context path.
+     *
+     * @param pRequest the request
+     * @return the context relative path
+     */
+    static String getPath(final HttpServletRequest pRequest) {
+        String uri = ServletUtil.getIncludeRequestURI(pRequest);
+        if (uri == null) {
+            uri = pRequest.getRequestURI();
+        }
+
+        String contextPath = pRequest.getContextPath();
+        return contextPath != null && uri.startsWith(contextPath) ? uri.substring(contextPath.length()) : uri;
+    }
+
+    static boolean matches(final String pPattern, final String pPath) {
+        if (pPattern.equals(DEFAULT_PATTERN) || pPattern.equals("/")) {
+            return true;
+        }
+        else if (pPattern.endsWith("/*")) {
+            String prefix = pPattern.substring(0, pPattern.length() - 2);
+            return pPath.startsWith(prefix) && (pPath.length() == prefix.length() || pPath.charAt(prefix.length()) == '/');
+        }
+        else if (pPattern.startsWith("*.")) {
+            return pPath.endsWith(pPattern.substring(1));
+        }
+
+        return pPattern.equals(pPath);
+    }
+
+    /**
+     * Makes these metrics available to the given context, and registers
+     * the histograms with the platform MBean server.
+     *
+     * @param pContext the servlet context
+     */
+    public void register(final ServletContext pContext) {
+        synchronized (FilterMetrics.class) {
+            Map<String, FilterMetrics> metrics = getMetrics(pContext);
+            Map<String, FilterMetrics> updated = new TreeMap<String, FilterMetrics>(metrics);
+            updated.put(mName, this);
+            pContext.setAttribute(ATTRIB_METRICS, Collections.unmodifiableMap(updated));
+        }
+
+        String contextName = pContext.getServletContextName();
+        mContextName = contextName != null ? contextName : Integer.toHexString(System.identityHashCode(pContext));
+
+        for (Map.Entry<String, SortedMap<String, LatencyHistogram>> phase : getHistograms().entrySet()) {
+            for (Map.Entry<String, LatencyHistogram> pattern : phase.getValue().entrySet()) {
+                registerMBean(phase.getKey(), pattern.getKey(), pattern.getValue());
+            }
+        }
+    }
+
+    /**
+     * Removes these metrics from the given context, and unregisters any MBeans.
+     *
+     * @param pContext the servlet context
+     */
+    public void unregister(final ServletContext pContext) {
+        synchronized (FilterMetrics.class) {
+            Map<String, FilterMetrics> metrics = getMetrics(pContext);
+            if (metrics.get(mName) == this) {
+                Map<String, FilterMetrics> updated = new TreeMap<String, FilterMetrics>(metrics);
+                updated.remove(mName);
+                pContext.setAttribute(ATTRIB_METRICS, Collections.unmodifiableMap(updated));
+            }
+        }
+
+        mContextName = null;
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        synchronized (mRegisteredNames) {
+            for (ObjectName name : mRegisteredNames) {
+                try {
+                    server.unregisterMBean(name);
+                }
+                catch (JMException ignore) {
+                    // Already gone
+                }
+            }
+
+            mRegisteredNames.clear();
+        }
+    }
+
+    /**
+     * Returns the metrics registered with the given context.
+     *
+     * @param pContext the servlet context
+     * @return an unmodifiable map of filter names to metrics, sorted by name
+     */
+    @SuppressWarnings({"unchecked"})
+    public static Map<String, FilterMetrics> getMetrics(final ServletContext pContext) {
+        Map<String, FilterMetrics> metrics = (Map<String, FilterMetrics>) pContext.getAttribute(ATTRIB_METRICS);
+        return metrics != null ? metrics : Collections.<String, FilterMetrics>emptyMap();
+    }
+
+    private void registerMBean(final String pPhase, final String pPattern, final LatencyHistogram pHistogram) {
+        String contextName = mContextName;
+        if (contextName == null) {
+            return;
+        }
+
+        try {
+            ObjectName name = new ObjectName(
+                    JMX_DOMAIN + ":type=FilterMetrics"
+                            + ",context=" + ObjectName.quote(contextName)
+                            + ",filter=" + ObjectName.quote(mName)
+                            + ",phase=" + ObjectName.quote(pPhase)
+                            + ",pattern=" + ObjectName.quote(pPattern)
+            );
+
+            synchronized (mRegisteredNames) {
+                if (!mRegisteredNames.contains(name)) {
+                    ManagementFactory.getPlatformMBeanServer().registerMBean(pHistogram, name);
+                    mRegisteredNames.add(name);
+                }
+            }
+        }
+        catch (JMException ignore) {
+            // Most likely a filter with the same name in another context,
+            // metrics are still available from the MetricsServlet
+        }
+        catch (SecurityException ignore) {
+            // Not allowed to register MBeans, same as above
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[" + mName + "]";
+    }
+}
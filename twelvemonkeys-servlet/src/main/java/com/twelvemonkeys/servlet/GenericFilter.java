@@ -29,6 +29,7 @@
 package com.twelvemonkeys.servlet;
 
 import com.twelvemonkeys.lang.BeanUtil;
+import com.twelvemonkeys.lang.StringUtil;
 
 import javax.servlet.*;
 import java.io.IOException;
@@ -57,6 +58,9 @@ import java.util.Enumeration;
  * <p/>
  * To write a generic filter, you need only override the abstract
  * {@link #doFilterImpl doFilterImpl} method.
+ * <p/>
+ * If the init-parameter {@code metrics} is {@code true}, the latency of
+ * each request is recorded, see {@link #getMetrics()}.
  *
  * @author <a href="mailto:harald.kuhr@gmail.com">Harald Kuhr</a>
  * @author last modified by $Author: haku $
@@ -121,6 +125,23 @@ public abstract class GenericFilter implements Filter, FilterConfig, Serializabl
      */
     protected boolean mOncePerRequest = false;
 
+    /**
+     * Indicates if latency metrics should be recorded for this filter.
+     *
+     * @see #getMetrics()
+     */
+    private boolean mMetricsEnabled = false;
+
+    /**
+     * The URI patterns to record latency metrics for.
+     */
+    private String[] mMetricsPatterns = null;
+
+    /**
+     * The latency metrics, or {@code null} if disabled.
+     */
+    private transient FilterMetrics mMetrics = null;
+
     /**
      * Does nothing.
      */
@@ -166,6 +187,11 @@ public abstract class GenericFilter implements Filter, FilterConfig, Serializabl
         // Create run-once attribute name
         mAttribRunOnce = pConfig.getFilterName() + ATTRIB_RUN_ONCE_EXT;
         log("init (oncePerRequest=" + mOncePerRequest + ", attribRunOnce=" + mAttribRunOnce + ")");
+
+        if (mMetricsEnabled) {
+            mMetrics = new FilterMetrics(getFilterName(), mMetricsPatterns);
+            mMetrics.register(getServletContext());
+        }
         init();
     }
 
@@ -205,7 +231,19 @@ public abstract class GenericFilter implements Filter, FilterConfig, Serializabl
         }
 
         // Do real filter
-        doFilterImpl(pRequest, pResponse, pFilterChain);
+        FilterMetrics metrics = mMetrics;
+        if (metrics == null) {
+            doFilterImpl(pRequest, pResponse, pFilterChain);
+            return;
+        }
+
+        long start = System.nanoTime();
+        try {
+            doFilterImpl(pRequest, pResponse, pFilterChain);
+        }
+        finally {
+            metrics.record(FilterMetrics.PHASE_TOTAL, pRequest, System.nanoTime() - start);
+        }
     }
 
     /**
@@ -262,6 +300,12 @@ public abstract class GenericFilter implements Filter, FilterConfig, Serializabl
      */
     public void destroy() {
         log("destroy");
+
+        if (mMetrics != null) {
+            mMetrics.unregister(getServletContext());
+            mMetrics = null;
+        }
+
         mFilterConfig = null;
     }
 
@@ -380,4 +424,43 @@ public abstract class GenericFilter implements Filter, FilterConfig, Serializabl
     public void setOncePerRequest(boolean pOncePerRequest) {
         mOncePerRequest = pOncePerRequest;
     }
+
+    /**
+     * Specifies if latency metrics should be recorded for this filter.
+     * Called automatically from the {@code init}-method, with settings
+     * from web.xml.
+     *
+     * @param pMetrics {@code true} if metrics should be recorded
+     * @see #getMetrics()
+     */
+    @InitParam
+    public void setMetrics(boolean pMetrics) {
+        mMetricsEnabled = pMetrics;
+    }
+
+    /**
+     * Sets the URI patterns to record latency metrics for, as a
+     * comma-separated list, like {@code "/images/*, *.jsp"}.
+     * Called automatically from the {@code init}-method, with settings
+     * from web.xml.
+     *
+     * @param pMetricsPatterns the URI patterns
+     * @see FilterMetrics
+     */
+    @InitParam
+    public void setMetricsPatterns(String pMetricsPatterns) {
+        mMetricsPatterns = StringUtil.toStringArray(pMetricsPatterns, ", \r\n\t");
+    }
+
+    /**
+     * Returns the latency metrics of this filter.
+     * The total time of {@link #doFilterImpl doFilterImpl} is recorded
+     * automatically, subclasses may record additional phases.
+     *
+     * @return the metrics, or {@code null} if metrics are not enabled
+     * @see #setMetrics(boolean)
+     */
+    protected FilterMetrics getMetrics() {
+        return mMetrics;
+    }
 }
@@ -0,0 +1,253 @@
+/*
+ * Copyright (c) 2008, Harald Kuhr
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name "TwelveMonkeys" nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.twelvemonkeys.servlet;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed size, lock-free histogram of latencies, in nanoseconds.
+ * <p/>
+ * Values are counted in log-linear buckets: Each power of two range is split
+ * into 32 linear sub-buckets, giving a relative error of less than about 3%
+ * for any recorded value, using a fixed amount of memory (about 10 KB).
+ * Values up to about 73 minutes are tracked with full resolution, longer
+ * values are counted in the last bucket. The maximum value is always exact.
+ * <p/>
+ * {@link #record(long) Recording} a value is wait-free, and never allocates.
+ * {@link #snapshot() Snapshots} are taken without blocking writers, and
+ * may thus not reflect values recorded concurrently with the snapshot.
+ *
+ * @author <a href="mailto:harald.kuhr@gmail.com">Harald Kuhr</a>
+ * @author last modified by $Author: haku $
+ * @version $Id: LatencyHistogram.java,v 1.0 Oct 19, 2026 2:24:50 AM haraldk Exp$
+ */
+public final class LatencyHistogram implements LatencyHistogramMBean {
+    static final int SUB_BUCKET_BITS = 5;
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /** Values less than {@code 2^MAX_EXPONENT} nanoseconds are tracked with full resolution */
+    static final int MAX_EXPONENT = 42;
+
+    static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray mCounts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong mSum = new AtomicLong();
+    private final AtomicLong mMax = new AtomicLong();
+
+    /**
+     * Records a value.
+     *
+     * @param pNanos the latency in nanoseconds, negative values are recorded as {@code 0}
+     */
+    public void record(final long pNanos) {
+        long value = pNanos < 0 ? 0 : pNanos;
+
+        mCounts.incrementAndGet(indexOf(value));
+        mSum.addAndGet(value);
+
+        long max;
+        while (value > (max = mMax.get())) {
+            if (mMax.compareAndSet(max, value)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Resets all counts to zero.
+     * Values recorded concurrently with a reset may or may not be counted.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            mCounts.set(i, 0);
+        }
+
+        mSum.set(0);
+        mMax.set(0);
+    }
+
+    /**
+     * Returns a snapshot of the current state of this histogram.
+     *
+     * @return a new snapshot
+     */
+    public Snapshot snapshot() {
+        long[] counts = new long[BUCKETS];
+        long count = 0;
+
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = mCounts.get(i);
+            count += counts[i];
+        }
+
+        return new Snapshot(counts, count, mSum.get(), mMax.get());
+    }
+
+    public long getCount() {
+        return snapshot().getCount();
+    }
+
+    public long getMean() {
+        return snapshot().getMean();
+    }
+
+    public long getMax() {
+        return mMax.get();
+    }
+
+    public long get50thPercentile() {
+        return snapshot().getValueAtPercentile(50);
+    }
+
+    public long get90thPercentile() {
+        return snapshot().getValueAtPercentile(90);
+    }
+
+    public long get99thPercentile() {
+        return snapshot().getValueAtPercentile(99);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[" + snapshot() + "]";
+    }
+
+    static int indexOf(final long pValue) {
+        if (pValue < SUB_BUCKETS) {
+            return (int) pValue;
+        }
+
+        int exponent = 63 - Long.numberOfLeadingZeros(pValue);
+        if (exponent >= MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+
+        // Group 1 and up holds SUB_BUCKETS values, each spanning 2^(group - 1)
+        int group = exponent - SUB_BUCKET_BITS + 1;
+        return group * SUB_BUCKETS + (int) (pValue >>> (exponent - SUB_BUCKET_BITS)) - SUB_BUCKETS;
+    }
+
+    static long lowestValueOf(final int pIndex) {
+        int group = pIndex >>> SUB_BUCKET_BITS;
+        int sub = pIndex & (SUB_BUCKETS - 1);
+
+        return group == 0 ? sub : (long) (SUB_BUCKETS + sub) << (group - 1);
+    }
+
+    static long highestValueOf(final int pIndex) {
+        if (pIndex == BUCKETS - 1) {
+            // Overflow bucket
+            return Long.MAX_VALUE;
+        }
+
+        int group = pIndex >>> SUB_BUCKET_BITS;
+        return group == 0 ? lowestValueOf(pIndex) : lowestValueOf(pIndex) + (1L << (group - 1)) - 1;
+    }
+
+    /**
+     * An immutable snapshot of a {@code LatencyHistogram}.
+     */
+    public static final class Snapshot {
+        private final long[] mCounts;
+        private final long mCount;
+        private final long mSum;
+        private final long mMax;
+
+        Snapshot(final long[] pCounts, final long pCount, final long pSum, final long pMax) {
+            mCounts = pCounts;
+            mCount = pCount;
+            mSum = pSum;
+            mMax = pMax;
+        }
+
+        public long getCount() {
+            return mCount;
+        }
+
+        /**
+         * Returns the maximum recorded value.
+         *
+         * @return the maximum value, or {@code 0} if no values are recorded
+         */
+        public long getMax() {
+            return mMax;
+        }
+
+        /**
+         * Returns the mean value.
+         *
+         * @return the mean value, or {@code 0} if no values are recorded
+         */
+        public long getMean() {
+            return mCount > 0 ? mSum / mCount : 0;
+        }
+
+        /**
+         * Returns the value at the given percentile, that is, the highest
+         * value equivalent to the value that {@code pPercentile}% of the
+         * recorded values are less than or equal to.
+         *
+         * @param pPercentile the percentile, {@code 0..100}
+         * @return the value at the given percentile, or {@code 0} if no values are recorded
+         *
+         * @throws IllegalArgumentException if {@code pPercentile} is out of range
+         */
+        public long getValueAtPercentile(final double pPercentile) {
+            if (pPercentile < 0 || pPercentile > 100) {
+                throw new IllegalArgumentException("percentile must be in range 0..100: " + pPercentile);
+            }
+
+            if (mCount == 0) {
+                return 0;
+            }
+
+            long target = Math.max(1, (long) Math.ceil(pPercentile / 100.0 * mCount));
+            long cumulative = 0;
+
+            for (int i = 0; i < mCounts.length; i++) {
+                cumulative += mCounts[i];
+
+                if (cumulative >= target) {
+                    return Math.min(highestValueOf(i), mMax);
+                }
+            }
+
+            return mMax;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                    "count: %d, mean: %d ns, p50: %d ns, p90: %d ns, p99: %d ns, max: %d ns",
+                    mCount, getMean(), getValueAtPercentile(50), getValueAtPercentile(90), getValueAtPercentile(99), mMax
+            );
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2008, Harald Kuhr
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name "TwelveMonkeys" nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.twelvemonkeys.servlet;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Map;
+import java.util.SortedMap;
+
+/**
+ * A servlet that writes the latency metrics of all filters of the web
+ * application, as a plain text table.
+ * <p/>
+ * Each line holds the filter name, phase, URI pattern, request count, and
+ * the mean, 50th, 90th and 99th percentile and maximum latency, in
+ * microseconds. Columns are tab separated.
+ * <p/>
+ * Only filters with metrics enabled are listed, see {@link GenericFilter#setMetrics(boolean)}.
+ *
+ * @author <a href="mailto:harald.kuhr@gmail.com">Harald Kuhr</a>
+ * @author last modified by $Author: haku $
+ * @version $Id: MetricsServlet.java,v 1.0 Oct 19, 2026 3:05:44 AM haraldk Exp$
+ *
+ * @see FilterMetrics
+ */
+public class MetricsServlet extends HttpServlet {
+    protected void doGet(HttpServletRequest pRequest, HttpServletResponse pResponse) throws ServletException, IOException {
+        pResponse.setContentType("text/plain");
+        pResponse.setHeader("Cache-Control", "no-cache");
+
+        PrintWriter out = pResponse.getWriter();
+        writeMetrics(FilterMetrics.getMetrics(getServletContext()), out);
+        out.flush();
+    }
+
+    static void writeMetrics(final Map<String, FilterMetrics> pMetrics, final PrintWriter pOut) {
+        pOut.println("# filter\tphase\tpattern\tcount\tmean\tp50\tp90\tp99\tmax (us)");
+
+        for (FilterMetrics metrics : pMetrics.values()) {
+            for (Map.Entry<String, SortedMap<String, LatencyHistogram>> phase : metrics.getHistograms().entrySet()) {
+                for (Map.Entry<String, LatencyHistogram> pattern : phase.getValue().entrySet()) {
+                    LatencyHistogram.Snapshot snapshot = pattern.getValue().snapshot();
+
+                    pOut.print(metrics.getName());
+                    pOut.print('\t');
+                    pOut.print(phase.getKey());
+                    pOut.print('\t');
+                    pOut.print(pattern.getKey());
+                    pOut.print('\t');
+                    pOut.print(snapshot.getCount());
+                    pOut.print('\t');
+                    pOut.print(snapshot.getMean() / 1000);
+                    pOut.print('\t');
+                    pOut.print(snapshot.getValueAtPercentile(50) / 1000);
+                    pOut.print('\t');
+                    pOut.print(snapshot.getValueAtPercentile(90) / 1000);
+                    pOut.print('\t');
+                    pOut.print(snapshot.getValueAtPercentile(99) / 1000);
+                    pOut.print('\t');
+                    pOut.println(snapshot.getMax() / 1000);
+                }
+            }
+        }
+    }
+}
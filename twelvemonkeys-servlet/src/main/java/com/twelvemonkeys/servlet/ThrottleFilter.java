@@ -55,12 +55,20 @@ import java.util.Map;
  * requests, to avoid large backlogs. The number of concurrent requests and the
  * response messages sent to the user agent, is configurable from the web
  * descriptor.
+ * <p/>
+ * Optionally, requests exceeding the limit may wait in a bounded FIFO queue
+ * for a short time, instead of being rejected at once, to smooth out bursts
+ * (see {@link #setMaxQueueLength(int)} and {@link #setQueueTimeout(long)}).
+ * Separate limits may be given for different URI patterns
+ * (see {@link #setUriLimits(String)}), and the limits may be adjusted from
+ * the observed latency (see {@link #setTargetLatency(long)}).
  *
  * @author <a href="mailto:harald.kuhr@gmail.com">Harald Kuhr</a>
  * @author last modified by $Author: haku $
  * @version $Id: //depot/branches/personal/haraldk/twelvemonkeys/release-2/twelvemonkeys-servlet/src/main/java/com/twelvemonkeys/servlet/ThrottleFilter.java#1 $
  * @see #setMaxConcurrentThreadCount
  * @see #setResponseMessages
+ * @see AdmissionController
  */
 public class ThrottleFilter extends GenericFilter {
 
@@ -69,11 +77,34 @@ public class ThrottleFilter extends GenericFilter {
      */
     protected int mMaxConcurrentThreadCount = 10;
 
+    /** Phase for the time spent waiting in the queue, if metrics are enabled */
+    public static final String PHASE_QUEUE = "queue";
+
+    /**
+     * Maximum number of requests waiting, defaults to {@code 0} (no queueing)
+     */
+    private int mMaxQueueLength = 0;
+
+    /**
+     * Maximum time a request may wait in the queue, in milliseconds
+     */
+    private long mQueueTimeout = 0;
+
+    /**
+     * Target latency in milliseconds, or {@code 0} for fixed limits
+     */
+    private long mTargetLatency = 0;
+
     /**
-     * The number of running request threads
+     * URI patterns with separate limits, in matching order
      */
-    private int mRunningThreads = 0;
-    private final Object mRunningThreadsLock = new Object();
+    private String[] mPatterns = new String[0];
+    private int[] mPatternLimits = new int[0];
+
+    /**
+     * Admission controllers, one per URI pattern, and the default controller last
+     */
+    private AdmissionController[] mControllers;
 
     /**
      * Default response message sent to user agents, if the request is rejected
@@ -118,6 +149,95 @@ public class ThrottleFilter extends GenericFilter {
         }
     }
 
+    /**
+     * Sets the maximum number of requests waiting for admission, per limit.
+     * Requests exceeding the concurrent thread count are rejected if the
+     * queue is full. The default is {@code 0}, meaning no queueing.
+     *
+     * @param pMaxQueueLength the maximum queue length
+     */
+    @InitParam
+    public void setMaxQueueLength(int pMaxQueueLength) {
+        if (pMaxQueueLength < 0) {
+            throw new IllegalArgumentException("max queue length < 0");
+        }
+
+        mMaxQueueLength = pMaxQueueLength;
+    }
+
+    /**
+     * Sets the maximum time a request may wait in the queue, before it is rejected.
+     *
+     * @param pQueueTimeout the timeout in milliseconds
+     */
+    @InitParam
+    public void setQueueTimeout(long pQueueTimeout) {
+        if (pQueueTimeout < 0) {
+            throw new IllegalArgumentException("queue timeout < 0");
+        }
+
+        mQueueTimeout = pQueueTimeout;
+    }
+
+    /**
+     * Enables adaptive limits, and sets the target latency.
+     * Limits are decreased when requests take longer than the target
+     * latency, and increased again (up to the configured limits) when
+     * requests complete within the target latency.
+     *
+     * @param pTargetLatency the target latency in milliseconds, or {@code 0} for fixed limits
+     */
+    @InitParam
+    public void setTargetLatency(long pTargetLatency) {
+        if (pTargetLatency < 0) {
+            throw new IllegalArgumentException("target latency < 0");
+        }
+
+        mTargetLatency = pTargetLatency;
+    }
+
+    /**
+     * Sets separate concurrent request limits for URI patterns.
+     * <BR/>
+     * The format is {@code &lt;url-pattern&gt;=&lt;limit&gt;,
+     * &lt;url-pattern&gt;=&lt;limit&gt;}. Patterns are matched in the given
+     * order, requests not matching any pattern share the
+     * {@link #setMaxConcurrentThreadCount max concurrent thread count}.
+     * <BR/>
+     * Example: {@code /image/*=4, *.jsp=20}
+     *
+     * @param pUriLimits the URI patterns and limits
+     */
+    @InitParam
+    public void setUriLimits(String pUriLimits) {
+        String[] mappings = StringUtil.toStringArray(pUriLimits, ", \r\n\t");
+        List<String> patterns = new ArrayList<String>();
+        List<Integer> limits = new ArrayList<Integer>();
+
+        for (String mapping : mappings) {
+            String[] pair = StringUtil.toStringArray(mapping, "= ");
+
+            try {
+                if (pair.length == 2) {
+                    limits.add(Integer.parseInt(pair[1]));
+                    patterns.add(pair[0]);
+                    continue;
+                }
+            }
+            catch (NumberFormatException ignore) {
+                // Fall through
+            }
+
+            throw new IllegalArgumentException("Error in init param \"uriLimits\": " + pUriLimits);
+        }
+
+        mPatterns = patterns.toArray(new String[patterns.size()]);
+        mPatternLimits = new int[limits.size()];
+        for (int i = 0; i < mPatternLimits.length; i++) {
+            mPatternLimits[i] = limits.get(i);
+        }
+    }
+
     /**
      * Sets the response message sent to the user agent, if the request is
      * rejected.
@@ -152,6 +272,27 @@ public class ThrottleFilter extends GenericFilter {
         mResponseMessageTypes = (String[]) types.toArray(new String[types.size()]);
     }
 
+    public void init() throws ServletException {
+        mControllers = new AdmissionController[mPatterns.length + 1];
+
+        try {
+            for (int i = 0; i < mPatterns.length; i++) {
+                mControllers[i] = createController(mPatternLimits[i]);
+            }
+
+            mControllers[mPatterns.length] = createController(mMaxConcurrentThreadCount);
+        }
+        catch (IllegalArgumentException e) {
+            throw new ServletConfigException("Could not configure " + getFilterName() + ": " + e.getMessage(), e);
+        }
+    }
+
+    private AdmissionController createController(final int pLimit) {
+        // In adaptive mode, never go below 1/10th of the configured limit
+        int minLimit = mTargetLatency > 0 ? Math.max(1, pLimit / 10) : pLimit;
+        return new AdmissionController(pLimit, mMaxQueueLength, mQueueTimeout, mTargetLatency, Math.max(1, minLimit));
+    }
+
     /**
      * @param pRequest
      * @param pResponse
@@ -161,55 +302,83 @@ public class ThrottleFilter extends GenericFilter {
      */
     protected void doFilterImpl(ServletRequest pRequest, ServletResponse pResponse, FilterChain pChain)
             throws IOException, ServletException {
-        try {
-            if (beginRequest()) {
+        AdmissionController controller = getController(pRequest);
+
+        if (beginRequest(controller, pRequest)) {
+            long start = System.nanoTime();
+
+            try {
                 // Continue request
                 pChain.doFilter(pRequest, pResponse);
             }
-            else {
-                // Send error and end request
-                // Get HTTP specific versions
-                HttpServletRequest request = (HttpServletRequest) pRequest;
-                HttpServletResponse response = (HttpServletResponse) pResponse;
-
-                // Get content type
-                String contentType = getContentType(request);
-
-                // Note: This is not the way the spec says you should do it.
-                // However, we handle error response this way for preformace reasons.
-                // The "correct" way would be to use sendError() and register a servlet
-                // that does the content negotiation as errorpage in the web descriptor.
-                response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
-                response.setContentType(contentType);
-                response.getWriter().println(getMessage(contentType));
-
-                // Log warning, as this shouldn't happen too often
-                log("Request denied, no more available threads for requestURI=" + request.getRequestURI());
+            finally {
+                controller.release(System.nanoTime() - start);
             }
         }
-        finally {
-            doneRequest();
+        else {
+            // Send error and end request
+            // Get HTTP specific versions
+            HttpServletRequest request = (HttpServletRequest) pRequest;
+            HttpServletResponse response = (HttpServletResponse) pResponse;
+
+            // Get content type
+            String contentType = getContentType(request);
+
+            // Note: This is not the way the spec says you should do it.
+            // However, we handle error response this way for preformace reasons.
+            // The "correct" way would be to use sendError() and register a servlet
+            // that does the content negotiation as errorpage in the web descriptor.
+            response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            response.setContentType(contentType);
+            response.getWriter().println(getMessage(contentType));
+
+            // Log warning, as this shouldn't happen too often
+            log("Request denied, no more available threads for requestURI=" + request.getRequestURI());
         }
     }
 
     /**
-     * Marks the beginning of a request
+     * Gets the admission controller for the URI pattern matching the request.
      *
-     * @return <CODE>true<CODE> if the request should be handled.
+     * @param pRequest the request
+     * @return the admission controller
      */
-    private boolean beginRequest() {
-        synchronized (mRunningThreadsLock) {
-            mRunningThreads++;
+    AdmissionController getController(ServletRequest pRequest) {
+        if (mPatterns.length > 0 && pRequest instanceof HttpServletRequest) {
+            String path = FilterMetrics.getPath((HttpServletRequest) pRequest);
+
+            for (int i = 0; i < mPatterns.length; i++) {
+                if (FilterMetrics.matches(mPatterns[i], path)) {
+                    return mControllers[i];
+                }
+            }
         }
-        return (mRunningThreads <= mMaxConcurrentThreadCount);
+
+        return mControllers[mControllers.length - 1];
     }
 
     /**
-     * Marks the end of the request
+     * Marks the beginning of a request, waiting in the queue if needed.
+     *
+     * @param pController the admission controller
+     * @param pRequest the request
+     * @return <CODE>true<CODE> if the request should be handled.
      */
-    private void doneRequest() {
-        synchronized (mRunningThreadsLock) {
-            mRunningThreads--;
+    private boolean beginRequest(AdmissionController pController, ServletRequest pRequest) {
+        FilterMetrics metrics = getMetrics();
+        long start = metrics != null ? System.nanoTime() : 0;
+
+        try {
+            return pController.acquire();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        finally {
+            if (metrics != null) {
+                metrics.record(PHASE_QUEUE, pRequest, System.nanoTime() - start);
+            }
         }
     }
 
@@ -308,4 +477,4 @@ public class ThrottleFilter extends GenericFilter {
             return (System.currentTimeMillis() - mTimestamp) > 60000;  // Cache 1 minute
         }
     }
-}
\ No newline at end of file
+}
@@ -36,15 +36,46 @@ import javax.servlet.http.HttpServletRequest;
 import java.io.IOException;
 
 /**
- * TimingFilter class description.
+ * A filter that records the request processing time of each resource,
+ * excluding the time spent in included resources, in {@link FilterMetrics}.
+ * <p/>
+ * Metrics are enabled by default for this filter, and the exclusive time is
+ * recorded in the phase {@code "exclusive"}, in addition to the {@code "total"}
+ * time recorded by all filters. Use the init-parameter
+ * {@code metrics-patterns} to keep separate histograms for different
+ * resources, and the {@link MetricsServlet} or JMX to inspect them.
+ * <p/>
+ * Setting the init-parameter {@code log-requests} to {@code true} will
+ * also log the processing time of each request, which is expensive at high
+ * request rates.
  *
  * @author <a href="mailto:harald.kuhr@gmail.com">Harald Kuhr</a>
  * @author last modified by $Author: haku $
  * @version $Id: //depot/branches/personal/haraldk/twelvemonkeys/release-2/twelvemonkeys-servlet/src/main/java/com/twelvemonkeys/servlet/TimingFilter.java#1 $
  */
 public class TimingFilter extends GenericFilter {
+    /** Phase for the time spent in a resource, excluding included resources */
+    public static final String PHASE_EXCLUSIVE = "exclusive";
 
     private String mAttribUsage = null;
+    private boolean mLogRequests = false;
+
+    /**
+     * Creates a {@code TimingFilter}, with metrics enabled.
+     */
+    public TimingFilter() {
+        setMetrics(true);
+    }
+
+    /**
+     * Specifies if the processing time of each request should be logged.
+     *
+     * @param pLogRequests {@code true} if requests should be logged
+     */
+    @InitParam
+    public void setLogRequests(boolean pLogRequests) {
+        mLogRequests = pLogRequests;
+    }
 
     /**
      * Method init
@@ -71,12 +102,12 @@ public class TimingFilter extends GenericFilter {
 
         if (usageAttrib instanceof Long) {
             // If set, get value, and remove attribute for nested resources
-            total = ((Long) usageAttrib).longValue();
+            total = (Long) usageAttrib;
             pRequest.removeAttribute(mAttribUsage);
         }
 
         // Start timing
-        long start = System.currentTimeMillis();
+        long start = System.nanoTime();
 
         try {
             // Continue chain
@@ -84,30 +115,36 @@ public class TimingFilter extends GenericFilter {
         }
         finally {
             // Stop timing
-            long end = System.currentTimeMillis();
+            long delta = System.nanoTime() - start;
 
             // Get time usage of included resources, add to total usage
             usageAttrib = pRequest.getAttribute(mAttribUsage);
             long usage = 0;
             if (usageAttrib instanceof Long) {
-                usage = ((Long) usageAttrib).longValue();
+                usage = (Long) usageAttrib;
             }
 
-            // Get the name of the included resource
-            String resourceURI = ServletUtil.getIncludeRequestURI(pRequest);
-
-            // If none, this is probably the parent page itself
-            if (resourceURI == null) {
-                resourceURI = ((HttpServletRequest) pRequest).getRequestURI();
+            FilterMetrics metrics = getMetrics();
+            if (metrics != null) {
+                metrics.record(PHASE_EXCLUSIVE, pRequest, delta - usage);
             }
-            long delta = end - start;
 
-            log("Request processing time for resource \"" + resourceURI + "\": " +
-                    (delta - usage) + " ms (accumulated: " + delta + " ms).");
+            if (mLogRequests) {
+                // Get the name of the included resource
+                String resourceURI = ServletUtil.getIncludeRequestURI(pRequest);
+
+                // If none, this is probably the parent page itself
+                if (resourceURI == null && pRequest instanceof HttpServletRequest) {
+                    resourceURI = ((HttpServletRequest) pRequest).getRequestURI();
+                }
+
+                log("Request processing time for resource \"" + resourceURI + "\": " +
+                        (delta - usage) / 1000000 + " ms (accumulated: " + delta / 1000000 + " ms).");
+            }
 
             // Store total usage
             total += delta;
-            pRequest.setAttribute(mAttribUsage, new Long(total));
+            pRequest.setAttribute(mAttribUsage, total);
         }
     }
-}
\ No newline at end of file
+}
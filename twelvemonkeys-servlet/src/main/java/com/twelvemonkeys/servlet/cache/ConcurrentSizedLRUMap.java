@@ -0,0 +1,656 @@
+/*
+ * Copyright (c) 2008, Harald Kuhr
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name "TwelveMonkeys" nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.twelvemonkeys.servlet.cache;
+
+import com.twelvemonkeys.util.ExpiringMap;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Thread safe map implementation with a size limit expressed as a total
+ * <em>weight</em> (typically bytes), rather than a number of mappings.
+ * When the weight limit is exceeded, the (approximately) least recently used
+ * mappings are removed.
+ * <p/>
+ * The mappings are spread over a number of segments, each guarded by its own
+ * lock and keeping its mappings in access-order. Threads accessing different
+ * segments never contend, and there is no global lock, not even for writes.
+ * Eviction removes the least recently used mapping among the eldest mappings
+ * of all segments, which is a close approximation of true LRU.
+ * Finding the eldest mapping does not require locking any segment, only the
+ * segment that is evicted from is locked.
+ * <p/>
+ * The weight of each value is computed once, on insertion, by the
+ * {@link Weigher} given at construction time.
+ * A value heavier than the weight limit is never cached, and a map with a
+ * weight limit of {@code 0} caches nothing, not even values of weight {@code 0}.
+ * <p/>
+ * This map does not allow {@code null} keys or values.
+ * The views returned by {@link #entrySet()}, {@link #keySet()} and
+ * {@link #values()} iterate over a snapshot of the mappings, and never throw
+ * {@code ConcurrentModificationException}.
+ *
+ * @author <a href="mailto:harald.kuhr@gmail.com">Harald Kuhr</a>
+ * @author last modified by $Author: haku $
+ * @version $Id: ConcurrentSizedLRUMap.java,v 1.0 Oct 18, 2026 9:12:40 PM haraldk Exp$
+ */
+public class ConcurrentSizedLRUMap<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>, ExpiringMap<K, V> {
+
+    /**
+     * Computes the weight of values stored in a {@code ConcurrentSizedLRUMap}.
+     */
+    public interface Weigher<V> {
+        /**
+         * Returns the weight of the given value.
+         *
+         * @param pValue the value, never {@code null}
+         * @return the weight of the value, {@code &gt;= 0}
+         */
+        int weigh(V pValue);
+    }
+
+    /**
+     * The default number of segments.
+     */
+    public static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+
+    private final Segment<K, V>[] mSegments;
+    private final int mSegmentMask;
+
+    private final Weigher<? super V> mWeigher;
+    private final long mMaxWeight;
+    private final AtomicLong mWeight = new AtomicLong();
+
+    private final AtomicLong mHits = new AtomicLong();
+    private final AtomicLong mMisses = new AtomicLong();
+    private final AtomicLong mEvictions = new AtomicLong();
+
+    private final long mOrigin = System.nanoTime() - 1;
+
+    /**
+     * Creates a {@code ConcurrentSizedLRUMap} with the default concurrency level.
+     *
+     * @param pMaxWeight the maximum total weight of the values in the map
+     * @param pWeigher the weigher used to compute the weight of the values
+     *
+     * @throws IllegalArgumentException if {@code pMaxWeight} is negative,
+     * or {@code pWeigher} is {@code null}
+     */
+    public ConcurrentSizedLRUMap(final long pMaxWeight, final Weigher<? super V> pWeigher) {
+        this(pMaxWeight, pWeigher, DEFAULT_CONCURRENCY_LEVEL);
+    }
+
+    /**
+     * Creates a {@code ConcurrentSizedLRUMap}.
+     *
+     * @param pMaxWeight the maximum total weight of the values in the map
+     * @param pWeigher the weigher used to compute the weight of the values
+     * @param pConcurrencyLevel the estimated number of concurrently updating
+     * threads, rounded up to the nearest power of two to get the number of segments
+     *
+     * @throws IllegalArgumentException if {@code pMaxWeight} is negative,
+     * {@code pWeigher} is {@code null} or {@code pConcurrencyLevel} is not positive
+     */
+    public ConcurrentSizedLRUMap(final long pMaxWeight, final Weigher<? super V> pWeigher, final int pConcurrencyLevel) {
+        if (pMaxWeight < 0) {
+            throw new IllegalArgumentException("max weight must be positive");
+        }
+        if (pWeigher == null) {
+            throw new IllegalArgumentException("weigher == null");
+        }
+        if (pConcurrencyLevel <= 0) {
+            throw new IllegalArgumentException("concurrency level must be positive");
+        }
+
+        int segments = 1;
+        while (segments < pConcurrencyLevel && segments < (1 << 16)) {
+            segments <<= 1;
+        }
+
+        @SuppressWarnings({"unchecked"})
+        Segment<K, V>[] array = new Segment[segments];
+        mSegments = array;
+        for (int i = 0; i < segments; i++) {
+            mSegments[i] = new Segment<K, V>();
+        }
+        mSegmentMask = segments - 1;
+
+        mMaxWeight = pMaxWeight;
+        mWeigher = pWeigher;
+    }
+
+    /**
+     * Returns the maximum total weight of the values in this map.
+     *
+     * @return the weight limit
+     */
+    public long getMaxWeight() {
+        return mMaxWeight;
+    }
+
+    /**
+     * Returns the current total weight of the values in this map.
+     *
+     * @return the current weight
+     */
+    public long getWeight() {
+        return mWeight.get();
+    }
+
+    /**
+     * Returns the number of lookups that found a mapping.
+     *
+     * @return the hit count
+     */
+    public long getHitCount() {
+        return mHits.get();
+    }
+
+    /**
+     * Returns the number of lookups that did not find a mapping.
+     *
+     * @return the miss count
+     */
+    public long getMissCount() {
+        return mMisses.get();
+    }
+
+    /**
+     * Returns the number of mappings removed to stay within the weight limit.
+     *
+     * @return the eviction count
+     */
+    public long getEvictionCount() {
+        return mEvictions.get();
+    }
+
+    /**
+     * Default implementation does nothing.
+     * Invoked, without holding any locks, for each mapping evicted from the
+     * map to stay within the weight limit.
+     *
+     * @param pRemoved the removed mapping
+     */
+    public void processRemoved(final Map.Entry<K, V> pRemoved) {
+    }
+
+    private Segment<K, V> segmentFor(final Object pKey) {
+        // Spread bits, to avoid collisions for hash codes that only differ in upper bits
+        int h = pKey.hashCode();
+        h ^= (h >>> 20) ^ (h >>> 12);
+        h ^= (h >>> 7) ^ (h >>> 4);
+        return mSegments[h & mSegmentMask];
+    }
+
+    private long now() {
+        // Positive, and monotonically increasing for the next 292 years
+        return System.nanoTime() - mOrigin;
+    }
+
+    private static void checkNotNull(final Object pKey, final Object pValue) {
+        if (pKey == null) {
+            throw new NullPointerException("key == null");
+        }
+        if (pValue == null) {
+            throw new NullPointerException("value == null");
+        }
+    }
+
+    @Override
+    public V get(final Object pKey) {
+        Segment<K, V> segment = segmentFor(pKey);
+        Node<V> node;
+
+        segment.lock();
+        try {
+            node = segment.mMap.get(pKey);
+            if (node != null) {
+                // NOTE: If node was the eldest, the segment's eldest hint is now too old, this is fixed on eviction
+                node.mAccessed = now();
+            }
+        }
+        finally {
+            segment.unlock();
+        }
+
+        if (node == null) {
+            mMisses.incrementAndGet();
+            return null;
+        }
+
+        mHits.incrementAndGet();
+        return node.mValue;
+    }
+
+    @Override
+    public boolean containsKey(final Object pKey) {
+        // NOTE: Does not count as an access, nor as a hit or miss
+        Segment<K, V> segment = segmentFor(pKey);
+
+        segment.lock();
+        try {
+            return segment.mMap.containsKey(pKey);
+        }
+        finally {
+            segment.unlock();
+        }
+    }
+
+    @Override
+    public V put(final K pKey, final V pValue) {
+        return put(pKey, pValue, false);
+    }
+
+    public V putIfAbsent(final K pKey, final V pValue) {
+        return put(pKey, pValue, true);
+    }
+
+    private V put(final K pKey, final V pValue, final boolean pOnlyIfAbsent) {
+        checkNotNull(pKey, pValue);
+
+        int weight = mWeigher.weigh(pValue);
+        Segment<K, V> segment = segmentFor(pKey);
+        Node<V> old;
+
+        segment.lock();
+        try {
+            old = segment.mMap.get(pKey);
+
+            if (old != null && pOnlyIfAbsent) {
+                return old.mValue;
+            }
+
+            if (!isCacheable(weight)) {
+                // Never cache values heavier than the entire cache, just drop the old mapping
+                if (old != null) {
+                    segment.mMap.remove(pKey);
+                    segment.updateEldest();
+                    mWeight.addAndGet(-old.mWeight);
+                }
+            }
+            else {
+                segment.put(pKey, new Node<V>(pValue, weight, now()));
+                mWeight.addAndGet(old != null ? weight - old.mWeight : weight);
+            }
+        }
+        finally {
+            segment.unlock();
+        }
+
+        evict();
+
+        return old != null ? old.mValue : null;
+    }
+
+    private boolean isCacheable(final int pWeight) {
+        return mMaxWeight > 0 && pWeight <= mMaxWeight;
+    }
+
+    @Override
+    public V remove(final Object pKey) {
+        Segment<K, V> segment = segmentFor(pKey);
+
+        segment.lock();
+        try {
+            Node<V> old = segment.mMap.remove(pKey);
+            if (old == null) {
+                return null;
+            }
+
+            segment.updateEldest();
+            mWeight.addAndGet(-old.mWeight);
+            return old.mValue;
+        }
+        finally {
+            segment.unlock();
+        }
+    }
+
+    public boolean remove(final Object pKey, final Object pValue) {
+        Segment<K, V> segment = segmentFor(pKey);
+
+        segment.lock();
+        try {
+            Node<V> old = segment.mMap.get(pKey);
+            if (old == null || !old.mValue.equals(pValue)) {
+                return false;
+            }
+
+            segment.mMap.remove(pKey);
+            segment.updateEldest();
+            mWeight.addAndGet(-old.mWeight);
+            return true;
+        }
+        finally {
+            segment.unlock();
+        }
+    }
+
+    public V replace(final K pKey, final V pValue) {
+        checkNotNull(pKey, pValue);
+
+        return containsKey(pKey) ? replaceImpl(pKey, null, pValue) : null;
+    }
+
+    public boolean replace(final K pKey, final V pOldValue, final V pNewValue) {
+        checkNotNull(pKey, pOldValue);
+        checkNotNull(pKey, pNewValue);
+
+        return replaceImpl(pKey, pOldValue, pNewValue) != null;
+    }
+
+    private V replaceImpl(final K pKey, final V pExpected, final V pValue) {
+        int weight = mWeigher.weigh(pValue);
+        Segment<K, V> segment = segmentFor(pKey);
+        Node<V> old;
+
+        segment.lock();
+        try {
+            old = segment.mMap.get(pKey);
+            if (old == null || (pExpected != null && !old.mValue.equals(pExpected))) {
+                return null;
+            }
+
+            if (!isCacheable(weight)) {
+                segment.mMap.remove(pKey);
+                segment.updateEldest();
+                mWeight.addAndGet(-old.mWeight);
+            }
+            else {
+                segment.put(pKey, new Node<V>(pValue, weight, now()));
+                mWeight.addAndGet(weight - old.mWeight);
+            }
+        }
+        finally {
+            segment.unlock();
+        }
+
+        evict();
+
+        return old.mValue;
+    }
+
+    @Override
+    public void clear() {
+        for (Segment<K, V> segment : mSegments) {
+            segment.lock();
+            try {
+                long weight = 0;
+                for (Node<V> node : segment.mMap.values()) {
+                    weight += node.mWeight;
+                }
+                segment.mMap.clear();
+                segment.updateEldest();
+                mWeight.addAndGet(-weight);
+            }
+            finally {
+                segment.unlock();
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (Segment<K, V> segment : mSegments) {
+            segment.lock();
+            try {
+                size += segment.mMap.size();
+            }
+            finally {
+                segment.unlock();
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        for (Segment<K, V> segment : mSegments) {
+            segment.lock();
+            try {
+                if (!segment.mMap.isEmpty()) {
+                    return false;
+                }
+            }
+            finally {
+                segment.unlock();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Removes the least recently used mappings, until the total weight is
+     * within the limit.
+     * Only the segment that is evicted from is locked.
+     */
+    private void evict() {
+        while (mWeight.get() > mMaxWeight) {
+            // Find the segment with the least recently used eldest mapping, using the (possibly too old) hints
+            Segment<K, V> victim = null;
+            long eldest = Long.MAX_VALUE;
+
+            for (Segment<K, V> segment : mSegments) {
+                long accessed = segment.mEldest;
+                if (accessed < eldest) {
+                    victim = segment;
+                    eldest = accessed;
+                }
+            }
+
+            if (victim == null) {
+                // Concurrently cleared
+                return;
+            }
+
+            Map.Entry<K, V> removed;
+
+            victim.lock();
+            try {
+                if (mWeight.get() <= mMaxWeight) {
+                    // Concurrently evicted
+                    return;
+                }
+
+                Iterator<Map.Entry<K, Node<V>>> iterator = victim.mMap.entrySet().iterator();
+                if (!iterator.hasNext()) {
+                    victim.updateEldest();
+                    continue;
+                }
+
+                Map.Entry<K, Node<V>> entry = iterator.next();
+                if (entry.getValue().mAccessed > eldest) {
+                    // The hint was too old, the eldest mapping has been accessed since, fix hint and retry
+                    victim.mEldest = entry.getValue().mAccessed;
+                    continue;
+                }
+
+                iterator.remove();
+                victim.updateEldest();
+                mWeight.addAndGet(-entry.getValue().mWeight);
+                removed = new SimpleEntry<K, V>(entry.getKey(), entry.getValue().mValue);
+            }
+            finally {
+                victim.unlock();
+            }
+
+            mEvictions.incrementAndGet();
+            processRemoved(removed);
+        }
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        return new AbstractSet<Map.Entry<K, V>>() {
+            public Iterator<Map.Entry<K, V>> iterator() {
+                return new SnapshotIterator();
+            }
+
+            public int size() {
+                return ConcurrentSizedLRUMap.this.size();
+            }
+
+            @Override
+            public void clear() {
+                ConcurrentSizedLRUMap.this.clear();
+            }
+        };
+    }
+
+    private class SnapshotIterator implements Iterator<Map.Entry<K, V>> {
+        private final Iterator<Map.Entry<K, V>> mSnapshot;
+        private Map.Entry<K, V> mCurrent;
+
+        SnapshotIterator() {
+            List<Map.Entry<K, V>> entries = new ArrayList<Map.Entry<K, V>>();
+
+            for (Segment<K, V> segment : mSegments) {
+                segment.lock();
+                try {
+                    for (Map.Entry<K, Node<V>> entry : segment.mMap.entrySet()) {
+                        entries.add(new SimpleEntry<K, V>(entry.getKey(), entry.getValue().mValue));
+                    }
+                }
+                finally {
+                    segment.unlock();
+                }
+            }
+
+            mSnapshot = entries.iterator();
+        }
+
+        public boolean hasNext() {
+            return mSnapshot.hasNext();
+        }
+
+        public Map.Entry<K, V> next() {
+            mCurrent = mSnapshot.next();
+            return mCurrent;
+        }
+
+        public void remove() {
+            if (mCurrent == null) {
+                throw new IllegalStateException("next() not invoked");
+            }
+
+            ConcurrentSizedLRUMap.this.remove(mCurrent.getKey(), mCurrent.getValue());
+            mCurrent = null;
+        }
+    }
+
+    /**
+     * A value, with its weight and time of last access.
+     */
+    private static final class Node<V> {
+        final V mValue;
+        final int mWeight;
+        long mAccessed; // Guarded by segment lock
+
+        Node(final V pValue, final int pWeight, final long pAccessed) {
+            mValue = pValue;
+            mWeight = pWeight;
+            mAccessed = pAccessed;
+        }
+    }
+
+    /**
+     * An access-ordered map, guarded by its own lock.
+     */
+    private static final class Segment<K, V> extends ReentrantLock {
+        final LinkedHashMap<K, Node<V>> mMap = new LinkedHashMap<K, Node<V>>(16, .75f, true);
+
+        /**
+         * Last access time of the eldest mapping, or {@code Long.MAX_VALUE} if empty.
+         * May be older than the actual value, but never newer.
+         * Written while holding the lock, read without.
+         */
+        volatile long mEldest = Long.MAX_VALUE;
+
+        void put(final K pKey, final Node<V> pNode) {
+            mMap.put(pKey, pNode);
+
+            if (mMap.size() == 1) {
+                mEldest = pNode.mAccessed;
+            }
+        }
+
+        void updateEldest() {
+            mEldest = mMap.isEmpty() ? Long.MAX_VALUE : mMap.values().iterator().next().mAccessed;
+        }
+    }
+
+    /**
+     * Immutable entry, as {@code AbstractMap.SimpleEntry} is not public until Java 6.
+     */
+    private static final class SimpleEntry<K, V> implements Map.Entry<K, V> {
+        private final K mKey;
+        private final V mValue;
+
+        SimpleEntry(final K pKey, final V pValue) {
+            mKey = pKey;
+            mValue = pValue;
+        }
+
+        public K getKey() {
+            return mKey;
+        }
+
+        public V getValue() {
+            return mValue;
+        }
+
+        public V setValue(final V pValue) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean equals(final Object pOther) {
+            if (!(pOther instanceof Map.Entry)) {
+                return false;
+            }
+
+            Map.Entry<?, ?> entry = (Map.Entry<?, ?>) pOther;
+            return mKey.equals(entry.getKey()) && mValue.equals(entry.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return mKey.hashCode() ^ mValue.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return mKey + "=" + mValue;
+        }
+    }
+}
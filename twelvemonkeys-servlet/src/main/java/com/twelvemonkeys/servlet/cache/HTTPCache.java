@@ -34,7 +34,6 @@ import com.twelvemonkeys.net.MIMEUtil;
 import com.twelvemonkeys.net.NetUtil;
 import com.twelvemonkeys.util.LRUHashMap;
 import com.twelvemonkeys.util.LinkedMap;
-import com.twelvemonkeys.util.NullMap;
 
 import javax.servlet.ServletContext;
 import java.io.*;
@@ -83,8 +82,7 @@ import java.util.logging.Logger;
  * -->
  * @todo TEST: Battle-testing using some URL-hammer tool and maybe a profiler
  * @todo ETag/Conditional (If-None-Match) support!
- * @todo Rewrite to use java.util.concurrent Locks (if possible) for performance
- *       Maybe use ConcurrentHashMap instead fo synchronized HashMap?
+ * @todo Use java.util.concurrent for the entity and vary caches too
  * @todo Rewrite to use NIO for performance
  * @todo Allow no tempdir for in-memory only cache
  * @todo Specify max size of disk-cache
@@ -164,7 +162,7 @@ public class HTTPCache {
     /**
      * In-memory content cache
      */
-    private final Map<String, CachedResponse> mContentCache;
+    private final ConcurrentSizedLRUMap<String, CachedResponse> mContentCache;
     /**
      * In-memory enity cache
      */
@@ -208,14 +206,8 @@ public class HTTPCache {
 
         mDefaultExpiryTime = pDefaultCacheExpiryTime;
 
-        if (pMaxMemCacheSize > 0) {
-//            Map backing = new SizedLRUMap(pMaxMemCacheSize); // size in bytes
-//            mContentCache = new TimeoutMap(backing, null, pDefaultCacheExpiryTime);
-            mContentCache = new SizedLRUMap<String, CachedResponse>(pMaxMemCacheSize); // size in bytes
-        }
-        else {
-            mContentCache = new NullMap<String, CachedResponse>();
-        }
+        // NOTE: A max size of 0 means no in-memory cache, as any response is larger
+        mContentCache = new ConcurrentSizedLRUMap<String, CachedResponse>(pMaxMemCacheSize, RESPONSE_WEIGHER); // size in bytes
 
         mEntityCache = new LRUHashMap<String, CachedEntity>(pMaxCachedEntites);
         mVaryCache = new LRUHashMap<String, Properties>(pMaxCachedEntites);
@@ -326,7 +318,17 @@ public class HTTPCache {
         buf.append(mVaryCache.getClass().getName());
         buf.append("}, ContentCache: {");
         buf.append(mContentCache.size());
-        buf.append(" entries in a ");
+        buf.append(" entries (");
+        buf.append(mContentCache.getWeight());
+        buf.append(" of ");
+        buf.append(mContentCache.getMaxWeight());
+        buf.append(" bytes, ");
+        buf.append(mContentCache.getHitCount());
+        buf.append(" hits, ");
+        buf.append(mContentCache.getMissCount());
+        buf.append(" misses, ");
+        buf.append(mContentCache.getEvictionCount());
+        buf.append(" evictions) in a ");
         buf.append(mContentCache.getClass().getName());
         buf.append("}]");
 
@@ -359,7 +361,6 @@ public class HTTPCache {
         else {
             // Generate cacheURI
             String cacheURI = generateCacheURI(pRequest);
-//             System.out.println(" ## HTTPCache ## Request Id (cacheURI): " + cacheURI);
 
             // Get/create cached entity
             CachedEntity cached;
@@ -384,13 +385,11 @@ public class HTTPCache {
                     pResolver.resolve(pRequest, cachedResponse);
 
                     if (isCachable(cachedResponse)) {
-//                        System.out.println("Registering content: " + cachedResponse.getCachedResponse());
                         registerContent(cacheURI, pRequest, cachedResponse.getCachedResponse());
                     }
                     else {
                         // TODO: What about non-cachable responses? We need to either remove them from cache, or mark them as stale...
                         // Best is probably to mark as non-cacheable for later, and NOT store content (performance)
-//                        System.out.println("Non-cacheable response: " + cachedResponse);
 
                         // TODO: Write, but should really do this unbuffered.... And some resolver might be able to do just that?
                         // Might need a resolver.isWriteThroughForUncachableResources() method...
@@ -514,10 +513,8 @@ public class HTTPCache {
         return null;
 /*
         String contextRelativeURI = ServletUtil.getContextRelativeURI(pRequest);
-        // System.out.println(" ## HTTPCache ## Context relative URI: " + contextRelativeURI);
 
         String path = mContext.getRealPath(contextRelativeURI);
-        // System.out.println(" ## HTTPCache ## Real path: " + path);
 
         if (path != null) {
             return new File(path);
@@ -547,13 +544,9 @@ public class HTTPCache {
         // Negotiation
         if (candidates != null) {
             String extension = getVaryExtension(pCacheURI, pRequest);
-            //System.out.println("-- Vary ext: " + extension);
             if (extension != null) {
                 for (File candidate : candidates) {
-                    //System.out.println("-- Candidate: " + candidates[i]);
-
                     if (extension.equals("ANY") || extension.equals(FileUtil.getExtension(candidate))) {
-                        //System.out.println("-- Candidate selected");
                         file = candidate;
                         break;
                     }
@@ -561,7 +554,6 @@ public class HTTPCache {
             }
         }
         else if (base.exists()) {
-            //System.out.println("-- File not a directory: " + directory);
             log("File not a directory: " + directory);
         }
 
@@ -572,10 +564,8 @@ public class HTTPCache {
         Properties variations = getVaryProperties(pCacheURI);
 
         String[] varyHeaders = StringUtil.toStringArray(variations.getProperty(HEADER_VARY, ""));
-//        System.out.println("-- Vary: \"" + variations.getProperty(HEADER_VARY) + "\"");
 
         String varyKey = createVaryKey(varyHeaders, pRequest);
-//        System.out.println("-- Vary key: \"" + varyKey + "\"");
 
         // If no vary, just go with any version...
         return StringUtil.isEmpty(varyKey) ? "ANY" : variations.getProperty(varyKey, null);
@@ -753,13 +743,10 @@ public class HTTPCache {
             final CacheRequest pRequest,
             final CachedResponse pCachedResponse
     ) throws IOException {
-        // System.out.println(" ## HTTPCache ## Registering content for " + pCacheURI);
-
 //        pRequest.removeAttribute(ATTRIB_IS_STALE);
 //        pRequest.setAttribute(ATTRIB_CACHED_RESPONSE, pCachedResponse);
 
         if ("HEAD".equals(pRequest.getMethod())) {
-            // System.out.println(" ## HTTPCache ## Was HEAD request, will NOT store content.");
             return;
         }
 
@@ -769,14 +756,10 @@ public class HTTPCache {
             extension = "[NULL]";
         }
 
-        synchronized (mContentCache) {
-            mContentCache.put(pCacheURI + '.' + extension, pCachedResponse);
+        mContentCache.put(pCacheURI + '.' + extension, pCachedResponse);
 
-            // This will be the default version
-            if (!mContentCache.containsKey(pCacheURI)) {
-                mContentCache.put(pCacheURI, pCachedResponse);
-            }
-        }
+        // This will be the default version
+        mContentCache.putIfAbsent(pCacheURI, pCachedResponse);
 
         // Write the cached content to disk
         File content = new File(mTempDir, "./" + pCacheURI + '.' + extension);
@@ -852,8 +835,6 @@ public class HTTPCache {
 
             // Create Vary-key and map to file extension...
             String varyKey = createVaryKey(varyHeaders, pRequest);
-//            System.out.println("varyKey: " + varyKey);
-//            System.out.println("extension: " + extension);
             variations.setProperty(varyKey, extension);
 
             storeVaryProperties(pCacheURI, variations);
@@ -866,35 +847,20 @@ public class HTTPCache {
      * @return a {@code CachedResponse} object
      */
     CachedResponse getContent(final String pCacheURI, final CacheRequest pRequest) {
-//         System.err.println(" ## HTTPCache ## Looking up content for " + pCacheURI);
-//        Thread.dumpStack();
-
         String extension = getVaryExtension(pCacheURI, pRequest);
 
         CachedResponse response;
-        synchronized (mContentCache) {
-//             System.out.println(" ## HTTPCache ## Looking up content with ext: \"" + extension + "\" from memory cache (" + mContentCache /*.size()*/ + " entries)...");
-            if ("ANY".equals(extension)) {
-                response = mContentCache.get(pCacheURI);
-            }
-            else {
-                response = mContentCache.get(pCacheURI + '.' + extension);
-            }
-
-            if (response == null) {
-//                 System.out.println(" ## HTTPCache ## Content not found in memory cache.");
-//
-//                 System.out.println(" ## HTTPCache ## Looking up content from disk cache...");
-                // Read from disk-cache
-                response = readFromDiskCache(pCacheURI, pRequest);
-            }
+        if ("ANY".equals(extension)) {
+            response = mContentCache.get(pCacheURI);
+        }
+        else {
+            response = mContentCache.get(pCacheURI + '.' + extension);
+        }
 
-//            if (response == null) {
-//                System.out.println(" ## HTTPCache ## Content not found in disk cache.");
-//            }
-//            else {
-//                System.out.println(" ## HTTPCache ## Content for " + pCacheURI + " found: " + response);
-//            }
+        if (response == null) {
+            // Read from disk-cache
+            // NOTE: Concurrent misses for the same URI may both read from disk, last one wins
+            response = readFromDiskCache(pCacheURI, pRequest);
         }
 
         return response;
@@ -960,7 +926,6 @@ public class HTTPCache {
         CachedResponse response = getContent(pCacheURI, pRequest);
 
         if (response == null) {
-            // System.out.println(" ## HTTPCache ## Content is stale (no content).");
             return true;
         }
 
@@ -989,7 +954,6 @@ public class HTTPCache {
                 File cached = getCachedFile(pCacheURI, pRequest);
                 if (cached != null && cached.exists()) {
                     lastModified = cached.lastModified();
-                    //// System.out.println(" ## HTTPCache ## Last-Modified is " + NetUtil.formatHTTPDate(lastModified) + ", using cachedFile.lastModified()");
                 }
             }
             */
@@ -998,23 +962,14 @@ public class HTTPCache {
             int maxAge = getIntHeader(response, HEADER_CACHE_CONTROL, "max-age");
             if (maxAge == -1) {
                 expires = lastModified + mDefaultExpiryTime;
-                //// System.out.println(" ## HTTPCache ## Expires is " + NetUtil.formatHTTPDate(expires) + ", using lastModified + defaultExpiry");
             }
             else {
                 expires = lastModified + (maxAge * 1000L); // max-age is seconds
-                //// System.out.println(" ## HTTPCache ## Expires is " + NetUtil.formatHTTPDate(expires) + ", using lastModified + maxAge");
             }
         }
-        /*
-        else {
-            // System.out.println(" ## HTTPCache ## Expires header is " + response.getHeaderValue(HEADER_EXPIRES));
-        }
-        */
 
         // Expired?
         if (expires < now) {
-            // System.out.println(" ## HTTPCache ## Content is stale (content expired: "
-            //        + NetUtil.formatHTTPDate(expires) + " before " + NetUtil.formatHTTPDate(now) + ").");
             return true;
         }
 
@@ -1025,7 +980,6 @@ public class HTTPCache {
             File cached = getCachedFile(pCacheURI, pRequest);
             if (cached != null && cached.exists()) {
                 lastModified = cached.lastModified();
-                //// System.out.println(" ## HTTPCache ## Last-Modified is " + NetUtil.formatHTTPDate(lastModified) + ", using cachedFile.lastModified()");
             }
         }
         */
@@ -1034,8 +988,6 @@ public class HTTPCache {
         File real = getRealFile(pRequest);
         //noinspection RedundantIfStatement
         if (real != null && real.exists() && real.lastModified() > lastModified) {
-            // System.out.println(" ## HTTPCache ## Content is stale (new content"
-            //        + NetUtil.formatHTTPDate(lastModified) + " before " + NetUtil.formatHTTPDate(real.lastModified()) + ").");
             return true;
         }
 
@@ -1104,64 +1056,12 @@ public class HTTPCache {
         return date;
     }
 
-    // TODO: Extract and make public?
-    final static class SizedLRUMap<K, V> extends LRUHashMap<K, V> {
-        int mSize;
-        int mMaxSize;
-
-        public SizedLRUMap(int pMaxSize) {
-            //super(true);
-            super(); // Note: super.mMaxSize doesn't count...
-            mMaxSize = pMaxSize;
-        }
-
-
-        // In super (LRUMap?) this could just return 1...
-        protected int sizeOf(Object pValue) {
-            // HACK: As this is used as a backing for a TimeoutMap, the values
-            // will themselves be Entries...
-            while (pValue instanceof Map.Entry) {
-                pValue = ((Map.Entry) pValue).getValue();
-            }
-
-            CachedResponse cached = (CachedResponse) pValue;
-            return (cached != null ? cached.size() : 0);
-        }
-
-        @Override
-        public V put(K pKey, V pValue) {
-            mSize += sizeOf(pValue);
-
-            V old = super.put(pKey, pValue);
-            if (old != null) {
-                mSize -= sizeOf(old);
-            }
-            return old;
-        }
-
-        @Override
-        public V remove(Object pKey) {
-            V old = super.remove(pKey);
-            if (old != null) {
-                mSize -= sizeOf(old);
-            }
-            return old;
-        }
-
-        @Override
-        protected boolean removeEldestEntry(Map.Entry<K, V> pEldest) {
-            if (mMaxSize <= mSize) { // NOTE: mMaxSize here is mem size
-                removeLRU();
-            }
-            return false;
-        }
-
-        @Override
-        public void removeLRU() {
-            while (mMaxSize <= mSize) { // NOTE: mMaxSize here is mem size
-                super.removeLRU();
-            }
+    /**
+     * Weighs cached responses by their size in bytes.
+     */
+    static final ConcurrentSizedLRUMap.Weigher<CachedResponse> RESPONSE_WEIGHER = new ConcurrentSizedLRUMap.Weigher<CachedResponse>() {
+        public int weigh(final CachedResponse pValue) {
+            return pValue.size();
         }
-    }
-
-}
\ No newline at end of file
+    };
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2008, Harald Kuhr
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name "TwelveMonkeys" nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.twelvemonkeys.servlet.gzip;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+
+/**
+ * A bounded pool of {@link Deflater}s, producing raw (headerless) deflate data,
+ * all with the same compression level.
+ * <p/>
+ * Creating a {@code Deflater} allocates a sizeable amount of native memory,
+ * that is only released when the deflater is {@link Deflater#end() ended} or
+ * finalized. Reusing deflaters across requests avoids this cost.
+ * Deflaters released to a full pool are ended immediately.
+ *
+ * @author <a href="mailto:harald.kuhr@gmail.com">Harald Kuhr</a>
+ * @author last modified by $Author: haku $
+ * @version $Id: DeflaterPool.java,v 1.0 Oct 19, 2026 1:12:40 AM haraldk Exp$
+ */
+final class DeflaterPool {
+    private final int mLevel;
+    private final int mMaxIdle;
+    private final List<Deflater> mIdle;
+
+    /**
+     * Creates a {@code DeflaterPool}.
+     *
+     * @param pLevel the compression level, {@code -1} (default) or {@code 0..9}
+     * @param pMaxIdle the maximum number of idle deflaters kept in the pool
+     *
+     * @throws IllegalArgumentException if {@code pLevel} or {@code pMaxIdle} is out of range
+     */
+    DeflaterPool(final int pLevel, final int pMaxIdle) {
+        if (pLevel < Deflater.DEFAULT_COMPRESSION || pLevel > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Illegal compression level: " + pLevel);
+        }
+        if (pMaxIdle < 0) {
+            throw new IllegalArgumentException("max idle < 0");
+        }
+
+        mLevel = pLevel;
+        mMaxIdle = pMaxIdle;
+        mIdle = new ArrayList<Deflater>(pMaxIdle);
+    }
+
+    int getLevel() {
+        return mLevel;
+    }
+
+    /**
+     * Returns an idle deflater from the pool, or a new deflater if the pool is empty.
+     *
+     * @return a {@code Deflater} in its initial state
+     */
+    Deflater acquire() {
+        synchronized (mIdle) {
+            if (!mIdle.isEmpty()) {
+                return mIdle.remove(mIdle.size() - 1);
+            }
+        }
+
+        return new Deflater(mLevel, true);
+    }
+
+    /**
+     * Resets the given deflater, and returns it to the pool.
+     * The deflater must not be used by the caller after this method returns.
+     *
+     * @param pDeflater the deflater to release
+     */
+    void release(final Deflater pDeflater) {
+        pDeflater.reset();
+
+        synchronized (mIdle) {
+            if (mIdle.size() < mMaxIdle) {
+                mIdle.add(pDeflater);
+                return;
+            }
+        }
+
+        pDeflater.end();
+    }
+
+    /**
+     * Ends all idle deflaters, and empties the pool.
+     */
+    void clear() {
+        synchronized (mIdle) {
+            for (Deflater deflater : mIdle) {
+                deflater.end();
+            }
+
+            mIdle.clear();
+        }
+    }
+
+    int getIdleCount() {
+        synchronized (mIdle) {
+            return mIdle.size();
+        }
+    }
+}
@@ -28,7 +28,9 @@
 
 package com.twelvemonkeys.servlet.gzip;
 
+import com.twelvemonkeys.lang.StringUtil;
 import com.twelvemonkeys.servlet.GenericFilter;
+import com.twelvemonkeys.servlet.cache.ConcurrentSizedLRUMap;
 
 import javax.servlet.FilterChain;
 import javax.servlet.ServletException;
@@ -37,6 +39,8 @@ import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.util.Map;
+import java.util.zip.Deflater;
 
 /**
  * A filter to reduce the output size of web resources.
@@ -53,12 +57,24 @@ import java.io.IOException;
  * value of {@code "gzip"} (several different encoding header values are
  * possible in one header). If not present, the filter simply passes the
  * request/response pair through, leaving it untouched. If present, the
- * {@code Content-Encoding} header is set, with the value {@code "gzip"},
- * and the response is wrapped.
- * The response output stream is wrapped in a
- * {@link java.util.zip.GZIPOutputStream} which performs the GZIP encoding.
- * For efficiency, the filter does not buffer the response, but writes through
- * the gzipped output stream.  
+ * response is wrapped. In both cases, the {@code Vary} header is set, with
+ * the value {@code "Accept-Encoding"}, so that caches keep the variants apart.
+ * <p/>
+ * The decision to compress is made when the response starts writing its
+ * body, when the content type is known. Only successful responses, with a
+ * compressible content type (see {@link #setExcludedContentTypes(String)}),
+ * and a content length of at least {@link #setMinContentLength(int)} bytes
+ * are compressed. The {@code Content-Encoding} header is then set, with the
+ * value {@code "gzip"}. Responses of unknown length are buffered, up to
+ * the minimum content length.
+ * For efficiency, the filter does not buffer the compressed response, but
+ * writes through a fixed size buffer. The native deflaters are pooled
+ * and reused across requests.
+ * <p/>
+ * Optionally, the compressed bodies of responses that has an {@code ETag},
+ * typically static resources, may be cached (see {@link #setCacheSize(long)}).
+ * Cached bodies are keyed by request URI and {@code ETag}, and are served
+ * without compressing again.
  * <p/>
  * <b>Configuration</b><br/>
  * To use {@code GZIPFilter} in your web-application, you simply need to add it
@@ -70,6 +86,19 @@ import java.io.IOException;
  * {@code "once-per-request"} to {@code "true"} (this will have the same effect,
  * but might perform slightly worse than the 2.4 version).
  * Please see the examples below.
+ * <p/>
+ * <b>Init parameters</b><br/>
+ * <ul>
+ * <li>{@code compression-level}: the deflate level, {@code 0} (no compression),
+ * {@code 1} (fastest) to {@code 9} (best), or {@code -1} for the default level (default).</li>
+ * <li>{@code min-content-length}: responses shorter than this are not
+ * compressed, default is {@code 1024}.</li>
+ * <li>{@code excluded-content-types}: comma-separated list of content types
+ * not to compress, like {@code "image/jpeg, video/*"}. Default is a list of
+ * common already compressed formats.</li>
+ * <li>{@code cache-size}: the maximum number of bytes of compressed content
+ * to cache, default is {@code 0} (no caching).</li>
+ * </ul>
  * <b>Servlet 2.4 version, filter section:</b><br/>
  * <pre>
  * &lt;!-- GZIP Filter Configuration --&gt;
@@ -107,24 +136,116 @@ import java.io.IOException;
  * @version $Id: //depot/branches/personal/haraldk/twelvemonkeys/release-2/twelvemonkeys-servlet/src/main/java/com/twelvemonkeys/servlet/gzip/GZIPFilter.java#1 $
  */
 public class GZIPFilter extends GenericFilter {
+    /** Content types that are already compressed, and will not compress further */
+    static final String DEFAULT_EXCLUDED_CONTENT_TYPES =
+            "image/gif, image/jpeg, image/png, audio/*, video/*, application/zip, application/gzip, " +
+            "application/x-gzip, application/x-compress, application/x-bzip2, application/java-archive";
+
+    private int mCompressionLevel = Deflater.DEFAULT_COMPRESSION;
+    private int mMinContentLength = 1024;
+    private String[] mExcludedContentTypes = parseContentTypes(DEFAULT_EXCLUDED_CONTENT_TYPES);
+    private long mCacheSize = 0;
+
+    private DeflaterPool mPool;
+    private ConcurrentSizedLRUMap<String, byte[]> mCache;
 
     {
         mOncePerRequest = true;
     }
 
+    /**
+     * Sets the compression level.
+     *
+     * @param pLevel the compression level, {@code 0..9} where {@code 0} is no compression,
+     * or {@code -1} for default
+     * @throws IllegalArgumentException if {@code pLevel} is out of range
+     */
+    public void setCompressionLevel(final int pLevel) {
+        if (pLevel < Deflater.DEFAULT_COMPRESSION || pLevel > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Illegal compression level: " + pLevel);
+        }
+
+        mCompressionLevel = pLevel;
+    }
+
+    /**
+     * Sets the minimum content length for responses to be compressed.
+     * Compressing small responses is a waste of processing time, and might
+     * even increase the size.
+     *
+     * @param pMinContentLength the minimum content length, in bytes
+     * @throws IllegalArgumentException if {@code pMinContentLength} is negative
+     */
+    public void setMinContentLength(final int pMinContentLength) {
+        if (pMinContentLength < 0) {
+            throw new IllegalArgumentException("min content length < 0");
+        }
+
+        mMinContentLength = pMinContentLength;
+    }
+
+    /**
+     * Sets the content types that should not be compressed.
+     * Types may be given as {@code "type/subtype"} or {@code "type/*"}.
+     *
+     * @param pContentTypes a comma-separated list of content types
+     */
+    public void setExcludedContentTypes(final String pContentTypes) {
+        mExcludedContentTypes = parseContentTypes(pContentTypes);
+    }
+
+    /**
+     * Sets the maximum number of bytes of compressed content to cache.
+     *
+     * @param pCacheSize the cache size in bytes, or {@code 0} to disable caching
+     * @throws IllegalArgumentException if {@code pCacheSize} is negative
+     */
+    public void setCacheSize(final long pCacheSize) {
+        if (pCacheSize < 0) {
+            throw new IllegalArgumentException("cache size < 0");
+        }
+
+        mCacheSize = pCacheSize;
+    }
+
+    public void init() throws ServletException {
+        mPool = new DeflaterPool(mCompressionLevel, 2 * Runtime.getRuntime().availableProcessors());
+
+        if (mCacheSize > 0) {
+            mCache = new ConcurrentSizedLRUMap<String, byte[]>(
+                    mCacheSize,
+                    new ConcurrentSizedLRUMap.Weigher<byte[]>() {
+                        public int weigh(final byte[] pValue) {
+                            return pValue.length;
+                        }
+                    }
+            );
+        }
+    }
+
+    public void destroy() {
+        if (mPool != null) {
+            mPool.clear();
+        }
+        if (mCache != null) {
+            mCache.clear();
+        }
+
+        super.destroy();
+    }
+
     protected void doFilterImpl(ServletRequest pRequest, ServletResponse pResponse, FilterChain pChain) throws IOException, ServletException {
         // Can only filter HTTP responses
         if (pRequest instanceof HttpServletRequest) {
             HttpServletRequest request = (HttpServletRequest) pRequest;
             HttpServletResponse response = (HttpServletResponse) pResponse;
 
-            // If GZIP is supported, use compression
-            String accept = request.getHeader("Accept-Encoding");
-            if (accept != null && accept.indexOf("gzip") != -1) {
-                //System.out.println("GZIP supported, compressing.");
-                // TODO: Set Vary: Accept-Encoding ?!
+            // The response depends on Accept-Encoding, whether we compress or not
+            response.addHeader("Vary", "Accept-Encoding");
 
-                GZIPResponseWrapper wrapped = new GZIPResponseWrapper(response);
+            // If GZIP is supported, use compression
+            if (acceptsGZIP(request.getHeader("Accept-Encoding"))) {
+                GZIPResponseWrapper wrapped = new GZIPResponseWrapper(response, this, mCache != null ? getCacheKey(request) : null);
                 try {
                     pChain.doFilter(pRequest, wrapped);
                 }
@@ -138,4 +259,98 @@ public class GZIPFilter extends GenericFilter {
         // Else, contiue chain
         pChain.doFilter(pRequest, pResponse);
     }
+
+    /**
+     * Tests if the given content type should be compressed.
+     * Responses without content type are compressed.
+     *
+     * @param pContentType the content type, may include parameters, or be {@code null}
+     * @return {@code true} if the content type is not excluded
+     */
+    public boolean isCompressible(final String pContentType) {
+        if (pContentType == null) {
+            return true;
+        }
+
+        int paramStart = pContentType.indexOf(';');
+        String type = (paramStart >= 0 ? pContentType.substring(0, paramStart) : pContentType).trim().toLowerCase();
+
+        for (String excluded : mExcludedContentTypes) {
+            if (excluded.endsWith("/*") ? type.startsWith(excluded.substring(0, excluded.length() - 1)) : type.equals(excluded)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    int getMinContentLength() {
+        return mMinContentLength;
+    }
+
+    DeflaterPool getDeflaterPool() {
+        return mPool;
+    }
+
+    Map<String, byte[]> getCache() {
+        return mCache;
+    }
+
+    long getMaxCachedLength() {
+        return mCacheSize;
+    }
+
+    static String getCacheKey(final HttpServletRequest pRequest) {
+        String query = pRequest.getQueryString();
+        return query != null ? pRequest.getRequestURI() + '?' + query : pRequest.getRequestURI();
+    }
+
+    /**
+     * Tests if the {@code Accept-Encoding} header value allows GZIP encoding.
+     *
+     * @param pAcceptEncoding the header value, may be {@code null}
+     * @return {@code true} if {@code gzip} is an acceptable encoding
+     */
+    static boolean acceptsGZIP(final String pAcceptEncoding) {
+        if (pAcceptEncoding == null) {
+            return false;
+        }
+
+        for (String encoding : StringUtil.toStringArray(pAcceptEncoding, ",")) {
+            String[] params = StringUtil.toStringArray(encoding, ";");
+            if (params.length == 0) {
+                continue;
+            }
+
+            String name = params[0].trim();
+            if ("gzip".equalsIgnoreCase(name) || "x-gzip".equalsIgnoreCase(name)) {
+                // gzip;q=0 means not acceptable
+                for (int i = 1; i < params.length; i++) {
+                    String param = params[i].trim();
+                    if (param.startsWith("q=")) {
+                        try {
+                            return Float.parseFloat(param.substring(2)) > 0;
+                        }
+                        catch (NumberFormatException ignore) {
+                            // Assume acceptable
+                        }
+                    }
+                }
+
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static String[] parseContentTypes(final String pContentTypes) {
+        String[] types = StringUtil.toStringArray(pContentTypes, ", \r\n\t");
+
+        for (int i = 0; i < types.length; i++) {
+            types[i] = types[i].toLowerCase();
+        }
+
+        return types;
+    }
 }
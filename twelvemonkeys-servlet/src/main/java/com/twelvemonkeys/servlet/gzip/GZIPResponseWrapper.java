@@ -28,18 +28,41 @@
 
 package com.twelvemonkeys.servlet.gzip;
 
+import com.twelvemonkeys.io.NullOutputStream;
 import com.twelvemonkeys.servlet.OutputStreamAdapter;
 
 import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
-import java.util.zip.GZIPOutputStream;
+import java.util.Map;
+import java.util.zip.Deflater;
 
 /**
- * GZIPResponseWrapper class description.
+ * A response wrapper that GZIP encodes the response body, if appropriate.
+ * <p/>
+ * The decision to compress is deferred until the first bytes of the body
+ * are written to the underlying response, so that the content type,
+ * content length and status of the response are known.
+ * The response is not compressed, if
+ * <ul>
+ * <li>the status code is not {@code 200 OK},</li>
+ * <li>the response already has a {@code Content-Encoding},</li>
+ * <li>the content type is not compressible (see {@link GZIPFilter#isCompressible(String)}), or</li>
+ * <li>the content length is less than the minimum content length.</li>
+ * </ul>
+ * If the content length is not set, up to minimum content length bytes are
+ * buffered, before deciding. Flushing the wrapped stream or writer will not
+ * force a decision, but {@link #flushBuffer()} will.
+ * <p/>
+ * Compressed bodies of responses with an {@code ETag} header may be cached,
+ * keyed by the request URI and the {@code ETag} value. When there's a cached
+ * body for a response, the cached bytes are written instead, and any content
+ * written to the wrapper is discarded.
  * <p/>
  * Based on ideas and code found in the ONJava article
  * <a href="http://www.onjava.com/pub/a/onjava/2003/11/19/filters.html">Two Servlet Filters Every Web Application Should Have</a>
@@ -51,51 +74,90 @@ import java.util.zip.GZIPOutputStream;
  * @version $Id: //depot/branches/personal/haraldk/twelvemonkeys/release-2/twelvemonkeys-servlet/src/main/java/com/twelvemonkeys/servlet/gzip/GZIPResponseWrapper.java#1 $
  */
 public class GZIPResponseWrapper extends HttpServletResponseWrapper {
+    /** The size of the deflater output buffer */
+    static final int BUFFER_SIZE = 8192;
+
+    private static final DeflaterPool sDefaultPool = new DeflaterPool(Deflater.DEFAULT_COMPRESSION, 4);
+
     protected ServletOutputStream mOut = null;
     protected PrintWriter mWriter = null;
-    protected GZIPOutputStream mGZIPOut = null;
     protected int mContentLength = -1;
 
+    private final GZIPFilter mFilter;
+    private final DeflaterPool mPool;
+    private final int mMinContentLength;
+    private final Map<String, byte[]> mCache;
+    private final String mCacheKey;
+
+    private DeferredOutputStream mStream;
+    private int mStatus = SC_OK;
+    private String mContentEncoding;
+    private String mETag;
+
+    /**
+     * Creates a {@code GZIPResponseWrapper}, that compresses all successful
+     * responses without a {@code Content-Encoding}, regardless of type or length.
+     *
+     * @param response the response to wrap
+     */
     public GZIPResponseWrapper(HttpServletResponse response) {
-        super(response);
-        response.addHeader("Content-Encoding", "gzip");
+        this(response, null, null);
     }
 
-    public ServletOutputStream createOutputStream() throws IOException {
-        // FIX: Write directly to servlet output stream, for faster responses.
-        // Relies on chunked streams, or buffering in the servlet engine.
-        if (mContentLength >= 0) {
-            mGZIPOut = new GZIPOutputStream(getResponse().getOutputStream(), mContentLength);
+    /**
+     * Creates a {@code GZIPResponseWrapper} configured by the given filter.
+     *
+     * @param pResponse the response to wrap
+     * @param pFilter the filter, or {@code null} to compress all responses
+     * @param pCacheKey the key for caching compressed content, typically the
+     * request URI, or {@code null} to disable caching
+     */
+    GZIPResponseWrapper(final HttpServletResponse pResponse, final GZIPFilter pFilter, final String pCacheKey) {
+        super(pResponse);
+
+        mFilter = pFilter;
+
+        if (pFilter != null) {
+            mPool = pFilter.getDeflaterPool();
+            mMinContentLength = pFilter.getMinContentLength();
+            mCache = pCacheKey != null ? pFilter.getCache() : null;
         }
         else {
-            mGZIPOut = new GZIPOutputStream(getResponse().getOutputStream());
+            mPool = sDefaultPool;
+            mMinContentLength = 0;
+            mCache = null;
         }
 
+        mCacheKey = pCacheKey;
+    }
+
+    public ServletOutputStream createOutputStream() throws IOException {
+        // NOTE: Writes through to the servlet output stream once decided,
+        // for faster responses. Relies on chunked streams, or buffering in the servlet engine.
+        mStream = new DeferredOutputStream();
+
         // Wrap in ServletOutputStream and return
-        return new OutputStreamAdapter(mGZIPOut);
+        return new OutputStreamAdapter(mStream);
+    }
+
+    /**
+     * Returns {@code true} if the response body is (or will be) GZIP encoded.
+     *
+     * @return {@code true} if the response body is compressed
+     */
+    public boolean isCompressed() {
+        return mStream != null && mStream.mCompressed;
     }
 
-    // TODO: Move this to flushbuffer or something? Hmmm..
     public void flushResponse() {
         try {
-            try {
-                // Finish GZIP encodig
-                if (mGZIPOut != null) {
-                    mGZIPOut.finish();
-                }
-
-                flushBuffer();
+            if (mWriter != null) {
+                mWriter.flush();
             }
-            finally {
-                // Close stream
-                if (mWriter != null) {
-                    mWriter.close();
-                }
-                else {
-                    if (mOut != null) {
-                        mOut.close();
-                    }
-                }
+
+            // NOTE: OutputStreamAdapter does not delegate close, so close our stream directly
+            if (mStream != null) {
+                mStream.close();
             }
         }
         catch (IOException e) {
@@ -108,8 +170,11 @@ public class GZIPResponseWrapper extends HttpServletResponseWrapper {
         if (mWriter != null) {
             mWriter.flush();
         }
-        else if (mOut != null) {
-            mOut.flush();            
+
+        // An explicit flush of the response commits it, so we have to decide now
+        if (mStream != null) {
+            mStream.decide(false);
+            mStream.flush();
         }
     }
 
@@ -134,13 +199,319 @@ public class GZIPResponseWrapper extends HttpServletResponseWrapper {
         }
 
         mOut = createOutputStream();
-        // TODO: This is wrong. Should use getCharacterEncoding() or "ISO-8859-1" if gCE returns null.
-        mWriter = new PrintWriter(new OutputStreamWriter(mOut, "UTF-8"));
+
+        String encoding = getCharacterEncoding();
+        mWriter = new PrintWriter(new OutputStreamWriter(mOut, encoding != null ? encoding : "ISO-8859-1"));
         return (mWriter);
     }
 
     public void setContentLength(int pLength) {
         // NOTE: Do not call super, as we will shrink the size.
+        // The length is passed on, if the response is not compressed.
         mContentLength = pLength;
     }
+
+    public void setStatus(int pStatus) {
+        mStatus = pStatus;
+        super.setStatus(pStatus);
+    }
+
+    @SuppressWarnings({"deprecation"})
+    public void setStatus(int pStatus, String pMessage) {
+        mStatus = pStatus;
+        super.setStatus(pStatus, pMessage);
+    }
+
+    public void sendError(int pStatus) throws IOException {
+        mStatus = pStatus;
+        super.sendError(pStatus);
+    }
+
+    public void sendError(int pStatus, String pMessage) throws IOException {
+        mStatus = pStatus;
+        super.sendError(pStatus, pMessage);
+    }
+
+    public void sendRedirect(String pLocation) throws IOException {
+        mStatus = SC_MOVED_TEMPORARILY;
+        super.sendRedirect(pLocation);
+    }
+
+    public void setHeader(String pName, String pValue) {
+        if (interceptHeader(pName, pValue)) {
+            super.setHeader(pName, pValue);
+        }
+    }
+
+    public void addHeader(String pName, String pValue) {
+        if (interceptHeader(pName, pValue)) {
+            super.addHeader(pName, pValue);
+        }
+    }
+
+    public void setIntHeader(String pName, int pValue) {
+        if (interceptHeader(pName, String.valueOf(pValue))) {
+            super.setIntHeader(pName, pValue);
+        }
+    }
+
+    public void addIntHeader(String pName, int pValue) {
+        if (interceptHeader(pName, String.valueOf(pValue))) {
+            super.addIntHeader(pName, pValue);
+        }
+    }
+
+    public void reset() {
+        super.reset();
+
+        mContentLength = -1;
+        mStatus = SC_OK;
+        mContentEncoding = null;
+        mETag = null;
+
+        if (mStream != null) {
+            mStream.resetBuffer();
+        }
+
+        // Reset clears all headers, but the response still varies
+        if (mFilter != null) {
+            super.addHeader("Vary", "Accept-Encoding");
+        }
+    }
+
+    public void resetBuffer() {
+        super.resetBuffer();
+
+        if (mStream != null) {
+            mStream.resetBuffer();
+        }
+    }
+
+    /**
+     * Records the headers that affect compression.
+     *
+     * @param pName the header name
+     * @param pValue the header value
+     * @return {@code true} if the header should be passed on to the wrapped response
+     */
+    private boolean interceptHeader(final String pName, final String pValue) {
+        if ("Content-Length".equalsIgnoreCase(pName)) {
+            try {
+                setContentLength(Integer.parseInt(pValue.trim()));
+                return false;
+            }
+            catch (NumberFormatException ignore) {
+                // Pass on as is, and let the container sort it out
+            }
+        }
+        else if ("Content-Encoding".equalsIgnoreCase(pName)) {
+            mContentEncoding = pValue;
+        }
+        else if ("ETag".equalsIgnoreCase(pName)) {
+            mETag = pValue;
+        }
+
+        return true;
+    }
+
+    private boolean shouldCompress(final boolean pComplete, final int pBuffered) {
+        if (mStatus != SC_OK || mContentEncoding != null) {
+            return false;
+        }
+
+        if (mContentLength >= 0 ? mContentLength < mMinContentLength : pComplete && pBuffered < mMinContentLength) {
+            return false;
+        }
+
+        return mFilter == null || mFilter.isCompressible(getContentType());
+    }
+
+    /**
+     * An output stream that buffers up to minimum content length bytes,
+     * then decides whether to compress, and writes through.
+     */
+    private class DeferredOutputStream extends OutputStream {
+        private byte[] mBuffer;
+        private int mCount;
+
+        private OutputStream mTarget;
+        private PooledGZIPOutputStream mGZIP;
+        private CapturingOutputStream mCapture;
+        private boolean mCompressed;
+        private boolean mClosed;
+
+        public void write(final int pByte) throws IOException {
+            if (mTarget == null && fits(1)) {
+                mBuffer[mCount++] = (byte) pByte;
+                return;
+            }
+
+            decide(false);
+            mTarget.write(pByte);
+        }
+
+        public void write(final byte[] pBytes, final int pOffset, final int pLength) throws IOException {
+            if (mTarget == null && fits(pLength)) {
+                System.arraycopy(pBytes, pOffset, mBuffer, mCount, pLength);
+                mCount += pLength;
+                return;
+            }
+
+            decide(false);
+            mTarget.write(pBytes, pOffset, pLength);
+        }
+
+        private boolean fits(final int pLength) throws IOException {
+            if (mClosed) {
+                throw new IOException("Stream closed");
+            }
+
+            if (mBuffer == null) {
+                mBuffer = new byte[mMinContentLength];
+            }
+
+            return mCount + pLength <= mBuffer.length;
+        }
+
+        void resetBuffer() {
+            if (mTarget == null) {
+                mCount = 0;
+            }
+        }
+
+        /**
+         * Decides whether to compress, and writes any buffered bytes.
+         *
+         * @param pComplete {@code true} if all content is written
+         * @throws IOException if an I/O error occurs
+         */
+        void decide(final boolean pComplete) throws IOException {
+            if (mTarget != null) {
+                return;
+            }
+
+            HttpServletResponse response = (HttpServletResponse) getResponse();
+
+            if (!shouldCompress(pComplete, mCount)) {
+                if (mContentLength >= 0) {
+                    response.setContentLength(mContentLength);
+                }
+                else if (pComplete) {
+                    response.setContentLength(mCount);
+                }
+
+                mTarget = response.getOutputStream();
+            }
+            else {
+                mCompressed = true;
+                response.addHeader("Content-Encoding", "gzip");
+
+                String key = mCache != null && mETag != null ? mCacheKey + '#' + mETag : null;
+                byte[] cached = key != null ? mCache.get(key) : null;
+
+                if (cached != null) {
+                    // Write the cached content, discard whatever is written
+                    response.setContentLength(cached.length);
+                    response.getOutputStream().write(cached);
+
+                    mTarget = new NullOutputStream();
+                    mCount = 0;
+                    return;
+                }
+
+                OutputStream out = response.getOutputStream();
+                if (key != null) {
+                    out = mCapture = new CapturingOutputStream(out, key);
+                }
+
+                mTarget = mGZIP = new PooledGZIPOutputStream(out, mPool, BUFFER_SIZE);
+            }
+
+            if (mCount > 0) {
+                mTarget.write(mBuffer, 0, mCount);
+                mCount = 0;
+            }
+        }
+
+        public void flush() throws IOException {
+            // NOTE: Flushing does not force a decision, the content is held until we know more
+            if (mTarget != null) {
+                mTarget.flush();
+            }
+        }
+
+        public void close() throws IOException {
+            if (mClosed) {
+                return;
+            }
+
+            mClosed = true;
+            decide(true);
+
+            if (mGZIP != null) {
+                mGZIP.close();
+
+                if (mCapture != null) {
+                    mCapture.store();
+                }
+            }
+            else {
+                mTarget.close();
+            }
+        }
+    }
+
+    /**
+     * An output stream that writes through, while capturing the compressed
+     * bytes for the cache, as long as they fit.
+     */
+    private class CapturingOutputStream extends OutputStream {
+        private final OutputStream mOut;
+        private final String mKey;
+        private ByteArrayOutputStream mCaptured = new ByteArrayOutputStream(BUFFER_SIZE);
+
+        CapturingOutputStream(final OutputStream pOut, final String pKey) {
+            mOut = pOut;
+            mKey = pKey;
+        }
+
+        public void write(final int pByte) throws IOException {
+            mOut.write(pByte);
+
+            if (mCaptured != null) {
+                mCaptured.write(pByte);
+                checkSize();
+            }
+        }
+
+        public void write(final byte[] pBytes, final int pOffset, final int pLength) throws IOException {
+            mOut.write(pBytes, pOffset, pLength);
+
+            if (mCaptured != null) {
+                mCaptured.write(pBytes, pOffset, pLength);
+                checkSize();
+            }
+        }
+
+        private void checkSize() {
+            if (mCaptured.size() > mFilter.getMaxCachedLength()) {
+                mCaptured = null;
+            }
+        }
+
+        public void flush() throws IOException {
+            mOut.flush();
+        }
+
+        public void close() throws IOException {
+            mOut.close();
+        }
+
+        void store() {
+            if (mCaptured != null) {
+                mCache.put(mKey, mCaptured.toByteArray());
+                mCaptured = null;
+            }
+        }
+    }
 }
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2008, Harald Kuhr
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name "TwelveMonkeys" nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.twelvemonkeys.servlet.gzip;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * A GZIP output stream, that uses a {@link java.util.zip.Deflater} from a
+ * {@link DeflaterPool}, and a fixed size buffer.
+ * <p/>
+ * Unlike {@link java.util.zip.GZIPOutputStream}, the compression level is
+ * configurable, and the deflater is returned to the pool when the stream is
+ * {@link #finish() finished}.
+ *
+ * @author <a href="mailto:harald.kuhr@gmail.com">Harald Kuhr</a>
+ * @author last modified by $Author: haku $
+ * @version $Id: PooledGZIPOutputStream.java,v 1.0 Oct 19, 2026 1:20:05 AM haraldk Exp$
+ */
+final class PooledGZIPOutputStream extends DeflaterOutputStream {
+    private static final byte[] HEADER = {
+            0x1f, (byte) 0x8b,  // Magic
+            8,                  // Compression method (deflate)
+            0,                  // Flags
+            0, 0, 0, 0,         // Modification time
+            0,                  // Extra flags
+            0                   // OS (unknown/FAT, same as GZIPOutputStream)
+    };
+
+    private final DeflaterPool mPool;
+    private final CRC32 mCRC = new CRC32();
+    private long mLength;
+    private boolean mFinished;
+
+    /**
+     * Creates a {@code PooledGZIPOutputStream}, and writes the GZIP header.
+     *
+     * @param pOut the underlying stream
+     * @param pPool the pool to acquire the deflater from
+     * @param pBufferSize the size of the output buffer
+     *
+     * @throws IOException if the header could not be written
+     */
+    PooledGZIPOutputStream(final OutputStream pOut, final DeflaterPool pPool, final int pBufferSize) throws IOException {
+        super(pOut, pPool.acquire(), pBufferSize);
+        mPool = pPool;
+
+        out.write(HEADER);
+    }
+
+    @Override
+    public void write(final byte[] pBytes, final int pOffset, final int pLength) throws IOException {
+        if (mFinished) {
+            throw new IOException("write beyond end of stream");
+        }
+
+        super.write(pBytes, pOffset, pLength);
+        mCRC.update(pBytes, pOffset, pLength);
+        mLength += pLength;
+    }
+
+    /**
+     * Finishes writing compressed data and the GZIP trailer to the
+     * underlying stream, without closing it.
+     * The deflater is returned to the pool.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public void finish() throws IOException {
+        if (mFinished) {
+            return;
+        }
+
+        // NOTE: Set before deflating, so the deflater is never released twice
+        mFinished = true;
+
+        try {
+            def.finish();
+            while (!def.finished()) {
+                deflate();
+            }
+
+            writeInt((int) mCRC.getValue());
+            writeInt((int) mLength); // ISIZE is the length modulo 2^32
+        }
+        finally {
+            mPool.release(def);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        // NOTE: Can't use super.close(), as it would use the deflater after release
+        try {
+            finish();
+        }
+        finally {
+            out.close();
+        }
+    }
+
+    private void writeInt(final int pValue) throws IOException {
+        out.write(pValue & 0xff);
+        out.write((pValue >>> 8) & 0xff);
+        out.write((pValue >>> 16) & 0xff);
+        out.write((pValue >>> 24) & 0xff);
+    }
+}
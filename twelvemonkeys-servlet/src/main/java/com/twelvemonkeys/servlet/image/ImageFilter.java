@@ -30,6 +30,7 @@ package com.twelvemonkeys.servlet.image;
 
 import com.twelvemonkeys.image.ImageUtil;
 import com.twelvemonkeys.lang.StringUtil;
+import com.twelvemonkeys.servlet.FilterMetrics;
 import com.twelvemonkeys.servlet.GenericFilter;
 
 import javax.servlet.*;
@@ -40,6 +41,9 @@ import java.io.IOException;
 /**
  * Abstract base class for image filters. Automatically decoding and encoding of
  * the image is handled in the {@code doFilterImpl} method.
+ * <p/>
+ * If metrics are enabled, the time spent decoding, filtering and encoding
+ * is recorded in separate phases.
  *
  * @see #doFilter(java.awt.image.BufferedImage,javax.servlet.ServletRequest,ImageServletResponse)
  *
@@ -98,12 +102,19 @@ public abstract class ImageFilter extends GenericFilter {
 
             //System.out.println("Post filtering...");
 
+            FilterMetrics metrics = getMetrics();
+            long start = System.nanoTime();
+
             // Get image
             //System.out.println("Getting image from ImageServletResponse...");
             // Get the image from the wrapped response
             RenderedImage image = imageResponse.getImage();
             //System.out.println("Got image: " + image);
 
+            if (metrics != null) {
+                start = record(metrics, FilterMetrics.PHASE_DECODE, pRequest, start);
+            }
+
             // Note: Image will be null if this is a HEAD request, the
             // If-Modified-Since header is present, or similar.
             if (image != null) {
@@ -112,6 +123,10 @@ public abstract class ImageFilter extends GenericFilter {
                 image = doFilter(ImageUtil.toBuffered(image), pRequest, imageResponse);
                 //System.out.println("Done filtering.");
 
+                if (metrics != null) {
+                    start = record(metrics, FilterMetrics.PHASE_FILTER, pRequest, start);
+                }
+
                 //System.out.println("Making image available...");
                 // Make image available to other filters (avoid unnecessary
                 // serializing/deserializing)
@@ -131,6 +146,10 @@ public abstract class ImageFilter extends GenericFilter {
                         ((ImageServletResponseImpl) imageResponse).setHeader("ETag", etag);
                         ((ImageServletResponseImpl) imageResponse).setDateHeader("Last-Modified", (System.currentTimeMillis() / 1000) * 1000);
                         imageResponse.flush();
+
+                        if (metrics != null) {
+                            record(metrics, FilterMetrics.PHASE_ENCODE, pRequest, start);
+                        }
                     }
                     //System.out.println("Done encoding.");
                 }
@@ -139,6 +158,12 @@ public abstract class ImageFilter extends GenericFilter {
         //System.out.println("Filtering done.");
     }
 
+    private static long record(final FilterMetrics pMetrics, final String pPhase, final ServletRequest pRequest, final long pStart) {
+        long now = System.nanoTime();
+        pMetrics.record(pPhase, pRequest, now - pStart);
+        return now;
+    }
+
     /**
      * Tests if the filter should do image filtering/processing.
      * <P/>
@@ -28,31 +28,43 @@
 
 package com.twelvemonkeys.servlet.image;
 
+import com.twelvemonkeys.io.FileUtil;
 import com.twelvemonkeys.lang.MathUtil;
 import com.twelvemonkeys.lang.StringUtil;
+import com.twelvemonkeys.servlet.GenericServlet;
+import com.twelvemonkeys.servlet.InitParam;
 import com.twelvemonkeys.servlet.ServletUtil;
+import com.twelvemonkeys.servlet.cache.ConcurrentSizedLRUMap;
 
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriter;
+import javax.servlet.ServletException;
 import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletRequest;
 import java.awt.*;
+import java.awt.font.FontRenderContext;
+import java.awt.font.TextLayout;
 import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
 
 /**
  * This servlet is capable of rendereing a text string and output it as an
  * image. The text can be rendered in any given font, size,
  * style or color, into an image, and output it as a GIF, JPEG or PNG image,
- * with optional caching of the rendered image files.
+ * with optional caching of the rendered images.
  *
  * <P><HR><P>
  *
  * <A name="parameters"></A><STRONG>Parameters:</STRONG><BR>
  * <DL>
  * <DT>{@code text}</DT>
- * <DD>string, the text string to render.
- * <DT>{@code width}</DT>
- * <DD>integer, the width of the image
- * <DT>{@code height}</DT>
- * <DD>integer, the height of the image
+ * <DD>string, the text string to render. Required.
  * <DT>{@code fontFamily}</DT>
  * <DD>string, the name of the font family.
  * Default is {@code "Helvetica"}.
@@ -72,57 +84,27 @@ import java.awt.geom.Rectangle2D;
  * escaped as {@code %23} in the query string. See
  * {@link StringUtil#toColor(String)}, <A href="#examples">examples</A>.
  *
- * <!-- inherited from ImageServlet below: -->
- *
- * <DT>{@code cache}</DT>
- * <DD>boolean, {@code true} if you want to cache the result
- * to disk (default).
- *
- * <DT>{@code compression}</DT>
- * <DD>float, the optional compression ratio for the output image. For JPEG
- *  images, the quality is the inverse of the compression ratio. See
- * {@link #JPEG_DEFAULT_COMPRESSION_LEVEL},
- * {@link #PNG_DEFAULT_COMPRESSION_LEVEL}.
- * <DD>Applies to JPEG and PNG images only.
- *
- * <DT>{@code dither}</DT>
- * <DD>enumerated, one of {@code NONE}, {@code DEFAULT} or
- * {@code FS}, if you want to dither the result ({@code DEFAULT} is
- * default).
- * {@code FS} will produce the best results, but it's slower.
- * <DD>Use in conjuction with {@code indexed}, {@code palette}
- * and {@code websafe}.
- * <DD>Applies to GIF and PNG images only.
- *
- * <DT>{@code fileName}</DT>
- * <DD>string, an optional filename. If not set, the path after the servlet
- * ({@link HttpServletRequest#getPathInfo}) will be used for the cache
- * filename. See {@link #getCacheFile(ServletRequest)},
- * {@link #getCacheRoot}.
- *
- * <DT>{@code height}</DT>
- * <DD>integer, the height of the image.
- *
  * <DT>{@code width}</DT>
- * <DD>integer, the width of the image.
+ * <DD>integer, the width of the image. Required, and at most the value of the
+ * init-parameter {@code max-width} (default is {@code 2048}).
  *
- * <DT>{@code indexed}</DT>
- * <DD>integer, the number of colors in the resulting image, or -1 (default).
- * If the value is set and positive, the image will use an
- * {@code IndexColorModel} with
- * the number of colors specified. Otherwise the image will be true color.
- * <DD>Applies to GIF and PNG images only.
- *
- * <DT>{@code palette}</DT>
- * <DD>string, an optional filename. If set, the image will use IndexColorModel
- * with a palette read from the given file.
- * <DD>Applies to GIF and PNG images only.
+ * <DT>{@code height}</DT>
+ * <DD>integer, the height of the image. Required, and at most the value of the
+ * init-parameter {@code max-height} (default is {@code 2048}).
  *
- * <DT>{@code websafe}</DT>
- * <DD>boolean, {@code true} if you want the result to use the 216 color
- * websafe palette (default is false).
- * <DD>Applies to GIF and PNG images only.
+ * <DT>{@code cache}</DT>
+ * <DD>boolean, {@code true} if you want to cache the encoded result
+ * in memory (default).
  * </DL>
+ * <p/>
+ * Derived fonts and the layout of each line of text are cached, so
+ * rendering the same few strings (like headlines or buttons) does not need
+ * the full text layout pipeline. Encoded images are cached in a
+ * least recently used cache, bounded by the number of bytes, and keyed by
+ * all parameters affecting the result.
+ * <p/>
+ * The output format is given by the extension of the request URI, like
+ * {@code gif}, {@code jpg} or {@code png} (default).
  *
  * @example
  * &lt;IMG src="/text/test.gif?height=40&width=600
@@ -134,7 +116,7 @@ import java.awt.geom.Rectangle2D;
  * &lt;IMG src="/text/test.jpg?height=40&width=600
  * &fontFamily=TimesRoman&fontSize=30&fontStyle=italic&fgcolor=black
  * &bgcolor=%23cccccc&text=the%20quick%20brown%20fox%20jumps%20over%20the
- * %20lazy%20dog&compression=3&cache=false" /&gt;
+ * %20lazy%20dog&cache=false" /&gt;
  *
  * @example
  * &lt;IMG src="/text/test.png?height=40&width=600
@@ -147,10 +129,8 @@ import java.awt.geom.Rectangle2D;
  * @version $Id: //depot/branches/personal/haraldk/twelvemonkeys/release-2/twelvemonkeys-servlet/src/main/java/com/twelvemonkeys/servlet/image/TextRenderer.java#2 $
  */
 
-class TextRenderer /*extends ImageServlet implements ImagePainterServlet*/ {
-    // TODO: Create something useable out of this piece of old junk.. ;-)
-    // It just needs a graphics object to write onto
-    // Alternatively, defer, and compute the size needed
+public class TextRenderer extends GenericServlet /*extends ImageServlet implements ImagePainterServlet*/ {
+    // TODO: Defer, and compute the size needed, if no width or height is given
     // Or, make it a filter...
 
     /** {@code "italic"} */
@@ -162,6 +142,12 @@ class TextRenderer /*extends ImageServlet implements ImagePainterServlet*/ {
 
     /** {@code text} */
     public final static String PARAM_TEXT = "text";
+    /** {@code width} */
+    public final static String PARAM_WIDTH = "width";
+    /** {@code height} */
+    public final static String PARAM_HEIGHT = "height";
+    /** {@code cache} */
+    public final static String PARAM_CACHE = "cache";
     /** {@code marginLeft} */
     public final static String PARAM_MARGIN_LEFT = "marginLeft";
     /** {@code marginTop} */
@@ -185,11 +171,207 @@ class TextRenderer /*extends ImageServlet implements ImagePainterServlet*/ {
     protected final static String ROTATION_DEGREES = "DEGREES";
     protected final static String ROTATION_RADIANS = "RADIANS";
 
+    /** All request parameters affecting the rendered image */
+    private final static String[] RENDER_PARAMS = {
+            PARAM_TEXT, PARAM_FONT_FAMILY, PARAM_FONT_SIZE, PARAM_FONT_STYLE, PARAM_BGCOLOR, PARAM_FGCOLOR,
+            PARAM_MARGIN_LEFT, PARAM_MARGIN_TOP, PARAM_TEXT_ROTATION, PARAM_TEXT_ROTATION_UNITS
+    };
+
+    private final static ConcurrentSizedLRUMap.Weigher<Object> ONE = new ConcurrentSizedLRUMap.Weigher<Object>() {
+        public int weigh(Object pValue) {
+            return 1;
+        }
+    };
+
+    private final static ConcurrentSizedLRUMap.Weigher<byte[]> LENGTH = new ConcurrentSizedLRUMap.Weigher<byte[]>() {
+        public int weigh(byte[] pValue) {
+            return pValue.length;
+        }
+    };
+
+    /** Derived fonts, keyed by family, style and size */
+    private final ConcurrentSizedLRUMap<List<Object>, Font> mFonts;
+    /** Line layouts, keyed by font, text and render context */
+    private final ConcurrentSizedLRUMap<List<Object>, LineLayout> mLayouts;
+    /** Encoded images, keyed by rendering parameters, size and format */
+    private final ConcurrentSizedLRUMap<List<String>, byte[]> mImages;
+
+    private int mMaxWidth = 2048;
+    private int mMaxHeight = 2048;
+
+    /**
+     * Creates the TextRender servlet, caching up to 64 fonts, 1024 line
+     * layouts and 4 MB of encoded images.
+     */
+    public TextRenderer() {
+        this(64, 1024, 4L << 20);
+    }
+
     /**
      * Creates the TextRender servlet.
+     *
+     * @param pMaxFonts the maximum number of derived fonts to cache
+     * @param pMaxLayouts the maximum number of line layouts to cache
+     * @param pMaxImageBytes the maximum number of bytes of encoded images to cache
      */
+    public TextRenderer(int pMaxFonts, int pMaxLayouts, long pMaxImageBytes) {
+        mFonts = new ConcurrentSizedLRUMap<List<Object>, Font>(pMaxFonts, ONE);
+        mLayouts = new ConcurrentSizedLRUMap<List<Object>, LineLayout>(pMaxLayouts, ONE);
+        mImages = new ConcurrentSizedLRUMap<List<String>, byte[]>(pMaxImageBytes, LENGTH);
+    }
 
-    public TextRenderer() {
+    /**
+     * Sets the maximum width of the rendered images. Requests for wider
+     * images are rejected.
+     *
+     * @param pMaxWidth the maximum width, default is {@code 2048}
+     */
+    @InitParam
+    public void setMaxWidth(int pMaxWidth) {
+        mMaxWidth = pMaxWidth;
+    }
+
+    /**
+     * Sets the maximum height of the rendered images. Requests for higher
+     * images are rejected.
+     *
+     * @param pMaxHeight the maximum height, default is {@code 2048}
+     */
+    @InitParam
+    public void setMaxHeight(int pMaxHeight) {
+        mMaxHeight = pMaxHeight;
+    }
+
+    /**
+     * Renders the text to the response, as an image in the format given by
+     * the extension of the request URI.
+     *
+     * @see TextRenderer class description
+     *
+     * @param pRequest the request
+     * @param pResponse the response
+     *
+     * @throws IOException if the image could not be encoded or written
+     * @throws ServletException if the text is missing, the size or format is illegal, or the text could not be rendered
+     */
+    public void service(ServletRequest pRequest, ServletResponse pResponse) throws IOException, ServletException {
+        if (StringUtil.isEmpty(pRequest.getParameter(PARAM_TEXT))) {
+            throw new ImageServletException("Missing parameter: " + PARAM_TEXT);
+        }
+
+        int width = ServletUtil.getIntParameter(pRequest, PARAM_WIDTH, -1);
+        int height = ServletUtil.getIntParameter(pRequest, PARAM_HEIGHT, -1);
+        if (width <= 0 || height <= 0 || width > mMaxWidth || height > mMaxHeight) {
+            throw new ImageServletException(String.format("Illegal image size: %dx%d (max %dx%d)", width, height, mMaxWidth, mMaxHeight));
+        }
+
+        String format = null;
+        if (pRequest instanceof HttpServletRequest) {
+            format = FileUtil.getExtension(FileUtil.getFilename(((HttpServletRequest) pRequest).getRequestURI(), '/'));
+        }
+        if (StringUtil.isEmpty(format)) {
+            format = "png";
+        }
+
+        byte[] encoded = ServletUtil.getBooleanParameter(pRequest, PARAM_CACHE, true)
+                ? renderEncoded(pRequest, width, height, format)
+                : encode(render(pRequest, width, height, supportsAlpha(format)), format);
+
+        pResponse.setContentType(getContentType(format));
+        pResponse.setContentLength(encoded.length);
+        pResponse.getOutputStream().write(encoded);
+    }
+
+    private static String getContentType(String pFormat) {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(pFormat);
+        if (writers.hasNext()) {
+            String[] types = writers.next().getOriginatingProvider().getMIMETypes();
+            if (types != null && types.length > 0) {
+                return types[0];
+            }
+        }
+
+        return "image/" + pFormat.toLowerCase();
+    }
+
+    /**
+     * Renders the text for this servlet request, and encodes it in the given format.
+     * The encoded bytes are cached, and may be written directly to the response.
+     * The returned array must not be modified.
+     *
+     * @param pRequest the servlet request
+     * @param pWidth the width of the image
+     * @param pHeight the height of the image
+     * @param pFormat the informal name of the format, like {@code "png"}
+     * @return the encoded image
+     *
+     * @throws ImageServletException if the text could not be rendered
+     * @throws IOException if the image could not be encoded
+     */
+    byte[] renderEncoded(ServletRequest pRequest, int pWidth, int pHeight, String pFormat)
+            throws ImageServletException, IOException {
+        String[] values = new String[RENDER_PARAMS.length + 3];
+        for (int i = 0; i < RENDER_PARAMS.length; i++) {
+            values[i] = pRequest.getParameter(RENDER_PARAMS[i]);
+        }
+        values[RENDER_PARAMS.length] = String.valueOf(pWidth);
+        values[RENDER_PARAMS.length + 1] = String.valueOf(pHeight);
+        values[RENDER_PARAMS.length + 2] = pFormat.toLowerCase();
+
+        List<String> key = Arrays.asList(values);
+        byte[] encoded = mImages.get(key);
+
+        if (encoded == null) {
+            encoded = encode(render(pRequest, pWidth, pHeight, supportsAlpha(pFormat)), pFormat);
+            mImages.put(key, encoded);
+        }
+
+        return encoded;
+    }
+
+    private static byte[] encode(BufferedImage pImage, String pFormat) throws ImageServletException, IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(8192);
+        if (!ImageIO.write(pImage, pFormat, bytes)) {
+            throw new ImageServletException("No image writer for format: " + pFormat);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Renders the text for this servlet request into a new image.
+     *
+     * @param pRequest the servlet request
+     * @param pWidth the width of the image
+     * @param pHeight the height of the image
+     * @param pAlpha {@code true} if the image should have an alpha channel,
+     * otherwise the default background is white
+     * @return the rendered image
+     *
+     * @throws ImageServletException if the text could not be rendered
+     */
+    BufferedImage render(ServletRequest pRequest, int pWidth, int pHeight, boolean pAlpha)
+            throws ImageServletException {
+        BufferedImage image = new BufferedImage(pWidth, pHeight, pAlpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+
+        try {
+            if (!pAlpha) {
+                g.setBackground(Color.white);
+                g.clearRect(0, 0, pWidth, pHeight);
+            }
+
+            paint(pRequest, g, pWidth, pHeight);
+        }
+        finally {
+            g.dispose();
+        }
+
+        return image;
+    }
+
+    private static boolean supportsAlpha(String pFormat) {
+        return !("jpeg".equalsIgnoreCase(pFormat) || "jpg".equalsIgnoreCase(pFormat) || "bmp".equalsIgnoreCase(pFormat));
     }
 
     /**
@@ -226,11 +408,16 @@ class TextRenderer /*extends ImageServlet implements ImagePainterServlet*/ {
             //System.out.println(pRes.getBackground());
         }
 
-        // Create and set font
-        Font font = new Font((fontFamily != null ? fontFamily : "Helvetica"),
-                             getFontStyle(fontStyle),
-                             (fontSize != null ? Integer.parseInt(fontSize)
-                              : 12));
+        // Nothing to draw
+        if (lines.length == 0) {
+            return;
+        }
+
+        // Get and set font
+        Font font = getFont((fontFamily != null ? fontFamily : "Helvetica"),
+                            getFontStyle(fontStyle),
+                            (fontSize != null ? Integer.parseInt(fontSize)
+                             : 12));
         pRes.setFont(font);
 
         // Set rotation
@@ -241,6 +428,13 @@ class TextRenderer /*extends ImageServlet implements ImagePainterServlet*/ {
         pRes.setColor(fgcolor != null ? StringUtil.toColor(fgcolor)
                       : Color.black);
 
+        // Get cached layouts
+        FontRenderContext frc = pRes.getFontRenderContext();
+        LineLayout[] layouts = new LineLayout[lines.length];
+        for (int i = 0; i < lines.length; i++) {
+            layouts[i] = getLayout(font, lines[i], frc);
+        }
+
         float x = ServletUtil.getFloatParameter(pReq, PARAM_MARGIN_LEFT,
                                                 Float.MIN_VALUE);
         Rectangle2D[] bounds = new Rectangle2D[lines.length];
@@ -248,8 +442,7 @@ class TextRenderer /*extends ImageServlet implements ImagePainterServlet*/ {
             // Center
             float longest = 0f;
             for (int i = 0; i < lines.length; i++) {
-                bounds[i] = font.getStringBounds(lines[i],
-                                                 pRes.getFontRenderContext());
+                bounds[i] = layouts[i].mBounds;
                 if (bounds[i].getWidth() > longest) {
                     longest = (float) bounds[i].getWidth();
                 }
@@ -266,9 +459,7 @@ class TextRenderer /*extends ImageServlet implements ImagePainterServlet*/ {
 
         float y = ServletUtil.getFloatParameter(pReq, PARAM_MARGIN_TOP,
                                                 Float.MIN_VALUE);
-        float lineHeight = (float) (bounds[0] != null ? bounds[0].getHeight() :
-                font.getStringBounds(lines[0],
-                                     pRes.getFontRenderContext()).getHeight());
+        float lineHeight = (float) layouts[0].mBounds.getHeight();
 
         if (y <= Float.MIN_VALUE) {
             // Center
@@ -289,8 +480,38 @@ class TextRenderer /*extends ImageServlet implements ImagePainterServlet*/ {
 
         // Draw
         for (int i = 0; i < lines.length; i++) {
-            pRes.drawString(lines[i], x, y + lineHeight * i);
+            layouts[i].draw(pRes, x, y + lineHeight * i);
+        }
+    }
+
+    /**
+     * Gets the font for the given family, style and size, from the cache if possible.
+     */
+    private Font getFont(String pFamily, int pStyle, int pSize) {
+        List<Object> key = Arrays.<Object>asList(pFamily, pStyle, pSize);
+        Font font = mFonts.get(key);
+
+        if (font == null) {
+            font = new Font(pFamily, pStyle, pSize);
+            mFonts.put(key, font);
+        }
+
+        return font;
+    }
+
+    /**
+     * Gets the layout of a line of text, from the cache if possible.
+     */
+    private LineLayout getLayout(Font pFont, String pText, FontRenderContext pContext) {
+        List<Object> key = Arrays.<Object>asList(pFont, pText, pContext);
+        LineLayout layout = mLayouts.get(key);
+
+        if (layout == null) {
+            layout = new LineLayout(pFont, pText, pContext);
+            mLayouts.put(key, layout);
         }
+
+        return layout;
     }
 
     /**
@@ -343,6 +564,26 @@ class TextRenderer /*extends ImageServlet implements ImagePainterServlet*/ {
         return angle;
     }
 
+    /**
+     * The layout and bounds of a single line of text.
+     * Immutable, and may be shared between threads.
+     */
+    private static final class LineLayout {
+        private final TextLayout mLayout;
+        private final Rectangle2D mBounds;
+
+        LineLayout(Font pFont, String pText, FontRenderContext pContext) {
+            // NOTE: TextLayout can't handle empty strings
+            mLayout = pText.length() > 0 ? new TextLayout(pText, pFont, pContext) : null;
+            mBounds = pFont.getStringBounds(pText, pContext);
+        }
+
+        void draw(Graphics2D pGraphics, float pX, float pY) {
+            if (mLayout != null) {
+                mLayout.draw(pGraphics, pX, pY);
+            }
+        }
+    }
 }
 
 
@@ -0,0 +1,203 @@
+package com.twelvemonkeys.servlet;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * AdmissionControllerTestCase
+ *
+ * @author <a href="mailto:harald.kuhr@gmail.com">Harald Kuhr</a>
+ * @author last modified by $Author: haku $
+ * @version $Id: AdmissionControllerTestCase.java,v 1.0 Oct 19, 2026 4:31:08 AM haraldk Exp$
+ */
+public class AdmissionControllerTestCase extends TestCase {
+    public void testCreateIllegal() {
+        try {
+            new AdmissionController(0, 0, 0, 0, 1);
+            fail("Expected IllegalArgumentException");
+        }
+        catch (IllegalArgumentException expected) {
+        }
+
+        try {
+            new AdmissionController(10, 0, 0, 0, 11);
+            fail("Expected IllegalArgumentException");
+        }
+        catch (IllegalArgumentException expected) {
+        }
+    }
+
+    public void testLimit() throws InterruptedException {
+        AdmissionController controller = new AdmissionController(2, 0, 0, 0, 2);
+
+        assertTrue(controller.acquire());
+        assertTrue(controller.acquire());
+        assertFalse(controller.acquire());
+        assertEquals(2, controller.getRunning());
+
+        controller.release(0);
+        assertEquals(1, controller.getRunning());
+        assertTrue(controller.acquire());
+        assertFalse(controller.acquire());
+    }
+
+    public void testQueueTimeout() throws InterruptedException {
+        AdmissionController controller = new AdmissionController(1, 1, 50, 0, 1);
+        assertTrue(controller.acquire());
+
+        long start = System.nanoTime();
+        assertFalse(controller.acquire());
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(40));
+        assertEquals(0, controller.getQueueLength());
+    }
+
+    public void testQueueFull() throws InterruptedException {
+        final AdmissionController controller = new AdmissionController(1, 1, 10000, 0, 1);
+        assertTrue(controller.acquire());
+
+        final CountDownLatch admitted = new CountDownLatch(1);
+        Thread waiter = new Thread() {
+            public void run() {
+                try {
+                    if (controller.acquire()) {
+                        admitted.countDown();
+                    }
+                }
+                catch (InterruptedException ignore) {
+                }
+            }
+        };
+        waiter.start();
+
+        while (controller.getQueueLength() == 0) {
+            Thread.sleep(1);
+        }
+
+        // Queue is full, rejected at once
+        long start = System.nanoTime();
+        assertFalse(controller.acquire());
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+
+        // Waiter is admitted when the running request is done
+        controller.release(0);
+        assertTrue(admitted.await(5, TimeUnit.SECONDS));
+        waiter.join();
+    }
+
+    public void testFIFO() throws InterruptedException {
+        final AdmissionController controller = new AdmissionController(1, 10, 10000, 0, 1);
+        assertTrue(controller.acquire());
+
+        final List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+        final CountDownLatch done = new CountDownLatch(5);
+
+        for (int i = 0; i < 5; i++) {
+            final int id = i;
+            new Thread() {
+                public void run() {
+                    try {
+                        if (controller.acquire()) {
+                            order.add(id);
+                            controller.release(0);
+                        }
+                    }
+                    catch (InterruptedException ignore) {
+                    }
+                    finally {
+                        done.countDown();
+                    }
+                }
+            }.start();
+
+            // Make sure threads queue up in order
+            while (controller.getQueueLength() < i + 1) {
+                Thread.sleep(1);
+            }
+        }
+
+        controller.release(0);
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(5, order.size());
+        for (int i = 0; i < 5; i++) {
+            assertEquals(Integer.valueOf(i), order.get(i));
+        }
+    }
+
+    public void testConcurrentLimit() throws InterruptedException {
+        final AdmissionController controller = new AdmissionController(3, 0, 0, 0, 3);
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final int threads = 8;
+        final CountDownLatch done = new CountDownLatch(threads);
+
+        for (int t = 0; t < threads; t++) {
+            new Thread() {
+                public void run() {
+                    try {
+                        for (int i = 0; i < 2000; i++) {
+                            if (controller.acquire()) {
+                                int current = running.incrementAndGet();
+                                int max;
+                                while (current > (max = maxRunning.get()) && !maxRunning.compareAndSet(max, current)) {
+                                    // Retry
+                                }
+
+                                running.decrementAndGet();
+                                controller.release(0);
+                            }
+                        }
+                    }
+                    catch (InterruptedException ignore) {
+                    }
+                    finally {
+                        done.countDown();
+                    }
+                }
+            }.start();
+        }
+
+        done.await();
+        assertTrue(maxRunning.get() <= 3);
+        assertEquals(0, controller.getRunning());
+    }
+
+    public void testAdaptive() throws InterruptedException {
+        AdmissionController controller = new AdmissionController(10, 0, 0, 100, 2);
+        long slow = TimeUnit.MILLISECONDS.toNanos(200);
+        long fast = TimeUnit.MILLISECONDS.toNanos(10);
+
+        // Slow requests decrease the limit, at most once per window
+        for (int i = 0; i < 10; i++) {
+            assertTrue(controller.acquire());
+            controller.release(slow);
+        }
+        assertEquals(9, controller.getLimit());
+
+        for (int i = 0; i < 200; i++) {
+            assertTrue(controller.acquire());
+            controller.release(slow);
+        }
+        assertEquals(2, controller.getLimit());
+
+        // Only 2 concurrent requests allowed now
+        assertTrue(controller.acquire());
+        assertTrue(controller.acquire());
+        assertFalse(controller.acquire());
+        controller.release(fast);
+        controller.release(fast);
+
+        // Fast requests increase the limit, up to the max limit
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(controller.acquire());
+            controller.release(fast);
+        }
+        assertEquals(10, controller.getLimit());
+        assertEquals(0, controller.getRunning());
+    }
+}
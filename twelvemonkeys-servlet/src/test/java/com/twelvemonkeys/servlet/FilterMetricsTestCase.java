@@ -0,0 +1,109 @@
+package com.twelvemonkeys.servlet;
+
+import junit.framework.TestCase;
+
+import javax.management.ObjectName;
+import javax.servlet.ServletContext;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedMap;
+
+/**
+ * FilterMetricsTestCase
+ *
+ * @author <a href="mailto:harald.kuhr@gmail.com">Harald Kuhr</a>
+ * @author last modified by $Author: haku $
+ * @version $Id: FilterMetricsTestCase.java,v 1.0 Oct 19, 2026 3:26:02 AM haraldk Exp$
+ */
+public class FilterMetricsTestCase extends TestCase {
+    public void testCreateNullName() {
+        try {
+            new FilterMetrics(null, null);
+            fail("Expected IllegalArgumentException");
+        }
+        catch (IllegalArgumentException expected) {
+        }
+    }
+
+    public void testMatches() {
+        assertTrue(FilterMetrics.matches("/*", "/foo/bar.jsp"));
+        assertTrue(FilterMetrics.matches("/images/*", "/images/foo.png"));
+        assertTrue(FilterMetrics.matches("/images/*", "/images"));
+        assertFalse(FilterMetrics.matches("/images/*", "/imagesfoo.png"));
+        assertTrue(FilterMetrics.matches("*.jsp", "/foo/bar.jsp"));
+        assertFalse(FilterMetrics.matches("*.jsp", "/foo/bar.jspx"));
+        assertTrue(FilterMetrics.matches("/index.html", "/index.html"));
+        assertFalse(FilterMetrics.matches("/index.html", "/foo/index.html"));
+    }
+
+    public void testPatternForRequest() {
+        FilterMetrics metrics = new FilterMetrics("test", new String[] {"/images/*", "*.png", "*.jsp"});
+
+        assertEquals("/images/*", metrics.getPattern(new MockHttpServletRequest("/ctx", "/ctx/images/foo.png").createProxy()));
+        assertEquals("*.png", metrics.getPattern(new MockHttpServletRequest("/ctx", "/ctx/static/foo.png").createProxy()));
+        assertEquals("*.jsp", metrics.getPattern(new MockHttpServletRequest("", "/index.jsp").createProxy()));
+        assertEquals(FilterMetrics.DEFAULT_PATTERN, metrics.getPattern(new MockHttpServletRequest("/ctx", "/ctx/index.html").createProxy()));
+        assertEquals(FilterMetrics.DEFAULT_PATTERN, metrics.getPattern(new FilterAbstractTestCase.MockServletRequest()));
+    }
+
+    public void testRecord() {
+        FilterMetrics metrics = new FilterMetrics("test", new String[] {"*.png"});
+
+        metrics.record(FilterMetrics.PHASE_TOTAL, new MockHttpServletRequest("", "/foo.png").createProxy(), 1000);
+        metrics.record(FilterMetrics.PHASE_TOTAL, new MockHttpServletRequest("", "/foo.png").createProxy(), 2000);
+        metrics.record(FilterMetrics.PHASE_TOTAL, new MockHttpServletRequest("", "/foo.html").createProxy(), 3000);
+        metrics.record(FilterMetrics.PHASE_DECODE, new MockHttpServletRequest("", "/foo.png").createProxy(), 500);
+
+        SortedMap<String, SortedMap<String, LatencyHistogram>> histograms = metrics.getHistograms();
+        assertEquals(2, histograms.size());
+        assertEquals(2, histograms.get(FilterMetrics.PHASE_TOTAL).get("*.png").getCount());
+        assertEquals(1, histograms.get(FilterMetrics.PHASE_TOTAL).get(FilterMetrics.DEFAULT_PATTERN).getCount());
+        assertEquals(1, histograms.get(FilterMetrics.PHASE_DECODE).get("*.png").getCount());
+        assertSame(metrics.getHistogram(FilterMetrics.PHASE_DECODE, "*.png"), histograms.get(FilterMetrics.PHASE_DECODE).get("*.png"));
+    }
+
+    public void testRegister() throws Exception {
+        ServletContext context = new FilterAbstractTestCase.MockFilterConfig(new HashMap()).getServletContext();
+        FilterMetrics metrics = new FilterMetrics("registered", null);
+        metrics.record(FilterMetrics.PHASE_TOTAL, null, 1000);
+
+        metrics.register(context);
+        try {
+            assertSame(metrics, FilterMetrics.getMetrics(context).get("registered"));
+
+            ObjectName name = new ObjectName("com.twelvemonkeys.servlet:type=FilterMetrics,context=\"mock\",filter=\"registered\",phase=\"total\",pattern=" + ObjectName.quote("/*"));
+            assertTrue(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+            assertEquals(1L, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Count"));
+
+            // Histograms created after registration are registered as well
+            metrics.record(FilterMetrics.PHASE_ENCODE, null, 1000);
+            assertTrue(ManagementFactory.getPlatformMBeanServer().isRegistered(new ObjectName(name.toString().replace("\"total\"", "\"encode\""))));
+        }
+        finally {
+            metrics.unregister(context);
+        }
+
+        assertTrue(FilterMetrics.getMetrics(context).isEmpty());
+        assertTrue(ManagementFactory.getPlatformMBeanServer().queryNames(new ObjectName("com.twelvemonkeys.servlet:filter=\"registered\",*"), null).isEmpty());
+    }
+
+    public void testWriteMetrics() {
+        FilterMetrics metrics = new FilterMetrics("test", null);
+        metrics.record(FilterMetrics.PHASE_TOTAL, null, 2000000);
+
+        Map<String, FilterMetrics> all = new HashMap<String, FilterMetrics>();
+        all.put("test", metrics);
+
+        StringWriter text = new StringWriter();
+        PrintWriter out = new PrintWriter(text);
+        MetricsServlet.writeMetrics(all, out);
+        out.flush();
+
+        String[] lines = text.toString().split("\r?\n");
+        assertEquals(2, lines.length);
+        assertEquals("test\ttotal\t/*\t1\t2000\t2000\t2000\t2000\t2000", lines[1]);
+    }
+}
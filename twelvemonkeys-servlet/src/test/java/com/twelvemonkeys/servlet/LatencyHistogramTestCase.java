@@ -0,0 +1,147 @@
+package com.twelvemonkeys.servlet;
+
+import junit.framework.TestCase;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * LatencyHistogramTestCase
+ *
+ * @author <a href="mailto:harald.kuhr@gmail.com">Harald Kuhr</a>
+ * @author last modified by $Author: haku $
+ * @version $Id: LatencyHistogramTestCase.java,v 1.0 Oct 19, 2026 3:14:29 AM haraldk Exp$
+ */
+public class LatencyHistogramTestCase extends TestCase {
+    public void testBuckets() {
+        // Lowest values are exact
+        for (int i = 0; i < LatencyHistogram.SUB_BUCKETS * 2; i++) {
+            assertEquals(i, LatencyHistogram.indexOf(i));
+            assertEquals(i, LatencyHistogram.lowestValueOf(i));
+            assertEquals(i, LatencyHistogram.highestValueOf(i));
+        }
+
+        // Buckets are contiguous, and each value is within its bucket
+        for (int i = 0; i < LatencyHistogram.BUCKETS - 1; i++) {
+            assertEquals(LatencyHistogram.highestValueOf(i) + 1, LatencyHistogram.lowestValueOf(i + 1));
+            assertEquals(i, LatencyHistogram.indexOf(LatencyHistogram.lowestValueOf(i)));
+            assertEquals(i, LatencyHistogram.indexOf(LatencyHistogram.highestValueOf(i)));
+        }
+
+        assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.indexOf(Long.MAX_VALUE));
+    }
+
+    public void testRelativeError() {
+        Random random = new Random(42);
+
+        for (int i = 0; i < 10000; i++) {
+            long value = (long) (Math.pow(10, random.nextDouble() * 12));
+            int index = LatencyHistogram.indexOf(value);
+
+            long width = LatencyHistogram.highestValueOf(index) - LatencyHistogram.lowestValueOf(index);
+            assertTrue(value + ": " + width, width <= Math.max(0, value / LatencyHistogram.SUB_BUCKETS));
+        }
+    }
+
+    public void testEmpty() {
+        LatencyHistogram.Snapshot snapshot = new LatencyHistogram().snapshot();
+
+        assertEquals(0, snapshot.getCount());
+        assertEquals(0, snapshot.getMean());
+        assertEquals(0, snapshot.getMax());
+        assertEquals(0, snapshot.getValueAtPercentile(99));
+    }
+
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        // 1..1000 microseconds
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(1000, snapshot.getCount());
+        assertEquals(500500, snapshot.getMean());
+        assertEquals(1000000, snapshot.getMax());
+
+        assertEquals(500000, snapshot.getValueAtPercentile(50), 500000 / 32.0);
+        assertEquals(900000, snapshot.getValueAtPercentile(90), 900000 / 32.0);
+        assertEquals(990000, snapshot.getValueAtPercentile(99), 990000 / 32.0);
+        assertEquals(1000000, snapshot.getValueAtPercentile(100));
+
+        assertEquals(snapshot.getValueAtPercentile(50), histogram.get50thPercentile());
+        assertEquals(snapshot.getValueAtPercentile(90), histogram.get90thPercentile());
+        assertEquals(snapshot.getValueAtPercentile(99), histogram.get99thPercentile());
+    }
+
+    public void testPercentileNeverExceedsMax() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1000001);
+
+        assertEquals(1000001, histogram.snapshot().getValueAtPercentile(50));
+    }
+
+    public void testIllegalPercentile() {
+        try {
+            new LatencyHistogram().snapshot().getValueAtPercentile(100.5);
+            fail("Expected IllegalArgumentException");
+        }
+        catch (IllegalArgumentException expected) {
+        }
+    }
+
+    public void testNegativeAndHuge() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE / 2);
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(2, snapshot.getCount());
+        assertEquals(0, snapshot.getValueAtPercentile(50));
+        assertEquals(Long.MAX_VALUE / 2, snapshot.getMax());
+        assertEquals(Long.MAX_VALUE / 2, snapshot.getValueAtPercentile(100));
+    }
+
+    public void testReset() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(100);
+        histogram.reset();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+    }
+
+    public void testConcurrentRecord() throws InterruptedException {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        final int threads = 8;
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+
+        for (int t = 0; t < threads; t++) {
+            final int seed = t;
+            new Thread() {
+                public void run() {
+                    try {
+                        start.await();
+
+                        for (int i = 0; i < 10000; i++) {
+                            histogram.record((i * 31 + seed) % 5000);
+                        }
+                    }
+                    catch (InterruptedException ignore) {
+                    }
+                    finally {
+                        done.countDown();
+                    }
+                }
+            }.start();
+        }
+
+        start.countDown();
+        done.await();
+
+        assertEquals(threads * 10000, histogram.getCount());
+        assertEquals(4999, histogram.getMax());
+    }
+}
@@ -0,0 +1,91 @@
+package com.twelvemonkeys.servlet;
+
+import javax.servlet.http.HttpServletRequest;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A minimal {@code HttpServletRequest}, shared by the servlet and filter tests.
+ * Supports the context path, request URI, headers, parameters and attributes.
+ * All other methods return {@code null}, {@code -1} or {@code false}, depending on the return type.
+ *
+ * @author <a href="mailto:harald.kuhr@gmail.com">Harald Kuhr</a>
+ * @author last modified by $Author: haku $
+ * @version $Id: MockHttpServletRequest.java,v 1.0 Oct 19, 2026 2:14:37 PM haraldk Exp$
+ */
+public final class MockHttpServletRequest implements InvocationHandler {
+    private final String mContextPath;
+    private final String mRequestURI;
+    private final Map<String, String> mHeaders = new HashMap<String, String>();
+    private final Map<String, String> mParameters = new HashMap<String, String>();
+    private final Map<String, Object> mAttributes = new HashMap<String, Object>();
+
+    public MockHttpServletRequest(final String pRequestURI) {
+        this("", pRequestURI);
+    }
+
+    public MockHttpServletRequest(final String pContextPath, final String pRequestURI) {
+        mContextPath = pContextPath;
+        mRequestURI = pRequestURI;
+    }
+
+    public MockHttpServletRequest setHeader(final String pName, final String pValue) {
+        mHeaders.put(pName, pValue);
+        return this;
+    }
+
+    public MockHttpServletRequest setParameters(final Map<String, String> pParameters) {
+        mParameters.putAll(pParameters);
+        return this;
+    }
+
+    public HttpServletRequest createProxy() {
+        return (HttpServletRequest) Proxy.newProxyInstance(
+                getClass().getClassLoader(), new Class[] {HttpServletRequest.class}, this
+        );
+    }
+
+    public Object invoke(final Object pProxy, final Method pMethod, final Object[] pArgs) {
+        String name = pMethod.getName();
+
+        if (name.equals("getContextPath")) {
+            return mContextPath;
+        }
+        else if (name.equals("getRequestURI")) {
+            return mRequestURI;
+        }
+        else if (name.equals("getHeader")) {
+            return mHeaders.get((String) pArgs[0]);
+        }
+        else if (name.equals("getParameter")) {
+            return mParameters.get((String) pArgs[0]);
+        }
+        else if (name.equals("getParameterNames")) {
+            return Collections.enumeration(mParameters.keySet());
+        }
+        else if (name.equals("getAttribute")) {
+            return mAttributes.get((String) pArgs[0]);
+        }
+        else if (name.equals("setAttribute")) {
+            mAttributes.put((String) pArgs[0], pArgs[1]);
+        }
+        else if (name.equals("removeAttribute")) {
+            mAttributes.remove((String) pArgs[0]);
+        }
+        else if (pMethod.getReturnType() == Integer.TYPE) {
+            return -1;
+        }
+        else if (pMethod.getReturnType() == Long.TYPE) {
+            return -1L;
+        }
+        else if (pMethod.getReturnType() == Boolean.TYPE) {
+            return false;
+        }
+
+        return null;
+    }
+}
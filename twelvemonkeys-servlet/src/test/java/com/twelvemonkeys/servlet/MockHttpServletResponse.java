@@ -0,0 +1,129 @@
+package com.twelvemonkeys.servlet;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A minimal {@code HttpServletResponse}, shared by the servlet and filter tests.
+ * Records the status, headers, content type and length, and the body written
+ * to either the output stream or the writer, using ISO-8859-1 encoding.
+ * The response is never committed.
+ *
+ * @author <a href="mailto:harald.kuhr@gmail.com">Harald Kuhr</a>
+ * @author last modified by $Author: haku $
+ * @version $Id: MockHttpServletResponse.java,v 1.0 Oct 19, 2026 2:21:05 PM haraldk Exp$
+ */
+public final class MockHttpServletResponse implements InvocationHandler {
+    private static final String ENCODING = "ISO-8859-1";
+
+    private final Map<String, List<String>> mHeaders = new HashMap<String, List<String>>();
+    private final ByteArrayOutputStream mBody = new ByteArrayOutputStream();
+    private final ServletOutputStream mOutput = new OutputStreamAdapter(mBody);
+    private PrintWriter mWriter;
+    private int mStatus = HttpServletResponse.SC_OK;
+    private String mContentType;
+    private int mContentLength = -1;
+
+    public HttpServletResponse createProxy() {
+        return (HttpServletResponse) Proxy.newProxyInstance(
+                getClass().getClassLoader(), new Class[] {HttpServletResponse.class}, this
+        );
+    }
+
+    public int getStatus() {
+        return mStatus;
+    }
+
+    public String getHeader(final String pName) {
+        List<String> values = mHeaders.get(pName);
+        return values != null ? values.get(0) : null;
+    }
+
+    public String getContentType() {
+        return mContentType;
+    }
+
+    /**
+     * @return the content length, or {@code -1} if not set
+     */
+    public int getContentLength() {
+        return mContentLength;
+    }
+
+    public byte[] getBody() {
+        if (mWriter != null) {
+            mWriter.flush();
+        }
+
+        return mBody.toByteArray();
+    }
+
+    public String getText() throws UnsupportedEncodingException {
+        return new String(getBody(), ENCODING);
+    }
+
+    public Object invoke(final Object pProxy, final Method pMethod, final Object[] pArgs) throws Throwable {
+        String name = pMethod.getName();
+
+        if (name.equals("setStatus") || name.equals("sendError")) {
+            mStatus = (Integer) pArgs[0];
+        }
+        else if (name.equals("setHeader")) {
+            List<String> values = new ArrayList<String>();
+            values.add((String) pArgs[1]);
+            mHeaders.put((String) pArgs[0], values);
+        }
+        else if (name.equals("addHeader")) {
+            List<String> values = mHeaders.get((String) pArgs[0]);
+            if (values == null) {
+                values = new ArrayList<String>();
+                mHeaders.put((String) pArgs[0], values);
+            }
+            values.add((String) pArgs[1]);
+        }
+        else if (name.equals("containsHeader")) {
+            return mHeaders.containsKey((String) pArgs[0]);
+        }
+        else if (name.equals("setContentType")) {
+            mContentType = (String) pArgs[0];
+        }
+        else if (name.equals("getContentType")) {
+            return mContentType;
+        }
+        else if (name.equals("setContentLength")) {
+            mContentLength = (Integer) pArgs[0];
+        }
+        else if (name.equals("getCharacterEncoding")) {
+            return ENCODING;
+        }
+        else if (name.equals("getOutputStream")) {
+            return mOutput;
+        }
+        else if (name.equals("getWriter")) {
+            if (mWriter == null) {
+                mWriter = new PrintWriter(new OutputStreamWriter(mBody, ENCODING));
+            }
+
+            return mWriter;
+        }
+        else if (pMethod.getReturnType() == Integer.TYPE) {
+            return 0;
+        }
+        else if (pMethod.getReturnType() == Boolean.TYPE) {
+            return false;
+        }
+
+        return null;
+    }
+}
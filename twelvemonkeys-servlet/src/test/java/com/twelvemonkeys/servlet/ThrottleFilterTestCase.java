@@ -0,0 +1,82 @@
+package com.twelvemonkeys.servlet;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * ThrottleFilterTestCase
+ *
+ * @author <a href="mailto:harald.kuhr@gmail.com">Harald Kuhr</a>
+ * @author last modified by $Author: haku $
+ * @version $Id: ThrottleFilterTestCase.java,v 1.0 Oct 19, 2026 4:52:19 AM haraldk Exp$
+ */
+public class ThrottleFilterTestCase extends FilterAbstractTestCase {
+    protected Filter makeFilter() {
+        return new ThrottleFilter();
+    }
+
+    private ThrottleFilter makeFilter(Map<String, String> pParams) throws ServletException {
+        ThrottleFilter filter = new ThrottleFilter();
+        filter.init(makeFilterConfig(pParams));
+        return filter;
+    }
+
+    public void testUriLimits() throws ServletException {
+        Map<String, String> params = new HashMap<String, String>();
+        params.put("max-concurrent-thread-count", "20");
+        params.put("uri-limits", "/image/*=4, *.jsp=8");
+        ThrottleFilter filter = makeFilter(params);
+
+        AdmissionController image = filter.getController(new MockHttpServletRequest("/image/foo.png").createProxy());
+        AdmissionController jsp = filter.getController(new MockHttpServletRequest("/index.jsp").createProxy());
+        AdmissionController other = filter.getController(new MockHttpServletRequest("/static/style.css").createProxy());
+
+        assertEquals(4, image.getLimit());
+        assertEquals(8, jsp.getLimit());
+        assertEquals(20, other.getLimit());
+        assertSame(image, filter.getController(new MockHttpServletRequest("/image/bar.jpg").createProxy()));
+        assertSame(other, filter.getController(new MockServletRequest()));
+    }
+
+    public void testIllegalUriLimits() {
+        Map<String, String> params = new HashMap<String, String>();
+        params.put("uri-limits", "/image/*=four");
+
+        try {
+            makeFilter(params);
+            fail("Expected ServletException");
+        }
+        catch (ServletException expected) {
+        }
+    }
+
+    public void testReject() throws ServletException, IOException {
+        Map<String, String> params = new HashMap<String, String>();
+        params.put("max-concurrent-thread-count", "1");
+        final ThrottleFilter filter = makeFilter(params);
+
+        final MockHttpServletResponse rejected = new MockHttpServletResponse();
+
+        // Nested request, while the first is running, is rejected
+        filter.doFilter(new MockHttpServletRequest("/foo").createProxy(), new MockHttpServletResponse().createProxy(), new FilterChain() {
+            public void doFilter(ServletRequest pRequest, ServletResponse pResponse) throws IOException, ServletException {
+                filter.doFilter(new MockHttpServletRequest("/bar").createProxy(), rejected.createProxy(), makeFilterChain());
+            }
+        });
+
+        assertEquals(HttpServletResponse.SC_SERVICE_UNAVAILABLE, rejected.getStatus());
+        assertTrue(rejected.getText().startsWith(ThrottleFilter.DEFUALT_RESPONSE_MESSAGE));
+
+        // Permit is released
+        MockHttpServletResponse accepted = new MockHttpServletResponse();
+        filter.doFilter(new MockHttpServletRequest("/bar").createProxy(), accepted.createProxy(), makeFilterChain());
+        assertEquals(HttpServletResponse.SC_OK, accepted.getStatus());
+    }
+}
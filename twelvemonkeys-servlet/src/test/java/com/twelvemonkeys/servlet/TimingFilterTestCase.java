@@ -0,0 +1,100 @@
+package com.twelvemonkeys.servlet;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * TimingFilterTestCase
+ *
+ * @author <a href="mailto:harald.kuhr@gmail.com">Harald Kuhr</a>
+ * @author last modified by $Author: haku $
+ * @version $Id: TimingFilterTestCase.java,v 1.0 Oct 19, 2026 3:41:57 AM haraldk Exp$
+ */
+public class TimingFilterTestCase extends FilterAbstractTestCase {
+    protected Filter makeFilter() {
+        return new TimingFilter();
+    }
+
+    public void testRecordsMetrics() throws ServletException, IOException {
+        TimingFilter filter = new TimingFilter();
+        filter.init(makeFilterConfig());
+
+        try {
+            FilterMetrics metrics = filter.getMetrics();
+            assertNotNull(metrics);
+
+            for (int i = 0; i < 3; i++) {
+                filter.doFilter(makeRequest(), makeResponse(), new FilterChain() {
+                    public void doFilter(ServletRequest pRequest, ServletResponse pResponse) {
+                        try {
+                            Thread.sleep(2);
+                        }
+                        catch (InterruptedException ignore) {
+                        }
+                    }
+                });
+            }
+
+            LatencyHistogram total = metrics.getHistogram(FilterMetrics.PHASE_TOTAL, FilterMetrics.DEFAULT_PATTERN);
+            LatencyHistogram exclusive = metrics.getHistogram(TimingFilter.PHASE_EXCLUSIVE, FilterMetrics.DEFAULT_PATTERN);
+
+            assertEquals(3, total.getCount());
+            assertEquals(3, exclusive.getCount());
+            assertTrue(exclusive.getMax() >= 2000000);
+            assertTrue(total.getMax() >= exclusive.getMax());
+        }
+        finally {
+            filter.destroy();
+        }
+    }
+
+    public void testMetricsDisabled() throws ServletException, IOException {
+        Map<String, String> params = new HashMap<String, String>();
+        params.put("metrics", "false");
+
+        TimingFilter filter = new TimingFilter();
+        filter.init(makeFilterConfig(params));
+
+        try {
+            assertNull(filter.getMetrics());
+            filter.doFilter(makeRequest(), makeResponse(), makeFilterChain());
+        }
+        finally {
+            filter.destroy();
+        }
+    }
+
+    public void testLogRequests() throws ServletException, IOException {
+        Map<String, String> params = new HashMap<String, String>();
+        params.put("log-requests", "true");
+
+        final List<String> messages = new ArrayList<String>();
+        TimingFilter filter = new TimingFilter() {
+            @Override
+            protected void log(String pMessage) {
+                messages.add(pMessage);
+            }
+        };
+        filter.init(makeFilterConfig(params));
+
+        try {
+            assertNotNull(filter.getMetrics());
+
+            messages.clear(); // Any messages logged by init
+            filter.doFilter(makeRequest(), makeResponse(), makeFilterChain());
+            assertEquals(1, messages.size());
+            assertTrue(messages.get(0), messages.get(0).startsWith("Request processing time"));
+        }
+        finally {
+            filter.destroy();
+        }
+    }
+}
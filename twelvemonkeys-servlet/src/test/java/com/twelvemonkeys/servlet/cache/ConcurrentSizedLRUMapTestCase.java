@@ -0,0 +1,257 @@
+package com.twelvemonkeys.servlet.cache;
+
+import com.twelvemonkeys.util.MapAbstractTestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ConcurrentSizedLRUMapTestCase
+ *
+ * @author <a href="mailto:harald.kuhr@gmail.com">Harald Kuhr</a>
+ * @author last modified by $Author: haku $
+ * @version $Id: ConcurrentSizedLRUMapTestCase.java,v 1.0 Oct 18, 2026 9:48:02 PM haraldk Exp$
+ */
+public class ConcurrentSizedLRUMapTestCase extends MapAbstractTestCase {
+    private static final ConcurrentSizedLRUMap.Weigher<Object> ONE = new ConcurrentSizedLRUMap.Weigher<Object>() {
+        public int weigh(Object pValue) {
+            return 1;
+        }
+    };
+
+    private static final ConcurrentSizedLRUMap.Weigher<String> LENGTH = new ConcurrentSizedLRUMap.Weigher<String>() {
+        public int weigh(String pValue) {
+            return pValue.length();
+        }
+    };
+
+    public Map makeEmptyMap() {
+        return new ConcurrentSizedLRUMap<Object, Object>(1000, ONE);
+    }
+
+    @Override
+    public boolean isAllowNullKey() {
+        return false;
+    }
+
+    @Override
+    public boolean isAllowNullValue() {
+        return false;
+    }
+
+    @Override
+    public boolean isSetValueSupported() {
+        return false;
+    }
+
+    @Override
+    public boolean isGetStructuralModify() {
+        return true;
+    }
+
+    public void testCreateNegativeMaxWeight() {
+        try {
+            new ConcurrentSizedLRUMap<String, String>(-1, LENGTH);
+            fail("Expected IllegalArgumentException");
+        }
+        catch (IllegalArgumentException expected) {
+        }
+    }
+
+    public void testCreateNullWeigher() {
+        try {
+            new ConcurrentSizedLRUMap<String, String>(10, null);
+            fail("Expected IllegalArgumentException");
+        }
+        catch (IllegalArgumentException expected) {
+        }
+    }
+
+    public void testWeight() {
+        ConcurrentSizedLRUMap<String, String> map = new ConcurrentSizedLRUMap<String, String>(100, LENGTH);
+
+        map.put("a", "foo");
+        map.put("b", "barbar");
+        assertEquals(9, map.getWeight());
+
+        map.put("a", "f");
+        assertEquals(7, map.getWeight());
+
+        map.remove("b");
+        assertEquals(1, map.getWeight());
+
+        map.clear();
+        assertEquals(0, map.getWeight());
+    }
+
+    public void testEvictLeastRecentlyUsed() {
+        ConcurrentSizedLRUMap<String, String> map = new ConcurrentSizedLRUMap<String, String>(10, LENGTH);
+
+        map.put("a", "aaaa");
+        map.put("b", "bbbb");
+        assertEquals("aaaa", map.get("a")); // "b" is now least recently used
+
+        map.put("c", "cccc");
+
+        assertEquals(2, map.size());
+        assertEquals(8, map.getWeight());
+        assertTrue(map.containsKey("a"));
+        assertFalse(map.containsKey("b"));
+        assertTrue(map.containsKey("c"));
+        assertEquals(1, map.getEvictionCount());
+    }
+
+    public void testEvictUntilWithinLimit() {
+        ConcurrentSizedLRUMap<String, String> map = new ConcurrentSizedLRUMap<String, String>(10, LENGTH);
+
+        map.put("a", "aa");
+        map.put("b", "bb");
+        map.put("c", "cc");
+        map.put("d", "dddddddd");
+
+        assertEquals(2, map.size());
+        assertEquals(10, map.getWeight());
+        assertEquals(2, map.getEvictionCount());
+        assertTrue(map.containsKey("c"));
+        assertTrue(map.containsKey("d"));
+    }
+
+    public void testTooHeavyIsNotCached() {
+        ConcurrentSizedLRUMap<String, String> map = new ConcurrentSizedLRUMap<String, String>(4, LENGTH);
+
+        map.put("a", "aa");
+        map.put("b", "bbbbb");
+
+        assertEquals("aa", map.get("a"));
+        assertNull(map.get("b"));
+        assertEquals(0, map.getEvictionCount());
+
+        // Replacing with a too heavy value removes the old mapping
+        map.put("a", "aaaaa");
+        assertFalse(map.containsKey("a"));
+        assertEquals(0, map.getWeight());
+    }
+
+    public void testZeroMaxWeight() {
+        ConcurrentSizedLRUMap<String, String> map = new ConcurrentSizedLRUMap<String, String>(0, LENGTH);
+
+        map.put("a", "a");
+        map.put("", "");
+        map.putIfAbsent("b", "");
+
+        assertTrue(map.isEmpty());
+        assertNull(map.get("a"));
+        assertNull(map.get(""));
+        assertEquals(0, map.getWeight());
+    }
+
+    public void testHitsAndMisses() {
+        ConcurrentSizedLRUMap<String, String> map = new ConcurrentSizedLRUMap<String, String>(10, LENGTH);
+
+        map.put("a", "a");
+        map.get("a");
+        map.get("a");
+        map.get("b");
+
+        assertEquals(2, map.getHitCount());
+        assertEquals(1, map.getMissCount());
+    }
+
+    public void testPutIfAbsent() {
+        ConcurrentSizedLRUMap<String, String> map = new ConcurrentSizedLRUMap<String, String>(10, LENGTH);
+
+        assertNull(map.putIfAbsent("a", "foo"));
+        assertEquals("foo", map.putIfAbsent("a", "bar"));
+        assertEquals("foo", map.get("a"));
+        assertEquals(3, map.getWeight());
+    }
+
+    public void testReplace() {
+        ConcurrentSizedLRUMap<String, String> map = new ConcurrentSizedLRUMap<String, String>(10, LENGTH);
+
+        assertNull(map.replace("a", "foo"));
+        assertFalse(map.containsKey("a"));
+
+        map.put("a", "foo");
+        assertFalse(map.replace("a", "bar", "baz"));
+        assertTrue(map.replace("a", "foo", "bar"));
+        assertEquals("bar", map.replace("a", "ba"));
+        assertEquals("ba", map.get("a"));
+        assertEquals(2, map.getWeight());
+
+        assertFalse(map.remove("a", "foo"));
+        assertTrue(map.remove("a", "ba"));
+        assertEquals(0, map.getWeight());
+    }
+
+    public void testProcessRemoved() {
+        final List<Map.Entry<String, String>> removed = new ArrayList<Map.Entry<String, String>>();
+        ConcurrentSizedLRUMap<String, String> map = new ConcurrentSizedLRUMap<String, String>(4, LENGTH) {
+            @Override
+            public void processRemoved(Map.Entry<String, String> pRemoved) {
+                removed.add(pRemoved);
+            }
+        };
+
+        map.put("a", "aa");
+        map.put("b", "bb");
+        map.put("c", "cc");
+
+        assertEquals(1, removed.size());
+        assertEquals("a", removed.get(0).getKey());
+        assertEquals("aa", removed.get(0).getValue());
+    }
+
+    public void testConcurrentAccess() throws InterruptedException {
+        final ConcurrentSizedLRUMap<Integer, String> map = new ConcurrentSizedLRUMap<Integer, String>(500, LENGTH, 4);
+        final int threads = 8;
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+        final AtomicInteger failures = new AtomicInteger();
+
+        for (int t = 0; t < threads; t++) {
+            final int seed = t;
+            new Thread() {
+                public void run() {
+                    try {
+                        start.await();
+
+                        for (int i = 0; i < 20000; i++) {
+                            Integer key = (i * 31 + seed) % 200;
+                            String value = map.get(key);
+                            if (value == null) {
+                                map.put(key, "value-" + key);
+                            }
+                            else if (!value.equals("value-" + key)) {
+                                failures.incrementAndGet();
+                            }
+                        }
+                    }
+                    catch (Throwable e) {
+                        failures.incrementAndGet();
+                    }
+                    finally {
+                        done.countDown();
+                    }
+                }
+            }.start();
+        }
+
+        start.countDown();
+        done.await();
+
+        assertEquals(0, failures.get());
+        assertTrue(map.getWeight() <= map.getMaxWeight());
+
+        // Weight must be consistent with the actual content
+        long weight = 0;
+        for (String value : map.values()) {
+            weight += value.length();
+        }
+        assertEquals(weight, map.getWeight());
+        assertEquals(threads * 20000, map.getHitCount() + map.getMissCount());
+    }
+}
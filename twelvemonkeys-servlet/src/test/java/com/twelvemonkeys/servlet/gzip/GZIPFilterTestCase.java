@@ -0,0 +1,304 @@
+package com.twelvemonkeys.servlet.gzip;
+
+import com.twelvemonkeys.servlet.FilterAbstractTestCase;
+import com.twelvemonkeys.servlet.MockHttpServletRequest;
+import com.twelvemonkeys.servlet.MockHttpServletResponse;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * GZIPFilterTestCase
+ *
+ * @author <a href="mailto:harald.kuhr@gmail.com">Harald Kuhr</a>
+ * @author last modified by $Author: haku $
+ * @version $Id: GZIPFilterTestCase.java,v 1.0 Oct 19, 2026 1:58:21 AM haraldk Exp$
+ */
+public class GZIPFilterTestCase extends FilterAbstractTestCase {
+    protected Filter makeFilter() {
+        return new GZIPFilter();
+    }
+
+    private GZIPFilter makeFilter(final Map<String, String> pParams) throws ServletException {
+        GZIPFilter filter = new GZIPFilter();
+        filter.init(makeFilterConfig(pParams));
+        return filter;
+    }
+
+    public void testAcceptsGZIP() {
+        assertTrue(GZIPFilter.acceptsGZIP("gzip"));
+        assertTrue(GZIPFilter.acceptsGZIP("deflate, gzip"));
+        assertTrue(GZIPFilter.acceptsGZIP("gzip;q=0.5, deflate"));
+        assertTrue(GZIPFilter.acceptsGZIP("x-gzip"));
+        assertFalse(GZIPFilter.acceptsGZIP(null));
+        assertFalse(GZIPFilter.acceptsGZIP(""));
+        assertFalse(GZIPFilter.acceptsGZIP("deflate"));
+        assertFalse(GZIPFilter.acceptsGZIP("gzip;q=0"));
+        assertFalse(GZIPFilter.acceptsGZIP("gzip; q=0.0, identity"));
+    }
+
+    public void testIsCompressible() throws ServletException {
+        GZIPFilter filter = makeFilter(new HashMap<String, String>());
+
+        assertTrue(filter.isCompressible(null));
+        assertTrue(filter.isCompressible("text/html"));
+        assertTrue(filter.isCompressible("text/html; charset=UTF-8"));
+        assertTrue(filter.isCompressible("image/svg+xml"));
+        assertFalse(filter.isCompressible("image/jpeg"));
+        assertFalse(filter.isCompressible("IMAGE/PNG"));
+        assertFalse(filter.isCompressible("video/mp4"));
+        assertFalse(filter.isCompressible("application/zip"));
+
+        filter.setExcludedContentTypes("text/*, application/json");
+        assertFalse(filter.isCompressible("text/css"));
+        assertFalse(filter.isCompressible("application/json;charset=UTF-8"));
+        assertTrue(filter.isCompressible("image/jpeg"));
+    }
+
+    public void testInitIllegalCompressionLevel() {
+        try {
+            makeFilter(params("compression-level", "10"));
+            fail("Expected ServletException");
+        }
+        catch (ServletException expected) {
+        }
+    }
+
+    public void testCompress() throws ServletException, IOException {
+        GZIPFilter filter = makeFilter(params("compression-level", "9"));
+        byte[] content = createContent(10000);
+
+        MockHttpServletResponse response = doFilter(filter, "gzip, deflate", new WriteChain("text/html", null, content));
+
+        assertEquals("gzip", response.getHeader("Content-Encoding"));
+        assertEquals("Accept-Encoding", response.getHeader("Vary"));
+        assertEquals(-1, response.getContentLength());
+        assertTrue(Arrays.equals(content, gunzip(response.getBody())));
+        assertTrue(response.getBody().length < content.length);
+    }
+
+    public void testCompressWriter() throws ServletException, IOException {
+        GZIPFilter filter = makeFilter(new HashMap<String, String>());
+        final String text = new String(createContent(5000), "ISO-8859-1");
+
+        MockHttpServletResponse response = doFilter(filter, "gzip", new FilterChain() {
+            public void doFilter(ServletRequest pRequest, ServletResponse pResponse) throws IOException {
+                pResponse.setContentType("text/plain");
+                pResponse.getWriter().print(text);
+                pResponse.getWriter().flush();
+            }
+        });
+
+        assertEquals("gzip", response.getHeader("Content-Encoding"));
+        assertEquals(text, new String(gunzip(response.getBody()), "ISO-8859-1"));
+    }
+
+    public void testNoAcceptEncoding() throws ServletException, IOException {
+        GZIPFilter filter = makeFilter(new HashMap<String, String>());
+        byte[] content = createContent(5000);
+
+        MockHttpServletResponse response = doFilter(filter, null, new WriteChain("text/html", null, content));
+
+        assertNull(response.getHeader("Content-Encoding"));
+        assertEquals("Accept-Encoding", response.getHeader("Vary"));
+        assertTrue(Arrays.equals(content, response.getBody()));
+    }
+
+    public void testSmallNotCompressed() throws ServletException, IOException {
+        GZIPFilter filter = makeFilter(params("min-content-length", "512"));
+        byte[] content = createContent(511);
+
+        MockHttpServletResponse response = doFilter(filter, "gzip", new WriteChain("text/html", null, content));
+
+        assertNull(response.getHeader("Content-Encoding"));
+        assertEquals(511, response.getContentLength());
+        assertTrue(Arrays.equals(content, response.getBody()));
+    }
+
+    public void testSmallContentLengthNotCompressed() throws ServletException, IOException {
+        GZIPFilter filter = makeFilter(params("min-content-length", "512"));
+        final byte[] content = createContent(100);
+
+        MockHttpServletResponse response = doFilter(filter, "gzip", new FilterChain() {
+            public void doFilter(ServletRequest pRequest, ServletResponse pResponse) throws IOException {
+                pResponse.setContentType("text/html");
+                pResponse.setContentLength(content.length);
+
+                // Written in two parts, the length must be known from the header
+                pResponse.getOutputStream().write(content, 0, 50);
+                pResponse.flushBuffer();
+                pResponse.getOutputStream().write(content, 50, 50);
+            }
+        });
+
+        assertNull(response.getHeader("Content-Encoding"));
+        assertEquals(100, response.getContentLength());
+        assertTrue(Arrays.equals(content, response.getBody()));
+    }
+
+    public void testExcludedContentTypeNotCompressed() throws ServletException, IOException {
+        GZIPFilter filter = makeFilter(new HashMap<String, String>());
+        byte[] content = createContent(5000);
+
+        MockHttpServletResponse response = doFilter(filter, "gzip", new WriteChain("image/png", null, content));
+
+        assertNull(response.getHeader("Content-Encoding"));
+        assertTrue(Arrays.equals(content, response.getBody()));
+    }
+
+    public void testAlreadyEncodedNotCompressed() throws ServletException, IOException {
+        GZIPFilter filter = makeFilter(new HashMap<String, String>());
+        final byte[] content = createContent(5000);
+
+        MockHttpServletResponse response = doFilter(filter, "gzip", new FilterChain() {
+            public void doFilter(ServletRequest pRequest, ServletResponse pResponse) throws IOException {
+                HttpServletResponse response = (HttpServletResponse) pResponse;
+                response.setContentType("text/html");
+                response.setHeader("Content-Encoding", "deflate");
+                response.getOutputStream().write(content);
+            }
+        });
+
+        assertEquals("deflate", response.getHeader("Content-Encoding"));
+        assertTrue(Arrays.equals(content, response.getBody()));
+    }
+
+    public void testErrorStatusNotCompressed() throws ServletException, IOException {
+        GZIPFilter filter = makeFilter(new HashMap<String, String>());
+        final byte[] content = createContent(5000);
+
+        MockHttpServletResponse response = doFilter(filter, "gzip", new FilterChain() {
+            public void doFilter(ServletRequest pRequest, ServletResponse pResponse) throws IOException {
+                HttpServletResponse response = (HttpServletResponse) pResponse;
+                response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+                response.setContentType("text/html");
+                response.getOutputStream().write(content);
+            }
+        });
+
+        assertNull(response.getHeader("Content-Encoding"));
+        assertTrue(Arrays.equals(content, response.getBody()));
+    }
+
+    public void testCacheByETag() throws ServletException, IOException {
+        GZIPFilter filter = makeFilter(params("cache-size", "100000"));
+        byte[] content = createContent(5000);
+
+        MockHttpServletResponse first = doFilter(filter, "gzip", new WriteChain("text/html", "\"v1\"", content));
+        assertEquals("gzip", first.getHeader("Content-Encoding"));
+        assertTrue(Arrays.equals(content, gunzip(first.getBody())));
+
+        // Same URI and ETag, the cached body is served, regardless of content
+        MockHttpServletResponse second = doFilter(filter, "gzip", new WriteChain("text/html", "\"v1\"", createContent(4000)));
+        assertEquals("gzip", second.getHeader("Content-Encoding"));
+        assertEquals(first.getBody().length, second.getContentLength());
+        assertTrue(Arrays.equals(first.getBody(), second.getBody()));
+
+        // New ETag, compressed again
+        byte[] changed = createContent(6000);
+        MockHttpServletResponse third = doFilter(filter, "gzip", new WriteChain("text/html", "\"v2\"", changed));
+        assertTrue(Arrays.equals(changed, gunzip(third.getBody())));
+    }
+
+    public void testNoCacheWithoutETag() throws ServletException, IOException {
+        GZIPFilter filter = makeFilter(params("cache-size", "100000"));
+
+        doFilter(filter, "gzip", new WriteChain("text/html", null, createContent(5000)));
+        assertTrue(filter.getCache().isEmpty());
+    }
+
+    public void testDeflaterPoolReuse() throws IOException {
+        DeflaterPool pool = new DeflaterPool(Deflater.BEST_SPEED, 1);
+        byte[] content = createContent(3000);
+
+        for (int i = 0; i < 3; i++) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            PooledGZIPOutputStream out = new PooledGZIPOutputStream(bytes, pool, 512);
+            out.write(content);
+            out.close();
+            out.close(); // Must not release the deflater twice
+
+            assertTrue(Arrays.equals(content, gunzip(bytes.toByteArray())));
+            assertEquals(1, pool.getIdleCount());
+        }
+
+        pool.clear();
+        assertEquals(0, pool.getIdleCount());
+    }
+
+    private static Map<String, String> params(final String pName, final String pValue) {
+        Map<String, String> params = new HashMap<String, String>();
+        params.put(pName, pValue);
+        return params;
+    }
+
+    private static byte[] createContent(final int pLength) {
+        byte[] content = new byte[pLength];
+        byte[] text = "<p>Lorem ipsum dolor sit amet, consectetuer adipiscing elit.</p>\n".getBytes();
+
+        for (int i = 0; i < pLength; i++) {
+            content[i] = text[i % text.length];
+        }
+
+        return content;
+    }
+
+    private static byte[] gunzip(final byte[] pBytes) throws IOException {
+        InputStream in = new GZIPInputStream(new ByteArrayInputStream(pBytes));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        byte[] buffer = new byte[1024];
+        int read;
+        while ((read = in.read(buffer)) > 0) {
+            out.write(buffer, 0, read);
+        }
+
+        return out.toByteArray();
+    }
+
+    private MockHttpServletResponse doFilter(final GZIPFilter pFilter, final String pAcceptEncoding, final FilterChain pChain) throws ServletException, IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest("/static/test.html").setHeader("Accept-Encoding", pAcceptEncoding);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        pFilter.doFilter(request.createProxy(), response.createProxy(), pChain);
+
+        return response;
+    }
+
+    private static class WriteChain implements FilterChain {
+        private final String mContentType;
+        private final String mETag;
+        private final byte[] mContent;
+
+        public WriteChain(final String pContentType, final String pETag, final byte[] pContent) {
+            mContentType = pContentType;
+            mETag = pETag;
+            mContent = pContent;
+        }
+
+        public void doFilter(ServletRequest pRequest, ServletResponse pResponse) throws IOException {
+            HttpServletResponse response = (HttpServletResponse) pResponse;
+            response.setContentType(mContentType);
+            if (mETag != null) {
+                response.setHeader("ETag", mETag);
+            }
+
+            // Write in small chunks, like most servlets do
+            for (int i = 0; i < mContent.length; i += 100) {
+                response.getOutputStream().write(mContent, i, Math.min(100, mContent.length - i));
+            }
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package com.twelvemonkeys.servlet.image;
+
+import com.twelvemonkeys.servlet.MockHttpServletRequest;
+import com.twelvemonkeys.servlet.MockHttpServletResponse;
+import junit.framework.TestCase;
+
+import javax.imageio.ImageIO;
+import javax.servlet.ServletRequest;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * TextRendererTestCase
+ *
+ * @author <a href="mailto:harald.kuhr@gmail.com">Harald Kuhr</a>
+ * @author last modified by $Author: haku $
+ * @version $Id: TextRendererTestCase.java,v 1.0 Oct 19, 2026 4:41:17 AM haraldk Exp$
+ */
+public class TextRendererTestCase extends TestCase {
+    static {
+        System.setProperty("java.awt.headless", "true");
+    }
+
+    public void testRender() throws Exception {
+        Map<String, String> params = new HashMap<String, String>();
+        params.put(TextRenderer.PARAM_TEXT, "Hello\nWorld");
+        params.put(TextRenderer.PARAM_FGCOLOR, "#000000");
+
+        BufferedImage image = new TextRenderer().render(createRequest(params), 120, 60, false);
+
+        assertEquals(120, image.getWidth());
+        assertEquals(60, image.getHeight());
+        assertTrue("No text rendered", containsNonWhite(image));
+    }
+
+    public void testRenderEmptyLine() throws Exception {
+        Map<String, String> params = new HashMap<String, String>();
+        params.put(TextRenderer.PARAM_TEXT, "Foo\n\nBar");
+
+        assertNotNull(new TextRenderer().render(createRequest(params), 80, 80, true));
+    }
+
+    public void testRenderIsRepeatable() throws Exception {
+        Map<String, String> params = new HashMap<String, String>();
+        params.put(TextRenderer.PARAM_TEXT, "Cached");
+        params.put(TextRenderer.PARAM_FONT_STYLE, "bold");
+        params.put(TextRenderer.PARAM_TEXT_ROTATION, "15");
+
+        TextRenderer renderer = new TextRenderer();
+        BufferedImage first = renderer.render(createRequest(params), 100, 40, true);
+        BufferedImage second = renderer.render(createRequest(params), 100, 40, true);
+
+        // Second rendering uses cached font and layouts, and must produce identical pixels
+        int[] expected = first.getRGB(0, 0, 100, 40, null, 0, 100);
+        int[] actual = second.getRGB(0, 0, 100, 40, null, 0, 100);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals("pixel " + i, expected[i], actual[i]);
+        }
+    }
+
+    public void testRenderEncodedCached() throws Exception {
+        Map<String, String> params = new HashMap<String, String>();
+        params.put(TextRenderer.PARAM_TEXT, "Cached");
+
+        TextRenderer renderer = new TextRenderer();
+        byte[] encoded = renderer.renderEncoded(createRequest(params), 100, 40, "png");
+
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(encoded));
+        assertEquals(100, image.getWidth());
+        assertEquals(40, image.getHeight());
+
+        assertSame(encoded, renderer.renderEncoded(createRequest(params), 100, 40, "PNG"));
+
+        // Any parameter affecting the result, must give a different image
+        assertNotSame(encoded, renderer.renderEncoded(createRequest(params), 101, 40, "png"));
+        assertNotSame(encoded, renderer.renderEncoded(createRequest(params), 100, 40, "jpeg"));
+
+        params.put(TextRenderer.PARAM_FGCOLOR, "#ff0000");
+        assertNotSame(encoded, renderer.renderEncoded(createRequest(params), 100, 40, "png"));
+    }
+
+    public void testRenderEncodedCacheBounded() throws Exception {
+        Map<String, String> params = new HashMap<String, String>();
+        params.put(TextRenderer.PARAM_TEXT, "Cached");
+
+        // Too small to hold any image
+        TextRenderer renderer = new TextRenderer(64, 1024, 16);
+        byte[] encoded = renderer.renderEncoded(createRequest(params), 100, 40, "png");
+
+        assertNotSame(encoded, renderer.renderEncoded(createRequest(params), 100, 40, "png"));
+    }
+
+    public void testRenderEncodedUnknownFormat() throws Exception {
+        Map<String, String> params = new HashMap<String, String>();
+        params.put(TextRenderer.PARAM_TEXT, "Foo");
+
+        try {
+            new TextRenderer().renderEncoded(createRequest(params), 10, 10, "no-such-format");
+            fail("Expected ImageServletException");
+        }
+        catch (ImageServletException expected) {
+        }
+    }
+
+    public void testService() throws Exception {
+        Map<String, String> params = new HashMap<String, String>();
+        params.put(TextRenderer.PARAM_TEXT, "Served");
+        params.put(TextRenderer.PARAM_WIDTH, "90");
+        params.put(TextRenderer.PARAM_HEIGHT, "30");
+
+        TextRenderer renderer = new TextRenderer();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        renderer.service(createRequest("/text/test.gif", params), response.createProxy());
+
+        assertEquals("image/gif", response.getContentType());
+        assertEquals(response.getBody().length, response.getContentLength());
+
+        // Served from the same cache as renderEncoded
+        assertTrue(Arrays.equals(renderer.renderEncoded(createRequest(params), 90, 30, "gif"), response.getBody()));
+
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(response.getBody()));
+        assertEquals(90, image.getWidth());
+        assertEquals(30, image.getHeight());
+    }
+
+    public void testServiceDefaultFormat() throws Exception {
+        Map<String, String> params = new HashMap<String, String>();
+        params.put(TextRenderer.PARAM_TEXT, "Served");
+        params.put(TextRenderer.PARAM_WIDTH, "90");
+        params.put(TextRenderer.PARAM_HEIGHT, "30");
+
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        new TextRenderer().service(createRequest("/text/test", params), response.createProxy());
+
+        assertEquals("image/png", response.getContentType());
+    }
+
+    public void testServiceIllegalSize() throws Exception {
+        Map<String, String> params = new HashMap<String, String>();
+        params.put(TextRenderer.PARAM_TEXT, "Foo");
+        params.put(TextRenderer.PARAM_WIDTH, "90");
+
+        try {
+            new TextRenderer().service(createRequest("/text/test.png", params), new MockHttpServletResponse().createProxy());
+            fail("Expected ImageServletException");
+        }
+        catch (ImageServletException expected) {
+        }
+    }
+
+    public void testServiceMissingText() throws Exception {
+        Map<String, String> params = new HashMap<String, String>();
+        params.put(TextRenderer.PARAM_WIDTH, "90");
+        params.put(TextRenderer.PARAM_HEIGHT, "30");
+
+        try {
+            new TextRenderer().service(createRequest("/text/test.png", params), new MockHttpServletResponse().createProxy());
+            fail("Expected ImageServletException");
+        }
+        catch (ImageServletException expected) {
+        }
+    }
+
+    public void testServiceTooLarge() throws Exception {
+        Map<String, String> params = new HashMap<String, String>();
+        params.put(TextRenderer.PARAM_TEXT, "Foo");
+        params.put(TextRenderer.PARAM_WIDTH, "100000");
+        params.put(TextRenderer.PARAM_HEIGHT, "100000");
+
+        try {
+            new TextRenderer().service(createRequest("/text/test.png", params), new MockHttpServletResponse().createProxy());
+            fail("Expected ImageServletException");
+        }
+        catch (ImageServletException expected) {
+        }
+
+        TextRenderer renderer = new TextRenderer();
+        renderer.setMaxWidth(80);
+        params.put(TextRenderer.PARAM_WIDTH, "90");
+        params.put(TextRenderer.PARAM_HEIGHT, "30");
+
+        try {
+            renderer.service(createRequest("/text/test.png", params), new MockHttpServletResponse().createProxy());
+            fail("Expected ImageServletException");
+        }
+        catch (ImageServletException expected) {
+        }
+    }
+
+    public void testServiceNoCache() throws Exception {
+        Map<String, String> params = new HashMap<String, String>();
+        params.put(TextRenderer.PARAM_TEXT, "Not cached");
+        params.put(TextRenderer.PARAM_WIDTH, "90");
+        params.put(TextRenderer.PARAM_HEIGHT, "30");
+        params.put(TextRenderer.PARAM_CACHE, "false");
+
+        final int[] renders = new int[1];
+        TextRenderer renderer = new TextRenderer() {
+            @Override
+            BufferedImage render(ServletRequest pRequest, int pWidth, int pHeight, boolean pAlpha) throws ImageServletException {
+                renders[0]++;
+                return super.render(pRequest, pWidth, pHeight, pAlpha);
+            }
+        };
+
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        renderer.service(createRequest("/text/test.png", params), response.createProxy());
+        renderer.service(createRequest("/text/test.png", params), new MockHttpServletResponse().createProxy());
+        assertEquals(2, renders[0]);
+
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(response.getBody()));
+        assertEquals(90, image.getWidth());
+        assertEquals(30, image.getHeight());
+
+        // Nothing was cached by the requests above
+        assertTrue(Arrays.equals(response.getBody(), renderer.renderEncoded(createRequest(params), 90, 30, "png")));
+        assertEquals(3, renders[0]);
+    }
+
+    public void testRenderNoText() throws Exception {
+        BufferedImage image = new TextRenderer().render(createRequest(new HashMap<String, String>()), 20, 10, false);
+        assertFalse(containsNonWhite(image));
+    }
+
+    private static boolean containsNonWhite(final BufferedImage pImage) {
+        for (int y = 0; y < pImage.getHeight(); y++) {
+            for (int x = 0; x < pImage.getWidth(); x++) {
+                if ((pImage.getRGB(x, y) & 0xffffff) != 0xffffff) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    private static ServletRequest createRequest(final Map<String, String> pParameters) {
+        return createRequest(null, pParameters);
+    }
+
+    private static ServletRequest createRequest(final String pURI, final Map<String, String> pParameters) {
+        return new MockHttpServletRequest(pURI).setParameters(pParameters).createProxy();
+    }
+}